@@ -15,6 +15,7 @@
  */
 package io.telicent.servlet.auth.jwt.verifier.aws;
 
+import io.telicent.servlet.auth.jwt.verification.KeyFetcher;
 import io.telicent.servlet.auth.jwt.verification.SignedJwtVerifier;
 
 /**
@@ -34,6 +35,17 @@ public class AwsElbJwtVerifier extends SignedJwtVerifier {
         this.awsRegion = awsRegion;
     }
 
+    /**
+     * Creates a new verifier
+     *
+     * @param awsRegion AWS region
+     * @param fetcher   Key fetcher used to fetch public keys
+     */
+    public AwsElbJwtVerifier(String awsRegion, KeyFetcher fetcher) {
+        super(new AwsElbKeyResolver(awsRegion, fetcher));
+        this.awsRegion = awsRegion;
+    }
+
     @Override
     public String toString() {
         return "AwsElbJwtVerifier{region=" + this.awsRegion + "}";
@@ -18,12 +18,14 @@ package io.telicent.servlet.auth.jwt.verifier.aws;
 import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.LocatorAdapter;
 import io.jsonwebtoken.security.InvalidKeyException;
+import io.telicent.servlet.auth.jwt.errors.KeyLoadException;
+import io.telicent.servlet.auth.jwt.verification.KeyFetcher;
 import io.telicent.servlet.auth.jwt.verification.KeyUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.InputStream;
-import java.net.URL;
-import java.net.URLConnection;
+import java.net.URI;
+import java.net.http.HttpResponse;
 import java.security.Key;
 import java.util.Objects;
 
@@ -35,6 +37,7 @@ import java.util.Objects;
 public class AwsElbKeyResolver extends LocatorAdapter<Key> {
 
     private final String region;
+    private final KeyFetcher fetcher;
 
     /**
      * Creates a new resolver
@@ -42,7 +45,18 @@ public class AwsElbKeyResolver extends LocatorAdapter<Key> {
      * @param region AWS region
      */
     public AwsElbKeyResolver(String region) {
+        this(region, new KeyFetcher(KeyFetcher.Settings.DEFAULT));
+    }
+
+    /**
+     * Creates a new resolver
+     *
+     * @param region  AWS region
+     * @param fetcher Key fetcher used to fetch public keys, this applies timeouts, retries and circuit breaking
+     */
+    public AwsElbKeyResolver(String region, KeyFetcher fetcher) {
         this.region = Objects.requireNonNull(region, "AWS region cannot be null");
+        this.fetcher = Objects.requireNonNull(fetcher, "Key fetcher cannot be null");
     }
 
     @Override
@@ -54,9 +68,11 @@ public class AwsElbKeyResolver extends LocatorAdapter<Key> {
 
         try {
             String rawKeyUrl = AwsElbKeyUrlRegistry.prepareKeyUrl(this.region, header.getKeyId());
-            URL keyUrl = new URL(rawKeyUrl);
-            URLConnection connection = keyUrl.openConnection();
-            try (InputStream input = connection.getInputStream()) {
+            HttpResponse<InputStream> response = this.fetcher.send(URI.create(rawKeyUrl));
+            try (InputStream input = response.body()) {
+                if (response.statusCode() >= 400) {
+                    throw new KeyLoadException("Key URL returned a HTTP error code (" + response.statusCode() + ")");
+                }
                 return KeyUtils.loadPublicKey(KeyUtils.EC, input);
             }
         } catch (Throwable e) {
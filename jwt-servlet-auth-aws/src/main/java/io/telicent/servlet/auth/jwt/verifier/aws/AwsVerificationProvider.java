@@ -15,8 +15,11 @@
  */
 package io.telicent.servlet.auth.jwt.verifier.aws;
 
+import io.telicent.servlet.auth.jwt.configuration.ConfigurationParameters;
+import io.telicent.servlet.auth.jwt.configuration.DefaultVerificationProvider;
 import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
 import io.telicent.servlet.auth.jwt.configuration.VerificationProvider;
+import io.telicent.servlet.auth.jwt.verification.KeyFetcher;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,11 +39,27 @@ public class AwsVerificationProvider implements VerificationProvider {
      */
     public static final String PARAM_AWS_REGION = "jwt.aws.region";
 
+    /**
+     * Key fetch parameters supported by this verification provider
+     */
+    public static final String[] KEY_FETCH_PARAMETERS = new String[] {
+            ConfigurationParameters.PARAM_KEY_FETCH_CONNECT_TIMEOUT,
+            ConfigurationParameters.PARAM_KEY_FETCH_REQUEST_TIMEOUT,
+            ConfigurationParameters.PARAM_KEY_FETCH_MAX_ATTEMPTS,
+            ConfigurationParameters.PARAM_KEY_FETCH_BACKOFF,
+            ConfigurationParameters.PARAM_KEY_FETCH_MAX_BACKOFF,
+            ConfigurationParameters.PARAM_KEY_FETCH_CIRCUIT_FAILURES,
+            ConfigurationParameters.PARAM_KEY_FETCH_CIRCUIT_OPEN,
+            ConfigurationParameters.PARAM_KEY_FETCH_MAX_SIZE
+    };
+
     @Override
     public boolean configure(Function<String, String> paramSupplier, Consumer<JwtVerifier> verifierConsumer) {
         String region = paramSupplier.apply(PARAM_AWS_REGION);
         if (StringUtils.isNotBlank(region)) {
-            AwsElbJwtVerifier jwtVerifier = new AwsElbJwtVerifier(region);
+            KeyFetcher.Settings fetchSettings = KeyFetcher.Settings.fromParameters(
+                    DefaultVerificationProvider.prepareParameters(paramSupplier, KEY_FETCH_PARAMETERS));
+            AwsElbJwtVerifier jwtVerifier = new AwsElbJwtVerifier(region, new KeyFetcher(fetchSettings));
             verifierConsumer.accept(jwtVerifier);
             LOGGER.info("Configured the AWS JWT Verifier: {}", jwtVerifier);
             return true;
@@ -21,11 +21,13 @@ import io.jsonwebtoken.security.InvalidKeyException;
 import io.jsonwebtoken.security.JwkSet;
 import io.jsonwebtoken.security.JwkSetBuilder;
 import io.jsonwebtoken.security.Jwks;
+import io.telicent.servlet.auth.jwt.verification.KeyFetcher;
 import org.testng.Assert;
 import org.testng.annotations.*;
 
 import java.security.Key;
 import java.security.KeyPair;
+import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -145,6 +147,23 @@ public class TestAwsElbKeyUrlRegistry {
         resolver.locate(header);
     }
 
+    @Test
+    public void givenUnavailableKeyServer_whenResolvingKeysRepeatedly_thenFailsFast() {
+        // Given
+        AwsElbKeyUrlRegistry.register("custom", "http://localhost:" + TEST_PORT.getAndIncrement() + "/%s");
+        KeyFetcher fetcher = new KeyFetcher(
+                new KeyFetcher.Settings(Duration.ofSeconds(1), Duration.ofSeconds(1), 1, Duration.ZERO, Duration.ZERO,
+                                        1, Duration.ofMinutes(1), 1024, 1));
+        AwsElbKeyResolver resolver = new AwsElbKeyResolver("custom", fetcher);
+        JwsHeader header = mock(JwsHeader.class);
+        when(header.getKeyId()).thenReturn("example");
+        Assert.assertThrows(InvalidKeyException.class, () -> resolver.locate(header));
+
+        // When and Then
+        InvalidKeyException e = Assert.expectThrows(InvalidKeyException.class, () -> resolver.locate(header));
+        Assert.assertTrue(e.getMessage().contains("Circuit open"));
+    }
+
     @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".*at least one.*")
     public void givenBadRegionUrlFormatWithTooFewPlaceholders_whenPreparingUrl_thenErrorIsThrown() {
         // Given
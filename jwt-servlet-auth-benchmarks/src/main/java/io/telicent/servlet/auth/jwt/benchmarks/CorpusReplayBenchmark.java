@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.benchmarks;
+
+import io.telicent.servlet.auth.jwt.benchmarks.corpus.CorpusReplay;
+import io.telicent.servlet.auth.jwt.benchmarks.corpus.CorpusSpec;
+import io.telicent.servlet.auth.jwt.benchmarks.corpus.TokenCorpus;
+import io.telicent.servlet.auth.jwt.fake.FakeEngine;
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks verification and authentication by replaying a generated token corpus, rather than a single static
+ * token, so that cache hit rates and failure path costs reflect a realistic traffic shape.
+ * <p>
+ * The {@code corpus} parameter accepts either a preset name or a compact specification, see {@link CorpusSpec}, e.g.
+ * {@code -p corpus=users=50000,reuse=0.5}.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class CorpusReplayBenchmark {
+
+    /**
+     * Shared corpus, verifier and engine
+     */
+    @State(Scope.Benchmark)
+    public static class CorpusState {
+
+        @Param({ "default", "cold", "hostile", "large" })
+        String corpus;
+
+        @Param({ CorpusReplay.KEY_SOURCE_LOCATOR, CorpusReplay.KEY_SOURCE_JWKS })
+        String keySource;
+
+        TokenCorpus tokens;
+        JwtVerifier verifier;
+        FakeEngine engine;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            this.tokens = TokenCorpus.generate(CorpusSpec.parse(this.corpus));
+            this.verifier = CorpusReplay.createVerifier(this.tokens, this.keySource);
+            this.engine = CorpusReplay.createEngine();
+        }
+    }
+
+    /**
+     * Per-thread position within the corpus, threads start at different offsets so that they don't all present the
+     * same token at the same time
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        long position;
+
+        @Setup(Level.Trial)
+        public void setup(CorpusState state) {
+            this.position = Thread.currentThread().threadId() * 7919L;
+        }
+    }
+
+    /**
+     * Measures verification of the next corpus token, including the cost of any failure
+     */
+    @Benchmark
+    public boolean verify(CorpusState state, Cursor cursor) {
+        return CorpusReplay.verify(state.verifier, state.tokens.get(cursor.position++));
+    }
+
+    /**
+     * Measures authentication of a request carrying the next corpus token, including challenge generation for
+     * failures and role extraction for successes
+     */
+    @Benchmark
+    public boolean authenticate(CorpusState state, Cursor cursor) {
+        return CorpusReplay.authenticate(state.engine, state.verifier, state.tokens.get(cursor.position++));
+    }
+}
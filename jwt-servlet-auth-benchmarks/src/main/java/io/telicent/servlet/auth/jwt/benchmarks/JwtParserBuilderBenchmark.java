@@ -15,6 +15,9 @@
  */
 package io.telicent.servlet.auth.jwt.benchmarks;
 
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import io.telicent.servlet.auth.jwt.verification.JwtParsers;
@@ -22,10 +25,13 @@ import org.openjdk.jmh.annotations.*;
 import org.openjdk.jmh.infra.Blackhole;
 
 import javax.crypto.SecretKey;
+import java.time.Instant;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Benchmarks parser construction to highlight shared-deserializer gains.
+ * Benchmarks parser construction to highlight shared-deserializer gains, and parsing of realistically sized tokens to
+ * compare the streaming claims deserializer with the generic Jackson deserializer.
  */
 @BenchmarkMode(Mode.Throughput)
 @OutputTimeUnit(TimeUnit.MILLISECONDS)
@@ -44,6 +50,140 @@ public class JwtParserBuilderBenchmark {
         }
     }
 
+    /**
+     * Tokens shaped like those issued by common identity providers
+     */
+    @State(Scope.Benchmark)
+    public static class TokenState {
+
+        /**
+         * Token profile, {@code keycloak} is a Keycloak access token with realm and client roles, {@code entra} is an
+         * Entra ID access token for a user in many groups
+         */
+        @Param({ "keycloak", "entra" })
+        String profile;
+
+        String token;
+        String rolesClaim;
+        JwtParser jacksonParser;
+        JwtParser streamingParser;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            SecretKey key = Jwts.SIG.HS256.key().build();
+            JwtBuilder builder = Jwts.builder();
+            switch (this.profile) {
+                case "keycloak" -> keycloakClaims(builder);
+                case "entra" -> entraClaims(builder);
+                default -> throw new IllegalArgumentException("Unknown profile " + this.profile);
+            }
+            this.token = builder.signWith(key).compact();
+            this.rolesClaim = "keycloak".equals(this.profile) ? "realm_access" : "groups";
+
+            // Without an explicit deserializer JJWT discovers the Jackson deserializer from the classpath
+            this.jacksonParser = Jwts.parser().verifyWith(key).build();
+            this.streamingParser = JwtParsers.builder().verifyWith(key).build();
+        }
+
+        private static void keycloakClaims(JwtBuilder builder) {
+            Instant now = Instant.now();
+            builder.expiration(Date.from(now.plusSeconds(300)))
+                   .issuedAt(Date.from(now))
+                   .id(UUID.randomUUID().toString())
+                   .issuer("https://sso.example.com/realms/production")
+                   .audience()
+                   .add(List.of("account", "realm-management", "data-api"))
+                   .and()
+                   .subject(UUID.randomUUID().toString())
+                   .claim("auth_time", now.getEpochSecond())
+                   .claim("typ", "Bearer")
+                   .claim("azp", "web-frontend")
+                   .claim("sid", UUID.randomUUID().toString())
+                   .claim("acr", "1")
+                   .claim("allowed-origins", List.of("https://app.example.com", "https://admin.example.com"))
+                   .claim("realm_access", Map.of("roles",
+                                                 List.of("default-roles-production", "offline_access",
+                                                         "uma_authorization", "analyst", "data-reader")))
+                   .claim("resource_access",
+                          Map.of("realm-management", Map.of("roles", List.of("view-users", "query-groups")),
+                                 "data-api", Map.of("roles", List.of("read", "write", "export")),
+                                 "account", Map.of("roles", List.of("manage-account", "manage-account-links",
+                                                                    "view-profile"))))
+                   .claim("scope", "openid profile email")
+                   .claim("email_verified", true)
+                   .claim("name", "Jane Analyst")
+                   .claim("preferred_username", "jane.analyst")
+                   .claim("given_name", "Jane")
+                   .claim("family_name", "Analyst")
+                   .claim("email", "jane.analyst@example.com");
+        }
+
+        private static void entraClaims(JwtBuilder builder) {
+            Instant now = Instant.now();
+            String tenant = UUID.randomUUID().toString();
+            List<String> groups = new ArrayList<>();
+            for (int i = 0; i < 150; i++) {
+                groups.add(UUID.randomUUID().toString());
+            }
+            builder.audience()
+                   .add("api://data-api")
+                   .and()
+                   .issuer("https://sts.windows.net/" + tenant + "/")
+                   .issuedAt(Date.from(now))
+                   .notBefore(Date.from(now))
+                   .expiration(Date.from(now.plusSeconds(3600)))
+                   .subject("a1b2c3d4e5f6g7h8i9j0k1l2m3n4o5p6q7r8s9t0u1v")
+                   .claim("acr", "1")
+                   .claim("aio", "E2ZgYGj8bP3xXd8v7dzV9eY0pRrTZb+5pIb1M6bB8aL9q3fnAQA=")
+                   .claim("amr", List.of("pwd", "mfa"))
+                   .claim("appid", UUID.randomUUID().toString())
+                   .claim("appidacr", "0")
+                   .claim("family_name", "Analyst")
+                   .claim("given_name", "Jane")
+                   .claim("groups", groups)
+                   .claim("ipaddr", "203.0.113.42")
+                   .claim("name", "Jane Analyst")
+                   .claim("oid", UUID.randomUUID().toString())
+                   .claim("rh", "0.AXQAv4j5cvGGr0GRqy180BHbR0ZKz2Yh3ktEhGyL5XVV2ld0AAA.")
+                   .claim("scp", "Data.Read Data.Write User.Read")
+                   .claim("tid", tenant)
+                   .claim("unique_name", "jane.analyst@example.com")
+                   .claim("upn", "jane.analyst@example.com")
+                   .claim("uti", "x3r5Yq2Z0kOQ8nW1fJ9tAA")
+                   .claim("ver", "1.0")
+                   .claim("wids", List.of(UUID.randomUUID().toString(), UUID.randomUUID().toString()))
+                   .claim("xms_tcdt", now.getEpochSecond());
+        }
+    }
+
+    @Benchmark
+    public Claims parseJacksonDeserializer(TokenState state) {
+        return state.jacksonParser.parseSignedClaims(state.token).getPayload();
+    }
+
+    @Benchmark
+    public Claims parseStreamingDeserializer(TokenState state) {
+        return state.streamingParser.parseSignedClaims(state.token).getPayload();
+    }
+
+    /**
+     * Parses with the Jackson deserializer and reads the roles/groups claim, for comparison with
+     * {@link #parseStreamingDeserializerAndReadRoles(TokenState)}
+     */
+    @Benchmark
+    public Object parseJacksonDeserializerAndReadRoles(TokenState state) {
+        return state.jacksonParser.parseSignedClaims(state.token).getPayload().get(state.rolesClaim).hashCode();
+    }
+
+    /**
+     * Parses with the streaming deserializer and reads the roles/groups claim, forcing the lazily parsed claim to be
+     * materialised
+     */
+    @Benchmark
+    public Object parseStreamingDeserializerAndReadRoles(TokenState state) {
+        return state.streamingParser.parseSignedClaims(state.token).getPayload().get(state.rolesClaim).hashCode();
+    }
+
     @Benchmark
     @OperationsPerInvocation(100)
     public void buildParserDefault(ParserState state, Blackhole bh) {
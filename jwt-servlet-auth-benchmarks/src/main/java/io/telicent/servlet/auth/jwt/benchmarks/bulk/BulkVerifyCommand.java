@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.benchmarks.bulk;
+
+import io.telicent.servlet.auth.jwt.configuration.VerificationFactory;
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.bulk.BulkTokenVerifier;
+import io.telicent.servlet.auth.jwt.verification.bulk.BulkVerificationStatistics;
+import io.telicent.servlet.auth.jwt.verification.bulk.VerificationOutcome;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Command line entry point for {@link BulkTokenVerifier}
+ * <p>
+ * This lives alongside the benchmarks, rather than in the core library, since it is a tool for operators and not
+ * something applications depending on the library need.
+ * </p>
+ * <p>
+ * The verifier is configured from {@code jwt.*=value} arguments using the same
+ * {@link io.telicent.servlet.auth.jwt.configuration.ConfigurationParameters} as the runtime specific filters, so a
+ * captured set of tokens can be checked against exactly the key configuration a deployment would use, e.g.
+ * </p>
+ * <pre>
+ * java -cp benchmarks.jar io.telicent.servlet.auth.jwt.benchmarks.bulk.BulkVerifyCommand --input tokens.txt \
+ *      --output outcomes.tsv jwt.jwks.url=https://example.org/jwks.json
+ * </pre>
+ */
+public final class BulkVerifyCommand {
+
+    static final String USAGE =
+            "Usage: BulkVerifyCommand --input <file> [--output <file>] [--parallelism <n>] [--batch-size <n>] "
+            + "<jwt.parameter>=<value> ...";
+
+    private BulkVerifyCommand() {
+    }
+
+    /**
+     * Entry point
+     *
+     * @param args Arguments
+     */
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs the command
+     *
+     * @param args Arguments
+     * @param out  Standard output, used for outcomes if no output file is given
+     * @param err  Standard error, used for usage and the final summary
+     * @return Exit code, {@code 0} if all tokens were valid, {@code 1} if any were not, and {@code 2} if the command
+     * could not be run
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        String input = null, output = null;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int batchSize = BulkTokenVerifier.DEFAULT_BATCH_SIZE;
+        Map<String, String> params = new HashMap<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--input" -> input = args[++i];
+                    case "--output" -> output = args[++i];
+                    case "--parallelism" -> parallelism = Integer.parseInt(args[++i]);
+                    case "--batch-size" -> batchSize = Integer.parseInt(args[++i]);
+                    default -> {
+                        int eq = args[i].indexOf('=');
+                        if (eq <= 0) {
+                            return usage(err, "Unrecognised argument " + args[i]);
+                        }
+                        params.put(args[i].substring(0, eq), args[i].substring(eq + 1));
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return usage(err, "Missing value for argument " + args[args.length - 1]);
+        } catch (NumberFormatException e) {
+            return usage(err, "Invalid number: " + e.getMessage());
+        }
+        if (StringUtils.isBlank(input)) {
+            return usage(err, "An --input file is required");
+        }
+
+        AtomicReference<JwtVerifier> verifier = new AtomicReference<>();
+        VerificationFactory.configure(params::get, verifier::set);
+        if (verifier.get() == null) {
+            return usage(err, "Failed to configure a JWT verifier from the supplied jwt.* parameters");
+        }
+
+        BulkTokenVerifier bulkVerifier;
+        try {
+            bulkVerifier = new BulkTokenVerifier(verifier.get(), parallelism, batchSize);
+        } catch (IllegalArgumentException e) {
+            return usage(err, e.getMessage());
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(input), StandardCharsets.UTF_8)) {
+            // Never close standard output, only flush it
+            Writer writer = output != null ? Files.newBufferedWriter(Path.of(output), StandardCharsets.UTF_8) :
+                            new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            BulkVerificationStatistics statistics;
+            try {
+                statistics = bulkVerifier.verify(reader, writer);
+            } finally {
+                if (output != null) {
+                    writer.close();
+                } else {
+                    writer.flush();
+                }
+            }
+            err.println(statistics);
+            return statistics.getCount(VerificationOutcome.VALID) == statistics.getTotal() ? 0 : 1;
+        } catch (IOException e) {
+            err.println("Bulk verification failed: " + e.getMessage());
+            return 2;
+        }
+    }
+
+    private static int usage(PrintStream err, String message) {
+        err.println(message);
+        err.println(USAGE);
+        return 2;
+    }
+}
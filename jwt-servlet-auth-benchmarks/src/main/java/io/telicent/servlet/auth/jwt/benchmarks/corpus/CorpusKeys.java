@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.benchmarks.corpus;
+
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.jackson.io.JacksonSerializer;
+import io.jsonwebtoken.security.*;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.*;
+
+/**
+ * The keys used to sign a token corpus, each algorithm has one or more keys identified by key IDs of the form
+ * {@code <algorithm>-<n>}
+ */
+public final class CorpusKeys {
+
+    /**
+     * Key material for a single key ID
+     *
+     * @param keyId           Key ID
+     * @param algorithm       Signature algorithm
+     * @param signingKey      Key used to sign tokens
+     * @param verificationKey Key used to verify tokens
+     * @param forgeryKey      A different key of the same type used to forge tokens that claim to use this key ID
+     */
+    public record KeyMaterial(String keyId, SecureDigestAlgorithm<?, ?> algorithm, Key signingKey,
+                              Key verificationKey, Key forgeryKey) {
+    }
+
+    private final List<KeyMaterial> keys;
+    private final Map<String, Key> verificationKeys = new HashMap<>();
+
+    /**
+     * Generates keys for the given algorithms
+     *
+     * @param algorithms Algorithm IDs e.g. {@code HS256}
+     * @param kidsPerAlgorithm Number of keys per algorithm
+     */
+    CorpusKeys(List<String> algorithms, int kidsPerAlgorithm) {
+        List<KeyMaterial> keys = new ArrayList<>();
+        for (String id : algorithms) {
+            SecureDigestAlgorithm<?, ?> algorithm = Jwts.SIG.get().get(id);
+            if (algorithm == null) {
+                throw new IllegalArgumentException("Unknown signature algorithm " + id);
+            }
+            for (int i = 0; i < kidsPerAlgorithm; i++) {
+                String keyId = id.toLowerCase(Locale.ROOT) + "-" + i;
+                if (algorithm instanceof MacAlgorithm mac) {
+                    SecretKey key = mac.key().build();
+                    keys.add(new KeyMaterial(keyId, algorithm, key, key, mac.key().build()));
+                } else if (algorithm instanceof SignatureAlgorithm signature) {
+                    KeyPair pair = signature.keyPair().build();
+                    keys.add(new KeyMaterial(keyId, algorithm, pair.getPrivate(), pair.getPublic(),
+                                             signature.keyPair().build().getPrivate()));
+                } else {
+                    throw new IllegalArgumentException("Unsupported signature algorithm " + id);
+                }
+            }
+        }
+        this.keys = List.copyOf(keys);
+        this.keys.forEach(k -> this.verificationKeys.put(k.keyId(), k.verificationKey()));
+    }
+
+    /**
+     * Gets all the keys
+     *
+     * @return Keys
+     */
+    public List<KeyMaterial> getKeys() {
+        return this.keys;
+    }
+
+    /**
+     * Creates a locator that locates verification keys by key ID
+     *
+     * @return Key locator
+     */
+    public LocatorAdapter<Key> locator() {
+        return new LocatorAdapter<>() {
+            @Override
+            protected Key locate(JwsHeader header) {
+                return verificationKeys.get(header.getKeyId());
+            }
+        };
+    }
+
+    /**
+     * Writes the verification keys as a JSON Web Key Set (JWKS)
+     *
+     * @param jwksFile File to write to
+     * @throws IOException Thrown if the file cannot be written
+     */
+    public void writeJwks(Path jwksFile) throws IOException {
+        JwkSetBuilder builder = Jwks.set();
+        for (KeyMaterial key : this.keys) {
+            Jwk<?> jwk = switch (key.verificationKey()) {
+                case SecretKey secret -> Jwks.builder().key(secret).id(key.keyId()).build();
+                case PublicKey publicKey -> Jwks.builder().key(publicKey).id(key.keyId()).build();
+                default -> throw new IllegalStateException("Unexpected key type " + key.verificationKey());
+            };
+            builder.add(jwk);
+        }
+        try (OutputStream output = Files.newOutputStream(jwksFile)) {
+            new JacksonSerializer<>().serialize(builder.build(), output);
+        }
+    }
+
+    /**
+     * Signs a token with the given key using the algorithm of the key material
+     *
+     * @param builder  JWT builder
+     * @param material Key material
+     * @param key      Key to sign with, either the signing key or the forgery key
+     * @return Compact token
+     */
+    @SuppressWarnings("unchecked")
+    static String sign(JwtBuilder builder, KeyMaterial material, Key key) {
+        if (key instanceof SecretKey secret) {
+            return builder.signWith(secret, (SecureDigestAlgorithm<? super SecretKey, ?>) material.algorithm())
+                          .compact();
+        }
+        return builder.signWith((PrivateKey) key, (SecureDigestAlgorithm<? super PrivateKey, ?>) material.algorithm())
+                      .compact();
+    }
+}
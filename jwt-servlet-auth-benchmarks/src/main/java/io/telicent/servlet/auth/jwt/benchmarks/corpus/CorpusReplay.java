@@ -0,0 +1,210 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.benchmarks.corpus;
+
+import io.jsonwebtoken.JwtException;
+import io.telicent.servlet.auth.jwt.JwtHttpConstants;
+import io.telicent.servlet.auth.jwt.configuration.ClaimPath;
+import io.telicent.servlet.auth.jwt.fake.FakeEngine;
+import io.telicent.servlet.auth.jwt.fake.FakeRequest;
+import io.telicent.servlet.auth.jwt.fake.FakeResponse;
+import io.telicent.servlet.auth.jwt.sources.HeaderSource;
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.SignedJwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.jwks.CachedJwksKeyLocator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replays a {@link TokenCorpus} through the verification and engine code paths, reporting the cost of each kind of
+ * token separately so that failure path costs are visible rather than averaged away
+ * <p>
+ * This can be run directly, e.g.
+ * {@code java -cp benchmarks.jar io.telicent.servlet.auth.jwt.benchmarks.corpus.CorpusReplay hostile jwks 3}, to get a
+ * quick per-kind breakdown, the {@code CorpusReplayBenchmark} uses the same corpora for rigorous throughput
+ * measurements.
+ * </p>
+ */
+public final class CorpusReplay {
+
+    /**
+     * Key source that locates keys directly from the corpus keys
+     */
+    public static final String KEY_SOURCE_LOCATOR = "locator";
+    /**
+     * Key source that locates keys via a {@link CachedJwksKeyLocator} over a JWKS file written from the corpus keys
+     */
+    public static final String KEY_SOURCE_JWKS = "jwks";
+
+    /**
+     * Path of the roles claim within corpus tokens
+     */
+    public static final ClaimPath ROLES_CLAIM = ClaimPath.of(TokenCorpus.ROLES_CLAIM, "roles");
+
+    private CorpusReplay() {
+    }
+
+    /**
+     * Creates a verifier for the corpus
+     *
+     * @param corpus    Corpus
+     * @param keySource Key source, either {@value #KEY_SOURCE_LOCATOR} or {@value #KEY_SOURCE_JWKS}
+     * @return Verifier
+     */
+    public static JwtVerifier createVerifier(TokenCorpus corpus, String keySource) {
+        return switch (keySource) {
+            case KEY_SOURCE_LOCATOR -> new SignedJwtVerifier(corpus.getKeys().locator());
+            case KEY_SOURCE_JWKS -> {
+                try {
+                    Path jwks = Files.createTempFile("corpus-jwks", ".json");
+                    jwks.toFile().deleteOnExit();
+                    corpus.getKeys().writeJwks(jwks);
+                    yield new SignedJwtVerifier(new CachedJwksKeyLocator(jwks.toUri(), Duration.ofMinutes(15)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown key source " + keySource);
+        };
+    }
+
+    /**
+     * Creates an engine configured to authenticate corpus tokens from the {@code Authorization} header
+     *
+     * @return Engine
+     */
+    public static FakeEngine createEngine() {
+        return new FakeEngine(List.of(new HeaderSource(JwtHttpConstants.HEADER_AUTHORIZATION,
+                                                       JwtHttpConstants.AUTH_SCHEME_BEARER)), null, null,
+                              ROLES_CLAIM);
+    }
+
+    /**
+     * Verifies a single corpus token
+     *
+     * @param verifier Verifier
+     * @param token    Token
+     * @return {@code true} if the token was successfully verified
+     */
+    public static boolean verify(JwtVerifier verifier, CorpusToken token) {
+        try {
+            return verifier.verify(token.token()) != null;
+        } catch (JwtException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Authenticates a request carrying a single corpus token, checking a role if authentication succeeds
+     *
+     * @param engine   Engine
+     * @param verifier Verifier
+     * @param token    Token
+     * @return {@code true} if the request was successfully authenticated
+     */
+    public static boolean authenticate(FakeEngine engine, JwtVerifier verifier, CorpusToken token) {
+        FakeRequest request =
+                new FakeRequest(Map.of(JwtHttpConstants.HEADER_AUTHORIZATION, token.authorizationHeader()), "/");
+        FakeRequest authenticated = engine.authenticate(request, new FakeResponse(), verifier);
+        if (authenticated == null) {
+            return false;
+        }
+        authenticated.isUserInRole("role-0");
+        return true;
+    }
+
+    /**
+     * Per-kind replay statistics
+     *
+     * @param count      Number of tokens replayed
+     * @param nanos      Total time spent on them
+     * @param unexpected Number whose outcome didn't match their kind, e.g. a valid token that failed
+     */
+    public record KindStatistics(long count, long nanos, long unexpected) {
+
+        KindStatistics add(long elapsed, boolean isUnexpected) {
+            return new KindStatistics(this.count + 1, this.nanos + elapsed, this.unexpected + (isUnexpected ? 1 : 0));
+        }
+
+        /**
+         * Mean time per token in nanoseconds
+         *
+         * @return Mean time
+         */
+        public double meanNanos() {
+            return this.count > 0 ? (double) this.nanos / this.count : 0;
+        }
+    }
+
+    /**
+     * Replays the corpus the given number of times
+     *
+     * @param corpus   Corpus
+     * @param verifier Verifier
+     * @param engine   Engine, if {@code null} tokens are verified directly rather than via the engine
+     * @param passes   Number of passes over the corpus
+     * @return Per-kind statistics
+     */
+    public static Map<CorpusToken.Kind, KindStatistics> replay(TokenCorpus corpus, JwtVerifier verifier,
+                                                               FakeEngine engine, int passes) {
+        Map<CorpusToken.Kind, KindStatistics> statistics = new EnumMap<>(CorpusToken.Kind.class);
+        for (int pass = 0; pass < passes; pass++) {
+            for (CorpusToken token : corpus.getTokens()) {
+                long start = System.nanoTime();
+                boolean success = engine != null ? authenticate(engine, verifier, token) : verify(verifier, token);
+                long elapsed = System.nanoTime() - start;
+                boolean unexpected = success != (token.kind() == CorpusToken.Kind.VALID);
+                statistics.compute(token.kind(),
+                                   (k, stats) -> (stats != null ? stats : new KindStatistics(0, 0, 0)).add(elapsed,
+                                                                                                          unexpected));
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Entry point
+     *
+     * @param args Optional corpus specification, key source and number of passes
+     */
+    public static void main(String[] args) {
+        CorpusSpec spec = CorpusSpec.parse(args.length > 0 ? args[0] : null);
+        String keySource = args.length > 1 ? args[1] : KEY_SOURCE_LOCATOR;
+        int passes = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        TokenCorpus corpus = TokenCorpus.generate(spec);
+        System.out.println(corpus);
+        JwtVerifier verifier = createVerifier(corpus, keySource);
+
+        // First pass warms up the JVM, and any caches, and is discarded
+        replay(corpus, verifier, createEngine(), 1);
+        print("verifier", replay(corpus, verifier, null, passes));
+        print("engine", replay(corpus, verifier, createEngine(), passes));
+    }
+
+    private static void print(String target, Map<CorpusToken.Kind, KindStatistics> statistics) {
+        statistics.forEach((kind, stats) -> System.out.printf("%-8s %-9s count=%-8d mean=%10.0fns unexpected=%d%n",
+                                                              target, kind, stats.count(), stats.meanNanos(),
+                                                              stats.unexpected()));
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.benchmarks.corpus;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes the shape of a generated token corpus
+ * <p>
+ * A specification can be given in compact form as comma separated {@code key=value} pairs, any keys not given take
+ * their value from {@link #DEFAULT}, e.g. {@code users=50000,reuse=0.5,algorithms=RS256|ES256}.  Alternatively one of
+ * the named {@link #PRESETS} may be used.
+ * </p>
+ *
+ * @param seed       Seed for the random number generator, the same seed and specification always produces a corpus
+ *                   with the same shape i.e. the same users, token kinds, claim sizes, roles and key IDs in the same
+ *                   order.  Key material, and thus signatures, differs between runs.
+ * @param size       Number of tokens in the corpus
+ * @param users      Number of distinct users
+ * @param skew       Zipf exponent controlling how skewed traffic is towards the most active users, {@code 0} gives a
+ *                   uniform distribution, {@code 1} approximates typical traffic
+ * @param reuse      Probability that a user's request reuses their current token rather than a freshly issued one
+ * @param claimBytes Mean size in bytes of the additional profile claim carried by each token, actual sizes vary by up
+ *                   to 50% either side of this
+ * @param roles      Maximum number of roles in each token, each token carries between 0 and this many roles
+ * @param algorithms Signature algorithms to issue tokens with
+ * @param kids       Number of keys, and thus key IDs, per algorithm
+ * @param expired    Proportion of tokens that are expired
+ * @param forged     Proportion of tokens that are signed with the wrong key
+ * @param malformed  Proportion of tokens that are malformed
+ */
+public record CorpusSpec(long seed, int size, int users, double skew, double reuse, int claimBytes, int roles,
+                         List<String> algorithms, int kids, double expired, double forged, double malformed) {
+
+    /**
+     * The default specification
+     */
+    public static final CorpusSpec DEFAULT =
+            new CorpusSpec(20240601L, 10_000, 1_000, 1.0, 0.9, 512, 8, List.of("HS256", "RS256", "ES256"), 2, 0.05,
+                           0.02, 0.01);
+
+    /**
+     * Named specifications for common traffic shapes
+     */
+    public static final Map<String, String> PRESETS =
+            Map.of("default", "", "cold", "users=100000,skew=0,reuse=0", "hostile",
+                   "expired=0.2,forged=0.2,malformed=0.2", "large", "claimBytes=8192,roles=64");
+
+    /**
+     * Creates a new specification
+     */
+    public CorpusSpec {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be >= 1");
+        }
+        if (users < 1) {
+            throw new IllegalArgumentException("users must be >= 1");
+        }
+        if (skew < 0) {
+            throw new IllegalArgumentException("skew must be >= 0");
+        }
+        if (claimBytes < 0 || roles < 0) {
+            throw new IllegalArgumentException("claimBytes and roles must be >= 0");
+        }
+        if (algorithms == null || algorithms.isEmpty()) {
+            throw new IllegalArgumentException("at least one algorithm is required");
+        }
+        if (kids < 1) {
+            throw new IllegalArgumentException("kids must be >= 1");
+        }
+        requireProbability("reuse", reuse);
+        requireProbability("expired", expired);
+        requireProbability("forged", forged);
+        requireProbability("malformed", malformed);
+        if (expired + forged + malformed > 1.0) {
+            throw new IllegalArgumentException("expired + forged + malformed must be <= 1");
+        }
+        algorithms = List.copyOf(algorithms);
+    }
+
+    private static void requireProbability(String name, double value) {
+        if (value < 0 || value > 1) {
+            throw new IllegalArgumentException(name + " must be between 0 and 1");
+        }
+    }
+
+    /**
+     * Parses a specification, either the name of one of the {@link #PRESETS} or comma separated {@code key=value}
+     * pairs
+     *
+     * @param spec Specification
+     * @return Parsed specification
+     */
+    public static CorpusSpec parse(String spec) {
+        if (StringUtils.isBlank(spec)) {
+            return DEFAULT;
+        }
+        String pairs = PRESETS.getOrDefault(spec.strip(), spec);
+
+        long seed = DEFAULT.seed;
+        int size = DEFAULT.size, users = DEFAULT.users, claimBytes = DEFAULT.claimBytes, roles = DEFAULT.roles,
+                kids = DEFAULT.kids;
+        double skew = DEFAULT.skew, reuse = DEFAULT.reuse, expired = DEFAULT.expired, forged = DEFAULT.forged,
+                malformed = DEFAULT.malformed;
+        List<String> algorithms = DEFAULT.algorithms;
+        for (String pair : StringUtils.split(pairs, ',')) {
+            String[] kv = StringUtils.split(pair, "=", 2);
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Expected key=value but got " + pair);
+            }
+            String value = kv[1].strip();
+            try {
+                switch (kv[0].strip()) {
+                    case "seed" -> seed = Long.parseLong(value);
+                    case "size" -> size = Integer.parseInt(value);
+                    case "users" -> users = Integer.parseInt(value);
+                    case "skew" -> skew = Double.parseDouble(value);
+                    case "reuse" -> reuse = Double.parseDouble(value);
+                    case "claimBytes" -> claimBytes = Integer.parseInt(value);
+                    case "roles" -> roles = Integer.parseInt(value);
+                    case "algorithms" -> algorithms = Arrays.stream(StringUtils.split(value, '|'))
+                                                            .map(String::strip)
+                                                            .toList();
+                    case "kids" -> kids = Integer.parseInt(value);
+                    case "expired" -> expired = Double.parseDouble(value);
+                    case "forged" -> forged = Double.parseDouble(value);
+                    case "malformed" -> malformed = Double.parseDouble(value);
+                    default -> throw new IllegalArgumentException("Unknown corpus specification key " + kv[0]);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for " + kv[0] + ": " + value, e);
+            }
+        }
+        return new CorpusSpec(seed, size, users, skew, reuse, claimBytes, roles, algorithms, kids, expired, forged,
+                              malformed);
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.benchmarks.corpus;
+
+import io.telicent.servlet.auth.jwt.JwtHttpConstants;
+
+/**
+ * A token within a corpus
+ *
+ * @param user  User the token was issued to
+ * @param kind  Kind of token
+ * @param keyId Key ID the token claims to be signed with, {@code null} for some malformed tokens
+ * @param token Raw token
+ */
+public record CorpusToken(int user, Kind kind, String keyId, String token) {
+
+    /**
+     * Kinds of token in a corpus
+     */
+    public enum Kind {
+        /**
+         * A valid token
+         */
+        VALID,
+        /**
+         * A correctly signed but expired token
+         */
+        EXPIRED,
+        /**
+         * A token whose signature was created with a different key to the one its key ID refers to
+         */
+        FORGED,
+        /**
+         * A token that is not a well-formed signed JWT
+         */
+        MALFORMED
+    }
+
+    /**
+     * Gets the value of an {@code Authorization} header carrying this token
+     *
+     * @return Header value
+     */
+    public String authorizationHeader() {
+        return JwtHttpConstants.AUTH_SCHEME_BEARER + " " + this.token;
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.benchmarks.corpus;
+
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * A generated corpus of tokens whose shape is controlled by a {@link CorpusSpec}, intended to replace the single
+ * static token that benchmarks would otherwise use and which flatters caches and branch prediction
+ * <p>
+ * Each position in the corpus represents one request from a user selected according to the specifications skew.
+ * Valid requests reuse the user's current token with the specified probability, otherwise a fresh token (with a new
+ * {@code jti}, issue time, roles and profile claim) is issued to them.  Expired, forged and malformed tokens are
+ * always freshly generated.
+ * </p>
+ */
+public final class TokenCorpus {
+
+    /**
+     * Issuer used for all tokens in the corpus
+     */
+    public static final String ISSUER = "https://corpus.example.org";
+
+    /**
+     * Claim used to carry roles, modelled on Keycloak's {@code realm_access.roles} claim
+     */
+    public static final String ROLES_CLAIM = "realm_access";
+
+    private static final char[] PROFILE_CHARS =
+            "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 ".toCharArray();
+
+    private final CorpusSpec spec;
+    private final CorpusKeys keys;
+    private final List<CorpusToken> tokens;
+
+    private TokenCorpus(CorpusSpec spec, CorpusKeys keys, List<CorpusToken> tokens) {
+        this.spec = spec;
+        this.keys = keys;
+        this.tokens = tokens;
+    }
+
+    /**
+     * Generates a new corpus
+     *
+     * @param spec Specification
+     * @return Token corpus
+     */
+    public static TokenCorpus generate(CorpusSpec spec) {
+        Objects.requireNonNull(spec, "Specification cannot be null");
+        CorpusKeys keys = new CorpusKeys(spec.algorithms(), spec.kids());
+        List<CorpusKeys.KeyMaterial> material = keys.getKeys();
+        SplittableRandom random = new SplittableRandom(spec.seed());
+        double[] userWeights = cumulativeUserWeights(spec.users(), spec.skew());
+        Map<Integer, CorpusToken> current = new HashMap<>();
+        Instant now = Instant.now();
+
+        List<CorpusToken> tokens = new ArrayList<>(spec.size());
+        for (int i = 0; i < spec.size(); i++) {
+            int user = selectUser(userWeights, random);
+            double r = random.nextDouble();
+            CorpusToken.Kind kind = r < spec.expired() ? CorpusToken.Kind.EXPIRED :
+                                    r < spec.expired() + spec.forged() ? CorpusToken.Kind.FORGED :
+                                    r < spec.expired() + spec.forged() + spec.malformed() ?
+                                    CorpusToken.Kind.MALFORMED : CorpusToken.Kind.VALID;
+            if (kind == CorpusToken.Kind.VALID && current.containsKey(user) && random.nextDouble() < spec.reuse()) {
+                tokens.add(current.get(user));
+                continue;
+            }
+
+            CorpusKeys.KeyMaterial key = material.get(random.nextInt(material.size()));
+            JwtBuilder builder = issue(spec, random, user, key, now, kind == CorpusToken.Kind.EXPIRED);
+            CorpusToken token = switch (kind) {
+                case VALID, EXPIRED -> new CorpusToken(user, kind, key.keyId(),
+                                                       CorpusKeys.sign(builder, key, key.signingKey()));
+                case FORGED -> new CorpusToken(user, kind, key.keyId(),
+                                               CorpusKeys.sign(builder, key, key.forgeryKey()));
+                case MALFORMED -> new CorpusToken(user, kind, key.keyId(),
+                                                  malform(CorpusKeys.sign(builder, key, key.signingKey()), random));
+            };
+            if (kind == CorpusToken.Kind.VALID && spec.reuse() > 0) {
+                current.put(user, token);
+            }
+            tokens.add(token);
+        }
+        return new TokenCorpus(spec, keys, Collections.unmodifiableList(tokens));
+    }
+
+    private static JwtBuilder issue(CorpusSpec spec, SplittableRandom random, int user, CorpusKeys.KeyMaterial key,
+                                    Instant now, boolean expired) {
+        Instant expiry = expired ? now.minus(Duration.ofMinutes(1 + random.nextInt(1440))) :
+                         now.plus(Duration.ofMinutes(60 + random.nextInt(1440)));
+        int roleCount = spec.roles() > 0 ? random.nextInt(spec.roles() + 1) : 0;
+        List<String> roles = new ArrayList<>(roleCount);
+        for (int i = 0; i < roleCount; i++) {
+            roles.add("role-" + random.nextInt(Math.max(1, spec.roles() * 4)));
+        }
+        return Jwts.builder()
+                   .header()
+                   .keyId(key.keyId())
+                   .and()
+                   .issuer(ISSUER)
+                   .subject("user-" + user)
+                   .id(Long.toHexString(random.nextLong()))
+                   .issuedAt(Date.from(expiry.minus(Duration.ofHours(1))))
+                   .expiration(Date.from(expiry))
+                   .claim(ROLES_CLAIM, Map.of("roles", roles))
+                   .claim("profile", profile(spec.claimBytes(), random));
+    }
+
+    private static String profile(int meanBytes, SplittableRandom random) {
+        if (meanBytes == 0) {
+            return "";
+        }
+        int length = meanBytes / 2 + random.nextInt(meanBytes + 1);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = PROFILE_CHARS[random.nextInt(PROFILE_CHARS.length)];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Malforms a token in one of several ways so that different parser failure paths are exercised
+     *
+     * @param token  Well-formed token
+     * @param random Random number generator
+     * @return Malformed token
+     */
+    private static String malform(String token, SplittableRandom random) {
+        int firstDot = token.indexOf('.');
+        int lastDot = token.lastIndexOf('.');
+        return switch (random.nextInt(4)) {
+            // Signature stripped, which makes it look like an unsecured JWT
+            case 0 -> token.substring(0, lastDot + 1);
+            // Invalid Base64 within the payload
+            case 1 -> {
+                int position = firstDot + 1 + random.nextInt(lastDot - firstDot - 1);
+                yield token.substring(0, position) + "*" + token.substring(position + 1);
+            }
+            // Missing signature segment entirely
+            case 2 -> token.substring(0, lastDot);
+            // Not a JWT at all
+            default -> "not-a-jwt-" + Long.toHexString(random.nextLong());
+        };
+    }
+
+    private static double[] cumulativeUserWeights(int users, double skew) {
+        double[] cumulative = new double[users];
+        double total = 0;
+        for (int i = 0; i < users; i++) {
+            total += skew == 0 ? 1.0 : 1.0 / Math.pow(i + 1, skew);
+            cumulative[i] = total;
+        }
+        return cumulative;
+    }
+
+    private static int selectUser(double[] cumulative, SplittableRandom random) {
+        double target = random.nextDouble() * cumulative[cumulative.length - 1];
+        int index = Arrays.binarySearch(cumulative, target);
+        return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+    }
+
+    /**
+     * Gets the specification the corpus was generated from
+     *
+     * @return Specification
+     */
+    public CorpusSpec getSpec() {
+        return this.spec;
+    }
+
+    /**
+     * Gets the keys used to sign the corpus
+     *
+     * @return Keys
+     */
+    public CorpusKeys getKeys() {
+        return this.keys;
+    }
+
+    /**
+     * Gets the tokens in the corpus
+     *
+     * @return Tokens
+     */
+    public List<CorpusToken> getTokens() {
+        return this.tokens;
+    }
+
+    /**
+     * Gets the number of tokens in the corpus
+     *
+     * @return Size
+     */
+    public int size() {
+        return this.tokens.size();
+    }
+
+    /**
+     * Gets the token at the given position, wrapping around if the position exceeds the corpus size
+     *
+     * @param position Position
+     * @return Token
+     */
+    public CorpusToken get(long position) {
+        return this.tokens.get((int) Long.remainderUnsigned(position, this.tokens.size()));
+    }
+
+    /**
+     * Gets the proportion of requests in the corpus that present a token already seen earlier in the corpus, this is
+     * the best hit rate any cache keyed on the raw token could achieve when replaying the corpus once
+     *
+     * @return Repeat ratio
+     */
+    public double getRepeatRatio() {
+        Set<String> seen = new HashSet<>();
+        long repeats = this.tokens.stream().filter(t -> !seen.add(t.token())).count();
+        return (double) repeats / this.tokens.size();
+    }
+
+    /**
+     * Counts the tokens of each kind
+     *
+     * @return Counts by kind
+     */
+    public Map<CorpusToken.Kind, Long> countByKind() {
+        Map<CorpusToken.Kind, Long> counts = new EnumMap<>(CorpusToken.Kind.class);
+        this.tokens.forEach(t -> counts.merge(t.kind(), 1L, Long::sum));
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TokenCorpus{size=%d, distinctUsers=%d, repeatRatio=%.3f, kinds=%s, keys=%d}",
+                             this.tokens.size(), this.tokens.stream().mapToInt(CorpusToken::user).distinct().count(),
+                             getRepeatRatio(), countByKind(), this.keys.getKeys().size());
+    }
+}
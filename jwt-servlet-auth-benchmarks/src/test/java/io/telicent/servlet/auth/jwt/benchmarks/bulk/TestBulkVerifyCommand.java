@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.benchmarks.bulk;
+
+import io.jsonwebtoken.Jwts;
+import io.telicent.servlet.auth.jwt.configuration.ConfigurationParameters;
+import io.telicent.servlet.auth.jwt.verification.TestKeyUtils;
+import io.telicent.servlet.auth.jwt.verification.bulk.BulkTokenVerifier;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class TestBulkVerifyCommand {
+
+    private SecretKey key;
+    private File keyFile;
+
+    @BeforeClass
+    public void setup() throws IOException {
+        this.key = Jwts.SIG.HS256.key().build();
+        this.keyFile = TestKeyUtils.saveKeyToFile(this.key.getEncoded());
+    }
+
+    private Path writeTokens(String... tokens) throws IOException {
+        Path input = Files.createTempFile("tokens", ".txt");
+        Files.write(input, List.of(tokens));
+        return input;
+    }
+
+    private int run(ByteArrayOutputStream out, ByteArrayOutputStream err, String... args) {
+        return BulkVerifyCommand.run(args, new PrintStream(out, true, StandardCharsets.UTF_8),
+                                     new PrintStream(err, true, StandardCharsets.UTF_8));
+    }
+
+    private String secretKeyParam() {
+        return ConfigurationParameters.PARAM_SECRET_KEY + "=" + this.keyFile.getAbsolutePath();
+    }
+
+    @Test
+    public void givenNoArguments_whenRunning_thenUsageError() {
+        // Given
+        ByteArrayOutputStream out = new ByteArrayOutputStream(), err = new ByteArrayOutputStream();
+
+        // When
+        int exitCode = run(out, err);
+
+        // Then
+        Assert.assertEquals(exitCode, 2);
+        Assert.assertTrue(err.toString(StandardCharsets.UTF_8).contains("--input file is required"));
+        Assert.assertTrue(err.toString(StandardCharsets.UTF_8).contains(BulkVerifyCommand.USAGE));
+    }
+
+    @Test
+    public void givenBadArguments_whenRunning_thenUsageErrors() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(), err = new ByteArrayOutputStream();
+
+        // When and Then
+        Assert.assertEquals(run(out, err, "--bogus"), 2);
+        Assert.assertEquals(run(out, err, "--input"), 2);
+        Assert.assertEquals(run(out, err, "--parallelism", "many"), 2);
+        Assert.assertEquals(run(out, err, "--input", "tokens.txt", "--batch-size", "0", secretKeyParam()), 2);
+        String errors = err.toString(StandardCharsets.UTF_8);
+        Assert.assertTrue(errors.contains("Unrecognised argument --bogus"));
+        Assert.assertTrue(errors.contains("Missing value for argument --input"));
+        Assert.assertTrue(errors.contains("Invalid number"));
+        Assert.assertTrue(errors.contains("Batch size must be >= 1"));
+    }
+
+    @Test
+    public void givenNoVerifierConfiguration_whenRunning_thenUsageError() throws IOException {
+        // Given
+        ByteArrayOutputStream out = new ByteArrayOutputStream(), err = new ByteArrayOutputStream();
+        Path input = writeTokens("abc.def.ghi");
+
+        // When
+        int exitCode = run(out, err, "--input", input.toString());
+
+        // Then
+        Assert.assertEquals(exitCode, 2);
+        Assert.assertTrue(err.toString(StandardCharsets.UTF_8).contains("Failed to configure a JWT verifier"));
+    }
+
+    @Test
+    public void givenValidTokens_whenRunningToStandardOutput_thenSuccess() throws IOException {
+        // Given
+        ByteArrayOutputStream out = new ByteArrayOutputStream(), err = new ByteArrayOutputStream();
+        Path input = writeTokens(Jwts.builder().subject("alice").signWith(this.key).compact(),
+                                 Jwts.builder().subject("bob").signWith(this.key).compact());
+
+        // When
+        int exitCode = run(out, err, "--input", input.toString(), "--parallelism", "2", secretKeyParam());
+
+        // Then
+        Assert.assertEquals(exitCode, 0);
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        Assert.assertEquals(lines,
+                            List.of(BulkTokenVerifier.OUTPUT_HEADER, "1\tVALID\t\talice\t", "2\tVALID\t\tbob\t"));
+        Assert.assertTrue(err.toString(StandardCharsets.UTF_8).contains("Verified 2 tokens"));
+    }
+
+    @Test
+    public void givenInvalidTokens_whenRunningToOutputFile_thenFailureExitCode() throws IOException {
+        // Given
+        ByteArrayOutputStream out = new ByteArrayOutputStream(), err = new ByteArrayOutputStream();
+        Path input = writeTokens(Jwts.builder().subject("alice").signWith(this.key).compact(), "garbage");
+        Path output = Files.createTempFile("outcomes", ".tsv");
+
+        // When
+        int exitCode =
+                run(out, err, "--input", input.toString(), "--output", output.toString(), "--batch-size", "1",
+                    secretKeyParam());
+
+        // Then
+        Assert.assertEquals(exitCode, 1);
+        Assert.assertEquals(out.size(), 0);
+        List<String> lines = Files.readAllLines(output);
+        Assert.assertEquals(lines.size(), 3);
+        Assert.assertTrue(lines.get(2).startsWith("2\tMALFORMED"));
+    }
+
+    @Test
+    public void givenMissingInputFile_whenRunning_thenError() {
+        // Given
+        ByteArrayOutputStream out = new ByteArrayOutputStream(), err = new ByteArrayOutputStream();
+
+        // When
+        int exitCode = run(out, err, "--input", "/no/such/tokens.txt", secretKeyParam());
+
+        // Then
+        Assert.assertEquals(exitCode, 2);
+        Assert.assertTrue(err.toString(StandardCharsets.UTF_8).contains("Bulk verification failed"));
+    }
+}
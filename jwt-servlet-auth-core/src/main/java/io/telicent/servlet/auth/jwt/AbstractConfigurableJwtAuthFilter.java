@@ -15,14 +15,21 @@
  */
 package io.telicent.servlet.auth.jwt;
 
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.telicent.servlet.auth.jwt.authorization.AuthorizationPolicy;
+import io.telicent.servlet.auth.jwt.authorization.AuthorizationRequirement;
+import io.telicent.servlet.auth.jwt.authorization.AuthorizationRule;
 import io.telicent.servlet.auth.jwt.configuration.AutomatedConfiguration;
 import io.telicent.servlet.auth.jwt.configuration.FrozenFilterConfiguration;
 import io.telicent.servlet.auth.jwt.configuration.RuntimeConfigurationAdaptor;
 import io.telicent.servlet.auth.jwt.errors.AuthenticationConfigurationError;
+import io.telicent.servlet.auth.jwt.verification.JwtWarmUp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
+import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 
@@ -50,6 +57,11 @@ public abstract class AbstractConfigurableJwtAuthFilter<TRequest, TResponse>
      */
     protected TRequest lastAuthenticatedRequest;
 
+    /**
+     * The warm-up for the configured verifier, if warm-up is enabled
+     */
+    private volatile JwtWarmUp warmUp;
+
     /**
      * Called to automatically configure the filter from the available configuration parameters
      *
@@ -79,6 +91,42 @@ public abstract class AbstractConfigurableJwtAuthFilter<TRequest, TResponse>
         } catch (AuthenticationConfigurationError e) {
             LOGGER.error(e.getMessage());
         }
+        try {
+            this.config.tryFreezeAuthorizationConfiguration(
+                    adaptor.getAttribute(JwtServletConstants.ATTRIBUTE_AUTHORIZATION_POLICY));
+        } catch (AuthenticationConfigurationError e) {
+            LOGGER.error(e.getMessage());
+        }
+        if (adaptor.getAttribute(JwtServletConstants.ATTRIBUTE_JWT_WARM_UP) instanceof JwtWarmUp jwtWarmUp) {
+            this.warmUp = jwtWarmUp;
+        }
+    }
+
+    /**
+     * Indicates whether the filter is ready to authenticate requests
+     * <p>
+     * A filter is ready once its engine and verifier are configured and, if warm-up is enabled via the
+     * {@value io.telicent.servlet.auth.jwt.configuration.ConfigurationParameters#PARAM_WARMUP_ENABLED} parameter, warm-up
+     * has completed.  Applications may consult this from their health checks.
+     * </p>
+     *
+     * @return True if ready, false otherwise
+     */
+    public boolean isReady() {
+        JwtWarmUp jwtWarmUp = this.warmUp;
+        return this.config.getEngine() != null && this.config.getVerifier() != null
+               && (jwtWarmUp == null || jwtWarmUp.isReady());
+    }
+
+    /**
+     * Stops any warm-up that is still in progress, filters call this when they are destroyed so that warm-up for a
+     * verifier that is no longer in use does not keep retrying
+     */
+    protected void stopWarmUp() {
+        JwtWarmUp jwtWarmUp = this.warmUp;
+        if (jwtWarmUp != null) {
+            jwtWarmUp.stop();
+        }
     }
 
     /**
@@ -98,6 +146,84 @@ public abstract class AbstractConfigurableJwtAuthFilter<TRequest, TResponse>
      */
     protected abstract String getPath(TRequest request);
 
+    /**
+     * Gets the path used to find the {@link AuthorizationRule}'s that apply to a request
+     * <p>
+     * This <strong>MUST</strong> be relative to the application root, i.e. exclude any context path, and be decoded
+     * and normalised so that path parameters, percent-encoding and dot segments can't be used to evade a rule.  By
+     * default this normalises the value of {@link #getPath(Object)} via {@link AuthorizationPolicy#normalisePath(String)},
+     * derived implementations should override this if their runtime exposes an already normalised context relative
+     * path.
+     * </p>
+     *
+     * @param request Request
+     * @return Authorization path
+     */
+    protected String getAuthorizationPath(TRequest request) {
+        return AuthorizationPolicy.normalisePath(this.getPath(request));
+    }
+
+    /**
+     * Gets the HTTP method of the request
+     * <p>
+     * Used to select method specific {@link AuthorizationRule}'s, by default this returns {@code null} meaning only
+     * rules that apply to any method are considered, derived implementations should override this.
+     * </p>
+     *
+     * @param request Request
+     * @return HTTP method
+     */
+    protected String getMethod(TRequest request) {
+        return null;
+    }
+
+    /**
+     * Gets a request attribute
+     * <p>
+     * Used to obtain the verified JWT when evaluating claim requirements of {@link AuthorizationRule}'s, by default
+     * this returns {@code null} meaning claim requirements are never satisfied, derived implementations should
+     * override this.
+     * </p>
+     *
+     * @param request   Request
+     * @param attribute Attribute name
+     * @return Attribute value, or {@code null} if no such attribute exists
+     */
+    protected Object getRequestAttribute(TRequest request, String attribute) {
+        return null;
+    }
+
+    /**
+     * Gets whether the authenticated user holds a role
+     * <p>
+     * Used when evaluating role requirements of {@link AuthorizationRule}'s, by default this returns {@code false}
+     * meaning role requirements are never satisfied, derived implementations should override this.
+     * </p>
+     *
+     * @param authenticatedRequest Authenticated request
+     * @param role                 Role
+     * @return True if the user holds the role, false otherwise
+     */
+    protected boolean isUserInRole(TRequest authenticatedRequest, String role) {
+        return false;
+    }
+
+    /**
+     * Gets all the roles the authenticated user holds
+     * <p>
+     * Used when evaluating role requirements of {@link AuthorizationRule}'s so that the user's roles are resolved once
+     * per request rather than once per required role.  By default this returns {@code null} meaning the roles aren't
+     * available as a set and {@link #isUserInRole(Object, String)} is consulted for each required role instead,
+     * derived implementations should override this.
+     * </p>
+     *
+     * @param authenticatedRequest Authenticated request
+     * @return Roles, or {@code null} if not available
+     */
+    protected Set<String> getUserRoles(TRequest authenticatedRequest) {
+        return null;
+    }
+
     /**
      * Gets the default authentication engine to use if an engine has not been explicitly configured
      *
@@ -159,6 +285,9 @@ public abstract class AbstractConfigurableJwtAuthFilter<TRequest, TResponse>
         TRequest authenticatedRequest =
                 this.config.getEngine().authenticate(request, response, this.config.getVerifier());
         if (authenticatedRequest != null) {
+            if (!this.isAuthorized(request, authenticatedRequest, response)) {
+                return;
+            }
             this.lastAuthenticatedRequest = authenticatedRequest;
             onSuccess.accept(authenticatedRequest, response);
         } else {
@@ -166,4 +295,50 @@ public abstract class AbstractConfigurableJwtAuthFilter<TRequest, TResponse>
                         this.config.getEngine().getRequestUrl(request), getStatus(response));
         }
     }
+
+    /**
+     * Applies the authorization policy, if any, to an authenticated request sending a {@code 403} challenge if the
+     * user lacks the required roles and/or claims
+     *
+     * @param request              Original request
+     * @param authenticatedRequest Authenticated request
+     * @param response             Response
+     * @return True if the request is authorized and should proceed, false if it was rejected
+     */
+    private boolean isAuthorized(TRequest request, TRequest authenticatedRequest, TResponse response) {
+        if (this.config.getAuthorizationPolicy() == null) {
+            this.config.tryFreezeAuthorizationConfiguration(
+                    this.getAttribute(request, JwtServletConstants.ATTRIBUTE_AUTHORIZATION_POLICY));
+        }
+        AuthorizationPolicy policy = this.config.getAuthorizationPolicy();
+        this.config.warnIfModificationAttempted(JwtServletConstants.ATTRIBUTE_AUTHORIZATION_POLICY,
+                                                x -> this.getAttribute(request, x), policy);
+        if (policy.isEmpty()) {
+            return true;
+        }
+        AuthorizationRequirement requirement = policy.find(this.getMethod(request), this.getAuthorizationPath(request));
+        if (requirement == null) {
+            return true;
+        }
+        Set<String> roles = this.getUserRoles(authenticatedRequest);
+        Jws<Claims> jws = this.getVerifiedJwt(authenticatedRequest);
+        if (roles != null ? requirement.isSatisfied(roles, jws) :
+            requirement.isSatisfied(role -> this.isUserInRole(authenticatedRequest, role), jws)) {
+            return true;
+        }
+        LOGGER.warn("Request to {} by {} forbidden by authorization rule for {} {}",
+                    this.config.getEngine().getRequestUrl(request), MDC.get(JwtLoggingConstants.MDC_JWT_USER),
+                    requirement.getRule().methods().isEmpty() ? AuthorizationRule.ANY_METHOD :
+                    requirement.getRule().methods(), requirement.getRule().pathPattern());
+        this.config.getEngine()
+                   .sendChallenge(authenticatedRequest, response,
+                                  JwtAuthenticationEngine.INSUFFICIENT_PERMISSIONS_CHALLENGE);
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Jws<Claims> getVerifiedJwt(TRequest authenticatedRequest) {
+        Object jws = this.getRequestAttribute(authenticatedRequest, JwtServletConstants.REQUEST_ATTRIBUTE_VERIFIED_JWT);
+        return jws instanceof Jws<?> ? (Jws<Claims>) jws : null;
+    }
 }
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utilities for hashing tokens, and values derived from them, when caching or tracking them without retaining the raw
+ * values
+ */
+public final class Hashing {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final char SEPARATOR = (char) 0xFFFF;
+
+    /**
+     * Private constructor prevents direct instantiation
+     */
+    private Hashing() {
+    }
+
+    /**
+     * Computes a 64-bit fingerprint of a value using FNV-1a over its characters followed by a finalising mix so that
+     * both halves of the fingerprint are well distributed
+     * <p>
+     * This is fast but <strong>not</strong> cryptographic, so is only suitable for bounded in-memory structures that
+     * tolerate the occasional collision.
+     * </p>
+     *
+     * @param value Value
+     * @return Fingerprint
+     */
+    public static long fingerprint(String value) {
+        return mix(fnv1a(FNV_OFFSET_BASIS, value));
+    }
+
+    /**
+     * Computes a 64-bit fingerprint of a pair of values, as for {@link #fingerprint(String)}, with a separator between
+     * them so that their boundary cannot be shifted to forge a collision
+     *
+     * @param first  First value, {@code null} is treated as empty
+     * @param second Second value
+     * @return Fingerprint
+     */
+    public static long fingerprint(String first, String second) {
+        long hash = first != null ? fnv1a(FNV_OFFSET_BASIS, first) : FNV_OFFSET_BASIS;
+        hash = (hash ^ SEPARATOR) * FNV_PRIME;
+        return mix(fnv1a(hash, second));
+    }
+
+    /**
+     * Computes the SHA-256 digest of the UTF-8 encoding of a value
+     *
+     * @param value Value
+     * @return Digest
+     */
+    public static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is a mandatory algorithm for all Java platforms
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long fnv1a(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -18,6 +18,7 @@ package io.telicent.servlet.auth.jwt;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
 import io.jsonwebtoken.RequiredTypeException;
+import io.telicent.servlet.auth.jwt.challenges.Challenge;
 import io.telicent.servlet.auth.jwt.configuration.ClaimPath;
 import io.telicent.servlet.auth.jwt.configuration.Utils;
 import io.telicent.servlet.auth.jwt.sources.HeaderSource;
@@ -55,6 +56,10 @@ public abstract class HeaderBasedJwtAuthenticationEngine<TRequest, TResponse>
      */
     protected final ClaimPath rolesClaim;
 
+    private final String noParametersMessage;
+    private final String configuredChallengePrefix;
+    private final Map<Challenge, String> fixedChallenges;
+
     /**
      * Creates a new engine
      *
@@ -77,6 +82,22 @@ public abstract class HeaderBasedJwtAuthenticationEngine<TRequest, TResponse>
         this.realm = realm;
         this.usernameClaims = usernameClaims != null ? List.copyOf(usernameClaims) : List.of();
         this.rolesClaim = rolesClaim;
+
+        // Precompute as much of our challenges as possible since they are sent without any verification having taken
+        // place, a configured realm allows the fixed challenges to be rendered in their entirety
+        this.noParametersMessage =
+                "No authentication headers received in request, expected at least one of " + StringUtils.join(
+                        this.headers, ", ");
+        this.configuredChallengePrefix = StringUtils.isNotBlank(realm) ? buildChallengeHeaderPrefix(realm) : null;
+        Map<Challenge, String> fixed = new HashMap<>();
+        for (Challenge challenge : List.of(new Challenge(401, "", this.noParametersMessage), NO_BEARER_TOKENS_CHALLENGE,
+                                           TOO_MANY_FAILURES_CHALLENGE, NO_USERNAME_CHALLENGE,
+                                           INSUFFICIENT_PERMISSIONS_CHALLENGE)) {
+            String parameters = buildChallengeHeaderParameters(challenge);
+            fixed.put(challenge,
+                      this.configuredChallengePrefix != null ? this.configuredChallengePrefix + parameters : parameters);
+        }
+        this.fixedChallenges = Map.copyOf(fixed);
     }
 
     @Override
@@ -109,9 +130,32 @@ public abstract class HeaderBasedJwtAuthenticationEngine<TRequest, TResponse>
                 StringUtils.isNotBlank(this.realm) ? this.realm : defaultRealm);
     }
 
+    /**
+     * Builds the value of the {@code WWW-Authenticate} header for a challenge issued in response to a request
+     * <p>
+     * Where a realm has been explicitly configured the fixed challenges, i.e. those that don't depend on the tokens
+     * presented, are pre-rendered when the engine is created and are returned without any further work.  Otherwise,
+     * the request URL is sanitised for use as the realm, and combined with the pre-rendered parameters of fixed
+     * challenges where possible.
+     * </p>
+     *
+     * @param requestUrl Request URL used as the realm if one has not been explicitly configured
+     * @param challenge  Challenge
+     * @return Challenge header
+     */
+    protected String buildChallengeHeaderForRequest(String requestUrl, Challenge challenge) {
+        // If we have a configured realm fixed challenges are stored fully rendered, otherwise only their parameters
+        String fixed = this.fixedChallenges.get(challenge);
+        if (this.configuredChallengePrefix != null) {
+            return fixed != null ? fixed : this.configuredChallengePrefix + buildChallengeHeaderParameters(challenge);
+        }
+        return buildChallengeHeaderPrefix(requestUrl) + (fixed != null ? fixed : buildChallengeHeaderParameters(
+                challenge));
+    }
+
     @Override
     protected String noParametersMessage() {
-        return "No authentication headers received in request, expected at least one of " + StringUtils.join(this.headers, ", ");
+        return this.noParametersMessage;
     }
 
     @Override
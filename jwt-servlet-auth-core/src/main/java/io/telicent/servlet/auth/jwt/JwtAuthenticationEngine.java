@@ -19,8 +19,12 @@ import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.KeyException;
 import io.jsonwebtoken.security.SignatureException;
 import io.telicent.servlet.auth.jwt.challenges.Challenge;
+import io.telicent.servlet.auth.jwt.challenges.RejectedTokenCache;
 import io.telicent.servlet.auth.jwt.challenges.TokenCandidate;
 import io.telicent.servlet.auth.jwt.challenges.VerifiedToken;
+import io.telicent.servlet.auth.jwt.errors.KeyLoadPendingException;
+import io.telicent.servlet.auth.jwt.errors.VerificationUnavailableException;
+import io.telicent.servlet.auth.jwt.ratelimit.FailureRateLimiter;
 import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -28,7 +32,7 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -54,6 +58,123 @@ public abstract class JwtAuthenticationEngine<TRequest, TResponse> {
     protected static final String INITIAL_CHALLENGE_MESSAGE =
             "No authentication parameters provided (initial 401 challenge response)";
 
+    /**
+     * Challenge sent to clients that have exceeded the permitted rate of failed authentication attempts, this is
+     * precomputed since it is sent without any verification having taken place
+     */
+    protected static final Challenge TOO_MANY_FAILURES_CHALLENGE =
+            new Challenge(429, OAuth2Constants.ERROR_INVALID_TOKEN,
+                          "Too many failed authentication attempts, try again later");
+
+    /**
+     * Challenge sent when a request provides authentication parameters but no tokens could be extracted from them
+     */
+    protected static final Challenge NO_BEARER_TOKENS_CHALLENGE =
+            new Challenge(400, OAuth2Constants.ERROR_INVALID_REQUEST, "No Bearer token(s) provided");
+
+    /**
+     * Challenge sent when a token verifies successfully but no username can be found within it
+     */
+    protected static final Challenge NO_USERNAME_CHALLENGE =
+            new Challenge(401, OAuth2Constants.ERROR_INVALID_TOKEN, "Failed to find a username for the user");
+
+    /**
+     * Challenge sent when an authenticated user lacks the roles and/or claims required by the authorization policy
+     */
+    protected static final Challenge INSUFFICIENT_PERMISSIONS_CHALLENGE =
+            new Challenge(403, OAuth2Constants.ERROR_INSUFFICIENT_SCOPE,
+                          "Insufficient permissions to access the requested resource");
+
+    /**
+     * Controls how the candidate tokens extracted from a request are evaluated
+     */
+    public enum CandidateEvaluation {
+        /**
+         * Candidates are verified one at a time, in the order they were extracted, stopping at the first token that
+         * both verifies and yields a username.  This avoids verifying further tokens once a usable token is found.
+         */
+        LAZY,
+        /**
+         * Every candidate is verified before any of them are considered for a username, this was the only behaviour
+         * prior to {@code 4.1.5} and may be preferred if a verifier relies on seeing every presented token, e.g. to
+         * record them as consumed
+         */
+        EAGER
+    }
+
+    private volatile FailureRateLimiter failureRateLimiter;
+    private volatile CandidateEvaluation candidateEvaluation = CandidateEvaluation.LAZY;
+    private volatile RejectedTokenCache rejectedTokenCache;
+
+    /**
+     * Sets how the candidate tokens extracted from a request are evaluated
+     * <p>
+     * In either mode the authenticated identity is taken from the first candidate that verifies and yields a username,
+     * and the same challenge is sent if no candidate does, the modes only differ in whether the remaining candidates
+     * are verified after a usable token is found.
+     * </p>
+     *
+     * @param candidateEvaluation Candidate evaluation mode, {@code null} is treated as
+     *                            {@link CandidateEvaluation#LAZY}
+     */
+    public void setCandidateEvaluation(CandidateEvaluation candidateEvaluation) {
+        this.candidateEvaluation = candidateEvaluation != null ? candidateEvaluation : CandidateEvaluation.LAZY;
+    }
+
+    /**
+     * Gets how the candidate tokens extracted from a request are evaluated
+     *
+     * @return Candidate evaluation mode
+     */
+    public CandidateEvaluation getCandidateEvaluation() {
+        return this.candidateEvaluation;
+    }
+
+    /**
+     * Sets the limiter used to reject clients that repeatedly fail authentication
+     * <p>
+     * When set, clients that have exceeded the limiters permitted rate of failed authentication attempts are sent a
+     * {@code 429} challenge without any of their tokens being verified, protecting the verifier from misconfigured
+     * clients and brute-force attempts.
+     * </p>
+     *
+     * @param failureRateLimiter Failure rate limiter, or {@code null} to disable rate limiting
+     */
+    public void setFailureRateLimiter(FailureRateLimiter failureRateLimiter) {
+        this.failureRateLimiter = failureRateLimiter;
+    }
+
+    /**
+     * Gets the limiter used to reject clients that repeatedly fail authentication
+     *
+     * @return Failure rate limiter, or {@code null} if rate limiting is disabled
+     */
+    public FailureRateLimiter getFailureRateLimiter() {
+        return this.failureRateLimiter;
+    }
+
+    /**
+     * Sets the cache of recently rejected tokens
+     * <p>
+     * When set, tokens that were recently rejected by the same verifier for a reason that can never change, e.g. a bad
+     * signature or expiry, are sent the same challenge again without being re-verified.
+     * </p>
+     *
+     * @param rejectedTokenCache Rejected token cache, or {@code null} to verify every token
+     */
+    public void setRejectedTokenCache(RejectedTokenCache rejectedTokenCache) {
+        this.rejectedTokenCache = rejectedTokenCache;
+    }
+
+    /**
+     * Gets the cache of recently rejected tokens
+     *
+     * @return Rejected token cache, or {@code null} if rejections are not cached
+     */
+    public RejectedTokenCache getRejectedTokenCache() {
+        return this.rejectedTokenCache;
+    }
+
     /**
      * Attempts to authenticate a request, returning either an authenticated request object upon success or {@code null}
      * on failure.
@@ -80,56 +201,108 @@ public abstract class JwtAuthenticationEngine<TRequest, TResponse> {
             // Extract all the possible raw tokens from the request
             List<TokenCandidate> rawTokens = extractTokens(request);
             if (rawTokens.isEmpty()) {
-                sendChallenge(request, response,
-                              new Challenge(400, OAuth2Constants.ERROR_INVALID_REQUEST, "No Bearer token(s) provided"));
+                sendChallenge(request, response, NO_BEARER_TOKENS_CHALLENGE);
                 return null;
             }
 
-            // Consider each candidate token and try and verify it
-            List<Challenge> challenges = new ArrayList<>();
-            List<VerifiedToken> validTokens = new ArrayList<>();
+            // If the client has recently failed authentication too often reject it without verifying anything
+            FailureRateLimiter limiter = this.failureRateLimiter;
+            String clientKey = null;
+            if (limiter != null) {
+                clientKey = selectClientKey(request, limiter, rawTokens);
+                if (limiter.isLimited(clientKey)) {
+                    sendChallenge(request, response, TOO_MANY_FAILURES_CHALLENGE);
+                    return null;
+                }
+            }
+
+            // Consider each candidate token and try and verify it, when evaluating lazily we stop at the first token
+            // that verifies and yields a username, otherwise we verify every token before considering usernames
+            boolean lazy = this.candidateEvaluation == CandidateEvaluation.LAZY;
+            RejectedTokenCache rejected = this.rejectedTokenCache;
+            List<Challenge> challenges = null;
+            List<Challenge> usernameChallenges = null;
+            List<VerifiedToken> validTokens = lazy ? List.of() : new ArrayList<>();
+            String username = null;
+            VerifiedToken jws = null;
             for (TokenCandidate candidateToken : rawTokens) {
                 // Verify the token and record a challenge if it fails verification
+                Challenge failure;
+                // Only failures that can never change for this token and verifier, at its current key generation, may
+                // be cached, in particular not yet valid tokens, and key failures where the key may yet be loaded or
+                // rotated in, are never cached
+                boolean permanent = false;
+                String rawToken = null;
+                // Observed before verifying so a key reload during verification invalidates any cached rejection
+                long keyGeneration = rejected != null ? RejectedTokenCache.keyGeneration(verifier) : 0L;
                 try {
-                    String rawToken = candidateToken.source().getRawToken(candidateToken.value());
+                    rawToken = candidateToken.source().getRawToken(candidateToken.value());
                     if (StringUtils.isBlank(rawToken)) {
-                        challenges.add(new Challenge(400, OAuth2Constants.ERROR_INVALID_REQUEST,
-                                                     "No Bearer token(s) provided"));
+                        challenges = addChallenge(challenges, NO_BEARER_TOKENS_CHALLENGE);
                         continue;
                     }
-                    Jws<Claims> jws = verifier.verify(rawToken);
-                    validTokens.add(new VerifiedToken(candidateToken, jws));
+                    if (rejected != null) {
+                        // A token recently rejected for a permanent reason gets the same challenge without re-verifying
+                        Challenge previous = rejected.get(verifier, rawToken);
+                        if (previous != null) {
+                            LOGGER.debug("Token for request to {} was recently rejected, not re-verifying",
+                                         getRequestUrl(request));
+                            challenges = addChallenge(challenges, previous);
+                            continue;
+                        }
+                    }
+                    VerifiedToken validToken =
+                            new VerifiedToken(candidateToken, verifyOrReuse(request, verifier, rawToken));
+                    if (!lazy) {
+                        validTokens.add(validToken);
+                        continue;
+                    }
+                    username = extractUsername(validToken.verifiedToken());
+                    if (StringUtils.isNotBlank(username)) {
+                        jws = validToken;
+                        break;
+                    }
+                    usernameChallenges = addChallenge(usernameChallenges, NO_USERNAME_CHALLENGE);
+                    continue;
+                } catch (VerificationUnavailableException pendingErr) {
+                    failure = new Challenge(503, OAuth2Constants.ERROR_TEMPORARILY_UNAVAILABLE,
+                                            pendingErr.getMessage());
                 } catch (KeyException keyErr) {
-                    challenges.add(new Challenge(401, OAuth2Constants.ERROR_INVALID_TOKEN,
-                                                 "Invalid/weak key: " + keyErr.getMessage()));
+                    failure = new Challenge(401, OAuth2Constants.ERROR_INVALID_TOKEN,
+                                            "Invalid/weak key: " + keyErr.getMessage());
                 } catch (SignatureException sigErr) {
-                    challenges.add(new Challenge(401, OAuth2Constants.ERROR_INVALID_TOKEN,
-                                                 "Token failed signature verification: " + sigErr.getMessage()));
+                    failure = new Challenge(401, OAuth2Constants.ERROR_INVALID_TOKEN,
+                                            "Token failed signature verification: " + sigErr.getMessage());
+                    permanent = true;
                 } catch (MalformedJwtException malformedErr) {
-                    challenges.add(new Challenge(401, OAuth2Constants.ERROR_INVALID_TOKEN,
-                                                 "Token is malformed: " + malformedErr.getMessage()));
+                    failure = new Challenge(401, OAuth2Constants.ERROR_INVALID_TOKEN,
+                                            "Token is malformed: " + malformedErr.getMessage());
+                    permanent = true;
                 } catch (UnsupportedJwtException unsupportedErr) {
-                    challenges.add(new Challenge(400, OAuth2Constants.ERROR_INVALID_REQUEST,
-                                                 "Token uses an unsupported JWT feature: " + unsupportedErr.getMessage()));
+                    failure = new Challenge(400, OAuth2Constants.ERROR_INVALID_REQUEST,
+                                            "Token uses an unsupported JWT feature: " + unsupportedErr.getMessage());
+                    permanent = true;
                 } catch (ExpiredJwtException expiredErr) {
-                    challenges.add(new Challenge(401, OAuth2Constants.ERROR_INVALID_TOKEN,
-                                                 "Token expired: " + expiredErr.getMessage()));
+                    failure = new Challenge(401, OAuth2Constants.ERROR_INVALID_TOKEN,
+                                            "Token expired: " + expiredErr.getMessage());
+                    permanent = true;
                 } catch (PrematureJwtException prematureErr) {
-                    challenges.add(new Challenge(401, OAuth2Constants.ERROR_INVALID_TOKEN,
-                                                 "Token is not yet valid, are server clocks out of sync?"));
+                    failure = new Challenge(401, OAuth2Constants.ERROR_INVALID_TOKEN,
+                                            "Token is not yet valid, are server clocks out of sync?");
                 } catch (JwtException jwtErr) {
-                    challenges.add(new Challenge(401, OAuth2Constants.ERROR_INVALID_TOKEN, jwtErr.getMessage()));
+                    failure = new Challenge(401, OAuth2Constants.ERROR_INVALID_TOKEN, jwtErr.getMessage());
+                }
+                if (permanent && rejected != null) {
+                    rejected.put(verifier, keyGeneration, rawToken, failure);
                 }
+                challenges = addChallenge(challenges, failure);
             }
 
-            // Consider all the valid tokens to try and extract a valid username
-            String username = null;
-            VerifiedToken jws = null;
+            // When evaluating eagerly consider all the valid tokens to try and extract a valid username
             for (VerifiedToken validToken : validTokens) {
                 username = extractUsername(validToken.verifiedToken());
                 if (StringUtils.isBlank(username)) {
-                    challenges.add(new Challenge(401, OAuth2Constants.ERROR_INVALID_TOKEN,
-                                                 "Failed to find a username for the user"));
+                    usernameChallenges = addChallenge(usernameChallenges, NO_USERNAME_CHALLENGE);
                 } else {
                     jws = validToken;
                     break;
@@ -138,10 +311,20 @@ public abstract class JwtAuthenticationEngine<TRequest, TResponse> {
 
             // If there was no valid token with a valid username present we need to send a challenge at this point
             if (jws == null) {
-                // Should be at least one challenge if we reach here so just send the first challenge from our list
+                // Verification failures take precedence over username failures regardless of evaluation mode, there
+                // should be at least one challenge if we reach here so just send the first challenge from our list
+                if (challenges == null) {
+                    challenges = usernameChallenges;
+                } else if (usernameChallenges != null) {
+                    challenges.addAll(usernameChallenges);
+                }
                 Challenge challenge = challenges.get(0);
                 LOGGER.warn("Request to {} not authenticated, {} challenge(s) recorded: {}", getRequestUrl(request),
                             challenges.size(), StringUtils.join(challenges, ", "));
+                if (clientKey != null && challenge.statusCode() != 503) {
+                    // Keys being unavailable is not the client's failure so isn't counted against it
+                    limiter.recordFailure(clientKey);
+                }
                 sendChallenge(request, response, challenge);
                 return null;
             }
@@ -152,9 +335,10 @@ public abstract class JwtAuthenticationEngine<TRequest, TResponse> {
             // the authenticated username in the log pattern
             MDC.put(JwtLoggingConstants.MDC_JWT_USER, username);
             setRequestAttribute(request, JwtServletConstants.REQUEST_ATTRIBUTE_SOURCE, jws.candidateToken().source());
-            setRequestAttribute(request, JwtServletConstants.REQUEST_ATTRIBUTE_RAW_JWT,
-                                jws.candidateToken().source().getRawToken(jws.candidateToken().value()));
+            setRequestAttribute(request, JwtServletConstants.REQUEST_ATTRIBUTE_RAW_JWT, rawToken(jws.candidateToken()));
             setRequestAttribute(request, JwtServletConstants.REQUEST_ATTRIBUTE_VERIFIED_JWT, jws.verifiedToken());
+            setRequestAttribute(request, JwtServletConstants.REQUEST_ATTRIBUTE_PRIOR_VERIFICATION,
+                                new PriorVerification(verifier, rawToken(jws.candidateToken()), jws.verifiedToken()));
             LOGGER.info("Request to {} successfully authenticated as {}", getRequestUrl(request), username);
             return prepareRequest(request, jws.verifiedToken(), username);
         } catch (Throwable e) {
@@ -164,6 +348,93 @@ public abstract class JwtAuthenticationEngine<TRequest, TResponse> {
         return null;
     }
 
+    /**
+     * Verifies a raw token using the given verifier
+     * <p>
+     * By default, this simply calls {@link JwtVerifier#verify(String)}, derived implementations may override this to
+     * change how verification is carried out, e.g. to avoid blocking the request thread while keys are loaded.
+     * Implementations may throw a {@link VerificationUnavailableException}, e.g. a {@link KeyLoadPendingException}, to
+     * indicate that the token could not be verified right now, which results in a {@code 503} challenge.
+     * </p>
+     *
+     * @param verifier JWT Verifier
+     * @param rawToken Raw token
+     * @return Verified JSON Web Token
+     */
+    protected Jws<Claims> verify(JwtVerifier verifier, String rawToken) {
+        return verifier.verify(rawToken);
+    }
+
+    /**
+     * Verifies a raw token, reusing the result of a prior verification of the same token with the same verifier for
+     * this request if one exists
+     *
+     * @param request  Request
+     * @param verifier JWT Verifier
+     * @param rawToken Raw token
+     * @return Verified JSON Web Token
+     */
+    private Jws<Claims> verifyOrReuse(TRequest request, JwtVerifier verifier, String rawToken) {
+        Object prior = getRequestAttribute(request, JwtServletConstants.REQUEST_ATTRIBUTE_PRIOR_VERIFICATION);
+        if (prior instanceof PriorVerification priorVerification) {
+            Jws<Claims> jws = priorVerification.reuse(verifier, rawToken, System.currentTimeMillis());
+            if (jws != null) {
+                LOGGER.debug("Reusing prior verification of token for request to {}", getRequestUrl(request));
+                return jws;
+            }
+        }
+        return verify(verifier, rawToken);
+    }
+
+    private static String rawToken(TokenCandidate candidate) {
+        return candidate.source().getRawToken(candidate.value());
+    }
+
+    private static List<Challenge> addChallenge(List<Challenge> challenges, Challenge challenge) {
+        if (challenges == null) {
+            challenges = new ArrayList<>();
+        }
+        challenges.add(challenge);
+        return challenges;
+    }
+
+    /**
+     * Selects the key that identifies the client for failure rate limiting purposes
+     *
+     * @param request    Request
+     * @param limiter    Failure rate limiter
+     * @param candidates Candidate tokens
+     * @return Client key
+     */
+    private String selectClientKey(TRequest request, FailureRateLimiter limiter, List<TokenCandidate> candidates) {
+        if (limiter.getClientKey() == FailureRateLimiter.ClientKey.ADDRESS) {
+            String address = getClientAddress(request);
+            if (StringUtils.isNotBlank(address)) {
+                return address;
+            }
+        }
+        StringBuilder builder = new StringBuilder();
+        for (TokenCandidate candidate : candidates) {
+            builder.append(candidate.value()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Gets the address of the client that made the request
+     * <p>
+     * By default, this returns {@code null}, derived implementations should override this if their runtime makes the
+     * client address available.  When no address is available clients are identified by their tokens for failure rate
+     * limiting purposes.
+     * </p>
+     *
+     * @param request Request
+     * @return Client address, or {@code null} if not available
+     */
+    protected String getClientAddress(TRequest request) {
+        return null;
+    }
+
     /**
      * Checks whether the request has the necessary authentication parameters present.
      * <p>
@@ -205,6 +476,22 @@ public abstract class JwtAuthenticationEngine<TRequest, TResponse> {
      */
     protected abstract void setRequestAttribute(TRequest request, String attribute, Object value);
 
+    /**
+     * Gets a request attribute
+     * <p>
+     * Used to find the record of a prior verification of the request by another filter so that it can be reused, by
+     * default this returns {@code null} meaning tokens are always verified, derived implementations should override
+     * this.
+     * </p>
+     *
+     * @param request   Request
+     * @param attribute Attribute
+     * @return Attribute value, or {@code null} if no such attribute
+     */
+    protected Object getRequestAttribute(TRequest request, String attribute) {
+        return null;
+    }
+
     /**
      * Prepares the authenticated request
      *
@@ -264,6 +551,63 @@ public abstract class JwtAuthenticationEngine<TRequest, TResponse> {
         return JwtHttpConstants.sanitiseHeader(builder.toString());
     }
 
+    /**
+     * Builds the value of the {@code WWW-Authenticate} header for a challenge
+     * <p>
+     * This produces the same value as calling {@link #buildAuthorizationHeader(String, Map)} with the parameters from
+     * {@link #buildChallengeParameters(String, String)} but renders the header directly, sanitising each parameter
+     * value as it is appended.  Since the sanitised parameter values can never contain characters that are invalid in
+     * a header no further sanitisation of the header as a whole is needed.
+     * </p>
+     *
+     * @param realm     Realm
+     * @param challenge Challenge
+     * @return Challenge header
+     */
+    protected String buildChallengeHeader(String realm, Challenge challenge) {
+        return buildChallengeHeaderPrefix(realm) + buildChallengeHeaderParameters(challenge);
+    }
+
+    /**
+     * Builds the scheme and realm portion of a {@code WWW-Authenticate} challenge header
+     *
+     * @param realm Realm, sanitised before use
+     * @return Challenge header prefix
+     */
+    protected static String buildChallengeHeaderPrefix(String realm) {
+        String sanitisedRealm = JwtHttpConstants.sanitiseHeaderParameterValue(realm);
+        if (StringUtils.isBlank(sanitisedRealm)) {
+            return JwtHttpConstants.AUTH_SCHEME_BEARER + " ";
+        }
+        return JwtHttpConstants.AUTH_SCHEME_BEARER + " " + JwtHttpConstants.CHALLENGE_PARAMETER_REALM + "=\""
+               + sanitisedRealm + "\"";
+    }
+
+    /**
+     * Builds the error parameters portion of a {@code WWW-Authenticate} challenge header, omitting any parameters that
+     * are blank
+     *
+     * @param challenge Challenge
+     * @return Challenge header parameters, possibly empty
+     */
+    protected static String buildChallengeHeaderParameters(Challenge challenge) {
+        StringBuilder builder = new StringBuilder();
+        appendChallengeParameter(builder, OAuth2Constants.CHALLENGE_PARAMETER_ERROR, challenge.errorCode());
+        appendChallengeParameter(builder, OAuth2Constants.CHALLENGE_PARAMETER_ERROR_DESCRIPTION,
+                                 challenge.errorDescription());
+        return builder.toString();
+    }
+
+    private static void appendChallengeParameter(StringBuilder builder, String name, String value) {
+        if (StringUtils.isNotBlank(value)) {
+            builder.append(", ")
+                   .append(name)
+                   .append("=\"")
+                   .append(JwtHttpConstants.sanitiseHeaderParameterValue(value))
+                   .append("\"");
+        }
+    }
+
     /**
      * Builds HTTP Challenge parameters
      *
@@ -272,7 +616,7 @@ public abstract class JwtAuthenticationEngine<TRequest, TResponse> {
      * @return Challenge parameters to be included in the generated challenge header
      */
     protected Map<String, String> buildChallengeParameters(String errorCode, String errorDescription) {
-        Map<String, String> additionalParams = new HashMap<>();
+        Map<String, String> additionalParams = new LinkedHashMap<>();
         if (StringUtils.isNotBlank(errorCode)) {
             additionalParams.put(OAuth2Constants.CHALLENGE_PARAMETER_ERROR, errorCode);
         }
@@ -35,6 +35,16 @@ public class JwtServletConstants {
      * Context attribute used to hold Path Exclusions
      */
     public static final String ATTRIBUTE_PATH_EXCLUSIONS = "io.telicent.servlet.auth.jwt.path-exclusions";
+    /**
+     * Context attribute used to hold the {@link io.telicent.servlet.auth.jwt.verification.JwtWarmUp} for the JWT
+     * Verifier, only present if warm-up is enabled, health checks may consult this to determine readiness
+     */
+    public static final String ATTRIBUTE_JWT_WARM_UP = "io.telicent.servlet.auth.jwt.warm-up";
+    /**
+     * Context attribute used to hold the {@link io.telicent.servlet.auth.jwt.authorization.AuthorizationPolicy} applied
+     * to authenticated requests
+     */
+    public static final String ATTRIBUTE_AUTHORIZATION_POLICY = "io.telicent.servlet.auth.jwt.authorization-policy";
 
     /**
      * Request attribute used to hold the {@link io.telicent.servlet.auth.jwt.sources.TokenSource} from which the token
@@ -51,4 +61,10 @@ public class JwtServletConstants {
      * Request attribute used to hold the verified JWT that authenticated the user
      */
     public static final String REQUEST_ATTRIBUTE_VERIFIED_JWT = "io.telicent.servlet.auth.jwt.verified";
+
+    /**
+     * Request attribute used to hold a tamper-proof record of the verification that authenticated the user, allowing
+     * later authentication of the same request by stacked filters to skip verifying the token again
+     */
+    public static final String REQUEST_ATTRIBUTE_PRIOR_VERIFICATION = "io.telicent.servlet.auth.jwt.prior-verification";
 }
@@ -31,6 +31,16 @@ public class OAuth2Constants {
      * Error code for invalid requests
      */
     public static final String ERROR_INVALID_REQUEST = "invalid_request";
+    /**
+     * Error code for when the server is temporarily unable to handle the request, borrowed from <a
+     * href="https://datatracker.ietf.org/doc/html/rfc6749#section-4.1.2.1">RFC 6749</a>
+     */
+    public static final String ERROR_TEMPORARILY_UNAVAILABLE = "temporarily_unavailable";
+    /**
+     * Error code for when the token is valid but lacks the privileges required to access the resource, per <a
+     * href="https://datatracker.ietf.org/doc/html/rfc6750#section-3.1">RFC 6750</a>
+     */
+    public static final String ERROR_INSUFFICIENT_SCOPE = "insufficient_scope";
 
     /**
      * Challenge parameter used in HTTP Bearer Auth challenges to indicate a particular error state per <a
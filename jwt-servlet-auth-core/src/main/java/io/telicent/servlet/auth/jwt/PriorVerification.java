@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * Records a successful verification of a token by a verifier so that later authentication of the same request, e.g.
+ * by stacked filters, can reuse the result rather than verifying the token again
+ * <p>
+ * Instances can only be created by {@link JwtAuthenticationEngine} so applications cannot spoof a prior verification
+ * by placing their own record into the request attributes.  A record is only reused when presented with the exact
+ * same verifier instance and raw token, and the token has not since expired, so copying a genuine record elsewhere
+ * gains nothing that verifying the token again would not.
+ * </p>
+ */
+final class PriorVerification {
+    private final JwtVerifier verifier;
+    private final String rawToken;
+    private final Jws<Claims> verifiedToken;
+
+    PriorVerification(JwtVerifier verifier, String rawToken, Jws<Claims> verifiedToken) {
+        this.verifier = Objects.requireNonNull(verifier);
+        this.rawToken = Objects.requireNonNull(rawToken);
+        this.verifiedToken = Objects.requireNonNull(verifiedToken);
+    }
+
+    /**
+     * Gets the verified token if this record applies to the given verifier and raw token
+     *
+     * @param verifier Verifier
+     * @param rawToken Raw token
+     * @param now      Current time in milliseconds since the epoch
+     * @return Verified token, or {@code null} if this record does not apply
+     */
+    Jws<Claims> reuse(JwtVerifier verifier, String rawToken, long now) {
+        if (this.verifier != verifier || !this.rawToken.equals(rawToken)) {
+            return null;
+        }
+        Date expiry = this.verifiedToken.getPayload().getExpiration();
+        if (expiry != null && expiry.getTime() <= now) {
+            return null;
+        }
+        return this.verifiedToken;
+    }
+
+    @Override
+    public String toString() {
+        return "PriorVerification{verifier=" + this.verifier + "}";
+    }
+}
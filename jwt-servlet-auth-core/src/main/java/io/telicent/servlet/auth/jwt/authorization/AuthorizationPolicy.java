@@ -0,0 +1,291 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.authorization;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Strings;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of {@link AuthorizationRule}'s compiled into a prefix trie of path segments so that the requirements for a
+ * request can be found with a single walk of the request path
+ * <p>
+ * When multiple rules match a request the most specific path wins, i.e. an exact path rule wins over a prefix rule and
+ * a longer prefix wins over a shorter one, and for the same path a rule for the request's method wins over a rule for
+ * any method.  A prefix rule, e.g. {@code /admin/*}, applies both to the paths beneath it and to the path itself, e.g.
+ * {@code /admin}.  Requests that match no rule are permitted, to deny by default include a catch-all rule for the path
+ * {@code /*}.
+ * </p>
+ * <p>
+ * Repeated {@code /} characters within request paths are treated as a single {@code /} so that they can't be used to
+ * evade a rule.  Paths are otherwise matched as given, callers that can't obtain a decoded and normalised path from
+ * their runtime <strong>MUST</strong> first pass it through {@link #normalisePath(String)}, otherwise path
+ * parameters, percent-encoding and dot segments could be used to evade a rule.
+ * </p>
+ */
+public final class AuthorizationPolicy {
+
+    /**
+     * A policy with no rules, that permits all requests
+     */
+    public static final AuthorizationPolicy NONE = new AuthorizationPolicy(new Node(), 0);
+
+    private final Node root;
+    private final int size;
+
+    private AuthorizationPolicy(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Compiles rules into a policy
+     *
+     * @param rules Rules
+     * @return Compiled policy
+     * @throws IllegalArgumentException Thrown if multiple rules apply to the same method and path pattern
+     */
+    public static AuthorizationPolicy compile(List<AuthorizationRule> rules) {
+        if (rules == null || rules.isEmpty()) {
+            return NONE;
+        }
+        Node root = new Node();
+        for (AuthorizationRule rule : rules) {
+            Node node = root;
+            String path = rule.isPrefix() ? Strings.CS.removeEnd(rule.pathPattern(), "*") : rule.pathPattern();
+            for (String segment : StringUtils.split(path, '/')) {
+                node = node.children.computeIfAbsent(segment, s -> new Node());
+            }
+            if (rule.isPrefix()) {
+                node.prefix = MethodRequirements.add(node.prefix, rule);
+            } else {
+                node.exact = MethodRequirements.add(node.exact, rule);
+            }
+        }
+        root.freeze();
+        return new AuthorizationPolicy(root, rules.size());
+    }
+
+    /**
+     * Parses and compiles rules from their compact textual form, see {@link AuthorizationRule#parse(String)}
+     *
+     * @param rawRules Raw rules
+     * @return Compiled policy
+     */
+    public static AuthorizationPolicy parse(String rawRules) {
+        return compile(AuthorizationRule.parse(rawRules));
+    }
+
+    /**
+     * Gets whether the policy has no rules
+     *
+     * @return True if empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Finds the requirements that apply to a request
+     *
+     * @param method HTTP method, if {@code null} only rules for any method are considered
+     * @param path   Request path
+     * @return Requirements, or {@code null} if no rule applies to the request
+     */
+    public AuthorizationRequirement find(String method, String path) {
+        if (this.size == 0 || path == null) {
+            return null;
+        }
+        Node node = this.root;
+        AuthorizationRequirement prefixMatch = MethodRequirements.select(node.prefix, method);
+        int length = path.length();
+        int i = 0;
+        while (true) {
+            while (i < length && path.charAt(i) == '/') {
+                i++;
+            }
+            if (i >= length) {
+                break;
+            }
+            int end = path.indexOf('/', i);
+            if (end < 0) {
+                end = length;
+            }
+            node = node.children.get(path.substring(i, end));
+            if (node == null) {
+                return prefixMatch;
+            }
+            i = end;
+            if (node.prefix != null) {
+                // Prefix rules also apply to the path they are a prefix of, e.g. /admin/* applies to /admin, since
+                // runtimes typically serve that path from the same servlet or resource as the paths beneath it
+                AuthorizationRequirement requirement = MethodRequirements.select(node.prefix, method);
+                if (requirement != null) {
+                    prefixMatch = requirement;
+                }
+            }
+        }
+        AuthorizationRequirement exactMatch = MethodRequirements.select(node.exact, method);
+        return exactMatch != null ? exactMatch : prefixMatch;
+    }
+
+    /**
+     * Normalises a raw request path so that it is suitable for passing to {@link #find(String, String)}
+     * <p>
+     * Path parameters, i.e. anything following a {@code ;} within a segment, are removed, percent-encoded characters
+     * are decoded, {@code .} and {@code ..} segments are resolved (never going above the root) and repeated {@code /}
+     * characters are collapsed.  Malformed percent-encoding is left as-is.
+     * </p>
+     * <p>
+     * Encoded path separators, i.e. {@code %2F} and {@code %5C}, are left encoded since runtimes either reject them or
+     * treat them as part of the segment they appear in, so e.g. {@code /public/..%2Fadmin} normalises to itself rather
+     * than to a path that a later decoding could resolve to {@code /admin}.
+     * </p>
+     *
+     * @param path Raw request path
+     * @return Normalised path, always beginning with a {@code /}, or {@code null} if the path was {@code null}
+     */
+    public static String normalisePath(String path) {
+        if (path == null) {
+            return null;
+        }
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : StringUtils.split(path, '/')) {
+            int params = segment.indexOf(';');
+            if (params >= 0) {
+                segment = segment.substring(0, params);
+            }
+            segment = percentDecode(segment);
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            if (segment.equals("..")) {
+                segments.pollLast();
+                continue;
+            }
+            segments.addLast(segment);
+        }
+        StringBuilder builder = new StringBuilder(path.length());
+        for (String segment : segments) {
+            builder.append('/').append(segment);
+        }
+        if (builder.isEmpty() || (path.endsWith("/") && !segments.isEmpty())) {
+            builder.append('/');
+        }
+        return builder.toString();
+    }
+
+    private static String percentDecode(String segment) {
+        if (segment.indexOf('%') < 0) {
+            return segment;
+        }
+        StringBuilder builder = new StringBuilder(segment.length());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int length = segment.length();
+        for (int i = 0; i < length; i++) {
+            char c = segment.charAt(i);
+            if (c == '%' && i + 2 < length) {
+                int high = Character.digit(segment.charAt(i + 1), 16);
+                int low = Character.digit(segment.charAt(i + 2), 16);
+                int decoded = (high << 4) | low;
+                if (high >= 0 && low >= 0 && decoded != '/' && decoded != '\\') {
+                    // Accumulate consecutive encoded bytes so multibyte UTF-8 sequences decode correctly
+                    bytes.write(decoded);
+                    i += 2;
+                    continue;
+                }
+            }
+            if (bytes.size() > 0) {
+                builder.append(bytes.toString(StandardCharsets.UTF_8));
+                bytes.reset();
+            }
+            builder.append(c);
+        }
+        if (bytes.size() > 0) {
+            builder.append(bytes.toString(StandardCharsets.UTF_8));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "AuthorizationPolicy{rules=" + this.size + "}";
+    }
+
+    /**
+     * A node in the path segment trie
+     */
+    private static final class Node {
+        private Map<String, Node> children = new HashMap<>();
+        private MethodRequirements exact, prefix;
+
+        private void freeze() {
+            this.children.values().forEach(Node::freeze);
+            this.children = Map.copyOf(this.children);
+        }
+    }
+
+    /**
+     * The requirements for a single path pattern, keyed by HTTP method
+     */
+    private static final class MethodRequirements {
+        private final Map<String, AuthorizationRequirement> byMethod = new HashMap<>();
+        private AuthorizationRequirement anyMethod;
+
+        private static MethodRequirements add(MethodRequirements existing, AuthorizationRule rule) {
+            MethodRequirements requirements = existing != null ? existing : new MethodRequirements();
+            AuthorizationRequirement requirement = new AuthorizationRequirement(rule);
+            if (rule.methods().isEmpty()) {
+                if (requirements.anyMethod != null) {
+                    throw duplicate(rule, AuthorizationRule.ANY_METHOD);
+                }
+                requirements.anyMethod = requirement;
+            } else {
+                for (String method : rule.methods()) {
+                    if (requirements.byMethod.putIfAbsent(method, requirement) != null) {
+                        throw duplicate(rule, method);
+                    }
+                }
+            }
+            return requirements;
+        }
+
+        private static IllegalArgumentException duplicate(AuthorizationRule rule, String method) {
+            return new IllegalArgumentException(
+                    "Multiple authorization rules for " + method + " " + rule.pathPattern());
+        }
+
+        private static AuthorizationRequirement select(MethodRequirements requirements, String method) {
+            if (requirements == null) {
+                return null;
+            }
+            if (method != null && !requirements.byMethod.isEmpty()) {
+                AuthorizationRequirement requirement = requirements.byMethod.get(method);
+                if (requirement != null) {
+                    return requirement;
+                }
+            }
+            return requirements.anyMethod;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.authorization;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.telicent.servlet.auth.jwt.configuration.ClaimPath;
+import io.telicent.servlet.auth.jwt.configuration.Utils;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * The compiled requirements of an {@link AuthorizationRule}
+ */
+public final class AuthorizationRequirement {
+
+    private final AuthorizationRule rule;
+    private final String[] roles;
+    private final ClaimPath[] claims;
+    private final String[] claimValues;
+
+    AuthorizationRequirement(AuthorizationRule rule) {
+        this.rule = rule;
+        this.roles = rule.roles().toArray(new String[0]);
+        this.claims = new ClaimPath[rule.claims().size()];
+        this.claimValues = new String[rule.claims().size()];
+        int i = 0;
+        for (Map.Entry<ClaimPath, String> claim : rule.claims().entrySet()) {
+            this.claims[i] = claim.getKey();
+            this.claimValues[i] = claim.getValue();
+            i++;
+        }
+    }
+
+    /**
+     * Gets the rule these requirements were compiled from
+     *
+     * @return Rule
+     */
+    public AuthorizationRule getRule() {
+        return this.rule;
+    }
+
+    /**
+     * Gets whether the requirements are satisfied
+     *
+     * @param hasRole Predicate that determines whether the user holds a role
+     * @param jws     Verified JWT for the user, may be {@code null} in which case any claim requirements are not
+     *                satisfied
+     * @return True if satisfied, false otherwise
+     */
+    public boolean isSatisfied(Predicate<String> hasRole, Jws<Claims> jws) {
+        if (this.roles.length > 0) {
+            boolean anyRole = false;
+            for (String role : this.roles) {
+                if (hasRole.test(role)) {
+                    anyRole = true;
+                    break;
+                }
+            }
+            if (!anyRole) {
+                return false;
+            }
+        }
+        return this.claimsSatisfied(jws);
+    }
+
+    /**
+     * Gets whether the requirements are satisfied
+     * <p>
+     * Preferred over {@link #isSatisfied(Predicate, Jws)} when the user's roles are already available as a set since
+     * each required role then costs a single set lookup.
+     * </p>
+     *
+     * @param userRoles Roles the user holds, may be {@code null} in which case any role requirements are not satisfied
+     * @param jws       Verified JWT for the user, may be {@code null} in which case any claim requirements are not
+     *                  satisfied
+     * @return True if satisfied, false otherwise
+     */
+    public boolean isSatisfied(Set<String> userRoles, Jws<Claims> jws) {
+        if (this.roles.length > 0) {
+            if (userRoles == null || userRoles.isEmpty()) {
+                return false;
+            }
+            boolean anyRole = false;
+            for (String role : this.roles) {
+                if (userRoles.contains(role)) {
+                    anyRole = true;
+                    break;
+                }
+            }
+            if (!anyRole) {
+                return false;
+            }
+        }
+        return this.claimsSatisfied(jws);
+    }
+
+    private boolean claimsSatisfied(Jws<Claims> jws) {
+        for (int i = 0; i < this.claims.length; i++) {
+            if (jws == null || !matchesClaim(Utils.findClaim(jws, this.claims[i]), this.claimValues[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesClaim(Object value, String expected) {
+        if (value instanceof Collection<?> values) {
+            for (Object item : values) {
+                if (item != null && Objects.equals(item.toString(), expected)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return value != null && Objects.equals(value.toString(), expected);
+    }
+
+    @Override
+    public String toString() {
+        return "AuthorizationRequirement{rule=" + this.rule + "}";
+    }
+}
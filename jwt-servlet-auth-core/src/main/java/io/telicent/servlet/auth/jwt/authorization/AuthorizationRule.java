@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.authorization;
+
+import io.telicent.servlet.auth.jwt.configuration.ClaimPath;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Strings;
+
+import java.util.*;
+
+/**
+ * A declarative authorization rule that specifies the roles and/or claims an authenticated user must have to access
+ * requests with a given HTTP method and path
+ * <p>
+ * Path patterns are either an exact path e.g. {@code /api/status}, or a prefix ending in {@code /*} e.g.
+ * {@code /api/*} which matches {@code /api} itself and any path beneath it.  Users must hold at least
+ * one of the required roles, if any, and must have all the required claims, if any.  A rule with no requirements only
+ * requires that the user is authenticated.
+ * </p>
+ * <p>
+ * Rules may be parsed from a compact textual form, see {@link #parse(String)}.
+ * </p>
+ *
+ * @param methods     HTTP methods the rule applies to, an empty set means all methods
+ * @param pathPattern Path pattern
+ * @param roles       Roles, the user must hold at least one of these roles
+ * @param claims      Claims, the user's token must have every one of these claims with the given value
+ */
+public record AuthorizationRule(Set<String> methods, String pathPattern, Set<String> roles,
+                                Map<ClaimPath, String> claims) {
+
+    /**
+     * Wildcard that may be used in place of a list of HTTP methods
+     */
+    public static final String ANY_METHOD = "*";
+
+    /**
+     * Creates a new rule
+     */
+    public AuthorizationRule {
+        if (StringUtils.isBlank(pathPattern) || !pathPattern.startsWith("/")) {
+            throw new IllegalArgumentException("Authorization rule path pattern must start with /");
+        }
+        int wildcard = pathPattern.indexOf('*');
+        if (wildcard >= 0 && (wildcard != pathPattern.length() - 1 || !pathPattern.endsWith("/*"))) {
+            throw new IllegalArgumentException(
+                    "Authorization rule path pattern " + pathPattern + " may only use * as its final path segment");
+        }
+        methods = methods != null ? normaliseMethods(methods) : Set.of();
+        roles = roles != null ? Set.copyOf(roles) : Set.of();
+        claims = claims != null ? Map.copyOf(claims) : Map.of();
+    }
+
+    private static Set<String> normaliseMethods(Set<String> methods) {
+        Set<String> normalised = new HashSet<>();
+        for (String method : methods) {
+            if (StringUtils.isBlank(method)) {
+                continue;
+            }
+            if (Strings.CS.equals(method.strip(), ANY_METHOD)) {
+                return Set.of();
+            }
+            normalised.add(method.strip().toUpperCase(Locale.ROOT));
+        }
+        return Set.copyOf(normalised);
+    }
+
+    /**
+     * Gets whether the rule applies to paths beneath its path pattern
+     *
+     * @return True if a prefix rule, false if an exact path rule
+     */
+    public boolean isPrefix() {
+        return this.pathPattern.endsWith("/*");
+    }
+
+    /**
+     * Parses rules from their compact textual form
+     * <p>
+     * Rules are separated by {@code ;} and each rule consists of whitespace separated methods, path pattern and
+     * optional requirements.  Methods are either {@code *} or a {@code |} separated list e.g. {@code GET|HEAD}.
+     * Requirements are a comma separated list where entries of the form {@code claim.path=value} are claim
+     * requirements and any other entries are roles, e.g.
+     * </p>
+     * <pre>
+     * GET|HEAD /api/* reader,writer; POST|PUT|DELETE /api/* writer; * /admin/* admin,tenant=acme; GET /status
+     * </pre>
+     *
+     * @param rawRules Raw rules
+     * @return Rules
+     * @throws IllegalArgumentException Thrown if any rule is invalid
+     */
+    public static List<AuthorizationRule> parse(String rawRules) {
+        if (StringUtils.isBlank(rawRules)) {
+            return List.of();
+        }
+        List<AuthorizationRule> rules = new ArrayList<>();
+        for (String rawRule : StringUtils.split(rawRules, ';')) {
+            if (StringUtils.isBlank(rawRule)) {
+                continue;
+            }
+            String[] parts = StringUtils.split(rawRule.strip());
+            if (parts.length < 2 || parts.length > 3) {
+                throw new IllegalArgumentException(
+                        "Authorization rule '" + rawRule.strip() + "' must have the form <methods> <path> [requirements]");
+            }
+            Set<String> methods = Set.of(StringUtils.split(parts[0], '|'));
+            Set<String> roles = new HashSet<>();
+            Map<ClaimPath, String> claims = new HashMap<>();
+            if (parts.length == 3) {
+                for (String requirement : StringUtils.split(parts[2], ',')) {
+                    int eq = requirement.indexOf('=');
+                    if (eq < 0) {
+                        roles.add(requirement.strip());
+                    } else if (eq == 0) {
+                        throw new IllegalArgumentException(
+                                "Authorization rule '" + rawRule.strip() + "' has a claim requirement with no claim");
+                    } else {
+                        claims.put(ClaimPath.of(StringUtils.split(requirement.substring(0, eq).strip(), '.')),
+                                   requirement.substring(eq + 1).strip());
+                    }
+                }
+            }
+            rules.add(new AuthorizationRule(methods, parts[1], roles, claims));
+        }
+        return rules;
+    }
+}
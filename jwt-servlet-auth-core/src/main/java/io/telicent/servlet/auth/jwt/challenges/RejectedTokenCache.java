@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.challenges;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.telicent.servlet.auth.jwt.Hashing;
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.KeyLoadingJwtVerifier;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * A bounded, short-lived cache of recently rejected tokens and the challenge their rejection produced
+ * <p>
+ * A client that keeps presenting the same invalid token, e.g. a misconfigured service with a stale or forged token,
+ * otherwise costs a full verification for every request.  Consulting this cache before verification lets such tokens
+ * be rejected for the cost of a digest and a lookup.  Tokens are keyed by a truncated SHA-256 digest so raw tokens are
+ * never retained, and a cached rejection only applies to the verifier instance that produced it.
+ * </p>
+ * <p>
+ * Callers must only cache rejections that can never change for the same token and verifier, e.g. signature failures,
+ * malformed or unsupported tokens, and expired tokens, as {@code JwtAuthenticationEngine} does.  In particular tokens
+ * that are not yet valid, tokens signed with keys that are not (yet) known, and tokens rejected because keys are still
+ * loading must never be cached, so that clock skew and key rotation behave exactly as if there were no cache.
+ * </p>
+ * <p>
+ * Where a verifier's keys can be replaced at runtime, e.g. by a watched key file being reloaded, a token that failed
+ * signature verification against the old keys may verify against the new ones.  Each rejection therefore records the
+ * verifier's key generation, see {@link KeyLoadingJwtVerifier#getKeyGeneration()}, as observed before the token was
+ * verified and only applies while the verifier remains at that generation.
+ * </p>
+ */
+public class RejectedTokenCache {
+
+    /**
+     * The default time a rejection is cached for
+     */
+    public static final Duration DEFAULT_TTL = Duration.ofSeconds(30);
+
+    /**
+     * The default maximum number of rejections cached
+     */
+    public static final long DEFAULT_MAX_ENTRIES = 10_000;
+
+    private final Cache<Digest, Rejection> cache;
+    private final long maxEntries;
+    private final Duration ttl;
+
+    /**
+     * Creates a new cache
+     *
+     * @param maxEntries Maximum number of rejections cached
+     * @param ttl        Time a rejection is cached for
+     */
+    public RejectedTokenCache(long maxEntries, Duration ttl) {
+        this(maxEntries, ttl, Ticker.systemTicker());
+    }
+
+    /**
+     * Creates a new cache
+     *
+     * @param maxEntries Maximum number of rejections cached
+     * @param ttl        Time a rejection is cached for
+     * @param ticker     Ticker supplying the current time
+     */
+    RejectedTokenCache(long maxEntries, Duration ttl, Ticker ticker) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        this.ttl = Objects.requireNonNull(ttl, "TTL cannot be null");
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("TTL must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.cache = Caffeine.newBuilder()
+                             .maximumSize(maxEntries)
+                             .expireAfterWrite(ttl)
+                             .ticker(Objects.requireNonNull(ticker, "Ticker cannot be null"))
+                             .build();
+    }
+
+    /**
+     * Gets the cached challenge for a token previously rejected by the given verifier
+     *
+     * @param verifier Verifier
+     * @param rawToken Raw token
+     * @return Cached challenge, or {@code null} if the token has not recently been rejected by this verifier with its
+     * current keys
+     */
+    public Challenge get(JwtVerifier verifier, String rawToken) {
+        Rejection rejection = this.cache.getIfPresent(Digest.of(rawToken));
+        return rejection != null && rejection.verifier() == verifier
+               && rejection.keyGeneration() == keyGeneration(verifier) ? rejection.challenge() : null;
+    }
+
+    /**
+     * Records the rejection of a token by the given verifier
+     *
+     * @param verifier      Verifier
+     * @param keyGeneration Key generation of the verifier, see {@link #keyGeneration(JwtVerifier)}, as observed
+     *                      <strong>before</strong> the token was verified
+     * @param rawToken      Raw token
+     * @param challenge     Challenge produced by the rejection
+     */
+    public void put(JwtVerifier verifier, long keyGeneration, String rawToken, Challenge challenge) {
+        this.cache.put(Digest.of(rawToken),
+                       new Rejection(verifier, keyGeneration, Objects.requireNonNull(challenge)));
+    }
+
+    /**
+     * Gets the current key generation of a verifier
+     *
+     * @param verifier Verifier
+     * @return Key generation, always {@code 0} for verifiers whose keys cannot be reloaded
+     */
+    public static long keyGeneration(JwtVerifier verifier) {
+        return verifier instanceof KeyLoadingJwtVerifier keyLoading ? keyLoading.getKeyGeneration() : 0L;
+    }
+
+    /**
+     * Gets the number of rejections currently cached
+     *
+     * @return Cached rejections
+     */
+    public long size() {
+        this.cache.cleanUp();
+        return this.cache.estimatedSize();
+    }
+
+    /**
+     * Gets the maximum number of rejections cached
+     *
+     * @return Maximum entries
+     */
+    public long getMaxEntries() {
+        return this.maxEntries;
+    }
+
+    /**
+     * Gets the time a rejection is cached for
+     *
+     * @return TTL
+     */
+    public Duration getTtl() {
+        return this.ttl;
+    }
+
+    @Override
+    public String toString() {
+        return "RejectedTokenCache{maxEntries=" + this.maxEntries + ", ttl=" + this.ttl + "}";
+    }
+
+    /**
+     * A cached rejection
+     *
+     * @param verifier      Verifier that rejected the token
+     * @param keyGeneration Key generation of the verifier when it rejected the token
+     * @param challenge     Challenge produced by the rejection
+     */
+    private record Rejection(JwtVerifier verifier, long keyGeneration, Challenge challenge) {
+    }
+
+    /**
+     * The first 128 bits of the SHA-256 digest of a token
+     *
+     * @param high High bits
+     * @param low  Low bits
+     */
+    record Digest(long high, long low) {
+
+        /**
+         * Computes the digest of a token
+         *
+         * @param rawToken Raw token
+         * @return Digest
+         */
+        static Digest of(String rawToken) {
+            ByteBuffer digest = ByteBuffer.wrap(Hashing.sha256(rawToken));
+            return new Digest(digest.getLong(), digest.getLong());
+        }
+    }
+}
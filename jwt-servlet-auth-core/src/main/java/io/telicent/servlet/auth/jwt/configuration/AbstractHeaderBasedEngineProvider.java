@@ -17,13 +17,17 @@ package io.telicent.servlet.auth.jwt.configuration;
 
 import io.telicent.servlet.auth.jwt.JwtHttpConstants;
 import io.telicent.servlet.auth.jwt.JwtAuthenticationEngine;
+import io.telicent.servlet.auth.jwt.challenges.RejectedTokenCache;
+import io.telicent.servlet.auth.jwt.ratelimit.FailureRateLimiter;
 import io.telicent.servlet.auth.jwt.sources.HeaderSource;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Strings;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -98,6 +102,63 @@ public abstract class AbstractHeaderBasedEngineProvider implements EngineProvide
                                     AbstractHeaderBasedEngineProvider::parseClaimPath, null);
     }
 
+    /**
+     * Tries to configure the failure rate limiter
+     * <p>
+     * Clients are identified by {@link FailureRateLimiter.ClientKey#TOKEN} unless configured otherwise, since
+     * {@link FailureRateLimiter.ClientKey#ADDRESS} limits all clients behind a proxy together.  Note that this means
+     * by default a client that presents a different token on every attempt is never limited.
+     * </p>
+     *
+     * @param paramSupplier Parameter supplier
+     * @return Failure rate limiter, or {@code null} if no configuration provided
+     */
+    protected FailureRateLimiter configureFailureRateLimiter(Function<String, String> paramSupplier) {
+        int limit = Utils.parseParameter(paramSupplier.apply(ConfigurationParameters.PARAM_FAILURE_LIMIT),
+                                         Integer::parseInt, 0);
+        if (limit < 1) {
+            return null;
+        }
+        int window = Utils.parseParameter(paramSupplier.apply(ConfigurationParameters.PARAM_FAILURE_WINDOW),
+                                          Integer::parseInt, ConfigurationParameters.DEFAULT_FAILURE_WINDOW);
+        FailureRateLimiter.ClientKey clientKey =
+                Utils.parseParameter(paramSupplier.apply(ConfigurationParameters.PARAM_FAILURE_CLIENT_KEY),
+                                     v -> FailureRateLimiter.ClientKey.valueOf(v.trim().toUpperCase(Locale.ROOT)),
+                                     FailureRateLimiter.ClientKey.TOKEN);
+        return new FailureRateLimiter(limit, Duration.ofSeconds(Math.max(1, window)), clientKey);
+    }
+
+    /**
+     * Tries to configure the rejected token cache
+     *
+     * @param paramSupplier Parameter supplier
+     * @return Rejected token cache, or {@code null} if no configuration provided
+     */
+    protected RejectedTokenCache configureRejectedTokenCache(Function<String, String> paramSupplier) {
+        long size = Utils.parseParameter(paramSupplier.apply(ConfigurationParameters.PARAM_REJECTED_TOKENS_CACHE_SIZE),
+                                         Long::parseLong, 0L);
+        if (size < 1) {
+            return null;
+        }
+        long ttl = Utils.parseParameter(paramSupplier.apply(ConfigurationParameters.PARAM_REJECTED_TOKENS_CACHE_TTL),
+                                        Long::parseLong, RejectedTokenCache.DEFAULT_TTL.toSeconds());
+        return new RejectedTokenCache(size, Duration.ofSeconds(Math.max(1, ttl)));
+    }
+
+    /**
+     * Configures how candidate tokens are evaluated
+     *
+     * @param paramSupplier Parameter supplier
+     * @return Candidate evaluation mode
+     */
+    protected JwtAuthenticationEngine.CandidateEvaluation configureCandidateEvaluation(
+            Function<String, String> paramSupplier) {
+        return Utils.parseParameter(paramSupplier.apply(ConfigurationParameters.PARAM_CANDIDATE_EVALUATION),
+                                    v -> JwtAuthenticationEngine.CandidateEvaluation.valueOf(
+                                            v.trim().toUpperCase(Locale.ROOT)),
+                                    JwtAuthenticationEngine.CandidateEvaluation.LAZY);
+    }
+
     /**
      * Parses a claim path from a raw configuration value
      * @param value Raw value
@@ -162,10 +223,13 @@ public abstract class AbstractHeaderBasedEngineProvider implements EngineProvide
 
         try {
             JwtAuthenticationEngine<TRequest, TResponse> engine =
-                    createEngine(headerSources, realm, usernameClaims, rolesClaim);
+                    createEngine(paramSupplier, headerSources, realm, usernameClaims, rolesClaim);
             if (engine == null) {
                 return false;
             }
+            engine.setFailureRateLimiter(this.configureFailureRateLimiter(paramSupplier));
+            engine.setRejectedTokenCache(this.configureRejectedTokenCache(paramSupplier));
+            engine.setCandidateEvaluation(this.configureCandidateEvaluation(paramSupplier));
             jwtAuthenticationEngineConsumer.accept(engine);
             return true;
         } catch (Throwable e) {
@@ -173,6 +237,28 @@ public abstract class AbstractHeaderBasedEngineProvider implements EngineProvide
         }
     }
 
+    /**
+     * Creates the actual engine implementation
+     * <p>
+     * By default, this delegates to {@link #createEngine(List, String, List, ClaimPath)}, derived implementations may
+     * override this if they need to consult further configuration parameters when creating their engine.
+     * </p>
+     *
+     * @param paramSupplier  Parameter supplier
+     * @param headerSources  Header Sources
+     * @param realm          Realm
+     * @param usernameClaims Username claims
+     * @param rolesClaim     Roles claim
+     * @param <TRequest>     Request type
+     * @param <TResponse>    Response type
+     * @return JWT Authentication Engine
+     */
+    protected <TRequest, TResponse> JwtAuthenticationEngine<TRequest, TResponse> createEngine(
+            Function<String, String> paramSupplier, List<HeaderSource> headerSources, String realm,
+            List<ClaimPath> usernameClaims, ClaimPath rolesClaim) {
+        return createEngine(headerSources, realm, usernameClaims, rolesClaim);
+    }
+
     /**
      * Creates the actual engine implementation
      *
@@ -17,10 +17,15 @@ package io.telicent.servlet.auth.jwt.configuration;
 
 import io.telicent.servlet.auth.jwt.JwtServletConstants;
 import io.telicent.servlet.auth.jwt.PathExclusion;
+import io.telicent.servlet.auth.jwt.authorization.AuthorizationPolicy;
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.JwtWarmUp;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+
 /**
  * Entry point for automated configuration
  */
@@ -65,6 +70,18 @@ public class AutomatedConfiguration {
             LOGGER.warn("Path Exclusions already configured, skipping additional attempt to automatically configure.");
         }
 
+        // Configure the Authorization Policy
+        if (adaptor.getAttribute(JwtServletConstants.ATTRIBUTE_AUTHORIZATION_POLICY) == null || allowMultiple) {
+            String rawRules = adaptor.getParameter(ConfigurationParameters.PARAM_AUTHORIZATION_RULES);
+            if (StringUtils.isNotBlank(rawRules)) {
+                adaptor.setAttribute(JwtServletConstants.ATTRIBUTE_AUTHORIZATION_POLICY,
+                                     AuthorizationPolicy.parse(rawRules));
+            }
+        } else {
+            LOGGER.warn(
+                    "Authorization Policy already configured, skipping additional attempt to automatically configure.");
+        }
+
         // Configure the Authentication Engine
         if (adaptor.getAttribute(JwtServletConstants.ATTRIBUTE_JWT_ENGINE) == null || allowMultiple) {
             EngineFactory.configure(x -> adaptor.getParameter(x),
@@ -73,5 +90,44 @@ public class AutomatedConfiguration {
             LOGGER.warn(
                     "JWT Authentication Engine already configured, skipping additional attempt to automatically configure.");
         }
+
+        // Start warm-up of the JWT Verifier (if enabled)
+        boolean warmUp = Utils.parseParameter(adaptor.getParameter(ConfigurationParameters.PARAM_WARMUP_ENABLED),
+                                              Boolean::parseBoolean, false);
+        if (warmUp) {
+            startWarmUp(adaptor);
+        }
+    }
+
+    /**
+     * Starts background warm-up of the configured JWT Verifier, registering the warm-up so that its readiness may be
+     * consulted
+     *
+     * @param adaptor Configuration adaptor
+     */
+    private static void startWarmUp(RuntimeConfigurationAdaptor adaptor) {
+        if (adaptor.getAttribute(JwtServletConstants.ATTRIBUTE_JWT_WARM_UP) != null) {
+            LOGGER.warn("JWT Verifier warm-up already started, skipping additional attempt to start warm-up.");
+            return;
+        }
+        if (!(adaptor.getAttribute(JwtServletConstants.ATTRIBUTE_JWT_VERIFIER) instanceof JwtVerifier verifier)) {
+            LOGGER.warn("JWT Verifier warm-up enabled but no JWT Verifier configured, warm-up not possible.");
+            return;
+        }
+        int iterations = Utils.parseParameter(adaptor.getParameter(ConfigurationParameters.PARAM_WARMUP_ITERATIONS),
+                                              Integer::parseInt, ConfigurationParameters.DEFAULT_WARMUP_ITERATIONS);
+        int retryInterval =
+                Utils.parseParameter(adaptor.getParameter(ConfigurationParameters.PARAM_WARMUP_RETRY_INTERVAL),
+                                     Integer::parseInt, ConfigurationParameters.DEFAULT_WARMUP_RETRY_INTERVAL);
+        int maxAttempts = Utils.parseParameter(adaptor.getParameter(ConfigurationParameters.PARAM_WARMUP_MAX_ATTEMPTS),
+                                               Integer::parseInt, ConfigurationParameters.DEFAULT_WARMUP_MAX_ATTEMPTS);
+        try {
+            JwtWarmUp jwtWarmUp =
+                    new JwtWarmUp(verifier, iterations, Duration.ofSeconds(retryInterval), maxAttempts);
+            adaptor.setAttribute(JwtServletConstants.ATTRIBUTE_JWT_WARM_UP, jwtWarmUp);
+            jwtWarmUp.start();
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Invalid JWT Verifier warm-up configuration: {}", e.getMessage());
+        }
     }
 }
@@ -99,6 +99,20 @@ public class ConfigurationParameters {
      * The default amount of time for which JWKS loaded keys will be cached
      */
     public static final int DEFAULT_JWKS_CACHE_KEYS_FOR = 60;
+    /**
+     * Parameter that configures a local file to which keys retrieved from a JWKS URL, and any OpenID Connect
+     * configuration they were discovered from, are persisted so that the application can warm start from them
+     */
+    public static final String PARAM_JWKS_SNAPSHOT_FILE = "jwt.jwks.snapshot.file";
+    /**
+     * Parameter that configures the maximum age (in minutes) of a {@value #PARAM_JWKS_SNAPSHOT_FILE} snapshot that
+     * will be used to warm start
+     */
+    public static final String PARAM_JWKS_SNAPSHOT_MAX_AGE = "jwt.jwks.snapshot.max-age.minutes";
+    /**
+     * The default maximum age (in minutes) of a JWKS snapshot that will be used to warm start
+     */
+    public static final int DEFAULT_JWKS_SNAPSHOT_MAX_AGE = 1440;
     /**
      * Parameter that configures the verification provider via OIDC discovery
      */
@@ -114,4 +128,286 @@ public class ConfigurationParameters {
      * The default OIDC retry interval (in seconds) used if no specific retry interval is configured
      */
     public static final int DEFAULT_OIDC_RETRY_INTERVAL = 15;
+
+    /**
+     * Parameter that specifies the interval (in seconds) at which OpenID Connect configuration is rediscovered in the
+     * background, allowing a change in the providers JWKS URL to be picked up without a restart.  A value of zero
+     * disables background rediscovery.
+     */
+    public static final String PARAM_OIDC_REDISCOVERY_INTERVAL = "jwt.oidc.rediscovery.interval";
+
+    /**
+     * The default OIDC rediscovery interval (in seconds) used if no specific rediscovery interval is configured
+     */
+    public static final int DEFAULT_OIDC_REDISCOVERY_INTERVAL = 900;
+
+    /**
+     * Parameter that enables asynchronous key loading for engines that support it, when enabled keys that are not
+     * currently cached are loaded off the request thread
+     */
+    public static final String PARAM_ASYNC_KEY_LOADING = "jwt.keys.async.enabled";
+    /**
+     * Parameter that specifies the maximum time (in milliseconds) that a request will wait for an asynchronous key load
+     * to complete before being rejected with a {@code 503 Service Unavailable} response
+     */
+    public static final String PARAM_ASYNC_KEY_LOADING_MAX_WAIT = "jwt.keys.async.max-wait";
+    /**
+     * The default maximum time (in milliseconds) that a request will wait for an asynchronous key load
+     */
+    public static final int DEFAULT_ASYNC_KEY_LOADING_MAX_WAIT = 1000;
+
+    /**
+     * Parameter that specifies the timeout (in milliseconds) for establishing connections when fetching keys, JWKS and
+     * OpenID Connect configuration
+     */
+    public static final String PARAM_KEY_FETCH_CONNECT_TIMEOUT = "jwt.keys.fetch.connect-timeout";
+    /**
+     * The default key fetch connect timeout (in milliseconds)
+     */
+    public static final int DEFAULT_KEY_FETCH_CONNECT_TIMEOUT = 5000;
+    /**
+     * Parameter that specifies the timeout (in milliseconds) for each request made when fetching keys, JWKS and OpenID
+     * Connect configuration
+     */
+    public static final String PARAM_KEY_FETCH_REQUEST_TIMEOUT = "jwt.keys.fetch.request-timeout";
+    /**
+     * The default key fetch request timeout (in milliseconds)
+     */
+    public static final int DEFAULT_KEY_FETCH_REQUEST_TIMEOUT = 10000;
+    /**
+     * Parameter that specifies the maximum number of attempts made for a key fetch that fails with an I/O error, or a
+     * {@code 429} or {@code 5xx} status
+     */
+    public static final String PARAM_KEY_FETCH_MAX_ATTEMPTS = "jwt.keys.fetch.max-attempts";
+    /**
+     * The default maximum number of attempts made for a key fetch
+     */
+    public static final int DEFAULT_KEY_FETCH_MAX_ATTEMPTS = 2;
+    /**
+     * Parameter that specifies the backoff (in milliseconds) before the first retry of a failed key fetch, this is
+     * doubled for each subsequent retry and randomised to avoid retrying in lockstep
+     */
+    public static final String PARAM_KEY_FETCH_BACKOFF = "jwt.keys.fetch.backoff";
+    /**
+     * The default backoff (in milliseconds) before the first retry of a failed key fetch
+     */
+    public static final int DEFAULT_KEY_FETCH_BACKOFF = 250;
+    /**
+     * Parameter that specifies the maximum backoff (in milliseconds) between retries of a failed key fetch
+     */
+    public static final String PARAM_KEY_FETCH_MAX_BACKOFF = "jwt.keys.fetch.max-backoff";
+    /**
+     * The default maximum backoff (in milliseconds) between retries of a failed key fetch
+     */
+    public static final int DEFAULT_KEY_FETCH_MAX_BACKOFF = 2000;
+    /**
+     * Parameter that specifies the number of consecutive failed key fetches to a server after which further fetches
+     * fail fast, falling back to any cached keys, until the {@value #PARAM_KEY_FETCH_CIRCUIT_OPEN} duration elapses
+     */
+    public static final String PARAM_KEY_FETCH_CIRCUIT_FAILURES = "jwt.keys.fetch.circuit.failures";
+    /**
+     * The default number of consecutive failed key fetches after which fetches fail fast
+     */
+    public static final int DEFAULT_KEY_FETCH_CIRCUIT_FAILURES = 5;
+    /**
+     * Parameter that specifies how long (in seconds) key fetches to a server fail fast once the
+     * {@value #PARAM_KEY_FETCH_CIRCUIT_FAILURES} threshold is reached, before a single probe request is permitted
+     */
+    public static final String PARAM_KEY_FETCH_CIRCUIT_OPEN = "jwt.keys.fetch.circuit.open";
+    /**
+     * The default duration (in seconds) that key fetches fail fast for
+     */
+    public static final int DEFAULT_KEY_FETCH_CIRCUIT_OPEN = 30;
+    /**
+     * Parameter that specifies the maximum size (in bytes) of a fetched key document, i.e. a JWKS or OpenID Connect
+     * configuration, documents exceeding this are abandoned as soon as the limit is reached
+     */
+    public static final String PARAM_KEY_FETCH_MAX_SIZE = "jwt.keys.fetch.max-size";
+    /**
+     * The default maximum size (in bytes) of a fetched key document
+     */
+    public static final int DEFAULT_KEY_FETCH_MAX_SIZE = 1_048_576;
+    /**
+     * Parameter that specifies the maximum number of keys a fetched JWKS may contain, a JWKS with more keys than this is
+     * rejected as soon as the limit is reached
+     */
+    public static final String PARAM_KEY_FETCH_MAX_KEYS = "jwt.keys.fetch.max-keys";
+    /**
+     * The default maximum number of keys a fetched JWKS may contain
+     */
+    public static final int DEFAULT_KEY_FETCH_MAX_KEYS = 100;
+
+    /**
+     * Parameter that enables warm-up of the configured JWT verifier at startup, see
+     * {@link io.telicent.servlet.auth.jwt.verification.JwtWarmUp}
+     */
+    public static final String PARAM_WARMUP_ENABLED = "jwt.warmup.enabled";
+    /**
+     * Parameter that specifies how many times each synthetic token is verified during warm-up
+     */
+    public static final String PARAM_WARMUP_ITERATIONS = "jwt.warmup.iterations";
+    /**
+     * The default number of times each synthetic token is verified during warm-up
+     */
+    public static final int DEFAULT_WARMUP_ITERATIONS = 100;
+    /**
+     * Parameter that specifies the interval (in seconds) after which a failed warm-up, e.g. due to keys not being
+     * available, is retried
+     */
+    public static final String PARAM_WARMUP_RETRY_INTERVAL = "jwt.warmup.retry.interval";
+    /**
+     * The default warm-up retry interval (in seconds)
+     */
+    public static final int DEFAULT_WARMUP_RETRY_INTERVAL = 5;
+    /**
+     * Parameter that specifies the maximum number of warm-up attempts after which warm-up gives up, in which case the
+     * verifier is never reported as ready
+     */
+    public static final String PARAM_WARMUP_MAX_ATTEMPTS = "jwt.warmup.max-attempts";
+    /**
+     * The default maximum number of warm-up attempts
+     */
+    public static final int DEFAULT_WARMUP_MAX_ATTEMPTS = 60;
+
+    /**
+     * Parameter that specifies a comma separated list of trusted token issuers for multi-tenant verification, each
+     * issuers keys are discovered via OpenID Connect discovery relative to the issuer
+     */
+    public static final String PARAM_TRUSTED_ISSUERS = "jwt.issuers";
+    /**
+     * Parameter that specifies the maximum number of per-issuer verifiers kept active for multi-tenant verification
+     */
+    public static final String PARAM_MAX_ACTIVE_ISSUERS = "jwt.issuers.max-active";
+    /**
+     * Parameter that specifies how long (in minutes) an unused per-issuer verifier is kept active for multi-tenant
+     * verification
+     */
+    public static final String PARAM_ISSUER_IDLE_TIMEOUT = "jwt.issuers.idle.minutes";
+    /**
+     * The default idle timeout (in minutes) for per-issuer verifiers
+     */
+    public static final int DEFAULT_ISSUER_IDLE_TIMEOUT = 60;
+
+    /**
+     * Parameter that specifies whether all configured key sources, i.e. a public/secret key plus one or more comma
+     * separated JWKS URLs, are combined into a single composite Key ID index rather than only the highest precedence
+     * source being used
+     */
+    public static final String PARAM_COMPOSITE_KEYS = "jwt.keys.composite";
+    /**
+     * Parameter that specifies the Key ID under which a public/secret key is indexed when composite keys are enabled
+     */
+    public static final String PARAM_KEY_ID = "jwt.key.id";
+    /**
+     * Parameter that specifies whether local key files, i.e. a public/secret key or a {@code file:} JWKS URL, are watched
+     * for changes and reloaded when they change, allowing keys to be rotated without a restart
+     */
+    public static final String PARAM_WATCH_KEY_FILES = "jwt.keys.watch";
+
+    /**
+     * Parameter that specifies a local file of revoked tokens, if set then tokens are checked against the revocation
+     * entries in this file after they are verified
+     */
+    public static final String PARAM_REVOCATION_FILE = "jwt.revocation.file";
+    /**
+     * Parameter that specifies the interval (in seconds) at which the revocation file is checked for new entries,
+     * values less than {@code 1} are treated as {@code 1}
+     */
+    public static final String PARAM_REVOCATION_REFRESH_INTERVAL = "jwt.revocation.refresh.interval";
+    /**
+     * The default interval (in seconds) at which the revocation file is checked for new entries
+     */
+    public static final int DEFAULT_REVOCATION_REFRESH_INTERVAL = 30;
+
+    /**
+     * Parameter that specifies whether tokens are treated as one-time-use, in which case a token whose JWT ID has
+     * already been seen within its lifetime is rejected as a replay
+     */
+    public static final String PARAM_REPLAY_GUARD_ENABLED = "jwt.replay.guard.enabled";
+    /**
+     * Parameter that specifies the maximum number of used tokens remembered for replay detection
+     */
+    public static final String PARAM_REPLAY_MAX_ENTRIES = "jwt.replay.max-entries";
+
+    /**
+     * Parameter that specifies the URL of an OAuth 2.0 Token Introspection (RFC 7662) endpoint, if set then opaque
+     * tokens are verified by introspecting them against this endpoint
+     */
+    public static final String PARAM_INTROSPECTION_URL = "jwt.introspection.url";
+    /**
+     * Parameter that specifies the client ID used to authenticate to the token introspection endpoint
+     */
+    public static final String PARAM_INTROSPECTION_CLIENT_ID = "jwt.introspection.client.id";
+    /**
+     * Parameter that specifies the client secret used to authenticate to the token introspection endpoint
+     */
+    public static final String PARAM_INTROSPECTION_CLIENT_SECRET = "jwt.introspection.client.secret";
+    /**
+     * Parameter that specifies the maximum time (in seconds) a token introspection response is cached for, responses
+     * are never cached beyond the expiry of the token
+     */
+    public static final String PARAM_INTROSPECTION_CACHE_TTL = "jwt.introspection.cache.ttl";
+    /**
+     * Parameter that specifies the maximum number of token introspection responses cached
+     */
+    public static final String PARAM_INTROSPECTION_CACHE_SIZE = "jwt.introspection.cache.size";
+    /**
+     * Parameter that specifies the timeout (in milliseconds) for each token introspection request
+     */
+    public static final String PARAM_INTROSPECTION_TIMEOUT = "jwt.introspection.timeout";
+    /**
+     * The default token introspection request timeout (in milliseconds)
+     */
+    public static final int DEFAULT_INTROSPECTION_TIMEOUT = 5000;
+
+    /**
+     * Parameter that specifies the maximum number of failed authentication attempts a client may make within the
+     * failure window, once exceeded the client is rejected with a {@code 429} without its tokens being verified until
+     * its failure rate drops.  If not set, or less than {@code 1}, failures are not rate limited.
+     */
+    public static final String PARAM_FAILURE_LIMIT = "jwt.failures.limit";
+    /**
+     * Parameter that specifies the sliding window (in seconds) over which failed authentication attempts are counted
+     */
+    public static final String PARAM_FAILURE_WINDOW = "jwt.failures.window";
+    /**
+     * The default sliding window (in seconds) over which failed authentication attempts are counted
+     */
+    public static final int DEFAULT_FAILURE_WINDOW = 60;
+    /**
+     * Parameter that specifies how clients are identified for failure rate limiting, either {@code token} (the default)
+     * to use a fingerprint of the presented tokens, or {@code address} to use the client's remote address.
+     * <p>
+     * {@code address} is only safe when clients connect directly to the application, behind a reverse proxy every
+     * request has the proxy's address so a single misbehaving client would cause all clients to be limited.
+     * {@code token} only limits clients that repeatedly present the same tokens, a client that presents a different
+     * token on every attempt is never limited.
+     * </p>
+     */
+    public static final String PARAM_FAILURE_CLIENT_KEY = "jwt.failures.key";
+
+    /**
+     * Parameter that specifies the maximum number of recently rejected tokens remembered, tokens rejected for a reason
+     * that can never change, e.g. a bad signature or expiry, are sent the same challenge again without being
+     * re-verified.  If not set, or less than {@code 1}, rejected tokens are not remembered.
+     */
+    public static final String PARAM_REJECTED_TOKENS_CACHE_SIZE = "jwt.rejected-tokens.cache.size";
+    /**
+     * Parameter that specifies the time (in seconds) a rejected token is remembered for
+     */
+    public static final String PARAM_REJECTED_TOKENS_CACHE_TTL = "jwt.rejected-tokens.cache.ttl";
+
+    /**
+     * Parameter that specifies how the candidate tokens extracted from a request are evaluated, either {@code lazy}
+     * (the default) to stop verifying candidates at the first that verifies and yields a username, or {@code eager} to
+     * verify every candidate
+     */
+    public static final String PARAM_CANDIDATE_EVALUATION = "jwt.candidates.evaluation";
+
+    /**
+     * Parameter that specifies authorization rules applied to authenticated requests, rules are separated by {@code ;}
+     * and each has the form {@code <methods> <path> [requirements]}, see
+     * {@link io.telicent.servlet.auth.jwt.authorization.AuthorizationRule#parse(String)}
+     */
+    public static final String PARAM_AUTHORIZATION_RULES = "jwt.authorization.rules";
 }
@@ -18,11 +18,16 @@ package io.telicent.servlet.auth.jwt.configuration;
 import io.jsonwebtoken.JwtParserBuilder;
 import io.jsonwebtoken.Locator;
 import io.telicent.servlet.auth.jwt.errors.KeyLoadException;
+import io.telicent.servlet.auth.jwt.verification.FileWatchingKeyLocator;
 import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.KeyFetcher;
 import io.telicent.servlet.auth.jwt.verification.JwtParsers;
 import io.telicent.servlet.auth.jwt.verification.KeyUtils;
 import io.telicent.servlet.auth.jwt.verification.SignedJwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.jwks.AbstractJwksLocator;
 import io.telicent.servlet.auth.jwt.verification.jwks.CachedJwksKeyLocator;
+import io.telicent.servlet.auth.jwt.verification.jwks.CompositeKeyLocator;
+import io.telicent.servlet.auth.jwt.verification.jwks.KeySourceRegistry;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,11 +35,13 @@ import org.slf4j.LoggerFactory;
 import javax.crypto.SecretKey;
 import java.io.File;
 import java.net.URI;
-import java.net.http.HttpClient;
+import java.nio.file.Path;
 import java.security.Key;
 import java.security.PublicKey;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -55,7 +62,21 @@ public class DefaultVerificationProvider implements VerificationProvider {
             ConfigurationParameters.PARAM_PUBLIC_KEY,
             ConfigurationParameters.PARAM_SECRET_KEY,
             ConfigurationParameters.PARAM_JWKS_URL,
+            ConfigurationParameters.PARAM_JWKS_SNAPSHOT_FILE,
+            ConfigurationParameters.PARAM_JWKS_SNAPSHOT_MAX_AGE,
             ConfigurationParameters.PARAM_KEY_ALGORITHM,
+            ConfigurationParameters.PARAM_COMPOSITE_KEYS,
+            ConfigurationParameters.PARAM_KEY_ID,
+            ConfigurationParameters.PARAM_WATCH_KEY_FILES,
+            ConfigurationParameters.PARAM_KEY_FETCH_CONNECT_TIMEOUT,
+            ConfigurationParameters.PARAM_KEY_FETCH_REQUEST_TIMEOUT,
+            ConfigurationParameters.PARAM_KEY_FETCH_MAX_ATTEMPTS,
+            ConfigurationParameters.PARAM_KEY_FETCH_BACKOFF,
+            ConfigurationParameters.PARAM_KEY_FETCH_MAX_BACKOFF,
+            ConfigurationParameters.PARAM_KEY_FETCH_CIRCUIT_FAILURES,
+            ConfigurationParameters.PARAM_KEY_FETCH_CIRCUIT_OPEN,
+            ConfigurationParameters.PARAM_KEY_FETCH_MAX_SIZE,
+            ConfigurationParameters.PARAM_KEY_FETCH_MAX_KEYS,
             ConfigurationParameters.PARAM_ALLOWED_CLOCK_SKEW
     };
 
@@ -114,15 +135,51 @@ public class DefaultVerificationProvider implements VerificationProvider {
         Integer cacheKeysFor =
                 Utils.parseParameter(parameters, ConfigurationParameters.PARAM_JWKS_CACHE_KEYS_FOR, Integer::parseInt,
                                      ConfigurationParameters.DEFAULT_JWKS_CACHE_KEYS_FOR);
+        boolean composite =
+                Utils.parseParameter(parameters, ConfigurationParameters.PARAM_COMPOSITE_KEYS, Boolean::parseBoolean,
+                                     false);
+        boolean watch =
+                Utils.parseParameter(parameters, ConfigurationParameters.PARAM_WATCH_KEY_FILES, Boolean::parseBoolean,
+                                     false);
+        KeyFetcher.Settings fetchSettings = KeyFetcher.Settings.fromParameters(parameters);
 
-        if (StringUtils.isNotBlank(jwksUrl)) {
-            Locator<Key> jwks = new CachedJwksKeyLocator(asURI(jwksUrl), HttpClient.newBuilder().build(),
-                                                         Duration.ofMinutes(cacheKeysFor));
-            return create(parameters, JwtParsers.builder().keyLocator(jwks), SignedJwtVerifier.debugStringForLocator(jwks));
+        if (composite) {
+            List<KeySourceRegistry.Lease<CachedJwksKeyLocator>> leases = new ArrayList<>();
+            try {
+                Locator<Key> keys =
+                        createCompositeLocator(parameters, Duration.ofMinutes(cacheKeysFor), fetchSettings, leases);
+                JwtVerifier verifier = create(parameters, JwtParsers.builder().keyLocator(keys), keys,
+                                              SignedJwtVerifier.debugStringForLocator(keys));
+                leases.forEach(lease -> releaseWhenUnreachable(verifier, lease));
+                return verifier;
+            } catch (KeyLoadException | RuntimeException e) {
+                // No verifier will ever own the leases so release them now
+                leases.forEach(KeySourceRegistry.Lease::close);
+                throw e;
+            }
+        } else if (StringUtils.isNotBlank(jwksUrl)) {
+            URI jwksUri = asURI(jwksUrl);
+            if (watch && "file".equals(jwksUri.getScheme())) {
+                // Watched file is parsed once and held in memory so there's no need for additional caching
+                return createWatched(parameters, FileWatchingKeyLocator.forJwks(Path.of(jwksUri)));
+            }
+            // Verifiers configured against the same JWKS URL with the same settings share a single key source
+            KeySourceRegistry.Lease<CachedJwksKeyLocator> lease =
+                    KeySourceRegistry.acquireJwks(jwksUri, Duration.ofMinutes(cacheKeysFor), snapshotFile(parameters),
+                                                  snapshotMaxAge(parameters), fetchSettings);
+            Locator<Key> jwks = lease.get();
+            return releaseWhenUnreachable(create(parameters, JwtParsers.builder().keyLocator(jwks), jwks,
+                                                 SignedJwtVerifier.debugStringForLocator(jwks)), lease);
         } else if (StringUtils.isNotBlank(secretKey)) {
+            if (watch) {
+                return createWatched(parameters, FileWatchingKeyLocator.forSecretKey(Path.of(secretKey)));
+            }
             SecretKey secret = KeyUtils.loadSecretKey(new File(secretKey));
             return create(parameters, JwtParsers.builder().verifyWith(secret), SignedJwtVerifier.SECRET_KEY_DEBUG_STRING);
         } else if (StringUtils.isNotBlank(publicKey)) {
+            if (watch) {
+                return createWatched(parameters, FileWatchingKeyLocator.forPublicKey(algorithm, Path.of(publicKey)));
+            }
             PublicKey key = KeyUtils.loadPublicKey(algorithm, new File(publicKey));
             return create(parameters, JwtParsers.builder().verifyWith(key), SignedJwtVerifier.debugStringForPublicKey(key));
         } else {
@@ -131,6 +188,117 @@ public class DefaultVerificationProvider implements VerificationProvider {
 
     }
 
+    private JwtVerifier createWatched(Map<String, String> parameters, FileWatchingKeyLocator locator) {
+        // Each watched locator holds a watch service and thread, so stop watching once the verifier is discarded
+        return closeWhenUnreachable(create(parameters, JwtParsers.builder().keyLocator(locator), locator,
+                                           SignedJwtVerifier.debugStringForLocator(locator)), locator);
+    }
+
+    /**
+     * Creates a composite key locator that combines the configured public/secret key, and all the comma separated JWKS
+     * URLs, into a single Key ID index
+     *
+     * @param parameters   Parameters
+     * @param cacheKeysFor  How long keys loaded from JWKS URLs are used before being refreshed
+     * @param fetchSettings Key fetch settings used when loading keys from JWKS URLs
+     * @param leases        Receives the leases on the shared key sources acquired for the JWKS URLs, these remain
+     *                      the caller's to release even if this method throws
+     * @return Composite key locator
+     * @throws KeyLoadException Thrown if a key cannot be loaded, or no key sources are configured
+     */
+    private static CompositeKeyLocator createCompositeLocator(
+            Map<String, String> parameters, Duration cacheKeysFor, KeyFetcher.Settings fetchSettings,
+            List<KeySourceRegistry.Lease<CachedJwksKeyLocator>> leases) throws KeyLoadException {
+        String secretKey = parameters.get(ConfigurationParameters.PARAM_SECRET_KEY);
+        String publicKey = parameters.get(ConfigurationParameters.PARAM_PUBLIC_KEY);
+        String keyId = parameters.get(ConfigurationParameters.PARAM_KEY_ID);
+
+        // A local key is used for tokens without a Key ID, and is additionally indexed under its Key ID if one is given
+        Key localKey = null;
+        if (StringUtils.isNotBlank(secretKey)) {
+            localKey = KeyUtils.loadSecretKey(new File(secretKey));
+        } else if (StringUtils.isNotBlank(publicKey)) {
+            localKey = KeyUtils.loadPublicKey(parameters.get(ConfigurationParameters.PARAM_KEY_ALGORITHM),
+                                              new File(publicKey));
+        }
+        Map<String, Key> staticKeys = new HashMap<>();
+        if (localKey != null && StringUtils.isNotBlank(keyId)) {
+            staticKeys.put(keyId, localKey);
+        }
+
+        // Each JWKS URL is shared with any other verifiers configured against it with the same settings, snapshots are
+        // not used since a single snapshot file cannot hold several JWKS
+        List<AbstractJwksLocator> sources = new ArrayList<>();
+        String jwksUrls = parameters.get(ConfigurationParameters.PARAM_JWKS_URL);
+        if (StringUtils.isNotBlank(jwksUrls)) {
+            for (String jwksUrl : jwksUrls.split(",")) {
+                if (StringUtils.isNotBlank(jwksUrl)) {
+                    KeySourceRegistry.Lease<CachedJwksKeyLocator> lease =
+                            KeySourceRegistry.acquireJwks(asURI(jwksUrl.trim()), cacheKeysFor, null, null,
+                                                          fetchSettings);
+                    leases.add(lease);
+                    sources.add(lease.get());
+                }
+            }
+        }
+
+        if (localKey == null && sources.isEmpty()) {
+            throw new KeyLoadException("No parameter available to supply a key or JWKS URL for JWT verification.");
+        }
+        return new CompositeKeyLocator(staticKeys, localKey, sources, cacheKeysFor);
+    }
+
+    /**
+     * Gets the snapshot file configured via the {@value ConfigurationParameters#PARAM_JWKS_SNAPSHOT_FILE} parameter
+     *
+     * @param parameters Parameters
+     * @return Snapshot file, or {@code null} if not configured
+     */
+    protected static Path snapshotFile(Map<String, String> parameters) {
+        String snapshotFile = parameters.get(ConfigurationParameters.PARAM_JWKS_SNAPSHOT_FILE);
+        return StringUtils.isBlank(snapshotFile) ? null : Path.of(snapshotFile);
+    }
+
+    /**
+     * Gets the maximum snapshot age configured via the {@value ConfigurationParameters#PARAM_JWKS_SNAPSHOT_MAX_AGE}
+     * parameter
+     *
+     * @param parameters Parameters
+     * @return Maximum snapshot age, or {@code null} if no snapshot file is configured
+     */
+    protected static Duration snapshotMaxAge(Map<String, String> parameters) {
+        if (snapshotFile(parameters) == null) {
+            return null;
+        }
+        Integer maxAge = Utils.parseParameter(parameters, ConfigurationParameters.PARAM_JWKS_SNAPSHOT_MAX_AGE,
+                                              Integer::parseInt, ConfigurationParameters.DEFAULT_JWKS_SNAPSHOT_MAX_AGE);
+        return Duration.ofMinutes(maxAge);
+    }
+
+    /**
+     * Ties the release of a lease on a shared key source to the lifetime of the verifier using it
+     *
+     * @param verifier Verifier
+     * @param lease    Lease on the key source the verifier uses
+     * @return Verifier
+     */
+    protected static JwtVerifier releaseWhenUnreachable(JwtVerifier verifier, KeySourceRegistry.Lease<?> lease) {
+        KeySourceRegistry.releaseWhenUnreachable(verifier, lease);
+        return verifier;
+    }
+
+    /**
+     * Ties the closing of a resource, e.g. a watched key locator, to the lifetime of the verifier using it
+     *
+     * @param verifier Verifier
+     * @param resource Resource the verifier uses
+     * @return Verifier
+     */
+    protected static JwtVerifier closeWhenUnreachable(JwtVerifier verifier, AutoCloseable resource) {
+        KeySourceRegistry.closeWhenUnreachable(verifier, resource);
+        return verifier;
+    }
+
     protected static URI asURI(String jwksUrl) throws KeyLoadException {
         try {
             URI uri = URI.create(jwksUrl);
@@ -157,6 +325,20 @@ public class DefaultVerificationProvider implements VerificationProvider {
     }
 
     protected JwtVerifier create(Map<String, String> parameters, JwtParserBuilder builder, String debugString) {
+        return create(parameters, builder, null, debugString);
+    }
+
+    /**
+     * Creates a verifier from the given parameters and parser builder
+     *
+     * @param parameters  Parameters
+     * @param builder     Parser builder
+     * @param locator     Key locator the parser builder was configured with, if any
+     * @param debugString Debug string
+     * @return JWT Verifier
+     */
+    protected JwtVerifier create(Map<String, String> parameters, JwtParserBuilder builder, Locator<Key> locator,
+                                 String debugString) {
         Integer allowedClockSkew =
                 Utils.parseParameter(parameters, ConfigurationParameters.PARAM_ALLOWED_CLOCK_SKEW, Integer::parseInt,
                                      null);
@@ -164,6 +346,6 @@ public class DefaultVerificationProvider implements VerificationProvider {
             builder.clockSkewSeconds(allowedClockSkew);
         }
         // TODO Allow configuring various requirements on the JWT parser e.g. issuer
-        return new SignedJwtVerifier(builder.build(), debugString);
+        return new SignedJwtVerifier(builder.build(), locator, debugString);
     }
 }
@@ -17,6 +17,7 @@ package io.telicent.servlet.auth.jwt.configuration;
 
 import io.telicent.servlet.auth.jwt.JwtAuthenticationEngine;
 import io.telicent.servlet.auth.jwt.PathExclusion;
+import io.telicent.servlet.auth.jwt.authorization.AuthorizationPolicy;
 import io.telicent.servlet.auth.jwt.errors.AuthenticationConfigurationError;
 import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
 import org.slf4j.Logger;
@@ -24,6 +25,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 
 /**
@@ -40,9 +42,11 @@ public final class FrozenFilterConfiguration<TRequest, TResponse> {
     // These fields are intentionally null, they will be populated once configure() has been called and tried to
     // autoconfigure these, or the first time they are successfully read from the runtime configuration if the user is
     // doing the configuration another way e.g. via a ServletContextListener
-    private JwtAuthenticationEngine<TRequest, TResponse> engine = null;
-    private JwtVerifier verifier = null;
-    private List<PathExclusion> exclusions = null;
+    // They are held in atomic references rather than guarded by locks so that freezing never pins virtual threads
+    private final AtomicReference<JwtAuthenticationEngine<TRequest, TResponse>> engine = new AtomicReference<>();
+    private final AtomicReference<JwtVerifier> verifier = new AtomicReference<>();
+    private final AtomicReference<List<PathExclusion>> exclusions = new AtomicReference<>();
+    private final AtomicReference<AuthorizationPolicy> authorizationPolicy = new AtomicReference<>();
 
     /**
      * Gets the configured engine (if any)
@@ -50,7 +54,7 @@ public final class FrozenFilterConfiguration<TRequest, TResponse> {
      * @return Engine
      */
     public JwtAuthenticationEngine<TRequest, TResponse> getEngine() {
-        return engine;
+        return engine.get();
     }
 
     /**
@@ -59,7 +63,7 @@ public final class FrozenFilterConfiguration<TRequest, TResponse> {
      * @return Verifier
      */
     public JwtVerifier getVerifier() {
-        return verifier;
+        return verifier.get();
     }
 
     /**
@@ -68,7 +72,17 @@ public final class FrozenFilterConfiguration<TRequest, TResponse> {
      * @return Exclusions
      */
     public List<PathExclusion> getExclusions() {
-        return exclusions;
+        return exclusions.get();
+    }
+
+    /**
+     * Gets the configured authorization policy (if any)
+     *
+     * @return Authorization policy, {@link AuthorizationPolicy#NONE} if frozen with no policy, or {@code null} if not
+     * yet frozen
+     */
+    public AuthorizationPolicy getAuthorizationPolicy() {
+        return authorizationPolicy.get();
     }
 
     /**
@@ -180,11 +194,12 @@ public final class FrozenFilterConfiguration<TRequest, TResponse> {
      *
      * @param rawVerifier Raw verifier
      */
-    public synchronized void tryFreezeVerifierConfiguration(Object rawVerifier) {
-        if (this.verifier != null) {
+    public void tryFreezeVerifierConfiguration(Object rawVerifier) {
+        if (this.verifier.get() != null) {
             return;
         }
-        this.verifier = this.prepareVerifier(rawVerifier);
+        // If multiple threads race to freeze the configuration the first to complete wins
+        this.verifier.compareAndSet(null, this.prepareVerifier(rawVerifier));
     }
 
     /**
@@ -193,12 +208,12 @@ public final class FrozenFilterConfiguration<TRequest, TResponse> {
      * @param rawEngine     Engine
      * @param defaultEngine Default engine to fallback configuration to
      */
-    public synchronized void tryFreezeEngineConfiguration(Object rawEngine,
-                                                          JwtAuthenticationEngine<TRequest, TResponse> defaultEngine) {
-        if (this.engine != null) {
+    public void tryFreezeEngineConfiguration(Object rawEngine,
+                                             JwtAuthenticationEngine<TRequest, TResponse> defaultEngine) {
+        if (this.engine.get() != null) {
             return;
         }
-        this.engine = this.prepareEngine(rawEngine, defaultEngine);
+        this.engine.compareAndSet(null, this.prepareEngine(rawEngine, defaultEngine));
     }
 
     /**
@@ -206,10 +221,35 @@ public final class FrozenFilterConfiguration<TRequest, TResponse> {
      *
      * @param rawPathExclusions Path exclusions
      */
-    public synchronized void tryFreezeExclusionsConfiguration(Object rawPathExclusions) {
-        if (this.exclusions != null) {
+    public void tryFreezeExclusionsConfiguration(Object rawPathExclusions) {
+        if (this.exclusions.get() != null) {
+            return;
+        }
+        this.exclusions.compareAndSet(null, this.preparePathExclusions(rawPathExclusions));
+    }
+
+    /**
+     * Tries to freeze the authorization policy configuration
+     *
+     * @param rawPolicy Authorization policy
+     */
+    public void tryFreezeAuthorizationConfiguration(Object rawPolicy) {
+        if (this.authorizationPolicy.get() != null) {
             return;
         }
-        this.exclusions = this.preparePathExclusions(rawPathExclusions);
+        this.authorizationPolicy.compareAndSet(null, this.prepareAuthorizationPolicy(rawPolicy));
+    }
+
+    private AuthorizationPolicy prepareAuthorizationPolicy(Object rawPolicy) {
+        if (rawPolicy == null) {
+            return AuthorizationPolicy.NONE;
+        }
+        if (rawPolicy instanceof AuthorizationPolicy policy) {
+            return policy;
+        } else {
+            throw new AuthenticationConfigurationError(
+                    "JwtAuthFilter not properly configured, servlet context provides an authorization policy of the wrong type " + rawPolicy.getClass()
+                                                                                                                                           .getCanonicalName());
+        }
     }
 }
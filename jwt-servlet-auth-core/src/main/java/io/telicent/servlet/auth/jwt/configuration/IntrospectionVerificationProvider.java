@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.configuration;
+
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.KeyFetcher;
+import io.telicent.servlet.auth.jwt.verification.introspection.IntrospectingTokenVerifier;
+import io.telicent.servlet.auth.jwt.verification.jwks.KeySourceRegistry;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A verification provider that configures an {@link IntrospectingTokenVerifier} for the token introspection endpoint
+ * specified via the {@value ConfigurationParameters#PARAM_INTROSPECTION_URL} configuration parameter
+ * <p>
+ * If the configuration is also sufficient for one of the other verification providers to configure a JWT verifier then
+ * that verifier is used for tokens that are JWTs, and only opaque tokens are introspected.
+ * </p>
+ */
+public class IntrospectionVerificationProvider implements VerificationProvider {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IntrospectionVerificationProvider.class);
+
+    /**
+     * Supported parameters for this verification provider
+     */
+    public static final String[] INTROSPECTION_PARAMETERS = new String[] {
+            ConfigurationParameters.PARAM_INTROSPECTION_URL,
+            ConfigurationParameters.PARAM_INTROSPECTION_CLIENT_ID,
+            ConfigurationParameters.PARAM_INTROSPECTION_CLIENT_SECRET,
+            ConfigurationParameters.PARAM_INTROSPECTION_CACHE_TTL,
+            ConfigurationParameters.PARAM_INTROSPECTION_CACHE_SIZE,
+            ConfigurationParameters.PARAM_INTROSPECTION_TIMEOUT,
+            ConfigurationParameters.PARAM_KEY_FETCH_CONNECT_TIMEOUT,
+            ConfigurationParameters.PARAM_KEY_FETCH_CIRCUIT_FAILURES,
+            ConfigurationParameters.PARAM_KEY_FETCH_CIRCUIT_OPEN,
+            ConfigurationParameters.PARAM_KEY_FETCH_MAX_SIZE
+    };
+
+    @Override
+    public boolean configure(Function<String, String> paramSupplier, Consumer<JwtVerifier> verifierConsumer) {
+        Map<String, String> parameters =
+                DefaultVerificationProvider.prepareParameters(paramSupplier, INTROSPECTION_PARAMETERS);
+        String rawUrl = parameters.get(ConfigurationParameters.PARAM_INTROSPECTION_URL);
+        if (StringUtils.isBlank(rawUrl)) {
+            LOGGER.info(
+                    "No relevant parameters provided to allow token introspection verifier configuration, authentication will not be possible unless the verifier is separately configured.");
+            return false;
+        }
+
+        URI endpoint;
+        try {
+            endpoint = URI.create(rawUrl);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Failed to configure token introspection verifier, invalid introspection URL {}: {}", rawUrl,
+                         e.getMessage());
+            return false;
+        }
+        String clientId = parameters.get(ConfigurationParameters.PARAM_INTROSPECTION_CLIENT_ID);
+        String authorization = StringUtils.isNotBlank(clientId) ? IntrospectingTokenVerifier.basicAuthorization(
+                clientId, parameters.get(ConfigurationParameters.PARAM_INTROSPECTION_CLIENT_SECRET)) : null;
+        Integer cacheTtl = Utils.parseParameter(parameters, ConfigurationParameters.PARAM_INTROSPECTION_CACHE_TTL,
+                                                Integer::parseInt,
+                                                (int) IntrospectingTokenVerifier.DEFAULT_CACHE_TTL.toSeconds());
+        Long cacheSize = Utils.parseParameter(parameters, ConfigurationParameters.PARAM_INTROSPECTION_CACHE_SIZE,
+                                              Long::parseLong, IntrospectingTokenVerifier.DEFAULT_MAX_CACHED_TOKENS);
+        Integer timeout = Utils.parseParameter(parameters, ConfigurationParameters.PARAM_INTROSPECTION_TIMEOUT,
+                                               Integer::parseInt, ConfigurationParameters.DEFAULT_INTROSPECTION_TIMEOUT);
+
+        // Introspection is subject to the same document size limit and circuit breakers as fetching keys
+        KeyFetcher.Settings fetchSettings = KeyFetcher.Settings.fromParameters(parameters);
+
+        IntrospectingTokenVerifier verifier =
+                new IntrospectingTokenVerifier(endpoint, KeySourceRegistry.httpClient(fetchSettings.connectTimeout()),
+                                               fetchSettings, authorization, configureJwtVerifier(paramSupplier),
+                                               Duration.ofSeconds(Math.max(0, cacheTtl)), Math.max(0, cacheSize),
+                                               Duration.ofMillis(Math.max(1, timeout)));
+        verifierConsumer.accept(verifier);
+        LOGGER.info("Configured token introspection verifier: {}", verifier);
+        return true;
+    }
+
+    /**
+     * Attempts to configure a verifier for tokens that are JWTs using the other available verification providers, in
+     * priority order, as discovered by the {@link VerificationFactory}
+     *
+     * @param paramSupplier Parameter supplier
+     * @return JWT Verifier, or {@code null} if the configuration is insufficient for any other provider
+     */
+    private static JwtVerifier configureJwtVerifier(Function<String, String> paramSupplier) {
+        AtomicReference<JwtVerifier> jwtVerifier = new AtomicReference<>();
+        for (VerificationProvider provider : VerificationFactory.providers()) {
+            if (provider instanceof IntrospectionVerificationProvider) {
+                continue;
+            }
+            if (provider.configure(paramSupplier, jwtVerifier::set)) {
+                break;
+            }
+        }
+        return jwtVerifier.get();
+    }
+
+    @Override
+    public int priority() {
+        return 300;
+    }
+}
@@ -16,9 +16,16 @@
 package io.telicent.servlet.auth.jwt.configuration;
 
 import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.replay.JtiReplayCache;
+import io.telicent.servlet.auth.jwt.verification.replay.ReplayGuardingJwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.revocation.FileRevocationFeed;
+import io.telicent.servlet.auth.jwt.verification.revocation.RevocationCheckingJwtVerifier;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -49,19 +56,65 @@ public class VerificationFactory {
     private VerificationFactory() {
     }
 
+    /**
+     * Gets the available verification providers in priority order
+     *
+     * @return Verification providers
+     */
+    static List<VerificationProvider> providers() {
+        return Collections.unmodifiableList(PROVIDERS);
+    }
+
     /**
      * Configures a JWT Verifier in a runtime independent way
+     * <p>
+     * If the {@value ConfigurationParameters#PARAM_REVOCATION_FILE} parameter is configured then whichever verifier
+     * is configured is additionally wrapped in a {@link RevocationCheckingJwtVerifier}.  Similarly if the
+     * {@value ConfigurationParameters#PARAM_REPLAY_GUARD_ENABLED} parameter is {@code true} then it is wrapped in a
+     * {@link ReplayGuardingJwtVerifier}, with replay checks applied last so only otherwise valid tokens are recorded.
+     * </p>
      *
      * @param paramSupplier    Supplier function where configuration parameters can be obtained from
      * @param verifierConsumer Consumer function that takes the configured verifier
      */
     public static void configure(Function<String, String> paramSupplier, Consumer<JwtVerifier> verifierConsumer) {
+        Consumer<JwtVerifier> consumer =
+                withRevocationChecks(paramSupplier, withReplayGuard(paramSupplier, verifierConsumer));
         for (VerificationProvider provider : PROVIDERS) {
-            if (provider.configure(paramSupplier, verifierConsumer)) {
+            if (provider.configure(paramSupplier, consumer)) {
                 return;
             }
         }
         LOGGER.warn("Failed to configure any JWT verifier from the available providers");
     }
 
+    private static Consumer<JwtVerifier> withRevocationChecks(Function<String, String> paramSupplier,
+                                                              Consumer<JwtVerifier> verifierConsumer) {
+        String revocationFile = paramSupplier.apply(ConfigurationParameters.PARAM_REVOCATION_FILE);
+        if (StringUtils.isBlank(revocationFile)) {
+            return verifierConsumer;
+        }
+        int refreshInterval =
+                Utils.parseParameter(paramSupplier.apply(ConfigurationParameters.PARAM_REVOCATION_REFRESH_INTERVAL),
+                                     Integer::parseInt, ConfigurationParameters.DEFAULT_REVOCATION_REFRESH_INTERVAL);
+        // Enforce a minimum interval, otherwise every request would poll the revocation file
+        return verifier -> verifierConsumer.accept(
+                RevocationCheckingJwtVerifier.create(verifier, new FileRevocationFeed(Path.of(revocationFile)),
+                                                     Duration.ofSeconds(Math.max(1, refreshInterval))));
+    }
+
+    private static Consumer<JwtVerifier> withReplayGuard(Function<String, String> paramSupplier,
+                                                         Consumer<JwtVerifier> verifierConsumer) {
+        boolean enabled =
+                Utils.parseParameter(paramSupplier.apply(ConfigurationParameters.PARAM_REPLAY_GUARD_ENABLED),
+                                     Boolean::parseBoolean, false);
+        if (!enabled) {
+            return verifierConsumer;
+        }
+        int maxEntries = Utils.parseParameter(paramSupplier.apply(ConfigurationParameters.PARAM_REPLAY_MAX_ENTRIES),
+                                              Integer::parseInt, JtiReplayCache.DEFAULT_MAX_ENTRIES);
+        return verifier -> verifierConsumer.accept(
+                new ReplayGuardingJwtVerifier(verifier, new JtiReplayCache(Math.max(1, maxEntries))));
+    }
+
 }
@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.configuration.oidc;
+
+import io.telicent.servlet.auth.jwt.configuration.ConfigurationParameters;
+import io.telicent.servlet.auth.jwt.configuration.DefaultVerificationProvider;
+import io.telicent.servlet.auth.jwt.configuration.Utils;
+import io.telicent.servlet.auth.jwt.verification.IssuerRoutingJwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.JwtParsers;
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.KeyFetcher;
+import io.telicent.servlet.auth.jwt.verification.SignedJwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.jwks.CachedJwksKeyLocator;
+import io.telicent.servlet.auth.jwt.verification.jwks.KeySourceRegistry;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A verification provider that configures an {@link IssuerRoutingJwtVerifier} for the trusted issuers specified via
+ * the {@value ConfigurationParameters#PARAM_TRUSTED_ISSUERS} configuration parameter
+ * <p>
+ * Each issuer is treated as an OpenID Connect provider, so its keys are located via OpenID Connect discovery relative to
+ * the issuer, and tokens verified for an issuer are required to have that issuer.
+ * </p>
+ */
+public class MultiTenantVerificationProvider extends DefaultVerificationProvider {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MultiTenantVerificationProvider.class);
+
+    /**
+     * Supported parameters for this verification provider
+     */
+    public static final String[] MULTI_TENANT_PARAMETERS = new String[] {
+            ConfigurationParameters.PARAM_TRUSTED_ISSUERS,
+            ConfigurationParameters.PARAM_MAX_ACTIVE_ISSUERS,
+            ConfigurationParameters.PARAM_ISSUER_IDLE_TIMEOUT,
+            ConfigurationParameters.PARAM_OIDC_RETRY_INTERVAL,
+            ConfigurationParameters.PARAM_OIDC_REDISCOVERY_INTERVAL,
+            ConfigurationParameters.PARAM_JWKS_CACHE_KEYS_FOR,
+            ConfigurationParameters.PARAM_KEY_FETCH_CONNECT_TIMEOUT,
+            ConfigurationParameters.PARAM_KEY_FETCH_REQUEST_TIMEOUT,
+            ConfigurationParameters.PARAM_KEY_FETCH_MAX_ATTEMPTS,
+            ConfigurationParameters.PARAM_KEY_FETCH_BACKOFF,
+            ConfigurationParameters.PARAM_KEY_FETCH_MAX_BACKOFF,
+            ConfigurationParameters.PARAM_KEY_FETCH_CIRCUIT_FAILURES,
+            ConfigurationParameters.PARAM_KEY_FETCH_CIRCUIT_OPEN,
+            ConfigurationParameters.PARAM_KEY_FETCH_MAX_SIZE,
+            ConfigurationParameters.PARAM_KEY_FETCH_MAX_KEYS,
+            ConfigurationParameters.PARAM_ALLOWED_CLOCK_SKEW
+    };
+
+    @Override
+    public boolean configure(Function<String, String> paramSupplier, Consumer<JwtVerifier> verifierConsumer) {
+        Map<String, String> parameters =
+                DefaultVerificationProvider.prepareParameters(paramSupplier, MULTI_TENANT_PARAMETERS);
+        String rawIssuers = parameters.get(ConfigurationParameters.PARAM_TRUSTED_ISSUERS);
+        if (StringUtils.isBlank(rawIssuers)) {
+            LOGGER.info(
+                    "No relevant parameters provided to allow multi-tenant JWT verifier configuration, authentication will not be possible unless the verifier is separately configured.");
+            return false;
+        }
+
+        Integer retryInterval = Utils.parseParameter(parameters, ConfigurationParameters.PARAM_OIDC_RETRY_INTERVAL,
+                                                     Integer::parseInt,
+                                                     ConfigurationParameters.DEFAULT_OIDC_RETRY_INTERVAL);
+        Integer rediscoveryInterval =
+                Utils.parseParameter(parameters, ConfigurationParameters.PARAM_OIDC_REDISCOVERY_INTERVAL,
+                                     Integer::parseInt, ConfigurationParameters.DEFAULT_OIDC_REDISCOVERY_INTERVAL);
+        Integer cacheKeysFor = Utils.parseParameter(parameters, ConfigurationParameters.PARAM_JWKS_CACHE_KEYS_FOR,
+                                                    Integer::parseInt,
+                                                    ConfigurationParameters.DEFAULT_JWKS_CACHE_KEYS_FOR);
+        Integer maxActive = Utils.parseParameter(parameters, ConfigurationParameters.PARAM_MAX_ACTIVE_ISSUERS,
+                                                 Integer::parseInt,
+                                                 IssuerRoutingJwtVerifier.DEFAULT_MAX_ACTIVE_ISSUERS);
+        Integer idleTimeout = Utils.parseParameter(parameters, ConfigurationParameters.PARAM_ISSUER_IDLE_TIMEOUT,
+                                                   Integer::parseInt,
+                                                   ConfigurationParameters.DEFAULT_ISSUER_IDLE_TIMEOUT);
+
+        KeyFetcher.Settings fetchSettings = KeyFetcher.Settings.fromParameters(parameters);
+
+        // Precompute the factory for each issuer, the per-issuer verifiers themselves are only created upon first use
+        Map<String, Function<String, JwtVerifier>> issuers = new LinkedHashMap<>();
+        Arrays.stream(rawIssuers.split(","))
+              .map(String::trim)
+              .filter(StringUtils::isNotBlank)
+              .forEach(issuer -> issuers.put(issuer, i -> {
+                  KeySourceRegistry.Lease<CachedJwksKeyLocator> lease =
+                          KeySourceRegistry.acquireOidc(OidcVerificationProvider.prepareDiscoveryUri(i),
+                                                        Duration.ofSeconds(retryInterval),
+                                                        Duration.ofSeconds(rediscoveryInterval),
+                                                        Duration.ofMinutes(cacheKeysFor), null, null,
+                                                        fetchSettings);
+                  CachedJwksKeyLocator locator = lease.get();
+                  // NB - Evicted issuer verifiers release their key source once garbage collected
+                  return releaseWhenUnreachable(
+                          create(parameters, JwtParsers.builder().keyLocator(locator).requireIssuer(i), locator,
+                                 "issuer=" + i + ", " + SignedJwtVerifier.debugStringForLocator(locator)), lease);
+              }));
+        try {
+            IssuerRoutingJwtVerifier verifier =
+                    new IssuerRoutingJwtVerifier(issuers, maxActive, Duration.ofMinutes(idleTimeout));
+            verifierConsumer.accept(verifier);
+            LOGGER.info("Configured multi-tenant JWT verifier: {}", verifier);
+            return true;
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Failed to configure multi-tenant JWT verifier: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public int priority() {
+        return 200;
+    }
+}
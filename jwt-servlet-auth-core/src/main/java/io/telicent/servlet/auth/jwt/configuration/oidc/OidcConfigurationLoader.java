@@ -15,26 +15,37 @@
  */
 package io.telicent.servlet.auth.jwt.configuration.oidc;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.telicent.servlet.auth.jwt.verification.KeyFetcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.Objects;
 
 /**
  * A helper for loading OpenID Connect configuration from the configuration discovery endpoint
+ * <p>
+ * The configuration document is read a token at a time, subject to the maximum document size of the key fetcher.
+ * Besides the fields exposed by {@link OidcConfiguration} only top level scalar values are retained as additional
+ * configuration, array and object values, e.g. the various {@code *_supported} lists, are skipped without being
+ * materialised.
+ * </p>
  */
 public class OidcConfigurationLoader {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(OidcConfigurationLoader.class);
 
-    private final HttpClient client;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final KeyFetcher fetcher;
 
     /**
      * Creates a new OpenID Connect configuration discovery loader using the given HTTP Client
@@ -42,7 +53,18 @@ public class OidcConfigurationLoader {
      * @param httpClient HTTP Client
      */
     public OidcConfigurationLoader(HttpClient httpClient) {
-        this.client = Objects.requireNonNull(httpClient, "HTTP client cannot be null");
+        this(new KeyFetcher(Objects.requireNonNull(httpClient, "HTTP client cannot be null"),
+                            KeyFetcher.Settings.DEFAULT));
+    }
+
+    /**
+     * Creates a new OpenID Connect configuration discovery loader using the given key fetcher, which applies
+     * timeouts, retries and circuit breaking to discovery requests
+     *
+     * @param fetcher Key fetcher
+     */
+    public OidcConfigurationLoader(KeyFetcher fetcher) {
+        this.fetcher = Objects.requireNonNull(fetcher, "Key fetcher cannot be null");
     }
 
     /**
@@ -60,13 +82,14 @@ public class OidcConfigurationLoader {
     public OidcConfiguration load(URI discoveryUri) {
         try {
             // Make a GET request to obtain the OpenID Connect configuration
-            HttpRequest request = HttpRequest.newBuilder(discoveryUri).build();
-            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            HttpResponse<InputStream> response = this.fetcher.send(discoveryUri);
 
             if (response.statusCode() == 200) {
                 // Assuming an OK response parse it and extract the bits of configuration we care about
-                OidcConfiguration configuration =
-                        objectMapper.readValue(response.body(), OidcConfiguration.class);
+                OidcConfiguration configuration;
+                try (InputStream body = response.body()) {
+                    configuration = parse(body);
+                }
                 OidcRegistry.register(discoveryUri, configuration);
                 return configuration;
             } else {
@@ -79,4 +102,45 @@ public class OidcConfigurationLoader {
 
         return null;
     }
+
+    /**
+     * Parses OpenID Connect configuration from a stream
+     *
+     * @param input Input stream
+     * @return Configuration
+     * @throws IOException Thrown if the configuration cannot be read, or is not a JSON Object
+     */
+    static OidcConfiguration parse(InputStream input) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "OpenID Connect configuration must be a JSON Object");
+            }
+            OidcConfiguration configuration = new OidcConfiguration();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (value.isStructStart()) {
+                    parser.skipChildren();
+                    continue;
+                }
+                switch (name) {
+                    case "jwks_uri" -> configuration.setJwksUri(parser.getValueAsString());
+                    case "issuer" -> configuration.setIssuer(parser.getValueAsString());
+                    case "userinfo_endpoint" -> configuration.setUserinfoEndpoint(parser.getValueAsString());
+                    default -> configuration.setProperty(name, scalarValue(parser, value));
+                }
+            }
+            return configuration;
+        }
+    }
+
+    private static Object scalarValue(JsonParser parser, JsonToken value) throws IOException {
+        return switch (value) {
+            case VALUE_STRING -> parser.getText();
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getNumberValue();
+            case VALUE_TRUE -> Boolean.TRUE;
+            case VALUE_FALSE -> Boolean.FALSE;
+            default -> null;
+        };
+    }
 }
@@ -20,9 +20,10 @@ import io.telicent.servlet.auth.jwt.configuration.ConfigurationParameters;
 import io.telicent.servlet.auth.jwt.configuration.DefaultVerificationProvider;
 import io.telicent.servlet.auth.jwt.configuration.Utils;
 import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.KeyFetcher;
 import io.telicent.servlet.auth.jwt.verification.SignedJwtVerifier;
 import io.telicent.servlet.auth.jwt.verification.jwks.CachedJwksKeyLocator;
-import io.telicent.servlet.auth.jwt.verification.jwks.OidcDiscoveryLocator;
+import io.telicent.servlet.auth.jwt.verification.jwks.KeySourceRegistry;
 import org.apache.commons.lang3.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,7 +61,19 @@ public class OidcVerificationProvider extends DefaultVerificationProvider {
     public static String[] OPENID_PARAMETERS = new String[] {
             ConfigurationParameters.PARAM_OIDC_PROVIDER_URL,
             ConfigurationParameters.PARAM_OIDC_RETRY_INTERVAL,
+            ConfigurationParameters.PARAM_OIDC_REDISCOVERY_INTERVAL,
             ConfigurationParameters.PARAM_JWKS_CACHE_KEYS_FOR,
+            ConfigurationParameters.PARAM_JWKS_SNAPSHOT_FILE,
+            ConfigurationParameters.PARAM_JWKS_SNAPSHOT_MAX_AGE,
+            ConfigurationParameters.PARAM_KEY_FETCH_CONNECT_TIMEOUT,
+            ConfigurationParameters.PARAM_KEY_FETCH_REQUEST_TIMEOUT,
+            ConfigurationParameters.PARAM_KEY_FETCH_MAX_ATTEMPTS,
+            ConfigurationParameters.PARAM_KEY_FETCH_BACKOFF,
+            ConfigurationParameters.PARAM_KEY_FETCH_MAX_BACKOFF,
+            ConfigurationParameters.PARAM_KEY_FETCH_CIRCUIT_FAILURES,
+            ConfigurationParameters.PARAM_KEY_FETCH_CIRCUIT_OPEN,
+            ConfigurationParameters.PARAM_KEY_FETCH_MAX_SIZE,
+            ConfigurationParameters.PARAM_KEY_FETCH_MAX_KEYS,
             ConfigurationParameters.PARAM_ALLOWED_CLOCK_SKEW
     };
 
@@ -75,6 +88,10 @@ public class OidcVerificationProvider extends DefaultVerificationProvider {
             Integer retryInterval = Utils.parseParameter(parameters, ConfigurationParameters.PARAM_OIDC_RETRY_INTERVAL,
                                                          Integer::parseInt,
                                                          ConfigurationParameters.DEFAULT_OIDC_RETRY_INTERVAL);
+            Integer rediscoveryInterval =
+                    Utils.parseParameter(parameters, ConfigurationParameters.PARAM_OIDC_REDISCOVERY_INTERVAL,
+                                         Integer::parseInt,
+                                         ConfigurationParameters.DEFAULT_OIDC_REDISCOVERY_INTERVAL);
             Integer cacheKeysFor = Utils.parseParameter(parameters, ConfigurationParameters.PARAM_JWKS_CACHE_KEYS_FOR,
                                                         Integer::parseInt,
                                                         ConfigurationParameters.DEFAULT_JWKS_CACHE_KEYS_FOR);
@@ -83,11 +100,16 @@ public class OidcVerificationProvider extends DefaultVerificationProvider {
             LOGGER.info(
                     "Resolved raw OpenID Connect configuration discovery URI {} to {}, if this is not correct ensure your configuration provides the full URI with the {} suffix",
                     rawDiscoveryUri, discoveryUri.toString(), OidcVerificationProvider.WELL_KNOWN_OPENID_CONFIGURATION);
-            CachedJwksKeyLocator locator = new CachedJwksKeyLocator(
-                    new OidcDiscoveryLocator(discoveryUri, Duration.ofSeconds(retryInterval)),
-                    Duration.ofMinutes(cacheKeysFor));
-            verifierConsumer.accept(create(parameters, Jwts.parser().keyLocator(locator),
-                                           SignedJwtVerifier.debugStringForLocator(locator)));
+            KeySourceRegistry.Lease<CachedJwksKeyLocator> lease =
+                    KeySourceRegistry.acquireOidc(discoveryUri, Duration.ofSeconds(retryInterval),
+                                                  Duration.ofSeconds(rediscoveryInterval),
+                                                  Duration.ofMinutes(cacheKeysFor), snapshotFile(parameters),
+                                                  snapshotMaxAge(parameters),
+                                                  KeyFetcher.Settings.fromParameters(parameters));
+            CachedJwksKeyLocator locator = lease.get();
+            verifierConsumer.accept(releaseWhenUnreachable(
+                    create(parameters, Jwts.parser().keyLocator(locator), locator,
+                           SignedJwtVerifier.debugStringForLocator(locator)), lease));
             return true;
         }
         return false;
@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.errors;
+
+import java.io.Serial;
+
+/**
+ * Thrown when a token cannot currently be verified because the keys needed to verify it are still being loaded in the
+ * background
+ * <p>
+ * As with any {@link VerificationUnavailableException} authentication engines treat this as a transient condition and
+ * respond with a {@code 503 Service Unavailable} challenge rather than rejecting the token outright.
+ * </p>
+ */
+public class KeyLoadPendingException extends VerificationUnavailableException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a new exception with the given message
+     *
+     * @param message Message
+     */
+    public KeyLoadPendingException(String message) {
+        super(message);
+    }
+}
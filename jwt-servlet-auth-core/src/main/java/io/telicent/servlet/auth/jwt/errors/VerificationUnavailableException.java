@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.errors;
+
+import io.jsonwebtoken.JwtException;
+
+import java.io.Serial;
+
+/**
+ * Thrown when a token cannot currently be verified due to a transient condition on the server side, rather than
+ * because of any problem with the token itself
+ * <p>
+ * Authentication engines respond to this with a {@code 503 Service Unavailable} challenge rather than rejecting the
+ * token outright, and do not count it as a failed authentication attempt by the client.
+ * </p>
+ */
+public class VerificationUnavailableException extends JwtException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a new exception with the given message
+     *
+     * @param message Message
+     */
+    public VerificationUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.ratelimit;
+
+import io.telicent.servlet.auth.jwt.Hashing;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts failed authentication attempts per client over a sliding window, so that clients repeatedly presenting
+ * invalid tokens can be rejected cheaply without their tokens being verified
+ * <p>
+ * Clients are identified by a 64-bit fingerprint of a client key, e.g. their remote address, and their failures are
+ * held in a fixed number of preallocated slots so memory use is constant regardless of how many clients there are.
+ * The slots are split into independently locked stripes, selected by fingerprint, so that concurrent requests rarely
+ * contend.  Each slot approximates a sliding window by weighting the failure count of the previous fixed window by how
+ * much of it still overlaps the sliding window, and adding the failure count of the current fixed window.
+ * </p>
+ * <p>
+ * Where two clients map to the same slot the newer client only takes over the slot if the existing client is not
+ * currently limited, and is otherwise not tracked.  This errs on the side of never limiting a client due to another
+ * client's failures, and means limited clients cannot escape their limit by flooding the limiter with other keys.
+ * </p>
+ */
+public class FailureRateLimiter {
+
+    /**
+     * The default number of client slots
+     */
+    public static final int DEFAULT_SLOTS = 16_384;
+
+    /**
+     * The default number of stripes
+     */
+    public static final int DEFAULT_STRIPES = 64;
+
+    /**
+     * How clients are identified for the purposes of counting their failures
+     */
+    public enum ClientKey {
+        /**
+         * Clients are identified by their remote address, falling back to the fingerprint of their tokens if the
+         * runtime does not make the remote address available
+         * <p>
+         * Only safe when clients connect directly to the application, behind a reverse proxy every request has the
+         * proxy's address so one misbehaving client would cause all clients to be limited.
+         * </p>
+         */
+        ADDRESS,
+        /**
+         * Clients are identified by the fingerprint of the tokens they present
+         * <p>
+         * This only limits clients that keep presenting the same tokens, e.g. a misconfigured client holding a stale
+         * token, it does <strong>not</strong> limit a client that presents a different token on every attempt, such as
+         * a brute-force attempt.  Unlike a {@link io.telicent.servlet.auth.jwt.challenges.RejectedTokenCache} it also
+         * covers failures that might later succeed, e.g. a token whose key can't be found, which would otherwise cause
+         * repeated key loads.
+         * </p>
+         */
+        TOKEN
+    }
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final int slotMask;
+    private final int maxFailures;
+    private final long windowMillis;
+    private final ClientKey clientKey;
+    private final LongSupplier clock;
+
+    /**
+     * Creates a new limiter
+     *
+     * @param maxFailures Maximum failures permitted within the window, once reached the client is limited
+     * @param window      Sliding window over which failures are counted
+     * @param clientKey   How clients are identified
+     */
+    public FailureRateLimiter(int maxFailures, Duration window, ClientKey clientKey) {
+        this(maxFailures, window, clientKey, DEFAULT_SLOTS, DEFAULT_STRIPES, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a new limiter
+     *
+     * @param maxFailures Maximum failures permitted within the window
+     * @param window      Sliding window over which failures are counted
+     * @param clientKey   How clients are identified
+     * @param slots       Number of client slots, rounded up to a power of two
+     * @param stripes     Number of stripes, rounded up to a power of two
+     * @param clock       Clock supplying the current time in milliseconds
+     */
+    FailureRateLimiter(int maxFailures, Duration window, ClientKey clientKey, int slots, int stripes,
+                       LongSupplier clock) {
+        if (maxFailures < 1) {
+            throw new IllegalArgumentException("maxFailures must be at least 1");
+        }
+        Objects.requireNonNull(window, "Window cannot be null");
+        if (window.toMillis() < 1) {
+            throw new IllegalArgumentException("Window must be at least 1 millisecond");
+        }
+        if (slots < 1 || stripes < 1) {
+            throw new IllegalArgumentException("slots and stripes must be at least 1");
+        }
+        this.clientKey = Objects.requireNonNull(clientKey, "Client key cannot be null");
+        this.clock = Objects.requireNonNull(clock, "Clock cannot be null");
+        this.maxFailures = maxFailures;
+        this.windowMillis = window.toMillis();
+
+        int stripeCount = Integer.highestOneBit(Math.min(stripes, slots) * 2 - 1);
+        int slotsPerStripe = Integer.highestOneBit(Math.max(1, slots / stripeCount) * 2 - 1);
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe(slotsPerStripe);
+        }
+        this.stripeMask = stripeCount - 1;
+        this.slotMask = slotsPerStripe - 1;
+    }
+
+    /**
+     * Gets how clients are identified
+     *
+     * @return Client key
+     */
+    public ClientKey getClientKey() {
+        return this.clientKey;
+    }
+
+    /**
+     * Checks whether a client is currently limited
+     *
+     * @param key Client key
+     * @return True if limited, false otherwise
+     */
+    public boolean isLimited(String key) {
+        long fingerprint = fingerprint(key);
+        Stripe stripe = stripeFor(fingerprint);
+        int slot = slotFor(fingerprint);
+        long now = this.clock.getAsLong();
+        stripe.lock.lock();
+        try {
+            if (stripe.fingerprints[slot] != fingerprint) {
+                return false;
+            }
+            return estimate(stripe, slot, now) >= this.maxFailures;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Records a failed authentication attempt for a client
+     *
+     * @param key Client key
+     * @return True if the client is now limited, false otherwise
+     */
+    public boolean recordFailure(String key) {
+        long fingerprint = fingerprint(key);
+        Stripe stripe = stripeFor(fingerprint);
+        int slot = slotFor(fingerprint);
+        long now = this.clock.getAsLong();
+        stripe.lock.lock();
+        try {
+            if (stripe.fingerprints[slot] != fingerprint) {
+                if (stripe.fingerprints[slot] != 0 && estimate(stripe, slot, now) >= this.maxFailures) {
+                    // Slot belongs to a currently limited client, don't let it escape its limit
+                    return false;
+                }
+                stripe.fingerprints[slot] = fingerprint;
+                stripe.windows[slot] = now / this.windowMillis;
+                stripe.previous[slot] = 0;
+                stripe.current[slot] = 0;
+            }
+            roll(stripe, slot, now);
+            stripe.current[slot]++;
+            return estimate(stripe, slot, now) >= this.maxFailures;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private Stripe stripeFor(long fingerprint) {
+        return this.stripes[(int) (fingerprint >>> 32) & this.stripeMask];
+    }
+
+    private int slotFor(long fingerprint) {
+        return (int) fingerprint & this.slotMask;
+    }
+
+    /**
+     * Rolls a slot forward to the fixed window containing the current time, caller must hold the stripe lock
+     *
+     * @param stripe Stripe
+     * @param slot   Slot
+     * @param now    Current time in milliseconds
+     */
+    private void roll(Stripe stripe, int slot, long now) {
+        long window = now / this.windowMillis;
+        long elapsed = window - stripe.windows[slot];
+        if (elapsed == 1) {
+            stripe.previous[slot] = stripe.current[slot];
+            stripe.current[slot] = 0;
+        } else if (elapsed > 1) {
+            stripe.previous[slot] = 0;
+            stripe.current[slot] = 0;
+        }
+        if (elapsed > 0) {
+            stripe.windows[slot] = window;
+        }
+    }
+
+    /**
+     * Estimates the failures for a slot within the sliding window ending at the current time, caller must hold the
+     * stripe lock
+     *
+     * @param stripe Stripe
+     * @param slot   Slot
+     * @param now    Current time in milliseconds
+     * @return Estimated failures
+     */
+    private long estimate(Stripe stripe, int slot, long now) {
+        roll(stripe, slot, now);
+        long overlap = this.windowMillis - (now % this.windowMillis);
+        return stripe.current[slot] + (stripe.previous[slot] * overlap) / this.windowMillis;
+    }
+
+    /**
+     * Computes a non-zero 64-bit fingerprint of a client key
+     *
+     * @param key Client key
+     * @return Fingerprint
+     */
+    static long fingerprint(String key) {
+        long hash = Hashing.fingerprint(key);
+        // Zero marks an empty slot
+        return hash != 0 ? hash : 1;
+    }
+
+    @Override
+    public String toString() {
+        return "FailureRateLimiter{maxFailures=" + this.maxFailures + ", window=" + Duration.ofMillis(
+                this.windowMillis) + ", clientKey=" + this.clientKey + ", slots=" + (long) this.stripes.length * (
+                this.slotMask + 1) + "}";
+    }
+
+    /**
+     * A stripe of client slots, guarded by its own lock
+     */
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long[] fingerprints;
+        private final long[] windows;
+        private final int[] previous;
+        private final int[] current;
+
+        private Stripe(int slots) {
+            this.fingerprints = new long[slots];
+            this.windows = new long[slots];
+            this.previous = new int[slots];
+            this.current = new int[slots];
+        }
+    }
+}
@@ -56,15 +56,28 @@ public class RolesHelper {
      * @return True if they have the given role, false otherwise
      */
     public boolean isUserInRole(String role) {
+        return this.getRoles().contains(role);
+    }
+
+    /**
+     * Gets all the roles the user has
+     * <p>
+     * Roles are loaded from the JWT upon first use, callers that need to check several roles should prefer this over
+     * repeated calls to {@link #isUserInRole(String)}.
+     * </p>
+     *
+     * @return Roles, empty if no roles claim is configured or the JWT does not contain it
+     */
+    public Set<String> getRoles() {
         if (this.rolesClaim == null || this.rolesClaim.isEmpty()) {
             // No roles claim so user not considered to be in any role
-            return false;
+            return Collections.emptySet();
         }
         if (this.roles == null) {
             Object rawRoles = Utils.findClaim(this.jws, this.rolesClaim);
-            this.roles = loadRoles(rawRoles);
+            this.roles = Collections.unmodifiableSet(loadRoles(rawRoles));
         }
-        return this.roles.contains(role);
+        return this.roles;
     }
 
     /**
@@ -0,0 +1,286 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification;
+
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.security.InvalidKeyException;
+import io.jsonwebtoken.security.Jwk;
+import io.jsonwebtoken.security.JwkSet;
+import io.jsonwebtoken.security.Jwks;
+import io.jsonwebtoken.security.SecurityException;
+import io.telicent.servlet.auth.jwt.errors.KeyLoadException;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.*;
+import java.security.Key;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A key locator that loads keys from a local file, either a secret key, a public key or a JWKS file, and reloads them
+ * whenever the file changes on disk
+ * <p>
+ * The file is parsed once into an immutable in-memory key index so locating a key never involves any file I/O.  The
+ * directory containing the file is watched via a {@link WatchService} and when the file contents change, e.g. because
+ * a Kubernetes secret was remounted, the file is parsed again and the index atomically swapped.  This allows keys to be
+ * rotated without a restart.  If the changed file cannot be parsed, e.g. because it was only partially written, then
+ * the previously loaded keys remain in use until a valid file is written.
+ * </p>
+ * <p>
+ * Secret and public key files contain a single key which is used regardless of the Key ID ({@code kid}) a token
+ * declares, JWKS files are indexed by Key ID.
+ * </p>
+ */
+public class FileWatchingKeyLocator extends LocatorAdapter<Key> implements ReloadableKeyLocator, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileWatchingKeyLocator.class);
+
+    /**
+     * Parses the contents of a key file into a key index
+     */
+    @FunctionalInterface
+    private interface KeyFileParser {
+        KeyIndex parse(byte[] contents) throws KeyLoadException;
+    }
+
+    /**
+     * An immutable key index
+     *
+     * @param keys       Keys by Key ID
+     * @param defaultKey Key to use regardless of Key ID, {@code null} if keys should be located by Key ID
+     */
+    private record KeyIndex(Map<String, Key> keys, Key defaultKey) {
+    }
+
+    private final Path file;
+    private final String type;
+    private final KeyFileParser parser;
+    private final AtomicInteger reloads = new AtomicInteger(0);
+    // NB - Loads may be triggered concurrently by the watch thread and reload(), they are serialised so that older
+    //      file contents can never overwrite newer ones.  Using an explicit lock rather than synchronized since
+    //      loading reads the file and we don't want to pin virtual threads while doing so
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private volatile KeyIndex index;
+    private volatile byte[] lastContents;
+    private volatile WatchService watcher;
+    private volatile Thread watchThread;
+
+    /**
+     * Creates a locator for a secret key file
+     *
+     * @param file Secret key file
+     * @return Key locator
+     * @throws KeyLoadException Thrown if the key file cannot be loaded
+     */
+    public static FileWatchingKeyLocator forSecretKey(Path file) throws KeyLoadException {
+        return new FileWatchingKeyLocator(file, "SecretKey",
+                                          c -> new KeyIndex(Map.of(), KeyUtils.loadSecretKey(c)));
+    }
+
+    /**
+     * Creates a locator for a public key file
+     *
+     * @param algorithm Public key algorithm e.g. {@value KeyUtils#RSA}
+     * @param file      Public key file
+     * @return Key locator
+     * @throws KeyLoadException Thrown if the key file cannot be loaded
+     */
+    public static FileWatchingKeyLocator forPublicKey(String algorithm, Path file) throws KeyLoadException {
+        return new FileWatchingKeyLocator(file, "PublicKey", c -> {
+            Key key = KeyUtils.loadPublicKey(algorithm, new ByteArrayInputStream(c));
+            return new KeyIndex(Map.of(), key);
+        });
+    }
+
+    /**
+     * Creates a locator for a JWKS file
+     *
+     * @param file JWKS file
+     * @return Key locator
+     * @throws KeyLoadException Thrown if the JWKS file cannot be loaded
+     */
+    public static FileWatchingKeyLocator forJwks(Path file) throws KeyLoadException {
+        return new FileWatchingKeyLocator(file, "JWKS", c -> {
+            JwkSet jwks;
+            try {
+                jwks = Jwks.setParser().build().parse(new ByteArrayInputStream(c));
+            } catch (SecurityException e) {
+                throw new KeyLoadException("JWKS file '" + file + "' contained an invalid key set", e);
+            }
+            Map<String, Key> keys = new HashMap<>();
+            for (Jwk<?> jwk : jwks.getKeys()) {
+                if (StringUtils.isNotBlank(jwk.getId())) {
+                    keys.putIfAbsent(jwk.getId(), jwk.toKey());
+                }
+            }
+            return new KeyIndex(Map.copyOf(keys), null);
+        });
+    }
+
+    private FileWatchingKeyLocator(Path file, String type, KeyFileParser parser) throws KeyLoadException {
+        this.file = Objects.requireNonNull(file, "File cannot be null").toAbsolutePath();
+        this.type = type;
+        this.parser = parser;
+        if (!load()) {
+            throw new KeyLoadException("Unable to load " + type + " from file " + this.file);
+        }
+        startWatching();
+    }
+
+    /**
+     * Loads the file if its contents have changed since the last successful load
+     *
+     * @return True if the current keys reflect the file contents, false if the file could not be loaded
+     */
+    private boolean load() {
+        this.loadLock.lock();
+        try {
+            byte[] contents = Files.readAllBytes(this.file);
+            if (Arrays.equals(contents, this.lastContents)) {
+                return true;
+            }
+            // Parse the contents already read, rather than the file, so the keys always match the contents compared
+            KeyIndex loaded = this.parser.parse(contents);
+            // Publish the new keys before bumping the load count, which doubles as the key generation
+            this.index = loaded;
+            this.lastContents = contents;
+            this.reloads.incrementAndGet();
+            return true;
+        } catch (IOException | KeyLoadException | RuntimeException e) {
+            LOGGER.warn("Failed to load {} from file {}: {}", this.type, this.file, e.getMessage());
+            return false;
+        } finally {
+            this.loadLock.unlock();
+        }
+    }
+
+    /**
+     * Starts watching the directory containing the file for changes, if watching is not supported then the keys
+     * initially loaded continue to be used
+     */
+    private void startWatching() {
+        try {
+            WatchService service = this.file.getFileSystem().newWatchService();
+            this.file.getParent()
+                     .register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                               StandardWatchEventKinds.ENTRY_DELETE);
+            this.watcher = service;
+            this.watchThread = Thread.ofVirtual().name("key-file-watcher").start(() -> watch(service));
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.warn("Unable to watch {} file {} for changes, keys will not be reloaded: {}", this.type, this.file,
+                        e.getMessage());
+        }
+    }
+
+    private void watch(WatchService service) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = service.take();
+                // Kubernetes style secret remounts swap symlinks within the directory rather than modifying the file
+                // itself, so any change within the directory is treated as a potential change to the file, comparing
+                // contents makes this cheap when the file itself did not change
+                key.pollEvents();
+                load();
+                if (!key.reset()) {
+                    LOGGER.warn("Directory containing {} file {} is no longer accessible, keys will not be reloaded",
+                                this.type, this.file);
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped watching
+        }
+    }
+
+    /**
+     * Forces the file to be checked for changes and reloaded if necessary, normally this happens automatically
+     *
+     * @return True if the current keys reflect the file contents, false if the file could not be loaded
+     */
+    public boolean reload() {
+        return load();
+    }
+
+    /**
+     * Gets how many times keys have been (re)loaded from the file
+     *
+     * @return Load count
+     */
+    public int getLoads() {
+        return this.reloads.get();
+    }
+
+    @Override
+    public long getKeyGeneration() {
+        return this.reloads.get();
+    }
+
+    /**
+     * Indicates whether the file is being watched for changes
+     *
+     * @return True if watching, false otherwise
+     */
+    public boolean isWatching() {
+        Thread thread = this.watchThread;
+        return thread != null && thread.isAlive();
+    }
+
+    @Override
+    protected Key locate(JwsHeader header) {
+        KeyIndex current = this.index;
+        if (current.defaultKey() != null) {
+            return current.defaultKey();
+        }
+        String keyId = header.getKeyId();
+        if (StringUtils.isBlank(keyId)) {
+            throw new InvalidKeyException("JWS fails to declare a valid kid header");
+        }
+        Key key = current.keys().get(keyId);
+        if (key == null) {
+            throw new InvalidKeyException("Key ID '" + keyId + "' not present in JWKS file " + this.file);
+        }
+        return key;
+    }
+
+    /**
+     * Stops watching the file for changes, the keys most recently loaded continue to be used
+     */
+    @Override
+    public void close() {
+        WatchService service = this.watcher;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to stop watching {} file {}: {}", this.type, this.file, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FileWatchingKeyLocator{type=" + this.type + ", file=" + this.file + "}";
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.security.Jwk;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A JSON Web Token (JWT) verifier for multi-tenant deployments where each tenant has its own issuer, and thus its own
+ * keys
+ * <p>
+ * The unverified issuer ({@code iss}) claim of each token is read once and used to dispatch, via a precomputed map of
+ * the trusted issuers, to a verifier dedicated to that issuer.  Per-issuer verifiers are created lazily upon first use,
+ * and a bounded number of them are kept active with idle verifiers evicted, so the number of configured tenants has no
+ * effect on the per-request cost.  Tokens from issuers that are not configured are rejected without any attempt at
+ * verification.  Only verification creates per-issuer verifiers, checking whether a token requires a key load, or
+ * loading keys for it, only ever consults the verifiers that are already active.
+ * </p>
+ * <p>
+ * Since the issuer used for routing is unverified the per-issuer verifiers <strong>MUST</strong> only trust keys for
+ * their issuer, and <strong>SHOULD</strong> require that verified tokens have the expected issuer, otherwise a token
+ * could be routed to a tenant that is able to verify it despite claiming to be from a different issuer.
+ * </p>
+ */
+public class IssuerRoutingJwtVerifier implements KeyLoadingJwtVerifier {
+
+    /**
+     * The default maximum number of per-issuer verifiers kept active
+     */
+    public static final int DEFAULT_MAX_ACTIVE_ISSUERS = 100;
+
+    private final Map<String, Function<String, JwtVerifier>> issuers;
+    private final Cache<String, JwtVerifier> active;
+    private final int maxActiveIssuers;
+    private final Duration idleTimeout;
+    // Key generation contributed by per-issuer verifiers that have since been created or evicted
+    private final AtomicLong retiredGenerations = new AtomicLong(0);
+
+    /**
+     * Creates a new issuer routing verifier
+     *
+     * @param issuers          Map from trusted issuers to a factory that creates the verifier for that issuer
+     * @param maxActiveIssuers Maximum number of per-issuer verifiers to keep active
+     * @param idleTimeout      How long an unused per-issuer verifier is kept active for
+     */
+    public IssuerRoutingJwtVerifier(Map<String, Function<String, JwtVerifier>> issuers, int maxActiveIssuers,
+                                    Duration idleTimeout) {
+        Objects.requireNonNull(issuers, "Issuers cannot be null");
+        if (issuers.isEmpty()) {
+            throw new IllegalArgumentException("At least one issuer must be configured");
+        }
+        if (maxActiveIssuers < 1) {
+            throw new IllegalArgumentException("maxActiveIssuers must be at least 1");
+        }
+        Objects.requireNonNull(idleTimeout, "Idle timeout cannot be null");
+        if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+            throw new IllegalArgumentException("idleTimeout must be positive");
+        }
+        this.issuers = Map.copyOf(issuers);
+        this.maxActiveIssuers = maxActiveIssuers;
+        this.idleTimeout = idleTimeout;
+        this.active = Caffeine.newBuilder()
+                              .initialCapacity(Math.min(this.issuers.size(), maxActiveIssuers))
+                              .maximumSize(maxActiveIssuers)
+                              .expireAfterAccess(idleTimeout)
+                              .evictionListener((String issuer, JwtVerifier verifier, RemovalCause cause) ->
+                                                        this.retiredGenerations.addAndGet(generationOf(verifier) + 1))
+                              .build();
+    }
+
+    @Override
+    public Jws<Claims> verify(String rawJwt) {
+        return resolve(rawJwt).verify(rawJwt);
+    }
+
+    /**
+     * Resolves the verifier for the issuer of the given token
+     *
+     * @param rawJwt Raw JSON Web Token
+     * @return Verifier for the tokens issuer
+     * @throws JwtException Thrown if the token has no issuer, or its issuer is not trusted
+     */
+    private JwtVerifier resolve(String rawJwt) {
+        String issuer = issuerOf(rawJwt);
+        Function<String, JwtVerifier> factory = issuer != null ? this.issuers.get(issuer) : null;
+        if (factory == null) {
+            throw new JwtException("Token is not from a trusted issuer");
+        }
+        return this.active.get(issuer, i -> {
+            this.retiredGenerations.incrementAndGet();
+            return factory.apply(i);
+        });
+    }
+
+    /**
+     * Finds the already active verifier for the issuer of the given token, never creating one
+     *
+     * @param rawJwt Raw JSON Web Token
+     * @return Active verifier for the tokens issuer, or {@code null} if there is none
+     */
+    private JwtVerifier activeOrNull(String rawJwt) {
+        String issuer = issuerOf(rawJwt);
+        return issuer != null ? this.active.getIfPresent(issuer) : null;
+    }
+
+    private static String issuerOf(String rawJwt) {
+        UnverifiedJwt jwt = UnverifiedJwt.peek(rawJwt);
+        return jwt != null ? jwt.getIssuer() : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only verifiers that are already active are consulted, a token whose issuer has no active verifier reports that
+     * it requires no key load, its verifier is then created, and loads its keys, upon verification.  This ensures that
+     * an unverified issuer claim alone can never cause a per-issuer verifier to be created.
+     * </p>
+     */
+    @Override
+    public boolean requiresKeyLoad(String rawJwt) {
+        // Tokens from untrusted issuers will fail verification without ever loading keys
+        return activeOrNull(rawJwt) instanceof KeyLoadingJwtVerifier keyLoading && keyLoading.requiresKeyLoad(rawJwt);
+    }
+
+    @Override
+    public CompletableFuture<Void> loadKeys(String rawJwt, Executor executor) {
+        if (rawJwt == null) {
+            // Load keys for all currently active issuers
+            return CompletableFuture.allOf(this.active.asMap()
+                                                      .values()
+                                                      .stream()
+                                                      .filter(v -> v instanceof KeyLoadingJwtVerifier)
+                                                      .map(v -> ((KeyLoadingJwtVerifier) v).loadKeys(null, executor))
+                                                      .toArray(CompletableFuture[]::new));
+        }
+        if (activeOrNull(rawJwt) instanceof KeyLoadingJwtVerifier keyLoading) {
+            return keyLoading.loadKeys(rawJwt, executor);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public Collection<Jwk<?>> getLoadedKeys() {
+        List<Jwk<?>> keys = new ArrayList<>();
+        for (JwtVerifier verifier : this.active.asMap().values()) {
+            if (verifier instanceof KeyLoadingJwtVerifier keyLoading) {
+                keys.addAll(keyLoading.getLoadedKeys());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Since a per-issuer verifier that is evicted and later recreated may hold different keys the generation also
+     * advances whenever a per-issuer verifier is created or evicted.
+     * </p>
+     */
+    @Override
+    public long getKeyGeneration() {
+        long generation = this.retiredGenerations.get();
+        for (JwtVerifier verifier : this.active.asMap().values()) {
+            generation += generationOf(verifier);
+        }
+        return generation;
+    }
+
+    private static long generationOf(JwtVerifier verifier) {
+        return verifier instanceof KeyLoadingJwtVerifier keyLoading ? keyLoading.getKeyGeneration() : 0L;
+    }
+
+    /**
+     * Gets the trusted issuers
+     *
+     * @return Trusted issuers
+     */
+    public Set<String> getIssuers() {
+        return this.issuers.keySet();
+    }
+
+    /**
+     * Gets the number of per-issuer verifiers currently active
+     *
+     * @return Active issuers
+     */
+    public long getActiveIssuers() {
+        this.active.cleanUp();
+        return this.active.estimatedSize();
+    }
+
+    @Override
+    public String toString() {
+        return "IssuerRoutingJwtVerifier{issuers=" + this.issuers.size() + ", maxActiveIssuers="
+               + this.maxActiveIssuers + ", idleTimeout=" + this.idleTimeout + "}";
+    }
+}
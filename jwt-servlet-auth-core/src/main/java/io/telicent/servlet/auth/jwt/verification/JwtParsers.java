@@ -15,42 +15,29 @@
  */
 package io.telicent.servlet.auth.jwt.verification;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import io.jsonwebtoken.JwtParserBuilder;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.io.Deserializer;
-
-import java.lang.reflect.Constructor;
-import java.util.Map;
 
 /**
  * Provides JWT parser builders with a shared JSON deserializer to reduce per-parser overhead.
+ * <p>
+ * The shared deserializer is the {@link StreamingClaimsDeserializer} which decodes headers and claims directly from
+ * Jackson's streaming parser, deferring the parsing of large non-registered claims until they are accessed.
+ * </p>
  */
 public final class JwtParsers {
 
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
-    private static final Deserializer<Map<String, ?>> DESERIALIZER = buildDeserializer();
-
     private JwtParsers() {
     }
 
+    /**
+     * Creates a new JWT parser builder configured with the shared JSON deserializer
+     *
+     * @return JWT parser builder
+     */
     public static JwtParserBuilder builder() {
         JwtParserBuilder builder = Jwts.parser();
-        builder.json(DESERIALIZER);
+        builder.json(StreamingClaimsDeserializer.INSTANCE);
         return builder;
     }
-
-    @SuppressWarnings("unchecked")
-    /**
-     * This workaround is due to the runtime dependencies for jjwt-jackson in the pom file
-     */
-    private static Deserializer<Map<String, ?>> buildDeserializer() {
-        try {
-            Class<?> clazz = Class.forName("io.jsonwebtoken.jackson.io.JacksonDeserializer");
-            Constructor<?> ctor = clazz.getConstructor(ObjectMapper.class);
-            return (Deserializer<Map<String, ?>>) ctor.newInstance(OBJECT_MAPPER);
-        } catch (ReflectiveOperationException | LinkageError e) {
-            return null;
-        }
-    }
 }
@@ -0,0 +1,293 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Jwk;
+import io.jsonwebtoken.security.MacAlgorithm;
+import io.jsonwebtoken.security.SecureDigestAlgorithm;
+import io.jsonwebtoken.security.SignatureAlgorithm;
+import org.apache.commons.lang3.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.security.Key;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warms up a {@link JwtVerifier} ahead of the first real request
+ * <p>
+ * Warm-up prefetches any keys the verifier loads from remote sources, initialises the cryptographic providers for the
+ * algorithms of those keys, and exercises the verification path by verifying synthetic tokens signed with throwaway
+ * keys.  Since those tokens are never signed by a real key they can never verify successfully, verification failures
+ * during warm-up are expected and ignored.
+ * </p>
+ * <p>
+ * Warm-up runs in the background, {@link #isReady()} reports whether it has completed.  If keys cannot be prefetched,
+ * e.g. because the key server is unavailable, then warm-up is retried up to a maximum number of attempts after which
+ * it gives up, and is never reported as ready.  Warm-up only holds a weak reference to the verifier, so it is also
+ * abandoned if the verifier is discarded, e.g. because the application was redeployed, before warm-up completes.
+ * </p>
+ */
+public final class JwtWarmUp {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JwtWarmUp.class);
+
+    /**
+     * Subject used in synthetic warm-up tokens
+     */
+    public static final String SYNTHETIC_SUBJECT = "jwt-servlet-auth-warm-up";
+
+    /**
+     * Algorithms used for warm-up when the verifier does not expose the keys it verifies with
+     */
+    private static final List<String> DEFAULT_ALGORITHMS = List.of("HS256", "RS256", "ES256");
+
+    /**
+     * The default maximum number of warm-up attempts
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 60;
+
+    private final WeakReference<JwtVerifier> verifier;
+    private final String description;
+    private final int iterations;
+    private final Duration retryInterval;
+    private final int maxAttempts;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private final AtomicInteger attempts = new AtomicInteger(0);
+    private volatile Thread thread;
+
+    /**
+     * Creates a new warm-up
+     *
+     * @param verifier      Verifier to warm up
+     * @param iterations    Number of times to verify each synthetic token
+     * @param retryInterval Interval to wait before retrying if warm-up fails
+     */
+    public JwtWarmUp(JwtVerifier verifier, int iterations, Duration retryInterval) {
+        this(verifier, iterations, retryInterval, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * Creates a new warm-up
+     *
+     * @param verifier      Verifier to warm up
+     * @param iterations    Number of times to verify each synthetic token
+     * @param retryInterval Interval to wait before retrying if warm-up fails
+     * @param maxAttempts   Maximum number of warm-up attempts before giving up
+     */
+    public JwtWarmUp(JwtVerifier verifier, int iterations, Duration retryInterval, int maxAttempts) {
+        Objects.requireNonNull(verifier, "Verifier cannot be null");
+        // Only weakly reference the verifier so that warm-up never prevents a discarded verifier, and any key sources
+        // it leases, from being released
+        this.verifier = new WeakReference<>(verifier);
+        this.description = verifier.toString();
+        if (iterations < 0) {
+            throw new IllegalArgumentException("iterations cannot be negative");
+        }
+        this.iterations = iterations;
+        this.retryInterval = Objects.requireNonNull(retryInterval, "Retry interval cannot be null");
+        if (retryInterval.isNegative()) {
+            throw new IllegalArgumentException("retryInterval cannot be negative");
+        }
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Starts warm-up in the background
+     *
+     * @return This warm-up
+     */
+    public JwtWarmUp start() {
+        if (this.thread == null && !this.completion.isDone()) {
+            this.thread = Thread.ofVirtual().name("jwt-warm-up").start(this::run);
+        }
+        return this;
+    }
+
+    /**
+     * Stops any warm-up that is still in progress, a warm-up that is stopped before it was started will never start
+     */
+    public void stop() {
+        Thread current = this.thread;
+        if (current == null) {
+            this.completion.completeExceptionally(new InterruptedException("Warm-up was stopped"));
+        } else if (!this.completion.isDone()) {
+            current.interrupt();
+        }
+    }
+
+    /**
+     * Indicates whether warm-up has completed and thus the verifier is ready to verify tokens without paying any cold
+     * start costs
+     *
+     * @return True if ready, false otherwise
+     */
+    public boolean isReady() {
+        return this.completion.isDone() && !this.completion.isCompletedExceptionally();
+    }
+
+    /**
+     * Gets a future that completes when warm-up has completed
+     *
+     * @return Completion future
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return this.completion;
+    }
+
+    /**
+     * Gets how many warm-up attempts have been made
+     *
+     * @return Attempts
+     */
+    public int getAttempts() {
+        return this.attempts.get();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            if (this.verifier.refersTo(null)) {
+                LOGGER.info("JWT verifier {} was discarded before warm-up completed, abandoning warm-up",
+                            this.description);
+                this.completion.completeExceptionally(new IllegalStateException("Verifier was discarded"));
+                return;
+            }
+            try {
+                warmUp();
+                LOGGER.info("Warmed up JWT verifier {} after {} attempt(s)", this.description, this.attempts.get());
+                this.completion.complete(null);
+                return;
+            } catch (Throwable e) {
+                if (this.attempts.get() >= this.maxAttempts) {
+                    LOGGER.error("Failed to warm up JWT verifier {} after {} attempt(s), giving up: {}",
+                                 this.description, this.attempts.get(), e.getMessage());
+                    this.completion.completeExceptionally(e);
+                    return;
+                }
+                LOGGER.warn("Failed to warm up JWT verifier {}, retrying in {}: {}", this.description,
+                            this.retryInterval, e.getMessage());
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(this.retryInterval.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.completion.completeExceptionally(new InterruptedException("Warm-up was stopped"));
+    }
+
+    /**
+     * Performs a single warm-up attempt
+     */
+    void warmUp() {
+        this.attempts.incrementAndGet();
+        JwtVerifier jwtVerifier = this.verifier.get();
+        if (jwtVerifier == null) {
+            throw new IllegalStateException("Verifier was discarded");
+        }
+
+        // Prefetch keys, this is the one warm-up step that must succeed
+        Collection<Jwk<?>> keys = List.of();
+        if (jwtVerifier instanceof KeyLoadingJwtVerifier keyLoading) {
+            keyLoading.loadKeys(null, Runnable::run).join();
+            keys = keyLoading.getLoadedKeys();
+        }
+
+        // Then sign, and attempt to verify, synthetic tokens for each algorithm in use
+        Map<String, String> targets = new LinkedHashMap<>();
+        for (Jwk<?> key : keys) {
+            String algorithm = algorithmFor(key);
+            if (algorithm != null) {
+                targets.putIfAbsent(algorithm, key.getId());
+            }
+        }
+        if (targets.isEmpty()) {
+            DEFAULT_ALGORITHMS.forEach(a -> targets.put(a, null));
+        }
+        targets.forEach((algorithm, keyId) -> exercise(jwtVerifier, algorithm, keyId));
+    }
+
+    private void exercise(JwtVerifier jwtVerifier, String algorithmId, String keyId) {
+        SecureDigestAlgorithm<?, ?> algorithm = Jwts.SIG.get().get(algorithmId);
+        Key signingKey;
+        if (algorithm instanceof MacAlgorithm mac) {
+            signingKey = mac.key().build();
+        } else if (algorithm instanceof SignatureAlgorithm signature) {
+            signingKey = signature.keyPair().build().getPrivate();
+        } else {
+            return;
+        }
+        String token = Jwts.builder()
+                           .header()
+                           .keyId(keyId)
+                           .and()
+                           .subject(SYNTHETIC_SUBJECT)
+                           .expiration(Date.from(Instant.now().plusSeconds(60)))
+                           .signWith(signingKey)
+                           .compact();
+        for (int i = 0; i < this.iterations; i++) {
+            try {
+                jwtVerifier.verify(token);
+            } catch (RuntimeException e) {
+                // Expected, synthetic tokens never verify
+            }
+        }
+    }
+
+    /**
+     * Determines the signature algorithm used with a key, either from its declared {@code alg} or from its key type
+     *
+     * @param jwk Key
+     * @return Algorithm ID, or {@code null} if not determinable
+     */
+    static String algorithmFor(Jwk<?> jwk) {
+        String declared = jwk.getAlgorithm();
+        if (declared != null && Jwts.SIG.get().containsKey(declared)) {
+            return declared;
+        }
+        return switch (jwk.getType()) {
+            case "RSA" -> "RS256";
+            case "EC" -> {
+                Object curve = jwk.get("crv");
+                if (Strings.CS.equals(String.valueOf(curve), "P-384")) {
+                    yield "ES384";
+                } else if (Strings.CS.equals(String.valueOf(curve), "P-521")) {
+                    yield "ES512";
+                }
+                yield "ES256";
+            }
+            case "oct" -> "HS256";
+            case "OKP" -> "EdDSA";
+            default -> null;
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "JwtWarmUp{verifier=" + this.description + ", ready=" + isReady() + ", attempts=" + this.attempts.get()
+               + "}";
+    }
+}
@@ -0,0 +1,548 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification;
+
+import io.telicent.servlet.auth.jwt.configuration.ConfigurationParameters;
+import io.telicent.servlet.auth.jwt.configuration.Utils;
+import io.telicent.servlet.auth.jwt.verification.jwks.KeySourceRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serial;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches key material, i.e. JWKS, OpenID Connect configuration and public keys, over HTTP with protection against slow
+ * or failing identity providers
+ * <p>
+ * Every request is subject to a request timeout, and the underlying HTTP client to a connect timeout, so a hung
+ * endpoint cannot hold a request thread indefinitely.  Requests that fail with an I/O error, or a {@code 429} or
+ * {@code 5xx} status, are retried up to the configured number of attempts with capped exponential backoff and jitter.
+ * </p>
+ * <p>
+ * Each origin, i.e. scheme, host and port, has a single circuit breaker shared by all fetchers.  Once a configured
+ * number of consecutive fetches to an origin have failed the circuit opens and further fetches fail fast, without
+ * making a request, until the open duration has elapsed.  A single probe request is then permitted, closing the circuit
+ * if it succeeds or reopening it if it fails.  Callers such as the {@link io.telicent.servlet.auth.jwt.verification.jwks.CachedJwksKeyLocator} continue
+ * to use any keys they have cached while a circuit is open.
+ * </p>
+ * <p>
+ * Response bodies are limited to the configured maximum document size, a response that declares a larger
+ * {@code Content-Length} fails on its first read, and one that exceeds the limit while being read fails as soon as it
+ * does so, in both cases with a {@link DocumentTooLargeException} and without reading the remainder of the body.
+ * </p>
+ */
+public final class KeyFetcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KeyFetcher.class);
+
+    /**
+     * Circuit breakers keyed by origin, these are shared by all fetchers since the health of an origin is independent of
+     * which fetcher, and thus which key source, is making requests to it
+     */
+    private static final Map<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    private final HttpClient client;
+    private final Settings settings;
+
+    /**
+     * Creates a new fetcher using the shared HTTP client, see {@link KeySourceRegistry#httpClient(Duration)}, for the
+     * configured connect timeout
+     *
+     * @param settings Settings
+     */
+    public KeyFetcher(Settings settings) {
+        this(KeySourceRegistry.httpClient(Objects.requireNonNull(settings, "Settings cannot be null").connectTimeout()),
+             settings);
+    }
+
+    /**
+     * Creates a new fetcher using the given HTTP client, note that the connect timeout is only applied if the HTTP
+     * client was itself configured with it
+     *
+     * @param client   HTTP client
+     * @param settings Settings
+     */
+    public KeyFetcher(HttpClient client, Settings settings) {
+        this.client = Objects.requireNonNull(client, "HTTP Client cannot be null");
+        this.settings = Objects.requireNonNull(settings, "Settings cannot be null");
+    }
+
+    /**
+     * Resets the circuit breakers of all origins to closed
+     * <p>
+     * Primarily only needed for unit testing scenarios to ensure test isolation.
+     * </p>
+     */
+    public static void resetCircuitBreakers() {
+        BREAKERS.clear();
+    }
+
+    /**
+     * Gets the HTTP client used by this fetcher
+     *
+     * @return HTTP client
+     */
+    public HttpClient getClient() {
+        return this.client;
+    }
+
+    /**
+     * Gets the settings used by this fetcher
+     *
+     * @return Settings
+     */
+    public Settings getSettings() {
+        return this.settings;
+    }
+
+    /**
+     * Makes a {@code GET} request to the given URI, retrying and circuit breaking as described in the class
+     * documentation
+     * <p>
+     * The response to the final attempt is returned regardless of its status code, so callers should inspect the
+     * status code as they would for a response from {@link HttpClient#send(HttpRequest, HttpResponse.BodyHandler)}.
+     * Reading the response body fails with a {@link DocumentTooLargeException} if it exceeds the maximum document size.
+     * </p>
+     *
+     * @param uri URI
+     * @return Response
+     * @throws IOException          Thrown if every attempt failed with an I/O error, or the circuit for the URIs origin
+     *                              is open in which case a {@link CircuitOpenException} is thrown
+     * @throws InterruptedException Thrown if interrupted while making a request or waiting to retry
+     */
+    public HttpResponse<InputStream> send(URI uri) throws IOException, InterruptedException {
+        Objects.requireNonNull(uri, "URI cannot be null");
+        return send(HttpRequest.newBuilder(uri).GET());
+    }
+
+    /**
+     * Makes the given request, retrying and circuit breaking as described in the class documentation
+     * <p>
+     * The configured request timeout is applied to the request, otherwise this behaves as {@link #send(URI)} does.
+     * Only requests that are safe to repeat should be made via this method since failed attempts are retried.
+     * </p>
+     *
+     * @param requestBuilder Request builder
+     * @return Response
+     * @throws IOException          Thrown if every attempt failed with an I/O error, or the circuit for the requests
+     *                              origin is open in which case a {@link CircuitOpenException} is thrown
+     * @throws InterruptedException Thrown if interrupted while making a request or waiting to retry
+     */
+    public HttpResponse<InputStream> send(HttpRequest.Builder requestBuilder) throws IOException,
+            InterruptedException {
+        Objects.requireNonNull(requestBuilder, "Request cannot be null");
+        HttpRequest request = requestBuilder.timeout(this.settings.requestTimeout()).build();
+        URI uri = request.uri();
+        String origin = origin(uri);
+        CircuitBreaker breaker = BREAKERS.computeIfAbsent(origin, o -> new CircuitBreaker());
+        Permit permit = breaker.acquire();
+        if (permit == Permit.DENIED) {
+            throw new CircuitOpenException(origin);
+        }
+
+        HttpResponse.BodyHandler<InputStream> bodyHandler = limitedBody(this.settings.maxDocumentSize());
+        boolean completed = false;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                boolean lastAttempt = attempt >= this.settings.maxAttempts();
+                try {
+                    HttpResponse<InputStream> response =
+                            this.client.send(request, bodyHandler);
+                    if (!isRetryable(response.statusCode())) {
+                        breaker.onSuccess();
+                        completed = true;
+                        return response;
+                    } else if (lastAttempt) {
+                        breaker.onFailure(permit, this.settings, origin);
+                        completed = true;
+                        return response;
+                    }
+                    response.body().close();
+                    LOGGER.debug("Request {} of {} to {} returned HTTP status {}, retrying", attempt,
+                                 this.settings.maxAttempts(), uri, response.statusCode());
+                } catch (IOException e) {
+                    if (lastAttempt) {
+                        breaker.onFailure(permit, this.settings, origin);
+                        completed = true;
+                        throw e;
+                    }
+                    LOGGER.debug("Request {} of {} to {} failed, retrying: {}", attempt, this.settings.maxAttempts(),
+                                 uri, e.getMessage());
+                }
+                Thread.sleep(backoff(this.settings, attempt).toMillis());
+            }
+        } finally {
+            if (!completed) {
+                // Interrupted, or otherwise aborted, without an outcome so don't count this towards the circuit
+                breaker.onAbandon(permit);
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the circuit for the given URIs origin is currently open
+     *
+     * @param uri URI
+     * @return True if open, false otherwise
+     */
+    public boolean isCircuitOpen(URI uri) {
+        CircuitBreaker breaker = BREAKERS.get(origin(uri));
+        return breaker != null && breaker.isOpen();
+    }
+
+    /**
+     * Calculates the backoff before the next attempt, this is exponential in the number of attempts made so far, capped
+     * at the maximum backoff, with up to half of it randomised to avoid many clients retrying in lockstep
+     *
+     * @param settings Settings
+     * @param attempt  Number of attempts made so far
+     * @return Backoff
+     */
+    static Duration backoff(Settings settings, int attempt) {
+        long initial = settings.initialBackoff().toMillis();
+        long max = settings.maxBackoff().toMillis();
+        long exponential = initial;
+        for (int i = 1; i < attempt && exponential < max; i++) {
+            exponential *= 2;
+        }
+        exponential = Math.min(exponential, max);
+        long half = exponential / 2;
+        return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(exponential - half + 1));
+    }
+
+    /**
+     * Creates a body handler whose bodies fail once they exceed the given maximum size
+     *
+     * @param maxSize Maximum size in bytes
+     * @return Body handler
+     */
+    private static HttpResponse.BodyHandler<InputStream> limitedBody(long maxSize) {
+        return info -> {
+            long declaredSize = info.headers().firstValueAsLong("Content-Length").orElse(-1);
+            return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofInputStream(),
+                                                        body -> new LimitedInputStream(body, maxSize, declaredSize));
+        };
+    }
+
+    private static boolean isRetryable(int statusCode) {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    private static String origin(URI uri) {
+        return uri.getScheme() + "://" + uri.getRawAuthority();
+    }
+
+    @Override
+    public String toString() {
+        return "KeyFetcher{" + this.settings + "}";
+    }
+
+    /**
+     * Settings for a {@link KeyFetcher}
+     *
+     * @param connectTimeout   Connect timeout
+     * @param requestTimeout   Request timeout, applies to each attempt
+     * @param maxAttempts      Maximum number of attempts made for each fetch
+     * @param initialBackoff   Backoff before the first retry, doubled for each subsequent retry
+     * @param maxBackoff       Maximum backoff between retries
+     * @param failureThreshold Number of consecutive failed fetches to an origin after which its circuit opens
+     * @param openDuration     How long a circuit stays open before a probe request is permitted
+     * @param maxDocumentSize  Maximum size in bytes of a fetched document
+     * @param maxKeys          Maximum number of keys a fetched JWKS may contain
+     */
+    public record Settings(Duration connectTimeout, Duration requestTimeout, int maxAttempts, Duration initialBackoff,
+                           Duration maxBackoff, int failureThreshold, Duration openDuration, long maxDocumentSize,
+                           int maxKeys) {
+
+        /**
+         * Default settings
+         */
+        public static final Settings DEFAULT =
+                new Settings(Duration.ofMillis(ConfigurationParameters.DEFAULT_KEY_FETCH_CONNECT_TIMEOUT),
+                             Duration.ofMillis(ConfigurationParameters.DEFAULT_KEY_FETCH_REQUEST_TIMEOUT),
+                             ConfigurationParameters.DEFAULT_KEY_FETCH_MAX_ATTEMPTS,
+                             Duration.ofMillis(ConfigurationParameters.DEFAULT_KEY_FETCH_BACKOFF),
+                             Duration.ofMillis(ConfigurationParameters.DEFAULT_KEY_FETCH_MAX_BACKOFF),
+                             ConfigurationParameters.DEFAULT_KEY_FETCH_CIRCUIT_FAILURES,
+                             Duration.ofSeconds(ConfigurationParameters.DEFAULT_KEY_FETCH_CIRCUIT_OPEN),
+                             ConfigurationParameters.DEFAULT_KEY_FETCH_MAX_SIZE,
+                             ConfigurationParameters.DEFAULT_KEY_FETCH_MAX_KEYS);
+
+        /**
+         * Creates new settings
+         *
+         * @throws IllegalArgumentException Thrown if any of the settings are invalid
+         */
+        public Settings {
+            requirePositive(connectTimeout, "connectTimeout");
+            requirePositive(requestTimeout, "requestTimeout");
+            Objects.requireNonNull(initialBackoff, "initialBackoff cannot be null");
+            Objects.requireNonNull(maxBackoff, "maxBackoff cannot be null");
+            Objects.requireNonNull(openDuration, "openDuration cannot be null");
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1");
+            }
+            if (failureThreshold < 1) {
+                throw new IllegalArgumentException("failureThreshold must be at least 1");
+            }
+            if (initialBackoff.isNegative() || maxBackoff.isNegative() || openDuration.isNegative()) {
+                throw new IllegalArgumentException("initialBackoff, maxBackoff and openDuration cannot be negative");
+            }
+            if (maxDocumentSize < 1) {
+                throw new IllegalArgumentException("maxDocumentSize must be at least 1");
+            }
+            if (maxKeys < 1) {
+                throw new IllegalArgumentException("maxKeys must be at least 1");
+            }
+        }
+
+        private static void requirePositive(Duration duration, String name) {
+            Objects.requireNonNull(duration, name + " cannot be null");
+            if (duration.isZero() || duration.isNegative()) {
+                throw new IllegalArgumentException(name + " must be positive");
+            }
+        }
+
+        /**
+         * Creates settings from the key fetch configuration parameters, using the defaults for any not present
+         *
+         * @param parameters Parameters
+         * @return Settings
+         */
+        public static Settings fromParameters(Map<String, String> parameters) {
+            return new Settings(Duration.ofMillis(
+                    Utils.parseParameter(parameters, ConfigurationParameters.PARAM_KEY_FETCH_CONNECT_TIMEOUT,
+                                         Integer::parseInt,
+                                         ConfigurationParameters.DEFAULT_KEY_FETCH_CONNECT_TIMEOUT)),
+                                Duration.ofMillis(Utils.parseParameter(parameters,
+                                                                       ConfigurationParameters.PARAM_KEY_FETCH_REQUEST_TIMEOUT,
+                                                                       Integer::parseInt,
+                                                                       ConfigurationParameters.DEFAULT_KEY_FETCH_REQUEST_TIMEOUT)),
+                                Utils.parseParameter(parameters, ConfigurationParameters.PARAM_KEY_FETCH_MAX_ATTEMPTS,
+                                                     Integer::parseInt,
+                                                     ConfigurationParameters.DEFAULT_KEY_FETCH_MAX_ATTEMPTS),
+                                Duration.ofMillis(
+                                        Utils.parseParameter(parameters, ConfigurationParameters.PARAM_KEY_FETCH_BACKOFF,
+                                                             Integer::parseInt,
+                                                             ConfigurationParameters.DEFAULT_KEY_FETCH_BACKOFF)),
+                                Duration.ofMillis(Utils.parseParameter(parameters,
+                                                                       ConfigurationParameters.PARAM_KEY_FETCH_MAX_BACKOFF,
+                                                                       Integer::parseInt,
+                                                                       ConfigurationParameters.DEFAULT_KEY_FETCH_MAX_BACKOFF)),
+                                Utils.parseParameter(parameters,
+                                                     ConfigurationParameters.PARAM_KEY_FETCH_CIRCUIT_FAILURES,
+                                                     Integer::parseInt,
+                                                     ConfigurationParameters.DEFAULT_KEY_FETCH_CIRCUIT_FAILURES),
+                                Duration.ofSeconds(
+                                        Utils.parseParameter(parameters, ConfigurationParameters.PARAM_KEY_FETCH_CIRCUIT_OPEN,
+                                                             Integer::parseInt,
+                                                             ConfigurationParameters.DEFAULT_KEY_FETCH_CIRCUIT_OPEN)),
+                                Utils.parseParameter(parameters, ConfigurationParameters.PARAM_KEY_FETCH_MAX_SIZE,
+                                                     Long::parseLong,
+                                                     (long) ConfigurationParameters.DEFAULT_KEY_FETCH_MAX_SIZE),
+                                Utils.parseParameter(parameters, ConfigurationParameters.PARAM_KEY_FETCH_MAX_KEYS,
+                                                     Integer::parseInt,
+                                                     ConfigurationParameters.DEFAULT_KEY_FETCH_MAX_KEYS));
+        }
+    }
+
+    /**
+     * Thrown when a fetch fails fast because the circuit for its origin is open
+     */
+    public static final class CircuitOpenException extends IOException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates a new exception
+         *
+         * @param origin Origin
+         */
+        public CircuitOpenException(String origin) {
+            super("Circuit open for " + origin + " following repeated failures, failing fast until it is probed again");
+        }
+    }
+
+    /**
+     * Thrown when reading a fetched document that exceeds the maximum document size
+     */
+    public static final class DocumentTooLargeException extends IOException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates a new exception
+         *
+         * @param maxSize Maximum document size in bytes
+         */
+        public DocumentTooLargeException(long maxSize) {
+            super("Document exceeds the maximum permitted size of " + maxSize + " bytes");
+        }
+    }
+
+    /**
+     * An input stream that fails, abandoning the underlying stream, once more than a maximum number of bytes have been
+     * read from it, or immediately if the underlying stream is declared to be larger than that maximum
+     */
+    static final class LimitedInputStream extends FilterInputStream {
+        private final long maxSize;
+        private final long declaredSize;
+        private long read;
+
+        /**
+         * Creates a new limited stream
+         *
+         * @param input        Underlying stream
+         * @param maxSize      Maximum size in bytes
+         * @param declaredSize Declared size in bytes, or {@code -1} if not known
+         */
+        LimitedInputStream(InputStream input, long maxSize, long declaredSize) {
+            super(input);
+            this.maxSize = maxSize;
+            this.declaredSize = declaredSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkDeclaredSize();
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkDeclaredSize();
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            checkDeclaredSize();
+            long skipped = super.skip(n);
+            if (skipped > 0) {
+                count(skipped);
+            }
+            return skipped;
+        }
+
+        private void checkDeclaredSize() throws IOException {
+            if (this.declaredSize > this.maxSize) {
+                abandon();
+            }
+        }
+
+        private void count(long n) throws IOException {
+            this.read += n;
+            if (this.read > this.maxSize) {
+                abandon();
+            }
+        }
+
+        private void abandon() throws IOException {
+            super.close();
+            throw new DocumentTooLargeException(this.maxSize);
+        }
+    }
+
+    /**
+     * Outcomes of attempting to acquire permission to make a request from a circuit breaker
+     */
+    private enum Permit {
+        /**
+         * Circuit is open so no request may be made
+         */
+        DENIED,
+        /**
+         * Circuit is closed so a request may be made
+         */
+        PERMITTED,
+        /**
+         * Circuit was open but its open duration has elapsed so a single probe request may be made
+         */
+        PROBE
+    }
+
+    /**
+     * A lock-free circuit breaker for a single origin
+     */
+    private static final class CircuitBreaker {
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicBoolean probing = new AtomicBoolean();
+        // NB - Zero means the circuit is closed
+        private volatile long openUntil = 0;
+
+        private boolean isOpen() {
+            return this.openUntil != 0;
+        }
+
+        private Permit acquire() {
+            long until = this.openUntil;
+            if (until == 0) {
+                return Permit.PERMITTED;
+            } else if (System.currentTimeMillis() < until) {
+                return Permit.DENIED;
+            }
+            return this.probing.compareAndSet(false, true) ? Permit.PROBE : Permit.DENIED;
+        }
+
+        private void onSuccess() {
+            this.failures.set(0);
+            this.openUntil = 0;
+            this.probing.set(false);
+        }
+
+        private void onFailure(Permit permit, Settings settings, String origin) {
+            int failed = this.failures.incrementAndGet();
+            if (permit == Permit.PROBE || failed >= settings.failureThreshold()) {
+                if (permit == Permit.PROBE || !isOpen()) {
+                    LOGGER.warn("Opening circuit for {} for {} following {} consecutive failed requests", origin,
+                                settings.openDuration(), failed);
+                }
+                this.openUntil = Math.max(1, System.currentTimeMillis() + settings.openDuration().toMillis());
+                if (permit == Permit.PROBE) {
+                    this.probing.set(false);
+                }
+            }
+        }
+
+        private void onAbandon(Permit permit) {
+            if (permit == Permit.PROBE) {
+                this.probing.set(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification;
+
+import io.jsonwebtoken.security.Jwk;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link JwtVerifier} whose verification may need to load keys from a potentially slow source, e.g. a remote JWKS
+ * URL, and which allows callers to determine this ahead of time and perform that load off the request thread
+ */
+public interface KeyLoadingJwtVerifier extends JwtVerifier {
+
+    /**
+     * Determines whether verifying the given token would require loading keys, i.e. whether the key it references is
+     * not currently available locally
+     * <p>
+     * This <strong>MUST</strong> be cheap to call and <strong>MUST NOT</strong> block.
+     * </p>
+     *
+     * @param rawJwt Raw JSON Web Token
+     * @return True if verifying the token would require a key load, false otherwise
+     */
+    boolean requiresKeyLoad(String rawJwt);
+
+    /**
+     * Loads the keys needed to verify the given token using the given executor
+     * <p>
+     * Implementations should coalesce concurrent loads so that many callers waiting on the same keys only result in a
+     * single load.
+     * </p>
+     *
+     * @param rawJwt   Raw JSON Web Token, or {@code null} to load all available keys e.g. when warming up
+     * @param executor Executor on which any blocking work should be performed
+     * @return Future that completes when the keys have been loaded, or completes exceptionally if the load failed
+     */
+    CompletableFuture<Void> loadKeys(String rawJwt, Executor executor);
+
+    /**
+     * Gets the keys that are currently loaded, this never triggers a load
+     * <p>
+     * Used by {@link JwtWarmUp} to exercise verification against the real keys.
+     * </p>
+     *
+     * @return Loaded keys
+     */
+    default Collection<Jwk<?>> getLoadedKeys() {
+        return List.of();
+    }
+
+    /**
+     * Gets the current generation of the keys this verifier uses, see {@link ReloadableKeyLocator#getKeyGeneration()}
+     * <p>
+     * Used by {@link io.telicent.servlet.auth.jwt.challenges.RejectedTokenCache} so that signature failures are only
+     * remembered for as long as the keys that produced them remain in use.  Verifiers whose keys never change may use
+     * the default of {@code 0}.
+     * </p>
+     *
+     * @return Key generation
+     */
+    default long getKeyGeneration() {
+        return 0L;
+    }
+}
@@ -15,6 +15,12 @@
  */
 package io.telicent.servlet.auth.jwt.verification;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import io.jsonwebtoken.io.DeserializationException;
+import io.jsonwebtoken.io.AbstractDeserializer;
 import io.jsonwebtoken.security.*;
 import io.jsonwebtoken.security.SecurityException;
 import io.telicent.servlet.auth.jwt.errors.KeyLoadException;
@@ -26,7 +32,6 @@ import javax.crypto.SecretKey;
 import java.io.*;
 import java.net.URI;
 import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -34,8 +39,7 @@ import java.security.Key;
 import java.security.KeyFactory;
 import java.security.PublicKey;
 import java.security.spec.X509EncodedKeySpec;
-import java.util.Base64;
-import java.util.List;
+import java.util.*;
 import java.util.stream.Collectors;
 
 /**
@@ -52,6 +56,17 @@ public class KeyUtils {
      */
     public static final String EC = "EC";
 
+    /**
+     * The JWK parameters retained when parsing a fetched JWKS, these are the parameters needed to construct public and
+     * symmetric verification keys, to select them by ID, algorithm and intended use, and the X.509 certificate
+     * parameters that bind them to a certificate
+     */
+    private static final Set<String> RETAINED_JWK_PARAMETERS =
+            Set.of("kty", "kid", "use", "key_ops", "alg", "n", "e", "crv", "x", "y", "k", "x5c", "x5t", "x5t#S256",
+                   "x5u");
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
     private KeyUtils() {
     }
 
@@ -215,6 +230,10 @@ public class KeyUtils {
 
     /**
      * Loads a JWKS from an HTTP URI
+     * <p>
+     * Unlike {@link #fetchJwks(URI, KeyFetcher)} all the parameters of each key are retained, so any private keys in
+     * the JWKS are returned as such.
+     * </p>
      *
      * @param jwksURI HTTP URI
      * @param client  HTTP Client
@@ -222,26 +241,58 @@ public class KeyUtils {
      * @throws KeyLoadException Thrown if the JWKS cannot be loaded successfully
      */
     public static JwkSet loadJwks(URI jwksURI, HttpClient client) throws KeyLoadException {
+        if (client == null) {
+            throw new KeyLoadException("A HTTP Client must be provided to use when loading the JWKS");
+        }
+        return fetchJwks(jwksURI, new KeyFetcher(client, KeyFetcher.Settings.DEFAULT), false);
+    }
+
+    /**
+     * Loads a JWKS from an HTTP URI, applying the timeouts, retries, circuit breaking and limits of the given key
+     * fetcher, and retaining only the parameters needed for verification as described for
+     * {@link #parseJwks(InputStream, int)}
+     *
+     * @param jwksURI HTTP URI
+     * @param fetcher Key fetcher
+     * @return JWKS
+     * @throws KeyLoadException Thrown if the JWKS cannot be loaded successfully
+     */
+    public static JwkSet fetchJwks(URI jwksURI, KeyFetcher fetcher) throws KeyLoadException {
+        return fetchJwks(jwksURI, fetcher, true);
+    }
+
+    /**
+     * Loads a JWKS from an HTTP URI
+     *
+     * @param jwksURI          HTTP URI
+     * @param fetcher          Key fetcher
+     * @param verificationOnly Whether to retain only the parameters needed for verification
+     * @return JWKS
+     * @throws KeyLoadException Thrown if the JWKS cannot be loaded successfully
+     */
+    private static JwkSet fetchJwks(URI jwksURI, KeyFetcher fetcher, boolean verificationOnly) throws
+            KeyLoadException {
         if (jwksURI == null) {
             throw new KeyLoadException("JWKS URI was not valid");
         }
-        if (client == null) {
-            throw new KeyLoadException("A HTTP Client must be provided to use when loading the JWKS");
+        if (fetcher == null) {
+            throw new KeyLoadException("A Key Fetcher must be provided to use when loading the JWKS");
         }
         if (!Strings.CS.equalsAny(jwksURI.getScheme(), "http", "https")) {
             throw new KeyLoadException("JWKS URI must use http/https scheme");
         }
-        HttpRequest request = HttpRequest.newBuilder(jwksURI).GET().build();
         try {
-            HttpResponse<InputStream> response =
-                    client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            HttpResponse<InputStream> response = fetcher.send(jwksURI);
             // For any HTTP error report the error code specifically as that aids debugging
             if (response.statusCode() >= 400) {
                 throw new KeyLoadException("JWKS URI '" + jwksURI + "' returned a HTTP error code (" + response.statusCode() +")");
             }
 
             // For any HTTP success/redirect status attempt to parse the body
-            return Jwks.setParser().build().parse(response.body());
+            try (InputStream body = response.body()) {
+                return verificationOnly ? parseJwks(body, fetcher.getSettings().maxKeys()) :
+                       Jwks.setParser().build().parse(body);
+            }
         } catch (SecurityException e) {
             throw new KeyLoadException("JWKS URI " + jwksURI + " returned an invalid key set: " + e.getMessage());
         } catch (IOException e) {
@@ -253,6 +304,139 @@ public class KeyUtils {
         }
     }
 
+    /**
+     * Parses a JWKS from a stream, retaining only the parameters needed for verification
+     * <p>
+     * The JWKS is read a token at a time, the parameters of each key that are needed to construct public and symmetric
+     * verification keys, and any X.509 certificate parameters, are retained, and everything else, including any
+     * private key parameters and other top level members, is skipped without being materialised.  Parsing is abandoned
+     * as soon as the JWKS is found to contain more than the maximum number of keys.  The retained parameters are handed
+     * directly to the JWKS parser, so keys that are unsupported or malformed are ignored exactly as they would
+     * otherwise be.
+     * </p>
+     *
+     * @param input   Input stream
+     * @param maxKeys Maximum number of keys permitted
+     * @return JWKS
+     * @throws IOException       Thrown if the JWKS cannot be read, or contains more than the maximum number of keys
+     * @throws SecurityException Thrown if the JWKS is not valid JSON or not a valid key set
+     */
+    public static JwkSet parseJwks(InputStream input, int maxKeys) throws IOException {
+        try {
+            return Jwks.setParser().json(new RetainingJwksDeserializer(maxKeys)).build().parse(input);
+        } catch (MalformedKeySetException e) {
+            // Read failures are reported as such rather than as a malformed key set
+            if (e.getCause() instanceof DeserializationException d && d.getCause() instanceof IOException readFailure
+                && !(readFailure instanceof JsonProcessingException)) {
+                throw readFailure;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A JWKS deserializer that streams the JWKS, retaining only {@link #RETAINED_JWK_PARAMETERS} of each key
+     */
+    private static final class RetainingJwksDeserializer extends AbstractDeserializer<Map<String, ?>> {
+        private final int maxKeys;
+
+        private RetainingJwksDeserializer(int maxKeys) {
+            this.maxKeys = maxKeys;
+        }
+
+        @Override
+        protected Map<String, ?> doDeserialize(Reader reader) throws IOException {
+            try (JsonParser parser = JSON_FACTORY.createParser(reader)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new DeserializationException("JWKS must be a JSON Object");
+                }
+                Map<String, Object> jwks = new LinkedHashMap<>();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if ("keys".equals(name) && value == JsonToken.START_ARRAY) {
+                        List<Object> keys = new ArrayList<>();
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            if (keys.size() == this.maxKeys) {
+                                throw new IOException(
+                                        "JWKS contains more than the maximum of " + this.maxKeys + " keys");
+                            }
+                            keys.add(readRetainedParameters(parser));
+                        }
+                        jwks.put(name, keys);
+                    } else if ("keys".equals(name)) {
+                        // Not a valid key set, retain as-is so it is rejected in the usual way
+                        jwks.put(name, readValue(parser));
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                return jwks;
+            } catch (JsonProcessingException e) {
+                throw new DeserializationException("JWKS is not valid JSON: " + e.getOriginalMessage(), e);
+            }
+        }
+
+        /**
+         * Reads the retained parameters of a single key, anything other than a JSON Object is replaced with an empty
+         * key so that it is ignored in the same way as any other malformed key
+         *
+         * @param parser Parser positioned at the start of the key
+         * @return Retained parameters
+         * @throws IOException Thrown if the key cannot be read
+         */
+        private static Map<String, Object> readRetainedParameters(JsonParser parser) throws IOException {
+            Map<String, Object> key = new LinkedHashMap<>();
+            if (parser.currentToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    parser.nextToken();
+                    if (RETAINED_JWK_PARAMETERS.contains(name)) {
+                        key.put(name, readValue(parser));
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+            return key;
+        }
+
+        /**
+         * Reads the JSON value the parser is positioned at
+         *
+         * @param parser Parser
+         * @return Value
+         * @throws IOException Thrown if the value cannot be read
+         */
+        private static Object readValue(JsonParser parser) throws IOException {
+            return switch (parser.currentToken()) {
+                case START_OBJECT -> {
+                    Map<String, Object> object = new LinkedHashMap<>();
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String name = parser.currentName();
+                        parser.nextToken();
+                        object.put(name, readValue(parser));
+                    }
+                    yield object;
+                }
+                case START_ARRAY -> {
+                    List<Object> array = new ArrayList<>();
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        array.add(readValue(parser));
+                    }
+                    yield array;
+                }
+                case VALUE_STRING -> parser.getText();
+                case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getNumberValue();
+                case VALUE_TRUE -> Boolean.TRUE;
+                case VALUE_FALSE -> Boolean.FALSE;
+                default -> null;
+            };
+        }
+    }
+
     /**
      * Attempts to decode a potential Base64 encoded byte sequence.
      * <p>
@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification;
+
+/**
+ * A key locator whose keys may be replaced at runtime, e.g. because a key file was reloaded, such that a token whose
+ * signature failed verification against its previous keys could verify against its new keys
+ */
+public interface ReloadableKeyLocator {
+
+    /**
+     * Gets the current key generation, this changes whenever the keys this locator holds change
+     * <p>
+     * Implementations <strong>MUST</strong> publish new keys before changing the generation, so that a caller that
+     * observes a generation before verifying a token never verifies it against keys older than that generation.  This
+     * <strong>MUST</strong> be cheap to call and <strong>MUST NOT</strong> block.
+     * </p>
+     *
+     * @return Key generation
+     */
+    long getKeyGeneration();
+}
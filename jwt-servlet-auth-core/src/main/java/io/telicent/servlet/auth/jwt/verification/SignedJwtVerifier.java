@@ -16,18 +16,24 @@
 package io.telicent.servlet.auth.jwt.verification;
 
 import io.jsonwebtoken.*;
+import io.jsonwebtoken.security.Jwk;
 import io.jsonwebtoken.security.Jwks;
+import io.telicent.servlet.auth.jwt.verification.jwks.CachedJwksKeyLocator;
 
 import javax.crypto.SecretKey;
 import java.security.Key;
 import java.security.PublicKey;
+import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * A JSON Web Token (JWT) verifier that verifies that the JWT is cryptographically signed and thus has not been tampered
  * with
  */
-public class SignedJwtVerifier implements JwtVerifier {
+public class SignedJwtVerifier implements KeyLoadingJwtVerifier {
 
     /**
      * The default debug string used when a secret key is configured
@@ -59,6 +65,7 @@ public class SignedJwtVerifier implements JwtVerifier {
 
 
     private final JwtParser parser;
+    private final Locator<Key> locator;
     private final String debugString;
 
     /**
@@ -77,7 +84,23 @@ public class SignedJwtVerifier implements JwtVerifier {
      * @param debugString Optional debug string describing the parser configuration
      */
     public SignedJwtVerifier(JwtParser parser, String debugString) {
+        this(parser, null, debugString);
+    }
+
+    /**
+     * Creates a new verifier
+     * <p>
+     * Providing the key locator the parser was configured with allows this verifier to report whether verifying a
+     * token would require loading keys, see {@link #requiresKeyLoad(String)}.
+     * </p>
+     *
+     * @param parser      A JWT parser
+     * @param locator     Key locator the parser was configured with, may be {@code null}
+     * @param debugString Optional debug string describing the parser configuration
+     */
+    public SignedJwtVerifier(JwtParser parser, Locator<Key> locator, String debugString) {
         this.parser = Objects.requireNonNull(parser, "Parser cannot be null");
+        this.locator = locator;
         this.debugString = String.format("%s{%s}", this.getClass().getSimpleName(), debugString);
     }
 
@@ -106,7 +129,7 @@ public class SignedJwtVerifier implements JwtVerifier {
      * @param locator Key locator
      */
     public SignedJwtVerifier(Locator<Key> locator) {
-        this(JwtParsers.builder().keyLocator(locator).build(),
+        this(JwtParsers.builder().keyLocator(locator).build(), locator,
              debugStringForLocator(locator));
     }
 
@@ -116,6 +139,37 @@ public class SignedJwtVerifier implements JwtVerifier {
         return this.parser.parseSignedClaims(rawJwt);
     }
 
+    @Override
+    public boolean requiresKeyLoad(String rawJwt) {
+        if (this.locator instanceof CachedJwksKeyLocator cached) {
+            UnverifiedJwt jwt = UnverifiedJwt.peek(rawJwt);
+            // Tokens without a parseable header or Key ID will fail verification without ever loading keys
+            return jwt != null && jwt.getKeyId() != null && !cached.isCached(jwt.getKeyId());
+        }
+        return false;
+    }
+
+    @Override
+    public CompletableFuture<Void> loadKeys(String rawJwt, Executor executor) {
+        if (this.locator instanceof CachedJwksKeyLocator cached) {
+            return cached.refreshAsync(executor);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public Collection<Jwk<?>> getLoadedKeys() {
+        if (this.locator instanceof CachedJwksKeyLocator cached) {
+            return cached.getCachedKeys();
+        }
+        return List.of();
+    }
+
+    @Override
+    public long getKeyGeneration() {
+        return this.locator instanceof ReloadableKeyLocator reloadable ? reloadable.getKeyGeneration() : 0L;
+    }
+
     @Override
     public String toString() {
         return this.debugString;
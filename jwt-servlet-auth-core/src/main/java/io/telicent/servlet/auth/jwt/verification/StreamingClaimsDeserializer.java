@@ -0,0 +1,284 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.jsonwebtoken.io.AbstractDeserializer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * A JSON deserializer for JWT headers and claims built directly upon Jackson's streaming parser
+ * <p>
+ * Unlike the generic Jackson deserializer, which data binds the entire document into a tree of maps and lists, this
+ * reads the top level JSON object a token at a time.  The registered JWT time claims ({@code exp}, {@code nbf} and
+ * {@code iat}) are decoded directly to {@code long} values, and scalar values are decoded as they are encountered.
+ * Object and array values of any other claims, which for tokens from providers like Keycloak and Entra ID can make up
+ * the bulk of the payload (e.g. {@code resource_access} and {@code groups}), are only tokenised to validate them and
+ * are retained as slices of the raw JSON.  These are exposed as {@link Map} and {@link List} instances that parse
+ * their slice the first time they are accessed, so claims that are never inspected are never materialised.
+ * </p>
+ * <p>
+ * Values are decoded to the same types as the generic Jackson deserializer, i.e. {@link String}, {@link Boolean},
+ * {@link Integer}/{@link Long}/{@link java.math.BigInteger}, {@link Double}, {@link Map} and {@link List}, with the
+ * exception of the registered time claims which are always {@link Long}.  Content following the top level JSON object
+ * is rejected.
+ * </p>
+ * <p>
+ * Instances are stateless and thread-safe, and need no reflection or data binding configuration to construct.
+ * </p>
+ */
+public final class StreamingClaimsDeserializer extends AbstractDeserializer<Map<String, ?>> {
+
+    /**
+     * Shared instance
+     */
+    public static final StreamingClaimsDeserializer INSTANCE = new StreamingClaimsDeserializer();
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final Set<String> TIME_CLAIMS = Set.of("exp", "nbf", "iat");
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    private StreamingClaimsDeserializer() {
+    }
+
+    @Override
+    protected Map<String, ?> doDeserialize(Reader reader) throws Exception {
+        char[] json = readFully(reader);
+        try (JsonParser parser = JSON_FACTORY.createParser(json, 0, json.length)) {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                return null;
+            }
+            if (token != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON Object but found " + token);
+            }
+            Map<String, Object> claims = new LinkedHashMap<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                claims.put(name, readClaim(parser, json, name));
+            }
+            if (parser.nextToken() != null) {
+                throw new JsonParseException(parser, "Unexpected content after the JSON Object");
+            }
+            return claims;
+        }
+    }
+
+    /**
+     * Reads a top level claim value, deferring the parsing of object and array values of non-time claims
+     *
+     * @param parser Parser positioned on the claims field name
+     * @param json   Raw JSON
+     * @param name   Claim name
+     * @return Claim value
+     * @throws IOException Thrown if the JSON is malformed
+     */
+    private static Object readClaim(JsonParser parser, char[] json, String name) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+            int start = (int) parser.currentTokenLocation().getCharOffset();
+            parser.skipChildren();
+            int end = (int) parser.currentLocation().getCharOffset();
+            return token == JsonToken.START_OBJECT ? new LazyJsonObject(json, start, end) :
+                   new LazyJsonArray(json, start, end);
+        }
+        if (token == JsonToken.VALUE_NUMBER_INT && TIME_CLAIMS.contains(name)
+            && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+            return parser.getLongValue();
+        }
+        return readValue(parser, token);
+    }
+
+    /**
+     * Reads a JSON value eagerly
+     *
+     * @param parser Parser
+     * @param token  Current token, the first token of the value
+     * @return Value
+     * @throws IOException Thrown if the JSON is malformed
+     */
+    private static Object readValue(JsonParser parser, JsonToken token) throws IOException {
+        return switch (token) {
+            case START_OBJECT -> {
+                Map<String, Object> map = new LinkedHashMap<>();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    map.put(name, readValue(parser, parser.nextToken()));
+                }
+                yield map;
+            }
+            case START_ARRAY -> {
+                List<Object> list = new ArrayList<>();
+                JsonToken next;
+                while ((next = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    list.add(readValue(parser, next));
+                }
+                yield list;
+            }
+            case VALUE_STRING -> parser.getText();
+            case VALUE_NUMBER_INT -> parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT -> parser.getDoubleValue();
+            case VALUE_TRUE -> Boolean.TRUE;
+            case VALUE_FALSE -> Boolean.FALSE;
+            case VALUE_NULL -> null;
+            default -> throw new JsonParseException(parser, "Unexpected JSON token " + token);
+        };
+    }
+
+    /**
+     * Parses a slice of raw JSON that is already known to be well-formed
+     *
+     * @param json  Raw JSON
+     * @param start Start offset of the slice
+     * @param end   End offset of the slice
+     * @return Parsed value
+     */
+    private static Object parseSlice(char[] json, int start, int end) {
+        try (JsonParser parser = JSON_FACTORY.createParser(json, start, end - start)) {
+            return readValue(parser, parser.nextToken());
+        } catch (IOException e) {
+            // Can't happen since the slice was already tokenised successfully when the claims were first read
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static char[] readFully(Reader reader) throws IOException {
+        char[] buffer = new char[INITIAL_BUFFER_SIZE];
+        int length = 0;
+        int read;
+        while ((read = reader.read(buffer, length, buffer.length - length)) != EOF) {
+            length += read;
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * A JSON object claim that is parsed from its raw JSON slice upon first access
+     */
+    private static final class LazyJsonObject extends AbstractMap<String, Object> {
+        private final char[] json;
+        private final int start;
+        private final int end;
+        private volatile Map<String, Object> value;
+
+        private LazyJsonObject(char[] json, int start, int end) {
+            this.json = json;
+            this.start = start;
+            this.end = end;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<String, Object> value() {
+            Map<String, Object> parsed = this.value;
+            if (parsed == null) {
+                parsed = (Map<String, Object>) parseSlice(this.json, this.start, this.end);
+                this.value = parsed;
+            }
+            return parsed;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return value().entrySet();
+        }
+
+        @Override
+        public Object get(Object key) {
+            return value().get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return value().containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return value().size();
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            return value().put(key, value);
+        }
+    }
+
+    /**
+     * A JSON array claim that is parsed from its raw JSON slice upon first access
+     */
+    private static final class LazyJsonArray extends AbstractList<Object> implements RandomAccess {
+        private final char[] json;
+        private final int start;
+        private final int end;
+        private volatile List<Object> value;
+
+        private LazyJsonArray(char[] json, int start, int end) {
+            this.json = json;
+            this.start = start;
+            this.end = end;
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<Object> value() {
+            List<Object> parsed = this.value;
+            if (parsed == null) {
+                parsed = (List<Object>) parseSlice(this.json, this.start, this.end);
+                this.value = parsed;
+            }
+            return parsed;
+        }
+
+        @Override
+        public Object get(int index) {
+            return value().get(index);
+        }
+
+        @Override
+        public int size() {
+            return value().size();
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            return value().iterator();
+        }
+
+        @Override
+        public Object set(int index, Object element) {
+            return value().set(index, element);
+        }
+
+        @Override
+        public void add(int index, Object element) {
+            value().add(index, element);
+        }
+
+        @Override
+        public Object remove(int index) {
+            return value().remove(index);
+        }
+    }
+}
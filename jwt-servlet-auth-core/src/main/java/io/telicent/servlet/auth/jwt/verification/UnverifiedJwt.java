@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Provides access to selected header fields, and the issuer claim, of a JSON Web Token (JWT) <strong>without</strong>
+ * verifying it
+ * <p>
+ * This is intended purely for making cheap routing/caching decisions ahead of verification, e.g. determining whether
+ * the key a token references is already available.  Nothing obtained from this class should ever be trusted for
+ * authentication purposes.
+ * </p>
+ */
+public final class UnverifiedJwt {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JsonFactory JSON_FACTORY = MAPPER.getFactory();
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {
+    };
+
+    private final Map<String, Object> header;
+    private final String rawJwt;
+    private final int headerEnd;
+    private volatile String issuer;
+    private volatile boolean issuerRead;
+
+    private UnverifiedJwt(Map<String, Object> header, String rawJwt, int headerEnd) {
+        this.header = header;
+        this.rawJwt = rawJwt;
+        this.headerEnd = headerEnd;
+    }
+
+    /**
+     * Peeks at the header of the given raw JWT without verifying it
+     *
+     * @param rawJwt Raw JSON Web Token
+     * @return Unverified JWT, or {@code null} if the value does not have a parseable JWT header
+     */
+    public static UnverifiedJwt peek(String rawJwt) {
+        if (StringUtils.isBlank(rawJwt)) {
+            return null;
+        }
+        int headerEnd = rawJwt.indexOf('.');
+        if (headerEnd <= 0) {
+            return null;
+        }
+        try {
+            byte[] headerBytes = Base64.getUrlDecoder().decode(rawJwt.substring(0, headerEnd));
+            return new UnverifiedJwt(MAPPER.readValue(headerBytes, MAP_TYPE), rawJwt, headerEnd);
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the Key ID ({@code kid}) header, if present
+     *
+     * @return Key ID, or {@code null} if not present
+     */
+    public String getKeyId() {
+        return getHeader("kid");
+    }
+
+    /**
+     * Gets the algorithm ({@code alg}) header, if present
+     *
+     * @return Algorithm, or {@code null} if not present
+     */
+    public String getAlgorithm() {
+        return getHeader("alg");
+    }
+
+    /**
+     * Gets the issuer ({@code iss}) claim, if present
+     * <p>
+     * Unlike the header fields the payload is only decoded upon the first call to this method, and then only read as
+     * far as the issuer claim, the remaining claims are never parsed.  For tokens whose payload is not a JSON object,
+     * e.g. encrypted tokens, this always returns {@code null}.
+     * </p>
+     *
+     * @return Issuer, or {@code null} if not present
+     */
+    public String getIssuer() {
+        if (!this.issuerRead) {
+            this.issuer = readIssuer();
+            this.issuerRead = true;
+        }
+        return this.issuer;
+    }
+
+    private String getHeader(String name) {
+        return this.header.get(name) instanceof String value ? value : null;
+    }
+
+    private String readIssuer() {
+        int payloadEnd = this.rawJwt.indexOf('.', this.headerEnd + 1);
+        if (payloadEnd <= this.headerEnd + 1) {
+            return null;
+        }
+        try {
+            byte[] payloadBytes = Base64.getUrlDecoder().decode(this.rawJwt.substring(this.headerEnd + 1, payloadEnd));
+            try (JsonParser parser = JSON_FACTORY.createParser(payloadBytes)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    return null;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if ("iss".equals(name)) {
+                        return value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                    }
+                    parser.skipChildren();
+                }
+            }
+        } catch (Throwable e) {
+            // Not a plain JSON payload, treat as having no issuer
+        }
+        return null;
+    }
+}
@@ -0,0 +1,310 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.bulk;
+
+import io.jsonwebtoken.*;
+import io.jsonwebtoken.security.KeyException;
+import io.jsonwebtoken.security.SignatureException;
+import io.telicent.servlet.auth.jwt.JwtHttpConstants;
+import io.telicent.servlet.auth.jwt.errors.KeyLoadPendingException;
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.UnverifiedJwt;
+import org.apache.commons.lang3.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Serial;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Verifies large numbers of tokens offline, e.g. to audit a captured set of tokens against a new key configuration
+ * before rolling it out
+ * <p>
+ * Tokens are streamed from the input one per line, blank lines and lines starting with {@code #} are skipped and an
+ * optional {@code Bearer} prefix is stripped.  Tokens are grouped into batches which are verified in parallel on a
+ * dedicated {@link ForkJoinPool}, with each batch recursively split across the pool's workers.  Only a bounded number
+ * of batches are ever in-flight at once so memory usage is independent of the size of the input, and batches are
+ * written out in input order as soon as they complete.
+ * </p>
+ * <p>
+ * The output contains one tab separated line per token, see {@link TokenOutcome#toTabSeparated()}, the tokens
+ * themselves are never written to the output.
+ * </p>
+ */
+public class BulkTokenVerifier {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkTokenVerifier.class);
+
+    /**
+     * Default number of tokens per batch
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1_024;
+
+    /**
+     * Header line written at the start of the output
+     */
+    public static final String OUTPUT_HEADER = "# line\toutcome\tkid\tsubject\tdetail";
+
+    /**
+     * Batches smaller than this are verified sequentially rather than split further
+     */
+    static final int SEQUENTIAL_THRESHOLD = 32;
+
+    private static final long PROGRESS_INTERVAL = 100_000;
+
+    private final JwtVerifier verifier;
+    private final int parallelism;
+    private final int batchSize;
+
+    /**
+     * Creates a new bulk verifier that uses all available processors
+     *
+     * @param verifier JWT Verifier
+     */
+    public BulkTokenVerifier(JwtVerifier verifier) {
+        this(verifier, Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a new bulk verifier
+     *
+     * @param verifier    JWT Verifier
+     * @param parallelism Number of threads to verify tokens with
+     * @param batchSize   Number of tokens per batch
+     */
+    public BulkTokenVerifier(JwtVerifier verifier, int parallelism, int batchSize) {
+        this.verifier = Objects.requireNonNull(verifier, "Verifier cannot be null");
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be >= 1");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be >= 1");
+        }
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Verifies all the tokens from the input writing their outcomes to the output
+     * <p>
+     * Neither the input nor the output is closed by this method, the output is flushed once all tokens are verified.
+     * </p>
+     *
+     * @param input  Input to read tokens from
+     * @param output Output to write outcomes to
+     * @return Aggregate statistics
+     * @throws IOException Thrown if there is a problem reading the input or writing the output
+     */
+    public BulkVerificationStatistics verify(BufferedReader input, Writer output) throws IOException {
+        Objects.requireNonNull(input, "Input cannot be null");
+        Objects.requireNonNull(output, "Output cannot be null");
+
+        BulkVerificationStatistics statistics = new BulkVerificationStatistics();
+        output.write(OUTPUT_HEADER);
+        output.write('\n');
+
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+        Deque<Batch> inFlight = new ArrayDeque<>();
+        int maxInFlight = 2 * this.parallelism;
+        try {
+            Batch batch = new Batch(this.batchSize);
+            long lineNumber = 0;
+            String line;
+            while ((line = input.readLine()) != null) {
+                lineNumber++;
+                String token = extractToken(line);
+                if (token == null) {
+                    statistics.recordSkipped();
+                    continue;
+                }
+                batch.add(lineNumber, token);
+                if (batch.isFull()) {
+                    batch.submit(pool, this.verifier);
+                    inFlight.addLast(batch);
+                    while (inFlight.size() >= maxInFlight) {
+                        inFlight.removeFirst().write(output, statistics);
+                    }
+                    batch = new Batch(this.batchSize);
+                }
+            }
+            if (batch.size > 0) {
+                batch.submit(pool, this.verifier);
+                inFlight.addLast(batch);
+            }
+            while (!inFlight.isEmpty()) {
+                inFlight.removeFirst().write(output, statistics);
+            }
+        } finally {
+            for (Batch pending : inFlight) {
+                pending.task.cancel(true);
+            }
+            pool.shutdownNow();
+        }
+        output.flush();
+        LOGGER.info("{}", statistics);
+        return statistics;
+    }
+
+    /**
+     * Extracts the token from a line of input
+     *
+     * @param line Line
+     * @return Token, or {@code null} if the line is blank or a comment
+     */
+    static String extractToken(String line) {
+        String token = line.strip();
+        if (token.isEmpty() || token.charAt(0) == '#' || Strings.CI.equals(token,
+                                                                          JwtHttpConstants.AUTH_SCHEME_BEARER)) {
+            return null;
+        }
+        if (Strings.CI.startsWith(token, JwtHttpConstants.AUTH_SCHEME_BEARER + " ")) {
+            token = token.substring(JwtHttpConstants.AUTH_SCHEME_BEARER.length() + 1).strip();
+        }
+        return token.isEmpty() ? null : token;
+    }
+
+    /**
+     * Verifies a single token, classifying any failure in the same order that the authentication engines do
+     *
+     * @param verifier JWT Verifier
+     * @param line     Line number
+     * @param token    Raw token
+     * @return Outcome
+     */
+    static TokenOutcome verifyToken(JwtVerifier verifier, long line, String token) {
+        UnverifiedJwt unverified = UnverifiedJwt.peek(token);
+        String keyId = unverified != null ? unverified.getKeyId() : null;
+        try {
+            Jws<Claims> jws = verifier.verify(token);
+            if (jws == null) {
+                return new TokenOutcome(line, VerificationOutcome.INVALID, keyId, null, "Token was rejected");
+            }
+            return new TokenOutcome(line, VerificationOutcome.VALID, keyId, jws.getPayload().getSubject(), null);
+        } catch (KeyLoadPendingException pendingErr) {
+            return new TokenOutcome(line, VerificationOutcome.KEY_ERROR, keyId, null, pendingErr.getMessage());
+        } catch (KeyException keyErr) {
+            return new TokenOutcome(line, VerificationOutcome.KEY_ERROR, keyId, null,
+                                    "Invalid/weak key: " + keyErr.getMessage());
+        } catch (SignatureException sigErr) {
+            return new TokenOutcome(line, VerificationOutcome.INVALID_SIGNATURE, keyId, null, sigErr.getMessage());
+        } catch (MalformedJwtException malformedErr) {
+            return new TokenOutcome(line, VerificationOutcome.MALFORMED, keyId, null, malformedErr.getMessage());
+        } catch (UnsupportedJwtException unsupportedErr) {
+            return new TokenOutcome(line, VerificationOutcome.UNSUPPORTED, keyId, null, unsupportedErr.getMessage());
+        } catch (ExpiredJwtException expiredErr) {
+            return new TokenOutcome(line, VerificationOutcome.EXPIRED, keyId, subject(expiredErr),
+                                    expiredErr.getMessage());
+        } catch (PrematureJwtException prematureErr) {
+            return new TokenOutcome(line, VerificationOutcome.PREMATURE, keyId, subject(prematureErr),
+                                    prematureErr.getMessage());
+        } catch (JwtException jwtErr) {
+            return new TokenOutcome(line, VerificationOutcome.INVALID, keyId, null, jwtErr.getMessage());
+        } catch (RuntimeException e) {
+            return new TokenOutcome(line, VerificationOutcome.ERROR, keyId, null,
+                                    e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    private static String subject(ClaimJwtException e) {
+        return e.getClaims() != null ? e.getClaims().getSubject() : null;
+    }
+
+    /**
+     * A batch of tokens that are verified together
+     */
+    private static final class Batch {
+        private final long[] lines;
+        private final String[] tokens;
+        private final TokenOutcome[] outcomes;
+        private int size;
+        private ForkJoinTask<Void> task;
+
+        private Batch(int capacity) {
+            this.lines = new long[capacity];
+            this.tokens = new String[capacity];
+            this.outcomes = new TokenOutcome[capacity];
+        }
+
+        private void add(long line, String token) {
+            this.lines[this.size] = line;
+            this.tokens[this.size] = token;
+            this.size++;
+        }
+
+        private boolean isFull() {
+            return this.size == this.tokens.length;
+        }
+
+        private void submit(ForkJoinPool pool, JwtVerifier verifier) {
+            this.task = pool.submit(new VerifyTask(this, verifier, 0, this.size));
+        }
+
+        private void write(Writer output, BulkVerificationStatistics statistics) throws IOException {
+            this.task.join();
+            for (int i = 0; i < this.size; i++) {
+                TokenOutcome outcome = this.outcomes[i];
+                output.write(outcome.toTabSeparated());
+                output.write('\n');
+                statistics.record(outcome.outcome());
+                if (statistics.getTotal() % PROGRESS_INTERVAL == 0) {
+                    LOGGER.info("{}", statistics);
+                }
+            }
+        }
+    }
+
+    /**
+     * Verifies a range of a batch, splitting the range in half until it is below the sequential threshold
+     */
+    private static final class VerifyTask extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        // NB - Tasks are never serialised, they only exist for the lifetime of a batch
+        private final transient Batch batch;
+        private final transient JwtVerifier verifier;
+        private final int from, to;
+
+        private VerifyTask(Batch batch, JwtVerifier verifier, int from, int to) {
+            this.batch = batch;
+            this.verifier = verifier;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= SEQUENTIAL_THRESHOLD) {
+                for (int i = this.from; i < this.to; i++) {
+                    this.batch.outcomes[i] = verifyToken(this.verifier, this.batch.lines[i], this.batch.tokens[i]);
+                    this.batch.tokens[i] = null;
+                }
+                return;
+            }
+            int mid = (this.from + this.to) >>> 1;
+            invokeAll(new VerifyTask(this.batch, this.verifier, this.from, mid),
+                      new VerifyTask(this.batch, this.verifier, mid, this.to));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.bulk;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Aggregate statistics for a bulk verification run, these are updated incrementally as outcomes are written
+ * <p>
+ * Statistics are only updated by the thread writing the outcomes, other threads may read them to report progress but
+ * may observe slightly stale values.
+ * </p>
+ */
+public final class BulkVerificationStatistics {
+
+    private final long[] counts = new long[VerificationOutcome.values().length];
+    private final long startedAt = System.nanoTime();
+    private volatile long total;
+    private volatile long skipped;
+
+    void record(VerificationOutcome outcome) {
+        this.counts[outcome.ordinal()]++;
+        this.total++;
+    }
+
+    void recordSkipped() {
+        this.skipped++;
+    }
+
+    /**
+     * Gets the total number of tokens verified
+     *
+     * @return Total tokens
+     */
+    public long getTotal() {
+        return this.total;
+    }
+
+    /**
+     * Gets the number of input lines skipped because they were blank or comments
+     *
+     * @return Skipped lines
+     */
+    public long getSkipped() {
+        return this.skipped;
+    }
+
+    /**
+     * Gets the number of tokens with the given outcome
+     *
+     * @param outcome Outcome
+     * @return Number of tokens
+     */
+    public long getCount(VerificationOutcome outcome) {
+        return this.counts[outcome.ordinal()];
+    }
+
+    /**
+     * Gets the number of tokens with each outcome, omitting outcomes that did not occur
+     *
+     * @return Counts by outcome
+     */
+    public Map<VerificationOutcome, Long> getCounts() {
+        Map<VerificationOutcome, Long> counts = new EnumMap<>(VerificationOutcome.class);
+        for (VerificationOutcome outcome : VerificationOutcome.values()) {
+            if (this.counts[outcome.ordinal()] > 0) {
+                counts.put(outcome, this.counts[outcome.ordinal()]);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the time elapsed since verification started
+     *
+     * @return Elapsed time
+     */
+    public Duration getElapsed() {
+        return Duration.ofNanos(System.nanoTime() - this.startedAt);
+    }
+
+    /**
+     * Gets the verification rate in tokens per second
+     *
+     * @return Tokens per second
+     */
+    public double getRate() {
+        double seconds = getElapsed().toNanos() / 1_000_000_000.0;
+        return seconds > 0 ? this.total / seconds : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Verified %d tokens (%d lines skipped) in %.1fs at %.0f tokens/s: %s", this.total,
+                             this.skipped, getElapsed().toMillis() / 1000.0, getRate(), getCounts());
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.bulk;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Objects;
+
+/**
+ * The outcome of verifying a single token during bulk verification
+ *
+ * @param line    Line number of the token within the input
+ * @param outcome Verification outcome
+ * @param keyId   Key ID ({@code kid}) header of the token, if known
+ * @param subject Subject of the token, only available if its signature was verified
+ * @param detail  Detail of why verification failed, empty if the token was valid
+ */
+public record TokenOutcome(long line, VerificationOutcome outcome, String keyId, String subject, String detail) {
+
+    /**
+     * Creates a new outcome
+     */
+    public TokenOutcome {
+        Objects.requireNonNull(outcome, "Outcome cannot be null");
+    }
+
+    /**
+     * Formats the outcome as a tab separated line, with the fields in the order line number, outcome, key ID, subject
+     * and detail.  Any whitespace within the fields is normalised so that each outcome is always a single line.
+     *
+     * @return Tab separated line
+     */
+    public String toTabSeparated() {
+        return this.line + "\t" + this.outcome + "\t" + clean(this.keyId) + "\t" + clean(this.subject) + "\t" + clean(
+                this.detail);
+    }
+
+    private static String clean(String value) {
+        return value == null ? "" : StringUtils.normalizeSpace(value);
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.bulk;
+
+/**
+ * The possible outcomes of verifying a single token during bulk verification, these mirror the failure cases that the
+ * authentication engines distinguish between when issuing challenges
+ */
+public enum VerificationOutcome {
+    /**
+     * Token was successfully verified
+     */
+    VALID,
+    /**
+     * Token has expired, note that its signature was verified before its expiry was checked
+     */
+    EXPIRED,
+    /**
+     * Token is not yet valid, note that its signature was verified before its validity period was checked
+     */
+    PREMATURE,
+    /**
+     * Token failed signature verification
+     */
+    INVALID_SIGNATURE,
+    /**
+     * No suitable key was available to verify the token, or the key was invalid/weak
+     */
+    KEY_ERROR,
+    /**
+     * Token is malformed
+     */
+    MALFORMED,
+    /**
+     * Token uses an unsupported JWT feature
+     */
+    UNSUPPORTED,
+    /**
+     * Token was rejected for some other reason, e.g. it has been revoked
+     */
+    INVALID,
+    /**
+     * An unexpected error occurred verifying the token
+     */
+    ERROR
+}
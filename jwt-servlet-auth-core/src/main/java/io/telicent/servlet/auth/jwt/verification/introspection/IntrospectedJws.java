@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.introspection;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtVisitor;
+import io.jsonwebtoken.Jwts;
+
+import java.util.Objects;
+
+/**
+ * The claims of an opaque token as returned by a token introspection endpoint, presented as a {@link Jws} so that they
+ * flow through the authentication engines exactly like the claims of a verified JWT
+ * <p>
+ * Opaque tokens have no header or signature of their own, the header carries the pseudo-algorithm
+ * {@value #INTROSPECTION_ALGORITHM} to indicate the claims were vouched for by the introspection endpoint, and the
+ * signature and digest are empty.
+ * </p>
+ */
+public final class IntrospectedJws implements Jws<Claims> {
+
+    /**
+     * The pseudo-algorithm present in the header of introspected tokens
+     */
+    public static final String INTROSPECTION_ALGORITHM = "introspection";
+
+    static final JwsHeader HEADER =
+            (JwsHeader) Jwts.header().add("alg", INTROSPECTION_ALGORITHM).build();
+
+    private final Claims claims;
+
+    /**
+     * Creates new introspected token claims
+     *
+     * @param claims Claims
+     */
+    public IntrospectedJws(Claims claims) {
+        this.claims = Objects.requireNonNull(claims, "Claims cannot be null");
+    }
+
+    @Override
+    public JwsHeader getHeader() {
+        return HEADER;
+    }
+
+    @Override
+    public Claims getPayload() {
+        return this.claims;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public Claims getBody() {
+        return this.claims;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public String getSignature() {
+        return "";
+    }
+
+    @Override
+    public byte[] getDigest() {
+        return new byte[0];
+    }
+
+    @Override
+    public <T> T accept(JwtVisitor<T> visitor) {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return "IntrospectedJws{claims=" + this.claims + "}";
+    }
+}
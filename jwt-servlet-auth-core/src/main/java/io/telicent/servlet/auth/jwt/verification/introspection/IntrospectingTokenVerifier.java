@@ -0,0 +1,342 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.introspection;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.telicent.servlet.auth.jwt.Hashing;
+import io.telicent.servlet.auth.jwt.configuration.ConfigurationParameters;
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.KeyFetcher;
+import io.telicent.servlet.auth.jwt.verification.UnverifiedJwt;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A verifier for opaque reference tokens that introspects them against an OAuth 2.0 Token Introspection
+ * (<a href="https://www.rfc-editor.org/rfc/rfc7662">RFC 7662</a>) endpoint
+ * <p>
+ * Introspection responses are cached, keyed by a SHA-256 digest of the token so raw tokens are never retained, for the
+ * shorter of the configured cache TTL and the remaining lifetime of the token.  Concurrent lookups of the same token
+ * are coalesced into a single introspection request.  Responses for inactive tokens are also cached so that repeatedly
+ * presented inactive tokens do not each cost an introspection request.  Failed introspection requests are not cached.
+ * </p>
+ * <p>
+ * Each introspection request is subject to a request timeout, and callers waiting on a coalesced introspection stop
+ * waiting once that timeout has elapsed, so a hung introspection endpoint cannot hold request threads indefinitely.
+ * Requests are made via a {@link KeyFetcher}, so introspection responses are subject to the same maximum document size,
+ * and the introspection endpoint to the same per-origin circuit breaker, as fetching keys.  Since callers are waiting
+ * on it only a single attempt is made for each introspection.
+ * </p>
+ * <p>
+ * Optionally a JWT verifier may be supplied, in which case tokens that are structurally JWTs are verified by that
+ * verifier and only opaque tokens are introspected, allowing a service to accept both.
+ * </p>
+ */
+public class IntrospectingTokenVerifier implements JwtVerifier {
+
+    /**
+     * The default maximum time an introspection response is cached for
+     */
+    public static final Duration DEFAULT_CACHE_TTL = Duration.ofSeconds(60);
+
+    /**
+     * The default maximum number of introspection responses cached
+     */
+    public static final long DEFAULT_MAX_CACHED_TOKENS = 10_000;
+
+    /**
+     * The default timeout for introspection requests
+     */
+    public static final Duration DEFAULT_REQUEST_TIMEOUT =
+            Duration.ofMillis(ConfigurationParameters.DEFAULT_INTROSPECTION_TIMEOUT);
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> GENERIC_MAP_TYPE = new TypeReference<>() {
+    };
+    private static final Executor INTROSPECTION_EXECUTOR =
+            r -> Thread.ofVirtual().name("token-introspection").start(r);
+
+    private final URI endpoint;
+    private final KeyFetcher fetcher;
+    private final String authorization;
+    private final JwtVerifier jwtVerifier;
+    private final Duration cacheTtl;
+    private final Duration requestTimeout;
+    private final AsyncCache<String, Claims> cache;
+
+    /**
+     * Creates a new introspecting verifier with the default request timeout
+     *
+     * @param endpoint        Introspection endpoint
+     * @param client          HTTP Client
+     * @param authorization   Value of the {@code Authorization} header used to authenticate to the introspection
+     *                        endpoint, may be {@code null} if the endpoint does not require authentication
+     * @param jwtVerifier     Verifier for tokens that are JWTs, may be {@code null} in which case all tokens are
+     *                        introspected
+     * @param cacheTtl        Maximum time an introspection response is cached for
+     * @param maxCachedTokens Maximum number of introspection responses cached
+     */
+    public IntrospectingTokenVerifier(URI endpoint, HttpClient client, String authorization, JwtVerifier jwtVerifier,
+                                      Duration cacheTtl, long maxCachedTokens) {
+        this(endpoint, client, authorization, jwtVerifier, cacheTtl, maxCachedTokens, DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    /**
+     * Creates a new introspecting verifier
+     *
+     * @param endpoint        Introspection endpoint
+     * @param client          HTTP Client
+     * @param authorization   Value of the {@code Authorization} header used to authenticate to the introspection
+     *                        endpoint, e.g. from {@link #basicAuthorization(String, String)}, may be {@code null} if the
+     *                        endpoint does not require authentication
+     * @param jwtVerifier     Verifier for tokens that are JWTs, may be {@code null} in which case all tokens are
+     *                        introspected
+     * @param cacheTtl        Maximum time an introspection response is cached for
+     * @param maxCachedTokens Maximum number of introspection responses cached
+     * @param requestTimeout  Timeout for introspection requests
+     */
+    public IntrospectingTokenVerifier(URI endpoint, HttpClient client, String authorization, JwtVerifier jwtVerifier,
+                                      Duration cacheTtl, long maxCachedTokens, Duration requestTimeout) {
+        this(endpoint, client, KeyFetcher.Settings.DEFAULT, authorization, jwtVerifier, cacheTtl, maxCachedTokens,
+             requestTimeout);
+    }
+
+    /**
+     * Creates a new introspecting verifier
+     *
+     * @param endpoint        Introspection endpoint
+     * @param client          HTTP Client
+     * @param fetchSettings   Fetch settings whose maximum document size and circuit breaker settings apply to
+     *                        introspection requests, their request timeout and attempts are ignored in favour of the
+     *                        given request timeout and a single attempt
+     * @param authorization   Value of the {@code Authorization} header used to authenticate to the introspection
+     *                        endpoint, e.g. from {@link #basicAuthorization(String, String)}, may be {@code null} if
+     *                        the endpoint does not require authentication
+     * @param jwtVerifier     Verifier for tokens that are JWTs, may be {@code null} in which case all tokens are
+     *                        introspected
+     * @param cacheTtl        Maximum time an introspection response is cached for
+     * @param maxCachedTokens Maximum number of introspection responses cached
+     * @param requestTimeout  Timeout for introspection requests
+     */
+    public IntrospectingTokenVerifier(URI endpoint, HttpClient client, KeyFetcher.Settings fetchSettings,
+                                      String authorization, JwtVerifier jwtVerifier, Duration cacheTtl,
+                                      long maxCachedTokens, Duration requestTimeout) {
+        this.endpoint = Objects.requireNonNull(endpoint, "Introspection endpoint cannot be null");
+        Objects.requireNonNull(client, "HTTP Client cannot be null");
+        Objects.requireNonNull(fetchSettings, "Fetch settings cannot be null");
+        this.authorization = authorization;
+        this.jwtVerifier = jwtVerifier;
+        this.cacheTtl = Objects.requireNonNull(cacheTtl, "Cache TTL cannot be null");
+        if (cacheTtl.isNegative()) {
+            throw new IllegalArgumentException("Cache TTL cannot be negative");
+        }
+        if (maxCachedTokens < 0) {
+            throw new IllegalArgumentException("maxCachedTokens cannot be negative");
+        }
+        this.requestTimeout = Objects.requireNonNull(requestTimeout, "Request timeout cannot be null");
+        if (requestTimeout.isZero() || requestTimeout.isNegative()) {
+            throw new IllegalArgumentException("Request timeout must be positive");
+        }
+        this.fetcher = new KeyFetcher(client, new KeyFetcher.Settings(fetchSettings.connectTimeout(), requestTimeout, 1,
+                                                                      fetchSettings.initialBackoff(),
+                                                                      fetchSettings.maxBackoff(),
+                                                                      fetchSettings.failureThreshold(),
+                                                                      fetchSettings.openDuration(),
+                                                                      fetchSettings.maxDocumentSize(),
+                                                                      fetchSettings.maxKeys()));
+        this.cache = Caffeine.newBuilder()
+                             .maximumSize(maxCachedTokens)
+                             .expireAfter(new ClaimsExpiry(cacheTtl))
+                             .executor(INTROSPECTION_EXECUTOR)
+                             .buildAsync();
+    }
+
+    /**
+     * Creates a value for an HTTP Basic {@code Authorization} header from a client ID and secret
+     *
+     * @param clientId     Client ID
+     * @param clientSecret Client Secret
+     * @return Authorization header value
+     */
+    public static String basicAuthorization(String clientId, String clientSecret) {
+        String credentials = URLEncoder.encode(clientId, StandardCharsets.UTF_8) + ":" + URLEncoder.encode(
+                StringUtils.defaultString(clientSecret), StandardCharsets.UTF_8);
+        return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Jws<Claims> verify(String rawJwt) {
+        if (this.jwtVerifier != null && UnverifiedJwt.peek(rawJwt) != null) {
+            return this.jwtVerifier.verify(rawJwt);
+        }
+
+        String digest = digest(rawJwt);
+        // Bound the coalesced future as well as the request itself, the request timeout only covers awaiting the
+        // response headers so a response body that trickles in could otherwise leave every waiting caller stuck
+        CompletableFuture<Claims> future = this.cache.get(digest, (key, executor) -> CompletableFuture
+                .supplyAsync(() -> introspect(rawJwt), executor)
+                .orTimeout(this.requestTimeout.toMillis(), TimeUnit.MILLISECONDS));
+        Claims claims;
+        try {
+            claims = future.join();
+        } catch (CompletionException e) {
+            // Caffeine discards failed futures asynchronously, discard it now so the next lookup retries
+            this.cache.asMap().remove(digest, future);
+            if (e.getCause() instanceof JwtException jwtErr) {
+                throw jwtErr;
+            } else if (e.getCause() instanceof TimeoutException) {
+                throw new JwtException(
+                        "Token introspection failed: no response within " + this.requestTimeout.toMillis() + "ms",
+                        e.getCause());
+            }
+            throw new JwtException("Token introspection failed: " + e.getCause().getMessage(), e.getCause());
+        }
+
+        if (!Boolean.TRUE.equals(claims.get("active"))) {
+            throw new JwtException("Token is not active");
+        }
+        Date expiry = claims.getExpiration();
+        if (expiry != null && expiry.getTime() <= System.currentTimeMillis()) {
+            throw new ExpiredJwtException(IntrospectedJws.HEADER, claims,
+                                          "Token expired at " + expiry.toInstant());
+        }
+        return new IntrospectedJws(claims);
+    }
+
+    /**
+     * Introspects a token, this is a blocking call
+     *
+     * @param token Token
+     * @return Introspection response as claims
+     */
+    private Claims introspect(String token) {
+        HttpRequest.Builder builder =
+                HttpRequest.newBuilder(this.endpoint)
+                           .header("Content-Type", "application/x-www-form-urlencoded")
+                           .header("Accept", "application/json")
+                           .POST(HttpRequest.BodyPublishers.ofString(
+                                   "token=" + URLEncoder.encode(token, StandardCharsets.UTF_8)
+                                   + "&token_type_hint=access_token"));
+        if (StringUtils.isNotBlank(this.authorization)) {
+            builder.header("Authorization", this.authorization);
+        }
+        HttpResponse<InputStream> response;
+        try {
+            response = this.fetcher.send(builder);
+        } catch (IOException e) {
+            throw new JwtException("Token introspection failed: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JwtException("Token introspection interrupted", e);
+        }
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new JwtException(
+                        "Token introspection failed: endpoint returned status " + response.statusCode());
+            }
+            Map<String, Object> introspected = JSON.readValue(body, GENERIC_MAP_TYPE);
+            if (introspected == null) {
+                throw new JwtException("Token introspection failed: endpoint returned no response");
+            }
+            return Jwts.claims().add(introspected).build();
+        } catch (IOException e) {
+            throw new JwtException("Token introspection failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Computes the cache key for a token
+     *
+     * @param token Token
+     * @return Token digest
+     */
+    static String digest(String token) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Hashing.sha256(token));
+    }
+
+    /**
+     * Gets the number of introspection responses currently cached
+     *
+     * @return Cached responses
+     */
+    public long getCachedTokens() {
+        this.cache.synchronous().cleanUp();
+        return this.cache.synchronous().estimatedSize();
+    }
+
+    @Override
+    public String toString() {
+        return "IntrospectingTokenVerifier{endpoint=" + this.endpoint + ", cacheTtl=" + this.cacheTtl
+               + ", requestTimeout=" + this.requestTimeout
+               + (this.jwtVerifier != null ? ", jwtVerifier=" + this.jwtVerifier : "") + "}";
+    }
+
+    /**
+     * Expires cached introspection responses after the shorter of the cache TTL and the remaining token lifetime
+     *
+     * @param ttl Cache TTL
+     */
+    record ClaimsExpiry(Duration ttl) implements Expiry<String, Claims> {
+
+        @Override
+        public long expireAfterCreate(String key, Claims claims, long currentTime) {
+            long ttlNanos = this.ttl.toNanos();
+            Date expiry = claims.getExpiration();
+            if (expiry == null) {
+                return ttlNanos;
+            }
+            long remaining = Duration.ofMillis(expiry.getTime() - System.currentTimeMillis()).toNanos();
+            return Math.max(0, Math.min(ttlNanos, remaining));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, claims, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
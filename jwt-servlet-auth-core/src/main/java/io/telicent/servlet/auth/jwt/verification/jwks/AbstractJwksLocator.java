@@ -20,7 +20,9 @@ import io.jsonwebtoken.LocatorAdapter;
 import io.jsonwebtoken.security.InvalidKeyException;
 import io.jsonwebtoken.security.Jwk;
 import io.jsonwebtoken.security.JwkSet;
+import io.telicent.servlet.auth.jwt.configuration.oidc.OidcConfiguration;
 import io.telicent.servlet.auth.jwt.errors.KeyLoadException;
+import io.telicent.servlet.auth.jwt.verification.KeyFetcher;
 import io.telicent.servlet.auth.jwt.verification.KeyUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Strings;
@@ -36,12 +38,19 @@ import java.util.Objects;
  * Abstract base classes for JWKS locators that use the JDK {@link HttpClient} for HTTP requests
  */
 public abstract class AbstractJwksLocator extends LocatorAdapter<Key> {
-    private static HttpClient DEFAULT_CLIENT;
 
     /**
-     * The configured HTTP client to use for any HTTP requests
+     * The HTTP client used by the {@link #fetcher}
+     *
+     * @deprecated Make HTTP requests via the {@link #fetcher}, which applies timeouts, retries and circuit breaking,
+     * rather than using the client directly
      */
+    @Deprecated
     protected final HttpClient client;
+    /**
+     * The configured key fetcher to use for any HTTP requests, this applies timeouts, retries and circuit breaking
+     */
+    protected final KeyFetcher fetcher;
 
     /**
      * Creates a new abstract JWKS locator
@@ -49,19 +58,29 @@ public abstract class AbstractJwksLocator extends LocatorAdapter<Key> {
      * @param client HTTP Client to use
      */
     public AbstractJwksLocator(HttpClient client) {
-        this.client = Objects.requireNonNull(client, "HTTP Client cannot be null");
+        this(new KeyFetcher(Objects.requireNonNull(client, "HTTP Client cannot be null"),
+                            KeyFetcher.Settings.DEFAULT));
+    }
+
+    /**
+     * Creates a new abstract JWKS locator
+     *
+     * @param fetcher Key fetcher to use
+     */
+    public AbstractJwksLocator(KeyFetcher fetcher) {
+        this.fetcher = Objects.requireNonNull(fetcher, "Key Fetcher cannot be null");
+        this.client = fetcher.getClient();
     }
 
     /**
      * Creates the default HTTP Client
      *
      * @return HTTP Client
+     * @deprecated HTTP clients are owned by the {@link KeySourceRegistry}, use {@link KeySourceRegistry#httpClient()}
      */
-    protected static synchronized HttpClient createDefaultClient() {
-        if (DEFAULT_CLIENT == null) {
-            DEFAULT_CLIENT = HttpClient.newBuilder().build();
-        }
-        return DEFAULT_CLIENT;
+    @Deprecated
+    protected static HttpClient createDefaultClient() {
+        return KeySourceRegistry.httpClient();
     }
 
     /**
@@ -74,6 +93,47 @@ public abstract class AbstractJwksLocator extends LocatorAdapter<Key> {
      */
     protected abstract URI getJwksURI();
 
+    /**
+     * Gets the URI that identifies where this locator obtains its keys from, used to ensure a persisted
+     * {@link JwksSnapshot} belongs to this locator
+     * <p>
+     * Unlike {@link #getJwksURI()} this <strong>MUST NOT</strong> trigger any dynamic resolution.  Defaults to the JWKS
+     * URI.
+     * </p>
+     *
+     * @return Source URI
+     */
+    protected URI getSourceURI() {
+        return getJwksURI();
+    }
+
+    /**
+     * Gets any discovery metadata that should be persisted in a {@link JwksSnapshot} alongside the keys
+     *
+     * @return Discovery metadata, or {@code null} if not applicable to this locator or not yet discovered
+     */
+    protected OidcConfiguration getDiscoveryMetadata() {
+        return null;
+    }
+
+    /**
+     * Restores discovery metadata previously persisted in a {@link JwksSnapshot}, called when warm starting from a
+     * snapshot
+     *
+     * @param metadata Discovery metadata
+     */
+    protected void restoreDiscoveryMetadata(OidcConfiguration metadata) {
+        // No-op by default
+    }
+
+    /**
+     * Revalidates any discovery metadata restored via {@link #restoreDiscoveryMetadata(OidcConfiguration)}, called in
+     * the background after warm starting from a snapshot
+     */
+    protected void revalidateDiscoveryMetadata() {
+        // No-op by default
+    }
+
     @Override
     protected Key locate(JwsHeader header) {
         String keyId = ensureValidKeyId(header);
@@ -112,7 +172,7 @@ public abstract class AbstractJwksLocator extends LocatorAdapter<Key> {
                 jwks = KeyUtils.loadJwks(f);
             } else {
                 // Read in URL
-                jwks = KeyUtils.loadJwks(jwksSourceUri, this.client);
+                jwks = KeyUtils.fetchJwks(jwksSourceUri, this.fetcher);
             }
         } catch (KeyLoadException e) {
             throw new InvalidKeyException(e.getMessage(), e.getCause());
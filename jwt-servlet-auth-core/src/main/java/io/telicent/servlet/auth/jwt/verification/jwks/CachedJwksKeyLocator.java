@@ -20,21 +20,50 @@ import com.github.benmanes.caffeine.cache.Cache;
 import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.security.Jwk;
 import io.jsonwebtoken.security.JwkSet;
+import io.telicent.servlet.auth.jwt.configuration.oidc.OidcConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.net.URI;
 import java.net.http.HttpClient;
+import java.nio.file.Path;
 import java.security.Key;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A decorator over another {@link AbstractJwksLocator} that adds a caching layer so that the underlying JWKS file/URL
  * is only loaded upon encountering a key that is not currently cached
+ * <p>
+ * Optionally a snapshot file may be configured, in which case successfully loaded JWKS are persisted to that file as a
+ * {@link JwksSnapshot}.  When created via {@link #create(AbstractJwksLocator, Duration, Path, Duration)} a valid
+ * snapshot is used to populate the cache immediately, so the first requests after a restart don't wait on the network,
+ * while the keys are revalidated in the background.  Snapshots are written on a background thread, never the thread
+ * that loaded the keys, and only when the keys, or discovery metadata, differ from the last snapshot, or the last
+ * snapshot is more than halfway to its maximum age.
+ * </p>
  */
 public class CachedJwksKeyLocator extends AbstractJwksLocator {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachedJwksKeyLocator.class);
+
     private final Cache<String, Jwk<?>> cache;
     private final Duration cacheKeysFor;
     private final AbstractJwksLocator jwksLocator;
+    private final AtomicReference<CompletableFuture<Void>> inflightRefresh = new AtomicReference<>();
+    private final Path snapshotFile;
+    private final Duration snapshotMaxAge;
+    private final AtomicReference<PendingSnapshot> pendingSnapshot = new AtomicReference<>();
+    private final AtomicBoolean snapshotWriterRunning = new AtomicBoolean(false);
+    // NB - Only accessed by the snapshot writer, or during warm start, so needs no further synchronisation
+    private volatile JwksSnapshot lastSnapshot;
 
     /**
      * Creates a new JWKS key locator with caching of keys enabled
@@ -43,7 +72,7 @@ public class CachedJwksKeyLocator extends AbstractJwksLocator {
      * @param cacheKeysFor How long keys should be cached for
      */
     public CachedJwksKeyLocator(URI jwksURI, Duration cacheKeysFor) {
-        this(jwksURI, createDefaultClient(), cacheKeysFor);
+        this(jwksURI, KeySourceRegistry.httpClient(), cacheKeysFor);
     }
 
     /**
@@ -58,12 +87,92 @@ public class CachedJwksKeyLocator extends AbstractJwksLocator {
     }
 
     public CachedJwksKeyLocator(AbstractJwksLocator jwksLocator, Duration cacheKeysFor) {
-        super(jwksLocator.client);
+        this(jwksLocator, cacheKeysFor, null, null);
+    }
+
+    /**
+     * Creates a new JWKS key locator with caching of keys enabled, and persistence of loaded keys to a snapshot file,
+     * warm starting from the snapshot file if it holds a valid snapshot
+     *
+     * @param jwksLocator    Underlying JWKS locator
+     * @param cacheKeysFor   How long keys should be cached for
+     * @param snapshotFile   Snapshot file to warm start from, and persist loaded keys to, if {@code null} no snapshot
+     *                       is used
+     * @param snapshotMaxAge Maximum age of a snapshot that will be used for a warm start, if {@code null} snapshots of
+     *                       any age are used
+     * @return Key locator
+     */
+    public static CachedJwksKeyLocator create(AbstractJwksLocator jwksLocator, Duration cacheKeysFor,
+                                              Path snapshotFile, Duration snapshotMaxAge) {
+        CachedJwksKeyLocator locator =
+                new CachedJwksKeyLocator(jwksLocator, cacheKeysFor, snapshotFile, snapshotMaxAge);
+        if (snapshotFile != null) {
+            // Warm start only once fully constructed since revalidation continues on a background thread
+            locator.warmStart();
+        }
+        return locator;
+    }
+
+    /**
+     * Creates a new JWKS key locator with caching of keys enabled, and persistence of loaded keys to a snapshot file
+     * <p>
+     * This does not warm start from the snapshot file, use
+     * {@link #create(AbstractJwksLocator, Duration, Path, Duration)} to do so.
+     * </p>
+     *
+     * @param jwksLocator    Underlying JWKS locator
+     * @param cacheKeysFor   How long keys should be cached for
+     * @param snapshotFile   Snapshot file to persist loaded keys to, if {@code null} no snapshot is used
+     * @param snapshotMaxAge Maximum age of a snapshot that will be used for a warm start, if {@code null} snapshots of
+     *                       any age are used
+     */
+    protected CachedJwksKeyLocator(AbstractJwksLocator jwksLocator, Duration cacheKeysFor, Path snapshotFile,
+                                   Duration snapshotMaxAge) {
+        super(jwksLocator.fetcher);
         this.jwksLocator = jwksLocator;
         this.cacheKeysFor = cacheKeysFor;
+        this.snapshotFile = snapshotFile;
+        this.snapshotMaxAge = snapshotMaxAge;
         // Generally speaking there are relatively few keys are used in a JWKS, so we set a relatively compact cache
         // size to minimise memory footprint
         this.cache = Caffeine.newBuilder().initialCapacity(10).maximumSize(25).expireAfterAccess(cacheKeysFor).build();
+
+        if (snapshotFile != null && snapshotMaxAge != null && snapshotMaxAge.isNegative()) {
+            throw new IllegalArgumentException("snapshotMaxAge cannot be negative");
+        }
+    }
+
+    /**
+     * Populates the cache from a valid snapshot, if one is available, and then revalidates the keys in the background
+     */
+    private void warmStart() {
+        JwksSnapshot snapshot =
+                JwksSnapshot.read(this.snapshotFile, this.jwksLocator.getSourceURI(), this.snapshotMaxAge);
+        if (snapshot == null) {
+            return;
+        }
+        this.lastSnapshot = snapshot;
+        try {
+            this.jwksLocator.restoreDiscoveryMetadata(snapshot.getDiscovery());
+            JwkSet jwks = snapshot.getJwks();
+            jwks.getKeys().forEach(k -> this.cache.put(k.getId(), k));
+            LOGGER.info("Warm started with {} keys from snapshot {} taken at {}", jwks.size(), this.snapshotFile,
+                        snapshot.getCreatedAt());
+        } catch (Throwable e) {
+            LOGGER.warn("Failed to warm start from snapshot {}: {}", this.snapshotFile, e.getMessage());
+            this.cache.invalidateAll();
+            return;
+        }
+
+        Thread.ofVirtual().name("jwks-snapshot-revalidation").start(() -> {
+            this.jwksLocator.revalidateDiscoveryMetadata();
+            refreshAsync(Runnable::run).whenComplete((ignored, e) -> {
+                if (e != null) {
+                    LOGGER.warn("Failed to revalidate keys restored from snapshot {}, continuing to use them: {}",
+                                this.snapshotFile, e.getMessage());
+                }
+            });
+        });
     }
 
     @Override
@@ -81,9 +190,17 @@ public class CachedJwksKeyLocator extends AbstractJwksLocator {
             return jwk.toKey();
         }
 
-        // Otherwise load the JWKS and cache the contained keys
-        JwkSet jwks = this.jwksLocator.loadJwks(this.jwksLocator.getJwksURI());
-        jwks.getKeys().forEach(k -> this.cache.put(k.getId(), k));
+        // Otherwise load the JWKS and cache the contained keys.  The load runs on this thread unless another thread is
+        // already loading, in which case we wait for that load instead.  Waiting on a future, rather than on a monitor,
+        // ensures virtual threads waiting here are unmounted from their carrier threads.
+        try {
+            refreshAsync(Runnable::run).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeErr) {
+                throw runtimeErr;
+            }
+            throw e;
+        }
 
         // Then lookup the key again
         jwk = this.cache.getIfPresent(keyId);
@@ -91,8 +208,148 @@ public class CachedJwksKeyLocator extends AbstractJwksLocator {
         return jwk.toKey();
     }
 
+    /**
+     * Indicates whether a key with the given ID is currently cached, this never triggers a load of the JWKS
+     *
+     * @param keyId Key ID
+     * @return True if cached, false otherwise
+     */
+    public boolean isCached(String keyId) {
+        return keyId != null && this.cache.getIfPresent(keyId) != null;
+    }
+
+    /**
+     * Gets the keys that are currently cached, this never triggers a load of the JWKS
+     *
+     * @return Cached keys
+     */
+    public Collection<Jwk<?>> getCachedKeys() {
+        return List.copyOf(this.cache.asMap().values());
+    }
+
+    /**
+     * Asynchronously reloads the JWKS on the given executor and caches the contained keys
+     * <p>
+     * If a reload is already in-flight then the future for that reload is returned instead of starting another, so
+     * many concurrent callers for a previously unseen key only result in a single JWKS load.
+     * </p>
+     *
+     * @param executor Executor on which to load the JWKS
+     * @return Future that completes once the keys have been cached
+     */
+    public CompletableFuture<Void> refreshAsync(Executor executor) {
+        while (true) {
+            CompletableFuture<Void> existing = this.inflightRefresh.get();
+            if (existing != null) {
+                return existing;
+            }
+            CompletableFuture<Void> refresh = new CompletableFuture<>();
+            if (this.inflightRefresh.compareAndSet(null, refresh)) {
+                try {
+                    executor.execute(() -> {
+                        // Clear the in-flight refresh before completing it, so a caller that sees the completion
+                        // and refreshes again always starts a fresh load rather than rejoining this one
+                        try {
+                            refresh();
+                            this.inflightRefresh.compareAndSet(refresh, null);
+                            refresh.complete(null);
+                        } catch (Throwable e) {
+                            this.inflightRefresh.compareAndSet(refresh, null);
+                            refresh.completeExceptionally(e);
+                        }
+                    });
+                } catch (Throwable e) {
+                    // Executor rejected the task
+                    this.inflightRefresh.compareAndSet(refresh, null);
+                    refresh.completeExceptionally(e);
+                }
+                return refresh;
+            }
+        }
+    }
+
+    private void refresh() {
+        JwkSet jwks = this.jwksLocator.loadJwks(this.jwksLocator.getJwksURI());
+        jwks.getKeys().forEach(k -> this.cache.put(k.getId(), k));
+
+        if (this.snapshotFile != null) {
+            schedulePersist(jwks, this.jwksLocator.getDiscoveryMetadata());
+        }
+    }
+
+    /**
+     * Schedules persisting a snapshot of the given keys on the background snapshot writer, if the writer is already
+     * running it picks up the latest keys once it finishes its current write, so only the latest keys are ever written
+     *
+     * @param jwks      Keys
+     * @param discovery Discovery metadata, may be {@code null}
+     */
+    private void schedulePersist(JwkSet jwks, OidcConfiguration discovery) {
+        this.pendingSnapshot.set(new PendingSnapshot(jwks, discovery));
+        if (this.snapshotWriterRunning.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("jwks-snapshot-writer").start(this::writeSnapshots);
+        }
+    }
+
+    private void writeSnapshots() {
+        do {
+            try {
+                PendingSnapshot pending;
+                while ((pending = this.pendingSnapshot.getAndSet(null)) != null) {
+                    persist(pending);
+                }
+            } finally {
+                this.snapshotWriterRunning.set(false);
+            }
+            // Keys scheduled after we last checked but before we stopped running would otherwise never be written
+        } while (this.pendingSnapshot.get() != null && this.snapshotWriterRunning.compareAndSet(false, true));
+    }
+
+    private void persist(PendingSnapshot pending) {
+        try {
+            JwksSnapshot snapshot =
+                    JwksSnapshot.create(this.jwksLocator.getSourceURI(), pending.jwks(), pending.discovery());
+            if (snapshot.isEmpty()) {
+                return;
+            }
+            JwksSnapshot last = this.lastSnapshot;
+            if (snapshot.hasSameContents(last) && !isHalfwayToMaxAge(last)) {
+                LOGGER.debug("Keys unchanged since snapshot {} taken at {}, not rewriting it", this.snapshotFile,
+                             last.getCreatedAt());
+                return;
+            }
+            snapshot.write(this.snapshotFile);
+            this.lastSnapshot = snapshot;
+        } catch (Throwable e) {
+            LOGGER.warn("Failed to persist JWKS snapshot to {}: {}", this.snapshotFile, e.getMessage());
+        }
+    }
+
+    /**
+     * Indicates whether a snapshot is more than halfway to the maximum age at which it stops being used for a warm start,
+     * in which case an unchanged snapshot is rewritten so that it remains usable
+     *
+     * @param snapshot Snapshot
+     * @return True if halfway to the maximum age, false otherwise or if there is no maximum age
+     */
+    private boolean isHalfwayToMaxAge(JwksSnapshot snapshot) {
+        return this.snapshotMaxAge != null && snapshot.getCreatedAt()
+                                                      .plus(this.snapshotMaxAge.dividedBy(2))
+                                                      .isBefore(Instant.now());
+    }
+
+    /**
+     * Keys waiting to be persisted by the snapshot writer
+     *
+     * @param jwks      Keys
+     * @param discovery Discovery metadata, may be {@code null}
+     */
+    private record PendingSnapshot(JwkSet jwks, OidcConfiguration discovery) {
+    }
+
     @Override
     public String toString() {
-        return "CachedJwksKeyLocator{jwksLocator=" + this.jwksLocator + ", cacheKeysFor=" + this.cacheKeysFor.toString() + "}";
+        return "CachedJwksKeyLocator{jwksLocator=" + this.jwksLocator + ", cacheKeysFor=" + this.cacheKeysFor.toString() + (
+                this.snapshotFile != null ? ", snapshotFile=" + this.snapshotFile : "") + "}";
     }
 }
@@ -0,0 +1,314 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.jwks;
+
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.security.InvalidKeyException;
+import io.jsonwebtoken.security.Jwk;
+import io.telicent.servlet.auth.jwt.verification.ReloadableKeyLocator;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.Key;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * A key locator that merges several key sources, e.g. a local key plus one or more JWKS, into a single Key ID
+ * ({@code kid}) index
+ * <p>
+ * This is intended for key migrations where tokens signed by keys from several sources must be accepted at the same
+ * time.  Rather than chaining verifiers, and paying for a failed parse against each source that does not hold the key,
+ * any token is resolved with a single index lookup and thus a single signature check.
+ * </p>
+ * <p>
+ * Each JWKS source is loaded, and refreshed, independently of the others.  A source that fails to load keeps serving
+ * the keys it last loaded successfully.  Sources are refreshed in the background once their keys are older than the
+ * refresh interval, and immediately upon encountering an unknown Key ID provided they have not been refreshed within
+ * the minimum refresh interval, so tokens with random Key IDs cannot force constant reloads.  Where several sources
+ * provide the same Key ID then static keys take precedence over JWKS keys, and earlier JWKS sources take precedence
+ * over later ones.
+ * </p>
+ */
+public class CompositeKeyLocator extends LocatorAdapter<Key> implements ReloadableKeyLocator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompositeKeyLocator.class);
+
+    /**
+     * The default minimum interval between refreshes of a single source triggered by unknown Key IDs
+     */
+    public static final Duration DEFAULT_MIN_REFRESH_INTERVAL = Duration.ofSeconds(30);
+
+    private final Map<String, Key> staticKeys;
+    private final Key defaultKey;
+    private final List<Source> sources;
+    private final Duration refreshInterval;
+    private final Duration minRefreshInterval;
+    private final ReentrantLock indexLock = new ReentrantLock();
+    private final AtomicLong generation = new AtomicLong(0);
+    private volatile Map<String, Key> index;
+
+    /**
+     * Creates a new composite key locator
+     *
+     * @param staticKeys      Static keys, e.g. loaded from local key files, indexed by Key ID
+     * @param defaultKey      Key used for tokens that do not declare a Key ID, may be {@code null} in which case such
+     *                        tokens are rejected
+     * @param jwksSources     JWKS sources
+     * @param refreshInterval How long keys loaded from a JWKS source are used before the source is refreshed in the
+     *                        background
+     */
+    public CompositeKeyLocator(Map<String, Key> staticKeys, Key defaultKey, List<AbstractJwksLocator> jwksSources,
+                               Duration refreshInterval) {
+        this(staticKeys, defaultKey, jwksSources, refreshInterval, DEFAULT_MIN_REFRESH_INTERVAL);
+    }
+
+    /**
+     * Creates a new composite key locator
+     *
+     * @param staticKeys         Static keys, e.g. loaded from local key files, indexed by Key ID
+     * @param defaultKey         Key used for tokens that do not declare a Key ID, may be {@code null} in which case
+     *                           such tokens are rejected
+     * @param jwksSources        JWKS sources
+     * @param refreshInterval    How long keys loaded from a JWKS source are used before the source is refreshed in the
+     *                           background
+     * @param minRefreshInterval Minimum interval between refreshes of a source triggered by unknown Key IDs
+     */
+    public CompositeKeyLocator(Map<String, Key> staticKeys, Key defaultKey, List<AbstractJwksLocator> jwksSources,
+                               Duration refreshInterval, Duration minRefreshInterval) {
+        Objects.requireNonNull(staticKeys, "Static keys cannot be null");
+        Objects.requireNonNull(jwksSources, "JWKS sources cannot be null");
+        if (staticKeys.isEmpty() && defaultKey == null && jwksSources.isEmpty()) {
+            throw new IllegalArgumentException("At least one key source must be provided");
+        }
+        this.refreshInterval = Objects.requireNonNull(refreshInterval, "Refresh interval cannot be null");
+        this.minRefreshInterval = Objects.requireNonNull(minRefreshInterval, "Minimum refresh interval cannot be null");
+        if (refreshInterval.isNegative() || minRefreshInterval.isNegative()) {
+            throw new IllegalArgumentException("Refresh intervals cannot be negative");
+        }
+        this.staticKeys = Map.copyOf(staticKeys);
+        this.defaultKey = defaultKey;
+        this.sources = jwksSources.stream().map(Source::new).toList();
+        this.index = this.staticKeys;
+    }
+
+    @Override
+    protected Key locate(JwsHeader header) {
+        String keyId = header.getKeyId();
+        if (StringUtils.isBlank(keyId)) {
+            if (this.defaultKey != null) {
+                return this.defaultKey;
+            }
+            throw new InvalidKeyException("JWS fails to declare a valid kid header");
+        }
+
+        Key key = this.index.get(keyId);
+        if (key != null) {
+            refreshStaleSources();
+            return key;
+        }
+
+        // Unknown Key ID, refresh any sources that are eligible and try again
+        refreshSources(this.minRefreshInterval);
+        key = this.index.get(keyId);
+        if (key == null) {
+            throw new InvalidKeyException("Key ID '" + keyId + "' not present in any key source");
+        }
+        return key;
+    }
+
+    /**
+     * Triggers a background refresh of any sources whose keys are older than the refresh interval
+     */
+    private void refreshStaleSources() {
+        long now = System.currentTimeMillis();
+        for (Source source : this.sources) {
+            if (source.isOlderThan(this.refreshInterval, now) && source.inflight.get() == null) {
+                Thread.ofVirtual().name("composite-key-refresh").start(() -> refresh(source));
+            }
+        }
+    }
+
+    /**
+     * Refreshes all sources that have not been refreshed within the given interval, waiting for the refreshes to
+     * complete
+     *
+     * @param interval Interval
+     */
+    private void refreshSources(Duration interval) {
+        long now = System.currentTimeMillis();
+        List<CompletableFuture<Void>> refreshes = new ArrayList<>();
+        for (Source source : this.sources) {
+            if (source.isOlderThan(interval, now)) {
+                refreshes.add(refresh(source));
+            }
+        }
+        for (CompletableFuture<Void> refresh : refreshes) {
+            try {
+                refresh.join();
+            } catch (CompletionException e) {
+                // Already logged, the source keeps its previous keys
+            }
+        }
+    }
+
+    /**
+     * Forces all sources to refresh their keys immediately, waiting for the refreshes to complete
+     */
+    public void refresh() {
+        refreshSources(Duration.ZERO);
+    }
+
+    /**
+     * Refreshes a single source, concurrent refreshes of the same source are coalesced into a single load
+     *
+     * @param source Source
+     * @return Future that completes when the refresh completes
+     */
+    private CompletableFuture<Void> refresh(Source source) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CompletableFuture<Void> existing = source.inflight.compareAndExchange(null, future);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            Map<String, Key> keys = new LinkedHashMap<>();
+            for (Jwk<?> jwk : load(source.locator)) {
+                if (StringUtils.isNotBlank(jwk.getId())) {
+                    keys.putIfAbsent(jwk.getId(), jwk.toKey());
+                }
+            }
+            source.keys = Map.copyOf(keys);
+            source.loadedAt = System.currentTimeMillis();
+            rebuildIndex();
+            // Clear the in-flight marker before completing so that callers woken by completion can start a new refresh
+            source.inflight.set(null);
+            future.complete(null);
+        } catch (Throwable e) {
+            // Record the attempt so that a failing source is not retried on every request
+            source.loadedAt = System.currentTimeMillis();
+            LOGGER.warn("Failed to refresh keys from {}, continuing to use its {} previously loaded key(s): {}",
+                        source.locator, source.keys.size(), e.getMessage());
+            source.inflight.set(null);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Loads the current keys of a source
+     * <p>
+     * Sources shared with other verifiers, i.e. {@link CachedJwksKeyLocator} instances, are refreshed through their own
+     * cache so that concurrent refreshes by every verifier sharing the source are coalesced into a single JWKS load.
+     * </p>
+     *
+     * @param locator Source locator
+     * @return Keys
+     */
+    private static Collection<Jwk<?>> load(AbstractJwksLocator locator) {
+        if (locator instanceof CachedJwksKeyLocator cached) {
+            try {
+                cached.refreshAsync(Runnable::run).join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+            return cached.getCachedKeys();
+        }
+        return locator.loadJwks(locator.getJwksURI()).getKeys();
+    }
+
+    /**
+     * Rebuilds the merged index from the static keys and the current keys of each source, then atomically publishes it
+     * <p>
+     * Sources refresh concurrently so rebuilds are serialised, otherwise a rebuild that read another source's keys
+     * before that source's own refresh updated them could publish after, and overwrite, that source's rebuild.  As each
+     * source updates its keys before rebuilding, whichever rebuild runs last always sees the latest keys of every
+     * source.
+     * </p>
+     */
+    private void rebuildIndex() {
+        this.indexLock.lock();
+        try {
+            Map<String, Key> merged = new HashMap<>(this.staticKeys);
+            for (Source source : this.sources) {
+                for (Map.Entry<String, Key> entry : source.keys.entrySet()) {
+                    Key existing = merged.putIfAbsent(entry.getKey(), entry.getValue());
+                    if (existing != null && !existing.equals(entry.getValue())) {
+                        LOGGER.warn(
+                                "Key ID '{}' from {} is shadowed by a key with the same ID from a higher precedence "
+                                + "source", entry.getKey(), source.locator);
+                    }
+                }
+            }
+            if (!merged.equals(this.index)) {
+                // Publish the new index before bumping the generation
+                this.index = Map.copyOf(merged);
+                this.generation.incrementAndGet();
+            }
+        } finally {
+            this.indexLock.unlock();
+        }
+    }
+
+    @Override
+    public long getKeyGeneration() {
+        return this.generation.get();
+    }
+
+    /**
+     * Gets the Key IDs currently present in the merged index, this never triggers a load
+     *
+     * @return Key IDs
+     */
+    public Set<String> getKeyIds() {
+        return this.index.keySet();
+    }
+
+    @Override
+    public String toString() {
+        return "CompositeKeyLocator{staticKeys=" + this.staticKeys.size() + ", defaultKey=" + (this.defaultKey != null)
+               + ", sources=" + this.sources.stream()
+                                            .map(s -> s.locator.toString())
+                                            .collect(Collectors.joining(", ", "[", "]"))
+               + ", refreshInterval=" + this.refreshInterval + "}";
+    }
+
+    /**
+     * Per-source state, each source is refreshed independently
+     */
+    private static final class Source {
+        private final AbstractJwksLocator locator;
+        private final AtomicReference<CompletableFuture<Void>> inflight = new AtomicReference<>();
+        private volatile Map<String, Key> keys = Map.of();
+        private volatile long loadedAt = Long.MIN_VALUE;
+
+        private Source(AbstractJwksLocator locator) {
+            this.locator = Objects.requireNonNull(locator, "JWKS source cannot be null");
+        }
+
+        private boolean isOlderThan(Duration interval, long now) {
+            return this.loadedAt == Long.MIN_VALUE || now - this.loadedAt >= interval.toMillis();
+        }
+    }
+}
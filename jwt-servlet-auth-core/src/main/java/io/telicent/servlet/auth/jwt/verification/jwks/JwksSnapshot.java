@@ -0,0 +1,270 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.jwks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.security.Jwk;
+import io.jsonwebtoken.security.JwkSet;
+import io.jsonwebtoken.security.Jwks;
+import io.jsonwebtoken.security.PublicJwk;
+import io.telicent.servlet.auth.jwt.Hashing;
+import io.telicent.servlet.auth.jwt.configuration.oidc.OidcConfiguration;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * A point in time snapshot of a JWKS, and optionally the OpenID Connect configuration it was discovered from, that can
+ * be persisted to local disk so that an application can warm start without waiting on the network
+ * <p>
+ * Snapshots carry a SHA-256 checksum over their contents and are rejected when read back if this does not match, if
+ * they were taken for a different source, or if they are older than the permitted maximum age.  Only public keys are
+ * ever persisted, any secret or private keys in the JWKS are omitted from the snapshot.
+ * </p>
+ */
+public final class JwksSnapshot {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JwksSnapshot.class);
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /**
+     * Current snapshot file format version
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final String VERSION = "version";
+    private static final String SOURCE = "source";
+    private static final String CREATED_AT = "createdAt";
+    private static final String JWKS = "jwks";
+    private static final String DISCOVERY = "discovery";
+    private static final String CHECKSUM = "checksum";
+
+    private final URI source;
+    private final Instant createdAt;
+    private final String jwks;
+    private final String discovery;
+    private final boolean empty;
+
+    private JwksSnapshot(URI source, Instant createdAt, String jwks, String discovery, boolean empty) {
+        this.source = Objects.requireNonNull(source, "Snapshot source cannot be null");
+        this.createdAt = Objects.requireNonNull(createdAt, "Snapshot creation time cannot be null");
+        this.jwks = Objects.requireNonNull(jwks, "Snapshot JWKS cannot be null");
+        this.discovery = discovery;
+        this.empty = empty;
+    }
+
+    /**
+     * Creates a new snapshot
+     *
+     * @param source    Source URI that identifies where the keys were obtained from
+     * @param jwks      JWKS, only the public keys from this are included in the snapshot
+     * @param discovery OpenID Connect configuration the JWKS URL was discovered from, may be {@code null}
+     * @return Snapshot
+     * @throws IOException Thrown if the JWKS or configuration cannot be serialized
+     */
+    public static JwksSnapshot create(URI source, JwkSet jwks, OidcConfiguration discovery) throws IOException {
+        List<Map<String, Object>> keys = new ArrayList<>();
+        for (Jwk<?> jwk : jwks.getKeys()) {
+            if (jwk instanceof PublicJwk<?>) {
+                keys.add(new LinkedHashMap<>(jwk));
+            }
+        }
+        return new JwksSnapshot(source, Instant.now(), JSON.writeValueAsString(Map.of("keys", keys)),
+                                discovery != null ? JSON.writeValueAsString(discovery) : null, keys.isEmpty());
+    }
+
+    /**
+     * Gets the source URI the snapshot was taken for
+     *
+     * @return Source URI
+     */
+    public URI getSource() {
+        return this.source;
+    }
+
+    /**
+     * Gets when the snapshot was taken
+     *
+     * @return Creation time
+     */
+    public Instant getCreatedAt() {
+        return this.createdAt;
+    }
+
+    /**
+     * Indicates whether the snapshot captured no keys, e.g. because the JWKS only contained secret keys, such a
+     * snapshot is not useful for a warm start and cannot be read back
+     *
+     * @return True if empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return this.empty;
+    }
+
+    /**
+     * Indicates whether this snapshot captured the same source, keys and discovery metadata as another, ignoring when
+     * each was taken
+     *
+     * @param other Other snapshot, may be {@code null}
+     * @return True if the contents are the same, false otherwise
+     */
+    boolean hasSameContents(JwksSnapshot other) {
+        return other != null && this.source.equals(other.source) && this.jwks.equals(other.jwks) && Objects.equals(
+                this.discovery, other.discovery);
+    }
+
+    /**
+     * Gets the JWKS captured in the snapshot
+     *
+     * @return JWKS
+     */
+    public JwkSet getJwks() {
+        return Jwks.setParser().build().parse(this.jwks);
+    }
+
+    /**
+     * Gets the OpenID Connect configuration captured in the snapshot (if any)
+     *
+     * @return Configuration, or {@code null} if none was captured
+     * @throws IOException Thrown if the captured configuration cannot be parsed
+     */
+    public OidcConfiguration getDiscovery() throws IOException {
+        return this.discovery != null ? JSON.readValue(this.discovery, OidcConfiguration.class) : null;
+    }
+
+    /**
+     * Writes the snapshot to the given file
+     * <p>
+     * The snapshot is first written to a temporary file in the same directory, which is then atomically moved into
+     * place, so concurrent readers never observe a partially written snapshot.  Where the file system supports it the
+     * file is only readable and writable by its owner.
+     * </p>
+     *
+     * @param file File
+     * @throws IOException Thrown if the snapshot cannot be written
+     */
+    public void write(Path file) throws IOException {
+        Map<String, Object> contents = new LinkedHashMap<>();
+        contents.put(VERSION, FORMAT_VERSION);
+        contents.put(SOURCE, this.source.toString());
+        contents.put(CREATED_AT, this.createdAt.toEpochMilli());
+        contents.put(JWKS, this.jwks);
+        contents.put(DISCOVERY, this.discovery);
+        contents.put(CHECKSUM, checksum(FORMAT_VERSION, this.source.toString(), this.createdAt.toEpochMilli(),
+                                        this.jwks, this.discovery));
+
+        Path target = file.toAbsolutePath();
+        Path directory = target.getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+        try {
+            setOwnerOnly(temp);
+            JSON.writeValue(temp.toFile(), contents);
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reads a snapshot from the given file, if one exists and is valid
+     * <p>
+     * A snapshot is considered invalid, and {@code null} returned, if it cannot be parsed, fails its integrity check,
+     * was taken for a different source, or is older than the given maximum age.
+     * </p>
+     *
+     * @param file           File
+     * @param expectedSource Source URI the snapshot is expected to have been taken for
+     * @param maxAge         Maximum permitted age of the snapshot
+     * @return Snapshot, or {@code null} if no valid snapshot is available
+     */
+    public static JwksSnapshot read(Path file, URI expectedSource, Duration maxAge) {
+        if (file == null || !Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            Map<?, ?> contents = JSON.readValue(file.toFile(), Map.class);
+            if (!(contents.get(VERSION) instanceof Integer version) || version != FORMAT_VERSION) {
+                LOGGER.warn("Ignoring JWKS snapshot {} as it has an unsupported format version", file);
+                return null;
+            }
+            if (!(contents.get(SOURCE) instanceof String rawSource) || !(contents.get(
+                    CREATED_AT) instanceof Number createdAt) || !(contents.get(
+                    JWKS) instanceof String jwks) || !(contents.get(CHECKSUM) instanceof String checksum)) {
+                LOGGER.warn("Ignoring JWKS snapshot {} as it is missing required fields", file);
+                return null;
+            }
+            String discovery = contents.get(DISCOVERY) instanceof String d ? d : null;
+            if (!MessageDigest.isEqual(checksum.getBytes(StandardCharsets.US_ASCII),
+                                       checksum(version, rawSource, createdAt.longValue(), jwks, discovery).getBytes(
+                                               StandardCharsets.US_ASCII))) {
+                LOGGER.warn("Ignoring JWKS snapshot {} as it failed its integrity check", file);
+                return null;
+            }
+            if (expectedSource != null && !Strings.CS.equals(rawSource, expectedSource.toString())) {
+                LOGGER.warn("Ignoring JWKS snapshot {} as it was taken from {} not {}", file, rawSource,
+                            expectedSource);
+                return null;
+            }
+            Instant created = Instant.ofEpochMilli(createdAt.longValue());
+            if (maxAge != null && created.plus(maxAge).isBefore(Instant.now())) {
+                LOGGER.warn("Ignoring JWKS snapshot {} as it is older than the maximum age of {}", file, maxAge);
+                return null;
+            }
+            JwksSnapshot snapshot = new JwksSnapshot(URI.create(rawSource), created, jwks, discovery, false);
+            // Ensure the JWKS actually parses before declaring the snapshot valid
+            snapshot.getJwks();
+            return snapshot;
+        } catch (Throwable e) {
+            LOGGER.warn("Ignoring JWKS snapshot {} as it could not be read: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private static String checksum(int version, String source, long createdAt, String jwks, String discovery) {
+        String contents = String.join("\n", Integer.toString(version), source, Long.toString(createdAt), jwks,
+                                      StringUtils.defaultString(discovery));
+        return HexFormat.of().formatHex(Hashing.sha256(contents));
+    }
+
+    private static void setOwnerOnly(Path file) {
+        try {
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException | IOException e) {
+            // Not a POSIX file system, rely on the default permissions
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "JwksSnapshot{source=" + this.source + ", createdAt=" + this.createdAt + "}";
+    }
+}
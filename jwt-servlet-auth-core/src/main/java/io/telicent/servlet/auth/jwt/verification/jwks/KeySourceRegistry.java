@@ -0,0 +1,398 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.jwks;
+
+import io.telicent.servlet.auth.jwt.verification.KeyFetcher;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.Cleaner;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A process-wide, reference counted, registry of shared key sources and HTTP clients
+ * <p>
+ * This registry is the single owner of the HTTP clients used to fetch key material and make introspection requests,
+ * clients are keyed by their connect timeout, since that is a property of the client rather than of individual
+ * requests, so everything configured with the same connect timeout shares a single client and connection pool.
+ * </p>
+ * <p>
+ * Key sources are keyed by their normalised configuration, i.e. the JWKS or OpenID Connect discovery URI plus the
+ * caching, snapshot and discovery settings, so every verifier configured against the same identity provider with the
+ * same settings shares a single {@link CachedJwksKeyLocator}, and thus a single cache, connection pool and refresh
+ * cycle, rather than each holding their own.  Callers {@code acquire} a {@link Lease} on a key source and release it via
+ * {@link Lease#close()} once no longer needed, a key source is discarded once all leases on it have been released.
+ * Since verifiers have no explicit lifecycle {@link #releaseWhenUnreachable(Object, Lease)} may instead be used to
+ * release a lease once the verifier using it has been garbage collected.
+ * </p>
+ * <p>
+ * Note that the registry is shared by everything loaded by the same class loader, so to share key sources between
+ * multiple web applications in a container this library must be deployed in the container's shared class path.
+ * </p>
+ */
+public final class KeySourceRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KeySourceRegistry.class);
+
+    private static final Cleaner CLEANER = Cleaner.create();
+    // NB - The lock only guards the map and reference counts, key sources are built outside of it since building one
+    //      may read a snapshot file, callers acquiring a key source that is still being built wait on its future.
+    //      Using an explicit lock rather than synchronized so as not to pin virtual threads
+    private static final ReentrantLock LOCK = new ReentrantLock();
+    private static final Map<SourceKey, Entry> SOURCES = new HashMap<>();
+    private static final Map<Duration, HttpClient> CLIENTS = new ConcurrentHashMap<>();
+
+    /**
+     * Private constructor to prevent direct instantiation
+     */
+    private KeySourceRegistry() {
+
+    }
+
+    /**
+     * Gets the shared HTTP client, with the default connect timeout, used to fetch JWKS and OpenID Connect
+     * configuration
+     *
+     * @return Shared HTTP client
+     */
+    public static HttpClient httpClient() {
+        return httpClient(KeyFetcher.Settings.DEFAULT.connectTimeout());
+    }
+
+    /**
+     * Gets the shared HTTP client for the given connect timeout
+     *
+     * @param connectTimeout Connect timeout
+     * @return Shared HTTP client
+     */
+    public static HttpClient httpClient(Duration connectTimeout) {
+        Objects.requireNonNull(connectTimeout, "Connect timeout cannot be null");
+        return CLIENTS.computeIfAbsent(connectTimeout, t -> HttpClient.newBuilder().connectTimeout(t).build());
+    }
+
+    /**
+     * Acquires a lease on a shared caching key source for a JWKS URI
+     *
+     * @param jwksUri        JWKS URI
+     * @param cacheKeysFor   How long keys should be cached for
+     * @param snapshotFile   Snapshot file, may be {@code null}
+     * @param snapshotMaxAge Maximum age of a snapshot used for a warm start, may be {@code null}
+     * @param fetchSettings  Key fetch settings
+     * @return Lease on the shared key source
+     */
+    public static Lease<CachedJwksKeyLocator> acquireJwks(URI jwksUri, Duration cacheKeysFor, Path snapshotFile,
+                                                          Duration snapshotMaxAge, KeyFetcher.Settings fetchSettings) {
+        Objects.requireNonNull(jwksUri, "JWKS URI cannot be null");
+        Objects.requireNonNull(fetchSettings, "Key fetch settings cannot be null");
+        return acquire(new SourceKey("jwks", normalise(jwksUri),
+                                     List.of(cacheKeysFor, settings(snapshotFile), settings(snapshotMaxAge),
+                                             fetchSettings)),
+                       () -> CachedJwksKeyLocator.create(new UrlJwksKeyLocator(jwksUri, new KeyFetcher(fetchSettings)),
+                                                        cacheKeysFor, snapshotFile, snapshotMaxAge));
+    }
+
+    /**
+     * Acquires a lease on a shared caching key source that discovers its JWKS URI via OpenID Connect discovery
+     *
+     * @param discoveryUri        Discovery URI
+     * @param retryInterval       Discovery retry interval, may be {@code null}
+     * @param rediscoveryInterval Rediscovery interval, may be {@code null}
+     * @param cacheKeysFor        How long keys should be cached for
+     * @param snapshotFile        Snapshot file, may be {@code null}
+     * @param snapshotMaxAge      Maximum age of a snapshot used for a warm start, may be {@code null}
+     * @param fetchSettings       Key fetch settings
+     * @return Lease on the shared key source
+     */
+    public static Lease<CachedJwksKeyLocator> acquireOidc(URI discoveryUri, Duration retryInterval,
+                                                          Duration rediscoveryInterval, Duration cacheKeysFor,
+                                                          Path snapshotFile, Duration snapshotMaxAge,
+                                                          KeyFetcher.Settings fetchSettings) {
+        Objects.requireNonNull(discoveryUri, "Discovery URI cannot be null");
+        Objects.requireNonNull(fetchSettings, "Key fetch settings cannot be null");
+        return acquire(new SourceKey("oidc", normalise(discoveryUri),
+                                     List.of(settings(retryInterval), settings(rediscoveryInterval), cacheKeysFor,
+                                             settings(snapshotFile), settings(snapshotMaxAge), fetchSettings)),
+                       () -> CachedJwksKeyLocator.create(
+                               new OidcDiscoveryLocator(new KeyFetcher(fetchSettings), discoveryUri, retryInterval,
+                                                        rediscoveryInterval), cacheKeysFor, snapshotFile,
+                               snapshotMaxAge));
+    }
+
+    private static Object settings(Object setting) {
+        // NB - List.of() doesn't permit nulls
+        return setting != null ? setting : "";
+    }
+
+    /**
+     * Acquires a lease on a shared key source, building it if not already registered
+     * <p>
+     * The key source is built outside of the registry lock, so building one slow key source never delays acquiring or
+     * releasing any other, callers that acquire the same key source while it is being built wait for that build.
+     * </p>
+     *
+     * @param key     Key source key
+     * @param factory Factory that builds the key source
+     * @return Lease on the shared key source
+     */
+    static Lease<CachedJwksKeyLocator> acquire(SourceKey key, Supplier<CachedJwksKeyLocator> factory) {
+        Entry entry;
+        boolean build = false;
+        LOCK.lock();
+        try {
+            entry = SOURCES.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                SOURCES.put(key, entry);
+                build = true;
+            }
+            // NB - Counted before the key source is ready so that it can't be discarded while being built
+            entry.references++;
+        } finally {
+            LOCK.unlock();
+        }
+
+        if (build) {
+            try {
+                entry.source.complete(Objects.requireNonNull(factory.get(), "Key source cannot be null"));
+                LOGGER.debug("Created shared key source for {}", key);
+            } catch (RuntimeException | Error e) {
+                // Fail any callers waiting on this build, and discard it so that later callers try building it again
+                entry.source.completeExceptionally(e);
+                discard(key, entry);
+                throw e;
+            }
+        } else {
+            LOGGER.debug("Reusing shared key source for {}", key);
+            try {
+                entry.source.join();
+            } catch (CompletionException | CancellationException e) {
+                release(key, entry);
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        return new Lease<>(key, entry);
+    }
+
+    private static void discard(SourceKey key, Entry entry) {
+        LOCK.lock();
+        try {
+            entry.references--;
+            if (SOURCES.get(key) == entry) {
+                SOURCES.remove(key);
+            }
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    private static void release(SourceKey key, Entry entry) {
+        LOCK.lock();
+        try {
+            entry.references--;
+            if (entry.references <= 0 && SOURCES.get(key) == entry) {
+                SOURCES.remove(key);
+                LOGGER.debug("Discarded shared key source for {} as no longer in use", key);
+            }
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Registers a lease to be released once the given owner, typically the verifier using the key source, is no longer
+     * reachable
+     *
+     * @param owner Owner of the lease
+     * @param lease Lease
+     */
+    public static void releaseWhenUnreachable(Object owner, Lease<?> lease) {
+        Objects.requireNonNull(owner, "Owner cannot be null");
+        Objects.requireNonNull(lease, "Lease cannot be null");
+        // NB - The cleaning action must not reference the owner otherwise it would never become unreachable
+        CLEANER.register(owner, lease::close);
+    }
+
+    /**
+     * Registers a resource, e.g. a key locator that watches a file for changes, to be closed once the given owner,
+     * typically the verifier using the resource, is no longer reachable
+     *
+     * @param owner    Owner of the resource
+     * @param resource Resource
+     */
+    public static void closeWhenUnreachable(Object owner, AutoCloseable resource) {
+        Objects.requireNonNull(owner, "Owner cannot be null");
+        Objects.requireNonNull(resource, "Resource cannot be null");
+        // NB - The cleaning action must not reference the owner otherwise it would never become unreachable
+        CLEANER.register(owner, () -> {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                LOGGER.warn("Failed to close {}: {}", resource, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Gets the number of shared key sources currently registered
+     *
+     * @return Number of key sources
+     */
+    public static int size() {
+        LOCK.lock();
+        try {
+            return SOURCES.size();
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Resets the registry discarding all registered key sources, existing leases remain usable
+     * <p>
+     * Primarily only needed for unit testing scenarios to ensure test isolation.
+     * </p>
+     */
+    public static void reset() {
+        LOCK.lock();
+        try {
+            SOURCES.clear();
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Normalises a URI so that trivially different forms of the same URI share a key source, the scheme and host are
+     * lower cased, default ports removed, the path normalised and any fragment dropped
+     *
+     * @param uri URI
+     * @return Normalised URI
+     */
+    static URI normalise(URI uri) {
+        URI normalised = uri.normalize();
+        if (normalised.isOpaque() || normalised.getRawAuthority() == null) {
+            return normalised;
+        }
+        String scheme = StringUtils.lowerCase(normalised.getScheme(), Locale.ROOT);
+        int port = normalised.getPort();
+        if (("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443)) {
+            port = -1;
+        }
+        StringBuilder builder = new StringBuilder();
+        if (scheme != null) {
+            builder.append(scheme).append(':');
+        }
+        builder.append("//");
+        if (normalised.getRawUserInfo() != null) {
+            builder.append(normalised.getRawUserInfo()).append('@');
+        }
+        builder.append(normalised.getHost() != null ? normalised.getHost().toLowerCase(Locale.ROOT) :
+                       normalised.getRawAuthority());
+        if (normalised.getHost() != null && port != -1) {
+            builder.append(':').append(port);
+        }
+        builder.append(StringUtils.isEmpty(normalised.getRawPath()) ? "/" : normalised.getRawPath());
+        if (normalised.getRawQuery() != null) {
+            builder.append('?').append(normalised.getRawQuery());
+        }
+        return URI.create(builder.toString());
+    }
+
+    /**
+     * Key identifying a shared key source
+     *
+     * @param type     Type of key source
+     * @param uri      Normalised URI
+     * @param settings Settings
+     */
+    record SourceKey(String type, URI uri, List<Object> settings) {
+    }
+
+    /**
+     * A registered key source, completed once it has been built, and its reference count, guarded by {@link #LOCK}
+     */
+    private static final class Entry {
+        private final CompletableFuture<CachedJwksKeyLocator> source = new CompletableFuture<>();
+        private int references;
+    }
+
+    /**
+     * A lease on a shared key source, which must be released via {@link #close()} once no longer needed
+     *
+     * @param <T> Key source type
+     */
+    public static final class Lease<T> implements AutoCloseable {
+        private final SourceKey key;
+        private final Entry entry;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Lease(SourceKey key, Entry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+
+        /**
+         * Gets the shared key source
+         *
+         * @return Key source
+         */
+        @SuppressWarnings("unchecked")
+        public T get() {
+            // NB - Leases are only handed out once their key source has been built so this never waits
+            return (T) this.entry.source.join();
+        }
+
+        /**
+         * Gets whether this lease has been released
+         *
+         * @return True if released, false otherwise
+         */
+        public boolean isReleased() {
+            return this.released.get();
+        }
+
+        /**
+         * Releases the lease, releasing an already released lease has no effect
+         */
+        @Override
+        public void close() {
+            if (this.released.compareAndSet(false, true)) {
+                release(this.key, this.entry);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Lease{" + this.key.uri() + (this.released.get() ? ", released" : "") + "}";
+        }
+    }
+}
@@ -22,29 +22,50 @@ import io.telicent.servlet.auth.jwt.configuration.oidc.OidcRegistry;
 import io.telicent.servlet.auth.jwt.configuration.oidc.OidcVerificationProvider;
 import io.telicent.servlet.auth.jwt.configuration.oidc.OidcConfiguration;
 import io.telicent.servlet.auth.jwt.errors.KeyLoadException;
+import io.telicent.servlet.auth.jwt.verification.KeyFetcher;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.ref.WeakReference;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.time.Duration;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A JWKS locator that discovers the JWKS URL via an Open ID Connect configuration endpoint
+ * <p>
+ * Discovery is performed at most once concurrently, callers that arrive while a discovery is in progress wait for, and
+ * share, its outcome.  Once discovered, or restored from a snapshot, the configuration is periodically rediscovered in
+ * the background, so a change in the providers {@code jwks_uri} is picked up without restarting the application.
+ * </p>
  */
 public class OidcDiscoveryLocator extends AbstractJwksLocator {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(OidcDiscoveryLocator.class);
 
     private final URI discoveryUri;
-    private URI jwksUri = null;
+    private volatile URI jwksUri = null;
+    private volatile OidcConfiguration configuration = null;
     private final OidcConfigurationLoader configLoader;
-    private long lastDiscoveryAttemptAt = Long.MIN_VALUE;
+    private volatile long lastDiscoveryAttemptAt = Long.MIN_VALUE;
     private final Duration retryInterval;
-    private boolean nonStandardWarning = false;
+    private final Duration rediscoveryInterval;
+    private final AtomicBoolean nonStandardWarning;
+    private final AtomicReference<CompletableFuture<URI>> inflightDiscovery = new AtomicReference<>();
+    private final AtomicBoolean rediscoveryStarted = new AtomicBoolean(false);
+    private volatile ScheduledFuture<?> rediscovery;
+    private volatile boolean rediscoveryStopped = false;
 
     /**
      * Creates a new OpenID Connect discovery locator
@@ -54,7 +75,7 @@ public class OidcDiscoveryLocator extends AbstractJwksLocator {
      *                     OpenID Connect compliant authentication server
      */
     public OidcDiscoveryLocator(URI discoveryUri) {
-        this(createDefaultClient(), discoveryUri, null);
+        this(KeySourceRegistry.httpClient(), discoveryUri, null);
     }
 
     /**
@@ -67,7 +88,22 @@ public class OidcDiscoveryLocator extends AbstractJwksLocator {
      *                      failed
      */
     public OidcDiscoveryLocator(URI discoveryUri, Duration retryInterval) {
-        this(createDefaultClient(), discoveryUri, retryInterval);
+        this(KeySourceRegistry.httpClient(), discoveryUri, retryInterval);
+    }
+
+    /**
+     * Creates a new OpenID Connect discovery locator
+     *
+     * @param discoveryUri        Discovery URI, this should be the OpenID Connect configuration endpoint, which is
+     *                            usually the {@value OidcVerificationProvider#WELL_KNOWN_OPENID_CONFIGURATION} endpoint
+     *                            of your OpenID Connect compliant authentication server
+     * @param retryInterval       Retry interval to wait before re-attempting configuration discovery if a previous
+     *                            attempt failed
+     * @param rediscoveryInterval Interval at which configuration is rediscovered in the background, a zero duration
+     *                            disables background rediscovery
+     */
+    public OidcDiscoveryLocator(URI discoveryUri, Duration retryInterval, Duration rediscoveryInterval) {
+        this(KeySourceRegistry.httpClient(), discoveryUri, retryInterval, rediscoveryInterval);
     }
 
     /**
@@ -81,54 +117,162 @@ public class OidcDiscoveryLocator extends AbstractJwksLocator {
      *                      failed
      */
     public OidcDiscoveryLocator(HttpClient client, URI discoveryUri, Duration retryInterval) {
-        super(client);
+        this(client, discoveryUri, retryInterval, null);
+    }
+
+    /**
+     * Creates a new OpenID Connect discovery locator
+     *
+     * @param client              HTTP Client to use
+     * @param discoveryUri        Discovery URI, this should be the OpenID Connect configuration endpoint, which is
+     *                            usually the {@value OidcVerificationProvider#WELL_KNOWN_OPENID_CONFIGURATION} endpoint
+     *                            of your OpenID Connect compliant authentication server
+     * @param retryInterval       Retry interval to wait before re-attempting configuration discovery if a previous
+     *                            attempt failed
+     * @param rediscoveryInterval Interval at which configuration is rediscovered in the background, a zero duration
+     *                            disables background rediscovery, {@code null} uses the default of
+     *                            {@value ConfigurationParameters#DEFAULT_OIDC_REDISCOVERY_INTERVAL} seconds
+     */
+    public OidcDiscoveryLocator(HttpClient client, URI discoveryUri, Duration retryInterval,
+                                Duration rediscoveryInterval) {
+        this(new KeyFetcher(Objects.requireNonNull(client, "HTTP Client cannot be null"), KeyFetcher.Settings.DEFAULT),
+             discoveryUri, retryInterval, rediscoveryInterval);
+    }
+
+    /**
+     * Creates a new OpenID Connect discovery locator
+     *
+     * @param fetcher             Key fetcher to use
+     * @param discoveryUri        Discovery URI, this should be the OpenID Connect configuration endpoint, which is
+     *                            usually the {@value OidcVerificationProvider#WELL_KNOWN_OPENID_CONFIGURATION} endpoint
+     *                            of your OpenID Connect compliant authentication server
+     * @param retryInterval       Retry interval to wait before re-attempting configuration discovery if a previous
+     *                            attempt failed
+     * @param rediscoveryInterval Interval at which configuration is rediscovered in the background, a zero duration
+     *                            disables background rediscovery, {@code null} uses the default of
+     *                            {@value ConfigurationParameters#DEFAULT_OIDC_REDISCOVERY_INTERVAL} seconds
+     */
+    public OidcDiscoveryLocator(KeyFetcher fetcher, URI discoveryUri, Duration retryInterval,
+                                Duration rediscoveryInterval) {
+        super(fetcher);
         this.discoveryUri =
                 Objects.requireNonNull(discoveryUri, "Open ID Connect configuration discovery URL cannot be null");
-        this.nonStandardWarning = !Strings.CS.endsWith(discoveryUri.toString(),
-                                                       OidcVerificationProvider.WELL_KNOWN_OPENID_CONFIGURATION);
+        this.nonStandardWarning = new AtomicBoolean(!Strings.CS.endsWith(discoveryUri.toString(),
+                                                                         OidcVerificationProvider.WELL_KNOWN_OPENID_CONFIGURATION));
         this.retryInterval = retryInterval != null ? retryInterval :
                              Duration.ofSeconds(ConfigurationParameters.DEFAULT_OIDC_RETRY_INTERVAL);
         if (this.retryInterval.isNegative()) {
             throw new IllegalArgumentException("retryInterval cannot be negative");
         }
-        this.configLoader = new OidcConfigurationLoader(this.client);
+        this.rediscoveryInterval = rediscoveryInterval != null ? rediscoveryInterval :
+                                   Duration.ofSeconds(ConfigurationParameters.DEFAULT_OIDC_REDISCOVERY_INTERVAL);
+        if (this.rediscoveryInterval.isNegative()) {
+            throw new IllegalArgumentException("rediscoveryInterval cannot be negative");
+        }
+        this.configLoader = new OidcConfigurationLoader(this.fetcher);
     }
 
     @Override
     protected URI getJwksURI() {
-        if (this.jwksUri != null) {
-            return this.jwksUri;
+        URI current = this.jwksUri;
+        if (current != null) {
+            return current;
         }
 
         // Don't DoS the discovery endpoint if we can't resolve it, wait at least the retry interval before attempting
         // discovery again
-        if (this.lastDiscoveryAttemptAt != Long.MIN_VALUE) {
-            Duration elapsed = Duration.ofMillis(System.currentTimeMillis() - this.lastDiscoveryAttemptAt);
+        long lastAttempt = this.lastDiscoveryAttemptAt;
+        if (lastAttempt != Long.MIN_VALUE && this.inflightDiscovery.get() == null) {
+            Duration elapsed = Duration.ofMillis(System.currentTimeMillis() - lastAttempt);
             if (elapsed.compareTo(this.retryInterval) < 0) {
                 throw new InvalidKeyException(
                         "Unable to resolve JWKS URL via OpenID Connect configuration discovery and retry interval (" + this.retryInterval + ") has not yet elapsed");
             }
         }
 
+        return discover(true);
+    }
+
+    /**
+     * Forces a fresh configuration discovery, bypassing the {@link OidcRegistry}, updating the JWKS URL in use if the
+     * provider now advertises a different one
+     * <p>
+     * This is called periodically in the background if a rediscovery interval is configured.  If rediscovery fails the
+     * previously discovered JWKS URL, if any, remains in use.
+     * </p>
+     */
+    public void rediscover() {
+        try {
+            discover(false);
+        } catch (InvalidKeyException e) {
+            // Already logged, keep using whatever was previously discovered
+        }
+    }
+
+    /**
+     * Performs discovery, or if one is already in progress waits for it to complete and shares its outcome
+     *
+     * @param useRegistry Whether a configuration previously registered with the {@link OidcRegistry} may be used
+     * @return Discovered JWKS URL
+     * @throws InvalidKeyException Thrown if discovery fails
+     */
+    private URI discover(boolean useRegistry) {
+        CompletableFuture<URI> discovery = new CompletableFuture<>();
+        CompletableFuture<URI> existing = this.inflightDiscovery.compareAndExchange(null, discovery);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw e;
+            }
+        }
+
+        try {
+            // Another caller may have completed discovery between our initial check and claiming the discovery
+            URI current = this.jwksUri;
+            URI discovered = useRegistry && current != null ? current : doDiscovery(useRegistry);
+            discovery.complete(discovered);
+            return discovered;
+        } catch (RuntimeException e) {
+            discovery.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.inflightDiscovery.compareAndSet(discovery, null);
+        }
+    }
+
+    private URI doDiscovery(boolean useRegistry) {
         // Issue a warning once, and once only, if the configured Discovery URI is non-standard
-        if (this.nonStandardWarning) {
+        if (this.nonStandardWarning.compareAndSet(true, false)) {
             LOGGER.warn(
                     "Non-standard OpenID Connect discovery endpoint in-use (does not end with expected " + OidcVerificationProvider.WELL_KNOWN_OPENID_CONFIGURATION + " suffix)");
-            this.nonStandardWarning = false;
         }
 
         try {
             this.lastDiscoveryAttemptAt = System.currentTimeMillis();
-            OidcConfiguration configuration = OidcRegistry.get(this.discoveryUri);
+            OidcConfiguration configuration = useRegistry ? OidcRegistry.get(this.discoveryUri) : null;
             if (configuration != null) {
                 LOGGER.info("Using previously cached OpenID Connect configuration from {}", discoveryUri);
             } else {
                 configuration = this.configLoader.load(this.discoveryUri);
             }
             if (StringUtils.isNotBlank(configuration.getJwksUri())) {
-                LOGGER.info("Obtained OpenID Connect configuration from {} provided JWKS URL {}", discoveryUri,
-                            configuration.getJwksUri());
-                this.jwksUri = URI.create(configuration.getJwksUri());
+                URI discovered = URI.create(configuration.getJwksUri());
+                URI previous = this.jwksUri;
+                if (previous == null) {
+                    LOGGER.info("Obtained OpenID Connect configuration from {} provided JWKS URL {}", discoveryUri,
+                                discovered);
+                } else if (!previous.equals(discovered)) {
+                    LOGGER.info("Rediscovered OpenID Connect configuration from {} changed JWKS URL from {} to {}",
+                                discoveryUri, previous, discovered);
+                }
+                this.configuration = configuration;
+                this.jwksUri = discovered;
+                startRediscovery();
+                return discovered;
             } else {
                 throw new KeyLoadException(
                         "Obtained OpenID Connect configuration from " + discoveryUri + " did not contain a jwks_uri field to indicate the JWKS URL");
@@ -138,14 +282,135 @@ public class OidcDiscoveryLocator extends AbstractJwksLocator {
             throw new InvalidKeyException(
                     "Unable to resolve JWKS URL via OpenID Connect configuration discovery: " + e.getMessage());
         }
+    }
+
+    @Override
+    protected URI getSourceURI() {
+        return this.discoveryUri;
+    }
+
+    @Override
+    protected OidcConfiguration getDiscoveryMetadata() {
+        return this.configuration;
+    }
 
-        return this.jwksUri;
+    @Override
+    protected void restoreDiscoveryMetadata(OidcConfiguration metadata) {
+        if (metadata == null || StringUtils.isBlank(metadata.getJwksUri()) || this.jwksUri != null) {
+            return;
+        }
+        LOGGER.info("Restored OpenID Connect configuration for {} from snapshot providing JWKS URL {}", discoveryUri,
+                    metadata.getJwksUri());
+        this.configuration = metadata;
+        this.jwksUri = URI.create(metadata.getJwksUri());
+        OidcRegistry.register(this.discoveryUri, metadata);
+        startRediscovery();
+    }
+
+    @Override
+    protected void revalidateDiscoveryMetadata() {
+        rediscover();
+    }
+
+    /**
+     * Starts background rediscovery for this locator, unless disabled, already started or stopped
+     * <p>
+     * This is called automatically once configuration is first discovered, or restored from a snapshot, so it is not
+     * normally necessary to call this directly.
+     * </p>
+     */
+    public void startRediscovery() {
+        if (this.rediscoveryInterval.isZero() || this.rediscoveryStopped
+            || !this.rediscoveryStarted.compareAndSet(false, true)) {
+            return;
+        }
+        this.rediscovery = RediscoveryTask.schedule(this);
+        if (this.rediscoveryStopped) {
+            // Stopped concurrently with being started
+            this.rediscovery.cancel(false);
+        }
+    }
+
+    /**
+     * Stops background rediscovery for this locator, once stopped rediscovery is never restarted
+     * <p>
+     * It is not strictly necessary to call this as background rediscovery automatically stops once the locator is no
+     * longer referenced.
+     * </p>
+     */
+    public void stopRediscovery() {
+        this.rediscoveryStopped = true;
+        ScheduledFuture<?> scheduled = this.rediscovery;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
     }
 
     @Override
     public String toString() {
+        URI current = this.jwksUri;
         return "OidcDiscoveryLocator{discoveryUrl=" + this.discoveryUri.toString() + ", jwksUrl=" + (
-                this.jwksUri != null ? this.jwksUri.toString() :
-                "<not yet discovered>") + ", retryInterval=" + this.retryInterval.toString() + "}";
+                current != null ? current.toString() :
+                "<not yet discovered>") + ", retryInterval=" + this.retryInterval.toString() + ", rediscoveryInterval=" + this.rediscoveryInterval.toString() + "}";
+    }
+
+    /**
+     * Background task that periodically rediscovers configuration for a locator
+     * <p>
+     * Only weakly references the locator so that scheduling rediscovery does not prevent it being garbage collected,
+     * the task cancels itself once the locator is gone.  The shared scheduler thread only triggers rediscovery, which
+     * performs blocking HTTP requests, on a virtual thread so that a slow provider never delays rediscovery for other
+     * locators.  A rediscovery that is still running when the next is due is not overlapped.
+     * </p>
+     */
+    private static final class RediscoveryTask implements Runnable {
+        private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "oidc-rediscovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private final WeakReference<OidcDiscoveryLocator> locator;
+        private final AtomicBoolean running = new AtomicBoolean(false);
+        private volatile ScheduledFuture<?> future;
+
+        private RediscoveryTask(OidcDiscoveryLocator locator) {
+            this.locator = new WeakReference<>(locator);
+        }
+
+        private static ScheduledFuture<?> schedule(OidcDiscoveryLocator locator) {
+            RediscoveryTask task = new RediscoveryTask(locator);
+            long interval = Math.max(1, locator.rediscoveryInterval.toMillis());
+            task.future = SCHEDULER.scheduleWithFixedDelay(task, interval, interval, TimeUnit.MILLISECONDS);
+            return task.future;
+        }
+
+        @Override
+        public void run() {
+            OidcDiscoveryLocator target = this.locator.get();
+            if (target == null) {
+                ScheduledFuture<?> scheduled = this.future;
+                if (scheduled != null) {
+                    scheduled.cancel(false);
+                }
+                return;
+            }
+            if (!this.running.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                Thread.ofVirtual().name("oidc-rediscovery-" + target.discoveryUri).start(() -> {
+                    try {
+                        target.rediscover();
+                    } finally {
+                        this.running.set(false);
+                    }
+                });
+            } catch (Throwable e) {
+                this.running.set(false);
+                LOGGER.warn("Failed to start OpenID Connect rediscovery for {}: {}", target.discoveryUri,
+                            e.getMessage());
+            }
+        }
     }
 }
@@ -16,6 +16,7 @@
 package io.telicent.servlet.auth.jwt.verification.jwks;
 
 import io.jsonwebtoken.security.JwkSet;
+import io.telicent.servlet.auth.jwt.verification.KeyFetcher;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Strings;
 
@@ -57,7 +58,7 @@ public class UrlJwksKeyLocator extends AbstractJwksLocator {
      * @param jwksURI JWKS URI
      */
     public UrlJwksKeyLocator(URI jwksURI) {
-        this(jwksURI, createDefaultClient());
+        this(jwksURI, KeySourceRegistry.httpClient());
     }
 
     /**
@@ -68,11 +69,27 @@ public class UrlJwksKeyLocator extends AbstractJwksLocator {
      */
     public UrlJwksKeyLocator(URI jwksURI, HttpClient client) {
         super(client);
-        this.jwksURI = Objects.requireNonNull(jwksURI, "JWKS URI cannot be null");
+        this.jwksURI = validate(jwksURI);
+    }
+
+    /**
+     * Creates a new locator
+     *
+     * @param jwksURI JWKS URI
+     * @param fetcher Key fetcher
+     */
+    public UrlJwksKeyLocator(URI jwksURI, KeyFetcher fetcher) {
+        super(fetcher);
+        this.jwksURI = validate(jwksURI);
+    }
+
+    private static URI validate(URI jwksURI) {
+        Objects.requireNonNull(jwksURI, "JWKS URI cannot be null");
         if (!isSupportedScheme(jwksURI)) {
             throw new IllegalArgumentException(
                     "JWKS URI does not use any of the supported schemes: " + StringUtils.join(SUPPORTED_SCHEMES, ", "));
         }
+        return jwksURI;
     }
 
     @Override
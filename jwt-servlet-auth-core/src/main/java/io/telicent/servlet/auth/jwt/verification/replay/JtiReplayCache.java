@@ -0,0 +1,390 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.replay;
+
+import io.telicent.servlet.auth.jwt.Hashing;
+import io.telicent.servlet.auth.jwt.errors.VerificationUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * A cache of JWT IDs ({@code jti}) that have been used, for detecting replays of one-time-use tokens
+ * <p>
+ * Rather than the JWT IDs themselves a 64-bit fingerprint of the issuer and JWT ID is stored, and each fingerprint is
+ * only remembered until the token it came from expires, after which the token would be rejected anyway.  The cache is
+ * split into independently locked stripes, selected by fingerprint, so that concurrent requests rarely contend.  Each
+ * stripe holds its fingerprints, and their expiries, inline in an open-addressing table of primitive {@code long}s so
+ * there is no boxing or per-entry allocation, and expires them via its own {@link TimerWheel} so there is no per-entry
+ * scheduling.
+ * </p>
+ * <p>
+ * Memory is bounded by the configured maximum number of entries, which bounds both the tables and the timer wheels
+ * since fingerprints are only ever removed from a table when their timer wheel entry expires.  Tables start small and
+ * double as they fill, up to the size needed for the maximum, so an idle cache costs little regardless of its maximum.
+ * Each held fingerprint costs roughly 50 bytes at most, across its table slot and timer wheel entry, so the default
+ * maximum of {@value #DEFAULT_MAX_ENTRIES} entries bounds the cache at around 50 MB.  If a stripe is full when
+ * a new token is used then the cache fails closed, refusing to record the token with a
+ * {@link VerificationUnavailableException} rather than forgetting some other token that could then be replayed.  Such
+ * refusals are logged and counted, see {@link #getRejections()}.  Since fingerprints are spread across the stripes by
+ * hash the maximum should be sized to comfortably exceed the token rate multiplied by the token lifetime.
+ * </p>
+ */
+public class JtiReplayCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JtiReplayCache.class);
+
+    /**
+     * The default maximum number of fingerprints held
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1_000_000;
+
+    /**
+     * The default number of stripes
+     */
+    public static final int DEFAULT_STRIPES = 64;
+
+    private static final long TICK_MILLIS = 1000;
+
+    /**
+     * The initial capacity of each stripe's table
+     */
+    static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Marks an empty slot in a stripe's table, a fingerprint that happens to equal this is stored as {@link #ZERO}
+     */
+    private static final long EMPTY = 0L;
+    private static final long ZERO = 1L;
+
+    /**
+     * Outcomes of recording a fingerprint in a stripe
+     */
+    private static final int RECORDED = 0;
+    private static final int REPLAYED = 1;
+    private static final int FULL = 2;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final int maxEntriesPerStripe;
+    private final LongSupplier clock;
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * Creates a new replay cache
+     *
+     * @param maxEntries Maximum number of fingerprints held, once reached further tokens are refused until some of the
+     *                   held fingerprints expire
+     */
+    public JtiReplayCache(int maxEntries) {
+        this(maxEntries, DEFAULT_STRIPES, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a new replay cache
+     *
+     * @param maxEntries Maximum number of fingerprints held
+     * @param stripes    Number of stripes, rounded up to a power of two
+     * @param clock      Clock supplying the current time in milliseconds
+     */
+    JtiReplayCache(int maxEntries, int stripes, LongSupplier clock) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        if (stripes < 1) {
+            throw new IllegalArgumentException("stripes must be at least 1");
+        }
+        this.clock = Objects.requireNonNull(clock, "Clock cannot be null");
+        int count = Integer.highestOneBit(Math.min(stripes, maxEntries) * 2 - 1);
+        this.stripes = new Stripe[count];
+        this.stripeMask = count - 1;
+        this.maxEntriesPerStripe = Math.max(1, maxEntries / count);
+        long now = toTick(clock.getAsLong());
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe(this.maxEntriesPerStripe, now);
+        }
+    }
+
+    private static long toTick(long millis) {
+        return Math.floorDiv(millis, TICK_MILLIS);
+    }
+
+    /**
+     * Records that a token has been used
+     *
+     * @param issuer Issuer of the token, may be {@code null}
+     * @param jti    JWT ID of the token
+     * @param expiry When the token expires
+     * @return True if this is the first use of the token, false if it is a replay
+     * @throws VerificationUnavailableException Thrown if the stripe the token falls into is full so its use cannot be
+     *                                          recorded
+     */
+    public boolean markUsed(String issuer, String jti, Instant expiry) {
+        Objects.requireNonNull(jti, "jti cannot be null");
+        Objects.requireNonNull(expiry, "Expiry cannot be null");
+        long fingerprint = fingerprint(issuer, jti);
+        if (fingerprint == EMPTY) {
+            fingerprint = ZERO;
+        }
+        Stripe stripe = this.stripes[(int) (fingerprint ^ (fingerprint >>> 32)) & this.stripeMask];
+        long now = toTick(this.clock.getAsLong());
+        // Round up so a fingerprint is never forgotten before its token expires
+        long expiryTick = toTick(expiry.toEpochMilli() + TICK_MILLIS - 1);
+        int outcome;
+        boolean becameFull;
+        stripe.lock.lock();
+        try {
+            outcome = stripe.markUsed(fingerprint, expiryTick, now);
+            becameFull = outcome == FULL && !stripe.full;
+            stripe.full = outcome == FULL;
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (outcome == FULL) {
+            this.rejections.increment();
+            if (becameFull) {
+                LOGGER.warn("Replay cache stripe is full, refusing tokens that fall into it until some of its {} "
+                            + "entries expire, consider increasing the maximum entries from {}",
+                            this.maxEntriesPerStripe, (long) this.maxEntriesPerStripe * this.stripes.length);
+            }
+            throw new VerificationUnavailableException("Replay cache is full, unable to record token use");
+        }
+        return outcome == RECORDED;
+    }
+
+    /**
+     * Gets the number of tokens whose use could not be recorded because the cache was full
+     *
+     * @return Rejections
+     */
+    public long getRejections() {
+        return this.rejections.sum();
+    }
+
+    /**
+     * Gets the number of fingerprints currently held, including any that have expired but not yet been evicted
+     *
+     * @return Size
+     */
+    public long size() {
+        long size = 0;
+        for (Stripe stripe : this.stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.size;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Gets the number of fingerprints currently scheduled for expiry across the stripes timer wheels
+     *
+     * @return Scheduled fingerprints
+     */
+    long scheduled() {
+        long scheduled = 0;
+        for (Stripe stripe : this.stripes) {
+            stripe.lock.lock();
+            try {
+                scheduled += stripe.wheel.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return scheduled;
+    }
+
+    /**
+     * Gets the number of slots currently allocated across the stripes tables
+     *
+     * @return Capacity
+     */
+    long capacity() {
+        long capacity = 0;
+        for (Stripe stripe : this.stripes) {
+            stripe.lock.lock();
+            try {
+                capacity += stripe.fingerprints.length;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return capacity;
+    }
+
+    /**
+     * Computes a 64-bit fingerprint of the issuer and JWT ID
+     *
+     * @param issuer Issuer
+     * @param jti    JWT ID
+     * @return Fingerprint
+     */
+    static long fingerprint(String issuer, String jti) {
+        return Hashing.fingerprint(issuer, jti);
+    }
+
+    @Override
+    public String toString() {
+        return "JtiReplayCache{stripes=" + this.stripes.length + ", maxEntries="
+               + (long) this.maxEntriesPerStripe * this.stripes.length + "}";
+    }
+
+    /**
+     * A stripe of the cache, guarded by its own lock
+     * <p>
+     * Fingerprints are held in a linear probing table that doubles whenever it would become more than three quarters
+     * full, up to a capacity that holds the maximum entries at that load, with removals shifting later entries of the
+     * same probe sequence back so that no tombstones are needed.
+     * </p>
+     */
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int maxEntries;
+        private final int maxCapacity;
+        private final TimerWheel wheel;
+        private long[] fingerprints;
+        private long[] expiries;
+        private int size;
+        private boolean full;
+
+        private Stripe(int maxEntries, long now) {
+            this.maxEntries = maxEntries;
+            // NB - Always at least one more slot than entries so probing a full table still finds an empty slot
+            this.maxCapacity = (int) Math.min(Integer.MAX_VALUE - 8, maxEntries + maxEntries / 3L + 1);
+            int capacity = Math.min(INITIAL_CAPACITY, this.maxCapacity);
+            this.fingerprints = new long[capacity];
+            this.expiries = new long[capacity];
+            this.wheel = new TimerWheel(now);
+        }
+
+        /**
+         * Records a fingerprint
+         *
+         * @param fingerprint Fingerprint
+         * @param expiryTick  Expiry tick
+         * @param now         Current tick
+         * @return {@link #RECORDED}, {@link #REPLAYED} if already present, or {@link #FULL} if the stripe is full
+         */
+        private int markUsed(long fingerprint, long expiryTick, long now) {
+            this.wheel.advance(now, this::expire);
+            int slot = find(fingerprint);
+            if (slot >= 0) {
+                return REPLAYED;
+            }
+            if (this.size >= this.maxEntries) {
+                return FULL;
+            }
+            if ((this.size + 1) * 4L > this.fingerprints.length * 3L && this.fingerprints.length < this.maxCapacity) {
+                grow();
+                slot = find(fingerprint);
+            }
+            slot = -1 - slot;
+            this.fingerprints[slot] = fingerprint;
+            this.expiries[slot] = expiryTick;
+            this.size++;
+            this.wheel.schedule(fingerprint, expiryTick);
+            return RECORDED;
+        }
+
+        /**
+         * Doubles the capacity of the table, up to the maximum capacity, rehashing the fingerprints held
+         */
+        private void grow() {
+            long[] oldFingerprints = this.fingerprints;
+            long[] oldExpiries = this.expiries;
+            int capacity = (int) Math.min(this.maxCapacity, oldFingerprints.length * 2L);
+            this.fingerprints = new long[capacity];
+            this.expiries = new long[capacity];
+            for (int i = 0; i < oldFingerprints.length; i++) {
+                if (oldFingerprints[i] != EMPTY) {
+                    int slot = -1 - find(oldFingerprints[i]);
+                    this.fingerprints[slot] = oldFingerprints[i];
+                    this.expiries[slot] = oldExpiries[i];
+                }
+            }
+        }
+
+        /**
+         * Removes an expired fingerprint
+         *
+         * @param fingerprint Fingerprint
+         */
+        private void expire(long fingerprint) {
+            int slot = find(fingerprint);
+            if (slot >= 0 && this.expiries[slot] <= this.wheel.currentTick()) {
+                remove(slot);
+            }
+        }
+
+        /**
+         * Finds a fingerprint in the table
+         *
+         * @param fingerprint Fingerprint
+         * @return Slot holding the fingerprint, or {@code -1 - slot} where {@code slot} is the empty slot it would be
+         * inserted into
+         */
+        private int find(long fingerprint) {
+            int slot = home(fingerprint);
+            while (true) {
+                long current = this.fingerprints[slot];
+                if (current == fingerprint) {
+                    return slot;
+                } else if (current == EMPTY) {
+                    return -1 - slot;
+                }
+                slot = next(slot);
+            }
+        }
+
+        private void remove(int slot) {
+            int hole = slot;
+            int i = next(slot);
+            while (this.fingerprints[i] != EMPTY) {
+                // An entry can fill the hole only if the hole lies between its home slot and its current slot,
+                // otherwise it would no longer be reachable from its home slot
+                if (distance(home(this.fingerprints[i]), i) >= distance(hole, i)) {
+                    this.fingerprints[hole] = this.fingerprints[i];
+                    this.expiries[hole] = this.expiries[i];
+                    hole = i;
+                }
+                i = next(i);
+            }
+            this.fingerprints[hole] = EMPTY;
+            this.size--;
+        }
+
+        private int home(long fingerprint) {
+            // Scale the high half of the fingerprint onto the table, avoiding a division
+            return (int) (((fingerprint >>> 32) * this.fingerprints.length) >>> 32);
+        }
+
+        private int next(int slot) {
+            return slot + 1 == this.fingerprints.length ? 0 : slot + 1;
+        }
+
+        private int distance(int from, int to) {
+            return to >= from ? to - from : to + this.fingerprints.length - from;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.replay;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.security.Jwk;
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.KeyLoadingJwtVerifier;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A JSON Web Token (JWT) verifier for one-time-use tokens, e.g. signed webhooks or download links, that rejects any
+ * token whose JWT ID ({@code jti}) has already been seen within its lifetime
+ * <p>
+ * Tokens are first verified by the delegate verifier, so only genuine tokens are ever recorded, and then recorded in a
+ * {@link JtiReplayCache}.  Since every token is expected to be used once, tokens without a JWT ID or an expiry are
+ * rejected as they could not be reliably checked for replay.
+ * </p>
+ */
+public class ReplayGuardingJwtVerifier implements KeyLoadingJwtVerifier {
+
+    private final JwtVerifier delegate;
+    private final JtiReplayCache cache;
+
+    /**
+     * Creates a new replay guarding verifier
+     *
+     * @param delegate Verifier that performs the actual verification
+     * @param cache    Cache of used tokens
+     */
+    public ReplayGuardingJwtVerifier(JwtVerifier delegate, JtiReplayCache cache) {
+        this.delegate = Objects.requireNonNull(delegate, "Delegate verifier cannot be null");
+        this.cache = Objects.requireNonNull(cache, "Replay cache cannot be null");
+    }
+
+    @Override
+    public Jws<Claims> verify(String rawJwt) {
+        Jws<Claims> jws = this.delegate.verify(rawJwt);
+        if (jws == null) {
+            return null;
+        }
+        Claims claims = jws.getPayload();
+        if (StringUtils.isBlank(claims.getId())) {
+            throw new JwtException("Token does not declare a jti so cannot be checked for replay");
+        }
+        if (claims.getExpiration() == null) {
+            throw new JwtException("Token does not declare an expiry so cannot be checked for replay");
+        }
+        if (!this.cache.markUsed(claims.getIssuer(), claims.getId(), claims.getExpiration().toInstant())) {
+            throw new JwtException("Token has already been used");
+        }
+        return jws;
+    }
+
+    @Override
+    public boolean requiresKeyLoad(String rawJwt) {
+        return this.delegate instanceof KeyLoadingJwtVerifier keyLoading && keyLoading.requiresKeyLoad(rawJwt);
+    }
+
+    @Override
+    public CompletableFuture<Void> loadKeys(String rawJwt, Executor executor) {
+        if (this.delegate instanceof KeyLoadingJwtVerifier keyLoading) {
+            return keyLoading.loadKeys(rawJwt, executor);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public Collection<Jwk<?>> getLoadedKeys() {
+        if (this.delegate instanceof KeyLoadingJwtVerifier keyLoading) {
+            return keyLoading.getLoadedKeys();
+        }
+        return List.of();
+    }
+
+    @Override
+    public long getKeyGeneration() {
+        return this.delegate instanceof KeyLoadingJwtVerifier keyLoading ? keyLoading.getKeyGeneration() : 0L;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplayGuardingJwtVerifier{delegate=" + this.delegate + ", cache=" + this.cache + "}";
+    }
+}
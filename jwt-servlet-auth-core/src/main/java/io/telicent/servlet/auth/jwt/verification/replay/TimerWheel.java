@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.replay;
+
+import java.util.function.LongConsumer;
+
+/**
+ * A hierarchical timer wheel that expires {@code long} values at a given tick
+ * <p>
+ * Each level has {@value #SLOTS} slots, with each slot at a level spanning {@value #SLOTS} times as many ticks as a
+ * slot at the level below, so scheduling and expiring an entry is amortised constant time regardless of how far in the
+ * future it expires.  Entries are stored inline in primitive arrays so there is no per-entry allocation or scheduling.
+ * Entries further in the future than the wheel spans are held in the top level and rescheduled as the wheel turns.
+ * </p>
+ * <p>
+ * This class is not thread-safe, callers are responsible for synchronisation.
+ * </p>
+ */
+final class TimerWheel {
+
+    static final int SLOT_BITS = 6;
+    static final int SLOTS = 1 << SLOT_BITS;
+    static final int LEVELS = 4;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final long SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    private final Slot[][] wheels = new Slot[LEVELS][SLOTS];
+    private long currentTick;
+    private int size;
+
+    /**
+     * Creates a new timer wheel
+     *
+     * @param currentTick Current tick
+     */
+    TimerWheel(long currentTick) {
+        this.currentTick = currentTick;
+        for (Slot[] wheel : this.wheels) {
+            for (int i = 0; i < SLOTS; i++) {
+                wheel[i] = new Slot();
+            }
+        }
+    }
+
+    /**
+     * Schedules a value to expire at the given tick, a tick that has already passed expires upon the next tick
+     *
+     * @param value      Value
+     * @param expiryTick Expiry tick
+     */
+    void schedule(long value, long expiryTick) {
+        place(value, Math.max(expiryTick, this.currentTick + 1));
+        this.size++;
+    }
+
+    private void place(long value, long expiryTick) {
+        long delta = expiryTick - this.currentTick;
+        // Anything beyond the span of the wheel sits in the top level until it is close enough to place precisely
+        long placementTick = delta >= SPAN ? this.currentTick + SPAN - 1 : expiryTick;
+        delta = placementTick - this.currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int index = (int) ((placementTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        this.wheels[level][index].add(value, expiryTick);
+    }
+
+    /**
+     * Advances the wheel to the given tick, passing each value whose expiry tick has been reached to the consumer
+     *
+     * @param tick     Tick to advance to
+     * @param onExpiry Consumer of expired values
+     */
+    void advance(long tick, LongConsumer onExpiry) {
+        if (tick - this.currentTick > SPAN) {
+            // Too far to turn the wheel tick by tick so jump straight to the new tick and re-place every value
+            this.currentTick = tick;
+            for (Slot[] wheel : this.wheels) {
+                for (Slot slot : wheel) {
+                    turn(slot, onExpiry);
+                }
+            }
+            return;
+        }
+        while (this.currentTick < tick) {
+            this.currentTick++;
+            // Cascade higher levels whose slot boundary has been reached down into the lower levels
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((this.currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    int index = (int) ((this.currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+                    turn(this.wheels[level][index], onExpiry);
+                }
+            }
+            turn(this.wheels[0][(int) (this.currentTick & SLOT_MASK)], onExpiry);
+        }
+    }
+
+    /**
+     * Drains a slot, expiring any values whose expiry tick has been reached and re-placing the rest
+     *
+     * @param slot     Slot
+     * @param onExpiry Consumer of expired values
+     */
+    private void turn(Slot slot, LongConsumer onExpiry) {
+        if (slot.count == 0) {
+            return;
+        }
+        long[] entries = slot.drain();
+        for (int i = 0; i < entries.length; i += 2) {
+            expireOrPlace(entries[i], entries[i + 1], onExpiry);
+        }
+    }
+
+    private void expireOrPlace(long value, long expiryTick, LongConsumer onExpiry) {
+        if (expiryTick <= this.currentTick) {
+            this.size--;
+            onExpiry.accept(value);
+        } else {
+            place(value, expiryTick);
+        }
+    }
+
+    /**
+     * Gets the number of values scheduled
+     *
+     * @return Size
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Gets the current tick
+     *
+     * @return Current tick
+     */
+    long currentTick() {
+        return this.currentTick;
+    }
+
+    /**
+     * A slot holding value and expiry tick pairs inline
+     */
+    private static final class Slot {
+        private static final long[] EMPTY = new long[0];
+
+        private long[] entries = EMPTY;
+        private int count;
+
+        private void add(long value, long expiryTick) {
+            if (this.count * 2 == this.entries.length) {
+                long[] grown = new long[Math.max(8, this.entries.length * 2)];
+                System.arraycopy(this.entries, 0, grown, 0, this.entries.length);
+                this.entries = grown;
+            }
+            this.entries[this.count * 2] = value;
+            this.entries[this.count * 2 + 1] = expiryTick;
+            this.count++;
+        }
+
+        private long[] drain() {
+            long[] drained = new long[this.count * 2];
+            System.arraycopy(this.entries, 0, drained, 0, drained.length);
+            this.count = 0;
+            if (this.entries.length > 64) {
+                // Release the memory of slots that were once very full
+                this.entries = EMPTY;
+            }
+            return drained;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.revocation;
+
+import io.telicent.servlet.auth.jwt.Hashing;
+
+/**
+ * A minimal immutable-after-construction Bloom filter over strings
+ * <p>
+ * Used as a front end to the exact revocation sets so that the common case, a token that is not revoked, is answered
+ * without hashing into, and probing, the much larger exact sets.  A negative answer is definitive, a positive answer
+ * must be confirmed against the exact sets.
+ * </p>
+ */
+final class BloomFilter {
+
+    private final long[] bits;
+    private final int numBits;
+    private final int numHashes;
+
+    /**
+     * Creates a Bloom filter sized for the expected number of entries and false positive probability
+     *
+     * @param expectedEntries   Expected entries
+     * @param falsePositiveRate Desired false positive probability
+     */
+    BloomFilter(int expectedEntries, double falsePositiveRate) {
+        int n = Math.max(1, expectedEntries);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.numBits = (int) Math.max(64, Math.min(m, Integer.MAX_VALUE - 63));
+        this.numHashes = Math.max(1, (int) Math.round((double) this.numBits / n * Math.log(2)));
+        this.bits = new long[(this.numBits + 63) / 64];
+    }
+
+    /**
+     * Adds a value to the filter, only valid prior to the filter being published
+     *
+     * @param value Value
+     */
+    void add(String value) {
+        long hash = Hashing.fingerprint(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < this.numHashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, this.numBits);
+            this.bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Determines whether the value might have been added to the filter
+     *
+     * @param value Value
+     * @return False if the value was definitely never added, true if it may have been added
+     */
+    boolean mightContain(String value) {
+        long hash = Hashing.fingerprint(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < this.numHashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, this.numBits);
+            if ((this.bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.revocation;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A revocation feed backed by a local append-only file
+ * <p>
+ * Each line of the file is either blank, a comment starting with {@code #}, or an entry in one of the following forms:
+ * </p>
+ * <ul>
+ *     <li>{@code jti <jwt-id> [<expires-at>]} - Revokes the token with the given JWT ID</li>
+ *     <li>{@code sub <subject> <issued-before> [<expires-at>]} - Revokes all tokens for the subject issued before the
+ *     given time</li>
+ * </ul>
+ * <p>
+ * Either form may be prefixed with {@code iss <issuer>} so that the entry only applies to tokens from that issuer,
+ * e.g. {@code iss https://idp.example.org jti <jwt-id>}, otherwise the entry applies to tokens from any issuer.
+ * </p>
+ * <p>
+ * Times are expressed either as an ISO-8601 instant or as seconds since the epoch.  The optional expiry is when the
+ * revoked token expires, or when all the revoked tokens for the subject will have expired, after which the entry is no
+ * longer needed and is dropped from the revocation list.
+ * </p>
+ * <p>
+ * The file is read incrementally, each poll only reads the complete lines appended since the previous poll.  If the
+ * file is replaced, or truncated, then it is read again from the start and its entries replace all previous entries.
+ * Lines that cannot be parsed are logged and ignored.
+ * </p>
+ */
+public class FileRevocationFeed implements RevocationFeed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileRevocationFeed.class);
+
+    private final Path file;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long position = 0;
+    private Object fileKey;
+
+    /**
+     * Creates a new file revocation feed
+     *
+     * @param file File
+     */
+    public FileRevocationFeed(Path file) {
+        this.file = Objects.requireNonNull(file, "File cannot be null").toAbsolutePath();
+    }
+
+    @Override
+    public Update poll() throws IOException {
+        this.lock.lock();
+        try {
+            return pollFile();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private Update pollFile() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(this.file, BasicFileAttributes.class);
+        boolean replace = false;
+        if (attributes.size() < this.position || !Objects.equals(attributes.fileKey(), this.fileKey)) {
+            // File was replaced or truncated so must read from scratch
+            replace = this.fileKey != null || this.position > 0;
+            this.position = 0;
+            this.fileKey = attributes.fileKey();
+        }
+        if (attributes.size() == this.position) {
+            return replace ? new Update(true, List.of()) : Update.NONE;
+        }
+
+        try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) (channel.size() - this.position));
+            channel.position(this.position);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until the buffer is full or EOF
+            }
+            byte[] appended = buffer.array();
+            int length = buffer.position();
+            // Only consume complete lines, a partially written final line is read on a later poll
+            int end = length - 1;
+            while (end >= 0 && appended[end] != '\n') {
+                end--;
+            }
+            if (end < 0) {
+                return replace ? new Update(true, List.of()) : Update.NONE;
+            }
+            this.position += end + 1;
+            return new Update(replace, parse(new String(appended, 0, end + 1, StandardCharsets.UTF_8)));
+        }
+    }
+
+    private List<RevocationEntry> parse(String lines) {
+        List<RevocationEntry> entries = new ArrayList<>();
+        for (String line : lines.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            RevocationEntry entry = parseLine(line);
+            if (entry != null) {
+                entries.add(entry);
+            } else {
+                LOGGER.warn("Ignoring invalid revocation entry in {}: {}", this.file, line);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Parses a single revocation entry
+     *
+     * @param line Line
+     * @return Entry, or {@code null} if not a valid entry
+     */
+    static RevocationEntry parseLine(String line) {
+        String[] parts = StringUtils.split(line);
+        String issuer = null;
+        if (parts.length > 2 && "iss".equals(parts[0])) {
+            issuer = parts[1];
+            parts = Arrays.copyOfRange(parts, 2, parts.length);
+        }
+        if ((parts.length == 2 || parts.length == 3) && "jti".equals(parts[0])) {
+            Instant expiresAt = parts.length == 3 ? parseInstant(parts[2]) : null;
+            if (parts.length == 3 && expiresAt == null) {
+                return null;
+            }
+            return RevocationEntry.forJti(issuer, parts[1], expiresAt);
+        } else if ((parts.length == 3 || parts.length == 4) && "sub".equals(parts[0])) {
+            Instant issuedBefore = parseInstant(parts[2]);
+            Instant expiresAt = parts.length == 4 ? parseInstant(parts[3]) : null;
+            if (issuedBefore == null || (parts.length == 4 && expiresAt == null)) {
+                return null;
+            }
+            return RevocationEntry.forSubject(issuer, parts[1], issuedBefore, expiresAt);
+        }
+        return null;
+    }
+
+    private static Instant parseInstant(String value) {
+        try {
+            if (StringUtils.isNumeric(value)) {
+                return Instant.ofEpochSecond(Long.parseLong(value));
+            }
+            return Instant.parse(value);
+        } catch (DateTimeException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FileRevocationFeed{file=" + this.file + "}";
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.revocation;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.security.Jwk;
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.KeyLoadingJwtVerifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A JSON Web Token (JWT) verifier that rejects revoked tokens
+ * <p>
+ * Tokens are first verified by the delegate verifier, then checked against an in-memory {@link RevocationList} so no
+ * remote call is made per request.  The revocation list is polled from a {@link RevocationFeed} when the verifier is
+ * created, and subsequently in the background once the refresh interval has elapsed, with each update producing a new
+ * list that is atomically swapped in.  If the feed cannot be read the previous list remains in effect.
+ * </p>
+ * <p>
+ * Instances are created via {@link #create(JwtVerifier, RevocationFeed, Duration)}, which performs the initial poll
+ * of the feed once the verifier is fully constructed.
+ * </p>
+ */
+public class RevocationCheckingJwtVerifier implements KeyLoadingJwtVerifier {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RevocationCheckingJwtVerifier.class);
+
+    private final JwtVerifier delegate;
+    private final RevocationFeed feed;
+    private final Duration refreshInterval;
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+    private volatile RevocationList revocations = RevocationList.EMPTY;
+    private volatile long lastRefresh;
+
+    /**
+     * Creates a new revocation checking verifier, synchronously polling the feed for its initial revocation entries
+     *
+     * @param delegate        Verifier that performs the actual verification
+     * @param feed            Feed of revocation entries
+     * @param refreshInterval How often the feed is polled for new revocation entries
+     * @return Revocation checking verifier
+     */
+    public static RevocationCheckingJwtVerifier create(JwtVerifier delegate, RevocationFeed feed,
+                                                       Duration refreshInterval) {
+        RevocationCheckingJwtVerifier verifier = new RevocationCheckingJwtVerifier(delegate, feed, refreshInterval);
+        verifier.refresh();
+        return verifier;
+    }
+
+    /**
+     * Creates a new revocation checking verifier
+     * <p>
+     * The feed is not polled until the first token is verified, or {@link #refresh()} is called, so callers should
+     * generally prefer {@link #create(JwtVerifier, RevocationFeed, Duration)}.
+     * </p>
+     *
+     * @param delegate        Verifier that performs the actual verification
+     * @param feed            Feed of revocation entries
+     * @param refreshInterval How often the feed is polled for new revocation entries
+     */
+    protected RevocationCheckingJwtVerifier(JwtVerifier delegate, RevocationFeed feed, Duration refreshInterval) {
+        this.delegate = Objects.requireNonNull(delegate, "Delegate verifier cannot be null");
+        this.feed = Objects.requireNonNull(feed, "Revocation feed cannot be null");
+        this.refreshInterval = Objects.requireNonNull(refreshInterval, "Refresh interval cannot be null");
+        if (refreshInterval.isNegative()) {
+            throw new IllegalArgumentException("Refresh interval cannot be negative");
+        }
+    }
+
+    @Override
+    public Jws<Claims> verify(String rawJwt) {
+        Jws<Claims> jws = this.delegate.verify(rawJwt);
+        if (jws != null) {
+            refreshIfStale();
+            Claims claims = jws.getPayload();
+            if (this.revocations.isRevoked(claims.getIssuer(), claims.getId(), claims.getSubject(),
+                                           claims.getIssuedAt() != null ? claims.getIssuedAt().toInstant() : null)) {
+                throw new JwtException("Token has been revoked");
+            }
+        }
+        return jws;
+    }
+
+    private void refreshIfStale() {
+        // Claim the refresh before starting a thread for it, so that concurrent requests start at most one refresh
+        if (System.currentTimeMillis() - this.lastRefresh >= this.refreshInterval.toMillis()
+            && this.refreshing.compareAndSet(false, true)) {
+            try {
+                Thread.ofVirtual().name("revocation-refresh").start(this::poll);
+            } catch (Throwable e) {
+                this.refreshing.set(false);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Polls the feed and, if it has changed, atomically swaps in the updated revocation list
+     *
+     * @return True if the feed was polled successfully, false if it could not be read or a poll was already in
+     * progress
+     */
+    public boolean refresh() {
+        if (!this.refreshing.compareAndSet(false, true)) {
+            return false;
+        }
+        return poll();
+    }
+
+    /**
+     * Polls the feed, the caller <strong>MUST</strong> have already claimed the {@code refreshing} flag which is
+     * released once the poll completes
+     *
+     * @return True if the feed was polled successfully, false otherwise
+     */
+    private boolean poll() {
+        try {
+            RevocationFeed.Update update = this.feed.poll();
+            if (update.replace()) {
+                this.revocations = RevocationList.of(update.entries());
+            } else {
+                this.revocations = this.revocations.with(update.entries());
+            }
+            return true;
+        } catch (Throwable e) {
+            LOGGER.warn("Failed to refresh revocations from {}, continuing to use {} previously loaded entries: {}",
+                        this.feed, this.revocations.size(), e.getMessage());
+            return false;
+        } finally {
+            // Record the attempt even on failure so that a failing feed is not polled on every request
+            this.lastRefresh = System.currentTimeMillis();
+            this.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Gets the current revocation list
+     *
+     * @return Revocation list
+     */
+    public RevocationList getRevocations() {
+        return this.revocations;
+    }
+
+    @Override
+    public boolean requiresKeyLoad(String rawJwt) {
+        return this.delegate instanceof KeyLoadingJwtVerifier keyLoading && keyLoading.requiresKeyLoad(rawJwt);
+    }
+
+    @Override
+    public CompletableFuture<Void> loadKeys(String rawJwt, Executor executor) {
+        if (this.delegate instanceof KeyLoadingJwtVerifier keyLoading) {
+            return keyLoading.loadKeys(rawJwt, executor);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public Collection<Jwk<?>> getLoadedKeys() {
+        if (this.delegate instanceof KeyLoadingJwtVerifier keyLoading) {
+            return keyLoading.getLoadedKeys();
+        }
+        return List.of();
+    }
+
+    @Override
+    public long getKeyGeneration() {
+        return this.delegate instanceof KeyLoadingJwtVerifier keyLoading ? keyLoading.getKeyGeneration() : 0L;
+    }
+
+    @Override
+    public String toString() {
+        return "RevocationCheckingJwtVerifier{delegate=" + this.delegate + ", feed=" + this.feed + ", refreshInterval="
+               + this.refreshInterval + ", revocations=" + this.revocations.size() + "}";
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.revocation;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * An entry in a revocation list, either revoking a single token by its JWT ID ({@code jti}), or revoking all tokens for
+ * a subject ({@code sub}) that were issued before a given time
+ * <p>
+ * An entry may declare when it expires, i.e. the expiry ({@code exp}) of the revoked token, or the time by which all
+ * the revoked tokens for a subject will have expired, after which the revoked tokens would be rejected anyway so the
+ * entry is dropped from the {@link RevocationList}.  Entries without an expiry are retained indefinitely.
+ * </p>
+ * <p>
+ * Since JWT IDs and subjects are only unique per issuer an entry may also declare the issuer ({@code iss}) of the
+ * tokens it revokes, in which case it only applies to tokens from that issuer.  Entries without an issuer apply to
+ * tokens from any issuer.
+ * </p>
+ *
+ * @param jti          JWT ID of the revoked token, {@code null} for a subject revocation
+ * @param subject      Subject whose tokens are revoked, {@code null} for a JWT ID revocation
+ * @param issuedBefore Tokens for the subject issued before this time are revoked, {@code null} for a JWT ID
+ *                     revocation
+ * @param expiresAt    When the entry expires, {@code null} if it never expires
+ * @param issuer       Issuer of the revoked tokens, {@code null} if the entry applies to tokens from any issuer
+ */
+public record RevocationEntry(String jti, String subject, Instant issuedBefore, Instant expiresAt, String issuer) {
+
+    /**
+     * Creates a new revocation entry
+     *
+     * @param jti          JWT ID of the revoked token, {@code null} for a subject revocation
+     * @param subject      Subject whose tokens are revoked, {@code null} for a JWT ID revocation
+     * @param issuedBefore Tokens for the subject issued before this time are revoked, {@code null} for a JWT ID
+     *                     revocation
+     * @param expiresAt    When the entry expires, {@code null} if it never expires
+     * @param issuer       Issuer of the revoked tokens, {@code null} if the entry applies to tokens from any issuer
+     */
+    public RevocationEntry {
+        if (StringUtils.isNotBlank(jti) == StringUtils.isNotBlank(subject)) {
+            throw new IllegalArgumentException("Exactly one of jti or subject must be provided");
+        }
+        if (subject != null) {
+            Objects.requireNonNull(issuedBefore, "issuedBefore cannot be null for a subject revocation");
+        }
+        if (issuer != null && StringUtils.isBlank(issuer)) {
+            throw new IllegalArgumentException("issuer cannot be blank");
+        }
+    }
+
+    /**
+     * Creates a new revocation entry that applies to tokens from any issuer
+     *
+     * @param jti          JWT ID of the revoked token, {@code null} for a subject revocation
+     * @param subject      Subject whose tokens are revoked, {@code null} for a JWT ID revocation
+     * @param issuedBefore Tokens for the subject issued before this time are revoked, {@code null} for a JWT ID
+     *                     revocation
+     * @param expiresAt    When the entry expires, {@code null} if it never expires
+     */
+    public RevocationEntry(String jti, String subject, Instant issuedBefore, Instant expiresAt) {
+        this(jti, subject, issuedBefore, expiresAt, null);
+    }
+
+    /**
+     * Creates a new revocation entry that never expires
+     *
+     * @param jti          JWT ID of the revoked token, {@code null} for a subject revocation
+     * @param subject      Subject whose tokens are revoked, {@code null} for a JWT ID revocation
+     * @param issuedBefore Tokens for the subject issued before this time are revoked, {@code null} for a JWT ID
+     *                     revocation
+     */
+    public RevocationEntry(String jti, String subject, Instant issuedBefore) {
+        this(jti, subject, issuedBefore, null, null);
+    }
+
+    /**
+     * Creates an entry that revokes a single token, and never expires
+     *
+     * @param jti JWT ID
+     * @return Revocation entry
+     */
+    public static RevocationEntry forJti(String jti) {
+        return forJti(jti, null);
+    }
+
+    /**
+     * Creates an entry that revokes a single token until it expires
+     *
+     * @param jti       JWT ID
+     * @param expiresAt Expiry of the revoked token, {@code null} if unknown
+     * @return Revocation entry
+     */
+    public static RevocationEntry forJti(String jti, Instant expiresAt) {
+        return forJti(null, jti, expiresAt);
+    }
+
+    /**
+     * Creates an entry that revokes a single token from the given issuer until it expires
+     *
+     * @param issuer    Issuer, {@code null} if the entry applies to tokens from any issuer
+     * @param jti       JWT ID
+     * @param expiresAt Expiry of the revoked token, {@code null} if unknown
+     * @return Revocation entry
+     */
+    public static RevocationEntry forJti(String issuer, String jti, Instant expiresAt) {
+        return new RevocationEntry(jti, null, null, expiresAt, issuer);
+    }
+
+    /**
+     * Creates an entry that revokes all tokens for a subject issued before the given time, and never expires
+     *
+     * @param subject      Subject
+     * @param issuedBefore Issued before
+     * @return Revocation entry
+     */
+    public static RevocationEntry forSubject(String subject, Instant issuedBefore) {
+        return forSubject(subject, issuedBefore, null);
+    }
+
+    /**
+     * Creates an entry that revokes all tokens for a subject issued before the given time, until they have all expired
+     *
+     * @param subject      Subject
+     * @param issuedBefore Issued before
+     * @param expiresAt    Time by which all the revoked tokens will have expired, {@code null} if unknown
+     * @return Revocation entry
+     */
+    public static RevocationEntry forSubject(String subject, Instant issuedBefore, Instant expiresAt) {
+        return forSubject(null, subject, issuedBefore, expiresAt);
+    }
+
+    /**
+     * Creates an entry that revokes all tokens for a subject from the given issuer issued before the given time, until
+     * they have all expired
+     *
+     * @param issuer       Issuer, {@code null} if the entry applies to tokens from any issuer
+     * @param subject      Subject
+     * @param issuedBefore Issued before
+     * @param expiresAt    Time by which all the revoked tokens will have expired, {@code null} if unknown
+     * @return Revocation entry
+     */
+    public static RevocationEntry forSubject(String issuer, String subject, Instant issuedBefore, Instant expiresAt) {
+        return new RevocationEntry(null, subject, issuedBefore, expiresAt, issuer);
+    }
+
+    /**
+     * Determines whether this entry has expired
+     *
+     * @param now Current time
+     * @return True if expired, false otherwise
+     */
+    boolean isExpired(Instant now) {
+        return this.expiresAt != null && !this.expiresAt.isAfter(now);
+    }
+}
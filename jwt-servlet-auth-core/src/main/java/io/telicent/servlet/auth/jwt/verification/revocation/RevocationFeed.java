@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.revocation;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A source of revocation entries, polled periodically by {@link RevocationCheckingJwtVerifier}
+ * <p>
+ * Feeds are expected to be incremental, i.e. each poll only returns the entries added since the previous poll, unless
+ * the feed determines that its previous entries are no longer valid in which case it returns a full replacement.
+ * </p>
+ */
+public interface RevocationFeed {
+
+    /**
+     * An update from a feed
+     *
+     * @param replace Whether the entries replace all previously polled entries, rather than adding to them
+     * @param entries Entries
+     */
+    record Update(boolean replace, List<RevocationEntry> entries) {
+
+        /**
+         * An update that indicates nothing changed
+         */
+        public static final Update NONE = new Update(false, List.of());
+
+        /**
+         * Creates a new update
+         *
+         * @param replace Whether the entries replace all previously polled entries, rather than adding to them
+         * @param entries Entries
+         */
+        public Update {
+            entries = List.copyOf(Objects.requireNonNull(entries, "Entries cannot be null"));
+        }
+    }
+
+    /**
+     * Polls the feed for changes since the previous poll
+     *
+     * @return Update
+     * @throws IOException Thrown if the feed cannot be read, the previously polled entries remain in effect
+     */
+    Update poll() throws IOException;
+}
@@ -0,0 +1,247 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.revocation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * An immutable snapshot of revoked tokens
+ * <p>
+ * Lookups first consult a Bloom filter, which answers the common "not revoked" case without touching the exact sets,
+ * and only fall through to the exact sets when the filter reports a possible match.  Updates never modify a list,
+ * instead {@link #with(Collection)} produces a new list so that a list may be atomically swapped while being read.
+ * </p>
+ * <p>
+ * Entries that declare an expiry are dropped when a new list is produced once they have been expired for longer than
+ * {@link #EXPIRY_GRACE}, allowing for clock skew between the issuer and this server, since the revoked tokens would be
+ * rejected anyway.  The Bloom filter of each list is sized from the entries that remain, so the list only grows with
+ * the number of live revocations rather than with every revocation ever made.
+ * </p>
+ * <p>
+ * Entries are keyed by their issuer, if any, as well as their JWT ID or subject so that an entry for one issuer never
+ * revokes tokens from another issuer that happen to share a JWT ID or subject.
+ * </p>
+ */
+public final class RevocationList {
+
+    /**
+     * False positive rate for the Bloom filter, i.e. how often an unrevoked token falls through to the exact sets
+     */
+    static final double FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * How long after their expiry entries are retained, to allow for clock skew when verifying token expiry
+     */
+    public static final Duration EXPIRY_GRACE = Duration.ofMinutes(5);
+
+    /**
+     * An empty revocation list
+     */
+    public static final RevocationList EMPTY = new RevocationList(Map.of(), Map.of());
+
+    private static final String JTI_PREFIX = "jti:";
+    private static final String SUBJECT_PREFIX = "sub:";
+    private static final String ANY_ISSUER = "*";
+    private static final Instant NEVER = Instant.MAX;
+
+    private final Map<String, Instant> jtis;
+    private final Map<String, SubjectRevocation> subjects;
+    private final Instant nextExpiry;
+    private final BloomFilter filter;
+
+    private RevocationList(Map<String, Instant> jtis, Map<String, SubjectRevocation> subjects) {
+        this.jtis = jtis;
+        this.subjects = subjects;
+        this.filter = new BloomFilter(jtis.size() + subjects.size(), FALSE_POSITIVE_RATE);
+        Instant next = NEVER;
+        for (Map.Entry<String, Instant> jti : jtis.entrySet()) {
+            this.filter.add(JTI_PREFIX + jti.getKey());
+            next = earliest(next, jti.getValue());
+        }
+        for (Map.Entry<String, SubjectRevocation> subject : subjects.entrySet()) {
+            this.filter.add(SUBJECT_PREFIX + subject.getKey());
+            next = earliest(next, subject.getValue().expiresAt());
+        }
+        this.nextExpiry = next;
+    }
+
+    /**
+     * Computes the key for a JWT ID or subject
+     * <p>
+     * Issuer specific keys are prefixed with the issuer's length, so they can never collide with one another, nor with
+     * the keys of entries that apply to any issuer.
+     * </p>
+     *
+     * @param issuer Issuer, {@code null} for any issuer
+     * @param value  JWT ID or subject
+     * @return Key
+     */
+    static String key(String issuer, String value) {
+        return issuer == null ? ANY_ISSUER + value : issuer.length() + ":" + issuer + value;
+    }
+
+    private static Instant earliest(Instant a, Instant b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static Instant latest(Instant a, Instant b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    /**
+     * Creates a revocation list from the given entries
+     *
+     * @param entries Entries
+     * @return Revocation list
+     */
+    public static RevocationList of(Collection<RevocationEntry> entries) {
+        return EMPTY.with(entries);
+    }
+
+    /**
+     * Creates a revocation list from the given entries
+     *
+     * @param entries Entries
+     * @param now     Current time
+     * @return Revocation list
+     */
+    static RevocationList of(Collection<RevocationEntry> entries, Instant now) {
+        return EMPTY.with(entries, now);
+    }
+
+    /**
+     * Creates a new revocation list containing the unexpired entries of this list plus the given entries
+     * <p>
+     * Where a token or subject is revoked several times the latest {@code issuedBefore} and expiry times apply.
+     * </p>
+     *
+     * @param entries Additional entries
+     * @return New revocation list, or this list if there are no additional entries and no entries have expired
+     */
+    public RevocationList with(Collection<RevocationEntry> entries) {
+        return with(entries, Instant.now());
+    }
+
+    /**
+     * Creates a new revocation list containing the unexpired entries of this list plus the given entries
+     *
+     * @param entries Additional entries
+     * @param now     Current time
+     * @return New revocation list, or this list if there are no additional entries and no entries have expired
+     */
+    RevocationList with(Collection<RevocationEntry> entries, Instant now) {
+        Instant cutoff = now.minus(EXPIRY_GRACE);
+        if (entries.isEmpty() && this.nextExpiry.isAfter(cutoff)) {
+            return this;
+        }
+        Map<String, Instant> newJtis = new HashMap<>();
+        this.jtis.forEach((jti, expiresAt) -> {
+            if (expiresAt.isAfter(cutoff)) {
+                newJtis.put(jti, expiresAt);
+            }
+        });
+        Map<String, SubjectRevocation> newSubjects = new HashMap<>();
+        this.subjects.forEach((subject, revocation) -> {
+            if (revocation.expiresAt().isAfter(cutoff)) {
+                newSubjects.put(subject, revocation);
+            }
+        });
+        for (RevocationEntry entry : entries) {
+            if (entry.isExpired(cutoff)) {
+                continue;
+            }
+            Instant expiresAt = entry.expiresAt() != null ? entry.expiresAt() : NEVER;
+            if (entry.jti() != null) {
+                newJtis.merge(key(entry.issuer(), entry.jti()), expiresAt, RevocationList::latest);
+            } else {
+                newSubjects.merge(key(entry.issuer(), entry.subject()),
+                                  new SubjectRevocation(entry.issuedBefore(), expiresAt),
+                                  (a, b) -> new SubjectRevocation(latest(a.issuedBefore(), b.issuedBefore()),
+                                                                  latest(a.expiresAt(), b.expiresAt())));
+            }
+        }
+        return new RevocationList(Map.copyOf(newJtis), Map.copyOf(newSubjects));
+    }
+
+    /**
+     * Determines whether a token without an issuer is revoked, only entries that apply to any issuer are considered
+     *
+     * @param jti      JWT ID of the token, may be {@code null}
+     * @param subject  Subject of the token, may be {@code null}
+     * @param issuedAt When the token was issued, may be {@code null}
+     * @return True if revoked, false otherwise
+     */
+    public boolean isRevoked(String jti, String subject, Instant issuedAt) {
+        return isRevoked(null, jti, subject, issuedAt);
+    }
+
+    /**
+     * Determines whether a token is revoked, either by an entry for its issuer or by an entry that applies to any
+     * issuer
+     * <p>
+     * A token for a revoked subject that does not declare when it was issued is considered revoked since it cannot be
+     * shown to have been issued after the revocation.
+     * </p>
+     *
+     * @param issuer   Issuer of the token, may be {@code null}
+     * @param jti      JWT ID of the token, may be {@code null}
+     * @param subject  Subject of the token, may be {@code null}
+     * @param issuedAt When the token was issued, may be {@code null}
+     * @return True if revoked, false otherwise
+     */
+    public boolean isRevoked(String issuer, String jti, String subject, Instant issuedAt) {
+        if (jti != null && (isJtiRevoked(key(null, jti)) || (issuer != null && isJtiRevoked(key(issuer, jti))))) {
+            return true;
+        }
+        if (subject != null) {
+            return isSubjectRevoked(key(null, subject), issuedAt)
+                   || (issuer != null && isSubjectRevoked(key(issuer, subject), issuedAt));
+        }
+        return false;
+    }
+
+    private boolean isJtiRevoked(String key) {
+        return this.filter.mightContain(JTI_PREFIX + key) && this.jtis.containsKey(key);
+    }
+
+    private boolean isSubjectRevoked(String key, Instant issuedAt) {
+        if (!this.filter.mightContain(SUBJECT_PREFIX + key)) {
+            return false;
+        }
+        SubjectRevocation revocation = this.subjects.get(key);
+        return revocation != null && (issuedAt == null || issuedAt.isBefore(revocation.issuedBefore()));
+    }
+
+    /**
+     * Gets the number of entries in the list
+     *
+     * @return Size
+     */
+    public int size() {
+        return this.jtis.size() + this.subjects.size();
+    }
+
+    /**
+     * The revocation of a subject's tokens
+     *
+     * @param issuedBefore Tokens issued before this time are revoked
+     * @param expiresAt    When the revocation expires
+     */
+    private record SubjectRevocation(Instant issuedBefore, Instant expiresAt) {
+    }
+}
@@ -20,7 +20,9 @@ import io.jsonwebtoken.security.MacAlgorithm;
 import io.telicent.servlet.auth.jwt.configuration.ConfigurationParameters;
 import io.telicent.servlet.auth.jwt.configuration.RuntimeConfigurationAdaptor;
 import io.telicent.servlet.auth.jwt.errors.KeyLoadException;
+import io.telicent.servlet.auth.jwt.verification.JwtWarmUp;
 import io.telicent.servlet.auth.jwt.verification.KeyUtils;
+import io.telicent.servlet.auth.jwt.verification.SignedJwtVerifier;
 import io.telicent.servlet.auth.jwt.verification.TestKeyUtils;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
@@ -30,11 +32,14 @@ import javax.crypto.SecretKey;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.ref.Reference;
 import java.nio.file.Files;
 import java.security.KeyPair;
+import java.time.Duration;
 import java.util.Base64;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public abstract class AbstractConfigurableFilterTests<TRequest, TResponse, TFilter extends AbstractConfigurableJwtAuthFilter<TRequest, TResponse>>
         extends AbstractFilterTests<TRequest, TResponse, TFilter> {
@@ -89,6 +94,82 @@ public abstract class AbstractConfigurableFilterTests<TRequest, TResponse, TFilt
         Assert.assertNull(config.getAttribute(JwtServletConstants.ATTRIBUTE_JWT_ENGINE));
     }
 
+    @Test
+    public void givenNoFilterConfiguration_whenConfiguringFilter_thenFilterIsNotReady() {
+        // Given
+        FilterConfigAdaptorWrapper config = new FilterConfigAdaptorWrapper(createConfigAdaptor(Map.of()));
+        TFilter filter = this.createUnconfiguredFilter();
+
+        // When
+        filter.configure(config);
+
+        // Then
+        Assert.assertFalse(filter.isReady());
+    }
+
+    @Test
+    public void givenFilterConfigurationWithWarmUp_whenConfiguringFilter_thenFilterBecomesReady() throws Exception {
+        // Given
+        File keyFile = createSecretKey(Jwts.SIG.HS256);
+        FilterConfigAdaptorWrapper config = new FilterConfigAdaptorWrapper(
+                createConfigAdaptor(Map.of(ConfigurationParameters.PARAM_SECRET_KEY, keyFile.getAbsolutePath(),
+                                           ConfigurationParameters.PARAM_WARMUP_ENABLED, "true",
+                                           ConfigurationParameters.PARAM_WARMUP_ITERATIONS, "5")));
+        TFilter filter = this.createUnconfiguredFilter();
+
+        // When
+        filter.configure(config);
+
+        // Then
+        JwtWarmUp warmUp = (JwtWarmUp) config.getAttribute(JwtServletConstants.ATTRIBUTE_JWT_WARM_UP);
+        Assert.assertNotNull(warmUp);
+        warmUp.getCompletion().get(10, TimeUnit.SECONDS);
+        Assert.assertTrue(filter.isReady());
+    }
+
+    @Test
+    public void givenIncompleteWarmUp_whenConfiguringFilter_thenFilterIsNotReadyUntilWarmUpCompletes() throws Exception {
+        // Given
+        File keyFile = createSecretKey(Jwts.SIG.HS256);
+        FilterConfigAdaptorWrapper config = new FilterConfigAdaptorWrapper(
+                createConfigAdaptor(Map.of(ConfigurationParameters.PARAM_SECRET_KEY, keyFile.getAbsolutePath())));
+        TFilter filter = this.createUnconfiguredFilter();
+        SignedJwtVerifier verifier = new SignedJwtVerifier(KeyUtils.loadSecretKey(keyFile));
+        JwtWarmUp warmUp = new JwtWarmUp(verifier, 1, Duration.ZERO);
+        config.setAttribute(JwtServletConstants.ATTRIBUTE_JWT_WARM_UP, warmUp);
+
+        // When
+        filter.configure(config);
+
+        // Then
+        Assert.assertFalse(filter.isReady());
+
+        // And
+        warmUp.start().getCompletion().get(10, TimeUnit.SECONDS);
+        Assert.assertTrue(filter.isReady());
+        Reference.reachabilityFence(verifier);
+    }
+
+    @Test
+    public void givenIncompleteWarmUp_whenStoppingFilterWarmUp_thenWarmUpNeverCompletes() throws Exception {
+        // Given
+        File keyFile = createSecretKey(Jwts.SIG.HS256);
+        FilterConfigAdaptorWrapper config = new FilterConfigAdaptorWrapper(
+                createConfigAdaptor(Map.of(ConfigurationParameters.PARAM_SECRET_KEY, keyFile.getAbsolutePath())));
+        TFilter filter = this.createUnconfiguredFilter();
+        JwtWarmUp warmUp = new JwtWarmUp(new SignedJwtVerifier(KeyUtils.loadSecretKey(keyFile)), 1, Duration.ZERO);
+        config.setAttribute(JwtServletConstants.ATTRIBUTE_JWT_WARM_UP, warmUp);
+        filter.configure(config);
+
+        // When
+        filter.stopWarmUp();
+        warmUp.start();
+
+        // Then
+        Assert.assertTrue(warmUp.getCompletion().isCompletedExceptionally());
+        Assert.assertFalse(filter.isReady());
+    }
+
     @DataProvider(name = "macAlgorithms")
     public Object[][] macAlgorithms() {
         return new Object[][] {
@@ -18,8 +18,11 @@ package io.telicent.servlet.auth.jwt;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.SignatureException;
 import io.jsonwebtoken.security.WeakKeyException;
+import io.telicent.servlet.auth.jwt.challenges.RejectedTokenCache;
 import io.telicent.servlet.auth.jwt.configuration.ClaimPath;
 import io.telicent.servlet.auth.jwt.errors.KeyLoadException;
+import io.telicent.servlet.auth.jwt.errors.KeyLoadPendingException;
+import io.telicent.servlet.auth.jwt.ratelimit.FailureRateLimiter;
 import io.telicent.servlet.auth.jwt.sources.HeaderSource;
 import io.telicent.servlet.auth.jwt.verification.*;
 import org.apache.commons.lang3.Strings;
@@ -31,8 +34,10 @@ import org.testng.annotations.Test;
 import javax.crypto.SecretKey;
 import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static org.mockito.Mockito.mock;
@@ -155,6 +160,109 @@ public abstract class AbstractHeaderBasedEngineTests<TRequest, TResponse> extend
                         "No issuer");
     }
 
+    @Test
+    public void givenKeysStillLoading_whenAuthenticating_thenTemporarilyUnavailable() throws IOException {
+        verifyChallenge("Bearer test",
+                        new InvalidTokenVerifier(token -> new KeyLoadPendingException("Keys still loading")), 503,
+                        "error=\"temporarily_unavailable\"", "Keys still loading");
+    }
+
+    @Test
+    public void givenRepeatedFailures_whenFailureRateLimited_thenTooManyRequests_andTokenNotVerified() throws
+            IOException {
+        // Given
+        JwtAuthenticationEngine<TRequest, TResponse> engine = createEngine();
+        engine.setFailureRateLimiter(
+                new FailureRateLimiter(3, Duration.ofMinutes(1), FailureRateLimiter.ClientKey.TOKEN));
+        AtomicInteger verifications = new AtomicInteger();
+        JwtVerifier verifier = new InvalidTokenVerifier(token -> {
+            verifications.incrementAndGet();
+            return new JwtException("Bad token");
+        });
+        for (int i = 0; i < 3; i++) {
+            verifyChallenge("Bearer bad", engine, verifier, 401, "error=\"invalid_token\"", "Bad token");
+        }
+
+        // When and Then
+        verifyChallenge("Bearer bad", engine, verifier, 429, "Too many failed authentication attempts");
+        Assert.assertEquals(verifications.get(), 3);
+        verifyChallenge("Bearer other", engine, verifier, 401, "Bad token");
+        Assert.assertEquals(verifications.get(), 4);
+    }
+
+    @Test
+    public void givenKeysStillLoading_whenFailureRateLimited_thenNotCountedAsFailures() throws IOException {
+        // Given
+        JwtAuthenticationEngine<TRequest, TResponse> engine = createEngine();
+        engine.setFailureRateLimiter(
+                new FailureRateLimiter(1, Duration.ofMinutes(1), FailureRateLimiter.ClientKey.ADDRESS));
+        JwtVerifier verifier = new InvalidTokenVerifier(token -> new KeyLoadPendingException("Keys still loading"));
+
+        // When and Then
+        verifyChallenge("Bearer test", engine, verifier, 503);
+        verifyChallenge("Bearer test", engine, verifier, 503);
+        Assert.assertNotNull(engine.getFailureRateLimiter());
+    }
+
+    @DataProvider(name = "rejections")
+    public Object[][] rejections() {
+        return new Object[][] {
+                { new SignatureException("Bad signature"), 401, 1 },
+                { new MalformedJwtException("Bad token"), 401, 1 },
+                { new UnsupportedJwtException("Bad algorithm"), 400, 1 },
+                { new ExpiredJwtException(mock(Header.class), mock(Claims.class), "Expired"), 401, 1 },
+                { new PrematureJwtException(mock(Header.class), mock(Claims.class), "Not yet valid"), 401, 3 },
+                { new WeakKeyException("Unknown key"), 401, 3 },
+                { new KeyLoadPendingException("Keys still loading"), 503, 3 },
+                { new JwtException("Token revoked"), 401, 3 }
+        };
+    }
+
+    @Test(dataProvider = "rejections")
+    public void givenRejectedTokenCache_whenSameTokenRepeatedlyRejected_thenOnlyPermanentRejectionsCached(
+            JwtException error, int expectedStatus, int expectedVerifications) throws IOException {
+        // Given
+        JwtAuthenticationEngine<TRequest, TResponse> engine = createEngine();
+        engine.setRejectedTokenCache(new RejectedTokenCache(100, Duration.ofMinutes(1)));
+        AtomicInteger verifications = new AtomicInteger();
+        JwtVerifier verifier = new InvalidTokenVerifier(token -> {
+            verifications.incrementAndGet();
+            return error;
+        });
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            verifyChallenge("Bearer bad", engine, verifier, expectedStatus);
+        }
+
+        // Then
+        Assert.assertEquals(verifications.get(), expectedVerifications);
+        Assert.assertNotNull(engine.getRejectedTokenCache());
+    }
+
+    @Test
+    public void givenRejectedTokenCache_whenRejectedTokenPresentedToOtherVerifier_thenVerified() throws IOException {
+        // Given
+        JwtAuthenticationEngine<TRequest, TResponse> engine = createEngine();
+        engine.setRejectedTokenCache(new RejectedTokenCache(100, Duration.ofMinutes(1)));
+        AtomicInteger verifications = new AtomicInteger();
+        JwtVerifier rejecting = new InvalidTokenVerifier(token -> new SignatureException("Bad signature"));
+        verifyChallenge("Bearer test", engine, rejecting, 401, "failed signature verification");
+
+        JwtVerifier accepting = new FakeTokenVerifier();
+
+        // When
+        TRequest authenticated =
+                verifyAuthenticated(JwtHttpConstants.HEADER_AUTHORIZATION, "Bearer test", engine, rawJwt -> {
+                    verifications.incrementAndGet();
+                    return accepting.verify(rawJwt);
+                }, "test");
+
+        // Then
+        Assert.assertNotNull(authenticated);
+        Assert.assertEquals(verifications.get(), 1);
+    }
+
     @Test
     public void engine_invalid_token_10() throws IOException {
         verifyChallenge("Bearer test", new SubjectlessTokenVerifier(), 401, "error=\"invalid_token\"",
@@ -415,6 +523,102 @@ public abstract class AbstractHeaderBasedEngineTests<TRequest, TResponse> extend
         verifyChallenge(request, response, 401, OAuth2Constants.ERROR_INVALID_TOKEN, "Failed to find a username");
     }
 
+    private static final SecretKey CANDIDATE_KEY = Jwts.SIG.HS256.key().build();
+
+    private static JwtVerifier countingVerifier(AtomicInteger calls) {
+        JwtVerifier delegate = new SignedJwtVerifier(CANDIDATE_KEY);
+        return rawJwt -> {
+            calls.incrementAndGet();
+            return delegate.verify(rawJwt);
+        };
+    }
+
+    private static String candidateToken(String subject, boolean expired) {
+        JwtBuilder builder = Jwts.builder()
+                                 .expiration(Date.from(expired ? new Date().toInstant().minus(1, ChronoUnit.HOURS) :
+                                                       new Date().toInstant().plus(1, ChronoUnit.HOURS)));
+        if (subject != null) {
+            builder.subject(subject);
+        }
+        return JwtHttpConstants.AUTH_SCHEME_BEARER + " " + builder.signWith(CANDIDATE_KEY).compact();
+    }
+
+    @DataProvider(name = "candidateEvaluation")
+    public Object[][] candidateEvaluation() {
+        return new Object[][] {
+                { JwtAuthenticationEngine.CandidateEvaluation.LAZY, 1 },
+                { JwtAuthenticationEngine.CandidateEvaluation.EAGER, 2 }
+        };
+    }
+
+    @Test(dataProvider = "candidateEvaluation")
+    public void givenMultipleValidTokens_whenAuthenticating_thenVerificationStopsAtFirstUsableTokenOnlyIfLazy(
+            JwtAuthenticationEngine.CandidateEvaluation evaluation, int expectedVerifications) {
+        // Given
+        JwtAuthenticationEngine<TRequest, TResponse> engine = createMultiHeaderSourceEngine();
+        engine.setCandidateEvaluation(evaluation);
+        AtomicInteger calls = new AtomicInteger();
+
+        // When
+        TRequest authenticated = verifyAuthenticated(
+                Map.of(JwtHttpConstants.HEADER_AUTHORIZATION, candidateToken("test", false), CUSTOM_AUTH_HEADER,
+                       candidateToken("test", false)), engine, countingVerifier(calls), "test");
+
+        // Then
+        Assert.assertNotNull(authenticated);
+        Assert.assertEquals(calls.get(), expectedVerifications);
+        Assert.assertEquals(engine.getCandidateEvaluation(), evaluation);
+    }
+
+    @Test(dataProvider = "candidateEvaluation")
+    public void givenSubjectlessAndValidTokens_whenAuthenticating_thenAuthenticatedWithValidToken(
+            JwtAuthenticationEngine.CandidateEvaluation evaluation, int ignored) {
+        // Given
+        JwtAuthenticationEngine<TRequest, TResponse> engine = createMultiHeaderSourceEngine();
+        engine.setCandidateEvaluation(evaluation);
+        AtomicInteger calls = new AtomicInteger();
+
+        // When
+        TRequest authenticated = verifyAuthenticated(
+                Map.of(JwtHttpConstants.HEADER_AUTHORIZATION, candidateToken(null, false), CUSTOM_AUTH_HEADER,
+                       candidateToken("test", false)), engine, countingVerifier(calls), "test");
+
+        // Then
+        Assert.assertNotNull(authenticated);
+    }
+
+    @Test(dataProvider = "candidateEvaluation")
+    public void givenSubjectlessAndExpiredTokens_whenAuthenticating_thenVerificationFailureChallengeSent(
+            JwtAuthenticationEngine.CandidateEvaluation evaluation, int ignored) throws IOException {
+        // Given
+        JwtAuthenticationEngine<TRequest, TResponse> engine = createMultiHeaderSourceEngine();
+        engine.setCandidateEvaluation(evaluation);
+        AtomicInteger calls = new AtomicInteger();
+        TRequest request = createMockRequest(
+                Map.of(JwtHttpConstants.HEADER_AUTHORIZATION, candidateToken(null, false), CUSTOM_AUTH_HEADER,
+                       candidateToken("test", true)));
+        TResponse response = createMockResponse();
+
+        // When
+        engine.authenticate(request, response, countingVerifier(calls));
+
+        // Then
+        Assert.assertEquals(calls.get(), 2);
+        verifyChallenge(request, response, 401, OAuth2Constants.ERROR_INVALID_TOKEN, "Token expired");
+    }
+
+    @Test
+    public void givenNullCandidateEvaluation_whenSetting_thenLazyUsed() {
+        // Given
+        JwtAuthenticationEngine<TRequest, TResponse> engine = createEngine();
+
+        // When
+        engine.setCandidateEvaluation(null);
+
+        // Then
+        Assert.assertEquals(engine.getCandidateEvaluation(), JwtAuthenticationEngine.CandidateEvaluation.LAZY);
+    }
+
     private JwtAuthenticationEngine<TRequest, TResponse> createMultiHeaderSourceEngine() {
         return createMultiHeaderSourceEngine(null, null);
     }
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.commons.lang3.Strings;
+import org.testng.Assert;
+import org.testng.SkipException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Uses Java Flight Recorder (JFR) to detect virtual threads being pinned to their carrier threads during tests
+ */
+public final class PinningRecorder implements AutoCloseable {
+
+    /**
+     * JFR event emitted when a virtual thread parks while pinned to its carrier thread
+     */
+    public static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final Recording recording;
+
+    private PinningRecorder(Recording recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Starts recording pinning events
+     *
+     * @return Recorder
+     * @throws SkipException Thrown if JFR is not available in the test JVM
+     */
+    public static PinningRecorder start() {
+        try {
+            Recording recording = new Recording();
+            recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+            return new PinningRecorder(recording);
+        } catch (Throwable e) {
+            throw new SkipException("Java Flight Recorder not available: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stops recording and returns all pinning events whose stack trace includes a frame from a class whose name starts
+     * with the given prefix
+     *
+     * @param classPrefix Class name prefix
+     * @return Pinning events
+     * @throws IOException Thrown if the recording cannot be read back
+     */
+    public List<RecordedEvent> stop(String classPrefix) throws IOException {
+        this.recording.stop();
+        Path file = Files.createTempFile("pinning", ".jfr");
+        try {
+            this.recording.dump(file);
+            return RecordingFile.readAllEvents(file)
+                                .stream()
+                                .filter(e -> Strings.CS.equals(e.getEventType().getName(), PINNED_EVENT))
+                                .filter(e -> involves(e, classPrefix))
+                                .collect(Collectors.toList());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Stops recording and asserts that no pinning events involving classes with the given prefix were recorded
+     *
+     * @param classPrefix Class name prefix
+     * @throws IOException Thrown if the recording cannot be read back
+     */
+    public void assertNoPinning(String classPrefix) throws IOException {
+        List<RecordedEvent> events = stop(classPrefix);
+        Assert.assertTrue(events.isEmpty(), "Virtual threads were pinned: " + events);
+    }
+
+    private static boolean involves(RecordedEvent event, String classPrefix) {
+        if (event.getStackTrace() == null) {
+            return false;
+        }
+        for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+            if (frame.getMethod() != null && Strings.CS.startsWith(frame.getMethod().getType().getName(),
+                                                                   classPrefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        this.recording.close();
+    }
+}
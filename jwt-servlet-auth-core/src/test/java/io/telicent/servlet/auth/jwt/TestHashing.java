@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HexFormat;
+
+public class TestHashing {
+
+    @Test
+    public void givenValue_whenFingerprinting_thenMatchesFnv1aWithFinalisingMix() {
+        // When and Then
+        Assert.assertEquals(Hashing.fingerprint("token"), 0x87dfcbb1c58eb424L);
+        Assert.assertEquals(Hashing.fingerprint("token"), Hashing.fingerprint("token"));
+        Assert.assertNotEquals(Hashing.fingerprint("token"), Hashing.fingerprint("token2"));
+    }
+
+    @Test
+    public void givenPairs_whenFingerprinting_thenBoundaryCannotBeShifted() {
+        // When and Then
+        Assert.assertNotEquals(Hashing.fingerprint("ab", "c"), Hashing.fingerprint("a", "bc"));
+        Assert.assertNotEquals(Hashing.fingerprint("a", "b"), Hashing.fingerprint("ab"));
+        Assert.assertEquals(Hashing.fingerprint(null, "a"), Hashing.fingerprint("", "a"));
+    }
+
+    @Test
+    public void givenValue_whenDigesting_thenSha256() {
+        // When
+        byte[] digest = Hashing.sha256("abc");
+
+        // Then
+        Assert.assertEquals(HexFormat.of().formatHex(digest),
+                            "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+    }
+}
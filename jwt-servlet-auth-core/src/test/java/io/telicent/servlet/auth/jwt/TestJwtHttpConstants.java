@@ -19,6 +19,8 @@ import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.util.Random;
+
 public class TestJwtHttpConstants {
 
     @DataProvider(name = "valid")
@@ -64,4 +66,44 @@ public class TestJwtHttpConstants {
         // Then
         Assert.assertNotEquals(sanitised, value);
     }
+
+    @Test
+    public void givenNull_whenSanitising_thenNull() {
+        // When and Then
+        Assert.assertNull(JwtHttpConstants.sanitiseHeaderParameterValue(null));
+        Assert.assertNull(JwtHttpConstants.sanitiseHeader(null));
+    }
+
+    @Test(dataProvider = "valid")
+    public void givenValidHeaderValue_whenSanitising_thenSameInstanceReturned(String value) {
+        // When and Then
+        Assert.assertSame(JwtHttpConstants.sanitiseHeaderParameterValue(value), value);
+        Assert.assertSame(JwtHttpConstants.sanitiseHeader(value), value);
+    }
+
+    @Test
+    public void givenRandomValues_whenSanitising_thenSameAsRegularExpressions() {
+        // Given
+        Random random = new Random(12345);
+        String alphabet = "aZ09-_.,;/'=+ \"\\\r\n\t<>{}é日\u00a0\u0660\ud83d\ude00\ud800";
+
+        for (int i = 0; i < 1_000; i++) {
+            StringBuilder builder = new StringBuilder();
+            int length = random.nextInt(20);
+            for (int j = 0; j < length; j++) {
+                if (random.nextInt(4) == 0) {
+                    builder.append((char) random.nextInt(0x3000));
+                } else {
+                    builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            }
+            String value = builder.toString();
+
+            // When and Then
+            Assert.assertEquals(JwtHttpConstants.sanitiseHeaderParameterValue(value),
+                                JwtHttpConstants.INVALID_PARAM_CHARACTERS.matcher(value).replaceAll(""), value);
+            Assert.assertEquals(JwtHttpConstants.sanitiseHeader(value),
+                                JwtHttpConstants.INVALID_HEADER_CHARACTERS.matcher(value).replaceAll(""), value);
+        }
+    }
 }
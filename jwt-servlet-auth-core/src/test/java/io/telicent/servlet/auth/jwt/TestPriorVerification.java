@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.Jwts;
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.SignedJwtVerifier;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
+import java.util.Date;
+
+public class TestPriorVerification {
+
+    private static final SecretKey KEY = Jwts.SIG.HS256.key().build();
+    private static final long NOW = 1_767_225_600_000L;
+
+    private static String token(Date expiry) {
+        return Jwts.builder().subject("test").expiration(expiry).signWith(KEY).compact();
+    }
+
+    private static Jws<Claims> parse(String token) {
+        return Jwts.parser().verifyWith(KEY).clock(() -> new Date(NOW)).build().parseSignedClaims(token);
+    }
+
+    @Test
+    public void givenPriorVerification_whenSameVerifierAndToken_thenReused() {
+        // Given
+        JwtVerifier verifier = new SignedJwtVerifier(KEY);
+        String token = token(new Date(NOW + 60_000));
+        Jws<Claims> jws = parse(token);
+        PriorVerification prior = new PriorVerification(verifier, token, jws);
+
+        // When and Then
+        Assert.assertSame(prior.reuse(verifier, token, NOW), jws);
+        Assert.assertNull(prior.reuse(new SignedJwtVerifier(KEY), token, NOW));
+        Assert.assertNull(prior.reuse(verifier, token(new Date(NOW + 60_000)) + "x", NOW));
+    }
+
+    @Test
+    public void givenPriorVerification_whenTokenSinceExpired_thenNotReused() {
+        // Given
+        JwtVerifier verifier = new SignedJwtVerifier(KEY);
+        String token = token(new Date(NOW + 60_000));
+        PriorVerification prior = new PriorVerification(verifier, token, parse(token));
+
+        // When and Then
+        Assert.assertNotNull(prior.reuse(verifier, token, NOW + 59_000));
+        Assert.assertNull(prior.reuse(verifier, token, NOW + 60_000));
+    }
+
+    @Test
+    public void givenPriorVerificationOfTokenWithoutExpiry_whenReusing_thenReused() {
+        // Given
+        JwtVerifier verifier = new SignedJwtVerifier(KEY);
+        String token = token(null);
+        PriorVerification prior = new PriorVerification(verifier, token, parse(token));
+
+        // When and Then
+        Assert.assertNotNull(prior.reuse(verifier, token, Long.MAX_VALUE));
+        Assert.assertTrue(prior.toString().startsWith("PriorVerification"));
+    }
+}
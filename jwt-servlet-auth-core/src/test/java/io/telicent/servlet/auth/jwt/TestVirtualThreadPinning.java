@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt;
+
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.JwkSet;
+import io.jsonwebtoken.security.Jwks;
+import io.telicent.servlet.auth.jwt.configuration.FrozenFilterConfiguration;
+import io.telicent.servlet.auth.jwt.fake.FakeEngine;
+import io.telicent.servlet.auth.jwt.fake.FakeRequest;
+import io.telicent.servlet.auth.jwt.fake.FakeResponse;
+import io.telicent.servlet.auth.jwt.verification.FakeTokenVerifier;
+import io.telicent.servlet.auth.jwt.verification.jwks.BlockingJwksLocator;
+import io.telicent.servlet.auth.jwt.verification.jwks.CachedJwksKeyLocator;
+import io.telicent.servlet.auth.jwt.verification.jwks.UrlJwksKeyLocator;
+import jdk.jfr.consumer.RecordedEvent;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.security.Key;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Verifies that the core locking and key loading paths never pin virtual threads to their carrier threads
+ */
+public class TestVirtualThreadPinning {
+
+    private static final String CORE_PACKAGE = "io.telicent.servlet.auth.jwt";
+    private static final int CONCURRENCY = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+
+    private static void runConcurrently(Runnable task) throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < CONCURRENCY; i++) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    @Test
+    public void givenKnownPinningWorkload_whenRecording_thenPinningDetected() throws Exception {
+        // Given
+        Object lock = new Object();
+        try (PinningRecorder recorder = PinningRecorder.start()) {
+            // When
+            runConcurrently(() -> {
+                synchronized (lock) {
+                    sleep(5);
+                }
+            });
+
+            // Then
+            List<RecordedEvent> events = recorder.stop(TestVirtualThreadPinning.class.getName());
+            Assert.assertFalse(events.isEmpty(), "Expected the pinning recorder to detect deliberate pinning");
+        }
+    }
+
+    @Test
+    public void givenVirtualThreads_whenFreezingConfiguration_thenNoPinning() throws Exception {
+        // Given
+        FrozenFilterConfiguration<FakeRequest, FakeResponse> config = new FrozenFilterConfiguration<>();
+        FakeEngine engine = new FakeEngine();
+        FakeTokenVerifier verifier = new FakeTokenVerifier();
+
+        try (PinningRecorder recorder = PinningRecorder.start()) {
+            // When
+            runConcurrently(() -> {
+                config.tryFreezeVerifierConfiguration(verifier);
+                config.tryFreezeEngineConfiguration(null, engine);
+                config.tryFreezeExclusionsConfiguration(null);
+                sleep(5);
+            });
+
+            // Then
+            recorder.assertNoPinning(CORE_PACKAGE);
+            Assert.assertSame(config.getVerifier(), verifier);
+            Assert.assertSame(config.getEngine(), engine);
+            Assert.assertNotNull(config.getExclusions());
+        }
+    }
+
+    @Test
+    public void givenVirtualThreads_whenCreatingLocators_thenNoPinningAndSharedClient() throws Exception {
+        // Given
+        List<UrlJwksKeyLocator> locators = new CopyOnWriteArrayList<>();
+
+        try (PinningRecorder recorder = PinningRecorder.start()) {
+            // When
+            runConcurrently(() -> {
+                locators.add(new UrlJwksKeyLocator(URI.create("http://localhost/jwks.json")));
+                sleep(5);
+            });
+
+            // Then
+            recorder.assertNoPinning(CORE_PACKAGE);
+            Assert.assertEquals(locators.size(), CONCURRENCY);
+        }
+    }
+
+    @Test
+    public void givenSlowJwksSource_whenLocatingKeysFromVirtualThreads_thenNoPinningAndSingleLoad() throws Exception {
+        // Given
+        JwkSet jwks = Jwks.set().add(Jwks.builder().key(Jwts.SIG.HS256.key().build()).id("test").build()).build();
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingJwksLocator source = new BlockingJwksLocator(jwks, release);
+        CachedJwksKeyLocator locator = new CachedJwksKeyLocator(source, Duration.ofMinutes(1));
+        JwsHeader header = mock(JwsHeader.class);
+        when(header.getKeyId()).thenReturn("test");
+        List<Key> keys = new CopyOnWriteArrayList<>();
+
+        try (PinningRecorder recorder = PinningRecorder.start()) {
+            // When
+            Thread releaser = Thread.ofPlatform().start(() -> {
+                sleep(250);
+                release.countDown();
+            });
+            runConcurrently(() -> keys.add(locator.locate(header)));
+            releaser.join();
+
+            // Then
+            recorder.assertNoPinning(CORE_PACKAGE);
+            Assert.assertEquals(keys.size(), CONCURRENCY);
+            Assert.assertTrue(source.getLoads() < CONCURRENCY,
+                              "Concurrent cache misses should share JWKS loads, got " + source.getLoads() + " loads");
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.authorization;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.Jwts;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class TestAuthorizationPolicy {
+
+    private static final AuthorizationPolicy POLICY = AuthorizationPolicy.parse(
+            "GET|HEAD /api/* reader,writer; POST|PUT|DELETE /api/* writer; * /api/admin/* admin; "
+            + "GET /api/status; * /data/* tenant=acme; * /* user");
+
+    @Test
+    public void givenNoRules_whenCompiling_thenEmptyPolicyPermitsEverything() {
+        // When
+        AuthorizationPolicy policy = AuthorizationPolicy.compile(List.of());
+
+        // Then
+        Assert.assertSame(policy, AuthorizationPolicy.NONE);
+        Assert.assertTrue(policy.isEmpty());
+        Assert.assertNull(policy.find("GET", "/api/items"));
+        Assert.assertSame(AuthorizationPolicy.parse(""), AuthorizationPolicy.NONE);
+    }
+
+    @DataProvider(name = "requests")
+    public Object[][] requests() {
+        return new Object[][] {
+                { "GET", "/api/items", "/api/*", Set.of("GET", "HEAD") },
+                { "HEAD", "/api/items/1", "/api/*", Set.of("GET", "HEAD") },
+                { "DELETE", "/api/items/1", "/api/*", Set.of("POST", "PUT", "DELETE") },
+                { "GET", "//api///items", "/api/*", Set.of("GET", "HEAD") },
+                { "GET", "/api/", "/api/*", Set.of("GET", "HEAD") },
+                { "GET", "/api/admin/users", "/api/admin/*", Set.of() },
+                { "GET", "/api/status", "/api/status", Set.of("GET") },
+                { "POST", "/api/status", "/api/*", Set.of("POST", "PUT", "DELETE") },
+                { "GET", "/api", "/api/*", Set.of("GET", "HEAD") },
+                { "DELETE", "/api/admin", "/api/admin/*", Set.of() },
+                { "PATCH", "/api", "/*", Set.of() },
+                { "PATCH", "/api/items", "/*", Set.of() },
+                { null, "/api/items", "/*", Set.of() },
+                { "GET", "/other", "/*", Set.of() },
+                { "GET", "/data/sets/1", "/data/*", Set.of() }
+        };
+    }
+
+    @Test(dataProvider = "requests")
+    public void givenPolicy_whenFindingRequirement_thenMostSpecificRuleSelected(String method, String path,
+                                                                                 String expectedPattern,
+                                                                                 Set<String> expectedMethods) {
+        // When
+        AuthorizationRequirement requirement = POLICY.find(method, path);
+
+        // Then
+        Assert.assertNotNull(requirement);
+        Assert.assertEquals(requirement.getRule().pathPattern(), expectedPattern);
+        Assert.assertEquals(requirement.getRule().methods(), expectedMethods);
+    }
+
+    @Test
+    public void givenPolicyWithoutCatchAll_whenFindingRequirementForUncoveredPath_thenNoRequirement() {
+        // Given
+        AuthorizationPolicy policy = AuthorizationPolicy.parse("GET /api/* reader");
+
+        // When and Then
+        Assert.assertNull(policy.find("GET", "/status"));
+        Assert.assertNull(policy.find("GET", "/apis"));
+        Assert.assertNotNull(policy.find("GET", "/api"));
+        Assert.assertNull(policy.find("POST", "/api/items"));
+        Assert.assertNull(policy.find("GET", null));
+        Assert.assertNotNull(policy.find("GET", "/api/items"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "Multiple authorization rules for GET /api/\\*")
+    public void givenDuplicateMethodRules_whenCompiling_thenIllegalArgument() {
+        // When and Then
+        AuthorizationPolicy.parse("GET|HEAD /api/* reader; GET /api/* writer");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenDuplicateAnyMethodRules_whenCompiling_thenIllegalArgument() {
+        // When and Then
+        AuthorizationPolicy.parse("* /api reader; * /api writer");
+    }
+
+    @Test
+    public void givenExactAndPrefixRulesForSamePath_whenCompiling_thenBothAccepted() {
+        // When
+        AuthorizationPolicy policy = AuthorizationPolicy.parse("* /api reader; * /api/* writer");
+
+        // Then
+        Assert.assertEquals(policy.find("GET", "/api").getRule().roles(), Set.of("reader"));
+        Assert.assertEquals(policy.find("GET", "/api/x").getRule().roles(), Set.of("writer"));
+        Assert.assertTrue(policy.toString().contains("rules=2"));
+    }
+
+    @Test
+    public void givenRoleRequirement_whenCheckingSatisfied_thenAnyRoleSuffices() {
+        // Given
+        AuthorizationRequirement requirement = POLICY.find("GET", "/api/items");
+
+        // When and Then
+        Assert.assertTrue(requirement.isSatisfied(role -> role.equals("writer"), null));
+        Assert.assertTrue(requirement.isSatisfied(role -> role.equals("reader"), null));
+        Assert.assertFalse(requirement.isSatisfied(role -> role.equals("admin"), null));
+    }
+
+    @Test
+    public void givenRoleRequirement_whenCheckingSatisfiedAgainstRoleSet_thenAnyRoleSuffices() {
+        // Given
+        AuthorizationRequirement requirement = POLICY.find("GET", "/api/items");
+        AuthorizationRequirement noRoles = AuthorizationPolicy.parse("* /open/*").find("GET", "/open/x");
+
+        // When and Then
+        Assert.assertTrue(requirement.isSatisfied(Set.of("other", "writer"), null));
+        Assert.assertTrue(requirement.isSatisfied(Set.of("reader"), null));
+        Assert.assertFalse(requirement.isSatisfied(Set.of("admin"), null));
+        Assert.assertFalse(requirement.isSatisfied(Set.of(), null));
+        Assert.assertFalse(requirement.isSatisfied((Set<String>) null, null));
+        Assert.assertTrue(noRoles.isSatisfied(Set.of(), null));
+    }
+
+    private static Jws<Claims> jws(Map<String, Object> claims) {
+        SecretKey key = Jwts.SIG.HS256.key().build();
+        return Jwts.parser()
+                   .verifyWith(key)
+                   .build()
+                   .parseSignedClaims(Jwts.builder().subject("test").claims(claims).signWith(key).compact());
+    }
+
+    @Test
+    public void givenClaimRequirement_whenCheckingSatisfied_thenClaimValueMustMatch() {
+        // Given
+        AuthorizationRequirement requirement = POLICY.find("GET", "/data/sets");
+
+        // When and Then
+        Assert.assertTrue(requirement.isSatisfied(role -> false, jws(Map.of("tenant", "acme"))));
+        Assert.assertTrue(requirement.isSatisfied(role -> false, jws(Map.of("tenant", List.of("other", "acme")))));
+        Assert.assertFalse(requirement.isSatisfied(role -> false, jws(Map.of("tenant", "other"))));
+        Assert.assertFalse(requirement.isSatisfied(role -> false, jws(Map.of("tenant", List.of("other")))));
+        Assert.assertFalse(requirement.isSatisfied(role -> false, jws(Map.of())));
+        Assert.assertFalse(requirement.isSatisfied(role -> true, null));
+    }
+
+    @Test
+    public void givenRoleAndClaimRequirements_whenCheckingSatisfied_thenBothMustBeMet() {
+        // Given
+        AuthorizationRequirement requirement =
+                AuthorizationPolicy.parse("* /tenants/* admin,org.id=42").find("GET", "/tenants/a");
+        Jws<Claims> jws = jws(Map.of("org", Map.of("id", 42)));
+
+        // When and Then
+        Assert.assertTrue(requirement.isSatisfied(role -> true, jws));
+        Assert.assertFalse(requirement.isSatisfied(role -> false, jws));
+        Assert.assertFalse(requirement.isSatisfied(role -> true, jws(Map.of("org", Map.of("id", 7)))));
+    }
+
+    @DataProvider(name = "rawPaths")
+    public Object[][] rawPaths() {
+        return new Object[][] {
+                { null, null },
+                { "", "/" },
+                { "/", "/" },
+                { "/api/items", "/api/items" },
+                { "/api/items/", "/api/items/" },
+                { "//api///items", "/api/items" },
+                { "/admin;x=1/secret", "/admin/secret" },
+                { "/admin/secret;jsessionid=abc", "/admin/secret" },
+                { "/%61dmin/secret", "/admin/secret" },
+                { "/%41dmin/secret", "/Admin/secret" },
+                { "/caf%C3%A9/menu", "/caf\u00e9/menu" },
+                { "/public/../admin/secret", "/admin/secret" },
+                { "/public/%2e%2e/admin/secret", "/admin/secret" },
+                { "/./admin/./secret", "/admin/secret" },
+                { "/../../admin", "/admin" },
+                { "/admin/..", "/" },
+                { "/bad%zzencoding/%", "/bad%zzencoding/%" },
+                { "/100%25", "/100%" },
+                { "/a+b", "/a+b" },
+                { "/public/..%2Fadmin", "/public/..%2Fadmin" },
+                { "/public/%2e%2e%2Fadmin", "/public/..%2Fadmin" },
+                { "/public/%2e%2e%2fadmin", "/public/..%2fadmin" },
+                { "/public/..%5Cadmin", "/public/..%5Cadmin" }
+        };
+    }
+
+    @Test(dataProvider = "rawPaths")
+    public void givenRawPath_whenNormalising_thenNormalisedPathReturned(String rawPath, String expected) {
+        // When
+        String normalised = AuthorizationPolicy.normalisePath(rawPath);
+
+        // Then
+        Assert.assertEquals(normalised, expected);
+    }
+
+    @DataProvider(name = "bypassAttempts")
+    public Object[][] bypassAttempts() {
+        return new Object[][] {
+                { "/api/admin;x=1/users" },
+                { "/api/%61dmin/users" },
+                { "/api/items/../admin/users" },
+                { "/api/items/%2E%2E/admin/users" },
+                { "/api/./admin//users" }
+        };
+    }
+
+    @Test(dataProvider = "bypassAttempts")
+    public void givenBypassAttempt_whenFindingNormalisedPath_thenProtectedRuleApplies(String rawPath) {
+        // When
+        AuthorizationRequirement requirement = POLICY.find("GET", AuthorizationPolicy.normalisePath(rawPath));
+
+        // Then
+        Assert.assertNotNull(requirement);
+        Assert.assertEquals(requirement.getRule().pathPattern(), "/api/admin/*");
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.authorization;
+
+import io.telicent.servlet.auth.jwt.configuration.ClaimPath;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class TestAuthorizationRule {
+
+    @Test
+    public void givenBlankRules_whenParsing_thenNoRules() {
+        // When and Then
+        Assert.assertTrue(AuthorizationRule.parse(null).isEmpty());
+        Assert.assertTrue(AuthorizationRule.parse(" ").isEmpty());
+        Assert.assertTrue(AuthorizationRule.parse(";;").isEmpty());
+    }
+
+    @Test
+    public void givenRules_whenParsing_thenMethodsPathsAndRequirementsParsed() {
+        // Given
+        String rawRules = "GET|head /api/* reader,writer; POST /api/* writer ; * /admin/* admin,tenant=acme;GET /status";
+
+        // When
+        List<AuthorizationRule> rules = AuthorizationRule.parse(rawRules);
+
+        // Then
+        Assert.assertEquals(rules.size(), 4);
+        Assert.assertEquals(rules.get(0).methods(), Set.of("GET", "HEAD"));
+        Assert.assertEquals(rules.get(0).pathPattern(), "/api/*");
+        Assert.assertTrue(rules.get(0).isPrefix());
+        Assert.assertEquals(rules.get(0).roles(), Set.of("reader", "writer"));
+        Assert.assertTrue(rules.get(0).claims().isEmpty());
+        Assert.assertEquals(rules.get(1).methods(), Set.of("POST"));
+        Assert.assertEquals(rules.get(2).methods(), Set.of());
+        Assert.assertEquals(rules.get(2).roles(), Set.of("admin"));
+        verifyClaim(rules.get(2), new String[] { "tenant" }, "acme");
+        Assert.assertFalse(rules.get(3).isPrefix());
+        Assert.assertTrue(rules.get(3).roles().isEmpty());
+    }
+
+    @Test
+    public void givenNestedClaimRequirement_whenParsing_thenClaimPathParsed() {
+        // When
+        AuthorizationRule rule = AuthorizationRule.parse("* /data/* org.tenant=acme").get(0);
+
+        // Then
+        verifyClaim(rule, new String[] { "org", "tenant" }, "acme");
+    }
+
+    private static void verifyClaim(AuthorizationRule rule, String[] expectedPath, String expectedValue) {
+        Assert.assertEquals(rule.claims().size(), 1);
+        Map.Entry<ClaimPath, String> claim = rule.claims().entrySet().iterator().next();
+        Assert.assertEquals(claim.getKey().path(), expectedPath);
+        Assert.assertEquals(claim.getValue(), expectedValue);
+    }
+
+    @DataProvider(name = "invalidRules")
+    public Object[][] invalidRules() {
+        return new Object[][] {
+                { "/api/*" },
+                { "GET /api/* reader extra" },
+                { "GET api/* reader" },
+                { "GET /api/*/items reader" },
+                { "GET /api* reader" },
+                { "GET /api/* =acme" }
+        };
+    }
+
+    @Test(dataProvider = "invalidRules", expectedExceptions = IllegalArgumentException.class)
+    public void givenInvalidRule_whenParsing_thenIllegalArgument(String rawRule) {
+        // When and Then
+        AuthorizationRule.parse(rawRule);
+    }
+
+    @Test
+    public void givenWildcardAmongstMethods_whenCreatingRule_thenAppliesToAnyMethod() {
+        // When
+        AuthorizationRule rule = new AuthorizationRule(Set.of("GET", "*"), "/api", null, null);
+
+        // Then
+        Assert.assertTrue(rule.methods().isEmpty());
+        Assert.assertTrue(rule.roles().isEmpty());
+        Assert.assertTrue(rule.claims().isEmpty());
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.challenges;
+
+import io.telicent.servlet.auth.jwt.OAuth2Constants;
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.KeyLoadingJwtVerifier;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestRejectedTokenCache {
+
+    private static final Challenge CHALLENGE =
+            new Challenge(401, OAuth2Constants.ERROR_INVALID_TOKEN, "Token failed signature verification");
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenZeroMaxEntries_whenCreatingCache_thenIllegalArgument() {
+        new RejectedTokenCache(0, RejectedTokenCache.DEFAULT_TTL);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullTtl_whenCreatingCache_thenNPE() {
+        new RejectedTokenCache(RejectedTokenCache.DEFAULT_MAX_ENTRIES, null);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenZeroTtl_whenCreatingCache_thenIllegalArgument() {
+        new RejectedTokenCache(RejectedTokenCache.DEFAULT_MAX_ENTRIES, Duration.ZERO);
+    }
+
+    @Test
+    public void givenRejectedToken_whenLookingUp_thenChallengeReturnedOnlyForSameTokenAndVerifier() {
+        // Given
+        RejectedTokenCache cache =
+                new RejectedTokenCache(RejectedTokenCache.DEFAULT_MAX_ENTRIES, RejectedTokenCache.DEFAULT_TTL);
+        JwtVerifier verifier = mock(JwtVerifier.class);
+        cache.put(verifier, 0L, "bad", CHALLENGE);
+
+        // When and Then
+        Assert.assertSame(cache.get(verifier, "bad"), CHALLENGE);
+        Assert.assertNull(cache.get(verifier, "other"));
+        Assert.assertNull(cache.get(mock(JwtVerifier.class), "bad"));
+        Assert.assertEquals(cache.size(), 1);
+    }
+
+    @Test
+    public void givenRejectedToken_whenVerifierKeysReloaded_thenNoLongerApplies() {
+        // Given
+        RejectedTokenCache cache =
+                new RejectedTokenCache(RejectedTokenCache.DEFAULT_MAX_ENTRIES, RejectedTokenCache.DEFAULT_TTL);
+        KeyLoadingJwtVerifier verifier = mock(KeyLoadingJwtVerifier.class);
+        when(verifier.getKeyGeneration()).thenReturn(3L);
+        cache.put(verifier, RejectedTokenCache.keyGeneration(verifier), "bad", CHALLENGE);
+        Assert.assertSame(cache.get(verifier, "bad"), CHALLENGE);
+
+        // When
+        when(verifier.getKeyGeneration()).thenReturn(4L);
+
+        // Then
+        Assert.assertNull(cache.get(verifier, "bad"));
+        Assert.assertEquals(RejectedTokenCache.keyGeneration(mock(JwtVerifier.class)), 0L);
+    }
+
+    @Test
+    public void givenRejectedToken_whenTtlElapses_thenNoLongerCached() {
+        // Given
+        AtomicLong now = new AtomicLong();
+        RejectedTokenCache cache = new RejectedTokenCache(10, Duration.ofSeconds(5), now::get);
+        JwtVerifier verifier = mock(JwtVerifier.class);
+        cache.put(verifier, 0L, "bad", CHALLENGE);
+
+        // When
+        now.addAndGet(TimeUnit.SECONDS.toNanos(4));
+        Challenge beforeExpiry = cache.get(verifier, "bad");
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        Challenge afterExpiry = cache.get(verifier, "bad");
+
+        // Then
+        Assert.assertSame(beforeExpiry, CHALLENGE);
+        Assert.assertNull(afterExpiry);
+    }
+
+    @Test
+    public void givenManyRejectedTokens_whenCaching_thenSizeBounded() {
+        // Given
+        RejectedTokenCache cache = new RejectedTokenCache(10, RejectedTokenCache.DEFAULT_TTL);
+        JwtVerifier verifier = mock(JwtVerifier.class);
+
+        // When
+        for (int i = 0; i < 1_000; i++) {
+            cache.put(verifier, 0L, "bad-" + i, CHALLENGE);
+        }
+
+        // Then
+        Assert.assertTrue(cache.size() <= 10);
+        Assert.assertEquals(cache.getMaxEntries(), 10);
+        Assert.assertTrue(cache.toString().contains("maxEntries=10, ttl=PT30S"));
+    }
+
+    @Test
+    public void givenSameToken_whenDigesting_thenDigestsEqual() {
+        // Given and When
+        RejectedTokenCache.Digest a = RejectedTokenCache.Digest.of("token");
+        RejectedTokenCache.Digest b = RejectedTokenCache.Digest.of("token");
+
+        // Then
+        Assert.assertEquals(a, b);
+        Assert.assertNotEquals(a, RejectedTokenCache.Digest.of("token2"));
+    }
+}
@@ -19,13 +19,16 @@ import io.jsonwebtoken.Jwts;
 import io.telicent.servlet.auth.jwt.JwtAuthenticationEngine;
 import io.telicent.servlet.auth.jwt.JwtServletConstants;
 import io.telicent.servlet.auth.jwt.PathExclusion;
+import io.telicent.servlet.auth.jwt.authorization.AuthorizationPolicy;
 import io.telicent.servlet.auth.jwt.fake.FakeEngine;
+import io.telicent.servlet.auth.jwt.verification.JwtWarmUp;
 import io.telicent.servlet.auth.jwt.verification.SignedJwtVerifier;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class TestAutomatedConfiguration extends AbstractFactoryTests {
 
@@ -110,4 +113,99 @@ public class TestAutomatedConfiguration extends AbstractFactoryTests {
         Assert.assertNotEquals(config.getAttribute(JwtServletConstants.ATTRIBUTE_PATH_EXCLUSIONS), exclusions);
         Assert.assertNotEquals(config.getAttribute(JwtServletConstants.ATTRIBUTE_JWT_ENGINE), engine);
     }
+
+    @Test
+    public void givenWarmUpEnabled_whenAutomaticallyConfiguring_thenWarmUpIsStarted() throws Exception {
+        // Given
+        MapRuntimeConfigAdaptor config =
+                new MapRuntimeConfigAdaptor(Map.of(ConfigurationParameters.PARAM_WARMUP_ENABLED, "true",
+                                                   ConfigurationParameters.PARAM_WARMUP_ITERATIONS, "1"));
+        config.setAttribute(JwtServletConstants.ATTRIBUTE_JWT_VERIFIER,
+                            new SignedJwtVerifier(Jwts.SIG.HS256.key().build()));
+
+        // When
+        AutomatedConfiguration.configure(config);
+
+        // Then
+        JwtWarmUp warmUp = (JwtWarmUp) config.getAttribute(JwtServletConstants.ATTRIBUTE_JWT_WARM_UP);
+        Assert.assertNotNull(warmUp);
+        warmUp.getCompletion().get(10, TimeUnit.SECONDS);
+        Assert.assertTrue(warmUp.isReady());
+
+        // And
+        AutomatedConfiguration.configure(config);
+        Assert.assertSame(config.getAttribute(JwtServletConstants.ATTRIBUTE_JWT_WARM_UP), warmUp);
+    }
+
+    @Test
+    public void givenWarmUpEnabledWithoutVerifier_whenAutomaticallyConfiguring_thenNoWarmUp() {
+        // Given
+        MapRuntimeConfigAdaptor config =
+                new MapRuntimeConfigAdaptor(Map.of(ConfigurationParameters.PARAM_WARMUP_ENABLED, "true"));
+
+        // When
+        AutomatedConfiguration.configure(config);
+
+        // Then
+        Assert.assertNull(config.getAttribute(JwtServletConstants.ATTRIBUTE_JWT_WARM_UP));
+    }
+
+    @Test
+    public void givenWarmUpEnabledWithInvalidIterations_whenAutomaticallyConfiguring_thenNoWarmUp() {
+        // Given
+        MapRuntimeConfigAdaptor config =
+                new MapRuntimeConfigAdaptor(Map.of(ConfigurationParameters.PARAM_WARMUP_ENABLED, "true",
+                                                   ConfigurationParameters.PARAM_WARMUP_ITERATIONS, "-1"));
+        config.setAttribute(JwtServletConstants.ATTRIBUTE_JWT_VERIFIER,
+                            new SignedJwtVerifier(Jwts.SIG.HS256.key().build()));
+
+        // When
+        AutomatedConfiguration.configure(config);
+
+        // Then
+        Assert.assertNull(config.getAttribute(JwtServletConstants.ATTRIBUTE_JWT_WARM_UP));
+    }
+
+    @Test
+    public void givenWarmUpEnabledWithInvalidMaxAttempts_whenAutomaticallyConfiguring_thenNoWarmUp() {
+        // Given
+        MapRuntimeConfigAdaptor config =
+                new MapRuntimeConfigAdaptor(Map.of(ConfigurationParameters.PARAM_WARMUP_ENABLED, "true",
+                                                   ConfigurationParameters.PARAM_WARMUP_MAX_ATTEMPTS, "0"));
+        config.setAttribute(JwtServletConstants.ATTRIBUTE_JWT_VERIFIER,
+                            new SignedJwtVerifier(Jwts.SIG.HS256.key().build()));
+
+        // When
+        AutomatedConfiguration.configure(config);
+
+        // Then
+        Assert.assertNull(config.getAttribute(JwtServletConstants.ATTRIBUTE_JWT_WARM_UP));
+    }
+
+    @Test
+    public void givenAuthorizationRules_whenAutomaticallyConfiguring_thenPolicyIsConfigured() {
+        // Given
+        MapRuntimeConfigAdaptor config = new MapRuntimeConfigAdaptor(
+                Map.of(ConfigurationParameters.PARAM_JWKS_URL, EXAMPLE_JWKS_URL,
+                       ConfigurationParameters.PARAM_AUTHORIZATION_RULES, "GET /api/* reader; * /admin/* admin"));
+
+        // When
+        AutomatedConfiguration.configure(config);
+
+        // Then
+        Object policy = config.getAttribute(JwtServletConstants.ATTRIBUTE_AUTHORIZATION_POLICY);
+        Assert.assertTrue(policy instanceof AuthorizationPolicy);
+        Assert.assertNotNull(((AuthorizationPolicy) policy).find("GET", "/admin/users"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenInvalidAuthorizationRules_whenAutomaticallyConfiguring_thenIllegalArgument() {
+        // Given
+        MapRuntimeConfigAdaptor config = new MapRuntimeConfigAdaptor(
+                Map.of(ConfigurationParameters.PARAM_JWKS_URL, EXAMPLE_JWKS_URL,
+                       ConfigurationParameters.PARAM_AUTHORIZATION_RULES, "GET api reader"));
+
+        // When and Then
+        AutomatedConfiguration.configure(config);
+    }
 }
@@ -16,9 +16,14 @@
 package io.telicent.servlet.auth.jwt.configuration;
 
 import io.telicent.servlet.auth.jwt.JwtAuthenticationEngine;
+import io.telicent.servlet.auth.jwt.challenges.RejectedTokenCache;
+import io.telicent.servlet.auth.jwt.ratelimit.FailureRateLimiter;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -68,6 +73,112 @@ public class TestEngineFactory extends AbstractFactoryTests {
         Assert.assertNotNull(configured);
     }
 
+    @Test
+    public void givenFailureLimitConfig_whenConfiguringEngine_thenEngineIsFailureRateLimited() {
+        // Given
+        AtomicReference<JwtAuthenticationEngine<?, ?>> configured = new AtomicReference<>();
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_USE_DEFAULT_HEADERS, "true",
+                                            ConfigurationParameters.PARAM_FAILURE_LIMIT, "5",
+                                            ConfigurationParameters.PARAM_FAILURE_WINDOW, "30",
+                                            ConfigurationParameters.PARAM_FAILURE_CLIENT_KEY, " Address ");
+
+        // When
+        EngineFactory.configure(supplierForMap(config), x -> configured.set(x));
+
+        // Then
+        FailureRateLimiter limiter = configured.get().getFailureRateLimiter();
+        Assert.assertNotNull(limiter);
+        Assert.assertEquals(limiter.getClientKey(), FailureRateLimiter.ClientKey.ADDRESS);
+        Assert.assertTrue(limiter.toString().contains("maxFailures=5, window=PT30S"));
+    }
+
+    @Test
+    public void givenInvalidFailureLimitConfig_whenConfiguringEngine_thenDefaultsUsed() {
+        // Given
+        AtomicReference<JwtAuthenticationEngine<?, ?>> configured = new AtomicReference<>();
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_USE_DEFAULT_HEADERS, "true",
+                                            ConfigurationParameters.PARAM_FAILURE_LIMIT, "5",
+                                            ConfigurationParameters.PARAM_FAILURE_CLIENT_KEY, "unknown");
+
+        // When
+        EngineFactory.configure(supplierForMap(config), x -> configured.set(x));
+
+        // Then
+        Assert.assertEquals(configured.get().getFailureRateLimiter().getClientKey(),
+                            FailureRateLimiter.ClientKey.TOKEN);
+    }
+
+    @Test
+    public void givenNoFailureLimitConfig_whenConfiguringEngine_thenNotFailureRateLimited() {
+        // Given
+        AtomicReference<JwtAuthenticationEngine<?, ?>> configured = new AtomicReference<>();
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_USE_DEFAULT_HEADERS, "true",
+                                            ConfigurationParameters.PARAM_FAILURE_LIMIT, "0");
+
+        // When
+        EngineFactory.configure(supplierForMap(config), x -> configured.set(x));
+
+        // Then
+        Assert.assertNull(configured.get().getFailureRateLimiter());
+    }
+
+    @Test
+    public void givenRejectedTokensCacheConfig_whenConfiguringEngine_thenRejectionsCached() {
+        // Given
+        AtomicReference<JwtAuthenticationEngine<?, ?>> configured = new AtomicReference<>();
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_USE_DEFAULT_HEADERS, "true",
+                                            ConfigurationParameters.PARAM_REJECTED_TOKENS_CACHE_SIZE, "100",
+                                            ConfigurationParameters.PARAM_REJECTED_TOKENS_CACHE_TTL, "5");
+
+        // When
+        EngineFactory.configure(supplierForMap(config), x -> configured.set(x));
+
+        // Then
+        RejectedTokenCache cache = configured.get().getRejectedTokenCache();
+        Assert.assertNotNull(cache);
+        Assert.assertEquals(cache.getMaxEntries(), 100);
+        Assert.assertEquals(cache.getTtl(), Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void givenNoRejectedTokensCacheConfig_whenConfiguringEngine_thenRejectionsNotCached() {
+        // Given
+        AtomicReference<JwtAuthenticationEngine<?, ?>> configured = new AtomicReference<>();
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_USE_DEFAULT_HEADERS, "true");
+
+        // When
+        EngineFactory.configure(supplierForMap(config), x -> configured.set(x));
+
+        // Then
+        Assert.assertNull(configured.get().getRejectedTokenCache());
+    }
+
+    @DataProvider(name = "candidateEvaluation")
+    public Object[][] candidateEvaluation() {
+        return new Object[][] {
+                { null, JwtAuthenticationEngine.CandidateEvaluation.LAZY },
+                { "unknown", JwtAuthenticationEngine.CandidateEvaluation.LAZY },
+                { "lazy", JwtAuthenticationEngine.CandidateEvaluation.LAZY },
+                { " Eager ", JwtAuthenticationEngine.CandidateEvaluation.EAGER }
+        };
+    }
+
+    @Test(dataProvider = "candidateEvaluation")
+    public void givenCandidateEvaluationConfig_whenConfiguringEngine_thenExpectedModeUsed(
+            String value, JwtAuthenticationEngine.CandidateEvaluation expected) {
+        // Given
+        AtomicReference<JwtAuthenticationEngine<?, ?>> configured = new AtomicReference<>();
+        Map<String, String> config = new HashMap<>();
+        config.put(ConfigurationParameters.PARAM_USE_DEFAULT_HEADERS, "true");
+        config.put(ConfigurationParameters.PARAM_CANDIDATE_EVALUATION, value);
+
+        // When
+        EngineFactory.configure(supplierForMap(config), x -> configured.set(x));
+
+        // Then
+        Assert.assertEquals(configured.get().getCandidateEvaluation(), expected);
+    }
+
     @Test
     public void givenEngineFactory_whenQueryingAvailable_thenNonZeroValueIsReturned() {
         // Given and When
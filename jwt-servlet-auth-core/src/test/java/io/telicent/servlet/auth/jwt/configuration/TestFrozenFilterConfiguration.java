@@ -17,6 +17,8 @@ package io.telicent.servlet.auth.jwt.configuration;
 
 import io.telicent.servlet.auth.jwt.JwtAuthenticationEngine;
 import io.telicent.servlet.auth.jwt.PathExclusion;
+import io.telicent.servlet.auth.jwt.authorization.AuthorizationPolicy;
+import io.telicent.servlet.auth.jwt.errors.AuthenticationConfigurationError;
 import io.telicent.servlet.auth.jwt.fake.FakeEngine;
 import io.telicent.servlet.auth.jwt.verification.FakeTokenVerifier;
 import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
@@ -107,4 +109,27 @@ public class TestFrozenFilterConfiguration {
         // Then
         // TODO Check the warning was issued
     }
+
+    @Test
+    public void givenFrozenFilterConfiguration_whenSettingAuthorizationPolicy_thenOldValueIsPreserved() {
+        // Given
+        FrozenFilterConfiguration config = new FrozenFilterConfiguration();
+        config.tryFreezeAuthorizationConfiguration(null);
+        AuthorizationPolicy other = AuthorizationPolicy.parse("GET /api/* reader");
+
+        // When
+        config.tryFreezeAuthorizationConfiguration(other);
+
+        // Then
+        Assert.assertSame(config.getAuthorizationPolicy(), AuthorizationPolicy.NONE);
+    }
+
+    @Test(expectedExceptions = AuthenticationConfigurationError.class)
+    public void givenWrongTypeAuthorizationPolicy_whenFreezing_thenError() {
+        // Given
+        FrozenFilterConfiguration config = new FrozenFilterConfiguration();
+
+        // When and Then
+        config.tryFreezeAuthorizationConfiguration("GET /api/* reader");
+    }
 }
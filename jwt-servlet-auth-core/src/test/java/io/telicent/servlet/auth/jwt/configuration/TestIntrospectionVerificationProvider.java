@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.configuration;
+
+import io.jsonwebtoken.Jwts;
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.TestKeyUtils;
+import io.telicent.servlet.auth.jwt.verification.introspection.IntrospectedJws;
+import io.telicent.servlet.auth.jwt.verification.introspection.IntrospectingTokenVerifier;
+import io.telicent.servlet.auth.jwt.verification.introspection.IntrospectionServer;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TestIntrospectionVerificationProvider extends AbstractFactoryTests {
+
+    private static final Random RANDOM = new Random();
+    private static final AtomicInteger TEST_PORT = new AtomicInteger(51250 + RANDOM.nextInt(50));
+
+    private IntrospectionServer server;
+
+    @BeforeClass
+    public void setup() throws Exception {
+        this.server = new IntrospectionServer(TEST_PORT.getAndIncrement());
+        this.server.start();
+        this.server.addToken("opaque", Map.of("sub", "user"));
+    }
+
+    @AfterClass
+    public void teardown() throws Exception {
+        this.server.stop();
+    }
+
+    @Test
+    public void givenNoIntrospectionUrl_whenConfiguring_thenNotConfigured() {
+        // Given
+        IntrospectionVerificationProvider provider = new IntrospectionVerificationProvider();
+        AtomicReference<JwtVerifier> verifier = new AtomicReference<>();
+
+        // When and Then
+        Assert.assertFalse(provider.configure(NULL_PARAM_SUPPLIER, verifier::set));
+        Assert.assertNull(verifier.get());
+        Assert.assertEquals(provider.priority(), 300);
+    }
+
+    @Test
+    public void givenInvalidIntrospectionUrl_whenConfiguring_thenNotConfigured() {
+        // Given
+        IntrospectionVerificationProvider provider = new IntrospectionVerificationProvider();
+        AtomicReference<JwtVerifier> verifier = new AtomicReference<>();
+
+        // When and Then
+        Assert.assertFalse(provider.configure(
+                supplierForMap(Map.of(ConfigurationParameters.PARAM_INTROSPECTION_URL, "not a url")), verifier::set));
+        Assert.assertNull(verifier.get());
+    }
+
+    @Test
+    public void givenIntrospectionUrlAndClientCredentials_whenConfiguringViaFactory_thenOpaqueTokensIntrospected() {
+        // Given
+        Map<String, String> params = Map.of(ConfigurationParameters.PARAM_INTROSPECTION_URL,
+                                            this.server.getIntrospectionUrl(),
+                                            ConfigurationParameters.PARAM_INTROSPECTION_CLIENT_ID, "client",
+                                            ConfigurationParameters.PARAM_INTROSPECTION_CLIENT_SECRET, "secret",
+                                            ConfigurationParameters.PARAM_INTROSPECTION_CACHE_TTL, "30",
+                                            ConfigurationParameters.PARAM_INTROSPECTION_CACHE_SIZE, "100",
+                                            ConfigurationParameters.PARAM_INTROSPECTION_TIMEOUT, "2500");
+        AtomicReference<JwtVerifier> verifier = new AtomicReference<>();
+
+        // When
+        VerificationFactory.configure(supplierForMap(params), verifier::set);
+
+        // Then
+        Assert.assertTrue(verifier.get() instanceof IntrospectingTokenVerifier);
+        Assert.assertTrue(verifier.get().verify("opaque") instanceof IntrospectedJws);
+        Assert.assertEquals(this.server.getLastAuthorization(),
+                            "Basic " + Base64.getEncoder().encodeToString("client:secret".getBytes()));
+        Assert.assertFalse(verifier.get().toString().contains("jwtVerifier="));
+        Assert.assertTrue(verifier.get().toString().contains("requestTimeout=PT2.5S"));
+    }
+
+    @Test
+    public void givenAvailableProviders_whenListed_thenPriorityOrdered_andIncludeDiscoveredProviders() {
+        // Given and When
+        List<VerificationProvider> providers = VerificationFactory.providers();
+
+        // Then
+        Assert.assertTrue(providers.stream().anyMatch(p -> p instanceof IntrospectionVerificationProvider));
+        Assert.assertTrue(providers.stream().anyMatch(p -> p instanceof DefaultVerificationProvider));
+        for (int i = 1; i < providers.size(); i++) {
+            Assert.assertTrue(providers.get(i - 1).priority() >= providers.get(i).priority());
+        }
+    }
+
+    @Test
+    public void givenIntrospectionUrlAndSecretKey_whenConfiguring_thenJwtsVerifiedLocally() throws Exception {
+        // Given
+        SecretKey key = Jwts.SIG.HS256.key().build();
+        Map<String, String> params = Map.of(ConfigurationParameters.PARAM_INTROSPECTION_URL,
+                                            this.server.getIntrospectionUrl(),
+                                            ConfigurationParameters.PARAM_SECRET_KEY,
+                                            TestKeyUtils.saveKeyToFile(key.getEncoded()).getAbsolutePath());
+        AtomicReference<JwtVerifier> verifier = new AtomicReference<>();
+
+        // When
+        Assert.assertTrue(new IntrospectionVerificationProvider().configure(supplierForMap(params), verifier::set));
+
+        // Then
+        Assert.assertTrue(verifier.get().toString().contains("jwtVerifier="));
+        String jwt = Jwts.builder().subject("jwt-user").signWith(key).compact();
+        Assert.assertEquals(verifier.get().verify(jwt).getPayload().getSubject(), "jwt-user");
+        Assert.assertEquals(verifier.get().verify("opaque").getPayload().getSubject(), "user");
+    }
+}
@@ -15,8 +15,10 @@
  */
 package io.telicent.servlet.auth.jwt.configuration;
 
+import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.jackson.io.JacksonSerializer;
+import io.jsonwebtoken.security.JwkSet;
 import io.jsonwebtoken.security.Jwks;
 import io.jsonwebtoken.security.MacAlgorithm;
 import io.jsonwebtoken.security.PublicJwk;
@@ -24,20 +26,24 @@ import io.jsonwebtoken.security.RsaPublicJwk;
 import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
 import io.telicent.servlet.auth.jwt.verification.KeyUtils;
 import io.telicent.servlet.auth.jwt.verification.TestKeyUtils;
+import io.telicent.servlet.auth.jwt.verification.jwks.KeySourceRegistry;
 import org.apache.commons.lang3.Strings;
 import org.testng.Assert;
 import org.testng.SkipException;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import javax.crypto.SecretKey;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.security.KeyPair;
 import java.security.PublicKey;
 import java.security.interfaces.RSAPublicKey;
+import java.util.Date;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -294,4 +300,287 @@ public class TestVerificationFactory extends AbstractFactoryTests {
         // Then
         Assert.assertNull(configured.get());
     }
+
+    @Test
+    public void givenJwksConfigurationWithSnapshotFile_whenConfiguringVerifier_thenVerifierUsesSnapshot() throws
+            IOException {
+        // Given
+        AtomicReference<JwtVerifier> configured = new AtomicReference<>();
+        RSAPublicKey key = (RSAPublicKey) Jwts.SIG.RS512.keyPair().build().getPublic();
+        RsaPublicJwk jwk = Jwks.builder().key(key).idFromThumbprint().build();
+        File jwksFile = saveJwks(jwk);
+        File snapshotFile = new File(jwksFile.getParentFile(), jwksFile.getName() + ".snapshot");
+        snapshotFile.deleteOnExit();
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_JWKS_URL, jwksFile.toURI().toString(),
+                                            ConfigurationParameters.PARAM_JWKS_SNAPSHOT_FILE,
+                                            snapshotFile.getAbsolutePath(),
+                                            ConfigurationParameters.PARAM_JWKS_SNAPSHOT_MAX_AGE, "5");
+
+        // When
+        VerificationFactory.configure(supplierForMap(config), configured::set);
+
+        // Then
+        Assert.assertNotNull(configured.get());
+        Assert.assertTrue(Strings.CS.contains(configured.get().toString(),
+                                              "snapshotFile=" + snapshotFile.getAbsolutePath()));
+    }
+
+    private static File saveJwkSet(JwkSet jwks) throws IOException {
+        File file = Files.createTempFile("jwks", ".json").toFile();
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            new JacksonSerializer<JwkSet>().serialize(jwks, output);
+        }
+        return file;
+    }
+
+    @Test
+    public void givenCompositeKeysConfiguration_whenConfiguringVerifier_thenTokensFromAllSourcesVerified() throws
+            IOException {
+        // Given
+        AtomicReference<JwtVerifier> configured = new AtomicReference<>();
+        KeyPair oldKeys = Jwts.SIG.RS256.keyPair().build();
+        KeyPair newKeys = Jwts.SIG.RS256.keyPair().build();
+        File oldJwks = saveJwkSet(
+                Jwks.set().add(Jwks.builder().key((RSAPublicKey) oldKeys.getPublic()).id("old").build()).build());
+        File newJwks = saveJwkSet(
+                Jwks.set().add(Jwks.builder().key((RSAPublicKey) newKeys.getPublic()).id("new").build()).build());
+        SecretKey secret = Jwts.SIG.HS256.key().build();
+        File secretKey = TestKeyUtils.saveKeyToFile(secret.getEncoded());
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_COMPOSITE_KEYS, "true",
+                                            ConfigurationParameters.PARAM_SECRET_KEY, secretKey.getAbsolutePath(),
+                                            ConfigurationParameters.PARAM_KEY_ID, "local",
+                                            ConfigurationParameters.PARAM_JWKS_URL,
+                                            oldJwks.toURI() + ", " + newJwks.toURI());
+
+        // When
+        VerificationFactory.configure(supplierForMap(config), configured::set);
+
+        // Then
+        JwtVerifier verifier = configured.get();
+        Assert.assertNotNull(verifier);
+        Assert.assertTrue(Strings.CS.contains(verifier.toString(), "CompositeKeyLocator"));
+        Assert.assertNotNull(verifier.verify(
+                Jwts.builder().header().keyId("old").and().subject("test").signWith(oldKeys.getPrivate()).compact()));
+        Assert.assertNotNull(verifier.verify(
+                Jwts.builder().header().keyId("new").and().subject("test").signWith(newKeys.getPrivate()).compact()));
+        Assert.assertNotNull(verifier.verify(
+                Jwts.builder().header().keyId("local").and().subject("test").signWith(secret).compact()));
+        Assert.assertNotNull(verifier.verify(Jwts.builder().subject("test").signWith(secret).compact()));
+    }
+
+    @Test
+    public void givenCompositeKeysConfigurations_whenConfiguringVerifiers_thenJwksSourcesAreShared() throws
+            IOException {
+        // Given
+        KeySourceRegistry.reset();
+        AtomicReference<JwtVerifier> first = new AtomicReference<>();
+        AtomicReference<JwtVerifier> second = new AtomicReference<>();
+        KeyPair keys = Jwts.SIG.RS256.keyPair().build();
+        File jwks = saveJwkSet(
+                Jwks.set().add(Jwks.builder().key((RSAPublicKey) keys.getPublic()).id("shared").build()).build());
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_COMPOSITE_KEYS, "true",
+                                            ConfigurationParameters.PARAM_JWKS_URL, jwks.toURI().toString());
+
+        // When
+        VerificationFactory.configure(supplierForMap(config), first::set);
+        VerificationFactory.configure(supplierForMap(config), second::set);
+
+        // Then
+        Assert.assertNotNull(first.get());
+        Assert.assertNotNull(second.get());
+        Assert.assertNotSame(first.get(), second.get());
+        Assert.assertEquals(KeySourceRegistry.size(), 1);
+        String token =
+                Jwts.builder().header().keyId("shared").and().subject("test").signWith(keys.getPrivate()).compact();
+        Assert.assertNotNull(first.get().verify(token));
+        Assert.assertNotNull(second.get().verify(token));
+    }
+
+    @Test
+    public void givenCompositeKeysConfigurationWithoutKeySources_whenConfiguringVerifier_thenNothingIsConfigured() {
+        // Given
+        AtomicReference<JwtVerifier> configured = new AtomicReference<>();
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_COMPOSITE_KEYS, "true",
+                                            ConfigurationParameters.PARAM_KEY_ID, "local");
+
+        // When
+        VerificationFactory.configure(supplierForMap(config), configured::set);
+
+        // Then
+        Assert.assertNull(configured.get());
+    }
+
+    @Test(dataProvider = "publicKeyAlgorithms")
+    public void givenCompositeKeysConfigurationWithPublicKeyOnly_whenConfiguringVerifier_thenVerifierIsConfigured(
+            String algorithm, File keyFile) {
+        // Given
+        AtomicReference<JwtVerifier> configured = new AtomicReference<>();
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_COMPOSITE_KEYS, "true",
+                                            ConfigurationParameters.PARAM_PUBLIC_KEY, keyFile.getAbsolutePath(),
+                                            ConfigurationParameters.PARAM_KEY_ALGORITHM, algorithm,
+                                            ConfigurationParameters.PARAM_JWKS_URL, " , ");
+
+        // When
+        VerificationFactory.configure(supplierForMap(config), configured::set);
+
+        // Then
+        Assert.assertNotNull(configured.get());
+        Assert.assertTrue(Strings.CS.contains(configured.get().toString(), "defaultKey=true"));
+        Assert.assertTrue(Strings.CS.contains(configured.get().toString(), "sources=[]"));
+    }
+
+    @Test
+    public void givenWatchedSecretKeyConfiguration_whenConfiguringVerifier_thenWatchingVerifierIsConfigured() throws
+            IOException {
+        // Given
+        AtomicReference<JwtVerifier> configured = new AtomicReference<>();
+        SecretKey secret = Jwts.SIG.HS256.key().build();
+        File secretKey = TestKeyUtils.saveKeyToFile(secret.getEncoded());
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_SECRET_KEY, secretKey.getAbsolutePath(),
+                                            ConfigurationParameters.PARAM_WATCH_KEY_FILES, "true");
+
+        // When
+        VerificationFactory.configure(supplierForMap(config), configured::set);
+
+        // Then
+        Assert.assertNotNull(configured.get());
+        Assert.assertTrue(Strings.CS.contains(configured.get().toString(), "FileWatchingKeyLocator{type=SecretKey"));
+        Assert.assertNotNull(configured.get().verify(Jwts.builder().subject("test").signWith(secret).compact()));
+    }
+
+    @Test(dataProvider = "publicKeyAlgorithms")
+    public void givenWatchedPublicKeyConfiguration_whenConfiguringVerifier_thenWatchingVerifierIsConfigured(
+            String algorithm, File keyFile) {
+        // Given
+        AtomicReference<JwtVerifier> configured = new AtomicReference<>();
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_PUBLIC_KEY, keyFile.getAbsolutePath(),
+                                            ConfigurationParameters.PARAM_KEY_ALGORITHM, algorithm,
+                                            ConfigurationParameters.PARAM_WATCH_KEY_FILES, "true");
+
+        // When
+        VerificationFactory.configure(supplierForMap(config), configured::set);
+
+        // Then
+        Assert.assertNotNull(configured.get());
+        Assert.assertTrue(Strings.CS.contains(configured.get().toString(), "FileWatchingKeyLocator{type=PublicKey"));
+    }
+
+    @Test
+    public void givenWatchedJwksFileConfiguration_whenConfiguringVerifier_thenWatchingVerifierIsConfigured() throws
+            IOException {
+        // Given
+        AtomicReference<JwtVerifier> configured = new AtomicReference<>();
+        KeyPair keys = Jwts.SIG.RS256.keyPair().build();
+        File jwksFile =
+                saveJwkSet(Jwks.set().add(Jwks.builder().key((RSAPublicKey) keys.getPublic()).id("a").build()).build());
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_JWKS_URL, jwksFile.toURI().toString(),
+                                            ConfigurationParameters.PARAM_WATCH_KEY_FILES, "true");
+
+        // When
+        VerificationFactory.configure(supplierForMap(config), configured::set);
+
+        // Then
+        Assert.assertNotNull(configured.get());
+        Assert.assertTrue(Strings.CS.contains(configured.get().toString(), "FileWatchingKeyLocator{type=JWKS"));
+        Assert.assertNotNull(configured.get()
+                                       .verify(Jwts.builder()
+                                                   .header()
+                                                   .keyId("a")
+                                                   .and()
+                                                   .subject("test")
+                                                   .signWith(keys.getPrivate())
+                                                   .compact()));
+    }
+
+    @Test
+    public void givenWatchedRemoteJwksConfiguration_whenConfiguringVerifier_thenCachingVerifierIsConfigured() {
+        // Given
+        AtomicReference<JwtVerifier> configured = new AtomicReference<>();
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_JWKS_URL, "https://example.org/jwks.json",
+                                            ConfigurationParameters.PARAM_WATCH_KEY_FILES, "true");
+
+        // When
+        VerificationFactory.configure(supplierForMap(config), configured::set);
+
+        // Then
+        Assert.assertNotNull(configured.get());
+        Assert.assertFalse(Strings.CS.contains(configured.get().toString(), "FileWatchingKeyLocator"));
+    }
+
+    @Test
+    public void givenRevocationFileConfiguration_whenConfiguringVerifier_thenRevokedTokensRejected() throws
+            IOException {
+        // Given
+        AtomicReference<JwtVerifier> configured = new AtomicReference<>();
+        SecretKey secret = Jwts.SIG.HS256.key().build();
+        File secretKey = TestKeyUtils.saveKeyToFile(secret.getEncoded());
+        File revocations = Files.createTempFile("revocations", ".txt").toFile();
+        Files.writeString(revocations.toPath(), "jti revoked\n");
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_SECRET_KEY, secretKey.getAbsolutePath(),
+                                            ConfigurationParameters.PARAM_REVOCATION_FILE,
+                                            revocations.getAbsolutePath(),
+                                            ConfigurationParameters.PARAM_REVOCATION_REFRESH_INTERVAL, "5");
+
+        // When
+        VerificationFactory.configure(supplierForMap(config), configured::set);
+
+        // Then
+        JwtVerifier verifier = configured.get();
+        Assert.assertNotNull(verifier);
+        Assert.assertTrue(Strings.CS.contains(verifier.toString(), "RevocationCheckingJwtVerifier"));
+        Assert.assertTrue(Strings.CS.contains(verifier.toString(), "refreshInterval=PT5S"));
+        Assert.assertNotNull(verifier.verify(Jwts.builder().id("ok").subject("test").signWith(secret).compact()));
+        Assert.assertThrows(JwtException.class, () -> verifier.verify(
+                Jwts.builder().id("revoked").subject("test").signWith(secret).compact()));
+    }
+
+    @Test
+    public void givenZeroRevocationRefreshInterval_whenConfiguringVerifier_thenMinimumIntervalUsed() throws
+            IOException {
+        // Given
+        AtomicReference<JwtVerifier> configured = new AtomicReference<>();
+        File secretKey = TestKeyUtils.saveKeyToFile(Jwts.SIG.HS256.key().build().getEncoded());
+        File revocations = Files.createTempFile("revocations", ".txt").toFile();
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_SECRET_KEY, secretKey.getAbsolutePath(),
+                                            ConfigurationParameters.PARAM_REVOCATION_FILE,
+                                            revocations.getAbsolutePath(),
+                                            ConfigurationParameters.PARAM_REVOCATION_REFRESH_INTERVAL, "0");
+
+        // When
+        VerificationFactory.configure(supplierForMap(config), configured::set);
+
+        // Then
+        Assert.assertTrue(Strings.CS.contains(configured.get().toString(), "refreshInterval=PT1S"));
+    }
+
+    @Test
+    public void givenReplayGuardConfiguration_whenConfiguringVerifier_thenReplayedTokensRejected() throws
+            IOException {
+        // Given
+        AtomicReference<JwtVerifier> configured = new AtomicReference<>();
+        SecretKey secret = Jwts.SIG.HS256.key().build();
+        File secretKey = TestKeyUtils.saveKeyToFile(secret.getEncoded());
+        File revocations = Files.createTempFile("revocations", ".txt").toFile();
+        Files.writeString(revocations.toPath(), "jti revoked\n");
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_SECRET_KEY, secretKey.getAbsolutePath(),
+                                            ConfigurationParameters.PARAM_REVOCATION_FILE,
+                                            revocations.getAbsolutePath(),
+                                            ConfigurationParameters.PARAM_REPLAY_GUARD_ENABLED, "true",
+                                            ConfigurationParameters.PARAM_REPLAY_MAX_ENTRIES, "100");
+        Date expiry = new Date(System.currentTimeMillis() + 60_000);
+
+        // When
+        VerificationFactory.configure(supplierForMap(config), configured::set);
+
+        // Then
+        JwtVerifier verifier = configured.get();
+        Assert.assertNotNull(verifier);
+        Assert.assertTrue(Strings.CS.contains(verifier.toString(),
+                                              "ReplayGuardingJwtVerifier{delegate=RevocationCheckingJwtVerifier"));
+        String jwt = Jwts.builder().id("once").subject("test").expiration(expiry).signWith(secret).compact();
+        Assert.assertNotNull(verifier.verify(jwt));
+        Assert.assertThrows(JwtException.class, () -> verifier.verify(jwt));
+        Assert.assertThrows(JwtException.class, () -> verifier.verify(
+                Jwts.builder().id("revoked").subject("test").expiration(expiry).signWith(secret).compact()));
+    }
 }
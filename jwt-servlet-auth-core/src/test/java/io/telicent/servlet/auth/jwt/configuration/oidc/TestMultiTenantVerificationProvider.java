@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.configuration.oidc;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Jwk;
+import io.jsonwebtoken.security.JwkSet;
+import io.telicent.servlet.auth.jwt.configuration.AbstractFactoryTests;
+import io.telicent.servlet.auth.jwt.configuration.ConfigurationParameters;
+import io.telicent.servlet.auth.jwt.configuration.VerificationFactory;
+import io.telicent.servlet.auth.jwt.verification.IssuerRoutingJwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.TestKeyUtils;
+import io.telicent.servlet.auth.jwt.verification.jwks.KeySourceRegistry;
+import io.telicent.servlet.auth.jwt.verification.jwks.OidcServer;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.security.Key;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TestMultiTenantVerificationProvider extends AbstractFactoryTests {
+
+    private static final Random RANDOM = new Random();
+    private static final AtomicInteger TEST_PORT = new AtomicInteger(51100 + RANDOM.nextInt(50));
+
+    private JwkSet jwks;
+    private OidcServer server;
+    private String issuer;
+
+    @BeforeClass
+    public void setup() throws Exception {
+        this.jwks = TestKeyUtils.buildComplexJwks();
+        this.server = new OidcServer(TEST_PORT.getAndIncrement(), this.jwks);
+        this.server.start();
+        this.issuer = this.server.getConfigurationUrl()
+                                 .replace(OidcVerificationProvider.WELL_KNOWN_OPENID_CONFIGURATION, "");
+        OidcRegistry.reset();
+        KeySourceRegistry.reset();
+    }
+
+    @AfterMethod
+    public void cleanup() {
+        OidcRegistry.reset();
+        KeySourceRegistry.reset();
+    }
+
+    @AfterClass
+    public void teardown() throws Exception {
+        this.server.stop();
+    }
+
+    private String signedToken(String tokenIssuer) {
+        Jwk<?> jwk = this.jwks.getKeys().stream().findFirst().orElseThrow();
+        Key key = jwk.toKey();
+        return Jwts.builder()
+                   .header()
+                   .keyId(jwk.getId())
+                   .and()
+                   .issuer(tokenIssuer)
+                   .subject("test")
+                   .signWith(key)
+                   .compact();
+    }
+
+    @Test
+    public void givenNoIssuers_whenConfiguring_thenNothingIsConfigured() {
+        // Given
+        AtomicReference<JwtVerifier> configured = new AtomicReference<>();
+        MultiTenantVerificationProvider provider = new MultiTenantVerificationProvider();
+
+        // When
+        boolean result = provider.configure(supplierForMap(Map.of(ConfigurationParameters.PARAM_TRUSTED_ISSUERS, " ")),
+                                            configured::set);
+
+        // Then
+        Assert.assertFalse(result);
+        Assert.assertNull(configured.get());
+    }
+
+    @Test
+    public void givenOnlySeparators_whenConfiguring_thenNothingIsConfigured() {
+        // Given
+        AtomicReference<JwtVerifier> configured = new AtomicReference<>();
+        MultiTenantVerificationProvider provider = new MultiTenantVerificationProvider();
+
+        // When
+        boolean result = provider.configure(supplierForMap(Map.of(ConfigurationParameters.PARAM_TRUSTED_ISSUERS, ",,")),
+                                            configured::set);
+
+        // Then
+        Assert.assertFalse(result);
+        Assert.assertNull(configured.get());
+    }
+
+    @Test
+    public void givenIssuers_whenConfiguring_thenIssuerRoutingVerifierConfigured() {
+        // Given
+        AtomicReference<JwtVerifier> configured = new AtomicReference<>();
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_TRUSTED_ISSUERS,
+                                            this.issuer + ", https://other.example.org",
+                                            ConfigurationParameters.PARAM_MAX_ACTIVE_ISSUERS, "5",
+                                            ConfigurationParameters.PARAM_ISSUER_IDLE_TIMEOUT, "10");
+
+        // When
+        VerificationFactory.configure(supplierForMap(config), configured::set);
+
+        // Then
+        Assert.assertTrue(configured.get() instanceof IssuerRoutingJwtVerifier);
+        IssuerRoutingJwtVerifier verifier = (IssuerRoutingJwtVerifier) configured.get();
+        Assert.assertEquals(verifier.getIssuers(), Set.of(this.issuer, "https://other.example.org"));
+        Assert.assertEquals(verifier.getActiveIssuers(), 0);
+
+        // And
+        Jws<Claims> jws = verifier.verify(signedToken(this.issuer));
+        Assert.assertEquals(jws.getPayload().getIssuer(), this.issuer);
+        Assert.assertEquals(verifier.getActiveIssuers(), 1);
+    }
+
+    @Test(expectedExceptions = JwtException.class, expectedExceptionsMessageRegExp = ".*not from a trusted issuer.*")
+    public void givenIssuers_whenVerifyingTokenFromUntrustedIssuer_thenRejected() {
+        // Given
+        AtomicReference<JwtVerifier> configured = new AtomicReference<>();
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_TRUSTED_ISSUERS, this.issuer);
+        VerificationFactory.configure(supplierForMap(config), configured::set);
+
+        // When and Then
+        configured.get().verify(signedToken("https://untrusted.example.org"));
+    }
+
+    @Test
+    public void givenInvalidMaxActive_whenConfiguring_thenNothingIsConfigured() {
+        // Given
+        AtomicReference<JwtVerifier> configured = new AtomicReference<>();
+        MultiTenantVerificationProvider provider = new MultiTenantVerificationProvider();
+        Map<String, String> config = Map.of(ConfigurationParameters.PARAM_TRUSTED_ISSUERS, this.issuer,
+                                            ConfigurationParameters.PARAM_MAX_ACTIVE_ISSUERS, "0");
+
+        // When
+        boolean result = provider.configure(supplierForMap(config), configured::set);
+
+        // Then
+        Assert.assertFalse(result);
+        Assert.assertNull(configured.get());
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.configuration.oidc;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+public class TestOidcConfigurationLoader {
+
+    private static OidcConfiguration parse(String json) throws IOException {
+        return OidcConfigurationLoader.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void givenDiscoveryDocument_whenParsing_thenUsedFieldsAndScalarsRetained() throws IOException {
+        // Given
+        String json = """
+                {
+                  "issuer": "https://idp.example.org",
+                  "jwks_uri": "https://idp.example.org/jwks",
+                  "userinfo_endpoint": "https://idp.example.org/userinfo",
+                  "token_endpoint": "https://idp.example.org/token",
+                  "request_uri_parameter_supported": true,
+                  "max_age": 300,
+                  "logo": null,
+                  "scopes_supported": ["openid", "profile"],
+                  "mtls_endpoint_aliases": { "token_endpoint": "https://mtls.example.org/token" }
+                }
+                """;
+
+        // When
+        OidcConfiguration configuration = parse(json);
+
+        // Then
+        Assert.assertEquals(configuration.getIssuer(), "https://idp.example.org");
+        Assert.assertEquals(configuration.getJwksUri(), "https://idp.example.org/jwks");
+        Assert.assertEquals(configuration.getUserinfoEndpoint(), "https://idp.example.org/userinfo");
+        Map<String, Object> additional = configuration.getAdditionalProperties();
+        Assert.assertEquals(additional.get("token_endpoint"), "https://idp.example.org/token");
+        Assert.assertEquals(additional.get("request_uri_parameter_supported"), Boolean.TRUE);
+        Assert.assertEquals(additional.get("max_age"), 300);
+        Assert.assertTrue(additional.containsKey("logo"));
+        Assert.assertFalse(additional.containsKey("scopes_supported"));
+        Assert.assertFalse(additional.containsKey("mtls_endpoint_aliases"));
+    }
+
+    @Test
+    public void givenNonStringJwksUri_whenParsing_thenIgnored() throws IOException {
+        // When
+        OidcConfiguration configuration = parse("{\"jwks_uri\": [\"https://idp.example.org/jwks\"]}");
+
+        // Then
+        Assert.assertNull(configuration.getJwksUri());
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void givenNonObjectDocument_whenParsing_thenError() throws IOException {
+        // When and Then
+        parse("[]");
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void givenTruncatedDocument_whenParsing_thenError() throws IOException {
+        // When and Then
+        parse("{\"issuer\": \"https://idp");
+    }
+}
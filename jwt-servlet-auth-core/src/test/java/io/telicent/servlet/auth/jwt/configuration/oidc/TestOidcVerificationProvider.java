@@ -26,6 +26,7 @@ import io.telicent.servlet.auth.jwt.configuration.ConfigurationParameters;
 import io.telicent.servlet.auth.jwt.configuration.VerificationFactory;
 import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
 import io.telicent.servlet.auth.jwt.verification.TestKeyUtils;
+import io.telicent.servlet.auth.jwt.verification.jwks.KeySourceRegistry;
 import io.telicent.servlet.auth.jwt.verification.jwks.OidcServer;
 import org.testng.Assert;
 import org.testng.annotations.*;
@@ -52,12 +53,14 @@ public class TestOidcVerificationProvider extends AbstractFactoryTests {
         this.server = new OidcServer(TEST_PORT.getAndIncrement(), this.jwks);
         this.server.start();
         OidcRegistry.reset();
+        KeySourceRegistry.reset();
     }
 
     @AfterMethod
     public void cleanup() {
         this.server.resetDiscoveryRequestsCount();
         OidcRegistry.reset();
+        KeySourceRegistry.reset();
     }
 
     @AfterClass
@@ -230,6 +233,26 @@ public class TestOidcVerificationProvider extends AbstractFactoryTests {
         verifyCorrectlySignedJwt(verifier);
     }
 
+    @Test
+    public void givenSameDiscoveryUri_whenConfiguringMultipleVerifiers_thenKeySourceShared() throws Exception {
+        // Given
+        AtomicReference<JwtVerifier> first = new AtomicReference<>();
+        AtomicReference<JwtVerifier> second = new AtomicReference<>();
+        Map<String, String> config =
+                Map.of(ConfigurationParameters.PARAM_OIDC_PROVIDER_URL, this.server.getConfigurationUrl());
+
+        // When
+        VerificationFactory.configure(supplierForMap(config), first::set);
+        VerificationFactory.configure(supplierForMap(config), second::set);
+
+        // Then
+        Assert.assertNotSame(first.get(), second.get());
+        Assert.assertEquals(KeySourceRegistry.size(), 1);
+        verifyCorrectlySignedJwt(first.get());
+        verifyCorrectlySignedJwt(second.get());
+        Assert.assertEquals(server.getDiscoveryRequestsCount(), 1);
+    }
+
     @Test
     public void givenValidDiscoveryUri_whenConfiguring_thenOk_andVerifyingKeySucceedsPostDiscoveryEvenOnceServerIsUnavailable() throws
             Exception {
@@ -19,6 +19,7 @@ import io.telicent.servlet.auth.jwt.*;
 import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
 
 import java.util.List;
+import java.util.Set;
 
 public class FakeConfigurableFilter extends AbstractConfigurableJwtAuthFilter<FakeRequest, FakeResponse> {
 
@@ -63,6 +64,26 @@ public class FakeConfigurableFilter extends AbstractConfigurableJwtAuthFilter<Fa
         return fakeRequest.requestUrl;
     }
 
+    @Override
+    protected String getMethod(FakeRequest fakeRequest) {
+        return fakeRequest.method;
+    }
+
+    @Override
+    protected Object getRequestAttribute(FakeRequest fakeRequest, String attribute) {
+        return fakeRequest.getAttribute(attribute);
+    }
+
+    @Override
+    protected boolean isUserInRole(FakeRequest fakeRequest, String role) {
+        return fakeRequest.isUserInRole(role);
+    }
+
+    @Override
+    protected Set<String> getUserRoles(FakeRequest fakeRequest) {
+        return fakeRequest.rolesHelper != null ? fakeRequest.rolesHelper.getRoles() : null;
+    }
+
     @Override
     protected JwtAuthenticationEngine<FakeRequest, FakeResponse> getDefaultEngine() {
         return new FakeEngine();
@@ -28,7 +28,6 @@ import org.apache.commons.lang3.Strings;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 public class FakeEngine extends HeaderBasedJwtAuthenticationEngine<FakeRequest, FakeResponse> {
@@ -79,11 +78,8 @@ public class FakeEngine extends HeaderBasedJwtAuthenticationEngine<FakeRequest,
     @Override
     protected void sendChallenge(FakeRequest fakeRequest, FakeResponse fakeResponse, Challenge challenge) {
         fakeResponse.status = challenge.statusCode();
-        String realm = this.selectRealm(this.getRequestUrl(fakeRequest));
-        Map<String, String> challengeParams =
-                buildChallengeParameters(challenge.errorCode(), challenge.errorDescription());
-        fakeResponse.headers.put(JwtHttpConstants.HEADER_WWW_AUTHENTICATE,
-                                 Collections.singletonList(buildAuthorizationHeader(realm, challengeParams)));
+        fakeResponse.headers.put(JwtHttpConstants.HEADER_WWW_AUTHENTICATE, Collections.singletonList(
+                buildChallengeHeaderForRequest(this.getRequestUrl(fakeRequest), challenge)));
     }
 
     @Override
@@ -96,8 +92,18 @@ public class FakeEngine extends HeaderBasedJwtAuthenticationEngine<FakeRequest,
         return fakeRequest.requestUrl;
     }
 
+    @Override
+    protected String getClientAddress(FakeRequest fakeRequest) {
+        return fakeRequest.remoteAddress;
+    }
+
     @Override
     protected void setRequestAttribute(FakeRequest fakeRequest, String attribute, Object value) {
         fakeRequest.setAttribute(attribute, value);
     }
+
+    @Override
+    protected Object getRequestAttribute(FakeRequest fakeRequest, String attribute) {
+        return fakeRequest.getAttribute(attribute);
+    }
 }
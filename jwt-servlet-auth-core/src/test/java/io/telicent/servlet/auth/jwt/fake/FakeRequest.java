@@ -26,6 +26,8 @@ public class FakeRequest {
     public RolesHelper rolesHelper = null;
     public String username = null;
     public String requestUrl = null;
+    public String remoteAddress = null;
+    public String method = null;
 
     public FakeRequest() {
     }
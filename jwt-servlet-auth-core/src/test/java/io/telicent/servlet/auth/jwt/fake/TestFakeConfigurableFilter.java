@@ -15,18 +15,28 @@
  */
 package io.telicent.servlet.auth.jwt.fake;
 
+import io.jsonwebtoken.Jwts;
 import io.telicent.servlet.auth.jwt.*;
+import io.telicent.servlet.auth.jwt.authorization.AuthorizationPolicy;
 import io.telicent.servlet.auth.jwt.configuration.ClaimPath;
 import io.telicent.servlet.auth.jwt.configuration.MapRuntimeConfigAdaptor;
 import io.telicent.servlet.auth.jwt.configuration.RuntimeConfigurationAdaptor;
 import io.telicent.servlet.auth.jwt.sources.HeaderSource;
 import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.SignedJwtVerifier;
 import org.slf4j.MDC;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
 
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class TestFakeConfigurableFilter
@@ -147,4 +157,149 @@ public class TestFakeConfigurableFilter
         Assert.assertNotNull(value);
         return value;
     }
+
+    private static final SecretKey AUTHZ_KEY = Jwts.SIG.HS256.key().build();
+
+    private static FakeRequest authorizationRequest(String method, String path, String rules, List<String> roles,
+                                                    Map<String, Object> claims) {
+        String jwt = Jwts.builder().subject("test").claims(claims).claim("roles", roles).signWith(AUTHZ_KEY).compact();
+        FakeRequest request = new FakeRequest(Map.of(JwtHttpConstants.HEADER_AUTHORIZATION,
+                                                     JwtHttpConstants.AUTH_SCHEME_BEARER + " " + jwt), path);
+        request.method = method;
+        request.setAttribute(JwtServletConstants.ATTRIBUTE_AUTHORIZATION_POLICY, AuthorizationPolicy.parse(rules));
+        return request;
+    }
+
+    private static FakeResponse invokeAuthorizationFilter(FakeRequest request, AtomicBoolean invoked) {
+        FakeConfigurableFilter filter = new FakeConfigurableFilter(
+                new FakeEngine(List.of(new HeaderSource(JwtHttpConstants.HEADER_AUTHORIZATION,
+                                                        JwtHttpConstants.AUTH_SCHEME_BEARER)), null, null,
+                               ClaimPath.topLevel("roles")), new SignedJwtVerifier(AUTHZ_KEY), null);
+        FakeResponse response = new FakeResponse();
+        filter.doFilter(request, response, (r, s) -> invoked.set(true));
+        return response;
+    }
+
+    @Test
+    public void givenAuthorizationRules_whenUserHasRequiredRole_thenRequestProceeds() {
+        // Given
+        FakeRequest request =
+                authorizationRequest("GET", "/api/items", "GET /api/* reader,writer", List.of("reader"), Map.of());
+        AtomicBoolean invoked = new AtomicBoolean(false);
+
+        // When
+        FakeResponse response = invokeAuthorizationFilter(request, invoked);
+
+        // Then
+        Assert.assertTrue(invoked.get());
+        Assert.assertEquals(response.status, -1);
+        Assert.assertEquals(request.username, "test");
+    }
+
+    @Test
+    public void givenAuthorizationRules_whenUserLacksRequiredRole_thenForbiddenBeforeApplicationInvoked() {
+        // Given
+        FakeRequest request =
+                authorizationRequest("DELETE", "/api/items/1", "GET /api/* reader; DELETE /api/* writer",
+                                     List.of("reader"), Map.of());
+        AtomicBoolean invoked = new AtomicBoolean(false);
+
+        // When
+        FakeResponse response = invokeAuthorizationFilter(request, invoked);
+
+        // Then
+        Assert.assertFalse(invoked.get());
+        Assert.assertEquals(response.status, 403);
+        String challenge = response.headers.get(JwtHttpConstants.HEADER_WWW_AUTHENTICATE).get(0);
+        Assert.assertTrue(challenge.contains("error=\"" + OAuth2Constants.ERROR_INSUFFICIENT_SCOPE + "\""));
+    }
+
+    @Test
+    public void givenAuthorizationRules_whenNoRuleApplies_thenRequestProceeds() {
+        // Given
+        FakeRequest request =
+                authorizationRequest("GET", "/public/info", "* /admin/* admin", List.of(), Map.of());
+        AtomicBoolean invoked = new AtomicBoolean(false);
+
+        // When
+        invokeAuthorizationFilter(request, invoked);
+
+        // Then
+        Assert.assertTrue(invoked.get());
+    }
+
+    @Test
+    public void givenAuthorizationRules_whenUserRolesAvailable_thenRolesResolvedOnceNotPerRole() {
+        // Given
+        FakeRequest request = authorizationRequest("GET", "/api/items", "GET /api/* admin,writer,auditor,reader",
+                                                   List.of("reader"), Map.of());
+        AtomicInteger roleLookups = new AtomicInteger(0);
+        FakeConfigurableFilter filter = new FakeConfigurableFilter(
+                new FakeEngine(List.of(new HeaderSource(JwtHttpConstants.HEADER_AUTHORIZATION,
+                                                        JwtHttpConstants.AUTH_SCHEME_BEARER)), null, null,
+                               ClaimPath.topLevel("roles")), new SignedJwtVerifier(AUTHZ_KEY), null) {
+            @Override
+            protected boolean isUserInRole(FakeRequest fakeRequest, String role) {
+                throw new AssertionError("Roles should be checked against the resolved role set");
+            }
+
+            @Override
+            protected Set<String> getUserRoles(FakeRequest fakeRequest) {
+                roleLookups.incrementAndGet();
+                return super.getUserRoles(fakeRequest);
+            }
+        };
+        AtomicBoolean invoked = new AtomicBoolean(false);
+
+        // When
+        filter.doFilter(request, new FakeResponse(), (r, s) -> invoked.set(true));
+
+        // Then
+        Assert.assertTrue(invoked.get());
+        Assert.assertEquals(roleLookups.get(), 1);
+    }
+
+    @DataProvider(name = "bypassAttempts")
+    public Object[][] bypassAttempts() {
+        return new Object[][] {
+                { "/admin;x=1/secret" },
+                { "/%61dmin/secret" },
+                { "/public/../admin/secret" },
+                { "/public/%2e%2e/admin/secret" },
+                { "//admin/./secret" }
+        };
+    }
+
+    @Test(dataProvider = "bypassAttempts")
+    public void givenAuthorizationRules_whenPathObfuscated_thenRuleStillApplies(String path) {
+        // Given
+        FakeRequest request = authorizationRequest("GET", path, "* /admin/* admin", List.of("reader"), Map.of());
+        AtomicBoolean invoked = new AtomicBoolean(false);
+
+        // When
+        FakeResponse response = invokeAuthorizationFilter(request, invoked);
+
+        // Then
+        Assert.assertFalse(invoked.get());
+        Assert.assertEquals(response.status, 403);
+    }
+
+    @Test
+    public void givenClaimRequirement_whenEvaluatingRules_thenClaimValueChecked() {
+        // Given
+        String rules = "* /tenants/* tenant=acme";
+        AtomicBoolean allowed = new AtomicBoolean(false);
+        AtomicBoolean denied = new AtomicBoolean(false);
+
+        // When
+        invokeAuthorizationFilter(
+                authorizationRequest("GET", "/tenants/1", rules, List.of(), Map.of("tenant", "acme")), allowed);
+        FakeResponse response = invokeAuthorizationFilter(
+                authorizationRequest("GET", "/tenants/1", rules, List.of(), Map.of("tenant", "other")), denied);
+
+        // Then
+        Assert.assertTrue(allowed.get());
+        Assert.assertFalse(denied.get());
+        Assert.assertEquals(response.status, 403);
+    }
 }
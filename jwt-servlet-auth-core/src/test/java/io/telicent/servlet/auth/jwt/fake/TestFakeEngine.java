@@ -15,18 +15,34 @@
  */
 package io.telicent.servlet.auth.jwt.fake;
 
+import io.jsonwebtoken.Jwts;
 import io.telicent.servlet.auth.jwt.AbstractHeaderBasedEngineTests;
 import io.telicent.servlet.auth.jwt.JwtHttpConstants;
 import io.telicent.servlet.auth.jwt.JwtAuthenticationEngine;
+import io.telicent.servlet.auth.jwt.JwtServletConstants;
+import io.telicent.servlet.auth.jwt.OAuth2Constants;
+import io.telicent.servlet.auth.jwt.challenges.Challenge;
 import io.telicent.servlet.auth.jwt.configuration.ClaimPath;
+import io.telicent.servlet.auth.jwt.ratelimit.FailureRateLimiter;
 import io.telicent.servlet.auth.jwt.sources.HeaderSource;
+import io.telicent.servlet.auth.jwt.verification.InvalidTokenVerifier;
 import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.SignedJwtVerifier;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import javax.crypto.SecretKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.mockito.Mockito.mock;
 
@@ -100,6 +116,36 @@ public class TestFakeEngine extends AbstractHeaderBasedEngineTests<FakeRequest,
         Assert.assertTrue(fakeRequest.isUserInRole(role));
     }
 
+    @Test
+    public void givenRepeatedFailuresFromAddress_whenFailureRateLimited_thenAddressLimitedRegardlessOfToken() {
+        // Given
+        FakeEngine engine = new FakeEngine();
+        engine.setFailureRateLimiter(
+                new FailureRateLimiter(2, Duration.ofMinutes(1), FailureRateLimiter.ClientKey.ADDRESS));
+        JwtVerifier verifier = new InvalidTokenVerifier();
+
+        // When
+        for (int i = 0; i < 2; i++) {
+            FakeResponse response = new FakeResponse();
+            engine.authenticate(fromAddress("10.0.0.1", "Bearer token-" + i), response, verifier);
+            Assert.assertEquals(response.status, 401);
+        }
+
+        // Then
+        FakeResponse limited = new FakeResponse();
+        engine.authenticate(fromAddress("10.0.0.1", "Bearer token-3"), limited, verifier);
+        Assert.assertEquals(limited.status, 429);
+        FakeResponse other = new FakeResponse();
+        engine.authenticate(fromAddress("10.0.0.2", "Bearer token-3"), other, verifier);
+        Assert.assertEquals(other.status, 401);
+    }
+
+    private static FakeRequest fromAddress(String address, String authHeader) {
+        FakeRequest request = new FakeRequest(Map.of(JwtHttpConstants.HEADER_AUTHORIZATION, authHeader));
+        request.remoteAddress = address;
+        return request;
+    }
+
     private static final class NoHeadersFakeEngine extends FakeEngine {
         public NoHeadersFakeEngine() {
             super(List.of(), null, null, null);
@@ -135,4 +181,150 @@ public class TestFakeEngine extends AbstractHeaderBasedEngineTests<FakeRequest,
 
         verifyStatusCode(request, response, 400);
     }
+
+    private static final class ChallengeRenderingFakeEngine extends FakeEngine {
+        private static final List<Challenge> CHALLENGES =
+                List.of(NO_BEARER_TOKENS_CHALLENGE, TOO_MANY_FAILURES_CHALLENGE,
+                        new Challenge(401, OAuth2Constants.ERROR_INVALID_TOKEN, "Token \"expired\"\r\nSet-Cookie: x"),
+                        new Challenge(503, "", "Keys not yet loaded"), new Challenge(400, " ", ""));
+
+        public ChallengeRenderingFakeEngine(String realm) {
+            super(JwtHttpConstants.HEADER_AUTHORIZATION, JwtHttpConstants.AUTH_SCHEME_BEARER, realm, null);
+        }
+
+        private List<Challenge> challenges() {
+            List<Challenge> challenges = new ArrayList<>(CHALLENGES);
+            challenges.add(new Challenge(401, "", noParametersMessage()));
+            return challenges;
+        }
+
+        private String render(String requestUrl, Challenge challenge) {
+            return buildChallengeHeaderForRequest(requestUrl, challenge);
+        }
+
+        private String renderViaParameters(String requestUrl, Challenge challenge) {
+            return buildAuthorizationHeader(selectRealm(requestUrl),
+                                            buildChallengeParameters(challenge.errorCode(),
+                                                                     challenge.errorDescription()));
+        }
+    }
+
+    @DataProvider(name = "challengeRealms")
+    public Object[][] challengeRealms() {
+        return new Object[][] {
+                { null },
+                { "" },
+                { "custom-realm" },
+                { "bad\"realm\nHeader: x" },
+                { "!!!" }
+        };
+    }
+
+    @Test(dataProvider = "challengeRealms")
+    public void givenRealm_whenBuildingChallengeHeaders_thenSameAsBuildingFromParameters(String realm) {
+        // Given
+        ChallengeRenderingFakeEngine engine = new ChallengeRenderingFakeEngine(realm);
+
+        // When and Then
+        for (String requestUrl : Arrays.asList(null, "", "/some/path", "/path?with=\"quotes\"&new\nlines")) {
+            for (Challenge challenge : engine.challenges()) {
+                Assert.assertEquals(engine.render(requestUrl, challenge),
+                                    engine.renderViaParameters(requestUrl, challenge));
+            }
+        }
+    }
+
+    @Test
+    public void givenConfiguredRealm_whenBuildingFixedChallengeHeaders_thenPrecomputedHeaderReused() {
+        // Given
+        ChallengeRenderingFakeEngine engine = new ChallengeRenderingFakeEngine("custom-realm");
+
+        // When
+        Challenge noTokens = engine.challenges().get(0);
+        String first = engine.render("/first", noTokens);
+        String second = engine.render("/second", noTokens);
+
+        // Then
+        Assert.assertSame(first, second);
+        Assert.assertEquals(first, "Bearer realm=\"custom-realm\", error=\"invalid_request\", "
+                                   + "error_description=\"No Bearer tokens provided\"");
+    }
+
+    private static final SecretKey PRIOR_KEY = Jwts.SIG.HS256.key().build();
+
+    private static JwtVerifier countingVerifier(AtomicInteger calls) {
+        SignedJwtVerifier delegate = new SignedJwtVerifier(PRIOR_KEY);
+        return rawJwt -> {
+            calls.incrementAndGet();
+            return delegate.verify(rawJwt);
+        };
+    }
+
+    private static FakeRequest priorRequest() {
+        String jwt = Jwts.builder()
+                         .subject("test")
+                         .expiration(Date.from(Instant.now().plus(5, ChronoUnit.MINUTES)))
+                         .signWith(PRIOR_KEY)
+                         .compact();
+        return new FakeRequest(Map.of(JwtHttpConstants.HEADER_AUTHORIZATION, "Bearer " + jwt));
+    }
+
+    @Test
+    public void givenStackedAuthentication_whenSameVerifier_thenPriorVerificationReused() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+        JwtVerifier verifier = countingVerifier(calls);
+        FakeRequest request = priorRequest();
+        new FakeEngine().authenticate(request, new FakeResponse(), verifier);
+        Object verifiedJwt = request.getAttribute(JwtServletConstants.REQUEST_ATTRIBUTE_VERIFIED_JWT);
+
+        // When
+        request.username = null;
+        FakeRequest authenticated = new FakeEngine().authenticate(request, new FakeResponse(), verifier);
+
+        // Then
+        Assert.assertNotNull(authenticated);
+        Assert.assertEquals(authenticated.username, "test");
+        Assert.assertEquals(calls.get(), 1);
+        Assert.assertSame(request.getAttribute(JwtServletConstants.REQUEST_ATTRIBUTE_VERIFIED_JWT), verifiedJwt);
+    }
+
+    @Test
+    public void givenStackedAuthentication_whenDifferentVerifier_thenTokenVerifiedAgain() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+        FakeRequest request = priorRequest();
+        new FakeEngine().authenticate(request, new FakeResponse(), countingVerifier(calls));
+
+        // When
+        FakeRequest authenticated = new FakeEngine().authenticate(request, new FakeResponse(), countingVerifier(calls));
+
+        // Then
+        Assert.assertNotNull(authenticated);
+        Assert.assertEquals(calls.get(), 2);
+    }
+
+    @Test
+    public void givenSpoofedPriorVerification_whenAuthenticating_thenTokenVerified() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+        JwtVerifier verifier = countingVerifier(calls);
+        FakeRequest request = priorRequest();
+        new FakeEngine().authenticate(request, new FakeResponse(), verifier);
+        String forged = Jwts.builder().subject("admin").signWith(Jwts.SIG.HS256.key().build()).compact();
+        FakeRequest spoofed = new FakeRequest(Map.of(JwtHttpConstants.HEADER_AUTHORIZATION, "Bearer " + forged));
+        spoofed.setAttribute(JwtServletConstants.REQUEST_ATTRIBUTE_PRIOR_VERIFICATION,
+                             request.getAttribute(JwtServletConstants.REQUEST_ATTRIBUTE_PRIOR_VERIFICATION));
+        spoofed.setAttribute(JwtServletConstants.REQUEST_ATTRIBUTE_VERIFIED_JWT,
+                             request.getAttribute(JwtServletConstants.REQUEST_ATTRIBUTE_VERIFIED_JWT));
+        FakeResponse response = new FakeResponse();
+
+        // When
+        FakeRequest authenticated = new FakeEngine().authenticate(spoofed, response, verifier);
+
+        // Then
+        Assert.assertNull(authenticated);
+        Assert.assertEquals(response.status, 401);
+        Assert.assertEquals(calls.get(), 2);
+    }
 }
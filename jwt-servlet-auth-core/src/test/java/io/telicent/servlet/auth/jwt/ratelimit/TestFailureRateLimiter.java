@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.ratelimit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestFailureRateLimiter {
+
+    private static final long START = 1_767_225_600_000L;
+    private static final Duration WINDOW = Duration.ofSeconds(10);
+
+    private static FailureRateLimiter create(int maxFailures, int slots, AtomicLong now) {
+        return new FailureRateLimiter(maxFailures, WINDOW, FailureRateLimiter.ClientKey.ADDRESS, slots, 1, now::get);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenZeroMaxFailures_whenCreatingLimiter_thenIllegalArgument() {
+        new FailureRateLimiter(0, WINDOW, FailureRateLimiter.ClientKey.ADDRESS);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullWindow_whenCreatingLimiter_thenNPE() {
+        new FailureRateLimiter(1, null, FailureRateLimiter.ClientKey.ADDRESS);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenZeroWindow_whenCreatingLimiter_thenIllegalArgument() {
+        new FailureRateLimiter(1, Duration.ZERO, FailureRateLimiter.ClientKey.ADDRESS);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenZeroSlots_whenCreatingLimiter_thenIllegalArgument() {
+        new FailureRateLimiter(1, WINDOW, FailureRateLimiter.ClientKey.ADDRESS, 0, 1, System::currentTimeMillis);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenZeroStripes_whenCreatingLimiter_thenIllegalArgument() {
+        new FailureRateLimiter(1, WINDOW, FailureRateLimiter.ClientKey.ADDRESS, 1, 0, System::currentTimeMillis);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullClientKey_whenCreatingLimiter_thenNPE() {
+        new FailureRateLimiter(1, WINDOW, null);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullClock_whenCreatingLimiter_thenNPE() {
+        new FailureRateLimiter(1, WINDOW, FailureRateLimiter.ClientKey.TOKEN, 1, 1, null);
+    }
+
+    @Test
+    public void givenFailures_whenLimitReached_thenLimited_andOtherClientsUnaffected() {
+        // Given
+        FailureRateLimiter limiter = new FailureRateLimiter(3, WINDOW, FailureRateLimiter.ClientKey.TOKEN);
+        Assert.assertFalse(limiter.isLimited("client"));
+
+        // When
+        Assert.assertFalse(limiter.recordFailure("client"));
+        Assert.assertFalse(limiter.recordFailure("client"));
+        Assert.assertFalse(limiter.isLimited("client"));
+        boolean limited = limiter.recordFailure("client");
+
+        // Then
+        Assert.assertTrue(limited);
+        Assert.assertTrue(limiter.isLimited("client"));
+        Assert.assertFalse(limiter.isLimited("other"));
+        Assert.assertEquals(limiter.getClientKey(), FailureRateLimiter.ClientKey.TOKEN);
+        Assert.assertTrue(limiter.toString().contains("slots=16384"));
+    }
+
+    @Test
+    public void givenLimitedClient_whenWindowSlides_thenFailuresDecayGradually() {
+        // Given
+        AtomicLong now = new AtomicLong(START);
+        FailureRateLimiter limiter = create(10, 16, now);
+        for (int i = 0; i < 10; i++) {
+            limiter.recordFailure("client");
+        }
+        Assert.assertTrue(limiter.isLimited("client"));
+
+        // When and Then
+        // Half way through the next window half of the previous windows failures still count
+        now.set(START + WINDOW.toMillis() + WINDOW.toMillis() / 2);
+        Assert.assertFalse(limiter.isLimited("client"));
+        for (int i = 0; i < 4; i++) {
+            Assert.assertFalse(limiter.recordFailure("client"));
+        }
+        Assert.assertTrue(limiter.recordFailure("client"));
+
+        // Once a whole window has passed without failures the client is forgotten
+        now.set(START + 4 * WINDOW.toMillis());
+        Assert.assertFalse(limiter.isLimited("client"));
+        Assert.assertFalse(limiter.recordFailure("client"));
+    }
+
+    @Test
+    public void givenSharedSlot_whenExistingClientNotLimited_thenNewClientTakesOverSlot() {
+        // Given
+        AtomicLong now = new AtomicLong(START);
+        FailureRateLimiter limiter = create(2, 1, now);
+        limiter.recordFailure("first");
+
+        // When
+        limiter.recordFailure("second");
+        boolean limited = limiter.recordFailure("second");
+
+        // Then
+        Assert.assertTrue(limited);
+        Assert.assertFalse(limiter.isLimited("first"));
+    }
+
+    @Test
+    public void givenSharedSlot_whenExistingClientLimited_thenItRemainsLimited() {
+        // Given
+        AtomicLong now = new AtomicLong(START);
+        FailureRateLimiter limiter = create(2, 1, now);
+        limiter.recordFailure("attacker");
+        limiter.recordFailure("attacker");
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            Assert.assertFalse(limiter.recordFailure("other-" + i));
+        }
+
+        // Then
+        Assert.assertTrue(limiter.isLimited("attacker"));
+        Assert.assertFalse(limiter.isLimited("other-0"));
+    }
+
+    @Test
+    public void givenConcurrentFailures_whenRecording_thenAllCounted() throws Exception {
+        // Given
+        AtomicLong now = new AtomicLong(START);
+        FailureRateLimiter limiter = create(8 * 1_000, 1024, now);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // When
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 1_000; i++) {
+                    limiter.recordFailure("client");
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Then
+        Assert.assertTrue(limiter.isLimited("client"));
+    }
+
+    @Test
+    public void givenKeys_whenFingerprinting_thenNonZeroAndDistinct() {
+        // When and Then
+        Assert.assertNotEquals(FailureRateLimiter.fingerprint(""), 0L);
+        Assert.assertNotEquals(FailureRateLimiter.fingerprint("10.0.0.1"), FailureRateLimiter.fingerprint("10.0.0.2"));
+        Assert.assertEquals(FailureRateLimiter.fingerprint("a"), FailureRateLimiter.fingerprint("a"));
+    }
+}
@@ -231,4 +231,35 @@ public class TestRolesHelper {
         // Then
         Assert.assertFalse(helper.isUserInRole("test"));
     }
+
+    @Test(dataProvider = "supportedRolesFormats")
+    public void givenTokenWithRoles_whenGettingRoles_thenAllDeclaredRolesReturned(Object rolesValue, String[] expected) {
+        // Given
+        Jws<Claims> jwt = Mockito.mock(Jws.class);
+        Claims claims = Mockito.mock(Claims.class);
+        when(claims.get("roles")).thenReturn(rolesValue);
+        when(jwt.getPayload()).thenReturn(claims);
+        RolesHelper helper = new RolesHelper(jwt, ClaimPath.topLevel("roles"));
+
+        // When
+        Set<String> roles = helper.getRoles();
+
+        // Then
+        Assert.assertEquals(roles, Set.of(expected));
+        Assert.assertSame(helper.getRoles(), roles);
+        Mockito.verify(claims, Mockito.times(1)).get("roles");
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void givenTokenWithRoles_whenModifyingRoles_thenUnsupported() {
+        // Given
+        Jws<Claims> jwt = Mockito.mock(Jws.class);
+        Claims claims = Mockito.mock(Claims.class);
+        when(claims.get("roles")).thenReturn(List.of("user"));
+        when(jwt.getPayload()).thenReturn(claims);
+        RolesHelper helper = new RolesHelper(jwt, ClaimPath.topLevel("roles"));
+
+        // When and Then
+        helper.getRoles().add("admin");
+    }
 }
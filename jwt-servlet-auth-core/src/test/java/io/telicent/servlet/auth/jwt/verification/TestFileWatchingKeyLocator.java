@@ -0,0 +1,300 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification;
+
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.JwkSet;
+import io.jsonwebtoken.security.Jwks;
+import io.telicent.servlet.auth.jwt.errors.KeyLoadException;
+import org.apache.commons.lang3.Strings;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyPair;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
+
+public class TestFileWatchingKeyLocator {
+
+    private static Path replace(File source, Path target) throws IOException {
+        // Replace the target in a single step, as a Kubernetes secret remount would
+        return Files.move(source.toPath(), target, StandardCopyOption.REPLACE_EXISTING,
+                          StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path writeSecretKey(SecretKey key, Path target) throws IOException {
+        return replace(TestKeyUtils.saveKeyToFile(key.getEncoded()), target);
+    }
+
+    private static Path writeJwks(JwkSet jwks, Path target) throws IOException {
+        return replace(TestKeyUtils.saveJwks(jwks), target);
+    }
+
+    private static JwkSet jwksFor(KeyPair keys, String keyId) {
+        return Jwks.set().add(Jwks.builder().key((RSAPublicKey) keys.getPublic()).id(keyId).build()).build();
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(25);
+        }
+        Assert.assertTrue(condition.getAsBoolean(), "Condition not met before deadline");
+    }
+
+    private static JwtVerifier verifierFor(FileWatchingKeyLocator locator) {
+        return new SignedJwtVerifier(locator);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullFile_whenCreatingLocator_thenNPE() throws KeyLoadException {
+        FileWatchingKeyLocator.forSecretKey(null);
+    }
+
+    @Test(expectedExceptions = KeyLoadException.class)
+    public void givenNonExistentFile_whenCreatingLocator_thenKeyLoadException() throws Exception {
+        Path dir = Files.createTempDirectory("keys");
+        FileWatchingKeyLocator.forJwks(dir.resolve("no-such-file.json"));
+    }
+
+    @Test(expectedExceptions = KeyLoadException.class)
+    public void givenInvalidJwksFile_whenCreatingLocator_thenKeyLoadException() throws Exception {
+        Path dir = Files.createTempDirectory("keys");
+        Path file = Files.writeString(dir.resolve("jwks.json"), "{ \"keys\": ");
+        FileWatchingKeyLocator.forJwks(file);
+    }
+
+    @Test
+    public void givenSecretKeyFile_whenFileIsReplaced_thenNewKeyIsUsed() throws Exception {
+        // Given
+        Path dir = Files.createTempDirectory("keys");
+        SecretKey original = Jwts.SIG.HS256.key().build();
+        SecretKey rotated = Jwts.SIG.HS256.key().build();
+        Path file = writeSecretKey(original, dir.resolve("secret.key"));
+        try (FileWatchingKeyLocator locator = FileWatchingKeyLocator.forSecretKey(file)) {
+            JwtVerifier verifier = verifierFor(locator);
+            Assert.assertTrue(locator.isWatching());
+            Assert.assertNotNull(verifier.verify(Jwts.builder().subject("test").signWith(original).compact()));
+
+            // When
+            writeSecretKey(rotated, file);
+            waitFor(() -> locator.getLoads() == 2);
+
+            // Then
+            Assert.assertEquals(locator.getKeyGeneration(), 2);
+            Assert.assertNotNull(verifier.verify(Jwts.builder().subject("test").signWith(rotated).compact()));
+            Assert.assertThrows(JwtException.class,
+                                () -> verifier.verify(Jwts.builder().subject("test").signWith(original).compact()));
+        }
+    }
+
+    @Test
+    public void givenPublicKeyFile_whenLocatingKey_thenKeyIsUsedRegardlessOfKeyId() throws Exception {
+        // Given
+        Path dir = Files.createTempDirectory("keys");
+        String rsaKey = TestKeyUtils.readKeyFromResource(TestKeyUtils.TEST_RSA_KEY_RESOURCE);
+        Path file = replace(TestKeyUtils.saveKeyToFile(rsaKey.getBytes(StandardCharsets.US_ASCII)),
+                            dir.resolve("public.key"));
+
+        // When
+        try (FileWatchingKeyLocator locator = FileWatchingKeyLocator.forPublicKey(KeyUtils.RSA, file)) {
+            // Then
+            Assert.assertEquals(locator.getLoads(), 1);
+            Assert.assertNotNull(locator.locate(Jwts.header().add("alg", "RS256").keyId("any").build()));
+            Assert.assertNotNull(locator.locate(Jwts.header().add("alg", "RS256").build()));
+            Assert.assertTrue(Strings.CS.contains(locator.toString(), "type=PublicKey"));
+        }
+    }
+
+    @Test
+    public void givenJwksFile_whenFileIsReplaced_thenKeyIndexIsSwapped() throws Exception {
+        // Given
+        Path dir = Files.createTempDirectory("keys");
+        KeyPair original = Jwts.SIG.RS256.keyPair().build();
+        KeyPair rotated = Jwts.SIG.RS256.keyPair().build();
+        Path file = writeJwks(jwksFor(original, "original"), dir.resolve("jwks.json"));
+        try (FileWatchingKeyLocator locator = FileWatchingKeyLocator.forJwks(file)) {
+            JwtVerifier verifier = verifierFor(locator);
+            String originalJwt = Jwts.builder()
+                                     .header()
+                                     .keyId("original")
+                                     .and()
+                                     .subject("test")
+                                     .signWith(original.getPrivate())
+                                     .compact();
+            String rotatedJwt = Jwts.builder()
+                                    .header()
+                                    .keyId("rotated")
+                                    .and()
+                                    .subject("test")
+                                    .signWith(rotated.getPrivate())
+                                    .compact();
+            Assert.assertNotNull(verifier.verify(originalJwt));
+            Assert.assertThrows(JwtException.class, () -> verifier.verify(rotatedJwt));
+
+            // When
+            writeJwks(jwksFor(rotated, "rotated"), file);
+            waitFor(() -> locator.getLoads() == 2);
+
+            // Then
+            Assert.assertNotNull(verifier.verify(rotatedJwt));
+            Assert.assertThrows(JwtException.class, () -> verifier.verify(originalJwt));
+        }
+    }
+
+    @Test
+    public void givenJwksFile_whenTokenHasNoKeyId_thenRejected() throws Exception {
+        // Given
+        Path dir = Files.createTempDirectory("keys");
+        KeyPair keys = Jwts.SIG.RS256.keyPair().build();
+        JwkSet jwks = Jwks.set()
+                          .add(Jwks.builder().key((RSAPublicKey) keys.getPublic()).id("a").build())
+                          .add(Jwks.builder().key((RSAPublicKey) Jwts.SIG.RS256.keyPair().build().getPublic()).build())
+                          .build();
+        Path file = writeJwks(jwks, dir.resolve("jwks.json"));
+        try (FileWatchingKeyLocator locator = FileWatchingKeyLocator.forJwks(file)) {
+            JwtVerifier verifier = verifierFor(locator);
+
+            // When and Then
+            Assert.assertThrows(JwtException.class, () -> verifier.verify(
+                    Jwts.builder().subject("test").signWith(keys.getPrivate()).compact()));
+            Assert.assertThrows(JwtException.class, () -> verifier.verify(
+                    Jwts.builder().header().keyId(" ").and().subject("test").signWith(keys.getPrivate()).compact()));
+        }
+    }
+
+    @Test
+    public void givenWatchedFile_whenInvalidContentsWritten_thenPreviousKeysRetained() throws Exception {
+        // Given
+        Path dir = Files.createTempDirectory("keys");
+        KeyPair keys = Jwts.SIG.RS256.keyPair().build();
+        Path file = writeJwks(jwksFor(keys, "a"), dir.resolve("jwks.json"));
+        try (FileWatchingKeyLocator locator = FileWatchingKeyLocator.forJwks(file)) {
+            JwtVerifier verifier = verifierFor(locator);
+            String jwt = Jwts.builder().header().keyId("a").and().subject("test").signWith(keys.getPrivate()).compact();
+
+            // When
+            Files.writeString(file, "{ \"keys\": [");
+
+            // Then
+            Assert.assertFalse(locator.reload());
+            Assert.assertEquals(locator.getLoads(), 1);
+            Assert.assertNotNull(verifier.verify(jwt));
+
+            // And When
+            Files.delete(file);
+
+            // Then
+            Assert.assertFalse(locator.reload());
+            Assert.assertNotNull(verifier.verify(jwt));
+        }
+    }
+
+    @Test
+    public void givenWatchedFile_whenUnchangedFileReloaded_thenKeysAreNotReparsed() throws Exception {
+        // Given
+        Path dir = Files.createTempDirectory("keys");
+        Path file = writeSecretKey(Jwts.SIG.HS256.key().build(), dir.resolve("secret.key"));
+        try (FileWatchingKeyLocator locator = FileWatchingKeyLocator.forSecretKey(file)) {
+            // When
+            Files.writeString(dir.resolve("unrelated.txt"), "unrelated");
+
+            // Then
+            Assert.assertTrue(locator.reload());
+            Assert.assertEquals(locator.getLoads(), 1);
+        }
+    }
+
+    @Test
+    public void givenReplacedFile_whenReloadedConcurrently_thenLoadedExactlyOnce() throws Exception {
+        // Given
+        Path dir = Files.createTempDirectory("keys");
+        Path file = writeSecretKey(Jwts.SIG.HS256.key().build(), dir.resolve("secret.key"));
+        try (FileWatchingKeyLocator locator = FileWatchingKeyLocator.forSecretKey(file)) {
+            SecretKey rotated = Jwts.SIG.HS256.key().build();
+            writeSecretKey(rotated, file);
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            CountDownLatch start = new CountDownLatch(1);
+
+            // When
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return locator.reload();
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> future : futures) {
+                Assert.assertTrue(future.get(30, TimeUnit.SECONDS));
+            }
+            executor.shutdown();
+
+            // Then
+            // Loads are serialised, so racing with the watch thread only the first reload sees the changed contents
+            Assert.assertEquals(locator.getLoads(), 2);
+            Assert.assertNotNull(
+                    verifierFor(locator).verify(Jwts.builder().subject("test").signWith(rotated).compact()));
+        }
+    }
+
+    @Test
+    public void givenWatchedFile_whenClosed_thenStopsWatchingButKeysRemainUsable() throws Exception {
+        // Given
+        Path dir = Files.createTempDirectory("keys");
+        SecretKey key = Jwts.SIG.HS256.key().build();
+        Path file = writeSecretKey(key, dir.resolve("secret.key"));
+        FileWatchingKeyLocator locator = FileWatchingKeyLocator.forSecretKey(file);
+        Assert.assertTrue(locator.isWatching());
+
+        // When
+        locator.close();
+        locator.close();
+
+        // Then
+        waitFor(() -> !locator.isWatching());
+        Assert.assertNotNull(verifierFor(locator).verify(Jwts.builder().subject("test").signWith(key).compact()));
+        Assert.assertTrue(Strings.CS.contains(locator.toString(), "type=SecretKey"));
+    }
+
+    @Test
+    public void givenWatchedFile_whenDirectoryRemoved_thenStopsWatching() throws Exception {
+        // Given
+        Path dir = Files.createTempDirectory("keys");
+        SecretKey key = Jwts.SIG.HS256.key().build();
+        Path file = writeSecretKey(key, dir.resolve("secret.key"));
+        try (FileWatchingKeyLocator locator = FileWatchingKeyLocator.forSecretKey(file)) {
+            // When
+            Files.delete(file);
+            Files.delete(dir);
+
+            // Then
+            waitFor(() -> !locator.isWatching());
+            Assert.assertNotNull(verifierFor(locator).verify(Jwts.builder().subject("test").signWith(key).compact()));
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.JwkSet;
+import io.jsonwebtoken.security.Jwks;
+import io.jsonwebtoken.security.SignatureException;
+import io.telicent.servlet.auth.jwt.verification.jwks.BlockingJwksLocator;
+import io.telicent.servlet.auth.jwt.verification.jwks.CachedJwksKeyLocator;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class TestIssuerRoutingJwtVerifier {
+
+    private static final String ISSUER_A = "https://a.example.org";
+    private static final String ISSUER_B = "https://b.example.org";
+
+    private final SecretKey keyA = Jwts.SIG.HS256.key().build();
+    private final SecretKey keyB = Jwts.SIG.HS256.key().build();
+    private final Map<String, AtomicInteger> created = new ConcurrentHashMap<>();
+
+    @BeforeMethod
+    public void reset() {
+        this.created.clear();
+    }
+
+    private Function<String, JwtVerifier> secretKeyTenant(SecretKey key) {
+        return issuer -> {
+            this.created.computeIfAbsent(issuer, i -> new AtomicInteger()).incrementAndGet();
+            return new SignedJwtVerifier(JwtParsers.builder().verifyWith(key).requireIssuer(issuer).build(),
+                                         "issuer=" + issuer);
+        };
+    }
+
+    private IssuerRoutingJwtVerifier createVerifier(int maxActive) {
+        return new IssuerRoutingJwtVerifier(Map.of(ISSUER_A, secretKeyTenant(this.keyA), ISSUER_B,
+                                                   secretKeyTenant(this.keyB)), maxActive, Duration.ofMinutes(5));
+    }
+
+    private static String token(String issuer, SecretKey key) {
+        return Jwts.builder().issuer(issuer).subject("test").signWith(key).compact();
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullIssuers_whenCreating_thenNPE() {
+        new IssuerRoutingJwtVerifier(null, 1, Duration.ofMinutes(1));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenNoIssuers_whenCreating_thenIllegalArgument() {
+        new IssuerRoutingJwtVerifier(Map.of(), 1, Duration.ofMinutes(1));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenZeroMaxActive_whenCreating_thenIllegalArgument() {
+        new IssuerRoutingJwtVerifier(Map.of(ISSUER_A, secretKeyTenant(this.keyA)), 0, Duration.ofMinutes(1));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenZeroIdleTimeout_whenCreating_thenIllegalArgument() {
+        new IssuerRoutingJwtVerifier(Map.of(ISSUER_A, secretKeyTenant(this.keyA)), 1, Duration.ZERO);
+    }
+
+    @Test
+    public void givenTokensFromTrustedIssuers_whenVerifying_thenRoutedToCorrectVerifier() {
+        // Given
+        IssuerRoutingJwtVerifier verifier = createVerifier(10);
+
+        // When
+        Jws<Claims> a = verifier.verify(token(ISSUER_A, this.keyA));
+        Jws<Claims> b = verifier.verify(token(ISSUER_B, this.keyB));
+
+        // Then
+        Assert.assertEquals(a.getPayload().getIssuer(), ISSUER_A);
+        Assert.assertEquals(b.getPayload().getIssuer(), ISSUER_B);
+        Assert.assertEquals(verifier.getIssuers(), Set.of(ISSUER_A, ISSUER_B));
+        Assert.assertEquals(verifier.getActiveIssuers(), 2);
+    }
+
+    @Test
+    public void givenManyTokensFromSameIssuer_whenVerifying_thenVerifierCreatedOnce() {
+        // Given
+        IssuerRoutingJwtVerifier verifier = createVerifier(10);
+        Assert.assertEquals(verifier.getActiveIssuers(), 0);
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            verifier.verify(token(ISSUER_A, this.keyA));
+        }
+
+        // Then
+        Assert.assertEquals(this.created.get(ISSUER_A).get(), 1);
+        Assert.assertNull(this.created.get(ISSUER_B));
+    }
+
+    @Test(expectedExceptions = SignatureException.class)
+    public void givenTokenSignedByAnotherTenant_whenVerifying_thenRejected() {
+        // Given
+        IssuerRoutingJwtVerifier verifier = createVerifier(10);
+
+        // When and Then
+        verifier.verify(token(ISSUER_A, this.keyB));
+    }
+
+    @Test(expectedExceptions = JwtException.class, expectedExceptionsMessageRegExp = ".*not from a trusted issuer.*")
+    public void givenTokenFromUntrustedIssuer_whenVerifying_thenRejected() {
+        // Given
+        IssuerRoutingJwtVerifier verifier = createVerifier(10);
+
+        // When and Then
+        verifier.verify(token("https://evil.example.org", this.keyA));
+    }
+
+    @Test(expectedExceptions = JwtException.class, expectedExceptionsMessageRegExp = ".*not from a trusted issuer.*")
+    public void givenTokenWithoutIssuer_whenVerifying_thenRejected() {
+        // Given
+        IssuerRoutingJwtVerifier verifier = createVerifier(10);
+
+        // When and Then
+        verifier.verify(Jwts.builder().subject("test").signWith(this.keyA).compact());
+    }
+
+    @Test(expectedExceptions = JwtException.class, expectedExceptionsMessageRegExp = ".*not from a trusted issuer.*")
+    public void givenGarbageToken_whenVerifying_thenRejected() {
+        // Given
+        IssuerRoutingJwtVerifier verifier = createVerifier(10);
+
+        // When and Then
+        verifier.verify("garbage");
+    }
+
+    @Test
+    public void givenMoreIssuersThanMaxActive_whenVerifying_thenIdleIssuersEvicted() {
+        // Given
+        IssuerRoutingJwtVerifier verifier = createVerifier(1);
+        Assert.assertEquals(verifier.getKeyGeneration(), 0);
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            verifier.verify(token(ISSUER_A, this.keyA));
+            verifier.verify(token(ISSUER_B, this.keyB));
+        }
+
+        // Then
+        Assert.assertEquals(verifier.getActiveIssuers(), 1);
+        // Recreated per-issuer verifiers may hold different keys so each creation advances the key generation
+        Assert.assertTrue(verifier.getKeyGeneration() >= 2);
+
+        // And
+        Assert.assertNotNull(verifier.verify(token(ISSUER_A, this.keyA)));
+        Assert.assertNotNull(verifier.verify(token(ISSUER_B, this.keyB)));
+    }
+
+    @Test
+    public void givenKeyLoadingTenant_whenCheckingAndLoadingKeys_thenDelegated() {
+        // Given
+        JwkSet jwks = Jwks.set().add(Jwks.builder().key(this.keyA).id("a").build()).build();
+        BlockingJwksLocator source = new BlockingJwksLocator(jwks, null);
+        CachedJwksKeyLocator locator = new CachedJwksKeyLocator(source, Duration.ofMinutes(1));
+        IssuerRoutingJwtVerifier verifier =
+                new IssuerRoutingJwtVerifier(Map.of(ISSUER_A, i -> new SignedJwtVerifier(locator)), 10,
+                                             Duration.ofMinutes(5));
+        String jwt = Jwts.builder().header().keyId("a").and().issuer(ISSUER_A).signWith(this.keyA).compact();
+        String unknownKey = Jwts.builder().header().keyId("b").and().issuer(ISSUER_A).signWith(this.keyA).compact();
+        String untrusted = Jwts.builder().header().keyId("a").and().issuer(ISSUER_B).signWith(this.keyA).compact();
+
+        // When and Then
+        Assert.assertNotNull(verifier.verify(jwt));
+        Assert.assertEquals(source.getLoads(), 1);
+        Assert.assertFalse(verifier.requiresKeyLoad(jwt));
+        Assert.assertTrue(verifier.requiresKeyLoad(unknownKey));
+        Assert.assertFalse(verifier.requiresKeyLoad(untrusted));
+        verifier.loadKeys(unknownKey, Runnable::run).join();
+        Assert.assertEquals(source.getLoads(), 2);
+        Assert.assertEquals(verifier.getLoadedKeys().size(), 1);
+        verifier.loadKeys(untrusted, Runnable::run).join();
+        verifier.loadKeys(null, Runnable::run).join();
+        Assert.assertEquals(source.getLoads(), 3);
+    }
+
+    @Test
+    public void givenInactiveIssuer_whenCheckingAndLoadingKeys_thenNoVerifierCreated() {
+        // Given
+        IssuerRoutingJwtVerifier verifier = createVerifier(10);
+        String jwt = Jwts.builder().header().keyId("a").and().issuer(ISSUER_A).signWith(this.keyA).compact();
+
+        // When
+        boolean requiresKeyLoad = verifier.requiresKeyLoad(jwt);
+        verifier.loadKeys(jwt, Runnable::run).join();
+
+        // Then
+        Assert.assertFalse(requiresKeyLoad);
+        Assert.assertEquals(verifier.getActiveIssuers(), 0);
+        Assert.assertNull(this.created.get(ISSUER_A));
+        Assert.assertNotNull(verifier.verify(jwt));
+        Assert.assertEquals(verifier.getActiveIssuers(), 1);
+    }
+
+    @Test
+    public void givenVerifier_whenToString_thenSummaryReturned() {
+        // Given
+        IssuerRoutingJwtVerifier verifier = createVerifier(10);
+
+        // When
+        String value = verifier.toString();
+
+        // Then
+        Assert.assertTrue(value.contains("issuers=2"));
+        Assert.assertTrue(value.contains("maxActiveIssuers=10"));
+    }
+}
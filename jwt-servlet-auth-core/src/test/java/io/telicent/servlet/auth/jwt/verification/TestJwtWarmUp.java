@@ -0,0 +1,239 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Jwk;
+import io.jsonwebtoken.security.JwkSet;
+import io.jsonwebtoken.security.Jwks;
+import io.telicent.servlet.auth.jwt.verification.jwks.BlockingJwksLocator;
+import io.telicent.servlet.auth.jwt.verification.jwks.CachedJwksKeyLocator;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.lang.ref.Reference;
+import java.security.KeyPair;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+public class TestJwtWarmUp {
+
+    private static JwkSet createJwks() {
+        KeyPair rsa = Jwts.SIG.RS256.keyPair().build();
+        KeyPair ec = Jwts.SIG.ES384.keyPair().build();
+        return Jwks.set()
+                   .add(Jwks.builder().key((RSAPublicKey) rsa.getPublic()).id("rsa").build())
+                   .add(Jwks.builder().key((ECPublicKey) ec.getPublic()).id("ec").build())
+                   .build();
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullVerifier_whenCreatingWarmUp_thenNPE() {
+        new JwtWarmUp(null, 1, Duration.ZERO);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenNegativeIterations_whenCreatingWarmUp_thenIllegalArgument() {
+        new JwtWarmUp(new FakeTokenVerifier(), -1, Duration.ZERO);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenNegativeRetryInterval_whenCreatingWarmUp_thenIllegalArgument() {
+        new JwtWarmUp(new FakeTokenVerifier(), 1, Duration.ofSeconds(-1));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenZeroMaxAttempts_whenCreatingWarmUp_thenIllegalArgument() {
+        new JwtWarmUp(new FakeTokenVerifier(), 1, Duration.ZERO, 0);
+    }
+
+    @Test
+    public void givenKeyLoadingVerifier_whenWarmingUp_thenKeysArePrefetchedAndReady() throws Exception {
+        // Given
+        BlockingJwksLocator source = new BlockingJwksLocator(createJwks(), null);
+        CachedJwksKeyLocator locator = new CachedJwksKeyLocator(source, Duration.ofMinutes(1));
+        SignedJwtVerifier verifier = new SignedJwtVerifier(locator);
+        JwtWarmUp warmUp = new JwtWarmUp(verifier, 5, Duration.ofMillis(10));
+        Assert.assertFalse(warmUp.isReady());
+
+        // When
+        warmUp.start().getCompletion().get(10, TimeUnit.SECONDS);
+
+        // Then
+        Assert.assertTrue(warmUp.isReady());
+        Assert.assertTrue(warmUp.toString().contains("ready=true"));
+        Assert.assertEquals(warmUp.getAttempts(), 1);
+        Assert.assertEquals(source.getLoads(), 1);
+        Assert.assertEquals(verifier.getLoadedKeys().size(), 2);
+    }
+
+    @Test
+    public void givenFailingKeySource_whenWarmingUp_thenRetriedUntilReady() throws Exception {
+        // Given
+        BlockingJwksLocator source = new BlockingJwksLocator(createJwks(), null);
+        source.setFail(true);
+        SignedJwtVerifier verifier =
+                new SignedJwtVerifier(new CachedJwksKeyLocator(source, Duration.ofMinutes(1)));
+        JwtWarmUp warmUp = new JwtWarmUp(verifier, 1, Duration.ofMillis(10));
+
+        // When
+        warmUp.start();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (warmUp.getAttempts() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertFalse(warmUp.isReady());
+        source.setFail(false);
+        warmUp.getCompletion().get(10, TimeUnit.SECONDS);
+
+        // Then
+        Assert.assertTrue(warmUp.isReady());
+        Assert.assertTrue(warmUp.getAttempts() >= 3);
+    }
+
+    @Test
+    public void givenFailingKeySource_whenStoppingWarmUp_thenNeverReady() throws Exception {
+        // Given
+        BlockingJwksLocator source = new BlockingJwksLocator(createJwks(), null);
+        source.setFail(true);
+        SignedJwtVerifier verifier =
+                new SignedJwtVerifier(new CachedJwksKeyLocator(source, Duration.ofMinutes(1)));
+        JwtWarmUp warmUp = new JwtWarmUp(verifier, 1, Duration.ofMillis(10)).start();
+
+        // When
+        warmUp.stop();
+
+        // Then
+        Assert.assertThrows(Exception.class, () -> warmUp.getCompletion().get(10, TimeUnit.SECONDS));
+        Assert.assertFalse(warmUp.isReady());
+        Reference.reachabilityFence(verifier);
+    }
+
+    @Test
+    public void givenUnstartedWarmUp_whenStoppingAndStarting_thenNeverStarts() {
+        // Given
+        JwtWarmUp warmUp = new JwtWarmUp(new FakeTokenVerifier(), 1, Duration.ZERO);
+
+        // When
+        warmUp.stop();
+        warmUp.start();
+
+        // Then
+        Assert.assertTrue(warmUp.getCompletion().isCompletedExceptionally());
+        Assert.assertFalse(warmUp.isReady());
+        Assert.assertEquals(warmUp.getAttempts(), 0);
+    }
+
+    @Test
+    public void givenPersistentlyFailingKeySource_whenWarmingUp_thenGivesUpAfterMaxAttempts() throws Exception {
+        // Given
+        BlockingJwksLocator source = new BlockingJwksLocator(createJwks(), null);
+        source.setFail(true);
+        SignedJwtVerifier verifier =
+                new SignedJwtVerifier(new CachedJwksKeyLocator(source, Duration.ofMinutes(1)));
+        JwtWarmUp warmUp = new JwtWarmUp(verifier, 1, Duration.ofMillis(10), 3);
+
+        // When
+        warmUp.start();
+
+        // Then
+        Assert.assertThrows(Exception.class, () -> warmUp.getCompletion().get(10, TimeUnit.SECONDS));
+        Assert.assertFalse(warmUp.isReady());
+        Assert.assertEquals(warmUp.getAttempts(), 3);
+        Reference.reachabilityFence(verifier);
+    }
+
+    @Test
+    public void givenDiscardedVerifier_whenWarmingUp_thenWarmUpIsAbandoned() throws Exception {
+        // Given
+        BlockingJwksLocator source = new BlockingJwksLocator(createJwks(), null);
+        source.setFail(true);
+        JwtWarmUp warmUp = new JwtWarmUp(new SignedJwtVerifier(new CachedJwksKeyLocator(source, Duration.ofMinutes(1))),
+                                         1, Duration.ofMillis(10), Integer.MAX_VALUE).start();
+
+        // When
+        for (int i = 0; i < 50 && !warmUp.getCompletion().isDone(); i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+
+        // Then
+        Assert.assertTrue(warmUp.getCompletion().isCompletedExceptionally());
+        Assert.assertFalse(warmUp.isReady());
+    }
+
+    @Test
+    public void givenCompletedWarmUp_whenStartingAndStoppingAgain_thenRemainsReady() throws Exception {
+        // Given
+        SignedJwtVerifier verifier = new SignedJwtVerifier(Jwts.SIG.HS256.key().build());
+        JwtWarmUp warmUp = new JwtWarmUp(verifier, 1, Duration.ZERO);
+        warmUp.start().getCompletion().get(10, TimeUnit.SECONDS);
+
+        // When
+        warmUp.start();
+        warmUp.stop();
+
+        // Then
+        Assert.assertTrue(warmUp.isReady());
+        Assert.assertEquals(warmUp.getAttempts(), 1);
+        Reference.reachabilityFence(verifier);
+    }
+
+    @Test
+    public void givenNonKeyLoadingVerifier_whenWarmingUp_thenDefaultAlgorithmsAreExercised() {
+        // Given
+        SignedJwtVerifier verifier = new SignedJwtVerifier(Jwts.SIG.HS256.key().build());
+        JwtWarmUp warmUp = new JwtWarmUp(verifier, 2, Duration.ZERO);
+
+        // When
+        warmUp.warmUp();
+
+        // Then
+        Assert.assertEquals(warmUp.getAttempts(), 1);
+        Assert.assertTrue(verifier.getLoadedKeys().isEmpty());
+    }
+
+    @Test
+    public void givenKeys_whenDeterminingAlgorithm_thenExpectedAlgorithmReturned() {
+        // Given
+        Jwk<?> rsa = Jwks.builder().key((RSAPublicKey) Jwts.SIG.RS512.keyPair().build().getPublic()).build();
+        Jwk<?> rsaDeclared = Jwks.builder()
+                                 .key((RSAPublicKey) Jwts.SIG.RS512.keyPair().build().getPublic())
+                                 .algorithm("PS384")
+                                 .build();
+        Jwk<?> ec256 = Jwks.builder().key((ECPublicKey) Jwts.SIG.ES256.keyPair().build().getPublic()).build();
+        Jwk<?> ec384 = Jwks.builder().key((ECPublicKey) Jwts.SIG.ES384.keyPair().build().getPublic()).build();
+        Jwk<?> ec521 = Jwks.builder().key((ECPublicKey) Jwts.SIG.ES512.keyPair().build().getPublic()).build();
+        Jwk<?> secret = Jwks.builder().key(Jwts.SIG.HS512.key().build()).build();
+        Jwk<?> edwards = Jwks.builder().octetKey(Jwks.CRV.Ed25519.keyPair().build().getPublic()).build();
+        Jwk<?> unknownDeclared = Jwks.builder()
+                                     .key((ECPublicKey) Jwts.SIG.ES256.keyPair().build().getPublic())
+                                     .algorithm("unknown")
+                                     .build();
+
+        // When and Then
+        Assert.assertEquals(JwtWarmUp.algorithmFor(rsa), "RS256");
+        Assert.assertEquals(JwtWarmUp.algorithmFor(rsaDeclared), "PS384");
+        Assert.assertEquals(JwtWarmUp.algorithmFor(ec256), "ES256");
+        Assert.assertEquals(JwtWarmUp.algorithmFor(ec384), "ES384");
+        Assert.assertEquals(JwtWarmUp.algorithmFor(ec521), "ES512");
+        Assert.assertEquals(JwtWarmUp.algorithmFor(secret), "HS512");
+        Assert.assertEquals(JwtWarmUp.algorithmFor(edwards), "EdDSA");
+        Assert.assertEquals(JwtWarmUp.algorithmFor(unknownDeclared), "ES256");
+    }
+}
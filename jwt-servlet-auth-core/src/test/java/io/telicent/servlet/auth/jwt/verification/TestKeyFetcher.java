@@ -0,0 +1,430 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.InvalidKeyException;
+import io.jsonwebtoken.security.JwkSet;
+import io.jsonwebtoken.security.Jwks;
+import io.telicent.servlet.auth.jwt.configuration.ConfigurationParameters;
+import io.telicent.servlet.auth.jwt.errors.KeyLoadException;
+import io.telicent.servlet.auth.jwt.verification.jwks.CachedJwksKeyLocator;
+import io.telicent.servlet.auth.jwt.verification.jwks.FaultInjectingJwksServer;
+import io.telicent.servlet.auth.jwt.verification.jwks.KeySourceRegistry;
+import io.telicent.servlet.auth.jwt.verification.jwks.UrlJwksKeyLocator;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestKeyFetcher {
+
+    private static final Random RANDOM = new Random();
+    private static final AtomicInteger TEST_PORT = new AtomicInteger(53000 + RANDOM.nextInt(50));
+
+    private final SecretKey key = Jwts.SIG.HS256.key().build();
+    private final SecretKey otherKey = Jwts.SIG.HS256.key().build();
+    private final JwkSet jwks = Jwks.set()
+                                    .add(Jwks.builder().key(this.key).id("test-key").build())
+                                    .build();
+
+    private FaultInjectingJwksServer server;
+    private URI jwksUri;
+
+    @BeforeClass
+    public void setup() throws Exception {
+        this.server = new FaultInjectingJwksServer(TEST_PORT.getAndIncrement(), this.jwks);
+        this.server.start();
+        this.jwksUri = URI.create(this.server.getUrl());
+    }
+
+    @AfterMethod
+    public void cleanup() {
+        this.server.heal();
+        this.server.resetRequests();
+        KeyFetcher.resetCircuitBreakers();
+    }
+
+    @AfterClass
+    public void teardown() throws Exception {
+        this.server.stop();
+    }
+
+    private static KeyFetcher.Settings settings(Duration requestTimeout, int maxAttempts, int failureThreshold,
+                                                Duration openDuration) {
+        return new KeyFetcher.Settings(Duration.ofSeconds(1), requestTimeout, maxAttempts, Duration.ofMillis(1),
+                                       Duration.ofMillis(5), failureThreshold, openDuration,
+                                       ConfigurationParameters.DEFAULT_KEY_FETCH_MAX_SIZE,
+                                       ConfigurationParameters.DEFAULT_KEY_FETCH_MAX_KEYS);
+    }
+
+    private static KeyFetcher.Settings limitedSettings(long maxDocumentSize, int maxKeys) {
+        return new KeyFetcher.Settings(Duration.ofSeconds(1), Duration.ofSeconds(5), 1, Duration.ZERO, Duration.ZERO,
+                                       1, Duration.ZERO, maxDocumentSize, maxKeys);
+    }
+
+    private static KeyFetcher.Settings settings(int maxAttempts, int failureThreshold, Duration openDuration) {
+        return settings(Duration.ofSeconds(5), maxAttempts, failureThreshold, openDuration);
+    }
+
+    private int status(KeyFetcher fetcher) throws Exception {
+        HttpResponse<InputStream> response = fetcher.send(this.jwksUri);
+        response.body().close();
+        return response.statusCode();
+    }
+
+    private String createToken(String keyId, SecretKey signingKey) {
+        return Jwts.builder().header().keyId(keyId).and().subject("test").signWith(signingKey).compact();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenZeroMaxAttempts_whenCreatingSettings_thenIllegalArgument() {
+        settings(0, 1, Duration.ofSeconds(1));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenZeroFailureThreshold_whenCreatingSettings_thenIllegalArgument() {
+        settings(1, 0, Duration.ofSeconds(1));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenZeroRequestTimeout_whenCreatingSettings_thenIllegalArgument() {
+        settings(Duration.ZERO, 1, 1, Duration.ofSeconds(1));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenNegativeOpenDuration_whenCreatingSettings_thenIllegalArgument() {
+        settings(1, 1, Duration.ofSeconds(-1));
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullConnectTimeout_whenCreatingSettings_thenNPE() {
+        new KeyFetcher.Settings(null, Duration.ofSeconds(1), 1, Duration.ZERO, Duration.ZERO, 1, Duration.ZERO, 1, 1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenZeroMaxDocumentSize_whenCreatingSettings_thenIllegalArgument() {
+        limitedSettings(0, 1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenZeroMaxKeys_whenCreatingSettings_thenIllegalArgument() {
+        limitedSettings(1, 0);
+    }
+
+    @Test
+    public void givenNoParameters_whenCreatingSettingsFromParameters_thenDefaults() {
+        // When
+        KeyFetcher.Settings settings = KeyFetcher.Settings.fromParameters(Map.of());
+
+        // Then
+        Assert.assertEquals(settings, KeyFetcher.Settings.DEFAULT);
+    }
+
+    @Test
+    public void givenParameters_whenCreatingSettingsFromParameters_thenConfigured() {
+        // Given
+        Map<String, String> parameters = Map.of(ConfigurationParameters.PARAM_KEY_FETCH_CONNECT_TIMEOUT, "100",
+                                                ConfigurationParameters.PARAM_KEY_FETCH_REQUEST_TIMEOUT, "200",
+                                                ConfigurationParameters.PARAM_KEY_FETCH_MAX_ATTEMPTS, "4",
+                                                ConfigurationParameters.PARAM_KEY_FETCH_BACKOFF, "10",
+                                                ConfigurationParameters.PARAM_KEY_FETCH_MAX_BACKOFF, "80",
+                                                ConfigurationParameters.PARAM_KEY_FETCH_CIRCUIT_FAILURES, "3",
+                                                ConfigurationParameters.PARAM_KEY_FETCH_CIRCUIT_OPEN, "7",
+                                                ConfigurationParameters.PARAM_KEY_FETCH_MAX_SIZE, "2048",
+                                                ConfigurationParameters.PARAM_KEY_FETCH_MAX_KEYS, "5");
+
+        // When
+        KeyFetcher.Settings settings = KeyFetcher.Settings.fromParameters(parameters);
+
+        // Then
+        Assert.assertEquals(settings,
+                            new KeyFetcher.Settings(Duration.ofMillis(100), Duration.ofMillis(200), 4,
+                                                    Duration.ofMillis(10), Duration.ofMillis(80), 3,
+                                                    Duration.ofSeconds(7), 2048, 5));
+    }
+
+    @Test
+    public void givenSettings_whenCalculatingBackoff_thenExponentialJitteredAndCapped() {
+        // Given
+        KeyFetcher.Settings settings =
+                new KeyFetcher.Settings(Duration.ofSeconds(1), Duration.ofSeconds(1), 10, Duration.ofMillis(100),
+                                        Duration.ofMillis(1000), 1, Duration.ZERO, 1, 1);
+
+        // When and Then
+        for (int i = 0; i < 100; i++) {
+            long first = KeyFetcher.backoff(settings, 1).toMillis();
+            Assert.assertTrue(first >= 50 && first <= 100, "Unexpected backoff " + first);
+            long third = KeyFetcher.backoff(settings, 3).toMillis();
+            Assert.assertTrue(third >= 200 && third <= 400, "Unexpected backoff " + third);
+            long capped = KeyFetcher.backoff(settings, 100).toMillis();
+            Assert.assertTrue(capped >= 500 && capped <= 1000, "Unexpected backoff " + capped);
+        }
+    }
+
+    @Test
+    public void givenTransientServerError_whenFetching_thenRetriedAndSucceeds() throws Exception {
+        // Given
+        KeyFetcher fetcher = new KeyFetcher(settings(3, 5, Duration.ofMinutes(1)));
+        this.server.failNext(2, 503);
+
+        // When
+        int status = status(fetcher);
+
+        // Then
+        Assert.assertEquals(status, 200);
+        Assert.assertEquals(this.server.getRequests(), 3);
+        Assert.assertFalse(fetcher.isCircuitOpen(this.jwksUri));
+    }
+
+    @Test
+    public void givenPersistentServerError_whenFetching_thenFinalResponseReturnedAfterMaxAttempts() throws Exception {
+        // Given
+        KeyFetcher fetcher = new KeyFetcher(settings(3, 5, Duration.ofMinutes(1)));
+        this.server.failAll(503);
+
+        // When
+        int status = status(fetcher);
+
+        // Then
+        Assert.assertEquals(status, 503);
+        Assert.assertEquals(this.server.getRequests(), 3);
+    }
+
+    @Test
+    public void givenClientError_whenFetching_thenNotRetried() throws Exception {
+        // Given
+        KeyFetcher fetcher = new KeyFetcher(settings(3, 1, Duration.ofMinutes(1)));
+        this.server.failAll(404);
+
+        // When
+        int status = status(fetcher);
+
+        // Then
+        Assert.assertEquals(status, 404);
+        Assert.assertEquals(this.server.getRequests(), 1);
+        Assert.assertFalse(fetcher.isCircuitOpen(this.jwksUri));
+    }
+
+    @Test
+    public void givenHungServer_whenFetching_thenTimesOut() {
+        // Given
+        KeyFetcher fetcher = new KeyFetcher(settings(Duration.ofMillis(250), 1, 5, Duration.ofMinutes(1)));
+        this.server.delay(Duration.ofSeconds(3));
+
+        // When
+        long start = System.currentTimeMillis();
+        Assert.assertThrows(HttpTimeoutException.class, () -> status(fetcher));
+
+        // Then
+        Assert.assertTrue(System.currentTimeMillis() - start < 2500);
+    }
+
+    @Test
+    public void givenRepeatedFailures_whenFetching_thenCircuitOpensAndFailsFast() throws Exception {
+        // Given
+        KeyFetcher fetcher = new KeyFetcher(settings(1, 2, Duration.ofMinutes(1)));
+        this.server.failAll(500);
+        Assert.assertEquals(status(fetcher), 500);
+        Assert.assertFalse(fetcher.isCircuitOpen(this.jwksUri));
+        Assert.assertEquals(status(fetcher), 500);
+
+        // When
+        this.server.heal();
+        Assert.assertThrows(KeyFetcher.CircuitOpenException.class, () -> status(fetcher));
+
+        // Then
+        Assert.assertTrue(fetcher.isCircuitOpen(this.jwksUri));
+        Assert.assertEquals(this.server.getRequests(), 2);
+    }
+
+    @Test
+    public void givenCircuitOpenedByOneFetcher_whenFetchingViaAnotherFetcher_thenFailsFast() throws Exception {
+        // Given
+        KeyFetcher first = new KeyFetcher(settings(1, 1, Duration.ofMinutes(1)));
+        KeyFetcher second = new KeyFetcher(settings(1, 5, Duration.ofMinutes(1)));
+        this.server.failAll(500);
+        Assert.assertEquals(status(first), 500);
+
+        // When
+        this.server.heal();
+
+        // Then
+        Assert.assertTrue(second.isCircuitOpen(this.jwksUri));
+        Assert.assertThrows(KeyFetcher.CircuitOpenException.class, () -> status(second));
+        Assert.assertEquals(this.server.getRequests(), 1);
+    }
+
+    @Test
+    public void givenSettings_whenCreatingFetcher_thenRegistryHttpClientForConnectTimeoutUsed() {
+        // Given
+        KeyFetcher.Settings settings = settings(1, 1, Duration.ofMinutes(1));
+
+        // When
+        KeyFetcher fetcher = new KeyFetcher(settings);
+
+        // Then
+        Assert.assertSame(fetcher.getClient(), KeySourceRegistry.httpClient(settings.connectTimeout()));
+        Assert.assertSame(new KeyFetcher(KeyFetcher.Settings.DEFAULT).getClient(), KeySourceRegistry.httpClient());
+    }
+
+    @Test
+    public void givenOpenCircuit_whenOpenDurationElapsesAndProbeSucceeds_thenCircuitCloses() throws Exception {
+        // Given
+        KeyFetcher fetcher = new KeyFetcher(settings(1, 1, Duration.ofMillis(200)));
+        this.server.failAll(500);
+        Assert.assertEquals(status(fetcher), 500);
+        Assert.assertTrue(fetcher.isCircuitOpen(this.jwksUri));
+
+        // When
+        this.server.heal();
+        Thread.sleep(300);
+        int status = status(fetcher);
+
+        // Then
+        Assert.assertEquals(status, 200);
+        Assert.assertFalse(fetcher.isCircuitOpen(this.jwksUri));
+    }
+
+    @Test
+    public void givenOpenCircuit_whenProbeFails_thenCircuitReopens() throws Exception {
+        // Given
+        KeyFetcher fetcher = new KeyFetcher(settings(1, 3, Duration.ofMillis(200)));
+        this.server.failAll(500);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(status(fetcher), 500);
+        }
+        Thread.sleep(300);
+
+        // When
+        Assert.assertEquals(status(fetcher), 500);
+
+        // Then
+        Assert.assertTrue(fetcher.isCircuitOpen(this.jwksUri));
+        Assert.assertThrows(KeyFetcher.CircuitOpenException.class, () -> status(fetcher));
+        Assert.assertEquals(this.server.getRequests(), 4);
+    }
+
+    @Test
+    public void givenOpenCircuit_whenLoadingJwks_thenKeyLoadException() throws Exception {
+        // Given
+        KeyFetcher fetcher = new KeyFetcher(settings(1, 1, Duration.ofMinutes(1)));
+        this.server.failAll(503);
+        Assert.assertThrows(KeyLoadException.class, () -> KeyUtils.fetchJwks(this.jwksUri, fetcher));
+
+        // When and Then
+        this.server.heal();
+        try {
+            KeyUtils.fetchJwks(this.jwksUri, fetcher);
+            Assert.fail("Expected circuit to be open");
+        } catch (KeyLoadException e) {
+            Assert.assertTrue(e.getMessage().contains("Circuit open"));
+        }
+    }
+
+    @Test
+    public void givenOpenCircuit_whenVerifying_thenCachedKeysStillUsedAndUnknownKeysFailFast() throws Exception {
+        // Given
+        KeyFetcher fetcher = new KeyFetcher(settings(1, 1, Duration.ofMinutes(1)));
+        CachedJwksKeyLocator locator =
+                new CachedJwksKeyLocator(new UrlJwksKeyLocator(this.jwksUri, fetcher), Duration.ofMinutes(5));
+        SignedJwtVerifier verifier = new SignedJwtVerifier(locator);
+        Assert.assertNotNull(verifier.verify(createToken("test-key", this.key)));
+        this.server.failAll(503);
+        Assert.assertThrows(InvalidKeyException.class, () -> verifier.verify(createToken("unknown", this.otherKey)));
+        Assert.assertTrue(fetcher.isCircuitOpen(this.jwksUri));
+        this.server.resetRequests();
+
+        // When
+        Assert.assertThrows(InvalidKeyException.class, () -> verifier.verify(createToken("other", this.otherKey)));
+        Assert.assertNotNull(verifier.verify(createToken("test-key", this.key)));
+
+        // Then
+        Assert.assertEquals(this.server.getRequests(), 0);
+    }
+
+    @Test
+    public void givenOversizedJwks_whenLoadingJwks_thenKeyLoadExceptionWithoutReadingWholeDocument() {
+        // Given
+        KeyFetcher fetcher = new KeyFetcher(limitedSettings(16, 10));
+
+        // When
+        KeyLoadException e =
+                Assert.expectThrows(KeyLoadException.class, () -> KeyUtils.fetchJwks(this.jwksUri, fetcher));
+
+        // Then
+        Assert.assertTrue(e.getMessage().contains("maximum permitted size of 16 bytes"), e.getMessage());
+    }
+
+    @Test
+    public void givenJwksWithinLimits_whenLoadingJwks_thenLoaded() throws Exception {
+        // Given
+        KeyFetcher fetcher = new KeyFetcher(limitedSettings(4096, 1));
+
+        // When
+        JwkSet loaded = KeyUtils.fetchJwks(this.jwksUri, fetcher);
+
+        // Then
+        Assert.assertTrue(loaded.equals(this.jwks));
+    }
+
+    @Test(expectedExceptions = KeyFetcher.DocumentTooLargeException.class)
+    public void givenDeclaredSizeOverLimit_whenReading_thenFailsOnFirstRead() throws Exception {
+        // Given
+        try (InputStream input = new KeyFetcher.LimitedInputStream(new ByteArrayInputStream(new byte[4]), 10, 11)) {
+            // When and Then
+            input.read();
+        }
+    }
+
+    @Test
+    public void givenUndeclaredSizeOverLimit_whenReading_thenFailsOnceLimitExceeded() throws Exception {
+        // Given
+        byte[] data = new byte[100];
+        try (InputStream input = new KeyFetcher.LimitedInputStream(new ByteArrayInputStream(data), 10, -1)) {
+            // When
+            byte[] buffer = new byte[8];
+            Assert.assertEquals(input.read(buffer), 8);
+            Assert.assertEquals(input.read(), 0);
+            Assert.assertEquals(input.skip(1), 1);
+
+            // Then
+            Assert.expectThrows(KeyFetcher.DocumentTooLargeException.class, () -> input.read(buffer));
+        }
+    }
+
+    @Test
+    public void givenSizeWithinLimit_whenReading_thenFullyRead() throws Exception {
+        // Given
+        byte[] data = new byte[10];
+        try (InputStream input = new KeyFetcher.LimitedInputStream(new ByteArrayInputStream(data), 10, 10)) {
+            // When and Then
+            Assert.assertEquals(input.readAllBytes().length, 10);
+        }
+    }
+}
@@ -17,9 +17,7 @@ package io.telicent.servlet.auth.jwt.verification;
 
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.jackson.io.JacksonSerializer;
-import io.jsonwebtoken.security.JwkSet;
-import io.jsonwebtoken.security.Jwks;
-import io.jsonwebtoken.security.MacAlgorithm;
+import io.jsonwebtoken.security.*;
 import io.telicent.servlet.auth.jwt.errors.KeyLoadException;
 import io.telicent.servlet.auth.jwt.verification.jwks.JwksServer;
 import org.apache.commons.io.IOUtils;
@@ -31,6 +29,8 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -41,6 +41,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.Base64;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class TestKeyUtils {
@@ -286,6 +287,106 @@ public class TestKeyUtils {
         KeyUtils.loadJwks(jwksFile);
     }
 
+    private static JwkSet publicView(JwkSet jwks) {
+        JwkSetBuilder builder = Jwks.set();
+        for (Jwk<?> jwk : jwks) {
+            builder.add(jwk instanceof PrivateJwk<?, ?, ?> privateJwk ? privateJwk.toPublicJwk() : jwk);
+        }
+        return builder.build();
+    }
+
+    private static JwkSet parse(String json, int maxKeys) throws IOException {
+        return KeyUtils.parseJwks(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), maxKeys);
+    }
+
+    @Test
+    public void givenJwksWithPrivateKeysAndExtraMembers_whenParsing_thenOnlyPublicParametersRetained() throws
+            IOException {
+        // Given
+        JwkSet jwks = buildComplexJwks();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new JacksonSerializer<>().serialize(Map.of("keys", jwks.getKeys(), "extra", Map.of("nested", List.of(1, 2))),
+                                            output);
+
+        // When
+        JwkSet parsed = parse(output.toString(StandardCharsets.UTF_8), 10);
+
+        // Then
+        Assert.assertTrue(parsed.equals(publicView(jwks)));
+        Assert.assertNull(parsed.get("extra"));
+        for (Jwk<?> jwk : parsed) {
+            Assert.assertFalse(jwk instanceof PrivateJwk, "Private key parameters should not be retained");
+        }
+    }
+
+    @Test
+    public void givenJwksWithCertificateParameters_whenParsing_thenCertificateParametersRetained() throws
+            IOException {
+        // Given
+        Jwk<?> jwk = Jwks.builder()
+                         .key(Jwts.SIG.RS256.keyPair().build().getPublic())
+                         .x509Url(URI.create("https://example.org/cert.pem"))
+                         .x509Sha1Thumbprint(new byte[20])
+                         .x509Sha256Thumbprint(new byte[32])
+                         .idFromThumbprint()
+                         .build();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new JacksonSerializer<>().serialize(Map.of("keys", List.of(jwk)), output);
+
+        // When
+        JwkSet parsed = parse(output.toString(StandardCharsets.UTF_8), 10);
+
+        // Then
+        Jwk<?> retained = parsed.getKeys().iterator().next();
+        Assert.assertEquals(retained, jwk);
+        Assert.assertEquals(retained.get("x5u"), jwk.get("x5u"));
+        Assert.assertEquals(retained.get("x5t"), jwk.get("x5t"));
+        Assert.assertEquals(retained.get("x5t#S256"), jwk.get("x5t#S256"));
+    }
+
+    @Test
+    public void givenJwksWithUnsupportedKey_whenParsing_thenKeyIgnored() throws IOException {
+        // When
+        JwkSet parsed = parse("{\"keys\":[{\"kty\":\"unknown\",\"kid\":\"a\"},1]}", 10);
+
+        // Then
+        Assert.assertTrue(parsed.getKeys().isEmpty());
+    }
+
+    @Test
+    public void givenJwksWithTooManyKeys_whenParsing_thenAbortedEarly() {
+        // Given
+        StringBuilder json = new StringBuilder("{\"keys\":[");
+        for (int i = 0; i < 10; i++) {
+            json.append("{\"kty\":\"oct\",\"k\":\"c2VjcmV0\"},");
+        }
+        // NB - Deliberately malformed beyond the limit to show that parsing stops there
+        json.append("not json");
+
+        // When
+        IOException e = Assert.expectThrows(IOException.class, () -> parse(json.toString(), 5));
+
+        // Then
+        Assert.assertTrue(e.getMessage().contains("maximum of 5 keys"), e.getMessage());
+    }
+
+    @DataProvider(name = "invalidJwks")
+    public Object[][] invalidJwks() {
+        return new Object[][] {
+                { "" },
+                { "[]" },
+                { "{\"keys\":" },
+                { "{\"keys\":\"none\"}" },
+                { "{\"other\":[]}" }
+        };
+    }
+
+    @Test(dataProvider = "invalidJwks", expectedExceptions = MalformedKeySetException.class)
+    public void givenInvalidJwks_whenParsing_thenMalformedKeySet(String json) throws IOException {
+        // When and Then
+        parse(json, 10);
+    }
+
     public static final AtomicInteger JWKS_TEST_PORT = new AtomicInteger(34567);
 
     public static final HttpClient HTTP_CLIENT = HttpClient.newBuilder().build();
@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.DeserializationException;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
+import java.io.StringReader;
+import java.util.*;
+
+public class TestStreamingClaimsDeserializer {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static Map<String, ?> deserialize(String json) {
+        return StreamingClaimsDeserializer.INSTANCE.deserialize(new StringReader(json));
+    }
+
+    private static String groups(int count) {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append('"').append(UUID.nameUUIDFromBytes(Integer.toString(i).getBytes())).append('"');
+        }
+        return builder.append(']').toString();
+    }
+
+    @DataProvider(name = "json")
+    public Object[][] validJson() {
+        return new Object[][] {
+                { "{}" },
+                { "{\"sub\":\"user\",\"exp\":1767225600,\"iat\":1767222000,\"nbf\":1767222000}" },
+                { "{\"aud\":[\"account\",\"api\"],\"iss\":\"https://idp.example/realms/test\"}" },
+                { "{\"realm_access\":{\"roles\":[\"offline_access\",\"uma_authorization\"]},\"resource_access\":{\"account\":{\"roles\":[\"manage-account\",\"view-profile\"]}}}" },
+                { "{\"groups\":" + groups(200) + ",\"wids\":[],\"xms_st\":{\"sub\":\"abc\"}}" },
+                { "{\"flag\":true,\"other\":false,\"nothing\":null,\"ratio\":0.25,\"big\":123456789012345678901234567890,\"long\":12345678901}" },
+                { "{\"name\":\"J\\u00f6rg \\\"Quoted\\\" \\n Line\",\"emoji\":\"\\ud83d\\ude00\",\"nested\":[[1,[2,{\"deep\":[3]}]],{}]}" },
+                { "{\"exp\":\"not a number\",\"iat\":1.5,\"nbf\":123456789012345678901234567890}" },
+                { "{\"dup\":1,\"dup\":2}" }
+        };
+    }
+
+    @Test(dataProvider = "json")
+    public void givenValidJson_whenDeserializing_thenSameAsDataBinding(String json) throws Exception {
+        // When
+        Map<String, ?> claims = deserialize(json);
+
+        // Then
+        Assert.assertEquals(MAPPER.writeValueAsString(claims),
+                            MAPPER.writeValueAsString(MAPPER.readValue(json, Map.class)));
+    }
+
+    @Test
+    public void givenTimeClaims_whenDeserializing_thenDecodedAsLongs() {
+        // When
+        Map<String, ?> claims = deserialize("{\"exp\":1767225600,\"iat\":1,\"nbf\":2,\"other\":3}");
+
+        // Then
+        Assert.assertEquals(claims.get("exp"), 1767225600L);
+        Assert.assertEquals(claims.get("iat"), 1L);
+        Assert.assertEquals(claims.get("nbf"), 2L);
+        Assert.assertEquals(claims.get("other"), 3);
+    }
+
+    @Test
+    public void givenStructuredClaims_whenDeserializing_thenLazilyParsedButBehaveAsMapsAndLists() {
+        // Given
+        Map<String, ?> claims = deserialize(
+                "{\"realm_access\":{\"roles\":[\"a\",\"b\"]},\"groups\":[\"x\",{\"y\":1}],\"sub\":\"user\"}");
+
+        // When
+        @SuppressWarnings("unchecked")
+        Map<String, Object> realmAccess = (Map<String, Object>) claims.get("realm_access");
+        @SuppressWarnings("unchecked")
+        List<Object> groups = (List<Object>) claims.get("groups");
+
+        // Then
+        Assert.assertNotEquals(realmAccess.getClass(), LinkedHashMap.class);
+        Assert.assertNotEquals(groups.getClass(), ArrayList.class);
+        Assert.assertTrue(realmAccess.containsKey("roles"));
+        Assert.assertEquals(realmAccess.get("roles"), List.of("a", "b"));
+        Assert.assertEquals(realmAccess, Map.of("roles", List.of("a", "b")));
+        Assert.assertEquals(realmAccess.size(), 1);
+        Assert.assertEquals(groups.size(), 2);
+        Assert.assertEquals(groups.get(0), "x");
+        Assert.assertEquals(groups, List.of("x", Map.of("y", 1)));
+
+        // And
+        realmAccess.put("extra", true);
+        Assert.assertEquals(realmAccess.get("extra"), true);
+        groups.add("z");
+        groups.set(0, "w");
+        Assert.assertEquals(groups.remove(1), Map.of("y", 1));
+        Assert.assertEquals(groups, List.of("w", "z"));
+    }
+
+    @DataProvider(name = "malformed")
+    public Object[][] malformedJson() {
+        return new Object[][] {
+                { "[1, 2, 3]" },
+                { "\"string\"" },
+                { "{\"sub\":\"user\"" },
+                { "{\"groups\":[\"a\",}" },
+                { "{\"realm_access\":{\"roles\":[\"a\"]]}" },
+                { "{\"sub\":\"user\"} trailing" },
+                { "{\"sub\":\"user\"}{}" },
+                { "{\"sub\":undefined}" }
+        };
+    }
+
+    @Test(dataProvider = "malformed", expectedExceptions = DeserializationException.class)
+    public void givenMalformedJson_whenDeserializing_thenError(String json) {
+        // When and Then
+        deserialize(json);
+    }
+
+    @Test
+    public void givenEmptyInput_whenDeserializing_thenNull() {
+        // When and Then
+        Assert.assertNull(deserialize(""));
+        Assert.assertNull(deserialize("   "));
+    }
+
+    @Test
+    public void givenLargeSignedToken_whenParsing_thenClaimsAvailable() {
+        // Given
+        SecretKey key = Jwts.SIG.HS256.key().build();
+        List<String> groups = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            groups.add("group-" + i);
+        }
+        String jwt = Jwts.builder()
+                         .subject("user")
+                         .audience()
+                         .add("api")
+                         .and()
+                         .expiration(new Date(System.currentTimeMillis() + 60_000))
+                         .claim("realm_access", Map.of("roles", List.of("admin", "user")))
+                         .claim("groups", groups)
+                         .signWith(key)
+                         .compact();
+
+        // When
+        Jws<Claims> jws = JwtParsers.builder().verifyWith(key).build().parseSignedClaims(jwt);
+
+        // Then
+        Claims claims = jws.getPayload();
+        Assert.assertEquals(claims.getSubject(), "user");
+        Assert.assertEquals(claims.getAudience(), Set.of("api"));
+        Assert.assertNotNull(claims.getExpiration());
+        Assert.assertEquals(claims.get("realm_access", Map.class).get("roles"), List.of("admin", "user"));
+        Assert.assertEquals(claims.get("groups", List.class), groups);
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification;
+
+import io.jsonwebtoken.Jwts;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+public class TestUnverifiedJwt {
+
+    private final SecretKey key = Jwts.SIG.HS256.key().build();
+
+    private static String encode(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @DataProvider(name = "invalid")
+    public Object[][] invalidTokens() {
+        return new Object[][] {
+                { null },
+                { "" },
+                { "   " },
+                { "no-dots-here" },
+                { ".payload.signature" },
+                { "%%%.payload.signature" },
+                { encode("not json") + ".payload.signature" },
+                { encode("[1, 2, 3]") + ".payload.signature" }
+        };
+    }
+
+    @Test(dataProvider = "invalid")
+    public void givenInvalidToken_whenPeeking_thenNull(String rawJwt) {
+        // When and Then
+        Assert.assertNull(UnverifiedJwt.peek(rawJwt));
+    }
+
+    @Test
+    public void givenSignedToken_whenPeeking_thenHeadersAvailable() {
+        // Given
+        String jwt = Jwts.builder().header().keyId("test").and().subject("test").signWith(this.key).compact();
+
+        // When
+        UnverifiedJwt unverified = UnverifiedJwt.peek(jwt);
+
+        // Then
+        Assert.assertNotNull(unverified);
+        Assert.assertEquals(unverified.getKeyId(), "test");
+        Assert.assertEquals(unverified.getAlgorithm(), "HS256");
+    }
+
+    @Test
+    public void givenTokenWithNonStringKeyId_whenPeeking_thenNoKeyId() {
+        // Given
+        String jwt = encode("{\"alg\":\"none\",\"kid\":1234}") + "." + encode("{}") + ".";
+
+        // When
+        UnverifiedJwt unverified = UnverifiedJwt.peek(jwt);
+
+        // Then
+        Assert.assertNotNull(unverified);
+        Assert.assertNull(unverified.getKeyId());
+        Assert.assertEquals(unverified.getAlgorithm(), "none");
+    }
+
+    @Test
+    public void givenTokenWithIssuer_whenPeeking_thenIssuerAvailable() {
+        // Given
+        String jwt = Jwts.builder().issuer("https://idp.example.org").subject("test").signWith(this.key).compact();
+
+        // When
+        UnverifiedJwt unverified = UnverifiedJwt.peek(jwt);
+
+        // Then
+        Assert.assertNotNull(unverified);
+        Assert.assertEquals(unverified.getIssuer(), "https://idp.example.org");
+        Assert.assertEquals(unverified.getIssuer(), "https://idp.example.org");
+    }
+
+    @DataProvider(name = "noIssuer")
+    public Object[][] tokensWithoutIssuer() {
+        String header = encode("{\"alg\":\"none\"}");
+        return new Object[][] {
+                { header + "." + encode("{\"sub\":\"test\"}") + "." },
+                { header + "." + encode("{\"iss\":1234}") + "." },
+                { header + "." + encode("{\"iss\":[\"test\"]}") + "." },
+                { header + "." + encode("not json") + "." },
+                { header + "." + encode("null") + "." },
+                { header + ".%%%." },
+                { header + ".." },
+                { header + "." + encode("{\"iss\":\"test\"}") }
+        };
+    }
+
+    @Test(dataProvider = "noIssuer")
+    public void givenTokenWithoutUsableIssuer_whenPeeking_thenNoIssuer(String rawJwt) {
+        // When
+        UnverifiedJwt unverified = UnverifiedJwt.peek(rawJwt);
+
+        // Then
+        Assert.assertNotNull(unverified);
+        Assert.assertNull(unverified.getIssuer());
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.bulk;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.telicent.servlet.auth.jwt.errors.KeyLoadPendingException;
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.SignedJwtVerifier;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestBulkTokenVerifier {
+
+    private static final SecretKey KEY = Jwts.SIG.HS256.key().build();
+    private static final SecretKey OTHER_KEY = Jwts.SIG.HS256.key().build();
+
+    private static String token(SecretKey key, String subject, Instant expiry) {
+        return Jwts.builder().header().keyId("test").and().subject(subject).expiration(Date.from(expiry))
+                   .signWith(key).compact();
+    }
+
+    private static String valid(String subject) {
+        return token(KEY, subject, Instant.now().plus(1, ChronoUnit.HOURS));
+    }
+
+    private static List<String> verify(BulkTokenVerifier verifier, String input) throws IOException {
+        StringWriter output = new StringWriter();
+        verifier.verify(new BufferedReader(new StringReader(input)), output);
+        return output.toString().lines().toList();
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullVerifier_whenCreating_thenNPE() {
+        new BulkTokenVerifier(null);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenZeroParallelism_whenCreating_thenIllegalArgument() {
+        new BulkTokenVerifier(new SignedJwtVerifier(KEY), 0, 1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenZeroBatchSize_whenCreating_thenIllegalArgument() {
+        new BulkTokenVerifier(new SignedJwtVerifier(KEY), 1, 0);
+    }
+
+    @DataProvider(name = "lines")
+    public Object[][] lines() {
+        return new Object[][] {
+                { "", null },
+                { "   ", null },
+                { "# comment", null },
+                { "  #indented comment", null },
+                { "Bearer ", null },
+                { "abc.def.ghi", "abc.def.ghi" },
+                { "  abc.def.ghi\t", "abc.def.ghi" },
+                { "Bearer abc.def.ghi", "abc.def.ghi" },
+                { "bearer  abc.def.ghi", "abc.def.ghi" }
+        };
+    }
+
+    @Test(dataProvider = "lines")
+    public void givenLine_whenExtractingToken_thenExpectedTokenExtracted(String line, String expected) {
+        // When and Then
+        Assert.assertEquals(BulkTokenVerifier.extractToken(line), expected);
+    }
+
+    @Test
+    public void givenMixedTokens_whenVerifying_thenEachTokenClassified() throws IOException {
+        // Given
+        BulkTokenVerifier verifier = new BulkTokenVerifier(new SignedJwtVerifier(KEY), 2, 2);
+        String input = String.join("\n", "# Captured tokens", valid("alice"),
+                                   token(KEY, "bob", Instant.now().minus(1, ChronoUnit.HOURS)), "",
+                                   token(OTHER_KEY, "mallory", Instant.now().plus(1, ChronoUnit.HOURS)),
+                                   "not-a-token", "Bearer " + valid("carol"));
+
+        // When
+        List<String> output = verify(verifier, input);
+
+        // Then
+        Assert.assertEquals(output.size(), 6);
+        Assert.assertEquals(output.get(0), BulkTokenVerifier.OUTPUT_HEADER);
+        Assert.assertEquals(output.get(1), "2\tVALID\ttest\talice\t");
+        Assert.assertTrue(output.get(2).startsWith("3\tEXPIRED\ttest\tbob\tJWT expired"));
+        Assert.assertTrue(output.get(3).startsWith("5\tINVALID_SIGNATURE\ttest\t\t"));
+        Assert.assertTrue(output.get(4).startsWith("6\tMALFORMED\t\t\t"));
+        Assert.assertEquals(output.get(5), "7\tVALID\ttest\tcarol\t");
+        for (String line : output) {
+            Assert.assertFalse(line.contains("eyJ"), "Tokens should never be written to the output");
+        }
+    }
+
+    @Test
+    public void givenManyTokens_whenVerifyingInParallel_thenOutputInInputOrder_andStatisticsAggregated() throws
+            IOException {
+        // Given
+        BulkTokenVerifier verifier = new BulkTokenVerifier(new SignedJwtVerifier(KEY), 4, 100);
+        StringBuilder input = new StringBuilder();
+        String expired = token(KEY, "expired", Instant.now().minus(1, ChronoUnit.HOURS));
+        for (int i = 0; i < 2_000; i++) {
+            input.append(i % 10 == 0 ? expired : valid("user-" + i)).append('\n');
+        }
+        input.append("# trailing comment\n");
+        StringWriter output = new StringWriter();
+
+        // When
+        BulkVerificationStatistics statistics =
+                verifier.verify(new BufferedReader(new StringReader(input.toString())), output);
+
+        // Then
+        List<String> lines = output.toString().lines().skip(1).toList();
+        Assert.assertEquals(lines.size(), 2_000);
+        for (int i = 0; i < lines.size(); i++) {
+            Assert.assertTrue(lines.get(i).startsWith((i + 1) + "\t" + (i % 10 == 0 ? "EXPIRED" : "VALID")));
+        }
+        Assert.assertEquals(statistics.getTotal(), 2_000);
+        Assert.assertEquals(statistics.getSkipped(), 1);
+        Assert.assertEquals(statistics.getCount(VerificationOutcome.VALID), 1_800);
+        Assert.assertEquals(statistics.getCount(VerificationOutcome.EXPIRED), 200);
+        Assert.assertEquals(statistics.getCount(VerificationOutcome.MALFORMED), 0);
+        Assert.assertEquals(statistics.getCounts().size(), 2);
+        Assert.assertTrue(statistics.toString().contains("Verified 2000 tokens"));
+    }
+
+    @Test
+    public void givenEmptyInput_whenVerifying_thenOnlyHeaderWritten() throws IOException {
+        // Given
+        BulkTokenVerifier verifier = new BulkTokenVerifier(new SignedJwtVerifier(KEY));
+
+        // When
+        List<String> output = verify(verifier, "");
+
+        // Then
+        Assert.assertEquals(output, List.of(BulkTokenVerifier.OUTPUT_HEADER));
+    }
+
+    @Test
+    public void givenVerifierFailures_whenVerifyingToken_thenClassifiedLikeEngine() {
+        // Given
+        JwtVerifier verifier = mock(JwtVerifier.class);
+        when(verifier.verify("pending")).thenThrow(new KeyLoadPendingException("Keys not yet loaded"));
+        when(verifier.verify("weak")).thenThrow(new io.jsonwebtoken.security.WeakKeyException("Too short"));
+        when(verifier.verify("unsupported")).thenThrow(new io.jsonwebtoken.UnsupportedJwtException("Unsigned"));
+        when(verifier.verify("revoked")).thenThrow(new io.jsonwebtoken.JwtException("Token revoked"));
+        when(verifier.verify("broken")).thenThrow(new IllegalStateException("Boom"));
+
+        // When and Then
+        Assert.assertEquals(BulkTokenVerifier.verifyToken(verifier, 1, "pending").outcome(),
+                            VerificationOutcome.KEY_ERROR);
+        Assert.assertEquals(BulkTokenVerifier.verifyToken(verifier, 2, "weak").detail(), "Invalid/weak key: Too short");
+        Assert.assertEquals(BulkTokenVerifier.verifyToken(verifier, 3, "unsupported").outcome(),
+                            VerificationOutcome.UNSUPPORTED);
+        Assert.assertEquals(BulkTokenVerifier.verifyToken(verifier, 4, "revoked").outcome(),
+                            VerificationOutcome.INVALID);
+        Assert.assertEquals(BulkTokenVerifier.verifyToken(verifier, 5, "broken").detail(),
+                            "IllegalStateException: Boom");
+        Assert.assertEquals(BulkTokenVerifier.verifyToken(verifier, 6, "rejected").outcome(),
+                            VerificationOutcome.INVALID);
+    }
+
+    @Test
+    public void givenPrematureToken_whenVerifyingToken_thenPremature_andSubjectReported() {
+        // Given
+        String token = Jwts.builder().subject("early").notBefore(Date.from(Instant.now().plus(1, ChronoUnit.HOURS)))
+                           .signWith(KEY).compact();
+
+        // When
+        TokenOutcome outcome = BulkTokenVerifier.verifyToken(new SignedJwtVerifier(KEY), 1, token);
+
+        // Then
+        Assert.assertEquals(outcome.outcome(), VerificationOutcome.PREMATURE);
+        Assert.assertEquals(outcome.subject(), "early");
+        Assert.assertNull(outcome.keyId());
+    }
+
+    @Test
+    public void givenOutcomeWithWhitespace_whenFormatting_thenSingleLine() {
+        // Given
+        TokenOutcome outcome = new TokenOutcome(1, VerificationOutcome.INVALID, null, "a\tb", "multi\nline\r\ndetail");
+
+        // When
+        String formatted = outcome.toTabSeparated();
+
+        // Then
+        Assert.assertEquals(formatted, "1\tINVALID\t\ta b\tmulti line detail");
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.introspection;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.telicent.servlet.auth.jwt.verification.jwks.JwksServer;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.ee9.servlet.ServletHandler;
+import org.eclipse.jetty.ee9.servlet.ServletHolder;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimalist server application that provides an RFC 7662 token introspection endpoint for a fixed set of opaque
+ * tokens, any unknown token is reported as inactive
+ */
+public class IntrospectionServer extends JwksServer {
+    private final Map<String, Map<String, Object>> tokens = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile int status = HttpServletResponse.SC_OK;
+    private volatile long delay = 0;
+    private volatile String lastAuthorization = null;
+    private volatile String rawResponse = null;
+
+    /**
+     * Creates a new introspection server
+     *
+     * @param port Port
+     */
+    public IntrospectionServer(int port) {
+        super(port, null);
+    }
+
+    /**
+     * Gets the URL of the introspection endpoint
+     *
+     * @return Introspection URL
+     */
+    public String getIntrospectionUrl() {
+        if (this.server != null) {
+            return String.format("http://localhost:%d/introspect", this.port);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Registers an active token with the server
+     *
+     * @param token  Opaque token
+     * @param claims Claims returned for the token, {@code active} is added automatically
+     */
+    public void addToken(String token, Map<String, Object> claims) {
+        Map<String, Object> response = new ConcurrentHashMap<>(claims);
+        response.put("active", true);
+        this.tokens.put(token, response);
+    }
+
+    /**
+     * Sets the HTTP status the server responds with, any non-200 status results in an empty error response
+     *
+     * @param status Status
+     */
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    /**
+     * Sets a raw response body the server responds with regardless of the token, {@code null} to respond normally
+     *
+     * @param rawResponse Raw response body
+     */
+    public void setRawResponse(String rawResponse) {
+        this.rawResponse = rawResponse;
+    }
+
+    /**
+     * Sets a delay (in milliseconds) before each response is sent
+     *
+     * @param delay Delay
+     */
+    public void setDelay(long delay) {
+        this.delay = delay;
+    }
+
+    /**
+     * Gets how many introspection requests the server has received
+     *
+     * @return Requests
+     */
+    public int getRequests() {
+        return this.requests.get();
+    }
+
+    /**
+     * Gets the {@code Authorization} header sent on the most recent introspection request
+     *
+     * @return Authorization header, or {@code null} if none
+     */
+    public String getLastAuthorization() {
+        return this.lastAuthorization;
+    }
+
+    @Override
+    protected void addJwksServlet(ServletHandler handler) {
+        ServletHolder holder = new ServletHolder();
+        holder.setServlet(new IntrospectionServlet());
+        handler.addServletWithMapping(holder, "/introspect");
+    }
+
+    private class IntrospectionServlet extends HttpServlet {
+
+        @Override
+        protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            requests.incrementAndGet();
+            lastAuthorization = req.getHeader("Authorization");
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            resp.setContentType("application/json");
+            resp.setStatus(status);
+            if (status != HttpServletResponse.SC_OK) {
+                return;
+            } else if (rawResponse != null) {
+                resp.getWriter().print(rawResponse);
+                return;
+            }
+            String token = req.getParameter("token");
+            Map<String, Object> response = token != null ? tokens.get(token) : null;
+            new ObjectMapper().writeValue(resp.getOutputStream(),
+                                          response != null ? response : Map.of("active", false));
+        }
+    }
+}
@@ -0,0 +1,395 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.introspection;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SupportedJwtVisitor;
+import io.telicent.servlet.auth.jwt.verification.KeyFetcher;
+import io.telicent.servlet.auth.jwt.verification.SignedJwtVerifier;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestIntrospectingTokenVerifier {
+
+    private static final Random RANDOM = new Random();
+    private static final AtomicInteger TEST_PORT = new AtomicInteger(51200 + RANDOM.nextInt(50));
+    private static final HttpClient CLIENT = HttpClient.newBuilder().build();
+
+    private IntrospectionServer server;
+
+    @BeforeClass
+    public void setup() throws Exception {
+        this.server = new IntrospectionServer(TEST_PORT.getAndIncrement());
+        this.server.start();
+    }
+
+    @AfterMethod
+    public void cleanup() {
+        this.server.setStatus(200);
+        this.server.setRawResponse(null);
+        this.server.setDelay(0);
+        KeyFetcher.resetCircuitBreakers();
+    }
+
+    @AfterClass
+    public void teardown() throws Exception {
+        this.server.stop();
+    }
+
+    private IntrospectingTokenVerifier create(Duration ttl) {
+        return new IntrospectingTokenVerifier(URI.create(this.server.getIntrospectionUrl()), CLIENT, null, null, ttl,
+                                              100);
+    }
+
+    private String activeToken(Instant expiry) {
+        String token = UUID.randomUUID().toString();
+        this.server.addToken(token, expiry != null ? Map.of("sub", "user", "exp", expiry.getEpochSecond()) :
+                                    Map.of("sub", "user"));
+        return token;
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullEndpoint_whenCreatingVerifier_thenNPE() {
+        new IntrospectingTokenVerifier(null, CLIENT, null, null, Duration.ZERO, 1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenNegativeTtl_whenCreatingVerifier_thenIllegalArgument() {
+        new IntrospectingTokenVerifier(URI.create("http://localhost"), CLIENT, null, null, Duration.ofSeconds(-1), 1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenNegativeCacheSize_whenCreatingVerifier_thenIllegalArgument() {
+        new IntrospectingTokenVerifier(URI.create("http://localhost"), CLIENT, null, null, Duration.ZERO, -1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenZeroRequestTimeout_whenCreatingVerifier_thenIllegalArgument() {
+        new IntrospectingTokenVerifier(URI.create("http://localhost"), CLIENT, null, null, Duration.ZERO, 1,
+                                       Duration.ZERO);
+    }
+
+    @Test
+    public void givenActiveToken_whenVerifiedRepeatedly_thenIntrospectedOnce() {
+        // Given
+        IntrospectingTokenVerifier verifier = create(Duration.ofMinutes(1));
+        String token = activeToken(Instant.now().plusSeconds(300));
+        int before = this.server.getRequests();
+
+        // When
+        Jws<Claims> first = verifier.verify(token);
+        Jws<Claims> second = verifier.verify(token);
+
+        // Then
+        Assert.assertEquals(first.getPayload().getSubject(), "user");
+        Assert.assertEquals(second.getPayload().getSubject(), "user");
+        Assert.assertEquals(this.server.getRequests(), before + 1);
+        Assert.assertEquals(verifier.getCachedTokens(), 1);
+        Assert.assertNull(this.server.getLastAuthorization());
+        Assert.assertTrue(verifier.toString().contains("/introspect"));
+    }
+
+    @Test
+    public void givenZeroTtl_whenVerifiedRepeatedly_thenIntrospectedEachTime() {
+        // Given
+        IntrospectingTokenVerifier verifier = create(Duration.ZERO);
+        String token = activeToken(null);
+        int before = this.server.getRequests();
+
+        // When
+        verifier.verify(token);
+        verifier.verify(token);
+
+        // Then
+        Assert.assertEquals(this.server.getRequests(), before + 2);
+    }
+
+    @Test
+    public void givenInactiveToken_whenVerifiedRepeatedly_thenRejected_andIntrospectedOnce() {
+        // Given
+        IntrospectingTokenVerifier verifier = create(Duration.ofMinutes(1));
+        int before = this.server.getRequests();
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            JwtException e = Assert.expectThrows(JwtException.class, () -> verifier.verify("unknown"));
+            Assert.assertEquals(e.getMessage(), "Token is not active");
+        }
+
+        // Then
+        Assert.assertEquals(this.server.getRequests(), before + 1);
+    }
+
+    @Test
+    public void givenExpiredActiveToken_whenVerifying_thenExpired() {
+        // Given
+        IntrospectingTokenVerifier verifier = create(Duration.ofMinutes(1));
+        String token = activeToken(Instant.now().minusSeconds(30));
+
+        // When and Then
+        Assert.assertThrows(ExpiredJwtException.class, () -> verifier.verify(token));
+    }
+
+    @Test
+    public void givenHungEndpoint_whenVerifying_thenTimesOut_andFailureNotCached() {
+        // Given
+        IntrospectingTokenVerifier verifier =
+                new IntrospectingTokenVerifier(URI.create(this.server.getIntrospectionUrl()), CLIENT, null, null,
+                                               Duration.ofMinutes(1), 10, Duration.ofMillis(200));
+        String token = activeToken(null);
+        this.server.setDelay(2000);
+
+        // When
+        long start = System.currentTimeMillis();
+        JwtException e = Assert.expectThrows(JwtException.class, () -> verifier.verify(token));
+
+        // Then
+        Assert.assertTrue(e.getMessage().startsWith("Token introspection failed"));
+        Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+        Assert.assertEquals(verifier.getCachedTokens(), 0);
+        this.server.setDelay(0);
+        Assert.assertNotNull(verifier.verify(token));
+    }
+
+    @Test
+    public void givenErrorStatus_whenVerifying_thenFailed_andFailureNotCached() {
+        // Given
+        IntrospectingTokenVerifier verifier = create(Duration.ofMinutes(1));
+        String token = activeToken(null);
+        this.server.setStatus(500);
+
+        // When
+        JwtException e = Assert.expectThrows(JwtException.class, () -> verifier.verify(token));
+
+        // Then
+        Assert.assertTrue(e.getMessage().contains("status 500"));
+        this.server.setStatus(200);
+        Assert.assertNotNull(verifier.verify(token));
+    }
+
+    @Test
+    public void givenMalformedResponses_whenVerifying_thenFailed() {
+        // Given
+        IntrospectingTokenVerifier verifier = create(Duration.ofMinutes(1));
+
+        // When and Then
+        this.server.setRawResponse("null");
+        Assert.assertThrows(JwtException.class, () -> verifier.verify("a"));
+        this.server.setRawResponse("not json");
+        Assert.assertThrows(JwtException.class, () -> verifier.verify("b"));
+        this.server.setRawResponse("{\"active\":true,\"exp\":\"not-a-date\"}");
+        JwtException e = Assert.expectThrows(JwtException.class, () -> verifier.verify("c"));
+        Assert.assertTrue(e.getMessage().startsWith("Token introspection failed"));
+    }
+
+    private IntrospectingTokenVerifier create(long maxDocumentSize, int failureThreshold) {
+        KeyFetcher.Settings defaults = KeyFetcher.Settings.DEFAULT;
+        KeyFetcher.Settings settings =
+                new KeyFetcher.Settings(defaults.connectTimeout(), defaults.requestTimeout(), defaults.maxAttempts(),
+                                        defaults.initialBackoff(), defaults.maxBackoff(), failureThreshold,
+                                        Duration.ofMinutes(1), maxDocumentSize, defaults.maxKeys());
+        return new IntrospectingTokenVerifier(URI.create(this.server.getIntrospectionUrl()), CLIENT, settings, null,
+                                              null, Duration.ofMinutes(1), 100, Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void givenOversizedResponse_whenVerifying_thenFailed() {
+        // Given
+        IntrospectingTokenVerifier verifier = create(1024, 5);
+        this.server.setRawResponse("{\"active\":true,\"padding\":\"" + "x".repeat(4096) + "\"}");
+
+        // When
+        JwtException e = Assert.expectThrows(JwtException.class, () -> verifier.verify("token"));
+
+        // Then
+        Assert.assertTrue(e.getMessage().contains("maximum permitted size"));
+        Assert.assertEquals(verifier.getCachedTokens(), 0);
+    }
+
+    @Test
+    public void givenRepeatedlyFailingEndpoint_whenVerifying_thenCircuitOpensAndFailsFast() {
+        // Given
+        IntrospectingTokenVerifier verifier = create(1024, 1);
+        this.server.setStatus(500);
+        int before = this.server.getRequests();
+
+        // When
+        JwtException first = Assert.expectThrows(JwtException.class, () -> verifier.verify("a"));
+        JwtException second = Assert.expectThrows(JwtException.class, () -> verifier.verify("b"));
+
+        // Then
+        Assert.assertTrue(first.getMessage().contains("status 500"));
+        Assert.assertTrue(second.getMessage().contains("Circuit open"));
+        Assert.assertEquals(this.server.getRequests(), before + 1);
+    }
+
+    @Test
+    public void givenUnreachableEndpoint_whenVerifying_thenFailed() {
+        // Given
+        IntrospectingTokenVerifier verifier =
+                new IntrospectingTokenVerifier(URI.create("http://localhost:1/introspect"), CLIENT, null, null,
+                                               Duration.ofMinutes(1), 10);
+
+        // When
+        JwtException e = Assert.expectThrows(JwtException.class, () -> verifier.verify("token"));
+
+        // Then
+        Assert.assertTrue(e.getMessage().startsWith("Token introspection failed"));
+        Assert.assertEquals(verifier.getCachedTokens(), 0);
+    }
+
+    @Test
+    public void givenConcurrentLookupsOfSameToken_whenVerifying_thenCoalescedIntoSingleIntrospection() throws
+            Exception {
+        // Given
+        IntrospectingTokenVerifier verifier = create(Duration.ofMinutes(1));
+        String token = activeToken(Instant.now().plusSeconds(300));
+        this.server.setDelay(500);
+        int before = this.server.getRequests();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // When
+        List<Future<Jws<Claims>>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return verifier.verify(token);
+            }));
+        }
+        start.countDown();
+        for (Future<Jws<Claims>> future : futures) {
+            Assert.assertEquals(future.get(10, TimeUnit.SECONDS).getPayload().getSubject(), "user");
+        }
+        executor.shutdown();
+
+        // Then
+        Assert.assertEquals(this.server.getRequests(), before + 1);
+    }
+
+    @Test
+    public void givenClientCredentials_whenVerifying_thenAuthorizationSent() {
+        // Given
+        String authorization = IntrospectingTokenVerifier.basicAuthorization("client", "secret");
+        IntrospectingTokenVerifier verifier =
+                new IntrospectingTokenVerifier(URI.create(this.server.getIntrospectionUrl()), CLIENT, authorization,
+                                               null, Duration.ofMinutes(1), 10);
+
+        // When
+        verifier.verify(activeToken(null));
+
+        // Then
+        Assert.assertEquals(this.server.getLastAuthorization(), authorization);
+        Assert.assertEquals(new String(Base64.getDecoder().decode(authorization.substring("Basic ".length()))),
+                            "client:secret");
+        Assert.assertEquals(IntrospectingTokenVerifier.basicAuthorization("client", null),
+                            "Basic " + Base64.getEncoder().encodeToString("client:".getBytes()));
+    }
+
+    @Test
+    public void givenJwtVerifier_whenVerifyingJwt_thenVerifiedLocally_andOpaqueTokensIntrospected() {
+        // Given
+        SecretKey key = Jwts.SIG.HS256.key().build();
+        SignedJwtVerifier jwtVerifier = new SignedJwtVerifier(key);
+        IntrospectingTokenVerifier verifier =
+                new IntrospectingTokenVerifier(URI.create(this.server.getIntrospectionUrl()), CLIENT, null,
+                                               jwtVerifier, Duration.ofMinutes(1), 10);
+        String jwt = Jwts.builder().subject("jwt-user").signWith(key).compact();
+        String opaque = activeToken(null);
+        int before = this.server.getRequests();
+
+        // When
+        Jws<Claims> local = verifier.verify(jwt);
+        Jws<Claims> introspected = verifier.verify(opaque);
+
+        // Then
+        Assert.assertEquals(local.getPayload().getSubject(), "jwt-user");
+        Assert.assertEquals(introspected.getPayload().getSubject(), "user");
+        Assert.assertEquals(this.server.getRequests(), before + 1);
+        Assert.assertTrue(verifier.toString().contains("jwtVerifier="));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void givenIntrospectedClaims_whenAccessingAsJws_thenNoSignature() {
+        // Given
+        Claims claims = Jwts.claims().subject("user").build();
+
+        // When
+        IntrospectedJws jws = new IntrospectedJws(claims);
+
+        // Then
+        Assert.assertEquals(jws.getHeader().getAlgorithm(), IntrospectedJws.INTROSPECTION_ALGORITHM);
+        Assert.assertSame(jws.getPayload(), claims);
+        Assert.assertSame(jws.getBody(), claims);
+        Assert.assertEquals(jws.getSignature(), "");
+        Assert.assertEquals(jws.getDigest().length, 0);
+        Assert.assertTrue(jws.toString().contains("user"));
+        Assert.assertSame(jws.accept(new SupportedJwtVisitor<Claims>() {
+            @Override
+            public Claims onVerifiedClaims(Jws<Claims> jws) {
+                return jws.getPayload();
+            }
+        }), claims);
+    }
+
+    @Test
+    public void givenCachedClaims_whenComputingExpiry_thenShorterOfTtlAndTokenLifetime() {
+        // Given
+        IntrospectingTokenVerifier.ClaimsExpiry expiry = new IntrospectingTokenVerifier.ClaimsExpiry(
+                Duration.ofMinutes(1));
+        Claims noExpiry = Jwts.claims().build();
+        Claims shortLived = Jwts.claims().expiration(Date.from(Instant.now().plusSeconds(10))).build();
+        Claims expired = Jwts.claims().expiration(Date.from(Instant.now().minusSeconds(10))).build();
+
+        // When and Then
+        Assert.assertEquals(expiry.expireAfterCreate("a", noExpiry, 0), Duration.ofMinutes(1).toNanos());
+        Assert.assertTrue(expiry.expireAfterUpdate("a", shortLived, 0, 0) <= Duration.ofSeconds(10).toNanos());
+        Assert.assertTrue(expiry.expireAfterCreate("a", shortLived, 0) > 0);
+        Assert.assertEquals(expiry.expireAfterCreate("a", expired, 0), 0);
+        Assert.assertEquals(expiry.expireAfterRead("a", noExpiry, 0, 1234), 1234);
+    }
+
+    @Test
+    public void givenTokens_whenDigesting_thenStableUrlSafeDigests() {
+        // When and Then
+        Assert.assertEquals(IntrospectingTokenVerifier.digest("a"), IntrospectingTokenVerifier.digest("a"));
+        Assert.assertNotEquals(IntrospectingTokenVerifier.digest("a"), IntrospectingTokenVerifier.digest("b"));
+        Assert.assertEquals(IntrospectingTokenVerifier.digest("a").length(), 43);
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.jwks;
+
+import io.jsonwebtoken.security.InvalidKeyException;
+import io.jsonwebtoken.security.JwkSet;
+
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A JWKS locator for tests that counts how many times the JWKS is loaded and can hold loads until released
+ */
+public class BlockingJwksLocator extends AbstractJwksLocator {
+
+    private final JwkSet jwks;
+    private final CountDownLatch release;
+    private final AtomicInteger loads = new AtomicInteger(0);
+    private volatile boolean fail = false;
+
+    /**
+     * Creates a new locator
+     *
+     * @param jwks    JWKS to return
+     * @param release Latch that must be released before loads complete, or {@code null} to never block
+     */
+    public BlockingJwksLocator(JwkSet jwks, CountDownLatch release) {
+        super(KeySourceRegistry.httpClient());
+        this.jwks = jwks;
+        this.release = release;
+    }
+
+    @Override
+    protected URI getJwksURI() {
+        return URI.create("http://localhost/blocking/jwks.json");
+    }
+
+    @Override
+    protected JwkSet loadJwks(URI jwksSourceUri) {
+        this.loads.incrementAndGet();
+        if (this.release != null) {
+            try {
+                if (!this.release.await(10, TimeUnit.SECONDS)) {
+                    throw new InvalidKeyException("Load never released");
+                }
+            } catch (InterruptedException e) {
+                throw new InvalidKeyException("Interrupted");
+            }
+        }
+        if (this.fail) {
+            throw new InvalidKeyException("Failed to load JWKS");
+        }
+        return this.jwks;
+    }
+
+    /**
+     * Sets whether loads should fail
+     *
+     * @param fail Whether to fail
+     */
+    public void setFail(boolean fail) {
+        this.fail = fail;
+    }
+
+    /**
+     * Gets how many times the JWKS has been loaded
+     *
+     * @return Load count
+     */
+    public int getLoads() {
+        return this.loads.get();
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.jwks;
+
+import io.jsonwebtoken.security.JwkSet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.ee9.servlet.ServletHandler;
+import org.eclipse.jetty.ee9.servlet.ServletHolder;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A JWKS server that can be told to fail, or delay, requests, simulating an unreliable identity provider
+ */
+public class FaultInjectingJwksServer extends JwksServer {
+    private final Queue<Integer> failures = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger requests = new AtomicInteger(0);
+    private volatile int failAll = 0;
+    private volatile long delay = 0;
+
+    public FaultInjectingJwksServer(int port, JwkSet jwks) {
+        super(port, jwks);
+    }
+
+    @Override
+    protected void addJwksServlet(ServletHandler handler) {
+        ServletHolder holder = new ServletHolder();
+        holder.setServlet(new JwksServlet(this.jwks) {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                requests.incrementAndGet();
+                if (delay > 0) {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                Integer status = failures.poll();
+                if (status == null && failAll != 0) {
+                    status = failAll;
+                }
+                if (status != null) {
+                    resp.sendError(status);
+                    return;
+                }
+                super.doGet(req, resp);
+            }
+        });
+        handler.addServletWithMapping(holder, "/jwks.json");
+    }
+
+    /**
+     * Fails the next requests with the given HTTP status
+     *
+     * @param count  Number of requests to fail
+     * @param status HTTP status
+     */
+    public void failNext(int count, int status) {
+        for (int i = 0; i < count; i++) {
+            this.failures.add(status);
+        }
+    }
+
+    /**
+     * Fails all requests with the given HTTP status until {@link #heal()} is called
+     *
+     * @param status HTTP status
+     */
+    public void failAll(int status) {
+        this.failAll = status;
+    }
+
+    /**
+     * Delays all requests by the given duration until {@link #heal()} is called
+     *
+     * @param delay Delay
+     */
+    public void delay(Duration delay) {
+        this.delay = delay.toMillis();
+    }
+
+    /**
+     * Stops injecting any faults
+     */
+    public void heal() {
+        this.failures.clear();
+        this.failAll = 0;
+        this.delay = 0;
+    }
+
+    /**
+     * Gets how many JWKS requests have been received
+     *
+     * @return Request count
+     */
+    public int getRequests() {
+        return this.requests.get();
+    }
+
+    /**
+     * Resets the request count
+     */
+    public void resetRequests() {
+        this.requests.set(0);
+    }
+}
@@ -29,6 +29,7 @@ import org.eclipse.jetty.server.Server;
 import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * A minimalist server application that provides an {@value OidcVerificationProvider#WELL_KNOWN_OPENID_CONFIGURATION}
@@ -37,6 +38,7 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class OidcServer extends JwksServer {
     private final AtomicInteger counter = new AtomicInteger();
+    private volatile String advertisedJwksUrl = null;
 
     /**
      * Creates a new OpenID Connect discovery enabled test key server
@@ -117,6 +119,16 @@ public class OidcServer extends JwksServer {
         this.counter.set(0);
     }
 
+    /**
+     * Sets the JWKS URL advertised by the configuration discovery endpoints, allowing tests to simulate a provider
+     * changing its JWKS URL
+     *
+     * @param jwksUrl JWKS URL, or {@code null} to advertise this servers own JWKS URL
+     */
+    public void setAdvertisedJwksUrl(String jwksUrl) {
+        this.advertisedJwksUrl = jwksUrl;
+    }
+
     @Override
     public void start() throws Exception {
         if (this.server == null) {
@@ -144,7 +156,8 @@ public class OidcServer extends JwksServer {
 
     private void addConfigurationDiscoveryServlets(ServletHandler servletHandler) {
         ServletHolder holder = new ServletHolder();
-        holder.setServlet(new ConfigurationServlet(this.getUrl(), this.counter));
+        holder.setServlet(new ConfigurationServlet(
+                () -> this.advertisedJwksUrl != null ? this.advertisedJwksUrl : this.getUrl(), this.counter));
         servletHandler.addServletWithMapping(holder, OidcVerificationProvider.WELL_KNOWN_OPENID_CONFIGURATION);
         servletHandler.addServletWithMapping(holder, "/non-standard-configuration");
     }
@@ -157,11 +170,15 @@ public class OidcServer extends JwksServer {
     }
 
     protected static class ConfigurationServlet extends HttpServlet {
-        private final String jwksUri;
+        private final Supplier<String> jwksUri;
         private final AtomicInteger counter;
         private static final ObjectMapper JSON = new ObjectMapper();
 
         public ConfigurationServlet(String jwksUri, AtomicInteger attemptCounter) {
+            this(() -> jwksUri, attemptCounter);
+        }
+
+        public ConfigurationServlet(Supplier<String> jwksUri, AtomicInteger attemptCounter) {
             this.jwksUri = jwksUri;
             this.counter = attemptCounter;
         }
@@ -173,7 +190,7 @@ public class OidcServer extends JwksServer {
             resp.setContentType("application/json");
             resp.setStatus(HttpServletResponse.SC_OK);
             Map<String, Object> configuration =
-                    Map.of("jwks_uri", jwksUri, "issuer", "https://example.org", "userinfo_endpoint",
+                    Map.of("jwks_uri", jwksUri.get(), "issuer", "https://example.org", "userinfo_endpoint",
                            "https://example.org/userinfo", "foo", "bar");
             JSON.writeValue(resp.getWriter(), configuration);
         }
@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.jwks;
+
+import io.jsonwebtoken.security.JwkSet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.ee9.servlet.ServletHandler;
+import org.eclipse.jetty.ee9.servlet.ServletHolder;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A JWKS server that holds all requests until released, simulating a JWKS outage
+ */
+public class SlowJwksServer extends JwksServer {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger requests = new AtomicInteger(0);
+
+    public SlowJwksServer(int port, JwkSet jwks) {
+        super(port, jwks);
+    }
+
+    @Override
+    protected void addJwksServlet(ServletHandler handler) {
+        ServletHolder holder = new ServletHolder();
+        holder.setServlet(new JwksServlet(this.jwks) {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                requests.incrementAndGet();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.doGet(req, resp);
+            }
+        });
+        handler.addServletWithMapping(holder, "/jwks.json");
+    }
+
+    /**
+     * Releases all held, and future, requests
+     */
+    public void release() {
+        this.release.countDown();
+    }
+
+    /**
+     * Gets how many JWKS requests have been received
+     *
+     * @return Request count
+     */
+    public int getRequests() {
+        return this.requests.get();
+    }
+}
@@ -0,0 +1,340 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.jwks;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Jwk;
+import io.jsonwebtoken.security.JwkSet;
+import io.jsonwebtoken.security.Jwks;
+import io.telicent.servlet.auth.jwt.verification.SignedJwtVerifier;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+
+public class TestCachedJwksKeyLocator {
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool();
+
+    private final SecretKey key = Jwts.SIG.HS256.key().build();
+    private final Jwk<?> jwk = Jwks.builder().key(this.key).id("test-key").build();
+    private final JwkSet jwks = Jwks.set().add(this.jwk).build();
+
+    private final KeyPair keyPair = Jwts.SIG.RS256.keyPair().build();
+    private final JwkSet publicJwks =
+            Jwks.set().add(Jwks.builder().key(this.keyPair.getPublic()).id("public-key").build()).build();
+
+    private static Path tempSnapshot() throws IOException {
+        Path file = Files.createTempFile("jwks-snapshot", ".json");
+        Files.delete(file);
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    static JwksSnapshot awaitSnapshot(Path file, URI source, Predicate<JwksSnapshot> condition)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            JwksSnapshot snapshot = JwksSnapshot.read(file, source, null);
+            if (snapshot != null && condition.test(snapshot)) {
+                return snapshot;
+            }
+            Thread.sleep(10);
+        }
+        return null;
+    }
+
+    private String createToken(String keyId) {
+        return Jwts.builder().header().keyId(keyId).and().subject("test").signWith(this.key).compact();
+    }
+
+    @Test
+    public void givenEmptyCache_whenCheckingIfCached_thenFalse() {
+        // Given
+        CachedJwksKeyLocator locator =
+                new CachedJwksKeyLocator(new BlockingJwksLocator(this.jwks, null), Duration.ofMinutes(1));
+
+        // When and Then
+        Assert.assertFalse(locator.isCached("test-key"));
+        Assert.assertFalse(locator.isCached(null));
+    }
+
+    @Test
+    public void givenEmptyCache_whenRefreshingAsync_thenKeysCached() throws Exception {
+        // Given
+        BlockingJwksLocator source = new BlockingJwksLocator(this.jwks, null);
+        CachedJwksKeyLocator locator = new CachedJwksKeyLocator(source, Duration.ofMinutes(1));
+
+        // When
+        locator.refreshAsync(EXECUTOR).get(5, TimeUnit.SECONDS);
+
+        // Then
+        Assert.assertTrue(locator.isCached("test-key"));
+        Assert.assertEquals(source.getLoads(), 1);
+    }
+
+    @Test
+    public void givenSlowSource_whenRefreshingAsyncConcurrently_thenSingleLoad() throws Exception {
+        // Given
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingJwksLocator source = new BlockingJwksLocator(this.jwks, release);
+        CachedJwksKeyLocator locator = new CachedJwksKeyLocator(source, Duration.ofMinutes(1));
+
+        // When
+        CompletableFuture<Void> first = locator.refreshAsync(EXECUTOR);
+        CompletableFuture<Void> second = locator.refreshAsync(EXECUTOR);
+        Assert.assertFalse(first.isDone());
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+
+        // Then
+        Assert.assertSame(first, second);
+        Assert.assertEquals(source.getLoads(), 1);
+        Assert.assertTrue(locator.isCached("test-key"));
+    }
+
+    @Test
+    public void givenFailingSource_whenRefreshingAsync_thenFailsAndLaterRefreshRetries() throws Exception {
+        // Given
+        BlockingJwksLocator source = new BlockingJwksLocator(this.jwks, null);
+        source.setFail(true);
+        CachedJwksKeyLocator locator = new CachedJwksKeyLocator(source, Duration.ofMinutes(1));
+
+        // When
+        CompletableFuture<Void> failed = locator.refreshAsync(EXECUTOR);
+
+        // Then
+        Assert.assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        Assert.assertFalse(locator.isCached("test-key"));
+
+        // And
+        source.setFail(false);
+        locator.refreshAsync(EXECUTOR).get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(locator.isCached("test-key"));
+        Assert.assertEquals(source.getLoads(), 2);
+    }
+
+    @Test
+    public void givenRejectingExecutor_whenRefreshingAsync_thenFailsAndLaterRefreshRetries() throws Exception {
+        // Given
+        BlockingJwksLocator source = new BlockingJwksLocator(this.jwks, null);
+        CachedJwksKeyLocator locator = new CachedJwksKeyLocator(source, Duration.ofMinutes(1));
+
+        // When
+        CompletableFuture<Void> rejected = locator.refreshAsync(r -> {
+            throw new RejectedExecutionException("Shutting down");
+        });
+
+        // Then
+        Assert.assertTrue(rejected.isCompletedExceptionally());
+        locator.refreshAsync(EXECUTOR).get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(locator.isCached("test-key"));
+    }
+
+    @Test
+    public void givenUncachedKey_whenCheckingVerifier_thenKeyLoadRequiredUntilLoaded() throws Exception {
+        // Given
+        BlockingJwksLocator source = new BlockingJwksLocator(this.jwks, null);
+        CachedJwksKeyLocator locator = new CachedJwksKeyLocator(source, Duration.ofMinutes(1));
+        SignedJwtVerifier verifier = new SignedJwtVerifier(locator);
+        String jwt = createToken("test-key");
+
+        // When and Then
+        Assert.assertTrue(verifier.requiresKeyLoad(jwt));
+        verifier.loadKeys(jwt, EXECUTOR).get(5, TimeUnit.SECONDS);
+        Assert.assertFalse(verifier.requiresKeyLoad(jwt));
+        Assert.assertNotNull(verifier.verify(jwt));
+        Assert.assertEquals(source.getLoads(), 1);
+    }
+
+    @Test
+    public void givenTokenWithoutKeyId_whenCheckingVerifier_thenNoKeyLoadRequired() {
+        // Given
+        CachedJwksKeyLocator locator =
+                new CachedJwksKeyLocator(new BlockingJwksLocator(this.jwks, null), Duration.ofMinutes(1));
+        SignedJwtVerifier verifier = new SignedJwtVerifier(locator);
+
+        // When and Then
+        Assert.assertFalse(verifier.requiresKeyLoad(Jwts.builder().subject("test").signWith(this.key).compact()));
+        Assert.assertFalse(verifier.requiresKeyLoad("not-a-jwt"));
+    }
+
+    @Test
+    public void givenNonCachingVerifier_whenCheckingVerifier_thenNoKeyLoadRequired() {
+        // Given
+        SignedJwtVerifier verifier = new SignedJwtVerifier(this.key);
+        String jwt = createToken("test-key");
+
+        // When and Then
+        Assert.assertFalse(verifier.requiresKeyLoad(jwt));
+        Assert.assertTrue(verifier.loadKeys(jwt, EXECUTOR).isDone());
+    }
+
+    @Test
+    public void givenSnapshotFile_whenKeysLoaded_thenSnapshotPersisted() throws Exception {
+        // Given
+        Path file = tempSnapshot();
+        BlockingJwksLocator source = new BlockingJwksLocator(this.publicJwks, null);
+        CachedJwksKeyLocator locator =
+                CachedJwksKeyLocator.create(source, Duration.ofMinutes(1), file, Duration.ofMinutes(5));
+
+        // When
+        locator.refreshAsync(EXECUTOR).get(5, TimeUnit.SECONDS);
+
+        // Then
+        JwksSnapshot snapshot = awaitSnapshot(file, source.getSourceURI(), x -> true);
+        Assert.assertNotNull(snapshot);
+        Assert.assertEquals(snapshot.getJwks().getKeys().iterator().next().getId(), "public-key");
+        Assert.assertTrue(locator.toString().contains(file.toString()));
+    }
+
+    @Test
+    public void givenUnchangedKeys_whenRefreshing_thenSnapshotNotRewritten() throws Exception {
+        // Given
+        Path file = tempSnapshot();
+        BlockingJwksLocator source = new BlockingJwksLocator(this.publicJwks, null);
+        CachedJwksKeyLocator locator =
+                CachedJwksKeyLocator.create(source, Duration.ofMinutes(1), file, Duration.ofMinutes(5));
+        locator.refreshAsync(EXECUTOR).get(5, TimeUnit.SECONDS);
+        JwksSnapshot first = awaitSnapshot(file, source.getSourceURI(), x -> true);
+        Assert.assertNotNull(first);
+        Thread.sleep(20);
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            locator.refreshAsync(EXECUTOR).get(5, TimeUnit.SECONDS);
+        }
+        Thread.sleep(200);
+
+        // Then
+        Assert.assertEquals(source.getLoads(), 4);
+        JwksSnapshot current = JwksSnapshot.read(file, source.getSourceURI(), null);
+        Assert.assertNotNull(current);
+        Assert.assertEquals(current.getCreatedAt(), first.getCreatedAt());
+    }
+
+    @Test
+    public void givenChangedKeys_whenRefreshing_thenSnapshotRewritten() throws Exception {
+        // Given
+        Path file = tempSnapshot();
+        KeyPair rotated = Jwts.SIG.RS256.keyPair().build();
+        JwkSet rotatedJwks = Jwks.set().add(Jwks.builder().key(rotated.getPublic()).id("rotated-key").build()).build();
+        BlockingJwksLocator original = new BlockingJwksLocator(this.publicJwks, null);
+        JwksSnapshot.create(original.getSourceURI(), this.publicJwks, null).write(file);
+        BlockingJwksLocator source = new BlockingJwksLocator(rotatedJwks, null);
+
+        // When
+        CachedJwksKeyLocator locator =
+                CachedJwksKeyLocator.create(source, Duration.ofMinutes(1), file, Duration.ofMinutes(5));
+        locator.refreshAsync(EXECUTOR).get(5, TimeUnit.SECONDS);
+
+        // Then
+        JwksSnapshot snapshot = awaitSnapshot(file, source.getSourceURI(),
+                                              x -> x.getJwks().getKeys().iterator().next().getId().equals(
+                                                      "rotated-key"));
+        Assert.assertNotNull(snapshot);
+    }
+
+    @Test
+    public void givenValidSnapshot_whenCreatingLocator_thenKeysAvailableImmediatelyAndRevalidatedInBackground() throws
+            Exception {
+        // Given
+        Path file = tempSnapshot();
+        BlockingJwksLocator original = new BlockingJwksLocator(this.publicJwks, null);
+        JwksSnapshot.create(original.getSourceURI(), this.publicJwks, null).write(file);
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingJwksLocator source = new BlockingJwksLocator(this.publicJwks, release);
+
+        try {
+            // When
+            CachedJwksKeyLocator locator =
+                    CachedJwksKeyLocator.create(source, Duration.ofMinutes(1), file, Duration.ofMinutes(5));
+            SignedJwtVerifier verifier = new SignedJwtVerifier(locator);
+
+            // Then
+            Assert.assertTrue(locator.isCached("public-key"));
+            String token = Jwts.builder()
+                               .header()
+                               .keyId("public-key")
+                               .and()
+                               .subject("test")
+                               .signWith(this.keyPair.getPrivate())
+                               .compact();
+            Assert.assertEquals(verifier.verify(token).getPayload().getSubject(), "test");
+
+            // And
+            long deadline = System.currentTimeMillis() + 5000;
+            while (source.getLoads() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(source.getLoads(), 1);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void givenSnapshotAndFailingSource_whenCreatingLocator_thenSnapshotKeysRetained() throws Exception {
+        // Given
+        Path file = tempSnapshot();
+        BlockingJwksLocator source = new BlockingJwksLocator(this.publicJwks, null);
+        JwksSnapshot.create(source.getSourceURI(), this.publicJwks, null).write(file);
+        source.setFail(true);
+
+        // When
+        CachedJwksKeyLocator locator =
+                CachedJwksKeyLocator.create(source, Duration.ofMinutes(1), file, Duration.ofMinutes(5));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (source.getLoads() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // Then
+        Assert.assertTrue(locator.isCached("public-key"));
+    }
+
+    @Test
+    public void givenStaleSnapshot_whenCreatingLocator_thenSnapshotIgnored() throws Exception {
+        // Given
+        Path file = tempSnapshot();
+        BlockingJwksLocator source = new BlockingJwksLocator(this.publicJwks, null);
+        JwksSnapshot.create(source.getSourceURI(), this.publicJwks, null).write(file);
+        Thread.sleep(50);
+
+        // When
+        CachedJwksKeyLocator locator =
+                CachedJwksKeyLocator.create(source, Duration.ofMinutes(1), file, Duration.ofMillis(10));
+
+        // Then
+        Assert.assertFalse(locator.isCached("public-key"));
+        Assert.assertEquals(source.getLoads(), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".*cannot be negative")
+    public void givenNegativeSnapshotMaxAge_whenCreatingLocator_thenIllegalArgument() throws IOException {
+        // Given, When and Then
+        CachedJwksKeyLocator.create(new BlockingJwksLocator(this.jwks, null), Duration.ofMinutes(1), tempSnapshot(),
+                                    Duration.ofMinutes(-1));
+    }
+}
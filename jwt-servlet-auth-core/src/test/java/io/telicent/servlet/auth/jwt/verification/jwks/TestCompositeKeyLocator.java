@@ -0,0 +1,286 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.jwks;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.InvalidKeyException;
+import io.jsonwebtoken.security.JwkSet;
+import io.jsonwebtoken.security.Jwks;
+import io.jsonwebtoken.security.SignatureException;
+import io.telicent.servlet.auth.jwt.verification.SignedJwtVerifier;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
+import java.net.URI;
+import java.security.Key;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestCompositeKeyLocator {
+
+    private final SecretKey local = Jwts.SIG.HS256.key().build();
+    private final SecretKey oldKey = Jwts.SIG.HS256.key().build();
+    private final SecretKey newKey = Jwts.SIG.HS256.key().build();
+
+    private static JwkSet jwks(String keyId, SecretKey key) {
+        return Jwks.set().add(Jwks.builder().key(key).id(keyId).build()).build();
+    }
+
+    private static String token(String keyId, Key key) {
+        return Jwts.builder().header().keyId(keyId).and().subject("test").signWith(key).compact();
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullStaticKeys_whenCreating_thenNPE() {
+        new CompositeKeyLocator(null, null, List.of(), Duration.ZERO);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullJwksSources_whenCreating_thenNPE() {
+        new CompositeKeyLocator(Map.of(), this.local, null, Duration.ZERO);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenNegativeMinRefreshInterval_whenCreating_thenIllegalArgument() {
+        new CompositeKeyLocator(Map.of(), this.local, List.of(), Duration.ZERO, Duration.ofSeconds(-1));
+    }
+
+    @Test
+    public void givenOnlyStaticKeys_whenVerifying_thenNoSourcesRefreshed() {
+        // Given
+        CompositeKeyLocator locator =
+                new CompositeKeyLocator(Map.of("local", this.local), null, List.of(), Duration.ZERO);
+        SignedJwtVerifier verifier = new SignedJwtVerifier(locator);
+
+        // When and Then
+        Assert.assertNotNull(verifier.verify(token("local", this.local)));
+        Assert.assertThrows(InvalidKeyException.class, () -> verifier.verify(token("other", this.local)));
+        Assert.assertEquals(locator.getKeyIds(), Set.of("local"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenNoSources_whenCreating_thenIllegalArgument() {
+        new CompositeKeyLocator(Map.of(), null, List.of(), Duration.ZERO);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenNegativeRefreshInterval_whenCreating_thenIllegalArgument() {
+        new CompositeKeyLocator(Map.of("local", this.local), null, List.of(), Duration.ofSeconds(-1));
+    }
+
+    @Test
+    public void givenMultipleSources_whenVerifying_thenTokensFromAllSourcesVerifiedWithSingleLoadPerSource() {
+        // Given
+        BlockingJwksLocator oldSource = new BlockingJwksLocator(jwks("old", this.oldKey), null);
+        BlockingJwksLocator newSource = new BlockingJwksLocator(jwks("new", this.newKey), null);
+        CompositeKeyLocator locator =
+                new CompositeKeyLocator(Map.of("local", this.local), this.local, List.of(oldSource, newSource),
+                                        Duration.ofMinutes(5));
+        SignedJwtVerifier verifier = new SignedJwtVerifier(locator);
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            Assert.assertNotNull(verifier.verify(token("old", this.oldKey)));
+            Assert.assertNotNull(verifier.verify(token("new", this.newKey)));
+            Assert.assertNotNull(verifier.verify(token("local", this.local)));
+            Assert.assertNotNull(verifier.verify(Jwts.builder().subject("test").signWith(this.local).compact()));
+        }
+
+        // Then
+        Assert.assertEquals(oldSource.getLoads(), 1);
+        Assert.assertEquals(newSource.getLoads(), 1);
+        Assert.assertEquals(locator.getKeyIds(), Set.of("local", "old", "new"));
+    }
+
+    @Test(expectedExceptions = InvalidKeyException.class, expectedExceptionsMessageRegExp = ".*valid kid.*")
+    public void givenNoDefaultKey_whenVerifyingTokenWithoutKeyId_thenRejected() {
+        // Given
+        CompositeKeyLocator locator =
+                new CompositeKeyLocator(Map.of("local", this.local), null, List.of(), Duration.ofMinutes(5));
+
+        // When and Then
+        new SignedJwtVerifier(locator).verify(Jwts.builder().subject("test").signWith(this.local).compact());
+    }
+
+    @Test(expectedExceptions = SignatureException.class)
+    public void givenTokenSignedByWrongKey_whenVerifying_thenSingleSignatureCheckFails() {
+        // Given
+        BlockingJwksLocator oldSource = new BlockingJwksLocator(jwks("old", this.oldKey), null);
+        CompositeKeyLocator locator =
+                new CompositeKeyLocator(Map.of(), null, List.of(oldSource), Duration.ofMinutes(5));
+
+        // When and Then
+        new SignedJwtVerifier(locator).verify(token("old", this.newKey));
+    }
+
+    @Test
+    public void givenUnknownKeyIds_whenVerifying_thenSourcesNotReloadedWithinMinimumInterval() {
+        // Given
+        BlockingJwksLocator oldSource = new BlockingJwksLocator(jwks("old", this.oldKey), null);
+        CompositeKeyLocator locator =
+                new CompositeKeyLocator(Map.of(), null, List.of(oldSource), Duration.ofMinutes(5),
+                                        Duration.ofMinutes(1));
+        SignedJwtVerifier verifier = new SignedJwtVerifier(locator);
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            Assert.assertThrows(InvalidKeyException.class, () -> verifier.verify(token("unknown", this.oldKey)));
+        }
+
+        // Then
+        Assert.assertEquals(oldSource.getLoads(), 1);
+        Assert.assertNotNull(verifier.verify(token("old", this.oldKey)));
+        Assert.assertEquals(oldSource.getLoads(), 1);
+    }
+
+    @Test
+    public void givenFailingSource_whenVerifying_thenOtherSourcesStillUsable() {
+        // Given
+        BlockingJwksLocator oldSource = new BlockingJwksLocator(jwks("old", this.oldKey), null);
+        BlockingJwksLocator newSource = new BlockingJwksLocator(jwks("new", this.newKey), null);
+        oldSource.setFail(true);
+        CompositeKeyLocator locator =
+                new CompositeKeyLocator(Map.of(), null, List.of(oldSource, newSource), Duration.ofMinutes(5),
+                                        Duration.ZERO);
+        SignedJwtVerifier verifier = new SignedJwtVerifier(locator);
+
+        // When and Then
+        Assert.assertNotNull(verifier.verify(token("new", this.newKey)));
+        Assert.assertThrows(InvalidKeyException.class, () -> verifier.verify(token("old", this.oldKey)));
+
+        // And
+        oldSource.setFail(false);
+        Assert.assertNotNull(verifier.verify(token("old", this.oldKey)));
+    }
+
+    @Test
+    public void givenPreviouslyLoadedSourceThatFails_whenRefreshing_thenPreviousKeysRetained() {
+        // Given
+        BlockingJwksLocator oldSource = new BlockingJwksLocator(jwks("old", this.oldKey), null);
+        CompositeKeyLocator locator =
+                new CompositeKeyLocator(Map.of(), null, List.of(oldSource), Duration.ofMinutes(5));
+        locator.refresh();
+        oldSource.setFail(true);
+
+        // When
+        locator.refresh();
+
+        // Then
+        Assert.assertEquals(oldSource.getLoads(), 2);
+        Assert.assertNotNull(new SignedJwtVerifier(locator).verify(token("old", this.oldKey)));
+    }
+
+    @Test
+    public void givenStaleSource_whenVerifying_thenRefreshedInBackground() throws InterruptedException {
+        // Given
+        BlockingJwksLocator oldSource = new BlockingJwksLocator(jwks("old", this.oldKey), null);
+        CompositeKeyLocator locator =
+                new CompositeKeyLocator(Map.of(), null, List.of(oldSource), Duration.ZERO, Duration.ofMinutes(1));
+        SignedJwtVerifier verifier = new SignedJwtVerifier(locator);
+        verifier.verify(token("old", this.oldKey));
+
+        // When
+        verifier.verify(token("old", this.oldKey));
+
+        // Then
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (oldSource.getLoads() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(oldSource.getLoads() >= 2);
+    }
+
+    @Test
+    public void givenDuplicateKeyIds_whenVerifying_thenHigherPrecedenceSourceWins() {
+        // Given
+        BlockingJwksLocator oldSource = new BlockingJwksLocator(jwks("shared", this.oldKey), null);
+        BlockingJwksLocator newSource = new BlockingJwksLocator(jwks("shared", this.newKey), null);
+        CompositeKeyLocator locator =
+                new CompositeKeyLocator(Map.of(), null, List.of(oldSource, newSource), Duration.ofMinutes(5));
+        SignedJwtVerifier verifier = new SignedJwtVerifier(locator);
+
+        // When and Then
+        Assert.assertNotNull(verifier.verify(token("shared", this.oldKey)));
+        Assert.assertThrows(SignatureException.class, () -> verifier.verify(token("shared", this.newKey)));
+        Assert.assertTrue(locator.toString().contains("BlockingJwksLocator"));
+    }
+
+    @Test
+    public void givenTwoSourcesRefreshingConcurrently_whenRefreshed_thenIndexHasLatestKeysOfBothSources()
+            throws InterruptedException {
+        // Given
+        SwappableJwksLocator first = new SwappableJwksLocator();
+        SwappableJwksLocator second = new SwappableJwksLocator();
+        CompositeKeyLocator locator =
+                new CompositeKeyLocator(Map.of("local", this.local), null, List.of(first, second),
+                                        Duration.ofMinutes(5));
+
+        for (int i = 0; i < 50; i++) {
+            first.jwks = jwks("first-" + i, this.oldKey);
+            second.jwks = jwks("second-" + i, this.newKey);
+            CountDownLatch bothLoading = new CountDownLatch(2);
+            first.bothLoading = bothLoading;
+            second.bothLoading = bothLoading;
+
+            // When
+            // Each caller coalesces onto the other's in-flight refresh so the two sources load, and then rebuild the
+            // index, concurrently on separate threads
+            Thread a = Thread.ofVirtual().start(locator::refresh);
+            Thread b = Thread.ofVirtual().start(locator::refresh);
+            a.join();
+            b.join();
+
+            // Then
+            Assert.assertEquals(locator.getKeyIds(), Set.of("local", "first-" + i, "second-" + i));
+        }
+    }
+
+    /**
+     * A JWKS locator whose keys can be swapped, and whose loads wait until another source is also loading
+     */
+    private static final class SwappableJwksLocator extends AbstractJwksLocator {
+        private volatile CountDownLatch bothLoading;
+        private volatile JwkSet jwks;
+
+        private SwappableJwksLocator() {
+            super(KeySourceRegistry.httpClient());
+        }
+
+        @Override
+        protected URI getJwksURI() {
+            return URI.create("http://localhost/swappable/jwks.json");
+        }
+
+        @Override
+        protected JwkSet loadJwks(URI jwksSourceUri) {
+            // Any further loads after both sources have loaded once proceed immediately
+            this.bothLoading.countDown();
+            try {
+                if (!this.bothLoading.await(10, TimeUnit.SECONDS)) {
+                    throw new InvalidKeyException("Sources never loaded concurrently");
+                }
+            } catch (InterruptedException e) {
+                throw new InvalidKeyException("Interrupted");
+            }
+            return this.jwks;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.jwks;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Jwk;
+import io.jsonwebtoken.security.JwkSet;
+import io.jsonwebtoken.security.Jwks;
+import io.jsonwebtoken.security.PublicJwk;
+import io.telicent.servlet.auth.jwt.configuration.oidc.OidcConfiguration;
+import io.telicent.servlet.auth.jwt.verification.TestKeyUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class TestJwksSnapshot {
+
+    private static final URI SOURCE = URI.create("https://example.org/jwks.json");
+
+    private final JwkSet jwks = TestKeyUtils.buildComplexJwks();
+
+    private static Path tempSnapshot() throws IOException {
+        Path file = Files.createTempFile("jwks-snapshot", ".json");
+        Files.delete(file);
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    private Set<String> publicKeyIds() {
+        return this.jwks.getKeys()
+                        .stream()
+                        .filter(k -> k instanceof PublicJwk<?>)
+                        .map(Jwk::getId)
+                        .collect(Collectors.toSet());
+    }
+
+    @Test
+    public void givenNoSnapshotFile_whenReading_thenNull() throws IOException {
+        // Given
+        Path file = tempSnapshot();
+
+        // When and Then
+        Assert.assertNull(JwksSnapshot.read(file, SOURCE, Duration.ofMinutes(5)));
+        Assert.assertNull(JwksSnapshot.read(null, SOURCE, Duration.ofMinutes(5)));
+    }
+
+    @Test
+    public void givenSnapshot_whenWritingAndReading_thenPublicKeysAndDiscoveryRoundTrip() throws IOException {
+        // Given
+        Path file = tempSnapshot();
+        OidcConfiguration discovery = new OidcConfiguration();
+        discovery.setJwksUri(SOURCE.toString());
+        discovery.setIssuer("https://example.org");
+
+        // When
+        JwksSnapshot.create(SOURCE, this.jwks, discovery).write(file);
+        JwksSnapshot snapshot = JwksSnapshot.read(file, SOURCE, Duration.ofMinutes(5));
+
+        // Then
+        Assert.assertNotNull(snapshot);
+        Assert.assertEquals(snapshot.getSource(), SOURCE);
+        Assert.assertEquals(snapshot.getJwks().getKeys().stream().map(Jwk::getId).collect(Collectors.toSet()),
+                            publicKeyIds());
+        Assert.assertEquals(snapshot.getDiscovery().getJwksUri(), SOURCE.toString());
+        Assert.assertEquals(snapshot.getDiscovery().getIssuer(), "https://example.org");
+    }
+
+    @Test
+    public void givenJwksWithSecretKey_whenWritingSnapshot_thenSecretNotPersisted() throws IOException {
+        // Given
+        Path file = tempSnapshot();
+        Jwk<?> secret = Jwks.builder().key(Jwts.SIG.HS256.key().build()).id("secret").build();
+        JwkSet secretJwks = Jwks.set().add(secret).build();
+
+        // When
+        JwksSnapshot snapshot = JwksSnapshot.create(SOURCE, secretJwks, null);
+        snapshot.write(file);
+
+        // Then
+        Assert.assertTrue(snapshot.isEmpty());
+        Assert.assertFalse(Files.readString(file).contains("secret"));
+        Assert.assertNull(JwksSnapshot.read(file, SOURCE, null));
+    }
+
+    @Test
+    public void givenSnapshotWithoutDiscovery_whenReading_thenNoDiscovery() throws IOException {
+        // Given
+        Path file = tempSnapshot();
+        JwksSnapshot.create(SOURCE, this.jwks, null).write(file);
+
+        // When
+        JwksSnapshot snapshot = JwksSnapshot.read(file, SOURCE, null);
+
+        // Then
+        Assert.assertNotNull(snapshot);
+        Assert.assertFalse(snapshot.isEmpty());
+        Assert.assertNull(snapshot.getDiscovery());
+        Assert.assertTrue(snapshot.toString().contains(SOURCE.toString()));
+    }
+
+    @Test
+    public void givenTamperedSnapshot_whenReading_thenRejected() throws IOException {
+        // Given
+        Path file = tempSnapshot();
+        JwksSnapshot.create(SOURCE, this.jwks, null).write(file);
+        String contents = Files.readString(file);
+        String keyId = publicKeyIds().iterator().next();
+        Files.writeString(file, contents.replace(keyId, "tampered"), StandardCharsets.UTF_8);
+
+        // When and Then
+        Assert.assertNull(JwksSnapshot.read(file, SOURCE, Duration.ofMinutes(5)));
+    }
+
+    @Test
+    public void givenTruncatedSnapshot_whenReading_thenRejected() throws IOException {
+        // Given
+        Path file = tempSnapshot();
+        JwksSnapshot.create(SOURCE, this.jwks, null).write(file);
+        String contents = Files.readString(file);
+        Files.writeString(file, contents.substring(0, contents.length() / 2), StandardCharsets.UTF_8);
+
+        // When and Then
+        Assert.assertNull(JwksSnapshot.read(file, SOURCE, Duration.ofMinutes(5)));
+    }
+
+    @Test
+    public void givenSnapshotWithUnsupportedVersion_whenReading_thenRejected() throws IOException {
+        // Given
+        Path file = tempSnapshot();
+        JwksSnapshot.create(SOURCE, this.jwks, null).write(file);
+        String contents = Files.readString(file);
+        Files.writeString(file, contents.replace("\"version\":1", "\"version\":99"), StandardCharsets.UTF_8);
+
+        // When and Then
+        Assert.assertNull(JwksSnapshot.read(file, SOURCE, Duration.ofMinutes(5)));
+    }
+
+    @Test
+    public void givenSnapshotForDifferentSource_whenReading_thenRejected() throws IOException {
+        // Given
+        Path file = tempSnapshot();
+        JwksSnapshot.create(SOURCE, this.jwks, null).write(file);
+
+        // When and Then
+        Assert.assertNull(JwksSnapshot.read(file, URI.create("https://other.org/jwks.json"), Duration.ofMinutes(5)));
+    }
+
+    @Test
+    public void givenStaleSnapshot_whenReading_thenRejected() throws Exception {
+        // Given
+        Path file = tempSnapshot();
+        JwksSnapshot.create(SOURCE, this.jwks, null).write(file);
+        Thread.sleep(50);
+
+        // When and Then
+        Assert.assertNull(JwksSnapshot.read(file, SOURCE, Duration.ofMillis(10)));
+        Assert.assertNotNull(JwksSnapshot.read(file, SOURCE, Duration.ofMinutes(5)));
+    }
+}
@@ -0,0 +1,287 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.jwks;
+
+import io.telicent.servlet.auth.jwt.verification.KeyFetcher;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class TestKeySourceRegistry {
+
+    private static final URI JWKS_URI = URI.create("https://example.org/jwks.json");
+    private static final URI DISCOVERY_URI = URI.create("https://example.org/.well-known/openid-configuration");
+    private static final Duration CACHE_KEYS_FOR = Duration.ofMinutes(15);
+    private static final KeyFetcher.Settings FETCH = KeyFetcher.Settings.DEFAULT;
+
+    @BeforeMethod
+    @AfterMethod
+    public void cleanup() {
+        KeySourceRegistry.reset();
+    }
+
+    @Test
+    public void givenSameConfiguration_whenAcquiringJwks_thenSameKeySourceShared() {
+        // Given
+        try (KeySourceRegistry.Lease<CachedJwksKeyLocator> first = KeySourceRegistry.acquireJwks(JWKS_URI,
+                                                                                                  CACHE_KEYS_FOR,
+                                                                                                  null, null, FETCH)) {
+            // When
+            try (KeySourceRegistry.Lease<CachedJwksKeyLocator> second = KeySourceRegistry.acquireJwks(
+                    URI.create("HTTPS://Example.ORG:443/jwks.json#ignored"), CACHE_KEYS_FOR, null, null, FETCH)) {
+
+                // Then
+                Assert.assertSame(second.get(), first.get());
+                Assert.assertEquals(KeySourceRegistry.size(), 1);
+                Assert.assertSame(first.get().fetcher.getClient(), KeySourceRegistry.httpClient());
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void givenConnectTimeouts_whenGettingHttpClients_thenRegistryIsSingleOwnerOfClients() {
+        // When
+        HttpClient defaultClient = KeySourceRegistry.httpClient();
+        HttpClient shortTimeout = KeySourceRegistry.httpClient(Duration.ofMillis(123));
+
+        // Then
+        Assert.assertSame(KeySourceRegistry.httpClient(Duration.ofMillis(123)), shortTimeout);
+        Assert.assertNotSame(shortTimeout, defaultClient);
+        Assert.assertSame(AbstractJwksLocator.createDefaultClient(), defaultClient);
+        Assert.assertSame(new UrlJwksKeyLocator(JWKS_URI).client, defaultClient);
+    }
+
+    @Test
+    public void givenDifferentConfiguration_whenAcquiring_thenSeparateKeySources() {
+        // Given and When
+        try (KeySourceRegistry.Lease<CachedJwksKeyLocator> first = KeySourceRegistry.acquireJwks(JWKS_URI,
+                                                                                                  CACHE_KEYS_FOR,
+                                                                                                  null, null, FETCH);
+             KeySourceRegistry.Lease<CachedJwksKeyLocator> second = KeySourceRegistry.acquireJwks(JWKS_URI,
+                                                                                                   Duration.ofMinutes(
+                                                                                                           5), null,
+                                                                                                   null, FETCH);
+             KeySourceRegistry.Lease<CachedJwksKeyLocator> third = KeySourceRegistry.acquireOidc(DISCOVERY_URI, null,
+                                                                                                  null,
+                                                                                                  CACHE_KEYS_FOR,
+                                                                                                  null, null, FETCH)) {
+            // Then
+            Assert.assertNotSame(second.get(), first.get());
+            Assert.assertNotSame(third.get(), first.get());
+            Assert.assertEquals(KeySourceRegistry.size(), 3);
+        }
+
+        // And
+        Assert.assertEquals(KeySourceRegistry.size(), 0);
+    }
+
+    @Test
+    public void givenDifferentFetchSettings_whenAcquiringJwks_thenSeparateKeySources() {
+        // Given
+        KeyFetcher.Settings other =
+                new KeyFetcher.Settings(Duration.ofSeconds(1), Duration.ofSeconds(2), 1, Duration.ZERO,
+                                        Duration.ZERO, 1, Duration.ofSeconds(5), 1024, 10);
+
+        // When
+        try (KeySourceRegistry.Lease<CachedJwksKeyLocator> first = KeySourceRegistry.acquireJwks(JWKS_URI,
+                                                                                                  CACHE_KEYS_FOR,
+                                                                                                  null, null, FETCH);
+             KeySourceRegistry.Lease<CachedJwksKeyLocator> second = KeySourceRegistry.acquireJwks(JWKS_URI,
+                                                                                                   CACHE_KEYS_FOR,
+                                                                                                   null, null,
+                                                                                                   other)) {
+            // Then
+            Assert.assertNotSame(second.get(), first.get());
+            Assert.assertSame(second.get().fetcher.getSettings(), other);
+            Assert.assertNotSame(second.get().fetcher.getClient(), first.get().fetcher.getClient());
+        }
+    }
+
+    @Test
+    public void givenMultipleLeases_whenReleasing_thenKeySourceDiscardedOnlyOnceAllReleased() {
+        // Given
+        KeySourceRegistry.Lease<CachedJwksKeyLocator> first =
+                KeySourceRegistry.acquireJwks(JWKS_URI, CACHE_KEYS_FOR, null, null, FETCH);
+        KeySourceRegistry.Lease<CachedJwksKeyLocator> second =
+                KeySourceRegistry.acquireJwks(JWKS_URI, CACHE_KEYS_FOR, null, null, FETCH);
+
+        // When
+        first.close();
+        first.close();
+
+        // Then
+        Assert.assertTrue(first.isReleased());
+        Assert.assertFalse(second.isReleased());
+        Assert.assertEquals(KeySourceRegistry.size(), 1);
+
+        // And
+        second.close();
+        Assert.assertEquals(KeySourceRegistry.size(), 0);
+        try (KeySourceRegistry.Lease<CachedJwksKeyLocator> third = KeySourceRegistry.acquireJwks(JWKS_URI,
+                                                                                                  CACHE_KEYS_FOR,
+                                                                                                  null, null, FETCH)) {
+            Assert.assertNotSame(third.get(), first.get());
+        }
+    }
+
+    @Test
+    public void givenReset_whenReleasingOldLease_thenNewKeySourceUnaffected() {
+        // Given
+        KeySourceRegistry.Lease<CachedJwksKeyLocator> old =
+                KeySourceRegistry.acquireJwks(JWKS_URI, CACHE_KEYS_FOR, null, null, FETCH);
+        KeySourceRegistry.reset();
+        KeySourceRegistry.Lease<CachedJwksKeyLocator> current =
+                KeySourceRegistry.acquireJwks(JWKS_URI, CACHE_KEYS_FOR, null, null, FETCH);
+
+        // When
+        old.close();
+
+        // Then
+        Assert.assertNotSame(current.get(), old.get());
+        Assert.assertEquals(KeySourceRegistry.size(), 1);
+        current.close();
+    }
+
+    private static CachedJwksKeyLocator jwksLocator() {
+        return new CachedJwksKeyLocator(JWKS_URI, CACHE_KEYS_FOR);
+    }
+
+    @Test
+    public void givenSlowKeySourceBuild_whenAcquiringOtherKeySources_thenNotBlocked() throws Exception {
+        // Given
+        KeySourceRegistry.SourceKey slow = new KeySourceRegistry.SourceKey("test", JWKS_URI, List.of("slow"));
+        CountDownLatch building = new CountDownLatch(1), proceed = new CountDownLatch(1);
+        AtomicInteger builds = new AtomicInteger(0);
+        Supplier<CachedJwksKeyLocator> factory = () -> {
+            builds.incrementAndGet();
+            building.countDown();
+            try {
+                proceed.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return jwksLocator();
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<KeySourceRegistry.Lease<CachedJwksKeyLocator>> first =
+                    executor.submit(() -> KeySourceRegistry.acquire(slow, factory));
+            Assert.assertTrue(building.await(5, TimeUnit.SECONDS));
+            Future<KeySourceRegistry.Lease<CachedJwksKeyLocator>> second =
+                    executor.submit(() -> KeySourceRegistry.acquire(slow, factory));
+
+            // When
+            try (KeySourceRegistry.Lease<CachedJwksKeyLocator> other = KeySourceRegistry.acquireJwks(JWKS_URI,
+                                                                                                      CACHE_KEYS_FOR,
+                                                                                                      null, null,
+                                                                                                      FETCH)) {
+                // Then
+                Assert.assertNotNull(other.get());
+                Assert.assertFalse(first.isDone());
+                Assert.assertFalse(second.isDone());
+            }
+
+            // And
+            proceed.countDown();
+            try (KeySourceRegistry.Lease<CachedJwksKeyLocator> firstLease = first.get(5, TimeUnit.SECONDS);
+                 KeySourceRegistry.Lease<CachedJwksKeyLocator> secondLease = second.get(5, TimeUnit.SECONDS)) {
+                Assert.assertSame(secondLease.get(), firstLease.get());
+                Assert.assertEquals(builds.get(), 1);
+            }
+            Assert.assertEquals(KeySourceRegistry.size(), 0);
+        } finally {
+            proceed.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenFailingKeySourceBuild_whenAcquiring_thenFailsAndLaterAcquireBuildsAgain() {
+        // Given
+        KeySourceRegistry.SourceKey key = new KeySourceRegistry.SourceKey("test", JWKS_URI, List.of("failing"));
+
+        // When
+        Assert.expectThrows(IllegalStateException.class, () -> KeySourceRegistry.acquire(key, () -> {
+            throw new IllegalStateException("Failed");
+        }));
+
+        // Then
+        Assert.assertEquals(KeySourceRegistry.size(), 0);
+        try (KeySourceRegistry.Lease<CachedJwksKeyLocator> lease =
+                     KeySourceRegistry.acquire(key, TestKeySourceRegistry::jwksLocator)) {
+            Assert.assertNotNull(lease.get());
+            Assert.assertEquals(KeySourceRegistry.size(), 1);
+        }
+    }
+
+    @Test
+    public void givenUnreachableOwner_whenGarbageCollected_thenLeaseReleased() throws InterruptedException {
+        // Given
+        KeySourceRegistry.Lease<CachedJwksKeyLocator> lease =
+                KeySourceRegistry.acquireJwks(JWKS_URI, CACHE_KEYS_FOR, null, null, FETCH);
+        KeySourceRegistry.releaseWhenUnreachable(new Object(), lease);
+
+        // When
+        for (int i = 0; i < 50 && !lease.isReleased(); i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+
+        // Then
+        Assert.assertTrue(lease.isReleased());
+        Assert.assertEquals(KeySourceRegistry.size(), 0);
+    }
+
+    @Test
+    public void givenUnreachableOwner_whenGarbageCollected_thenResourceClosed() throws InterruptedException {
+        // Given
+        AtomicBoolean closed = new AtomicBoolean(false);
+        KeySourceRegistry.closeWhenUnreachable(new Object(), () -> closed.set(true));
+
+        // When
+        for (int i = 0; i < 50 && !closed.get(); i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+
+        // Then
+        Assert.assertTrue(closed.get());
+    }
+
+    @Test
+    public void givenEquivalentUris_whenNormalising_thenSame() {
+        // When and Then
+        Assert.assertEquals(KeySourceRegistry.normalise(URI.create("HTTP://Example.org:80")),
+                            URI.create("http://example.org/"));
+        Assert.assertEquals(KeySourceRegistry.normalise(URI.create("https://example.org/a/../jwks.json?x=1#frag")),
+                            URI.create("https://example.org/jwks.json?x=1"));
+        Assert.assertEquals(KeySourceRegistry.normalise(URI.create("https://example.org:8443/jwks.json")),
+                            URI.create("https://example.org:8443/jwks.json"));
+        Assert.assertEquals(KeySourceRegistry.normalise(URI.create("file:///tmp/jwks.json")),
+                            URI.create("file:///tmp/jwks.json"));
+    }
+}
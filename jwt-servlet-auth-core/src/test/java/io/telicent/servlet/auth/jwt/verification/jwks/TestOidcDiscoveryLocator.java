@@ -19,6 +19,7 @@ import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.security.InvalidKeyException;
 import io.jsonwebtoken.security.Jwk;
 import io.jsonwebtoken.security.JwkSet;
+import io.jsonwebtoken.security.PublicJwk;
 import io.telicent.servlet.auth.jwt.configuration.oidc.OidcRegistry;
 import io.telicent.servlet.auth.jwt.verification.TestKeyUtils;
 import org.apache.commons.lang3.Strings;
@@ -30,8 +31,14 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Key;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.mockito.Mockito.when;
@@ -54,6 +61,7 @@ public class TestOidcDiscoveryLocator {
 
     @AfterMethod
     public void cleanup() {
+        this.server.setAdvertisedJwksUrl(null);
         this.server.resetDiscoveryRequestsCount();
         OidcRegistry.reset();
     }
@@ -171,4 +179,200 @@ public class TestOidcDiscoveryLocator {
         // Then
         locator.locate(header);
     }
+
+    private JwsHeader mockHeader() {
+        JwsHeader header = Mockito.mock(JwsHeader.class);
+        String keyId = this.jwks.getKeys().stream().findFirst().map(Jwk::getId).orElse(null);
+        Assert.assertNotNull(keyId);
+        when(header.getKeyId()).thenReturn(keyId);
+        return header;
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".*cannot be negative")
+    public void givenNegativeRediscoveryInterval_whenCreatingLocator_thenIllegalArgument() {
+        // Given, When and Then
+        new OidcDiscoveryLocator(URI.create(this.server.getConfigurationUrl()), null, Duration.ofSeconds(-3));
+    }
+
+    @Test
+    public void givenConcurrentFirstRequests_whenUsingLocator_thenOnlyOneDiscoveryRequestMade() throws Exception {
+        // Given
+        OidcDiscoveryLocator locator =
+                new OidcDiscoveryLocator(URI.create(this.server.getConfigurationUrl()), null, Duration.ZERO);
+        JwsHeader header = mockHeader();
+        int threads = 16;
+        CountDownLatch start = new CountDownLatch(1);
+
+        // When
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            List<Future<Key>> keys = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                keys.add(executor.submit(() -> {
+                    start.await();
+                    return locator.locate(header);
+                }));
+            }
+            start.countDown();
+
+            // Then
+            for (Future<Key> key : keys) {
+                Assert.assertNotNull(key.get(10, TimeUnit.SECONDS));
+            }
+        }
+        Assert.assertEquals(this.server.getDiscoveryRequestsCount(), 1);
+    }
+
+    @Test
+    public void givenDiscoveredLocator_whenProviderChangesJwksUrlAndRediscovering_thenNewJwksUrlUsed() throws
+            Exception {
+        // Given
+        OidcDiscoveryLocator locator =
+                new OidcDiscoveryLocator(URI.create(this.server.getConfigurationUrl()), null, Duration.ZERO);
+        JwsHeader header = mockHeader();
+        Assert.assertNotNull(locator.locate(header));
+        JwksServer other = new JwksServer(TEST_PORT.getAndIncrement(), this.jwks);
+        other.start();
+
+        try {
+            // When
+            this.server.setAdvertisedJwksUrl(other.getUrl());
+            locator.rediscover();
+
+            // Then
+            Assert.assertEquals(this.server.getDiscoveryRequestsCount(), 2);
+            Assert.assertTrue(Strings.CI.contains(locator.toString(), other.getUrl()));
+            Assert.assertNotNull(locator.locate(header));
+        } finally {
+            other.stop();
+        }
+    }
+
+    @Test
+    public void givenDiscoveredLocator_whenRediscoveryFails_thenPreviousJwksUrlRetained() throws Exception {
+        // Given
+        OidcDiscoveryLocator locator =
+                new OidcDiscoveryLocator(URI.create(this.server.getConfigurationUrl()), null, Duration.ZERO);
+        JwsHeader header = mockHeader();
+        Assert.assertNotNull(locator.locate(header));
+
+        // When
+        this.server.setAdvertisedJwksUrl("");
+        locator.rediscover();
+
+        // Then
+        Assert.assertTrue(Strings.CI.contains(locator.toString(), this.server.getUrl()));
+        Assert.assertNotNull(locator.locate(header));
+    }
+
+    @Test
+    public void givenShortRediscoveryInterval_whenWaiting_thenConfigurationRediscoveredInBackground() throws
+            Exception {
+        // Given
+        OidcDiscoveryLocator locator =
+                new OidcDiscoveryLocator(URI.create(this.server.getConfigurationUrl()), null,
+                                         Duration.ofMillis(100));
+        try {
+            Assert.assertNotNull(locator.locate(mockHeader()));
+
+            // When
+            long deadline = System.currentTimeMillis() + 5000;
+            while (this.server.getDiscoveryRequestsCount() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(25);
+            }
+
+            // Then
+            Assert.assertTrue(this.server.getDiscoveryRequestsCount() >= 3);
+        } finally {
+            locator.stopRediscovery();
+        }
+    }
+
+    @Test
+    public void givenUndiscoveredLocator_whenWaiting_thenNoBackgroundRediscovery() throws Exception {
+        // Given
+        OidcDiscoveryLocator locator =
+                new OidcDiscoveryLocator(URI.create(this.server.getConfigurationUrl()), null, Duration.ofMillis(50));
+        try {
+            // When
+            Thread.sleep(300);
+
+            // Then
+            Assert.assertEquals(this.server.getDiscoveryRequestsCount(), 0);
+        } finally {
+            locator.stopRediscovery();
+        }
+    }
+
+    @Test
+    public void givenStoppedRediscovery_whenDiscovering_thenNoBackgroundRediscovery() throws Exception {
+        // Given
+        OidcDiscoveryLocator locator =
+                new OidcDiscoveryLocator(URI.create(this.server.getConfigurationUrl()), null, Duration.ofMillis(50));
+        locator.stopRediscovery();
+
+        // When
+        Assert.assertNotNull(locator.locate(mockHeader()));
+        Thread.sleep(300);
+
+        // Then
+        Assert.assertEquals(this.server.getDiscoveryRequestsCount(), 1);
+    }
+
+    @Test
+    public void givenLocator_whenToString_thenIncludesRediscoveryInterval() {
+        // Given
+        OidcDiscoveryLocator locator =
+                new OidcDiscoveryLocator(URI.create(this.server.getConfigurationUrl()), Duration.ofSeconds(5),
+                                         Duration.ofMinutes(5));
+
+        // When
+        String stringForm = locator.toString();
+
+        // Then
+        Assert.assertTrue(Strings.CI.contains(stringForm, "rediscoveryInterval=PT5M"));
+        locator.stopRediscovery();
+    }
+
+    @Test
+    public void givenSnapshotFromPreviousRun_whenCreatingLocator_thenDiscoveryAndKeysRestoredThenRevalidated() throws
+            Exception {
+        // Given
+        Path file = Files.createTempFile("oidc-snapshot", ".json");
+        Files.delete(file);
+        file.toFile().deleteOnExit();
+        URI discoveryUri = URI.create(this.server.getConfigurationUrl());
+        OidcDiscoveryLocator first = new OidcDiscoveryLocator(discoveryUri, null, Duration.ZERO);
+        CachedJwksKeyLocator firstCached =
+                CachedJwksKeyLocator.create(first, Duration.ofMinutes(1), file, Duration.ofMinutes(5));
+        JwsHeader header = Mockito.mock(JwsHeader.class);
+        String keyId = this.jwks.getKeys()
+                                .stream()
+                                .filter(k -> k instanceof PublicJwk<?>)
+                                .findFirst()
+                                .map(Jwk::getId)
+                                .orElse(null);
+        Assert.assertNotNull(keyId);
+        when(header.getKeyId()).thenReturn(keyId);
+        Assert.assertNotNull(firstCached.locate(header));
+        Assert.assertNotNull(TestCachedJwksKeyLocator.awaitSnapshot(file, null, x -> true));
+        this.server.resetDiscoveryRequestsCount();
+        OidcRegistry.reset();
+
+        // When
+        OidcDiscoveryLocator second = new OidcDiscoveryLocator(discoveryUri, null, Duration.ZERO);
+        CachedJwksKeyLocator secondCached =
+                CachedJwksKeyLocator.create(second, Duration.ofMinutes(1), file, Duration.ofMinutes(5));
+
+        // Then
+        Assert.assertTrue(secondCached.isCached(keyId));
+        Assert.assertTrue(Strings.CI.contains(second.toString(), this.server.getUrl()));
+        Assert.assertNotNull(OidcRegistry.get(discoveryUri));
+
+        // And
+        long deadline = System.currentTimeMillis() + 5000;
+        while (this.server.getDiscoveryRequestsCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(this.server.getDiscoveryRequestsCount(), 1);
+    }
 }
@@ -0,0 +1,253 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.replay;
+
+import io.telicent.servlet.auth.jwt.errors.VerificationUnavailableException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestJtiReplayCache {
+
+    private static final long START = 1_767_225_600_000L;
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenZeroMaxEntries_whenCreatingCache_thenIllegalArgument() {
+        new JtiReplayCache(0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenZeroStripes_whenCreatingCache_thenIllegalArgument() {
+        new JtiReplayCache(10, 0, System::currentTimeMillis);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullClock_whenCreatingCache_thenNPE() {
+        new JtiReplayCache(10, 1, null);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullJti_whenMarkingUsed_thenNPE() {
+        new JtiReplayCache(10).markUsed("issuer", null, Instant.now());
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullExpiry_whenMarkingUsed_thenNPE() {
+        new JtiReplayCache(10).markUsed("issuer", "a", null);
+    }
+
+    @Test
+    public void givenUsedToken_whenMarkingUsedAgain_thenReplayDetected() {
+        // Given
+        JtiReplayCache cache = new JtiReplayCache(1_000);
+        Instant expiry = Instant.now().plusSeconds(60);
+
+        // When and Then
+        Assert.assertTrue(cache.markUsed("issuer", "a", expiry));
+        Assert.assertFalse(cache.markUsed("issuer", "a", expiry));
+        Assert.assertTrue(cache.markUsed("other-issuer", "a", expiry));
+        Assert.assertTrue(cache.markUsed(null, "a", expiry));
+        Assert.assertFalse(cache.markUsed(null, "a", expiry));
+        Assert.assertEquals(cache.size(), 3);
+        Assert.assertTrue(cache.toString().contains("stripes=64"));
+    }
+
+    @Test
+    public void givenLargeMaximum_whenCreatingCache_thenTablesStartSmall() {
+        // Given and When
+        JtiReplayCache cache = new JtiReplayCache(JtiReplayCache.DEFAULT_MAX_ENTRIES);
+
+        // Then
+        Assert.assertEquals(cache.capacity(), (long) JtiReplayCache.DEFAULT_STRIPES * JtiReplayCache.INITIAL_CAPACITY);
+    }
+
+    @Test
+    public void givenManyUsedTokens_whenTablesGrow_thenAllTokensRemembered() {
+        // Given
+        AtomicLong now = new AtomicLong(START);
+        JtiReplayCache cache = new JtiReplayCache(1_000, 1, now::get);
+        Instant expiry = Instant.ofEpochMilli(START + 60_000);
+
+        // When
+        for (int i = 0; i < 1_000; i++) {
+            Assert.assertTrue(cache.markUsed("issuer", Integer.toString(i), expiry));
+        }
+
+        // Then
+        Assert.assertEquals(cache.size(), 1_000);
+        Assert.assertTrue(cache.capacity() > JtiReplayCache.INITIAL_CAPACITY);
+        Assert.assertTrue(cache.capacity() <= 1_000 + 1_000 / 3 + 1);
+        for (int i = 0; i < 1_000; i++) {
+            Assert.assertFalse(cache.markUsed("issuer", Integer.toString(i), expiry));
+        }
+        Assert.expectThrows(VerificationUnavailableException.class, () -> cache.markUsed("issuer", "extra", expiry));
+    }
+
+    @Test
+    public void givenUsedToken_whenItExpires_thenForgotten() {
+        // Given
+        AtomicLong now = new AtomicLong(START);
+        JtiReplayCache cache = new JtiReplayCache(100, 4, now::get);
+        Assert.assertTrue(cache.markUsed("issuer", "a", Instant.ofEpochMilli(START + 1_500)));
+
+        // When
+        now.set(START + 1_999);
+        boolean beforeExpiry = cache.markUsed("issuer", "a", Instant.ofEpochMilli(START + 1_500));
+        now.set(START + 2_000);
+        boolean afterExpiry = cache.markUsed("issuer", "a", Instant.ofEpochMilli(START + 60_000));
+
+        // Then
+        Assert.assertFalse(beforeExpiry);
+        Assert.assertTrue(afterExpiry);
+        Assert.assertEquals(cache.size(), 1);
+    }
+
+    @Test
+    public void givenFullCache_whenMarkingUsed_thenRefused_andExistingEntriesRetained() {
+        // Given
+        AtomicLong now = new AtomicLong(START);
+        JtiReplayCache cache = new JtiReplayCache(2, 1, now::get);
+        Assert.assertTrue(cache.markUsed("issuer", "a", Instant.ofEpochMilli(START + 10_000)));
+        Assert.assertTrue(cache.markUsed("issuer", "b", Instant.ofEpochMilli(START + 5_000)));
+
+        // When
+        Assert.expectThrows(VerificationUnavailableException.class,
+                            () -> cache.markUsed("issuer", "c", Instant.ofEpochMilli(START + 20_000)));
+
+        // Then
+        Assert.assertEquals(cache.size(), 2);
+        Assert.assertEquals(cache.getRejections(), 1);
+        Assert.assertFalse(cache.markUsed("issuer", "a", Instant.ofEpochMilli(START + 10_000)));
+        Assert.assertFalse(cache.markUsed("issuer", "b", Instant.ofEpochMilli(START + 5_000)));
+    }
+
+    @Test
+    public void givenFullCache_whenEntriesExpire_thenNewTokensRecordedAgain() {
+        // Given
+        AtomicLong now = new AtomicLong(START);
+        JtiReplayCache cache = new JtiReplayCache(1, 1, now::get);
+        Assert.assertTrue(cache.markUsed("issuer", "a", Instant.ofEpochMilli(START + 5_000)));
+        Assert.expectThrows(VerificationUnavailableException.class,
+                            () -> cache.markUsed("issuer", "b", Instant.ofEpochMilli(START + 60_000)));
+
+        // When
+        now.set(START + 10_000);
+
+        // Then
+        Assert.assertTrue(cache.markUsed("issuer", "b", Instant.ofEpochMilli(START + 60_000)));
+        Assert.assertFalse(cache.markUsed("issuer", "b", Instant.ofEpochMilli(START + 60_000)));
+        Assert.assertEquals(cache.size(), 1);
+        Assert.assertEquals(cache.scheduled(), 1);
+    }
+
+    @Test
+    public void givenManyTokensExpiringAtRandom_whenMarkingUsed_thenMatchesReference() {
+        // Given
+        AtomicLong now = new AtomicLong(START);
+        JtiReplayCache cache = new JtiReplayCache(2_000, 1, now::get);
+        Map<String, Long> reference = new HashMap<>();
+        List<String> used = new ArrayList<>();
+        Random random = new Random(42);
+
+        // When and Then
+        for (int second = 0; second < 200; second++) {
+            now.set(START + second * 1_000L);
+            for (int i = 0; i < 50; i++) {
+                String jti = random.nextInt(4) == 0 && !used.isEmpty() ? used.get(random.nextInt(used.size()))
+                                                                        : UUID.randomUUID().toString();
+                long expiry = now.get() + 1_000L * (1 + random.nextInt(20));
+                Long current = reference.get(jti);
+                boolean expected = current == null || current <= now.get();
+                Assert.assertEquals(cache.markUsed("issuer", jti, Instant.ofEpochMilli(expiry)), expected, jti);
+                if (expected) {
+                    reference.put(jti, expiry);
+                    used.add(jti);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void givenHighTokenRate_whenTokensExpire_thenMemoryStaysBounded() {
+        // Given
+        AtomicLong now = new AtomicLong(START);
+        JtiReplayCache cache = new JtiReplayCache(1_000_000, 16, now::get);
+
+        // When
+        // 200,000 tokens across 100 seconds, each with a 10 second lifetime
+        for (int second = 0; second < 100; second++) {
+            now.set(START + second * 1_000L);
+            for (int i = 0; i < 2_000; i++) {
+                Assert.assertTrue(cache.markUsed("issuer", UUID.randomUUID().toString(),
+                                                 Instant.ofEpochMilli(now.get() + 10_000)));
+            }
+        }
+
+        // Then
+        Assert.assertTrue(cache.size() <= 11 * 2_000, "Cache held " + cache.size() + " entries");
+        Assert.assertEquals(cache.scheduled(), cache.size());
+    }
+
+    @Test
+    public void givenConcurrentUseOfSameTokens_whenMarkingUsed_thenEachAcceptedExactlyOnce() throws Exception {
+        // Given
+        JtiReplayCache cache = new JtiReplayCache(100_000);
+        Instant expiry = Instant.now().plusSeconds(60);
+        List<String> jtis = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            jtis.add(UUID.randomUUID().toString());
+        }
+        AtomicInteger accepted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // When
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (String jti : jtis) {
+                    if (cache.markUsed("issuer", jti, expiry)) {
+                        accepted.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Then
+        Assert.assertEquals(accepted.get(), 1_000);
+        Assert.assertEquals(cache.size(), 1_000);
+    }
+
+    @Test
+    public void givenShiftedIssuerAndJti_whenFingerprinting_thenDifferentFingerprints() {
+        // When and Then
+        Assert.assertNotEquals(JtiReplayCache.fingerprint("ab", "c"), JtiReplayCache.fingerprint("a", "bc"));
+        Assert.assertNotEquals(JtiReplayCache.fingerprint(null, "a"), JtiReplayCache.fingerprint("", "b"));
+        Assert.assertEquals(JtiReplayCache.fingerprint(null, "a"), JtiReplayCache.fingerprint("", "a"));
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.replay;
+
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Jwk;
+import io.jsonwebtoken.security.Jwks;
+import io.telicent.servlet.auth.jwt.errors.VerificationUnavailableException;
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.KeyLoadingJwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.SignedJwtVerifier;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+public class TestReplayGuardingJwtVerifier {
+
+    private static final SecretKey KEY = Jwts.SIG.HS256.key().build();
+
+    private static String token(String jti, Instant expiry) {
+        return Jwts.builder()
+                   .id(jti)
+                   .issuer("issuer")
+                   .subject("user")
+                   .expiration(expiry != null ? Date.from(expiry) : null)
+                   .signWith(KEY)
+                   .compact();
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullDelegate_whenCreatingVerifier_thenNPE() {
+        new ReplayGuardingJwtVerifier(null, new JtiReplayCache(10));
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullCache_whenCreatingVerifier_thenNPE() {
+        new ReplayGuardingJwtVerifier(new SignedJwtVerifier(KEY), null);
+    }
+
+    @Test
+    public void givenOneTimeToken_whenVerifiedTwice_thenReplayRejected() {
+        // Given
+        ReplayGuardingJwtVerifier verifier =
+                new ReplayGuardingJwtVerifier(new SignedJwtVerifier(KEY), new JtiReplayCache(10));
+        String jwt = token("once", Instant.now().plusSeconds(60));
+
+        // When
+        Assert.assertNotNull(verifier.verify(jwt));
+
+        // Then
+        JwtException e = Assert.expectThrows(JwtException.class, () -> verifier.verify(jwt));
+        Assert.assertEquals(e.getMessage(), "Token has already been used");
+        Assert.assertNotNull(verifier.verify(token("another", Instant.now().plusSeconds(60))));
+        Assert.assertTrue(verifier.toString().contains("JtiReplayCache"));
+    }
+
+    @Test
+    public void givenTokenWithoutJtiOrExpiry_whenVerifying_thenRejected() {
+        // Given
+        ReplayGuardingJwtVerifier verifier =
+                new ReplayGuardingJwtVerifier(new SignedJwtVerifier(KEY), new JtiReplayCache(10));
+
+        // When and Then
+        Assert.assertThrows(JwtException.class, () -> verifier.verify(token(null, Instant.now().plusSeconds(60))));
+        Assert.assertThrows(JwtException.class, () -> verifier.verify(token("no-expiry", null)));
+    }
+
+    @Test
+    public void givenInvalidToken_whenVerifying_thenNotRecorded() {
+        // Given
+        JtiReplayCache cache = new JtiReplayCache(10);
+        ReplayGuardingJwtVerifier verifier =
+                new ReplayGuardingJwtVerifier(new SignedJwtVerifier(Jwts.SIG.HS256.key().build()), cache);
+
+        // When
+        Assert.assertThrows(JwtException.class, () -> verifier.verify(token("a", Instant.now().plusSeconds(60))));
+
+        // Then
+        Assert.assertEquals(cache.size(), 0);
+        Assert.assertNull(new ReplayGuardingJwtVerifier(rawJwt -> null, cache).verify("anything"));
+    }
+
+    @Test
+    public void givenFullCache_whenVerifying_thenUnavailable_andEarlierTokenStillCannotBeReplayed() {
+        // Given
+        ReplayGuardingJwtVerifier verifier =
+                new ReplayGuardingJwtVerifier(new SignedJwtVerifier(KEY), new JtiReplayCache(1));
+        String first = token("a", Instant.now().plusSeconds(30));
+        String second = token("b", Instant.now().plusSeconds(60));
+        Assert.assertNotNull(verifier.verify(first));
+
+        // When
+        Assert.assertThrows(VerificationUnavailableException.class, () -> verifier.verify(second));
+
+        // Then
+        JwtException e = Assert.expectThrows(JwtException.class, () -> verifier.verify(first));
+        Assert.assertEquals(e.getMessage(), "Token has already been used");
+    }
+
+    @Test
+    public void givenKeyLoadingDelegate_whenLoadingKeys_thenDelegated() {
+        // Given
+        KeyLoadingJwtVerifier delegate = Mockito.mock(KeyLoadingJwtVerifier.class);
+        Jwk<?> jwk = Jwks.builder().key(KEY).build();
+        CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+        Executor executor = Runnable::run;
+        Mockito.when(delegate.requiresKeyLoad("jwt")).thenReturn(true);
+        Mockito.when(delegate.loadKeys("jwt", executor)).thenReturn(future);
+        Mockito.when(delegate.getLoadedKeys()).thenReturn(List.of(jwk));
+        ReplayGuardingJwtVerifier verifier = new ReplayGuardingJwtVerifier(delegate, new JtiReplayCache(10));
+
+        // When and Then
+        Assert.assertTrue(verifier.requiresKeyLoad("jwt"));
+        Assert.assertSame(verifier.loadKeys("jwt", executor), future);
+        Assert.assertEquals(verifier.getLoadedKeys(), List.of(jwk));
+    }
+
+    @Test
+    public void givenNonKeyLoadingDelegate_whenLoadingKeys_thenNothingToLoad() {
+        // Given
+        JwtVerifier delegate = new SignedJwtVerifier(KEY);
+        ReplayGuardingJwtVerifier verifier =
+                new ReplayGuardingJwtVerifier(rawJwt -> delegate.verify(rawJwt), new JtiReplayCache(10));
+
+        // When and Then
+        Assert.assertFalse(verifier.requiresKeyLoad("jwt"));
+        Assert.assertTrue(verifier.loadKeys("jwt", Runnable::run).isDone());
+        Assert.assertTrue(verifier.getLoadedKeys().isEmpty());
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.replay;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+public class TestTimerWheel {
+
+    private static final long SPAN = 1L << (TimerWheel.SLOT_BITS * TimerWheel.LEVELS);
+
+    @DataProvider(name = "delays")
+    public static Object[][] delays() {
+        return new Object[][] {
+                { 1 }, { 2 }, { 63 }, { 64 }, { 65 }, { 4095 }, { 4096 }, { 4097 }, { 262_143 }, { 262_144 },
+                { 300_000 }, { SPAN - 1 }, { SPAN }, { SPAN + 100 }
+        };
+    }
+
+    @Test(dataProvider = "delays")
+    public void givenScheduledValue_whenAdvancing_thenExpiresExactlyAtItsTick(long delay) {
+        // Given
+        long start = 1_000_003;
+        TimerWheel wheel = new TimerWheel(start);
+        wheel.schedule(42, start + delay);
+        List<Long> expired = new ArrayList<>();
+
+        // When
+        wheel.advance(start + delay - 1, expired::add);
+
+        // Then
+        Assert.assertTrue(expired.isEmpty());
+        Assert.assertEquals(wheel.size(), 1);
+
+        // And When
+        wheel.advance(start + delay, expired::add);
+
+        // Then
+        Assert.assertEquals(expired, List.of(42L));
+        Assert.assertEquals(wheel.size(), 0);
+        Assert.assertEquals(wheel.currentTick(), start + delay);
+    }
+
+    @Test
+    public void givenPastExpiry_whenAdvancing_thenExpiresOnNextTick() {
+        // Given
+        TimerWheel wheel = new TimerWheel(100);
+        wheel.schedule(1, 50);
+        List<Long> expired = new ArrayList<>();
+
+        // When
+        wheel.advance(100, expired::add);
+        Assert.assertTrue(expired.isEmpty());
+        wheel.advance(101, expired::add);
+
+        // Then
+        Assert.assertEquals(expired, List.of(1L));
+    }
+
+    @Test
+    public void givenManyRandomValues_whenAdvancingInSteps_thenEachExpiresAtItsTick() {
+        // Given
+        Random random = new Random(12345);
+        TimerWheel wheel = new TimerWheel(0);
+        Map<Long, Long> expiries = new HashMap<>();
+        for (long i = 0; i < 5_000; i++) {
+            long expiry = 1 + random.nextInt(20_000);
+            expiries.put(i, expiry);
+            wheel.schedule(i, expiry);
+        }
+        Map<Long, Long> expiredAt = new HashMap<>();
+
+        // When
+        long tick = 0;
+        while (tick < 20_000) {
+            tick = Math.min(20_000, tick + 1 + random.nextInt(100));
+            long now = tick;
+            wheel.advance(now, v -> expiredAt.put(v, now));
+            for (Map.Entry<Long, Long> entry : expiredAt.entrySet()) {
+                Assert.assertTrue(expiries.get(entry.getKey()) <= entry.getValue());
+            }
+        }
+
+        // Then
+        Assert.assertEquals(expiredAt.size(), 5_000);
+        Assert.assertEquals(wheel.size(), 0);
+    }
+
+    @Test
+    public void givenLongIdlePeriod_whenAdvancing_thenWheelJumpsAndRetainsUnexpiredValues() {
+        // Given
+        TimerWheel wheel = new TimerWheel(0);
+        wheel.schedule(1, 10);
+        wheel.schedule(2, 3 * SPAN);
+        List<Long> expired = new ArrayList<>();
+
+        // When
+        wheel.advance(2 * SPAN, expired::add);
+
+        // Then
+        Assert.assertEquals(expired, List.of(1L));
+        Assert.assertEquals(wheel.size(), 1);
+
+        // And When
+        wheel.advance(3 * SPAN, expired::add);
+
+        // Then
+        Assert.assertEquals(expired, List.of(1L, 2L));
+    }
+
+    @Test
+    public void givenVeryFullSlot_whenDrained_thenSlotReusable() {
+        // Given
+        TimerWheel wheel = new TimerWheel(0);
+        for (long i = 0; i < 1_000; i++) {
+            wheel.schedule(i, 5);
+        }
+        List<Long> expired = new ArrayList<>();
+
+        // When
+        wheel.advance(5, expired::add);
+        wheel.schedule(2_000, 5 + 64);
+        wheel.advance(5 + 64, expired::add);
+
+        // Then
+        Assert.assertEquals(expired.size(), 1_001);
+    }
+}
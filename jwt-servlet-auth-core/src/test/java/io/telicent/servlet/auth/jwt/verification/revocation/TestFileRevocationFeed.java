@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.revocation;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+
+public class TestFileRevocationFeed {
+
+    private static void append(Path file, String content) throws IOException {
+        Files.writeString(file, content, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Test
+    public void givenValidLines_whenParsing_thenEntriesReturned() {
+        // When and Then
+        Assert.assertEquals(FileRevocationFeed.parseLine("jti abc"), RevocationEntry.forJti("abc"));
+        Assert.assertEquals(FileRevocationFeed.parseLine("sub user 1767225600"),
+                            RevocationEntry.forSubject("user", Instant.parse("2026-01-01T00:00:00Z")));
+        Assert.assertEquals(FileRevocationFeed.parseLine("sub  user\t2026-01-01T00:00:00Z"),
+                            RevocationEntry.forSubject("user", Instant.parse("2026-01-01T00:00:00Z")));
+        Assert.assertEquals(FileRevocationFeed.parseLine("jti abc 1767225600"),
+                            RevocationEntry.forJti("abc", Instant.parse("2026-01-01T00:00:00Z")));
+        Assert.assertEquals(FileRevocationFeed.parseLine("sub user 1767225600 2026-01-02T00:00:00Z"),
+                            RevocationEntry.forSubject("user", Instant.parse("2026-01-01T00:00:00Z"),
+                                                       Instant.parse("2026-01-02T00:00:00Z")));
+        Assert.assertEquals(FileRevocationFeed.parseLine("iss https://idp.example.org jti abc"),
+                            RevocationEntry.forJti("https://idp.example.org", "abc", null));
+        Assert.assertEquals(FileRevocationFeed.parseLine("iss https://idp.example.org sub user 1767225600"),
+                            RevocationEntry.forSubject("https://idp.example.org", "user",
+                                                       Instant.parse("2026-01-01T00:00:00Z"), null));
+    }
+
+    @Test
+    public void givenInvalidLines_whenParsing_thenNullReturned() {
+        // When and Then
+        Assert.assertNull(FileRevocationFeed.parseLine("jti"));
+        Assert.assertNull(FileRevocationFeed.parseLine("jti a b"));
+        Assert.assertNull(FileRevocationFeed.parseLine("sub user"));
+        Assert.assertNull(FileRevocationFeed.parseLine("sub user yesterday"));
+        Assert.assertNull(FileRevocationFeed.parseLine("jti a b c"));
+        Assert.assertNull(FileRevocationFeed.parseLine("sub user 1767225600 tomorrow"));
+        Assert.assertNull(FileRevocationFeed.parseLine("sub user 1767225600 1767225600 1767225600"));
+        Assert.assertNull(FileRevocationFeed.parseLine("sub user 99999999999999999999"));
+        Assert.assertNull(FileRevocationFeed.parseLine("kid abc"));
+        Assert.assertNull(FileRevocationFeed.parseLine("iss https://idp.example.org"));
+        Assert.assertNull(FileRevocationFeed.parseLine("iss https://idp.example.org abc"));
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullFile_whenCreatingFeed_thenNPE() {
+        new FileRevocationFeed(null);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void givenMissingFile_whenPolling_thenIOException() throws IOException {
+        new FileRevocationFeed(Files.createTempDirectory("revocations").resolve("missing.txt")).poll();
+    }
+
+    @Test
+    public void givenAppendOnlyFile_whenPolling_thenOnlyNewCompleteLinesRead() throws IOException {
+        // Given
+        Path file = Files.createTempFile("revocations", ".txt");
+        append(file, "# Revoked tokens\n\njti a\nnot valid\n");
+        FileRevocationFeed feed = new FileRevocationFeed(file);
+
+        // When
+        RevocationFeed.Update first = feed.poll();
+        RevocationFeed.Update unchanged = feed.poll();
+        append(file, "jti b\njti c");
+        RevocationFeed.Update partial = feed.poll();
+        RevocationFeed.Update stillPartial = feed.poll();
+        append(file, "\n");
+        RevocationFeed.Update completed = feed.poll();
+
+        // Then
+        Assert.assertEquals(first, new RevocationFeed.Update(false, List.of(RevocationEntry.forJti("a"))));
+        Assert.assertSame(unchanged, RevocationFeed.Update.NONE);
+        Assert.assertEquals(partial, new RevocationFeed.Update(false, List.of(RevocationEntry.forJti("b"))));
+        Assert.assertSame(stillPartial, RevocationFeed.Update.NONE);
+        Assert.assertEquals(completed, new RevocationFeed.Update(false, List.of(RevocationEntry.forJti("c"))));
+        Assert.assertTrue(feed.toString().contains(file.getFileName().toString()));
+    }
+
+    @Test
+    public void givenTruncatedFile_whenPolling_thenEntriesReplaced() throws IOException {
+        // Given
+        Path file = Files.createTempFile("revocations", ".txt");
+        append(file, "jti a\njti b\n");
+        FileRevocationFeed feed = new FileRevocationFeed(file);
+        feed.poll();
+
+        // When
+        Files.writeString(file, "jti c\n");
+        RevocationFeed.Update update = feed.poll();
+
+        // Then
+        Assert.assertEquals(update, new RevocationFeed.Update(true, List.of(RevocationEntry.forJti("c"))));
+    }
+
+    @Test
+    public void givenReplacedFile_whenPolling_thenEntriesReplaced() throws IOException {
+        // Given
+        Path dir = Files.createTempDirectory("revocations");
+        Path file = dir.resolve("revocations.txt");
+        append(file, "jti a\n");
+        FileRevocationFeed feed = new FileRevocationFeed(file);
+        feed.poll();
+
+        // When
+        Path replacement = dir.resolve("replacement.txt");
+        append(replacement, "jti b\njti c\n");
+        Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        RevocationFeed.Update update = feed.poll();
+
+        // Then
+        Assert.assertTrue(update.replace());
+        Assert.assertEquals(update.entries(), List.of(RevocationEntry.forJti("b"), RevocationEntry.forJti("c")));
+    }
+
+    @Test
+    public void givenFileReplacedWithEmptyOrPartialFile_whenPolling_thenEntriesCleared() throws IOException {
+        // Given
+        Path file = Files.createTempFile("revocations", ".txt");
+        append(file, "jti a\n");
+        FileRevocationFeed feed = new FileRevocationFeed(file);
+        feed.poll();
+
+        // When
+        Files.writeString(file, "");
+        RevocationFeed.Update empty = feed.poll();
+        append(file, "jti a\n");
+        feed.poll();
+        Files.writeString(file, "jti");
+        RevocationFeed.Update partial = feed.poll();
+
+        // Then
+        Assert.assertEquals(empty, new RevocationFeed.Update(true, List.of()));
+        Assert.assertEquals(partial, new RevocationFeed.Update(true, List.of()));
+    }
+}
@@ -0,0 +1,287 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.revocation;
+
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Jwk;
+import io.jsonwebtoken.security.Jwks;
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.KeyLoadingJwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.SignedJwtVerifier;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestRevocationCheckingJwtVerifier {
+
+    private static final SecretKey KEY = Jwts.SIG.HS256.key().build();
+
+    private static String token(String jti, String subject, Instant issuedAt) {
+        return Jwts.builder()
+                   .id(jti)
+                   .subject(subject)
+                   .issuedAt(issuedAt != null ? Date.from(issuedAt) : null)
+                   .signWith(KEY)
+                   .compact();
+    }
+
+    private static RevocationFeed feedOf(RevocationEntry... entries) {
+        return () -> new RevocationFeed.Update(true, List.of(entries));
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullDelegate_whenCreatingVerifier_thenNPE() {
+        RevocationCheckingJwtVerifier.create(null, feedOf(), Duration.ZERO);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenNullFeed_whenCreatingVerifier_thenNPE() {
+        RevocationCheckingJwtVerifier.create(new SignedJwtVerifier(KEY), null, Duration.ZERO);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenNegativeRefreshInterval_whenCreatingVerifier_thenIllegalArgument() {
+        RevocationCheckingJwtVerifier.create(new SignedJwtVerifier(KEY), feedOf(), Duration.ofSeconds(-1));
+    }
+
+    @Test
+    public void givenRevocations_whenVerifying_thenRevokedTokensRejected() {
+        // Given
+        Instant revokedAt = Instant.now().minusSeconds(60);
+        RevocationCheckingJwtVerifier verifier =
+                RevocationCheckingJwtVerifier.create(new SignedJwtVerifier(KEY),
+                                                     feedOf(RevocationEntry.forJti("revoked"),
+                                                            RevocationEntry.forSubject("compromised", revokedAt)),
+                                                     Duration.ofMinutes(5));
+
+        // When and Then
+        Assert.assertEquals(verifier.getRevocations().size(), 2);
+        Assert.assertNotNull(verifier.verify(token("ok", "user", null)));
+        Assert.assertNotNull(verifier.verify(token("ok", "compromised", revokedAt.plusSeconds(1))));
+        Assert.assertThrows(JwtException.class, () -> verifier.verify(token("revoked", "user", null)));
+        Assert.assertThrows(JwtException.class,
+                            () -> verifier.verify(token("ok", "compromised", revokedAt.minusSeconds(1))));
+        Assert.assertThrows(JwtException.class, () -> verifier.verify(token("ok", "compromised", null)));
+    }
+
+    @Test
+    public void givenVerifier_whenConstructed_thenFeedNotPolledUntilCreated() {
+        // Given
+        AtomicInteger polls = new AtomicInteger();
+        RevocationFeed feed = () -> {
+            polls.incrementAndGet();
+            return new RevocationFeed.Update(true, List.of(RevocationEntry.forJti("revoked")));
+        };
+
+        // When
+        new RevocationCheckingJwtVerifier(new SignedJwtVerifier(KEY), feed, Duration.ofMinutes(5));
+        Assert.assertEquals(polls.get(), 0);
+        RevocationCheckingJwtVerifier verifier =
+                RevocationCheckingJwtVerifier.create(new SignedJwtVerifier(KEY), feed, Duration.ofMinutes(5));
+
+        // Then
+        Assert.assertEquals(polls.get(), 1);
+        Assert.assertEquals(verifier.getRevocations().size(), 1);
+    }
+
+    @Test
+    public void givenStaleRevocations_whenVerifyingConcurrently_thenSingleRefreshStarted() throws Exception {
+        // Given
+        AtomicInteger polls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        RevocationFeed feed = () -> {
+            if (polls.incrementAndGet() > 1) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            return RevocationFeed.Update.NONE;
+        };
+        RevocationCheckingJwtVerifier verifier =
+                RevocationCheckingJwtVerifier.create(new SignedJwtVerifier(KEY), feed, Duration.ZERO);
+        String jwt = token("ok", "user", null);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // When
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < 100; j++) {
+                    verifier.verify(jwt);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (polls.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // Then
+        // Every request saw stale revocations, but only one refresh was started while it remained in progress
+        Assert.assertEquals(polls.get(), 2);
+        Assert.assertFalse(verifier.refresh());
+        release.countDown();
+    }
+
+    @Test
+    public void givenIssuerSpecificRevocations_whenVerifying_thenOnlyTokensFromThatIssuerRejected() {
+        // Given
+        RevocationCheckingJwtVerifier verifier =
+                RevocationCheckingJwtVerifier.create(new SignedJwtVerifier(KEY),
+                                                     feedOf(RevocationEntry.forJti("https://a.example.org", "shared",
+                                                                                   null)),
+                                                     Duration.ofMinutes(5));
+
+        // When and Then
+        Assert.assertThrows(JwtException.class, () -> verifier.verify(
+                Jwts.builder().id("shared").issuer("https://a.example.org").signWith(KEY).compact()));
+        Assert.assertNotNull(verifier.verify(
+                Jwts.builder().id("shared").issuer("https://b.example.org").signWith(KEY).compact()));
+        Assert.assertNotNull(verifier.verify(token("shared", "user", null)));
+    }
+
+    @Test
+    public void givenDelegateReturningNull_whenVerifying_thenNullReturned() {
+        // Given
+        RevocationCheckingJwtVerifier verifier =
+                RevocationCheckingJwtVerifier.create(rawJwt -> null, feedOf(), Duration.ofMinutes(5));
+
+        // When and Then
+        Assert.assertNull(verifier.verify("anything"));
+    }
+
+    @Test
+    public void givenAppendedRevocationFile_whenVerifyingAfterRefreshInterval_thenNewRevocationsApplied() throws
+            Exception {
+        // Given
+        Path file = Files.createTempFile("revocations", ".txt");
+        Files.writeString(file, "jti first\n");
+        RevocationCheckingJwtVerifier verifier =
+                RevocationCheckingJwtVerifier.create(new SignedJwtVerifier(KEY), new FileRevocationFeed(file),
+                                                     Duration.ZERO);
+        Assert.assertThrows(JwtException.class, () -> verifier.verify(token("first", "user", null)));
+        String second = token("second", "user", null);
+        Assert.assertNotNull(verifier.verify(second));
+
+        // When
+        Files.writeString(file, "jti second\n", StandardOpenOption.APPEND);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (verifier.getRevocations().size() < 2 && System.currentTimeMillis() < deadline) {
+            verifier.verify(token("other", "user", null));
+            Thread.sleep(10);
+        }
+
+        // Then
+        Assert.assertEquals(verifier.getRevocations().size(), 2);
+        Assert.assertThrows(JwtException.class, () -> verifier.verify(second));
+        Assert.assertThrows(JwtException.class, () -> verifier.verify(token("first", "user", null)));
+    }
+
+    @Test
+    public void givenFailingFeed_whenRefreshing_thenPreviousRevocationsRetained() {
+        // Given
+        AtomicInteger polls = new AtomicInteger();
+        RevocationFeed feed = () -> {
+            if (polls.incrementAndGet() > 1) {
+                throw new IOException("Feed unavailable");
+            }
+            return new RevocationFeed.Update(false, List.of(RevocationEntry.forJti("revoked")));
+        };
+        RevocationCheckingJwtVerifier verifier =
+                RevocationCheckingJwtVerifier.create(new SignedJwtVerifier(KEY), feed, Duration.ofMinutes(5));
+
+        // When
+        boolean refreshed = verifier.refresh();
+
+        // Then
+        Assert.assertFalse(refreshed);
+        Assert.assertEquals(polls.get(), 2);
+        Assert.assertThrows(JwtException.class, () -> verifier.verify(token("revoked", "user", null)));
+        Assert.assertTrue(verifier.toString().contains("revocations=1"));
+    }
+
+    @Test
+    public void givenIncrementalFeed_whenRefreshing_thenEntriesAccumulate() {
+        // Given
+        AtomicInteger polls = new AtomicInteger();
+        RevocationFeed feed = () -> new RevocationFeed.Update(false, List.of(
+                RevocationEntry.forJti("revoked-" + polls.incrementAndGet())));
+        RevocationCheckingJwtVerifier verifier =
+                RevocationCheckingJwtVerifier.create(new SignedJwtVerifier(KEY), feed, Duration.ofMinutes(5));
+
+        // When
+        Assert.assertTrue(verifier.refresh());
+
+        // Then
+        Assert.assertEquals(verifier.getRevocations().size(), 2);
+        Assert.assertThrows(JwtException.class, () -> verifier.verify(token("revoked-1", "user", null)));
+        Assert.assertThrows(JwtException.class, () -> verifier.verify(token("revoked-2", "user", null)));
+    }
+
+    @Test
+    public void givenKeyLoadingDelegate_whenLoadingKeys_thenDelegated() {
+        // Given
+        KeyLoadingJwtVerifier delegate = Mockito.mock(KeyLoadingJwtVerifier.class);
+        Jwk<?> jwk = Jwks.builder().key(KEY).build();
+        CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+        Executor executor = Runnable::run;
+        Mockito.when(delegate.requiresKeyLoad("jwt")).thenReturn(true);
+        Mockito.when(delegate.loadKeys("jwt", executor)).thenReturn(future);
+        Mockito.when(delegate.getLoadedKeys()).thenReturn(List.of(jwk));
+        RevocationCheckingJwtVerifier verifier =
+                RevocationCheckingJwtVerifier.create(delegate, feedOf(), Duration.ofMinutes(5));
+
+        // When and Then
+        Assert.assertTrue(verifier.requiresKeyLoad("jwt"));
+        Assert.assertSame(verifier.loadKeys("jwt", executor), future);
+        Assert.assertEquals(verifier.getLoadedKeys(), List.of(jwk));
+    }
+
+    @Test
+    public void givenNonKeyLoadingDelegate_whenLoadingKeys_thenNothingToLoad() {
+        // Given
+        JwtVerifier delegate = new SignedJwtVerifier(KEY);
+        RevocationCheckingJwtVerifier verifier =
+                RevocationCheckingJwtVerifier.create(rawJwt -> delegate.verify(rawJwt), feedOf(),
+                                                     Duration.ofMinutes(5));
+
+        // When and Then
+        Assert.assertFalse(verifier.requiresKeyLoad("jwt"));
+        Assert.assertTrue(verifier.loadKeys("jwt", Runnable::run).isDone());
+        Assert.assertTrue(verifier.getLoadedKeys().isEmpty());
+    }
+}
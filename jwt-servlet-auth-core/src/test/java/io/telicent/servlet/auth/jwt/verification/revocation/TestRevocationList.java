@@ -0,0 +1,243 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.verification.revocation;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class TestRevocationList {
+
+    private static final Instant NOW = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Test
+    public void givenEmptyList_whenCheckingRevocation_thenNothingRevoked() {
+        // Given
+        RevocationList list = RevocationList.EMPTY;
+
+        // When and Then
+        Assert.assertEquals(list.size(), 0);
+        Assert.assertFalse(list.isRevoked("a", "user", NOW));
+        Assert.assertFalse(list.isRevoked(null, null, null));
+    }
+
+    @Test
+    public void givenRevokedJti_whenCheckingRevocation_thenOnlyThatTokenRevoked() {
+        // Given
+        RevocationList list = RevocationList.of(List.of(RevocationEntry.forJti("a")));
+
+        // When and Then
+        Assert.assertTrue(list.isRevoked("a", "user", NOW));
+        Assert.assertFalse(list.isRevoked("b", "user", NOW));
+        Assert.assertFalse(list.isRevoked(null, "user", NOW));
+    }
+
+    @Test
+    public void givenRevokedSubject_whenCheckingRevocation_thenOnlyTokensIssuedBeforeRevoked() {
+        // Given
+        RevocationList list = RevocationList.of(List.of(RevocationEntry.forSubject("user", NOW)));
+
+        // When and Then
+        Assert.assertTrue(list.isRevoked(null, "user", NOW.minusSeconds(1)));
+        Assert.assertTrue(list.isRevoked("a", "user", null));
+        Assert.assertFalse(list.isRevoked(null, "user", NOW));
+        Assert.assertFalse(list.isRevoked(null, "user", NOW.plusSeconds(1)));
+        Assert.assertFalse(list.isRevoked(null, "other", NOW.minusSeconds(1)));
+    }
+
+    @Test
+    public void givenIssuerSpecificEntries_whenCheckingRevocation_thenOnlyTokensFromThatIssuerRevoked() {
+        // Given
+        RevocationList list = RevocationList.of(List.of(RevocationEntry.forJti("https://a.example.org", "a", null),
+                                                        RevocationEntry.forSubject("https://a.example.org", "user",
+                                                                                   NOW, null),
+                                                        RevocationEntry.forJti("b")));
+
+        // When and Then
+        Assert.assertTrue(list.isRevoked("https://a.example.org", "a", null, null));
+        Assert.assertFalse(list.isRevoked("https://b.example.org", "a", null, null));
+        Assert.assertFalse(list.isRevoked("a", null, null));
+        Assert.assertTrue(list.isRevoked("https://a.example.org", null, "user", NOW.minusSeconds(1)));
+        Assert.assertFalse(list.isRevoked("https://b.example.org", null, "user", NOW.minusSeconds(1)));
+        Assert.assertTrue(list.isRevoked("https://b.example.org", "b", null, null));
+        Assert.assertTrue(list.isRevoked("b", null, null));
+        Assert.assertEquals(list.size(), 3);
+    }
+
+    @Test
+    public void givenShiftedIssuerAndJti_whenComputingKeys_thenDifferentKeys() {
+        // When and Then
+        Assert.assertNotEquals(RevocationList.key("ab", "c"), RevocationList.key("a", "bc"));
+        Assert.assertNotEquals(RevocationList.key(null, "1:ab"), RevocationList.key("a", "b"));
+        Assert.assertNotEquals(RevocationList.key(null, "a"), RevocationList.key("", "a"));
+    }
+
+    @Test
+    public void givenSubjectRevokedTwice_whenCheckingRevocation_thenLatestRevocationApplies() {
+        // Given
+        RevocationList list = RevocationList.of(List.of(RevocationEntry.forSubject("user", NOW)));
+
+        // When
+        RevocationList updated = list.with(List.of(RevocationEntry.forSubject("user", NOW.plusSeconds(60)),
+                                                   RevocationEntry.forSubject("user", NOW.minusSeconds(60))));
+
+        // Then
+        Assert.assertFalse(list.isRevoked(null, "user", NOW.plusSeconds(30)));
+        Assert.assertTrue(updated.isRevoked(null, "user", NOW.plusSeconds(30)));
+        Assert.assertEquals(updated.size(), 1);
+    }
+
+    @Test
+    public void givenNoNewEntries_whenAddingEntries_thenSameListReturned() {
+        // Given
+        RevocationList list = RevocationList.of(List.of(RevocationEntry.forJti("a")));
+
+        // When and Then
+        Assert.assertSame(list.with(List.of()), list);
+    }
+
+    @Test
+    public void givenManyRevokedTokens_whenCheckingUnrevokedTokens_thenBloomFilterRejectsMostWithoutExactLookup() {
+        // Given
+        List<RevocationEntry> entries = new ArrayList<>();
+        BloomFilter filter = new BloomFilter(10_000, RevocationList.FALSE_POSITIVE_RATE);
+        for (int i = 0; i < 10_000; i++) {
+            String jti = UUID.randomUUID().toString();
+            entries.add(RevocationEntry.forJti(jti));
+            filter.add(jti);
+        }
+        RevocationList list = RevocationList.of(entries);
+
+        // When
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            String jti = UUID.randomUUID().toString();
+            Assert.assertFalse(list.isRevoked(jti, null, null));
+            if (filter.mightContain(jti)) {
+                falsePositives++;
+            }
+        }
+
+        // Then
+        Assert.assertEquals(list.size(), 10_000);
+        Assert.assertTrue(falsePositives < 500, "Too many false positives: " + falsePositives);
+        for (RevocationEntry entry : entries) {
+            Assert.assertTrue(filter.mightContain(entry.jti()));
+            Assert.assertTrue(list.isRevoked(entry.jti(), null, null));
+        }
+    }
+
+    @Test
+    public void givenExpiredEntries_whenAddingEntries_thenExpiredEntriesDropped() {
+        // Given
+        RevocationList list = RevocationList.of(List.of(RevocationEntry.forJti("a", NOW.plusSeconds(60)),
+                                                        RevocationEntry.forJti("b"),
+                                                        RevocationEntry.forSubject("user", NOW, NOW.plusSeconds(60))),
+                                                NOW);
+
+        // When
+        RevocationList updated = list.with(List.of(RevocationEntry.forJti("c", NOW.plusSeconds(3600))),
+                                           NOW.plusSeconds(60).plus(RevocationList.EXPIRY_GRACE));
+
+        // Then
+        Assert.assertEquals(list.size(), 3);
+        Assert.assertEquals(updated.size(), 2);
+        Assert.assertFalse(updated.isRevoked("a", null, null));
+        Assert.assertTrue(updated.isRevoked("b", null, null));
+        Assert.assertTrue(updated.isRevoked("c", null, null));
+        Assert.assertFalse(updated.isRevoked(null, "user", NOW.minusSeconds(1)));
+    }
+
+    @Test
+    public void givenEntryWithinExpiryGrace_whenRebuilding_thenRetained() {
+        // Given
+        RevocationList list = RevocationList.of(List.of(RevocationEntry.forJti("a", NOW)), NOW.minusSeconds(60));
+
+        // When
+        RevocationList updated = list.with(List.of(), NOW.plus(RevocationList.EXPIRY_GRACE).minusSeconds(1));
+
+        // Then
+        Assert.assertSame(updated, list);
+        Assert.assertTrue(updated.isRevoked("a", null, null));
+    }
+
+    @Test
+    public void givenEntryPastExpiry_whenPollingWithNoNewEntries_thenRebuiltWithoutIt() {
+        // Given
+        RevocationList list = RevocationList.of(List.of(RevocationEntry.forJti("a", NOW),
+                                                        RevocationEntry.forJti("b", NOW.plusSeconds(3600))),
+                                                NOW.minusSeconds(60));
+
+        // When
+        RevocationList updated = list.with(List.of(), NOW.plus(RevocationList.EXPIRY_GRACE));
+
+        // Then
+        Assert.assertNotSame(updated, list);
+        Assert.assertEquals(updated.size(), 1);
+        Assert.assertFalse(updated.isRevoked("a", null, null));
+        Assert.assertTrue(updated.isRevoked("b", null, null));
+        Assert.assertSame(updated.with(List.of(), NOW.plus(RevocationList.EXPIRY_GRACE)), updated);
+    }
+
+    @Test
+    public void givenAlreadyExpiredEntry_whenAdding_thenIgnored() {
+        // When
+        RevocationList list =
+                RevocationList.of(List.of(RevocationEntry.forJti("a", NOW.minus(RevocationList.EXPIRY_GRACE))), NOW);
+
+        // Then
+        Assert.assertEquals(list.size(), 0);
+        Assert.assertFalse(list.isRevoked("a", null, null));
+    }
+
+    @Test
+    public void givenTokenRevokedTwice_whenCheckingRevocation_thenLatestExpiryApplies() {
+        // Given
+        RevocationList list = RevocationList.of(List.of(RevocationEntry.forJti("a", NOW.plusSeconds(3600)),
+                                                        RevocationEntry.forJti("a", NOW.plusSeconds(60))), NOW);
+
+        // When
+        RevocationList updated = list.with(List.of(), NOW.plusSeconds(60).plus(RevocationList.EXPIRY_GRACE));
+
+        // Then
+        Assert.assertSame(updated, list);
+        Assert.assertTrue(updated.isRevoked("a", null, null));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenNeitherJtiNorSubject_whenCreatingEntry_thenIllegalArgument() {
+        new RevocationEntry(null, " ", null);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenBothJtiAndSubject_whenCreatingEntry_thenIllegalArgument() {
+        new RevocationEntry("a", "user", NOW);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenBlankIssuer_whenCreatingEntry_thenIllegalArgument() {
+        RevocationEntry.forJti(" ", "a", null);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void givenSubjectWithoutIssuedBefore_whenCreatingEntry_thenNPE() {
+        RevocationEntry.forSubject("user", null);
+    }
+}
@@ -22,10 +22,15 @@ import io.jsonwebtoken.security.Jwks;
 import io.telicent.servlet.auth.jwt.JwtHttpConstants;
 import io.telicent.servlet.auth.jwt.JwtServletConstants;
 import io.telicent.servlet.auth.jwt.OAuth2Constants;
+import io.telicent.servlet.auth.jwt.testing.load.LoadGenerator;
+import io.telicent.servlet.auth.jwt.testing.load.LoadTestResult;
+import io.telicent.servlet.auth.jwt.testing.load.LoadTestTokens;
 import io.telicent.servlet.auth.jwt.verification.TestKeyUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.testng.Assert;
 import org.testng.SkipException;
 import org.testng.annotations.BeforeClass;
@@ -42,6 +47,7 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.StandardCopyOption;
 import java.security.KeyPair;
 import java.security.PrivateKey;
@@ -56,6 +62,8 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Abstract integration tests for implementation modules
  */
 public abstract class AbstractIntegrationTests {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractIntegrationTests.class);
+
     private final HttpClient client = HttpClient.newBuilder().build();
 
     public static final int OK = 200;
@@ -63,7 +71,7 @@ public abstract class AbstractIntegrationTests {
     public static final int UNAUTHORIZED = 401;
     public static final int NOT_FOUND = 404;
 
-    private static final AtomicInteger TEST_PORT = new AtomicInteger(12345);
+    protected static final AtomicInteger TEST_PORT = new AtomicInteger(12345);
     private SecretKey secretKey;
     private PrivateKey privateKey;
     private JwkSet jwks;
@@ -584,4 +592,63 @@ public abstract class AbstractIntegrationTests {
         Assert.assertNotNull(authHeader);
         Assert.assertTrue(Strings.CI.contains(authHeader, OAuth2Constants.ERROR_INVALID_REQUEST));
     }
+
+    /**
+     * Runs a load test against the given server, which will be started and stopped by this method, presenting the
+     * configured mix of tokens for the {@link ApplicationConstants#JWKS} secret key
+     * <p>
+     * The results are logged and appended to {@code target/load-test-report.txt} so that runs against the different
+     * runtimes may be compared, see {@link LoadGenerator} for how to scale up the load.
+     * </p>
+     *
+     * @param server Server
+     * @return Load test results
+     * @throws Exception Thrown if the load test could not be run
+     */
+    protected LoadTestResult runLoadTest(AbstractServer server) throws Exception {
+        LoadGenerator generator = LoadGenerator.fromSystemProperties();
+        LoadTestTokens tokens = LoadTestTokens.forSecretKey(this.secretKey, "secret", 32);
+        LoadTestResult result;
+        try {
+            server.start();
+            result = generator.run(server, "/hello", tokens);
+        } finally {
+            server.stop();
+        }
+
+        String report = result.toReport();
+        LOGGER.info("Load test results {}", report);
+        File reportFile = new File("target/load-test-report.txt");
+        if (reportFile.getParentFile().isDirectory()) {
+            Files.writeString(reportFile.toPath(), report + System.lineSeparator(), StandardCharsets.UTF_8,
+                              StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        return result;
+    }
+
+    /**
+     * Verifies that a load test completed and that every request received the expected response
+     *
+     * @param result Load test results
+     */
+    protected static void verifyLoadTestResult(LoadTestResult result) {
+        Assert.assertTrue(result.getTotalRequests() > 0, "Load test made no requests");
+        Assert.assertEquals(result.getTotalUnexpected(), 0L,
+                            "Unexpected response statuses during load test: " + result.unexpected());
+        Assert.assertEquals(result.errors(), 0L, "Requests failed during load test");
+    }
+
+    @Test
+    public void givenJwksWebXmlApplication_whenUnderLoadWithMixedTokens_thenEveryRequestReceivesExpectedResponse() throws
+            Exception {
+        // Given
+        int port = TEST_PORT.getAndIncrement();
+        AbstractServer server = buildWebXmlApplication(port, ApplicationConstants.JWKS);
+
+        // When
+        LoadTestResult result = runLoadTest(server);
+
+        // Then
+        verifyLoadTestResult(result);
+    }
 }
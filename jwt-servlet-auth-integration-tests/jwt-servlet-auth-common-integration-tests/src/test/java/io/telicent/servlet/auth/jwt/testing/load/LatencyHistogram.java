@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.testing.load;
+
+/**
+ * A log-linear latency histogram with roughly 1% precision, in the style of HdrHistogram
+ * <p>
+ * Values below {@value #LINEAR_BUCKETS} are recorded exactly, larger values are recorded in buckets whose width
+ * doubles with each power of two so that each bucket covers at most 1/{@value #SUB_BUCKETS} of its value.  Histograms
+ * are not thread-safe, each load generating worker records into its own histogram and these are merged once the run
+ * completes.
+ * </p>
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 128;
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS;
+
+    private final long[] counts = new long[LINEAR_BUCKETS + (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS];
+    private long total;
+    private long max;
+
+    /**
+     * Records a value
+     *
+     * @param value Value, negative values are recorded as zero
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        this.counts[indexFor(value)]++;
+        this.total++;
+        this.max = Math.max(this.max, value);
+    }
+
+    /**
+     * Merges the values recorded by another histogram into this histogram
+     *
+     * @param other Other histogram
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < this.counts.length; i++) {
+            this.counts[i] += other.counts[i];
+        }
+        this.total += other.total;
+        this.max = Math.max(this.max, other.max);
+    }
+
+    /**
+     * Gets the number of recorded values
+     *
+     * @return Count
+     */
+    public long getCount() {
+        return this.total;
+    }
+
+    /**
+     * Gets the maximum recorded value
+     *
+     * @return Maximum
+     */
+    public long getMax() {
+        return this.max;
+    }
+
+    /**
+     * Gets the value at the given percentile
+     *
+     * @param percentile Percentile, between 0 and 100
+     * @return Value at the percentile, this is the lowest value of the bucket the percentile falls in, or zero if no
+     * values were recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (this.total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * this.total));
+        long seen = 0;
+        for (int i = 0; i < this.counts.length; i++) {
+            seen += this.counts[i];
+            if (seen >= rank) {
+                return Math.min(lowestValueFor(i), this.max);
+            }
+        }
+        return this.max;
+    }
+
+    static int indexFor(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    static long lowestValueFor(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int offset = index - LINEAR_BUCKETS;
+        int shift = offset / SUB_BUCKETS + 1;
+        return ((long) (offset % SUB_BUCKETS) + SUB_BUCKETS) << shift;
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.testing.load;
+
+import io.telicent.servlet.auth.jwt.JwtHttpConstants;
+import io.telicent.servlet.auth.jwt.testing.AbstractServer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates load against a running server from many concurrent clients, recording the latency of each request and
+ * verifying that each receives the response status expected for the kind of token it presented
+ * <p>
+ * Each client runs on its own virtual thread in a closed loop, i.e. sends its next request as soon as it receives the
+ * response to its previous request, so the number of concurrent connections to the server equals the concurrency.
+ * Requests made during the warm-up period are made in exactly the same way but are excluded from the results.
+ * </p>
+ * <p>
+ * The defaults are deliberately small so that the load tests are quick enough to run as part of the normal build, use
+ * {@link #fromSystemProperties()} to allow a run to be scaled up from the command line e.g.
+ * {@code mvn verify -Djwt.loadtest.concurrency=256 -Djwt.loadtest.duration=60}.
+ * </p>
+ */
+public final class LoadGenerator {
+
+    /**
+     * System property specifying the number of concurrent clients
+     */
+    public static final String PROPERTY_CONCURRENCY = "jwt.loadtest.concurrency";
+    /**
+     * System property specifying the measured duration in seconds
+     */
+    public static final String PROPERTY_DURATION = "jwt.loadtest.duration";
+    /**
+     * System property specifying the warm-up duration in seconds
+     */
+    public static final String PROPERTY_WARMUP = "jwt.loadtest.warmup";
+    /**
+     * System property specifying the token mix, see {@link TokenMix}
+     */
+    public static final String PROPERTY_MIX = "jwt.loadtest.mix";
+
+    /**
+     * Default number of concurrent clients
+     */
+    public static final int DEFAULT_CONCURRENCY = 16;
+    /**
+     * Default measured duration in seconds
+     */
+    public static final int DEFAULT_DURATION = 2;
+    /**
+     * Default warm-up duration in seconds
+     */
+    public static final int DEFAULT_WARMUP = 1;
+
+    private final int concurrency;
+    private final Duration duration;
+    private final Duration warmup;
+    private final TokenMix mix;
+
+    /**
+     * Creates a new load generator
+     *
+     * @param concurrency Number of concurrent clients
+     * @param duration    Measured duration
+     * @param warmup      Warm-up duration
+     * @param mix         Token mix
+     */
+    public LoadGenerator(int concurrency, Duration duration, Duration warmup, TokenMix mix) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1");
+        }
+        this.concurrency = concurrency;
+        this.duration = Objects.requireNonNull(duration, "Duration cannot be null");
+        this.warmup = Objects.requireNonNull(warmup, "Warm-up cannot be null");
+        this.mix = Objects.requireNonNull(mix, "Token mix cannot be null");
+    }
+
+    /**
+     * Creates a load generator configured from system properties, falling back to the defaults for any that are not
+     * set
+     *
+     * @return Load generator
+     */
+    public static LoadGenerator fromSystemProperties() {
+        return new LoadGenerator(Integer.getInteger(PROPERTY_CONCURRENCY, DEFAULT_CONCURRENCY),
+                                 Duration.ofSeconds(Integer.getInteger(PROPERTY_DURATION, DEFAULT_DURATION)),
+                                 Duration.ofSeconds(Integer.getInteger(PROPERTY_WARMUP, DEFAULT_WARMUP)),
+                                 TokenMix.parse(System.getProperty(PROPERTY_MIX)));
+    }
+
+    /**
+     * Runs a load test against a server, which must already be started
+     *
+     * @param server Server
+     * @param path   Path of the protected resource to request, relative to the server's base URL
+     * @param tokens Tokens to present
+     * @return Results
+     * @throws Exception Thrown if the load test could not be run
+     */
+    public LoadTestResult run(AbstractServer server, String path, LoadTestTokens tokens) throws Exception {
+        URI uri = URI.create(server.getBaseUrl()).resolve(path);
+        long start = System.nanoTime();
+        long measureFrom = start + this.warmup.toNanos();
+        long deadline = measureFrom + this.duration.toNanos();
+
+        List<Future<Worker>> futures = new ArrayList<>();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient client = HttpClient.newBuilder()
+                                           .version(HttpClient.Version.HTTP_1_1)
+                                           .executor(clients)
+                                           .connectTimeout(Duration.ofSeconds(10))
+                                           .build()) {
+            for (int i = 0; i < this.concurrency; i++) {
+                futures.add(clients.submit(() -> new Worker().run(client, uri, tokens, measureFrom, deadline)));
+            }
+
+            LatencyHistogram latencies = new LatencyHistogram();
+            Map<TokenKind, Long> requests = new EnumMap<>(TokenKind.class);
+            Map<TokenKind, Long> unexpected = new EnumMap<>(TokenKind.class);
+            long errors = 0;
+            for (Future<Worker> future : futures) {
+                Worker worker = future.get();
+                latencies.merge(worker.latencies);
+                for (TokenKind kind : TokenKind.values()) {
+                    if (worker.requests[kind.ordinal()] > 0) {
+                        requests.merge(kind, worker.requests[kind.ordinal()], Long::sum);
+                    }
+                    if (worker.unexpected[kind.ordinal()] > 0) {
+                        unexpected.merge(kind, worker.unexpected[kind.ordinal()], Long::sum);
+                    }
+                }
+                errors += worker.errors;
+            }
+            Duration elapsed = Duration.ofNanos(Math.max(0, System.nanoTime() - measureFrom));
+            return new LoadTestResult(server.getClass().getSimpleName(), this.concurrency, this.mix, elapsed,
+                                      latencies, requests, unexpected, errors);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LoadGenerator{concurrency=" + this.concurrency + ", duration=" + this.duration + ", warmup="
+               + this.warmup + ", mix=" + this.mix + "}";
+    }
+
+    /**
+     * A single client, only accessed by the thread running it until it completes
+     */
+    private final class Worker {
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final long[] requests = new long[TokenKind.values().length];
+        private final long[] unexpected = new long[TokenKind.values().length];
+        private long errors;
+
+        private Worker run(HttpClient client, URI uri, LoadTestTokens tokens, long measureFrom, long deadline) {
+            Random random = ThreadLocalRandom.current();
+            long now;
+            while ((now = System.nanoTime()) < deadline) {
+                TokenKind kind = LoadGenerator.this.mix.next(random);
+                HttpRequest request = HttpRequest.newBuilder(uri)
+                                                 .header(JwtHttpConstants.HEADER_AUTHORIZATION,
+                                                         JwtHttpConstants.AUTH_SCHEME_BEARER + " " + tokens.next(
+                                                                 kind, random))
+                                                 .GET()
+                                                 .build();
+                boolean measured = now >= measureFrom;
+                try {
+                    HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                    if (!measured) {
+                        continue;
+                    }
+                    this.latencies.record(System.nanoTime() - now);
+                    this.requests[kind.ordinal()]++;
+                    if (response.statusCode() != kind.getExpectedStatus()) {
+                        this.unexpected[kind.ordinal()]++;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception e) {
+                    if (measured) {
+                        this.errors++;
+                    }
+                }
+            }
+            return this;
+        }
+    }
+}
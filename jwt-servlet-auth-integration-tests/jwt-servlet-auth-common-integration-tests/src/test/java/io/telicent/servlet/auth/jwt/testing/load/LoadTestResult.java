@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.testing.load;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The results of a load test run against a single runtime
+ *
+ * @param runtime      Runtime name
+ * @param concurrency  Number of concurrent clients
+ * @param mix          Token mix
+ * @param elapsed      Measured duration, excluding warm up
+ * @param latencies    Latency histogram for all requests, in nanoseconds
+ * @param requests     Number of requests made of each token kind
+ * @param unexpected   Number of requests of each token kind that received an unexpected response status
+ * @param errors       Number of requests that failed without receiving a response
+ */
+public record LoadTestResult(String runtime, int concurrency, TokenMix mix, Duration elapsed,
+                             LatencyHistogram latencies, Map<TokenKind, Long> requests,
+                             Map<TokenKind, Long> unexpected, long errors) {
+
+    /**
+     * Creates a new result
+     */
+    public LoadTestResult {
+        requests = Collections.unmodifiableMap(new EnumMap<>(requests));
+        unexpected = Collections.unmodifiableMap(new EnumMap<>(unexpected));
+    }
+
+    /**
+     * Gets the total number of requests that received a response
+     *
+     * @return Total requests
+     */
+    public long getTotalRequests() {
+        return this.requests.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Gets the total number of requests that received an unexpected response status
+     *
+     * @return Total unexpected responses
+     */
+    public long getTotalUnexpected() {
+        return this.unexpected.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Gets the throughput in requests per second
+     *
+     * @return Throughput
+     */
+    public double getThroughput() {
+        double seconds = this.elapsed.toNanos() / 1_000_000_000.0;
+        return seconds > 0 ? getTotalRequests() / seconds : 0;
+    }
+
+    /**
+     * Formats a report of the results
+     *
+     * @return Report
+     */
+    public String toReport() {
+        return String.format(
+                "%s: concurrency=%d mix=%s requests=%d elapsed=%.1fs throughput=%.0f req/s p50=%s p99=%s p999=%s " +
+                "max=%s unexpected=%s errors=%d",
+                this.runtime, this.concurrency, this.mix, getTotalRequests(), this.elapsed.toMillis() / 1000.0,
+                getThroughput(), formatLatency(this.latencies.getValueAtPercentile(50)),
+                formatLatency(this.latencies.getValueAtPercentile(99)),
+                formatLatency(this.latencies.getValueAtPercentile(99.9)), formatLatency(this.latencies.getMax()),
+                this.unexpected, this.errors);
+    }
+
+    private static String formatLatency(long nanos) {
+        return String.format("%.2fms", nanos / 1_000_000.0);
+    }
+}
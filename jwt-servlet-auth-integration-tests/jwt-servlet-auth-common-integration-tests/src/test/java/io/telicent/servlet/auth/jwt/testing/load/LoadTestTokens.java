@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.testing.load;
+
+import io.jsonwebtoken.Jwts;
+
+import javax.crypto.SecretKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Pools of pre-generated tokens of each {@link TokenKind} for use in load tests
+ * <p>
+ * Tokens are generated ahead of the load test so that the cost of signing them does not count against the server, each
+ * pool holds tokens for several distinct users so that the server does not simply see the same token repeatedly.
+ * </p>
+ */
+public final class LoadTestTokens {
+
+    private final Map<TokenKind, List<String>> tokens;
+
+    private LoadTestTokens(Map<TokenKind, List<String>> tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Generates token pools for a server that verifies tokens using the given secret key, identified by the given Key
+     * ID
+     *
+     * @param key      Secret key known to the server
+     * @param keyId    Key ID the server knows the key by
+     * @param poolSize Number of distinct tokens of each kind
+     * @return Token pools
+     */
+    public static LoadTestTokens forSecretKey(SecretKey key, String keyId, int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        SecretKey forgingKey = Jwts.SIG.HS256.key().build();
+        Instant now = Instant.now();
+        Date validUntil = Date.from(now.plus(Duration.ofHours(1)));
+        Date expiredAt = Date.from(now.minus(Duration.ofHours(1)));
+
+        Map<TokenKind, List<String>> tokens = new EnumMap<>(TokenKind.class);
+        for (TokenKind kind : TokenKind.values()) {
+            List<String> pool = new ArrayList<>(poolSize);
+            for (int i = 0; i < poolSize; i++) {
+                String subject = "load-user-" + i;
+                pool.add(switch (kind) {
+                    case VALID -> Jwts.builder()
+                                      .header()
+                                      .keyId(keyId)
+                                      .and()
+                                      .subject(subject)
+                                      .expiration(validUntil)
+                                      .signWith(key)
+                                      .compact();
+                    case EXPIRED -> Jwts.builder()
+                                        .header()
+                                        .keyId(keyId)
+                                        .and()
+                                        .subject(subject)
+                                        .expiration(expiredAt)
+                                        .signWith(key)
+                                        .compact();
+                    case FORGED -> Jwts.builder()
+                                       .header()
+                                       .keyId(keyId)
+                                       .and()
+                                       .subject(subject)
+                                       .expiration(validUntil)
+                                       .signWith(forgingKey)
+                                       .compact();
+                    case UNKNOWN_KID -> Jwts.builder()
+                                            .header()
+                                            .keyId("unknown-" + i)
+                                            .and()
+                                            .subject(subject)
+                                            .expiration(validUntil)
+                                            .signWith(key)
+                                            .compact();
+                });
+            }
+            tokens.put(kind, List.copyOf(pool));
+        }
+        return new LoadTestTokens(tokens);
+    }
+
+    /**
+     * Selects a token of the given kind
+     *
+     * @param kind   Token kind
+     * @param random Random source
+     * @return Token
+     */
+    public String next(TokenKind kind, Random random) {
+        List<String> pool = this.tokens.get(kind);
+        return pool.get(random.nextInt(pool.size()));
+    }
+}
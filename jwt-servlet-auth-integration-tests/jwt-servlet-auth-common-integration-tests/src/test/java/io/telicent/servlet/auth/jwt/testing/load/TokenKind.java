@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.testing.load;
+
+/**
+ * The kinds of token that a load test may present, along with the response status each should receive
+ */
+public enum TokenKind {
+    /**
+     * A valid token signed with a known key
+     */
+    VALID("valid", 200),
+    /**
+     * A token signed with a known key that has expired
+     */
+    EXPIRED("expired", 401),
+    /**
+     * A token claiming a known Key ID that is signed with a different key
+     */
+    FORGED("forged", 401),
+    /**
+     * A token signed with a known key but claiming a Key ID that is unknown to the server
+     */
+    UNKNOWN_KID("unknown-kid", 401);
+
+    private final String label;
+    private final int expectedStatus;
+
+    TokenKind(String label, int expectedStatus) {
+        this.label = label;
+        this.expectedStatus = expectedStatus;
+    }
+
+    /**
+     * Gets the label used to refer to this kind of token in token mix specifications and reports
+     *
+     * @return Label
+     */
+    public String getLabel() {
+        return this.label;
+    }
+
+    /**
+     * Gets the response status expected for requests presenting this kind of token
+     *
+     * @return Expected status
+     */
+    public int getExpectedStatus() {
+        return this.expectedStatus;
+    }
+
+    /**
+     * Finds the token kind with the given label
+     *
+     * @param label Label
+     * @return Token kind
+     * @throws IllegalArgumentException Thrown if no token kind has the given label
+     */
+    public static TokenKind fromLabel(String label) {
+        for (TokenKind kind : values()) {
+            if (kind.label.equalsIgnoreCase(label.trim())) {
+                return kind;
+            }
+        }
+        throw new IllegalArgumentException("Unknown token kind " + label);
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.testing.load;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * A weighted mix of the kinds of token presented during a load test
+ * <p>
+ * Mixes are specified as comma separated {@code kind=weight} pairs, e.g.
+ * {@code valid=70,expired=10,forged=10,unknown-kid=10}, where kinds not mentioned have a weight of zero.  Weights
+ * are relative so need not sum to 100.
+ * </p>
+ */
+public final class TokenMix {
+
+    /**
+     * The default mix, mostly valid tokens with an even spread of the failure cases
+     */
+    public static final String DEFAULT_MIX = "valid=70,expired=10,forged=10,unknown-kid=10";
+
+    private final Map<TokenKind, Integer> weights;
+    private final TokenKind[] kinds;
+    private final int[] cumulativeWeights;
+
+    private TokenMix(Map<TokenKind, Integer> weights) {
+        this.weights = weights;
+        this.kinds = weights.keySet().toArray(new TokenKind[0]);
+        this.cumulativeWeights = new int[this.kinds.length];
+        int total = 0;
+        for (int i = 0; i < this.kinds.length; i++) {
+            total += weights.get(this.kinds[i]);
+            this.cumulativeWeights[i] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Token mix must have at least one non-zero weight");
+        }
+    }
+
+    /**
+     * Parses a token mix specification
+     *
+     * @param spec Specification, if blank the {@link #DEFAULT_MIX} is used
+     * @return Token mix
+     */
+    public static TokenMix parse(String spec) {
+        if (StringUtils.isBlank(spec)) {
+            spec = DEFAULT_MIX;
+        }
+        Map<TokenKind, Integer> weights = new EnumMap<>(TokenKind.class);
+        for (String pair : spec.split(",")) {
+            String[] parts = pair.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid token mix entry " + pair + ", expected kind=weight");
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Token mix weights cannot be negative");
+            }
+            if (weight > 0) {
+                weights.put(TokenKind.fromLabel(parts[0]), weight);
+            }
+        }
+        return new TokenMix(weights);
+    }
+
+    /**
+     * Selects the kind of token for the next request
+     *
+     * @param random Random source
+     * @return Token kind
+     */
+    public TokenKind next(Random random) {
+        int value = random.nextInt(this.cumulativeWeights[this.cumulativeWeights.length - 1]);
+        for (int i = 0; i < this.cumulativeWeights.length; i++) {
+            if (value < this.cumulativeWeights[i]) {
+                return this.kinds[i];
+            }
+        }
+        throw new IllegalStateException("Unreachable");
+    }
+
+    /**
+     * Gets whether the mix includes the given kind of token
+     *
+     * @param kind Token kind
+     * @return True if included, false otherwise
+     */
+    public boolean includes(TokenKind kind) {
+        return this.weights.containsKey(Objects.requireNonNull(kind));
+    }
+
+    @Override
+    public String toString() {
+        return this.weights.entrySet()
+                           .stream()
+                           .map(e -> e.getKey().getLabel() + "=" + e.getValue())
+                           .collect(Collectors.joining(","));
+    }
+}
@@ -15,10 +15,17 @@
  */
 package io.telicent.servlet.auth.jwt.jaxrs3.examples;
 
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.JwkSet;
+import io.jsonwebtoken.security.Jwks;
+import io.telicent.servlet.auth.jwt.JwtHttpConstants;
 import io.telicent.servlet.auth.jwt.configuration.ConfigurationParameters;
 import io.telicent.servlet.auth.jwt.jaxrs3.JaxRs3AutomatedAuthConfigurationListener;
 import io.telicent.servlet.auth.jwt.testing.AbstractIntegrationTests;
 import io.telicent.servlet.auth.jwt.testing.AbstractServer;
+import io.telicent.servlet.auth.jwt.testing.load.LoadTestResult;
+import io.telicent.servlet.auth.jwt.verification.jwks.JwksServer;
+import io.telicent.servlet.auth.jwt.verification.jwks.SlowJwksServer;
 import jakarta.servlet.ServletContextListener;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.util.resource.ResourceFactory;
@@ -29,12 +36,30 @@ import org.glassfish.grizzly.servlet.WebappContext;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
 import org.glassfish.jersey.servlet.ServletContainer;
 import org.glassfish.jersey.servlet.ServletProperties;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
 
+import javax.crypto.SecretKey;
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.http.HttpResponse;
+import java.util.Map;
 
 public class TestJaxRS3Application extends AbstractIntegrationTests {
+
+    /**
+     * A web application offering the same resources as {@code basic} but with asynchronous key loading enabled, the
+     * tests supply the JWKS URL and maximum wait
+     */
+    private static final String ASYNC_JWKS = "async-jwks";
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    private final SecretKey asyncKey = Jwts.SIG.HS256.key().build();
+    private final JwkSet asyncJwks = Jwks.set().add(Jwks.builder().key(this.asyncKey).id("async").build()).build();
+
     @Override
     protected boolean areNonExistentUrlsFiltered() {
         return false;
@@ -42,6 +67,10 @@ public class TestJaxRS3Application extends AbstractIntegrationTests {
 
     @Override
     protected AbstractServer buildProgrammaticApplication(File keyFile, int port) {
+        return buildGrizzlyApplication(port, Map.of(ConfigurationParameters.PARAM_SECRET_KEY, keyFile.getAbsolutePath()));
+    }
+
+    private static AbstractServer buildGrizzlyApplication(int port, Map<String, String> contextParams) {
         WebappContext context = new WebappContext("JWT Auth Integration Tests", "/");
 
         // Add the JAX-RS application servlet
@@ -53,7 +82,7 @@ public class TestJaxRS3Application extends AbstractIntegrationTests {
 
         ServletContextListener listener = new JaxRs3AutomatedAuthConfigurationListener();
         context.addListener(listener);
-        context.addContextInitParameter(ConfigurationParameters.PARAM_SECRET_KEY, keyFile.getAbsolutePath());
+        contextParams.forEach(context::addContextInitParameter);
 
         URI baseUri = null;
         try {
@@ -75,4 +104,130 @@ public class TestJaxRS3Application extends AbstractIntegrationTests {
 
         return new Jetty11JaxRS3Server(server, port);
     }
+
+    private AbstractServer buildAsyncKeyLoadingApplication(boolean grizzly, int port, JwksServer jwksServer,
+                                                           long maxWait) {
+        if (grizzly) {
+            return buildGrizzlyApplication(port, Map.of(ConfigurationParameters.PARAM_JWKS_URL, jwksServer.getUrl(),
+                                                        ConfigurationParameters.PARAM_ASYNC_KEY_LOADING, "true",
+                                                        ConfigurationParameters.PARAM_ASYNC_KEY_LOADING_MAX_WAIT,
+                                                        Long.toString(maxWait)));
+        }
+
+        ensureWebAppExists(ASYNC_JWKS);
+        Server server = new Server(port);
+        WebAppContext webApp = new WebAppContext(
+                ResourceFactory.root().newResource(new File("src/test/apps/" + ASYNC_JWKS).toURI()), "/");
+        webApp.setInitParameter(ConfigurationParameters.PARAM_JWKS_URL, jwksServer.getUrl());
+        webApp.setInitParameter(ConfigurationParameters.PARAM_ASYNC_KEY_LOADING_MAX_WAIT, Long.toString(maxWait));
+        server.setHandler(webApp);
+        return new Jetty11JaxRS3Server(server, port);
+    }
+
+    private String createAsyncToken(String keyId) {
+        return Jwts.builder().header().keyId(keyId).and().subject("test").signWith(this.asyncKey).compact();
+    }
+
+    private HttpResponse<String> makeAuthenticatedRequest(AbstractServer server, String jwt) throws IOException,
+            InterruptedException {
+        return makeRequest(server, "/hello", Map.of(JwtHttpConstants.HEADER_AUTHORIZATION,
+                                                    JwtHttpConstants.AUTH_SCHEME_BEARER + " " + jwt),
+                           HttpResponse.BodyHandlers.ofString());
+    }
+
+    @DataProvider(name = "runtimes")
+    public Object[][] runtimes() {
+        // true for Grizzly, false for Jetty
+        return new Object[][] { { true }, { false } };
+    }
+
+    @Test(dataProvider = "runtimes")
+    public void givenAsyncKeyLoadingApplication_whenMakingRequestsWithJwksSignedJwt_thenRequestSucceeds(
+            boolean grizzly) throws Exception {
+        // Given
+        JwksServer jwksServer = new JwksServer(TEST_PORT.getAndIncrement(), this.asyncJwks);
+        jwksServer.start();
+        AbstractServer server = buildAsyncKeyLoadingApplication(grizzly, TEST_PORT.getAndIncrement(), jwksServer, 5000);
+
+        try {
+            server.start();
+
+            // When and Then
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(makeAuthenticatedRequest(server, createAsyncToken("async")).statusCode(), OK);
+            }
+        } finally {
+            server.stop();
+            jwksServer.stop();
+        }
+    }
+
+    @Test(dataProvider = "runtimes")
+    public void givenAsyncKeyLoadingApplication_whenMakingRequestsWithUnknownKey_thenAuthenticationIsRequired(
+            boolean grizzly) throws Exception {
+        // Given
+        JwksServer jwksServer = new JwksServer(TEST_PORT.getAndIncrement(), this.asyncJwks);
+        jwksServer.start();
+        AbstractServer server = buildAsyncKeyLoadingApplication(grizzly, TEST_PORT.getAndIncrement(), jwksServer, 5000);
+
+        try {
+            server.start();
+
+            // When and Then
+            Assert.assertEquals(makeAuthenticatedRequest(server, createAsyncToken("unknown")).statusCode(),
+                                UNAUTHORIZED);
+        } finally {
+            server.stop();
+            jwksServer.stop();
+        }
+    }
+
+    @Test(dataProvider = "runtimes")
+    public void givenAsyncKeyLoadingApplicationAndSlowJwksServer_whenMakingRequests_thenUnavailableUntilKeysLoaded(
+            boolean grizzly) throws Exception {
+        // Given
+        SlowJwksServer jwksServer = new SlowJwksServer(TEST_PORT.getAndIncrement(), this.asyncJwks);
+        jwksServer.start();
+        AbstractServer server = buildAsyncKeyLoadingApplication(grizzly, TEST_PORT.getAndIncrement(), jwksServer, 100);
+        String jwt = createAsyncToken("async");
+
+        try {
+            server.start();
+
+            // When
+            HttpResponse<String> response = makeAuthenticatedRequest(server, jwt);
+
+            // Then
+            Assert.assertEquals(response.statusCode(), SERVICE_UNAVAILABLE);
+            Assert.assertTrue(response.headers().firstValue("Retry-After").isPresent());
+
+            // And
+            jwksServer.release();
+            long deadline = System.currentTimeMillis() + 5000;
+            int status = response.statusCode();
+            while (status != OK && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+                status = makeAuthenticatedRequest(server, jwt).statusCode();
+            }
+            Assert.assertEquals(status, OK);
+        } finally {
+            jwksServer.release();
+            server.stop();
+            jwksServer.stop();
+        }
+    }
+
+    @Test
+    public void givenGrizzlyJwksApplication_whenUnderLoadWithMixedTokens_thenEveryRequestReceivesExpectedResponse() throws
+            Exception {
+        // Given
+        AbstractServer server = buildGrizzlyApplication(TEST_PORT.getAndIncrement(),
+                                                        Map.of(ConfigurationParameters.PARAM_JWKS_URL, "jwks.json"));
+
+        // When
+        LoadTestResult result = runLoadTest(server);
+
+        // Then
+        verifyLoadTestResult(result);
+    }
 }
@@ -15,21 +15,37 @@
  */
 package io.telicent.servlet.auth.jwt.servlet5.examples;
 
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.JwkSet;
+import io.jsonwebtoken.security.Jwks;
+import io.telicent.servlet.auth.jwt.JwtHttpConstants;
+import io.telicent.servlet.auth.jwt.PinningRecorder;
 import io.telicent.servlet.auth.jwt.configuration.ConfigurationParameters;
 import io.telicent.servlet.auth.jwt.servlet5.JwtAuthFilter;
 import io.telicent.servlet.auth.jwt.testing.AbstractIntegrationTests;
 import io.telicent.servlet.auth.jwt.testing.AbstractServer;
+import io.telicent.servlet.auth.jwt.verification.jwks.SlowJwksServer;
 import jakarta.servlet.DispatcherType;
 import org.eclipse.jetty.ee9.servlet.FilterHolder;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.ee9.servlet.ServletContextHandler;
 import org.eclipse.jetty.ee9.servlet.ServletHandler;
 import org.eclipse.jetty.ee9.servlet.ServletHolder;
 import org.eclipse.jetty.ee9.webapp.WebAppContext;
 import org.eclipse.jetty.util.resource.ResourceFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.testng.Assert;
+import org.testng.annotations.Test;
 
+import javax.crypto.SecretKey;
 import java.io.File;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
 
 public class TestServlet5Application extends AbstractIntegrationTests {
 
@@ -57,4 +73,84 @@ public class TestServlet5Application extends AbstractIntegrationTests {
         return new JettyServlet5Server(server, port);
     }
 
+    /**
+     * Builds a programmatic application whose requests are served on virtual threads by a deliberately small platform
+     * thread pool, authenticating against the given JWKS URL
+     *
+     * @param port    Port
+     * @param jwksUrl JWKS URL
+     * @return Server
+     */
+    protected AbstractServer buildVirtualThreadApplication(int port, String jwksUrl) {
+        QueuedThreadPool threadPool = new QueuedThreadPool(8, 2);
+        threadPool.setName("vt-jetty");
+        threadPool.setVirtualThreadsExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        Server server = new Server(threadPool);
+        ServerConnector connector = new ServerConnector(server, 1, 1);
+        connector.setPort(port);
+        server.addConnector(connector);
+
+        ServletContextHandler handler = new ServletContextHandler();
+        handler.setContextPath("/");
+        ServletHandler servletHandler = new ServletHandler();
+        handler.setHandler(servletHandler);
+        servletHandler.addServletWithMapping(HelloWorldServlet.class, "/hello");
+        FilterHolder auth =
+                servletHandler.addFilterWithMapping(JwtAuthFilter.class, "/*", EnumSet.allOf(DispatcherType.class));
+        auth.setInitParameter(ConfigurationParameters.PARAM_JWKS_URL, jwksUrl);
+        server.setHandler(handler);
+        return new JettyServlet5Server(server, port);
+    }
+
+    @Test
+    public void givenVirtualThreadApplicationAndJwksOutage_whenMakingManyRequests_thenCarrierThreadsAreNotStarved() throws
+            Exception {
+        // Given
+        SecretKey key = Jwts.SIG.HS256.key().build();
+        JwkSet jwks = Jwks.set().add(Jwks.builder().key(key).id("vt").build()).build();
+        SlowJwksServer jwksServer = new SlowJwksServer(TEST_PORT.getAndIncrement(), jwks);
+        jwksServer.start();
+        AbstractServer server = buildVirtualThreadApplication(TEST_PORT.getAndIncrement(), jwksServer.getUrl());
+        String jwt = Jwts.builder().header().keyId("vt").and().subject("test").signWith(key).compact();
+        Map<String, String> headers =
+                Map.of(JwtHttpConstants.HEADER_AUTHORIZATION, JwtHttpConstants.AUTH_SCHEME_BEARER + " " + jwt);
+        // More blocked requests than there are carrier threads, if any of them pinned their carrier while waiting on
+        // the JWKS then the server would be unable to make progress on anything else
+        int blocked = Runtime.getRuntime().availableProcessors() * 4;
+
+        try (PinningRecorder recorder = PinningRecorder.start();
+             ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            server.start();
+
+            // When
+            List<Future<HttpResponse<String>>> responses = new ArrayList<>();
+            for (int i = 0; i < blocked; i++) {
+                responses.add(clients.submit(
+                        () -> makeRequest(server, "/hello", headers, HttpResponse.BodyHandlers.ofString())));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (jwksServer.getRequests() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(25);
+            }
+            Assert.assertTrue(jwksServer.getRequests() > 0, "Expected at least one JWKS request to be outstanding");
+
+            // Then
+            Future<HttpResponse<String>> probe =
+                    clients.submit(() -> makeRequest(server, "/hello", Map.of(), HttpResponse.BodyHandlers.ofString()));
+            Assert.assertEquals(probe.get(5, TimeUnit.SECONDS).statusCode(), UNAUTHORIZED);
+            Assert.assertTrue(jwksServer.getRequests() < blocked,
+                              "Concurrent key lookups should share JWKS requests, got " + jwksServer.getRequests());
+
+            // And
+            jwksServer.release();
+            for (Future<HttpResponse<String>> response : responses) {
+                Assert.assertEquals(response.get(10, TimeUnit.SECONDS).statusCode(), OK);
+            }
+            recorder.assertNoPinning("io.telicent");
+        } finally {
+            jwksServer.release();
+            server.stop();
+            jwksServer.stop();
+        }
+    }
 }
@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.jaxrs3;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.security.InvalidKeyException;
+import io.telicent.servlet.auth.jwt.JwtHttpConstants;
+import io.telicent.servlet.auth.jwt.OAuth2Constants;
+import io.telicent.servlet.auth.jwt.challenges.Challenge;
+import io.telicent.servlet.auth.jwt.configuration.ClaimPath;
+import io.telicent.servlet.auth.jwt.configuration.ConfigurationParameters;
+import io.telicent.servlet.auth.jwt.errors.KeyLoadPendingException;
+import io.telicent.servlet.auth.jwt.sources.HeaderSource;
+import io.telicent.servlet.auth.jwt.verification.JwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.KeyLoadingJwtVerifier;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.*;
+
+/**
+ * A JWT authentication engine for JAX-RS 3.x web applications that avoids tying up request threads while verification
+ * keys are loaded
+ * <p>
+ * JAX-RS request filters cannot be suspended, so when a token references a key that is not currently cached (as
+ * determined by {@link KeyLoadingJwtVerifier#requiresKeyLoad(String)}) the key load is started on a separate key
+ * loader executor and the request waits at most a bounded amount of time for it.  Concurrent requests needing the same
+ * keys share a single load.  If the load does not complete in time the request is rejected with a
+ * {@code 503 Service Unavailable} response and a {@value HttpHeaders#RETRY_AFTER} header, by which time the keys will
+ * typically have been loaded and cached.  Tokens whose keys are already cached are verified synchronously exactly as
+ * they would be by {@link JaxRs3JwtAuthenticationEngine}.
+ * </p>
+ */
+public class AsyncJaxRs3JwtAuthenticationEngine extends JaxRs3JwtAuthenticationEngine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncJaxRs3JwtAuthenticationEngine.class);
+
+    /**
+     * Default executor used for key loading, key loads are blocking network I/O so virtual threads are ideal for this
+     */
+    private static final Executor DEFAULT_KEY_LOADER =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("jwt-key-loader-", 0).factory());
+
+    private final Executor keyLoader;
+    private final Duration maxWait;
+
+    /**
+     * Creates a new authentication engine using default configuration
+     */
+    public AsyncJaxRs3JwtAuthenticationEngine() {
+        this(JwtHttpConstants.DEFAULT_HEADER_SOURCES, null, null, null,
+             Duration.ofMillis(ConfigurationParameters.DEFAULT_ASYNC_KEY_LOADING_MAX_WAIT));
+    }
+
+    /**
+     * Creates a new authentication engine using the provided configuration and the default key loader executor
+     *
+     * @param headers        Header sources
+     * @param realm          Realm
+     * @param usernameClaims Username claims
+     * @param rolesClaim     Roles claim
+     * @param maxWait        Maximum time a request will wait for keys to be loaded
+     */
+    public AsyncJaxRs3JwtAuthenticationEngine(Collection<HeaderSource> headers, String realm,
+                                              Collection<ClaimPath> usernameClaims, ClaimPath rolesClaim,
+                                              Duration maxWait) {
+        this(headers, realm, usernameClaims, rolesClaim, DEFAULT_KEY_LOADER, maxWait);
+    }
+
+    /**
+     * Creates a new authentication engine using the provided configuration
+     *
+     * @param headers        Header sources
+     * @param realm          Realm
+     * @param usernameClaims Username claims
+     * @param rolesClaim     Roles claim
+     * @param keyLoader      Executor on which key loads are performed
+     * @param maxWait        Maximum time a request will wait for keys to be loaded
+     */
+    public AsyncJaxRs3JwtAuthenticationEngine(Collection<HeaderSource> headers, String realm,
+                                              Collection<ClaimPath> usernameClaims, ClaimPath rolesClaim,
+                                              Executor keyLoader, Duration maxWait) {
+        super(headers, realm, usernameClaims, rolesClaim);
+        this.keyLoader = Objects.requireNonNull(keyLoader, "Key loader executor cannot be null");
+        Objects.requireNonNull(maxWait, "Maximum wait cannot be null");
+        if (maxWait.isNegative()) {
+            throw new IllegalArgumentException("Maximum wait cannot be negative");
+        }
+        this.maxWait = maxWait;
+    }
+
+    @Override
+    protected Jws<Claims> verify(JwtVerifier verifier, String rawToken) {
+        if (verifier instanceof KeyLoadingJwtVerifier loadingVerifier && loadingVerifier.requiresKeyLoad(rawToken)) {
+            awaitKeys(loadingVerifier.loadKeys(rawToken, this.keyLoader));
+
+            if (loadingVerifier.requiresKeyLoad(rawToken)) {
+                // Keys were freshly loaded yet the key is still not available, so the token references an unknown key.
+                // Fail now rather than letting verification trigger a further synchronous load.
+                throw new InvalidKeyException("Token references a key that is not present in the loaded keys");
+            }
+        }
+        return super.verify(verifier, rawToken);
+    }
+
+    private void awaitKeys(CompletableFuture<Void> load) {
+        try {
+            load.get(this.maxWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.warn("Verification keys not loaded within {} milliseconds, rejecting request as temporarily unavailable",
+                        this.maxWait.toMillis());
+            throw new KeyLoadPendingException("Verification keys are still being loaded, please retry shortly");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KeyLoadPendingException("Interrupted while waiting for verification keys to be loaded");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof JwtException jwtErr) {
+                throw jwtErr;
+            }
+            throw new InvalidKeyException("Failed to load verification keys: " + e.getCause().getMessage(),
+                                          e.getCause());
+        }
+    }
+
+    @Override
+    protected Response buildChallengeResponse(String authChallenge, Challenge challenge) {
+        Response response = super.buildChallengeResponse(authChallenge, challenge);
+        if (challenge.statusCode() == Response.Status.SERVICE_UNAVAILABLE.getStatusCode()
+                && OAuth2Constants.ERROR_TEMPORARILY_UNAVAILABLE.equals(challenge.errorCode())) {
+            return Response.fromResponse(response)
+                           .header(HttpHeaders.RETRY_AFTER, Math.max(1, this.maxWait.toSeconds()))
+                           .build();
+        }
+        return response;
+    }
+
+    /**
+     * Gets the maximum time a request will wait for keys to be loaded
+     *
+     * @return Maximum wait
+     */
+    public Duration getMaxWait() {
+        return this.maxWait;
+    }
+}
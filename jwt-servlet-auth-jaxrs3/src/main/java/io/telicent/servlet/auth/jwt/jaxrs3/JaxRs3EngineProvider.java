@@ -16,16 +16,50 @@
 package io.telicent.servlet.auth.jwt.jaxrs3;
 
 import io.telicent.servlet.auth.jwt.JwtAuthenticationEngine;
+import io.telicent.servlet.auth.jwt.JwtHttpConstants;
 import io.telicent.servlet.auth.jwt.configuration.AbstractHeaderBasedEngineProvider;
 import io.telicent.servlet.auth.jwt.configuration.ClaimPath;
+import io.telicent.servlet.auth.jwt.configuration.ConfigurationParameters;
+import io.telicent.servlet.auth.jwt.configuration.Utils;
 import io.telicent.servlet.auth.jwt.sources.HeaderSource;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
 /**
- * A provider for automatically configuring {@link JaxRs3JwtAuthenticationEngine}
+ * A provider for automatically configuring {@link JaxRs3JwtAuthenticationEngine}, or
+ * {@link AsyncJaxRs3JwtAuthenticationEngine} if {@value ConfigurationParameters#PARAM_ASYNC_KEY_LOADING} is enabled
  */
 public class JaxRs3EngineProvider extends AbstractHeaderBasedEngineProvider {
+
+    @Override
+    protected List<HeaderSource> configureHeaders(Function<String, String> paramSupplier) {
+        List<HeaderSource> sources = super.configureHeaders(paramSupplier);
+        if (sources == null && isAsyncKeyLoading(paramSupplier)) {
+            // Asynchronous key loading was explicitly requested so configure an engine even if the headers were left
+            // at their defaults
+            return new ArrayList<>(JwtHttpConstants.DEFAULT_HEADER_SOURCES);
+        }
+        return sources;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <TRequest, TResponse> JwtAuthenticationEngine<TRequest, TResponse> createEngine(
+            Function<String, String> paramSupplier, List<HeaderSource> headerSources, String realm,
+            List<ClaimPath> usernameClaims, ClaimPath rolesClaim) {
+        if (isAsyncKeyLoading(paramSupplier)) {
+            Integer maxWait = Utils.parseParameter(
+                    paramSupplier.apply(ConfigurationParameters.PARAM_ASYNC_KEY_LOADING_MAX_WAIT), Integer::parseInt,
+                    ConfigurationParameters.DEFAULT_ASYNC_KEY_LOADING_MAX_WAIT);
+            return (JwtAuthenticationEngine<TRequest, TResponse>) new AsyncJaxRs3JwtAuthenticationEngine(
+                    headerSources, realm, usernameClaims, rolesClaim, Duration.ofMillis(maxWait));
+        }
+        return super.createEngine(paramSupplier, headerSources, realm, usernameClaims, rolesClaim);
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     protected <TRequest, TResponse> JwtAuthenticationEngine<TRequest, TResponse> createEngine(
@@ -35,6 +69,11 @@ public class JaxRs3EngineProvider extends AbstractHeaderBasedEngineProvider {
                                                                                                 rolesClaim);
     }
 
+    private static boolean isAsyncKeyLoading(Function<String, String> paramSupplier) {
+        return Utils.parseParameter(paramSupplier.apply(ConfigurationParameters.PARAM_ASYNC_KEY_LOADING),
+                                    Boolean::parseBoolean, false);
+    }
+
     @Override
     public int priority() {
         return 2;
@@ -30,7 +30,6 @@ import org.apache.commons.lang3.Strings;
 
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -39,6 +38,9 @@ import java.util.stream.Collectors;
 public class JaxRs3JwtAuthenticationEngine
         extends HeaderBasedJwtAuthenticationEngine<ContainerRequestContext, ContainerResponseContext> {
 
+    private static final String INSUFFICIENT_PERMISSIONS_HEADER =
+            buildChallengeHeaderPrefix(null) + buildChallengeHeaderParameters(INSUFFICIENT_PERMISSIONS_CHALLENGE);
+
     /**
      * Creates a new authentication engine using default configuration
      */
@@ -101,10 +103,7 @@ public class JaxRs3JwtAuthenticationEngine
     @Override
     protected void sendChallenge(ContainerRequestContext request, ContainerResponseContext response,
                                  Challenge challenge) {
-        String realm = selectRealm(JwtHttpConstants.sanitiseHeaderParameterValue(getRequestUrl(request)));
-        Map<String, String> additionalParams =
-                buildChallengeParameters(challenge.errorCode(), challenge.errorDescription());
-        String authChallenge = buildAuthorizationHeader(realm, additionalParams);
+        String authChallenge = buildChallengeHeaderForRequest(getRequestUrl(request), challenge);
 
         // Explicitly abort the request with the relevant status and HTTP Authentication challenge
         request.abortWith(buildChallengeResponse(authChallenge, challenge));
@@ -124,6 +123,28 @@ public class JaxRs3JwtAuthenticationEngine
                        .build();
     }
 
+    /**
+     * Rejects a request that requires authentication but was not authenticated, sending the same {@code 401} challenge
+     * as for a request that includes no authentication parameters
+     *
+     * @param request Request
+     */
+    void sendAuthenticationRequiredChallenge(ContainerRequestContext request) {
+        sendChallenge(request, null, new Challenge(401, "", noParametersMessage()));
+    }
+
+    /**
+     * Builds the response used to reject authenticated requests where the user lacks the permissions required to
+     * access the requested resource
+     *
+     * @return Forbidden response
+     */
+    static Response buildInsufficientPermissionsResponse() {
+        return Response.status(Response.Status.FORBIDDEN)
+                       .header(JwtHttpConstants.HEADER_WWW_AUTHENTICATE, INSUFFICIENT_PERMISSIONS_HEADER)
+                       .build();
+    }
+
     @Override
     protected void sendError(ContainerResponseContext response, Throwable err) {
         // In a JAX-RS context we can just throw the exception and rely on JAX-RS handling the exception to abort the
@@ -141,4 +162,9 @@ public class JaxRs3JwtAuthenticationEngine
         request.setProperty(attribute, value);
     }
 
+    @Override
+    protected Object getRequestAttribute(ContainerRequestContext request, String attribute) {
+        return request.getProperty(attribute);
+    }
+
 }
@@ -77,6 +77,18 @@ public class JwtSecurityContext implements SecurityContext {
         return this.rolesHelper.isUserInRole(role);
     }
 
+    /**
+     * Gets all the roles the user has
+     *
+     * @return Roles, empty if the user has no roles
+     */
+    public Set<String> getRoles() {
+        if (this.rolesHelper == null) {
+            return Collections.emptySet();
+        }
+        return this.rolesHelper.getRoles();
+    }
+
     @Override
     public boolean isSecure() {
         return this.isSecure;
@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.jaxrs3;
+
+import io.telicent.servlet.auth.jwt.JwtServletConstants;
+import jakarta.annotation.Priority;
+import jakarta.annotation.security.DenyAll;
+import jakarta.annotation.security.PermitAll;
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.servlet.ServletContext;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.DynamicFeature;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.FeatureContext;
+import jakarta.ws.rs.core.SecurityContext;
+import jakarta.ws.rs.ext.Provider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * A JAX-RS dynamic feature that enforces {@link RolesAllowed}, {@link DenyAll} and {@link PermitAll} annotations on
+ * resource methods and classes
+ * <p>
+ * Annotations are resolved once per resource method when the application is deployed, with method level annotations
+ * taking precedence over class level ones, and a filter holding the precomputed roles is registered for each method
+ * that requires them.  When a request was authenticated by the {@link JwtAuthFilter} the filter checks the required
+ * roles against the user's roles in a single pass, rather than resolving annotations and calling
+ * {@link SecurityContext#isUserInRole(String)} for each role on every request.
+ * </p>
+ * <p>
+ * Unauthenticated requests are rejected with a {@code 401 Unauthorized} response carrying the configured
+ * authentication engine's challenge, authenticated users that lack all the required roles, and all requests to
+ * {@link DenyAll} resources, are rejected with a {@code 403 Forbidden} response.
+ * </p>
+ */
+@Provider
+public class RolesAllowedFeature implements DynamicFeature {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RolesAllowedFeature.class);
+
+    @Override
+    public void configure(ResourceInfo resourceInfo, FeatureContext context) {
+        Method method = resourceInfo.getResourceMethod();
+        if (method == null) {
+            return;
+        }
+        String[] roles =
+                hasAccessAnnotation(method) ? resolveRoles(method) : resolveRoles(resourceInfo.getResourceClass());
+        if (roles == null) {
+            return;
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Resource method {}.{}() requires one of the roles {}",
+                         method.getDeclaringClass().getSimpleName(), method.getName(), Arrays.toString(roles));
+        }
+        context.register(new RolesAllowedFilter(roles), Priorities.AUTHORIZATION);
+    }
+
+    private static boolean hasAccessAnnotation(AnnotatedElement element) {
+        return element.isAnnotationPresent(DenyAll.class) || element.isAnnotationPresent(
+                RolesAllowed.class) || element.isAnnotationPresent(PermitAll.class);
+    }
+
+    /**
+     * Resolves the roles required by an annotated element
+     *
+     * @param element Annotated element
+     * @return Roles required, an empty array if access is denied to everyone, or {@code null} if the element permits
+     * access to everyone or has none of the relevant annotations
+     */
+    private static String[] resolveRoles(AnnotatedElement element) {
+        if (element == null) {
+            return null;
+        }
+        if (element.isAnnotationPresent(DenyAll.class)) {
+            return new String[0];
+        }
+        RolesAllowed rolesAllowed = element.getAnnotation(RolesAllowed.class);
+        if (rolesAllowed != null) {
+            return Set.of(rolesAllowed.value()).toArray(new String[0]);
+        }
+        return null;
+    }
+
+    /**
+     * A request filter that requires the user hold at least one of a fixed set of roles
+     */
+    @Priority(Priorities.AUTHORIZATION)
+    static final class RolesAllowedFilter implements ContainerRequestFilter {
+        private static final JaxRs3JwtAuthenticationEngine DEFAULT_ENGINE = new JaxRs3JwtAuthenticationEngine();
+
+        private final String[] roles;
+
+        @Context
+        private ServletContext servletContext;
+
+        RolesAllowedFilter(String[] roles) {
+            this.roles = roles;
+        }
+
+        /**
+         * Used by unit tests to set the context for testing purposes, usually the context is injected by the JAX-RS
+         * server runtime
+         *
+         * @param context Servlet Context
+         */
+        void setContext(ServletContext context) {
+            this.servletContext = context;
+        }
+
+        /**
+         * Gets the roles, any one of which permits access
+         *
+         * @return Roles
+         */
+        String[] getRoles() {
+            return this.roles.clone();
+        }
+
+        @Override
+        public void filter(ContainerRequestContext request) {
+            SecurityContext securityContext = request.getSecurityContext();
+            if (this.roles.length > 0 && (securityContext == null || securityContext.getUserPrincipal() == null)) {
+                LOGGER.warn("Request to {} rejected as unauthenticated but requires one of the roles {}",
+                            request.getUriInfo() != null ? request.getUriInfo().getRequestUri() : null,
+                            Arrays.toString(this.roles));
+                this.getEngine().sendAuthenticationRequiredChallenge(request);
+            } else if (!this.isPermitted(securityContext)) {
+                LOGGER.warn("Request to {} forbidden as user lacks any of the roles {}",
+                            request.getUriInfo() != null ? request.getUriInfo().getRequestUri() : null,
+                            Arrays.toString(this.roles));
+                request.abortWith(JaxRs3JwtAuthenticationEngine.buildInsufficientPermissionsResponse());
+            }
+        }
+
+        /**
+         * Gets the authentication engine used to challenge unauthenticated requests, i.e. the same engine the
+         * {@link JwtAuthFilter} uses, or a default engine if none is configured
+         *
+         * @return Authentication engine
+         */
+        private JaxRs3JwtAuthenticationEngine getEngine() {
+            Object engine = this.servletContext != null ?
+                            this.servletContext.getAttribute(JwtServletConstants.ATTRIBUTE_JWT_ENGINE) : null;
+            return engine instanceof JaxRs3JwtAuthenticationEngine jaxRsEngine ? jaxRsEngine : DEFAULT_ENGINE;
+        }
+
+        private boolean isPermitted(SecurityContext securityContext) {
+            if (this.roles.length == 0 || securityContext == null) {
+                return false;
+            }
+            if (securityContext instanceof JwtSecurityContext jwtSecurityContext) {
+                Set<String> userRoles = jwtSecurityContext.getRoles();
+                if (userRoles.isEmpty()) {
+                    return false;
+                }
+                for (String role : this.roles) {
+                    if (userRoles.contains(role)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            // Authenticated by some other mechanism, fall back to the standard role checks
+            for (String role : this.roles) {
+                if (securityContext.isUserInRole(role)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.jaxrs3;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.JwkSet;
+import io.jsonwebtoken.security.Jwks;
+import io.telicent.servlet.auth.jwt.JwtAuthenticationEngine;
+import io.telicent.servlet.auth.jwt.JwtHttpConstants;
+import io.telicent.servlet.auth.jwt.configuration.ClaimPath;
+import io.telicent.servlet.auth.jwt.configuration.ConfigurationParameters;
+import io.telicent.servlet.auth.jwt.sources.HeaderSource;
+import io.telicent.servlet.auth.jwt.verification.SignedJwtVerifier;
+import io.telicent.servlet.auth.jwt.verification.jwks.BlockingJwksLocator;
+import io.telicent.servlet.auth.jwt.verification.jwks.CachedJwksKeyLocator;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import org.apache.commons.lang3.Strings;
+import org.mockito.ArgumentCaptor;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class TestAsyncJaxRs3Engine extends TestJaxRs3Engine {
+
+    private final ExecutorService keyLoader = Executors.newCachedThreadPool();
+    private final SecretKey key = Jwts.SIG.HS256.key().build();
+    private final JwkSet jwks = Jwks.set().add(Jwks.builder().key(this.key).id("test-key").build()).build();
+
+    @AfterClass
+    public void teardown() {
+        this.keyLoader.shutdownNow();
+    }
+
+    @Override
+    protected JwtAuthenticationEngine<ContainerRequestContext, ContainerResponseContext> createEngine() {
+        return new AsyncJaxRs3JwtAuthenticationEngine();
+    }
+
+    @Override
+    protected JwtAuthenticationEngine<ContainerRequestContext, ContainerResponseContext> createEngine(String authHeader,
+                                                                                                      String authHeaderPrefix,
+                                                                                                      String realm,
+                                                                                                      ClaimPath usernameClaim) {
+        return new AsyncJaxRs3JwtAuthenticationEngine(List.of(new HeaderSource(authHeader, authHeaderPrefix)), realm,
+                                                      usernameClaim != null ? List.of(usernameClaim) : null, null,
+                                                      Duration.ofSeconds(1));
+    }
+
+    @Override
+    protected JwtAuthenticationEngine<ContainerRequestContext, ContainerResponseContext> createEngine(
+            List<HeaderSource> authHeaders, String realm, List<ClaimPath> usernameClaims) {
+        return createEngine(authHeaders, realm, usernameClaims, null);
+    }
+
+    @Override
+    protected JwtAuthenticationEngine<ContainerRequestContext, ContainerResponseContext> createEngine(
+            List<HeaderSource> authHeaders, String realm, List<ClaimPath> usernameClaims, ClaimPath rolesClaim) {
+        return new AsyncJaxRs3JwtAuthenticationEngine(authHeaders, realm, usernameClaims, rolesClaim,
+                                                      Duration.ofSeconds(1));
+    }
+
+    private AsyncJaxRs3JwtAuthenticationEngine createEngine(Executor executor, Duration maxWait) {
+        return new AsyncJaxRs3JwtAuthenticationEngine(JwtHttpConstants.DEFAULT_HEADER_SOURCES, null, null, null,
+                                                      executor, maxWait);
+    }
+
+    private String createToken(String keyId) {
+        return Jwts.builder().header().keyId(keyId).and().subject("test").signWith(this.key).compact();
+    }
+
+    private ContainerRequestContext createRequest(String jwt) {
+        return createMockRequest(Map.of(JwtHttpConstants.HEADER_AUTHORIZATION, "Bearer " + jwt));
+    }
+
+    private static Response captureResponse(ContainerRequestContext request) {
+        ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+        verify(request).abortWith(captor.capture());
+        return captor.getValue();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void givenNegativeMaxWait_whenCreatingEngine_thenIllegalArgument() {
+        // When and Then
+        createEngine(this.keyLoader, Duration.ofSeconds(-1));
+    }
+
+    @Test
+    public void givenUncachedKeyAndFastLoad_whenAuthenticating_thenKeysLoadedOffThreadAndAuthenticated() {
+        // Given
+        BlockingJwksLocator source = new BlockingJwksLocator(this.jwks, null);
+        SignedJwtVerifier verifier =
+                new SignedJwtVerifier(new CachedJwksKeyLocator(source, Duration.ofMinutes(1)));
+        AsyncJaxRs3JwtAuthenticationEngine engine = createEngine(this.keyLoader, Duration.ofSeconds(5));
+        ContainerRequestContext request = createRequest(createToken("test-key"));
+
+        // When
+        ContainerRequestContext authenticated =
+                engine.authenticate(request, mock(ContainerResponseContext.class), verifier);
+
+        // Then
+        Assert.assertNotNull(authenticated);
+        Assert.assertEquals(verifyAuthenticatedUser(authenticated), "test");
+        Assert.assertEquals(source.getLoads(), 1);
+    }
+
+    @Test
+    public void givenUncachedKeyAndSlowLoad_whenAuthenticating_thenTemporarilyUnavailableUntilLoaded() throws
+            Exception {
+        // Given
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingJwksLocator source = new BlockingJwksLocator(this.jwks, release);
+        CachedJwksKeyLocator locator = new CachedJwksKeyLocator(source, Duration.ofMinutes(1));
+        SignedJwtVerifier verifier = new SignedJwtVerifier(locator);
+        AsyncJaxRs3JwtAuthenticationEngine engine = createEngine(this.keyLoader, Duration.ofMillis(50));
+        String jwt = createToken("test-key");
+        ContainerRequestContext request = createRequest(jwt);
+
+        // When
+        Assert.assertNull(engine.authenticate(request, mock(ContainerResponseContext.class), verifier));
+
+        // Then
+        Response response = captureResponse(request);
+        Assert.assertEquals(response.getStatus(), 503);
+        Assert.assertEquals(response.getStringHeaders().getFirst(HttpHeaders.RETRY_AFTER), "1");
+        Assert.assertTrue(Strings.CS.contains(response.getStringHeaders().getFirst(JwtHttpConstants.HEADER_WWW_AUTHENTICATE),
+                                              "temporarily_unavailable"));
+
+        // And
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (verifier.requiresKeyLoad(jwt) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        ContainerRequestContext retry = createRequest(jwt);
+        Assert.assertNotNull(engine.authenticate(retry, mock(ContainerResponseContext.class), verifier));
+        Assert.assertEquals(source.getLoads(), 1);
+    }
+
+    @Test
+    public void givenUnknownKeyId_whenAuthenticating_thenRejectedWithoutFurtherLoads() {
+        // Given
+        BlockingJwksLocator source = new BlockingJwksLocator(this.jwks, null);
+        SignedJwtVerifier verifier =
+                new SignedJwtVerifier(new CachedJwksKeyLocator(source, Duration.ofMinutes(1)));
+        AsyncJaxRs3JwtAuthenticationEngine engine = createEngine(this.keyLoader, Duration.ofSeconds(5));
+        ContainerRequestContext request = createRequest(createToken("unknown-key"));
+
+        // When
+        Assert.assertNull(engine.authenticate(request, mock(ContainerResponseContext.class), verifier));
+
+        // Then
+        Assert.assertEquals(captureResponse(request).getStatus(), 401);
+        Assert.assertEquals(source.getLoads(), 1);
+    }
+
+    @Test
+    public void givenFailingKeyLoad_whenAuthenticating_thenUnauthorized() {
+        // Given
+        BlockingJwksLocator source = new BlockingJwksLocator(this.jwks, null);
+        source.setFail(true);
+        SignedJwtVerifier verifier =
+                new SignedJwtVerifier(new CachedJwksKeyLocator(source, Duration.ofMinutes(1)));
+        AsyncJaxRs3JwtAuthenticationEngine engine = createEngine(this.keyLoader, Duration.ofSeconds(5));
+        ContainerRequestContext request = createRequest(createToken("test-key"));
+
+        // When
+        Assert.assertNull(engine.authenticate(request, mock(ContainerResponseContext.class), verifier));
+
+        // Then
+        Response response = captureResponse(request);
+        Assert.assertEquals(response.getStatus(), 401);
+        Assert.assertNull(response.getHeaderString(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    public void givenRejectingExecutor_whenAuthenticating_thenUnauthorized() {
+        // Given
+        BlockingJwksLocator source = new BlockingJwksLocator(this.jwks, null);
+        SignedJwtVerifier verifier =
+                new SignedJwtVerifier(new CachedJwksKeyLocator(source, Duration.ofMinutes(1)));
+        AsyncJaxRs3JwtAuthenticationEngine engine = createEngine(r -> {
+            throw new RejectedExecutionException("Shutting down");
+        }, Duration.ofSeconds(5));
+        ContainerRequestContext request = createRequest(createToken("test-key"));
+
+        // When
+        Assert.assertNull(engine.authenticate(request, mock(ContainerResponseContext.class), verifier));
+
+        // Then
+        Assert.assertEquals(captureResponse(request).getStatus(), 401);
+        Assert.assertEquals(source.getLoads(), 0);
+    }
+
+    @Test
+    public void givenAsyncKeyLoadingEnabled_whenConfiguringEngineProvider_thenAsyncEngineConfigured() {
+        // Given
+        Map<String, String> params = new HashMap<>();
+        params.put(ConfigurationParameters.PARAM_ASYNC_KEY_LOADING, "true");
+        params.put(ConfigurationParameters.PARAM_ASYNC_KEY_LOADING_MAX_WAIT, "250");
+        JaxRs3EngineProvider provider = new JaxRs3EngineProvider();
+        List<JwtAuthenticationEngine<ContainerRequestContext, ContainerResponseContext>> engines =
+                new CopyOnWriteArrayList<>();
+
+        // When
+        Assert.assertTrue(
+                provider.<ContainerRequestContext, ContainerResponseContext>configure(params::get, engines::add));
+
+        // Then
+        Assert.assertEquals(engines.size(), 1);
+        Assert.assertTrue(engines.get(0) instanceof AsyncJaxRs3JwtAuthenticationEngine);
+        AsyncJaxRs3JwtAuthenticationEngine engine = (AsyncJaxRs3JwtAuthenticationEngine) engines.get(0);
+        Assert.assertEquals(engine.getMaxWait(), Duration.ofMillis(250));
+    }
+
+    @Test
+    public void givenAsyncKeyLoadingDisabled_whenConfiguringEngineProvider_thenNotConfigured() {
+        // Given
+        JaxRs3EngineProvider provider = new JaxRs3EngineProvider();
+
+        // When and Then
+        Assert.assertFalse(provider.configure(Map.<String, String>of()::get, e -> {}));
+    }
+
+    @Test
+    public void givenHeadersConfigured_whenConfiguringEngineProvider_thenSyncEngineConfigured() {
+        // Given
+        JaxRs3EngineProvider provider = new JaxRs3EngineProvider();
+        List<JwtAuthenticationEngine<ContainerRequestContext, ContainerResponseContext>> engines =
+                new CopyOnWriteArrayList<>();
+
+        // When
+        Map<String, String> params = Map.of(ConfigurationParameters.PARAM_USE_DEFAULT_HEADERS, "true");
+        Assert.assertTrue(
+                provider.<ContainerRequestContext, ContainerResponseContext>configure(params::get, engines::add));
+
+        // Then
+        Assert.assertEquals(engines.get(0).getClass(), JaxRs3JwtAuthenticationEngine.class);
+    }
+}
@@ -0,0 +1,300 @@
+/**
+ * Copyright (C) Telicent Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.telicent.servlet.auth.jwt.jaxrs3;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.Jwts;
+import io.telicent.servlet.auth.jwt.JwtHttpConstants;
+import io.telicent.servlet.auth.jwt.JwtServletConstants;
+import io.telicent.servlet.auth.jwt.OAuth2Constants;
+import io.telicent.servlet.auth.jwt.configuration.ClaimPath;
+import jakarta.annotation.security.DenyAll;
+import jakarta.annotation.security.PermitAll;
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.servlet.ServletContext;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.FeatureContext;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
+import jakarta.ws.rs.core.UriInfo;
+import org.mockito.ArgumentCaptor;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.security.Principal;
+import java.util.List;
+import java.util.Set;
+
+import static org.mockito.Mockito.*;
+
+public class TestRolesAllowedFeature {
+
+    private static final SecretKey KEY = Jwts.SIG.HS256.key().build();
+
+    @RolesAllowed({ "reader", "writer" })
+    public static class ProtectedResource {
+        public void inherited() {
+        }
+
+        @RolesAllowed("admin")
+        public void admin() {
+        }
+
+        @PermitAll
+        public void open() {
+        }
+
+        @DenyAll
+        public void closed() {
+        }
+    }
+
+    public static class UnprotectedResource {
+        public void unannotated() {
+        }
+
+        @RolesAllowed({})
+        public void nobody() {
+        }
+    }
+
+    private static Method method(Class<?> cls, String name) {
+        try {
+            return cls.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static RolesAllowedFeature.RolesAllowedFilter configure(Class<?> cls, String methodName) {
+        ResourceInfo resourceInfo = mock(ResourceInfo.class);
+        when(resourceInfo.getResourceMethod()).thenReturn(method(cls, methodName));
+        doReturn(cls).when(resourceInfo).getResourceClass();
+        FeatureContext context = mock(FeatureContext.class);
+
+        new RolesAllowedFeature().configure(resourceInfo, context);
+
+        ArgumentCaptor<Object> filter = ArgumentCaptor.forClass(Object.class);
+        verify(context, atMost(1)).register(filter.capture(), eq(Priorities.AUTHORIZATION));
+        return filter.getAllValues().isEmpty() ? null : (RolesAllowedFeature.RolesAllowedFilter) filter.getValue();
+    }
+
+    @DataProvider(name = "resourceMethods")
+    public Object[][] resourceMethods() {
+        return new Object[][] {
+                { ProtectedResource.class, "inherited", Set.of("reader", "writer") },
+                { ProtectedResource.class, "admin", Set.of("admin") },
+                { ProtectedResource.class, "open", null },
+                { ProtectedResource.class, "closed", Set.of() },
+                { UnprotectedResource.class, "unannotated", null },
+                { UnprotectedResource.class, "nobody", Set.of() }
+        };
+    }
+
+    @Test(dataProvider = "resourceMethods")
+    public void givenResourceMethod_whenConfiguringFeature_thenRequiredRolesPrecomputed(Class<?> cls,
+                                                                                         String methodName,
+                                                                                         Set<String> expectedRoles) {
+        // When
+        RolesAllowedFeature.RolesAllowedFilter filter = configure(cls, methodName);
+
+        // Then
+        if (expectedRoles == null) {
+            Assert.assertNull(filter);
+        } else {
+            Assert.assertNotNull(filter);
+            Assert.assertEquals(Set.of(filter.getRoles()), expectedRoles);
+        }
+    }
+
+    @Test
+    public void givenNoResourceMethod_whenConfiguringFeature_thenNothingRegistered() {
+        // Given
+        ResourceInfo resourceInfo = mock(ResourceInfo.class);
+        FeatureContext context = mock(FeatureContext.class);
+
+        // When
+        new RolesAllowedFeature().configure(resourceInfo, context);
+
+        // Then
+        verifyNoInteractions(context);
+    }
+
+    private static ContainerRequestContext jwtRequest(List<String> roles) {
+        String jwt = Jwts.builder().subject("test").claim("roles", roles).signWith(KEY).compact();
+        Jws<Claims> jws = Jwts.parser().verifyWith(KEY).build().parseSignedClaims(jwt);
+        return request(new JwtSecurityContext(jws, "test", true, ClaimPath.topLevel("roles")));
+    }
+
+    private static final URI REQUEST_URI = URI.create("http://localhost/test");
+
+    private static ContainerRequestContext request(SecurityContext securityContext) {
+        ContainerRequestContext request = mock(ContainerRequestContext.class);
+        when(request.getSecurityContext()).thenReturn(securityContext);
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getRequestUri()).thenReturn(REQUEST_URI);
+        when(request.getUriInfo()).thenReturn(uriInfo);
+        return request;
+    }
+
+    private static void verifyForbidden(ContainerRequestContext request) {
+        ArgumentCaptor<Response> response = ArgumentCaptor.forClass(Response.class);
+        verify(request).abortWith(response.capture());
+        Assert.assertEquals(response.getValue().getStatus(), 403);
+        Assert.assertTrue(response.getValue()
+                                  .getHeaderString(JwtHttpConstants.HEADER_WWW_AUTHENTICATE)
+                                  .contains(OAuth2Constants.ERROR_INSUFFICIENT_SCOPE));
+    }
+
+    @Test
+    public void givenUserWithOneRequiredRole_whenFiltering_thenRequestProceeds() {
+        // Given
+        RolesAllowedFeature.RolesAllowedFilter filter = configure(ProtectedResource.class, "inherited");
+        ContainerRequestContext request = jwtRequest(List.of("other", "writer"));
+
+        // When
+        filter.filter(request);
+
+        // Then
+        verify(request, never()).abortWith(any());
+    }
+
+    @Test
+    public void givenUserWithoutRequiredRoles_whenFiltering_thenForbidden() {
+        // Given
+        RolesAllowedFeature.RolesAllowedFilter filter = configure(ProtectedResource.class, "admin");
+        ContainerRequestContext request = jwtRequest(List.of("reader", "writer"));
+
+        // When
+        filter.filter(request);
+
+        // Then
+        verifyForbidden(request);
+    }
+
+    @Test
+    public void givenUserWithNoRoles_whenFiltering_thenForbidden() {
+        // Given
+        RolesAllowedFeature.RolesAllowedFilter filter = configure(ProtectedResource.class, "admin");
+        ContainerRequestContext request = jwtRequest(List.of());
+
+        // When
+        filter.filter(request);
+
+        // Then
+        verifyForbidden(request);
+    }
+
+    @Test
+    public void givenDenyAll_whenFiltering_thenForbiddenRegardlessOfRoles() {
+        // Given
+        RolesAllowedFeature.RolesAllowedFilter filter = configure(ProtectedResource.class, "closed");
+        ContainerRequestContext request = jwtRequest(List.of("reader", "writer", "admin"));
+
+        // When
+        filter.filter(request);
+
+        // Then
+        verifyForbidden(request);
+    }
+
+    private static void verifyUnauthorized(ContainerRequestContext request, String expectedChallenge) {
+        ArgumentCaptor<Response> response = ArgumentCaptor.forClass(Response.class);
+        verify(request).abortWith(response.capture());
+        Assert.assertEquals(response.getValue().getStatus(), 401);
+        Assert.assertTrue(response.getValue()
+                                  .getHeaderString(JwtHttpConstants.HEADER_WWW_AUTHENTICATE)
+                                  .startsWith(expectedChallenge));
+    }
+
+    @Test
+    public void givenUnauthenticatedRequest_whenFiltering_thenUnauthorized() {
+        // Given
+        RolesAllowedFeature.RolesAllowedFilter filter = configure(ProtectedResource.class, "inherited");
+        ContainerRequestContext noContext = request(null);
+        SecurityContext anonymous = mock(SecurityContext.class);
+        ContainerRequestContext noPrincipal = request(anonymous);
+
+        // When
+        filter.filter(noContext);
+        filter.filter(noPrincipal);
+
+        // Then
+        String challenge = JwtHttpConstants.AUTH_SCHEME_BEARER + " realm=\"" + REQUEST_URI + "\"";
+        verifyUnauthorized(noContext, challenge);
+        verifyUnauthorized(noPrincipal, challenge);
+        verify(anonymous, never()).isUserInRole(any());
+    }
+
+    @Test
+    public void givenConfiguredEngine_whenFilteringUnauthenticatedRequest_thenEngineChallengeSent() {
+        // Given
+        RolesAllowedFeature.RolesAllowedFilter filter = configure(ProtectedResource.class, "inherited");
+        ServletContext context = mock(ServletContext.class);
+        when(context.getAttribute(JwtServletConstants.ATTRIBUTE_JWT_ENGINE)).thenReturn(
+                new JaxRs3JwtAuthenticationEngine(JwtHttpConstants.DEFAULT_HEADER_SOURCES, "example", null, null));
+        filter.setContext(context);
+        ContainerRequestContext request = request(null);
+
+        // When
+        filter.filter(request);
+
+        // Then
+        verifyUnauthorized(request, JwtHttpConstants.AUTH_SCHEME_BEARER + " realm=\"example\"");
+    }
+
+    @Test
+    public void givenDenyAll_whenFilteringUnauthenticatedRequest_thenForbidden() {
+        // Given
+        RolesAllowedFeature.RolesAllowedFilter filter = configure(ProtectedResource.class, "closed");
+        ContainerRequestContext request = request(null);
+
+        // When
+        filter.filter(request);
+
+        // Then
+        verifyForbidden(request);
+    }
+
+    @Test
+    public void givenOtherSecurityContext_whenFiltering_thenFallsBackToRoleChecks() {
+        // Given
+        RolesAllowedFeature.RolesAllowedFilter filter = configure(ProtectedResource.class, "inherited");
+        SecurityContext securityContext = mock(SecurityContext.class);
+        Principal principal = () -> "test";
+        when(securityContext.getUserPrincipal()).thenReturn(principal);
+        when(securityContext.isUserInRole("writer")).thenReturn(true);
+        ContainerRequestContext allowed = request(securityContext);
+        SecurityContext otherContext = mock(SecurityContext.class);
+        when(otherContext.getUserPrincipal()).thenReturn(principal);
+        ContainerRequestContext denied = request(otherContext);
+
+        // When
+        filter.filter(allowed);
+        filter.filter(denied);
+
+        // Then
+        verify(allowed, never()).abortWith(any());
+        verifyForbidden(denied);
+    }
+}
@@ -23,6 +23,8 @@ import io.telicent.servlet.auth.jwt.roles.RolesHelper;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import java.security.Principal;
+import java.util.Collections;
+import java.util.Set;
 
 /**
  * An authenticated HTTP Servlet Request, which is a decorator around the original request
@@ -75,6 +77,18 @@ public class AuthenticatedHttpServletRequest extends HttpServletRequestWrapper {
         return () -> username;
     }
 
+    /**
+     * Gets all the roles the user has
+     *
+     * @return Roles, empty if the user has no roles
+     */
+    public Set<String> getRoles() {
+        if (this.rolesHelper == null) {
+            return Collections.emptySet();
+        }
+        return this.rolesHelper.getRoles();
+    }
+
     /**
      * Gets the verified JSON Web Token (JWT) for the request
      *
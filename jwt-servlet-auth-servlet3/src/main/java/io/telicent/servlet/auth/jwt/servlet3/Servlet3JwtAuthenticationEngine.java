@@ -89,11 +89,8 @@ public class Servlet3JwtAuthenticationEngine
 
     @Override
     protected void sendChallenge(HttpServletRequest request, HttpServletResponse response, Challenge challenge) {
-        String realm = selectRealm(JwtHttpConstants.sanitiseHeaderParameterValue(request.getRequestURI()));
-        Map<String, String> additionalParams =
-                buildChallengeParameters(challenge.errorCode(), challenge.errorDescription());
         response.addHeader(JwtHttpConstants.HEADER_WWW_AUTHENTICATE,
-                           buildAuthorizationHeader(realm, additionalParams));
+                           buildChallengeHeaderForRequest(request.getRequestURI(), challenge));
         try {
             response.sendError(challenge.statusCode());
         } catch (IOException e) {
@@ -116,8 +113,18 @@ public class Servlet3JwtAuthenticationEngine
         return request.getRequestURI();
     }
 
+    @Override
+    protected String getClientAddress(HttpServletRequest request) {
+        return request.getRemoteAddr();
+    }
+
     @Override
     protected void setRequestAttribute(HttpServletRequest request, String attribute, Object value) {
         request.setAttribute(attribute, value);
     }
+
+    @Override
+    protected Object getRequestAttribute(HttpServletRequest request, String attribute) {
+        return request.getAttribute(attribute);
+    }
 }
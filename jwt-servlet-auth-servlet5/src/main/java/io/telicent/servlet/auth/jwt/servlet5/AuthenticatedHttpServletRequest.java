@@ -24,6 +24,8 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletRequestWrapper;
 
 import java.security.Principal;
+import java.util.Collections;
+import java.util.Set;
 
 /**
  * An authenticated HTTP request, which is a decorator around the original request
@@ -74,6 +76,18 @@ public class AuthenticatedHttpServletRequest extends HttpServletRequestWrapper {
         return this.rolesHelper != null && this.rolesHelper.isUserInRole(role);
     }
 
+    /**
+     * Gets all the roles the user has
+     *
+     * @return Roles, empty if the user has no roles
+     */
+    public Set<String> getRoles() {
+        if (this.rolesHelper == null) {
+            return Collections.emptySet();
+        }
+        return this.rolesHelper.getRoles();
+    }
+
     /**
      * Gets the verified JSON Web Token (JWT) for the request
      *
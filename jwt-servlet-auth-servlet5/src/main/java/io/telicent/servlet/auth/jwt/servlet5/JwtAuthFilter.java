@@ -24,6 +24,7 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.MDC;
 
 import java.io.IOException;
+import java.util.Set;
 
 /**
  * A filter that requires that users provide a valid JSON Web Token (JWT) in order for their requests to proceed
@@ -51,6 +52,46 @@ public class JwtAuthFilter extends AbstractConfigurableJwtAuthFilter<HttpServlet
         return httpServletRequest.getRequestURI();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Uses the servlet path plus any path info, these are already decoded and normalised by the servlet container, have
+     * path parameters removed, and are relative to the context path.
+     * </p>
+     */
+    @Override
+    protected String getAuthorizationPath(HttpServletRequest httpServletRequest) {
+        String servletPath = httpServletRequest.getServletPath();
+        String pathInfo = httpServletRequest.getPathInfo();
+        if (servletPath == null && pathInfo == null) {
+            return super.getAuthorizationPath(httpServletRequest);
+        }
+        return (servletPath != null ? servletPath : "") + (pathInfo != null ? pathInfo : "");
+    }
+
+    @Override
+    protected String getMethod(HttpServletRequest httpServletRequest) {
+        return httpServletRequest.getMethod();
+    }
+
+    @Override
+    protected Object getRequestAttribute(HttpServletRequest httpServletRequest, String attribute) {
+        return httpServletRequest.getAttribute(attribute);
+    }
+
+    @Override
+    protected boolean isUserInRole(HttpServletRequest httpServletRequest, String role) {
+        return httpServletRequest.isUserInRole(role);
+    }
+
+    @Override
+    protected Set<String> getUserRoles(HttpServletRequest httpServletRequest) {
+        if (httpServletRequest instanceof AuthenticatedHttpServletRequest authenticatedRequest) {
+            return authenticatedRequest.getRoles();
+        }
+        return null;
+    }
+
     @Override
     protected JwtAuthenticationEngine<HttpServletRequest, HttpServletResponse> getDefaultEngine() {
         return DEFAULT_ENGINE;
@@ -91,6 +132,6 @@ public class JwtAuthFilter extends AbstractConfigurableJwtAuthFilter<HttpServlet
 
     @Override
     public void destroy() {
-
+        this.stopWarmUp();
     }
 }
@@ -86,10 +86,8 @@ public class Servlet5JwtAuthenticationEngine
 
     @Override
     protected void sendChallenge(HttpServletRequest request, HttpServletResponse response, Challenge challenge) {
-        String realm = selectRealm(JwtHttpConstants.sanitiseHeaderParameterValue(request.getRequestURI()));
-        Map<String, String> additionalParams =
-                buildChallengeParameters(challenge.errorCode(), challenge.errorDescription());
-        response.addHeader(JwtHttpConstants.HEADER_WWW_AUTHENTICATE, buildAuthorizationHeader(realm, additionalParams));
+        response.addHeader(JwtHttpConstants.HEADER_WWW_AUTHENTICATE,
+                           buildChallengeHeaderForRequest(request.getRequestURI(), challenge));
         try {
             response.sendError(challenge.statusCode());
         } catch (IOException e) {
@@ -112,8 +110,18 @@ public class Servlet5JwtAuthenticationEngine
         return request.getRequestURI();
     }
 
+    @Override
+    protected String getClientAddress(HttpServletRequest request) {
+        return request.getRemoteAddr();
+    }
+
     @Override
     protected void setRequestAttribute(HttpServletRequest request, String attribute, Object value) {
         request.setAttribute(attribute, value);
     }
+
+    @Override
+    protected Object getRequestAttribute(HttpServletRequest request, String attribute) {
+        return request.getAttribute(attribute);
+    }
 }
@@ -23,6 +23,7 @@ import io.telicent.servlet.auth.jwt.sources.HeaderSource;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.Invocation;
 import org.testng.Assert;
 
 import java.io.IOException;
@@ -30,6 +31,7 @@ import java.net.URI;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import static io.telicent.servlet.auth.jwt.EqualsIgnoreCase.eqIgnoresCase;
 import static org.mockito.Mockito.*;
@@ -52,9 +54,15 @@ public class TestServlet5Engine extends AbstractHeaderBasedEngineTests<HttpServl
             when(request.getPathInfo()).thenReturn(requestUri.getPath());
         }
         when(request.getAttribute(any())).thenAnswer(invocationOnMock -> {
-            ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
-            verify(request).setAttribute(eq(invocationOnMock.getArgument(0)), captor.capture());
-            return captor.getValue();
+            // Return the most recently set value, if any, for the attribute
+            Object value = null;
+            for (Invocation invocation : mockingDetails(request).getInvocations()) {
+                if (invocation.getMethod().getName().equals("setAttribute") && Objects.equals(
+                        invocation.getArgument(0), invocationOnMock.getArgument(0))) {
+                    value = invocation.getArgument(1);
+                }
+            }
+            return value;
         });
         return request;
     }
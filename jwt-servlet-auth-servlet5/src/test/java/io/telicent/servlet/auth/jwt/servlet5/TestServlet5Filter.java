@@ -16,6 +16,7 @@
 package io.telicent.servlet.auth.jwt.servlet5;
 
 import io.telicent.servlet.auth.jwt.*;
+import io.telicent.servlet.auth.jwt.authorization.AuthorizationPolicy;
 import io.telicent.servlet.auth.jwt.configuration.ClaimPath;
 import io.telicent.servlet.auth.jwt.configuration.RuntimeConfigurationAdaptor;
 import io.telicent.servlet.auth.jwt.sources.HeaderSource;
@@ -29,6 +30,7 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.testng.Assert;
+import org.testng.annotations.Test;
 
 import java.io.IOException;
 import java.net.URI;
@@ -36,6 +38,7 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -201,4 +204,48 @@ public class TestServlet5Filter extends
         Assert.assertNotNull(value, "Attribute " + attribute + " unexpectedly null");
         return value;
     }
+
+    @Test
+    public void givenNonRootContextPath_whenGettingAuthorizationPath_thenContextRelativePathUsed() {
+        // Given
+        HttpServletRequest request = TestServlet5Engine.mockRequest(URI.create("/app/admin;x=1/secret"), Map.of());
+        when(request.getContextPath()).thenReturn("/app");
+        when(request.getServletPath()).thenReturn("/admin");
+        when(request.getPathInfo()).thenReturn("/secret");
+        AuthorizationPolicy policy = AuthorizationPolicy.parse("* /admin/* admin");
+
+        // When
+        String path = new JwtAuthFilter().getAuthorizationPath(request);
+
+        // Then
+        Assert.assertEquals(path, "/admin/secret");
+        Assert.assertNotNull(policy.find("GET", path));
+        Assert.assertNotNull(policy.find("GET", "/admin"));
+    }
+
+    @Test
+    public void givenNoServletPath_whenGettingAuthorizationPath_thenRequestUriNormalised() {
+        // Given
+        HttpServletRequest request = TestServlet5Engine.mockRequest(URI.create("/public/../%61dmin/secret"), Map.of());
+        when(request.getPathInfo()).thenReturn(null);
+
+        // When
+        String path = new JwtAuthFilter().getAuthorizationPath(request);
+
+        // Then
+        Assert.assertEquals(path, "/admin/secret");
+    }
+
+    @Test
+    public void givenAuthenticatedRequest_whenGettingUserRoles_thenResolvedRoleSetReturned() {
+        // Given
+        AuthenticatedHttpServletRequest authenticated = mock(AuthenticatedHttpServletRequest.class);
+        when(authenticated.getRoles()).thenReturn(Set.of("reader", "writer"));
+        HttpServletRequest plain = mock(HttpServletRequest.class);
+        JwtAuthFilter filter = new JwtAuthFilter();
+
+        // When and Then
+        Assert.assertEquals(filter.getUserRoles(authenticated), Set.of("reader", "writer"));
+        Assert.assertNull(filter.getUserRoles(plain));
+    }
 }